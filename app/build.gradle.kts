@@ -164,6 +164,54 @@ android {
 //    }
 }
 
+/**
+ * 为内置工具包生成元数据索引 assets/packages/index.json（文件名、大小、sha256、METADATA 原文），
+ * 运行时据此判断内置包是否变化，无需在每次启动时读取和解析全部脚本。
+ */
+abstract class GeneratePackageIndexTask : DefaultTask() {
+    @get:InputDirectory
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    abstract val packagesDir: DirectoryProperty
+
+    @get:OutputDirectory
+    abstract val outputDir: DirectoryProperty
+
+    @TaskAction
+    fun generate() {
+        val metadataPattern = Regex("""/\*\s*METADATA\s*([\s\S]*?)\*/""")
+        val digest = java.security.MessageDigest.getInstance("SHA-256")
+        val entries = packagesDir.get().asFile.listFiles { file -> file.isFile && file.name.endsWith(".js") }
+            .orEmpty()
+            .sortedBy { it.name }
+            .map { file ->
+                val bytes = file.readBytes()
+                val hash = digest.digest(bytes).joinToString("") { "%02x".format(it) }
+                mapOf(
+                    "file" to file.name,
+                    "size" to bytes.size,
+                    "sha256" to hash,
+                    "metadata" to (metadataPattern.find(String(bytes, Charsets.UTF_8))?.groupValues?.get(1)?.trim() ?: "{}")
+                )
+            }
+        val indexFile = outputDir.get().file("packages/index.json").asFile
+        indexFile.parentFile.mkdirs()
+        indexFile.writeText(groovy.json.JsonOutput.toJson(mapOf("version" to 1, "packages" to entries)))
+    }
+}
+
+val generatePackageIndex = tasks.register<GeneratePackageIndexTask>("generatePackageIndex") {
+    packagesDir.set(layout.projectDirectory.dir("src/main/assets/packages"))
+}
+
+androidComponents {
+    onVariants { variant ->
+        variant.sources.assets?.addGeneratedSourceDirectory(
+            generatePackageIndex,
+            GeneratePackageIndexTask::outputDir
+        )
+    }
+}
+
 dependencies {
     implementation("com.github.jelmerk:hnswlib-core:1.2.1")
     implementation(project(":dragonbones"))
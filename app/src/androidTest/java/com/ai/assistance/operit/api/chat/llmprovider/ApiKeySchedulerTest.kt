@@ -0,0 +1,286 @@
+package com.ai.assistance.operit.api.chat.llmprovider
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.MediumTest
+import androidx.test.filters.SmallTest
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+import kotlinx.coroutines.runBlocking
+import okhttp3.Headers
+import okhttp3.Headers.Companion.headersOf
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class ApiKeySchedulerTest {
+
+    /**
+     * 本地的限流 HTTP 服务：按 Authorization 头区分Key，每个Key在固定窗口内允许 limit 次请求，
+     * 超出时返回429。limit 为0的Key始终返回429（例如额度耗尽）。
+     */
+    private class RateLimitedServer(private val limits: Map<String, Int>, private val windowMs: Long) {
+        private val socket = ServerSocket(0)
+        private val windows = ConcurrentHashMap<String, LongArray>()
+        val served = ConcurrentHashMap<String, AtomicInteger>()
+        val throttled = ConcurrentHashMap<String, AtomicInteger>()
+
+        val url: String
+            get() = "http://127.0.0.1:${socket.localPort}/v1/chat/completions"
+
+        init {
+            thread(isDaemon = true) {
+                while (!socket.isClosed) {
+                    val client = try {
+                        socket.accept()
+                    } catch (e: Exception) {
+                        break
+                    }
+                    thread(isDaemon = true) { client.use { handle(it) } }
+                }
+            }
+        }
+
+        private fun handle(client: Socket) {
+            val reader = client.getInputStream().bufferedReader(Charsets.ISO_8859_1)
+            reader.readLine() ?: return
+            val headers = generateSequence { reader.readLine()?.takeIf { it.isNotEmpty() } }
+                .associate { it.substringBefore(':').trim().lowercase() to it.substringAfter(':').trim() }
+            val key = headers["authorization"].orEmpty().removePrefix("Bearer ")
+            val limit = limits[key] ?: 0
+            val out = client.getOutputStream()
+
+            // window[0] = 窗口开始时间，window[1] = 窗口内已用次数
+            val window = windows.getOrPut(key) { LongArray(2) }
+            val (used, resetMs) = synchronized(window) {
+                val now = System.currentTimeMillis()
+                if (now - window[0] >= windowMs) {
+                    window[0] = now
+                    window[1] = 0
+                }
+                window[1]++
+                window[1] to windowMs - (now - window[0])
+            }
+            if (used > limit) {
+                throttled.getOrPut(key) { AtomicInteger() }.incrementAndGet()
+                val retryAfter = if (limit == 0) "retry-after: 60\r\n" else ""
+                out.write(
+                    ("HTTP/1.1 429 Too Many Requests\r\nContent-Length: 0\r\n$retryAfter" +
+                        "x-ratelimit-reset-requests: ${resetMs}ms\r\nConnection: close\r\n\r\n").toByteArray()
+                )
+                return
+            }
+            served.getOrPut(key) { AtomicInteger() }.incrementAndGet()
+            val body = "{}".toByteArray()
+            out.write(
+                ("HTTP/1.1 200 OK\r\nContent-Length: ${body.size}\r\n" +
+                    "x-ratelimit-remaining-requests: ${limit - used}\r\n" +
+                    "x-ratelimit-reset-requests: ${resetMs}ms\r\nConnection: close\r\n\r\n").toByteArray()
+            )
+            out.write(body)
+            out.flush()
+        }
+
+        fun close() = socket.close()
+    }
+
+    /** 把调度器接到 [ApiKeyProvider] 上，与 [MultiApiKeyProvider] 的上报方式一致 */
+    private class SchedulerKeyProvider(
+        private val scheduler: ApiKeyScheduler,
+        private val keys: List<String>
+    ) : ApiKeyProvider {
+        override suspend fun getApiKey(): String = scheduler.selectKey(keys)!!
+        override fun onRequestStarted(apiKey: String) = scheduler.onRequestStarted(apiKey)
+        override fun onResponse(apiKey: String, statusCode: Int, headers: Headers, firstByteLatencyMs: Long) =
+            scheduler.onResponse(apiKey, statusCode, headers, firstByteLatencyMs)
+        override fun onRequestFinished(apiKey: String, error: Throwable?) =
+            scheduler.onRequestFinished(apiKey, error)
+        override val supportsKeyFailover: Boolean get() = true
+    }
+
+    private var now = 0L
+    private val scheduler = ApiKeyScheduler(clock = { now })
+    private val keys = listOf("sk-aaaa", "sk-bbbb", "sk-cccc")
+
+    @Test
+    fun testRoundRobinWithoutFeedback() {
+        val picked = (0 until 6).map { scheduler.selectKey(keys) }
+        assertEquals(keys + keys, picked)
+    }
+
+    @Test
+    fun testRateLimitedKeyIsSkippedUntilCooldownEnds() {
+        scheduler.onRequestStarted("sk-aaaa")
+        scheduler.onResponse("sk-aaaa", 429, headersOf("retry-after", "5"), 100)
+        scheduler.onRequestFinished("sk-aaaa", null)
+
+        repeat(10) { assertNotEquals("sk-aaaa", scheduler.selectKey(keys)) }
+        assertEquals(0L, scheduler.millisUntilAvailable(keys))
+        assertEquals(5_000L, scheduler.millisUntilAvailable(listOf("sk-aaaa")))
+
+        now += 5_000
+        val picked = (0 until 3).map { scheduler.selectKey(keys) }.toSet()
+        assertTrue(picked.contains("sk-aaaa"))
+    }
+
+    @Test
+    fun testExhaustedTokenBucketRefillsAfterReset() {
+        scheduler.onResponse(
+            "sk-bbbb", 200,
+            headersOf("x-ratelimit-remaining-requests", "0", "x-ratelimit-reset-requests", "1m0s"),
+            100
+        )
+        repeat(10) { assertNotEquals("sk-bbbb", scheduler.selectKey(keys)) }
+
+        now += 60_000
+        val picked = (0 until 3).map { scheduler.selectKey(keys) }.toSet()
+        assertTrue(picked.contains("sk-bbbb"))
+    }
+
+    @Test
+    fun testPrefersLeastLoadedFastKey() {
+        scheduler.onResponse("sk-aaaa", 200, headersOf(), 3_000)
+        scheduler.onResponse("sk-bbbb", 200, headersOf(), 200)
+        scheduler.onResponse("sk-cccc", 200, headersOf(), 800)
+        assertEquals("sk-bbbb", scheduler.selectKey(keys))
+
+        // 在途请求增加后负载评分上升，应切换到次优Key
+        repeat(5) { scheduler.onRequestStarted("sk-bbbb") }
+        assertEquals("sk-cccc", scheduler.selectKey(keys))
+    }
+
+    @Test
+    fun testAllKeysCoolingDownReturnsEarliestRecovery() {
+        scheduler.onResponse("sk-aaaa", 429, headersOf("retry-after", "30"), 100)
+        scheduler.onResponse("sk-bbbb", 429, headersOf("retry-after", "10"), 100)
+        scheduler.onResponse("sk-cccc", 429, headersOf("retry-after", "20"), 100)
+
+        assertNull(scheduler.selectKey(keys, requireHealthy = true))
+        assertEquals("sk-bbbb", scheduler.selectKey(keys))
+        assertEquals(10_000L, scheduler.millisUntilAvailable(keys))
+    }
+
+    @Test
+    fun testRetainKeysDropsDeletedKeyState() {
+        scheduler.onResponse("sk-aaaa", 429, headersOf("retry-after", "30"), 100)
+        scheduler.retainKeys(listOf("sk-bbbb", "sk-cccc"))
+        // 同一个Key重新加入密钥池时从全新状态开始
+        assertEquals(0L, scheduler.millisUntilAvailable(listOf("sk-aaaa")))
+    }
+
+    @Test
+    fun testHedgeDelayUsesP95AfterEnoughSamples() {
+        assertNull(scheduler.hedgeDelayMs("sk-aaaa"))
+        for (i in 1..100) {
+            scheduler.onResponse("sk-aaaa", 200, headersOf(), i * 10L)
+        }
+        val delay = scheduler.hedgeDelayMs("sk-aaaa")
+        assertNotNull(delay)
+        // 仅保留最近64个样本（370ms..1000ms），p95约为970ms
+        assertTrue(delay!! in 900L..1000L)
+        assertEquals("sk-bbbb", scheduler.selectKey(keys, exclude = "sk-aaaa", requireHealthy = true))
+    }
+
+    /**
+     * 对本地限流服务发出真实请求：额度耗尽的Key只被打到一次，限量Key在窗口内不超限，
+     * 遇到429时仍有健康Key可以立即换Key重试，所有请求都成功。
+     */
+    @Test
+    @MediumTest
+    fun testLocalRateLimitedServer() = runBlocking {
+        val server = RateLimitedServer(mapOf("sk-aaaa" to 0, "sk-bbbb" to 5, "sk-cccc" to 1000), windowMs = 60_000)
+        val client = OkHttpClient()
+        val liveScheduler = ApiKeyScheduler()
+        val provider = SchedulerKeyProvider(liveScheduler, keys)
+        try {
+            repeat(40) {
+                var key = provider.getApiKey()
+                while (true) {
+                    val call = client.newCall(
+                        Request.Builder().url(server.url).header("Authorization", "Bearer $key").build()
+                    )
+                    val code = provider.executeTracked(call, key).use { it.code }
+                    provider.onRequestFinished(key, null)
+                    if (code == 200) break
+                    assertEquals(429, code)
+                    // 换Key不需要等待：仍有健康的Key
+                    assertEquals(0L, liveScheduler.millisUntilAvailable(keys))
+                    key = provider.getApiKey()
+                }
+            }
+        } finally {
+            server.close()
+        }
+
+        assertEquals(1, server.throttled["sk-aaaa"]?.get())
+        assertNull(server.throttled["sk-bbbb"])
+        val servedB = server.served["sk-bbbb"]?.get() ?: 0
+        val servedC = server.served["sk-cccc"]?.get() ?: 0
+        assertTrue(servedB in 1..5)
+        assertEquals(40, servedB + servedC)
+    }
+
+    @Test
+    fun testParseResetDelay() {
+        assertEquals(1_000L, ApiKeyScheduler.parseResetDelayMs("1s"))
+        assertEquals(360_000L, ApiKeyScheduler.parseResetDelayMs("6m0s"))
+        assertEquals(120L, ApiKeyScheduler.parseResetDelayMs("120ms"))
+        assertEquals(3_723_500L, ApiKeyScheduler.parseResetDelayMs("1h2m3.5s"))
+        assertEquals(20_000L, ApiKeyScheduler.parseResetDelayMs("20"))
+        assertEquals(
+            30_000L,
+            ApiKeyScheduler.parseResetDelayMs("1970-01-01T00:00:30Z", nowEpochMs = 0)
+        )
+        assertNull(ApiKeyScheduler.parseResetDelayMs("soon"))
+        assertNull(ApiKeyScheduler.parseResetDelayMs(null))
+    }
+
+    /**
+     * 模拟：3个Key，其中一个每分钟只允许少量请求。
+     * 调度器应把绝大多数请求分配给未被限流的Key，且不会在限流窗口内重复打到被限流的Key。
+     */
+    @Test
+    fun testSimulatedRateLimitedPool() {
+        val perMinuteLimit = mapOf("sk-aaaa" to 5, "sk-bbbb" to 1000, "sk-cccc" to 1000)
+        val usedInWindow = HashMap<String, Int>()
+        var throttled = 0
+
+        for (request in 0 until 600) {
+            now = request * 100L
+            if (now % 60_000 == 0L) usedInWindow.clear()
+
+            val key = scheduler.selectKey(keys)!!
+            scheduler.onRequestStarted(key)
+            val used = (usedInWindow[key] ?: 0) + 1
+            usedInWindow[key] = used
+            val limit = perMinuteLimit.getValue(key)
+            val resetIn = "${60_000 - now % 60_000}ms"
+            if (used > limit) {
+                throttled++
+                scheduler.onResponse(key, 429, headersOf("x-ratelimit-reset-requests", resetIn), 50)
+            } else {
+                scheduler.onResponse(
+                    key, 200,
+                    headersOf(
+                        "x-ratelimit-remaining-requests", (limit - used).toString(),
+                        "x-ratelimit-reset-requests", resetIn
+                    ),
+                    300
+                )
+            }
+            scheduler.onRequestFinished(key, null)
+        }
+
+        assertEquals(0, throttled)
+    }
+}
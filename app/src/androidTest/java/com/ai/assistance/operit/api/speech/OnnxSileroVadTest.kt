@@ -0,0 +1,144 @@
+package com.ai.assistance.operit.api.speech
+
+import android.os.Debug
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import kotlin.math.PI
+import kotlin.math.sin
+import kotlin.random.Random
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class OnnxSileroVadTest {
+
+    companion object {
+        private const val SAMPLE_RATE = 16000
+        private const val FRAME_SIZE = 512
+    }
+
+    private lateinit var vad: OnnxSileroVad
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        assumeTrue(
+            "Silero VAD model not bundled",
+            context.assets.list("models")?.contains("silero_vad.onnx") == true
+        )
+        vad = OnnxSileroVad(context = context)
+    }
+
+    @After
+    fun tearDown() {
+        if (::vad.isInitialized) vad.close()
+    }
+
+    @Test
+    fun testStreamingInputMatchesFrameByFrame() {
+        val pcm = loadPcm(seconds = 6)
+
+        val perFrame = ArrayList<Boolean>()
+        val frame = ShortArray(FRAME_SIZE)
+        for (offset in 0..pcm.size - FRAME_SIZE step FRAME_SIZE) {
+            System.arraycopy(pcm, offset, frame, 0, FRAME_SIZE)
+            perFrame.add(vad.isSpeech(frame))
+        }
+
+        // 按不规则长度切块输入，每块最多凑满一帧，便于逐帧比较
+        vad.reset()
+        val streamed = ArrayList<Boolean>()
+        var offset = 0
+        var chunk = 0
+        while (offset < pcm.size) {
+            val length = minOf(listOf(160, 512, 97, 333)[chunk++ % 4], pcm.size - offset)
+            val before = vad.processedFrames
+            val speech = vad.acceptSamples(pcm, offset, length)
+            if (vad.processedFrames > before) streamed.add(speech)
+            offset += length
+        }
+
+        assertEquals(perFrame, streamed)
+    }
+
+    /** 每秒音频的分配次数与 CPU 耗时，可通过 -e vadPcmPath 指定 16kHz 单声道 PCM16 录音 */
+    @Test
+    @LargeTest
+    @Suppress("DEPRECATION")
+    fun benchmarkAllocationsAndCpuPerAudioSecond() {
+        val pcm = loadPcm(seconds = 60)
+        val audioSeconds = pcm.size.toDouble() / SAMPLE_RATE
+        val chunk = 1024
+
+        // 预热，让 ORT 完成首帧的内存规划
+        vad.acceptSamples(pcm, 0, SAMPLE_RATE)
+        vad.reset()
+
+        Debug.resetThreadAllocCount()
+        Debug.startAllocCounting()
+        val cpuStart = Debug.threadCpuTimeNanos()
+        var offset = 0
+        while (offset < pcm.size) {
+            val length = minOf(chunk, pcm.size - offset)
+            vad.acceptSamples(pcm, offset, length)
+            offset += length
+        }
+        val cpuNs = Debug.threadCpuTimeNanos() - cpuStart
+        Debug.stopAllocCounting()
+        val allocations = Debug.getThreadAllocCount()
+        val allocatedBytes = Debug.getThreadAllocSize()
+
+        val allocationsPerSecond = allocations / audioSeconds
+        val cpuMsPerAudioSecond = cpuNs / 1_000_000.0 / audioSeconds
+        Log.i(
+            "SileroVadBenchmark",
+            "audio=${"%.1f".format(audioSeconds)}s frames=${vad.processedFrames} " +
+                "allocations/s=${"%.1f".format(allocationsPerSecond)} " +
+                "bytes/s=${"%.0f".format(allocatedBytes / audioSeconds)} " +
+                "cpu=${"%.2f".format(cpuMsPerAudioSecond)}ms per audio second"
+        )
+        // 每帧只剩 ORT 返回的结果对象等少量分配，不再随帧长度增长
+        assertTrue(allocatedBytes / vad.processedFrames < FRAME_SIZE * 4)
+    }
+
+    private fun loadPcm(seconds: Int): ShortArray {
+        val path = InstrumentationRegistry.getArguments().getString("vadPcmPath")
+        if (path != null && File(path).exists()) {
+            val bytes = File(path).readBytes()
+            val samples = ShortArray(bytes.size / 2)
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples)
+            return samples
+        }
+        return syntheticSpeech(seconds)
+    }
+
+    /** 人声频段的调幅谐波与静音交替，叠加底噪 */
+    private fun syntheticSpeech(seconds: Int): ShortArray {
+        val random = Random(3)
+        return ShortArray(SAMPLE_RATE * seconds) { i ->
+            val t = i.toDouble() / SAMPLE_RATE
+            val voiced = (t % 3.0) < 1.8
+            val noise = random.nextDouble(-300.0, 300.0)
+            val voice = if (voiced) {
+                val envelope = 0.5 + 0.5 * sin(2 * PI * 4 * t)
+                val pitch = 140 + 30 * sin(2 * PI * 0.7 * t)
+                envelope * (6000 * sin(2 * PI * pitch * t) + 3000 * sin(4 * PI * pitch * t) + 1500 * sin(6 * PI * pitch * t))
+            } else {
+                0.0
+            }
+            (voice + noise).coerceIn(-32768.0, 32767.0).toInt().toShort()
+        }
+    }
+}
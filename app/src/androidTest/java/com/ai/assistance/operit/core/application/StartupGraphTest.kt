@@ -0,0 +1,149 @@
+package com.ai.assistance.operit.core.application
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.MediumTest
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class StartupGraphTest {
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val events: MutableList<String> = Collections.synchronizedList(ArrayList())
+
+    // 手动触发的"主线程空闲"信号
+    private var idleCallback: (() -> Unit)? = null
+
+    private fun newGraph() = StartupGraph(scope, idleDelayMs = 0, onMainThreadIdle = { idleCallback = it })
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+    }
+
+    @Test
+    fun testMainTasksRunSynchronouslyInDependencyOrder() {
+        val graph = newGraph()
+        graph.main("b", dependsOn = listOf("a")) { events.add("b") }
+        graph.main("a") { events.add("a") }
+        graph.main("c") { events.add("c") }
+        graph.start()
+
+        // "a" 先于依赖它的 "b"，其余保持注册顺序
+        assertEquals(listOf("a", "c", "b"), events.toList())
+    }
+
+    @Test
+    fun testIndependentBackgroundTasksRunInParallel() {
+        val graph = newGraph()
+        val bothRunning = CountDownLatch(2)
+        repeat(2) { index ->
+            graph.background("task$index") {
+                bothRunning.countDown()
+                // 只有两个任务同时在执行时才能通过
+                assertTrue(bothRunning.await(5, TimeUnit.SECONDS))
+            }
+        }
+        graph.start()
+        runBlocking { withTimeout(10_000) { graph.awaitAll() } }
+        assertTrue(graph.trace.spans().all { it.error == null })
+    }
+
+    @Test
+    fun testBackgroundTaskWaitsForDependencies() {
+        val graph = newGraph()
+        graph.main("prefs") { events.add("prefs") }
+        graph.background("loader") { events.add("loader") }
+        graph.background("consumer", dependsOn = listOf("prefs", "loader")) { events.add("consumer") }
+        graph.start()
+        runBlocking { withTimeout(10_000) { graph.awaitAll() } }
+
+        assertEquals("consumer", events.last())
+    }
+
+    @Test
+    fun testIdleTasksWaitForIdleSignalUnlessAwaited() {
+        val graph = newGraph()
+        graph.idle("heavy") { events.add("heavy") }
+        graph.idle("later") { events.add("later") }
+        graph.start()
+
+        runBlocking {
+            withTimeout(10_000) { graph.await("heavy") }
+            assertEquals(listOf("heavy"), events.toList())
+
+            idleCallback!!.invoke()
+            withTimeout(10_000) { graph.awaitAll() }
+        }
+        assertEquals(listOf("heavy", "later"), events.toList())
+    }
+
+    @Test
+    fun testFailedBackgroundTaskDoesNotBlockDependents() {
+        val graph = newGraph()
+        graph.background("broken") { throw IllegalStateException("boom") }
+        graph.background("after", dependsOn = listOf("broken")) { events.add("after") }
+        graph.start()
+        runBlocking { withTimeout(10_000) { graph.awaitAll() } }
+
+        assertEquals(listOf("after"), events.toList())
+        assertEquals("boom", graph.trace.spans().first { it.name == "broken" }.error)
+    }
+
+    @Test
+    fun testInvalidGraphsAreRejected() {
+        expectInvalid { main("a", dependsOn = listOf("missing")) {} }
+        expectInvalid {
+            main("a", dependsOn = listOf("b")) {}
+            main("b", dependsOn = listOf("a")) {}
+        }
+        expectInvalid {
+            background("bg") {}
+            main("a", dependsOn = listOf("bg")) {}
+        }
+    }
+
+    @Test
+    fun testTraceExportsChromeTraceEvents() {
+        val graph = newGraph()
+        graph.main("a") {}
+        graph.background("b") {}
+        graph.start()
+        runBlocking { withTimeout(10_000) { graph.awaitAll() } }
+
+        val traceEvents = JSONObject(graph.trace.toChromeTraceJson()).getJSONArray("traceEvents")
+        val names = (0 until traceEvents.length())
+            .map { traceEvents.getJSONObject(it) }
+            .filter { it.getString("ph") == "X" }
+            .map { it.getString("name") }
+        assertEquals(setOf("a", "b"), names.toSet())
+        assertFalse(graph.trace.summary().isBlank())
+    }
+
+    private fun expectInvalid(block: StartupGraph.() -> Unit) {
+        val graph = newGraph()
+        graph.block()
+        try {
+            graph.start()
+            fail("Expected invalid startup graph to be rejected")
+        } catch (e: IllegalStateException) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.ai.assistance.operit.core.tools.defaultTool.standard
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import java.io.File
+import java.io.Reader
+import java.io.StringReader
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import okhttp3.OkHttpClient
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** 无头网页访问：流式提取、JS 页面识别、ETag 重新验证与磁盘缓存淘汰，以及本地页面的提取吞吐量 */
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class HeadlessWebFetcherTest {
+
+    /**
+     * 本地 HTTP 服务，按路径返回保存的页面，支持 ETag 条件请求
+     */
+    private class FixtureServer {
+        class Page(val body: ByteArray, val contentType: String, val etag: String?, val status: Int = 200)
+
+        private val socket = ServerSocket(0)
+        val pages = ConcurrentHashMap<String, Page>()
+        val requests = AtomicInteger()
+        val notModified = AtomicInteger()
+
+        init {
+            thread(isDaemon = true) {
+                while (!socket.isClosed) {
+                    val client = try {
+                        socket.accept()
+                    } catch (e: Exception) {
+                        break
+                    }
+                    thread(isDaemon = true) { client.use { handle(it) } }
+                }
+            }
+        }
+
+        fun url(path: String) = "http://127.0.0.1:${socket.localPort}$path"
+
+        fun html(path: String, html: String, etag: String? = "\"${html.hashCode()}\"") {
+            pages[path] = Page(html.toByteArray(), "text/html; charset=utf-8", etag)
+        }
+
+        private fun handle(client: Socket) {
+            val reader = client.getInputStream().bufferedReader(Charsets.ISO_8859_1)
+            val requestLine = reader.readLine() ?: return
+            val headers = generateSequence { reader.readLine()?.takeIf { it.isNotEmpty() } }
+                .associate { it.substringBefore(':').trim().lowercase() to it.substringAfter(':').trim() }
+            requests.incrementAndGet()
+            val out = client.getOutputStream()
+            val page = pages[requestLine.split(' ')[1]]
+            if (page == null) {
+                out.write("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".toByteArray())
+                return
+            }
+            if (page.etag != null && headers["if-none-match"] == page.etag) {
+                notModified.incrementAndGet()
+                out.write("HTTP/1.1 304 Not Modified\r\nETag: ${page.etag}\r\nConnection: close\r\n\r\n".toByteArray())
+                return
+            }
+            val etag = page.etag?.let { "ETag: $it\r\n" }.orEmpty()
+            out.write(
+                ("HTTP/1.1 ${page.status} OK\r\nContent-Type: ${page.contentType}\r\n" +
+                    "Content-Length: ${page.body.size}\r\n${etag}Connection: close\r\n\r\n").toByteArray()
+            )
+            out.write(page.body)
+            out.flush()
+        }
+
+        fun close() = socket.close()
+    }
+
+    /** 每次只返回一个字符，检验跨缓冲区边界的解析 */
+    private class OneCharReader(private val inner: Reader) : Reader() {
+        override fun read(cbuf: CharArray, off: Int, len: Int): Int = inner.read(cbuf, off, minOf(len, 1))
+        override fun close() = inner.close()
+    }
+
+    private val client = OkHttpClient.Builder()
+        .connectTimeout(5, TimeUnit.SECONDS)
+        .readTimeout(5, TimeUnit.SECONDS)
+        .build()
+
+    private lateinit var server: FixtureServer
+    private lateinit var dir: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        dir = File(context.cacheDir, "headless_web_fetcher_test").apply {
+            deleteRecursively()
+            mkdirs()
+        }
+        server = FixtureServer()
+    }
+
+    @After
+    fun tearDown() {
+        server.close()
+        dir.deleteRecursively()
+    }
+
+    private fun fetcher(cache: WebPageCache = WebPageCache(dir)) = HeadlessWebFetcher(client, cache, "test-agent")
+
+    private fun article(index: Int, paragraphs: Int = 20): String = buildString {
+        append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>Article $index &amp; notes</title>")
+        append("<meta name=\"description\" content=\"Summary of article $index\">")
+        append("<style>body { color: red; }</style><script>var tracking = '<p>not text</p>';</script></head><body>")
+        append("<nav><a href=\"/\">Home</a> | <a href=\"/a/${index + 1}\">Next</a></nav><article><h1>Heading $index</h1>")
+        repeat(paragraphs) { p ->
+            append("<p>Paragraph $p of article $index explains <b>streaming</b> extraction &mdash; ")
+            append("with <a href=\"ref/$p?x=1&amp;y=2\">reference $p</a> and some more words to read.</p>\n")
+        }
+        append("</article><footer>&copy; 2024</footer></body></html>")
+    }
+
+    @Test
+    fun testExtractsReadableTextLinksAndMetadata() {
+        val html = """
+            <html><head><title> A &lt;b&gt; &#x263A; title </title>
+            <base href="https://example.com/docs/">
+            <meta property="og:title" content="OG"><meta name="viewport" content="width=device-width">
+            <script>if (a < b) { document.write("</div>"); }</script><!-- <p>comment</p> --></head>
+            <body><div>First   line<br>second line</div>
+            <p>Para&nbsp;one &amp; <a href="page.html">the <i>link</i></a>.</p><p>Para two</p>
+            <template><p>template</p></template><div hidden><span>hidden</span><div>nested</div></div>
+            <svg><text>chart</text></svg><pre>  keep
+              spaces</pre>
+            <table><tr><td>a</td><td>b</td></tr></table><a href="javascript:void(0)">js</a></body></html>
+        """.trimIndent()
+
+        val page = WebPageExtractor.extract(StringReader(html), "https://example.com/index.html")
+        assertEquals("A <b> ☺ title", page.title)
+        assertEquals(mapOf("og:title" to "OG"), page.metadata)
+        assertEquals(
+            "First line\nsecond line\n\nPara one & the link.\n\nPara two\n\n  keep\n  spaces\na\tb\njs",
+            page.content
+        )
+        assertEquals(listOf("https://example.com/docs/page.html"), page.links.map { it.url })
+        assertEquals("the link", page.links.single().text)
+        assertEquals(1, page.scriptCount)
+
+        // 输入按任意位置切分时结果不变
+        assertEquals(page, WebPageExtractor.extract(OneCharReader(StringReader(html)), "https://example.com/index.html"))
+        val big = article(7, paragraphs = 200)
+        assertEquals(
+            WebPageExtractor.extract(StringReader(big), "http://h/a/7"),
+            WebPageExtractor.extract(OneCharReader(StringReader(big)), "http://h/a/7")
+        )
+    }
+
+    @Test
+    fun testDetectsPagesThatNeedJavaScript() {
+        fun needsJs(html: String) = WebPageExtractor.extract(StringReader(html), "http://h/").needsJavaScript
+
+        assertTrue(needsJs("<html><body><div id=\"root\"></div><script src=\"/app.js\"></script></body></html>"))
+        assertTrue(needsJs("<body><div id=\"__next\"><p>Loading...</p></div></body>"))
+        assertTrue(needsJs("<body><noscript>You need to enable JavaScript to run this app.</noscript><main></main></body>"))
+        assertFalse(needsJs(article(1)))
+        // 很短但没有脚本的静态页面
+        assertFalse(needsJs("<html><body><p>Short static note.</p></body></html>"))
+    }
+
+    @Test
+    fun testRevalidatesWithEtagAndFallsBack() = runBlocking {
+        server.html("/a", article(1))
+        server.html("/spa", "<html><body><div id=\"app\"></div><script src=\"x.js\"></script></body></html>")
+        server.pages["/file.pdf"] = FixtureServer.Page(ByteArray(100), "application/pdf", null)
+        server.pages["/error"] = FixtureServer.Page("<p>oops</p>".toByteArray(), "text/html", null, status = 500)
+
+        val first = fetcher().fetch(server.url("/a"))!!
+        assertEquals("Article 1 & notes", first.title)
+        assertEquals("Summary of article 1", first.metadata["description"])
+        assertTrue(first.content.startsWith("Home | Next\n\nHeading 1\n\nParagraph 0 of article 1 explains streaming extraction — with reference 0"))
+        assertEquals(server.url("/ref/3?x=1&y=2"), first.links.first { it.text == "reference 3" }.url)
+
+        // 新的缓存实例模拟应用重启：带 If-None-Match 请求，304 后使用磁盘上的内容
+        val second = fetcher().fetch(server.url("/a"))
+        assertEquals(first, second)
+        assertEquals(1, server.notModified.get())
+
+        // 内容变化后 ETag 不同，重新提取
+        server.html("/a", article(2))
+        assertEquals("Article 2 & notes", fetcher().fetch(server.url("/a"))!!.title)
+
+        // 依赖 JS 的页面、非 HTML、错误状态都交给 WebView，且不写入缓存
+        assertNull(fetcher().fetch(server.url("/spa")))
+        assertNull(fetcher().fetch(server.url("/file.pdf")))
+        assertNull(fetcher().fetch(server.url("/error")))
+        assertNull(WebPageCache(dir).get(server.url("/spa")))
+
+        // 网络不可用时返回已缓存的内容
+        server.close()
+        assertEquals("Article 2 & notes", fetcher().fetch(server.url("/a"))!!.title)
+        assertNull(fetcher().fetch(server.url("/missing")))
+    }
+
+    @Test
+    fun testEvictsLeastRecentlyUsedBeyondSizeLimit() {
+        val page = WebPageExtractor.extract(StringReader(article(1)), "http://h/")
+        val probe = WebPageCache(File(dir, "probe"))
+        probe.put(WebPageCache.Entry("http://h/0", page, etag = "\"0\""))
+        val entrySize = probe.size()
+        val limited = WebPageCache(dir, maxBytes = entrySize * 5 + entrySize / 2)
+
+        for (i in 0 until 5) {
+            limited.put(WebPageCache.Entry("http://h/$i", page, etag = "\"$i\""))
+            Thread.sleep(20)
+        }
+        // 读取会刷新使用时间
+        assertNotNull(limited.get("http://h/0"))
+        Thread.sleep(20)
+        limited.put(WebPageCache.Entry("http://h/5", page, etag = "\"5\""))
+
+        assertTrue(limited.size() <= entrySize * 5 + entrySize / 2)
+        assertNotNull(limited.get("http://h/0"))
+        assertNull(limited.get("http://h/1"))
+        assertNotNull(limited.get("http://h/5"))
+
+        // 访问记录与页面共用同一目录，应用重启后仍可读取
+        limited.putVisit("key-1", WebPageCache.VisitRecord("http://h/0", "t", page.links))
+        assertEquals(page.links, WebPageCache(dir).getVisit("key-1")!!.links)
+    }
+
+    /**
+     * 本地服务上的 40 个保存页面（每个约 100KB）：纯提取吞吐量、逐个获取与 4 路并发获取，
+     * 以及缓存命中后 304 重新验证的耗时
+     */
+    @Test
+    @LargeTest
+    fun benchmarkExtractionThroughput() = runBlocking {
+        val pageCount = 40
+        val htmls = (0 until pageCount).map { article(it, paragraphs = 400) }
+        htmls.forEachIndexed { i, html -> server.html("/a/$i", html) }
+        val totalBytes = htmls.sumOf { it.length }.toDouble()
+
+        // 预热后取 5 轮的中位数
+        repeat(3) { htmls.forEach { WebPageExtractor.extract(StringReader(it), "http://h/") } }
+        val parseMs = (0 until 5).map {
+            val start = System.nanoTime()
+            htmls.forEach { WebPageExtractor.extract(StringReader(it), "http://h/") }
+            (System.nanoTime() - start) / 1_000_000.0
+        }.sorted()[2]
+
+        val sequentialStart = System.nanoTime()
+        val sequentialFetcher = fetcher(WebPageCache(File(dir, "seq")))
+        (0 until pageCount).forEach { assertNotNull(sequentialFetcher.fetch(server.url("/a/$it"))) }
+        val sequentialMs = (System.nanoTime() - sequentialStart) / 1_000_000.0
+
+        val parallelStart = System.nanoTime()
+        val parallelFetcher = fetcher(WebPageCache(File(dir, "par")))
+        (0 until pageCount).map { async { parallelFetcher.fetch(server.url("/a/$it")) } }.awaitAll().forEach { assertNotNull(it) }
+        val parallelMs = (System.nanoTime() - parallelStart) / 1_000_000.0
+
+        val revalidateStart = System.nanoTime()
+        (0 until pageCount).forEach { assertNotNull(parallelFetcher.fetch(server.url("/a/$it"))) }
+        val revalidateMs = (System.nanoTime() - revalidateStart) / 1_000_000.0
+        assertEquals(pageCount, server.notModified.get())
+
+        Log.i(
+            "HeadlessWebBenchmark",
+            "pages=$pageCount avgKB=${"%.0f".format(totalBytes / pageCount / 1024)} " +
+                "extract=${"%.1f".format(totalBytes / 1024 / 1024 / (parseMs / 1000))}MB/s " +
+                "(${"%.2f".format(parseMs / pageCount)}ms/page) " +
+                "fetchSequential=${"%.2f".format(sequentialMs / pageCount)}ms/page " +
+                "fetchParallel4=${"%.2f".format(parallelMs / pageCount)}ms/page " +
+                "revalidate304=${"%.2f".format(revalidateMs / pageCount)}ms/page"
+        )
+        assertTrue(revalidateMs < sequentialMs)
+    }
+}
@@ -0,0 +1,207 @@
+package com.ai.assistance.operit.core.tools.javascript
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class JsEnginePoolTest {
+
+    private class FakeEngine(val id: Int) {
+        var cachedKey: String? = null
+        var destroyed = false
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val nextId = AtomicInteger()
+    private var now = 0L
+
+    private fun newPool(min: Int = 0, max: Int = 2, idleTimeoutMs: Long = 1_000) =
+        JsEnginePool(
+            minSize = min,
+            maxSize = max,
+            idleTimeoutMs = idleTimeoutMs,
+            scope = scope,
+            create = { FakeEngine(nextId.getAndIncrement()) },
+            destroy = { it.destroyed = true },
+            clock = { now }
+        )
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+    }
+
+    @Test
+    fun testGrowsUpToMaxThenQueues() = runBlocking {
+        val pool = newPool(max = 2)
+        val first = pool.acquire()
+        val second = pool.acquire()
+        assertEquals(2, pool.metrics().size)
+
+        val third = async { pool.acquire() }
+        delay(100)
+        assertEquals(1, pool.metrics().waiting)
+
+        now += 50
+        pool.release(first)
+        assertSame(first, withTimeout(5_000) { third.await() })
+
+        val metrics = pool.metrics()
+        assertEquals(2, metrics.created)
+        assertEquals(1, metrics.queuedAcquisitions)
+        assertEquals(50, metrics.maxQueueWaitMs)
+        pool.release(second)
+        pool.release(first)
+    }
+
+    @Test
+    fun testPrefersEngineWithCachedScript() = runBlocking {
+        val pool = newPool(max = 3)
+        val engines = List(3) { pool.acquire() }
+        engines[1].cachedKey = "pkg"
+        engines.forEach { pool.release(it) }
+
+        val preferred = pool.acquire { it.cachedKey == "pkg" }
+        assertSame(engines[1], preferred)
+        // 无偏好时复用最近归还的引擎
+        assertSame(engines[2], pool.acquire())
+    }
+
+    @Test
+    fun testIdleEnginesAreEvictedDownToMinSize() = runBlocking {
+        val pool = newPool(min = 1, max = 3, idleTimeoutMs = 1_000)
+        val engines = List(3) { pool.acquire() }
+        engines.forEach { pool.release(it) }
+
+        now += 999
+        assertEquals(0, pool.evictIdle())
+        now += 1
+        assertEquals(2, pool.evictIdle())
+
+        val metrics = pool.metrics()
+        assertEquals(1, metrics.size)
+        assertEquals(2, metrics.evicted)
+        assertEquals(2, engines.count { it.destroyed })
+    }
+
+    @Test
+    fun testPrewarmCreatesMinEngines() = runBlocking {
+        val pool = newPool(min = 2, max = 4)
+        pool.prewarm()
+        withTimeout(5_000) {
+            while (pool.metrics().idle < 2) delay(10)
+        }
+        assertEquals(2, pool.metrics().created)
+    }
+
+    @Test
+    fun testCancelledWaiterDoesNotLeakEngine() = runBlocking {
+        val pool = newPool(max = 1)
+        val engine = pool.acquire()
+        val waiter = launch(Dispatchers.IO) { pool.acquire() }
+        delay(100)
+        waiter.cancel()
+        waiter.join()
+
+        pool.release(engine)
+        assertEquals(1, pool.metrics().idle)
+        assertEquals(0, pool.metrics().waiting)
+    }
+
+    /** 缓存的模块每次调用都重新执行顶层代码，包的顶层变量不会残留到下一次调用 */
+    @Test
+    fun testCachedModuleTopLevelIsFreshPerCall() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        val engine = JsEngine(context)
+        try {
+            val script = """
+                var sessionName = null;
+                exports.open = function (params) {
+                    if (sessionName === null) sessionName = params.name;
+                    complete({ session: sessionName });
+                };
+            """.trimIndent()
+            val scriptKey = "state@${script.hashCode()}"
+            val first = engine.executeScriptFunction(script, "open", mapOf("name" to "first"), scriptKey = scriptKey)
+            assertTrue(engine.hasCachedScript(scriptKey))
+            val second = engine.executeScriptFunction(script, "open", mapOf("name" to "second"), scriptKey = scriptKey)
+            assertTrue(first.toString(), first.toString().contains("first"))
+            assertTrue(second.toString(), second.toString().contains("second"))
+        } finally {
+            engine.destroy()
+        }
+    }
+
+    /** 基准：使用真实 JsEngine 并发执行同一个包的工具函数，输出排队与初始化统计 */
+    @Test
+    @LargeTest
+    fun benchmarkConcurrentPackageToolCalls() = runBlocking {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        val concurrency = 16
+        val rounds = 4
+        val pool = JsEnginePool(
+            minSize = 1,
+            maxSize = 8,
+            idleTimeoutMs = 60_000,
+            scope = scope,
+            create = { JsEngine(context).apply { warmUp() } },
+            destroy = { it.destroy() }
+        )
+        val script = buildString {
+            repeat(500) { append("function helper$it(a) { return a + $it; }\n") }
+            append("exports.add = function (params) { complete({ sum: Number(params.a) + Number(params.b) }); };\n")
+        }
+        val scriptKey = "bench@${script.hashCode()}"
+
+        val start = System.nanoTime()
+        repeat(rounds) {
+            (0 until concurrency).map { i ->
+                async(Dispatchers.IO) {
+                    val engine = pool.acquire { it.hasCachedScript(scriptKey) }
+                    try {
+                        engine.executeScriptFunction(
+                            script,
+                            "add",
+                            mapOf("a" to i, "b" to 1),
+                            scriptKey = scriptKey
+                        )
+                    } finally {
+                        pool.release(engine)
+                    }
+                }
+            }.awaitAll().forEach { result ->
+                assertTrue(result.toString(), result.toString().contains("sum"))
+            }
+        }
+        val elapsedMs = (System.nanoTime() - start) / 1_000_000
+        val metrics = pool.metrics()
+        Log.i(
+            "JsEnginePoolBenchmark",
+            "$rounds x $concurrency calls in ${elapsedMs}ms, engines=${metrics.size}, " +
+                "avgInit=${metrics.averageInitMs}ms, queued=${metrics.queuedAcquisitions}, " +
+                "avgWait=${metrics.averageQueueWaitMs}ms, maxWait=${metrics.maxQueueWaitMs}ms"
+        )
+        pool.close()
+    }
+}
@@ -0,0 +1,200 @@
+package com.ai.assistance.operit.core.tools.packTool
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.ai.assistance.operit.core.tools.AIToolHandler
+import com.ai.assistance.operit.core.tools.LocalizedText
+import com.ai.assistance.operit.core.tools.PackageTool
+import com.ai.assistance.operit.core.tools.ToolPackage
+import java.io.File
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class PackageMetadataIndexTest {
+
+    companion object {
+        private const val TAG = "PackageMetadataIndexTest"
+        private const val PACKAGE_COUNT = 200
+    }
+
+    private lateinit var workDir: File
+    private lateinit var packagesDir: File
+    private lateinit var indexFile: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        workDir = File(context.cacheDir, "package_index_test_${System.nanoTime()}")
+        packagesDir = File(workDir, "packages").apply { mkdirs() }
+        indexFile = File(workDir, "index.json")
+        repeat(PACKAGE_COUNT) { i -> writePackage(File(packagesDir, "pkg_$i.js"), "pkg_$i", "v1") }
+    }
+
+    @After
+    fun tearDown() {
+        workDir.deleteRecursively()
+    }
+
+    @Test
+    fun testWarmLoadSkipsParsing() {
+        val coldMs = timeLoad { index ->
+            assertEquals(PACKAGE_COUNT, index.parseCount)
+        }
+        val warmMs = timeLoad { index ->
+            assertEquals(0, index.parseCount)
+            assertEquals(PACKAGE_COUNT, index.hitCount)
+        }
+        Log.i(TAG, "$PACKAGE_COUNT packages: cold=${coldMs}ms warm=${warmMs}ms")
+    }
+
+    @Test
+    fun testChangedFileIsReparsedAndTouchedFileIsNot() {
+        timeLoad { }
+
+        val changed = File(packagesDir, "pkg_1.js")
+        writePackage(changed, "pkg_1", "v2 with a longer description")
+        val touched = File(packagesDir, "pkg_2.js")
+        touched.setLastModified(touched.lastModified() + 10_000)
+
+        val index = PackageMetadataIndex(indexFile)
+        index.load()
+        val result = loadAll(index)
+        index.save()
+
+        assertEquals(1, index.parseCount)
+        assertEquals(
+            "v2 with a longer description",
+            result.getValue("pkg_1").description.resolve("")
+        )
+        // 元数据中不保留脚本
+        assertTrue(result.values.all { pkg -> pkg.tools.all { it.script.isEmpty() } })
+    }
+
+    @Test
+    fun testDeletedFileIsDroppedFromIndex() {
+        timeLoad { }
+        File(packagesDir, "pkg_0.js").delete()
+
+        timeLoad { index -> assertEquals(PACKAGE_COUNT - 1, index.hitCount) }
+        timeLoad { index ->
+            assertEquals(0, index.parseCount)
+            assertEquals(PACKAGE_COUNT - 1, index.hitCount)
+        }
+    }
+
+    /**
+     * 模拟进程冷启动：每轮创建新的 PackageManager 实例，对比没有持久化索引（首次启动或索引失效）
+     * 与索引已存在时的首次加载耗时。包含全部内置包和 [PACKAGE_COUNT] 个外部包
+     */
+    @Test
+    @LargeTest
+    fun benchmarkColdPackageManagerInit() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        val toolHandler = AIToolHandler.getInstance(context)
+        repeat(PACKAGE_COUNT) { i -> writeToolPackage(File(packagesDir, "pkg_$i.js"), "pkg_$i") }
+
+        fun coldInitMs(): Long {
+            val manager = PackageManager.createDetached(context, toolHandler, indexFile, packagesDir)
+            val start = System.nanoTime()
+            manager.getImportedPackages()
+            val elapsedMs = (System.nanoTime() - start) / 1_000_000
+            assertNotNull(manager.resolvePackageForDisplay("pkg_${PACKAGE_COUNT - 1}"))
+            return elapsedMs
+        }
+
+        val withoutIndex = (0 until 5).map {
+            indexFile.delete()
+            coldInitMs()
+        }.sorted()[2]
+        assertTrue(indexFile.exists())
+        val withIndex = (0 until 5).map { coldInitMs() }.sorted()[2]
+        Log.i(
+            TAG,
+            "PackageManager cold init with $PACKAGE_COUNT external packages (median of 5): " +
+                "no index=${withoutIndex}ms, persisted index=${withIndex}ms"
+        )
+    }
+
+    private fun timeLoad(check: (PackageMetadataIndex) -> Unit): Long {
+        val start = System.nanoTime()
+        val index = PackageMetadataIndex(indexFile)
+        index.load()
+        loadAll(index)
+        index.save()
+        val elapsedMs = (System.nanoTime() - start) / 1_000_000
+        check(index)
+        return elapsedMs
+    }
+
+    private fun loadAll(index: PackageMetadataIndex): Map<String, ToolPackage> {
+        val result = HashMap<String, ToolPackage>()
+        packagesDir.listFiles()!!.sortedBy { it.name }.forEach { file ->
+            index.resolveFile("file:${file.name}", file, ::parsePackage)?.let { result[it.name] = it }
+        }
+        return result
+    }
+
+    /** 与 PackageManager 相同：从 METADATA 注释块中提取元数据 */
+    private fun parsePackage(content: String): ToolPackage? {
+        val match = Regex("""/\*\s*METADATA\s*([\s\S]*?)\*/""").find(content) ?: return null
+        val lines = match.groupValues[1].trim().lines()
+        val name = lines.first { it.startsWith("name:") }.substringAfter(":").trim()
+        val description = lines.first { it.startsWith("description:") }.substringAfter(":").trim()
+        return ToolPackage(
+            name = name,
+            description = LocalizedText.of(description),
+            tools = listOf(
+                PackageTool(
+                    name = "run",
+                    description = LocalizedText.of("run"),
+                    parameters = emptyList(),
+                    script = content
+                )
+            )
+        )
+    }
+
+    /** 与内置包相同格式的 HJSON 元数据块 */
+    private fun writeToolPackage(file: File, name: String) {
+        file.writeText(
+            buildString {
+                append("/* METADATA\n{\n")
+                append("    \"name\": \"$name\",\n")
+                append("    \"description\": { \"zh\": \"测试包 $name\", \"en\": \"Test package $name\" },\n")
+                append("    \"tools\": [\n")
+                append((0 until 8).joinToString(",\n") { t ->
+                    "        { \"name\": \"tool_$t\", \"description\": { \"zh\": \"工具 $t\", \"en\": \"Tool $t\" }, " +
+                        "\"parameters\": [ { \"name\": \"query\", \"description\": { \"zh\": \"查询\", \"en\": \"Query\" }, " +
+                        "\"type\": \"string\", \"required\": true } ] }"
+                })
+                append("\n    ]\n}\n*/\n")
+                repeat(200) { append("function helper$it(a, b) { return a + b + $it; }\n") }
+                repeat(8) { append("exports.tool_$it = function (params) { complete({ success: true }); };\n") }
+            }
+        )
+    }
+
+    private fun writePackage(file: File, name: String, description: String) {
+        file.writeText(
+            buildString {
+                append("/* METADATA\n")
+                append("name: $name\n")
+                append("description: $description\n")
+                append("*/\n")
+                // 模拟真实脚本的体积
+                repeat(200) { append("function helper$it(a, b) { return a + b + $it; }\n") }
+                append("exports.run = function (params) { complete({ success: true }); };\n")
+            }
+        )
+    }
+}
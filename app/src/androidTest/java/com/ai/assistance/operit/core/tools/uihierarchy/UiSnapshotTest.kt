@@ -0,0 +1,126 @@
+package com.ai.assistance.operit.core.tools.uihierarchy
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class UiSnapshotTest {
+
+    private fun node(
+        cls: String,
+        id: String = "",
+        text: String = "",
+        bounds: String = "[0,0][100,100]",
+        clickable: Boolean = false,
+        children: String = ""
+    ): String =
+        """<node class="android.widget.$cls" resource-id="$id" text="$text" content-desc="" """ +
+            """bounds="$bounds" clickable="$clickable" package="com.example">$children</node>"""
+
+    private fun screen(items: List<String>, title: String = "Inbox"): String {
+        val list = items.joinToString("") { node("TextView", id = "item", text = it) }
+        return "<hierarchy>" +
+            node(
+                "FrameLayout",
+                children = node("TextView", id = "title", text = title) +
+                    node("ListView", id = "list", children = list) +
+                    node("Button", id = "send", text = "Send", clickable = true)
+            ) +
+            "</hierarchy>"
+    }
+
+    @Test
+    fun testParseBuildsPreorderNodeTable() {
+        val snapshot = UiSnapshot.parse(screen(listOf("a", "b")))
+
+        assertEquals(6, snapshot.nodeCount)
+        assertEquals("com.example", snapshot.packageName)
+        assertEquals(6, snapshot.subtreeSize[0])
+        assertEquals(listOf(1, 2, 5), snapshot.children(0))
+        assertEquals("ListView", snapshot.className(2))
+        assertEquals(3, snapshot.subtreeSize[2])
+        assertTrue(snapshot.hasFlag(5, UiSnapshot.FLAG_CLICKABLE))
+        assertEquals("[0,0][100,100]", snapshot.boundsString(5))
+
+        val tree = snapshot.toSimplifiedUINode()
+        assertEquals("FrameLayout", tree.className)
+        assertEquals("Send", tree.children[2].text)
+    }
+
+    @Test
+    fun testMissingBounds() {
+        val snapshot = UiSnapshot.parse("""<hierarchy><node class="View" /></hierarchy>""")
+        assertNull(snapshot.boundsString(0))
+    }
+
+    @Test
+    fun testMalformedXmlKeepsParsedNodes() {
+        val xml = screen(listOf("a", "b"))
+        val snapshot = UiSnapshot.parse(xml.substring(0, xml.indexOf("Send")) + "<<<")
+        // 根节点、标题、列表及两个列表项
+        assertEquals(5, snapshot.nodeCount)
+        assertEquals("b", snapshot.text(4))
+    }
+
+    @Test
+    fun testCacheDiffsAgainstCallerVersion() {
+        val source = "test:${System.nanoTime()}"
+        val seen = UiSnapshotCache.update(source, screen(listOf("a"))).snapshot.version
+        // 其他调用方在中间获取过一次，不应改变差异基准
+        UiSnapshotCache.update(source, screen(listOf("a", "b")))
+        val update = UiSnapshotCache.update(source, screen(listOf("a", "b", "c")))
+
+        val diff = update.diffFrom(seen)!!
+        assertEquals(seen, diff.baseVersion)
+        assertEquals(listOf("b", "c"), diff.changedRoots.map { update.snapshot.text(it) })
+        assertNull(update.diffFrom(-1))
+        UiSnapshotCache.invalidate(source)
+    }
+
+    @Test
+    fun testIdenticalSnapshotsAreUnchanged() {
+        val diff = UiSnapshotDiff.compute(UiSnapshot.parse(screen(listOf("a"))), UiSnapshot.parse(screen(listOf("a"))))
+        assertTrue(diff.isUnchanged)
+    }
+
+    @Test
+    fun testInsertedListItemOnlyReportsNewNode() {
+        val items = (0 until 10).map { "item $it" }
+        val old = UiSnapshot.parse(screen(items))
+        val new = UiSnapshot.parse(screen(items + "item 10"))
+
+        val diff = UiSnapshotDiff.compute(old, new)
+        assertFalse(diff.isFull)
+        assertEquals(1, diff.changedRoots.size)
+        assertEquals("item 10", new.text(diff.changedRoots[0]))
+        assertTrue(diff.removedRoots.isEmpty())
+    }
+
+    @Test
+    fun testChangedTextAndRemovedItem() {
+        val items = (0 until 10).map { "item $it" }
+        val old = UiSnapshot.parse(screen(items))
+        val new = UiSnapshot.parse(screen(items.dropLast(1), title = "Sent"))
+
+        val diff = UiSnapshotDiff.compute(old, new)
+        assertFalse(diff.isFull)
+        assertEquals(listOf("Sent"), diff.changedRoots.map { new.text(it) })
+        assertEquals(listOf("item 9"), diff.removedRoots.map { old.text(it) })
+    }
+
+    @Test
+    fun testDifferentRootFallsBackToFull() {
+        val old = UiSnapshot.parse(screen(listOf("a")))
+        val new = UiSnapshot.parse("<hierarchy>" + node("LinearLayout") + "</hierarchy>")
+        val diff = UiSnapshotDiff.compute(old, new)
+        assertTrue(diff.isFull)
+        assertEquals(listOf(0), diff.changedRoots)
+    }
+}
@@ -0,0 +1,207 @@
+package com.ai.assistance.operit.data.repository
+
+import android.util.Log
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.ai.assistance.operit.data.db.AppDatabase
+import com.ai.assistance.operit.data.model.ChatEntity
+import com.ai.assistance.operit.data.model.MessageEntity
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** 写时复制分支：共享前缀上的删除、编辑、导出读取，链压缩，以及与整体复制方式的耗时/存储对比 */
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class ChatBranchStoreTest {
+
+    private lateinit var database: AppDatabase
+    private lateinit var store: ChatBranchStore
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).build()
+        store = ChatBranchStore(database)
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    private suspend fun newChat(id: String, count: Int = 0, contentSize: Int = 8): ChatEntity {
+        val chat = ChatEntity(id = id, title = id)
+        database.chatDao().insertChat(chat)
+        if (count > 0) {
+            val body = "x".repeat(contentSize)
+            database.messageDao().insertMessages(
+                (1..count).map { i ->
+                    MessageEntity(chatId = id, sender = if (i % 2 == 1) "user" else "ai", content = "$i:$body", timestamp = i.toLong(), orderIndex = 0)
+                }
+            )
+        }
+        return chat
+    }
+
+    private suspend fun branch(source: String, id: String, upTo: Long?): ChatEntity {
+        val parent = database.chatDao().getChatById(source)!!
+        return store.createBranch(parent, ChatEntity(id = id, title = id, parentChatId = source), upTo)
+    }
+
+    private suspend fun timestamps(chatId: String) =
+        database.messageDao().getMessagesForChat(chatId).map { it.timestamp }
+
+    private suspend fun content(chatId: String, timestamp: Long) =
+        database.messageDao().getMessagesForChat(chatId).first { it.timestamp == timestamp }.content
+
+    private suspend fun append(chatId: String, timestamp: Long) {
+        store.prepareWrite(chatId, timestamp)
+        database.messageDao().insertMessage(
+            MessageEntity(chatId = chatId, sender = "user", content = "new", timestamp = timestamp, orderIndex = 0)
+        )
+    }
+
+    @Test
+    fun testBranchSharesPrefixWithoutCopying() = runBlocking {
+        newChat("main", count = 100)
+        val child = branch("main", "child", 60L)
+        assertEquals("main", child.baseChatId)
+        assertEquals(60L, child.baseTimestamp)
+        assertEquals(0, database.messageDao().getOwnMessageCount("child"))
+
+        append("child", 1_000L)
+        append("main", 1_001L)
+        assertEquals((1L..60L).toList() + 1_000L, timestamps("child"))
+        assertEquals(101, database.messageDao().getMessageCount("main"))
+        assertEquals(61, database.messageDao().getMessageCount("child"))
+        assertEquals(1_000L, database.messageDao().getLatestMessages("child", 1).single().timestamp)
+    }
+
+    @Test
+    fun testEditsOnSharedPrefixStayLocal() = runBlocking {
+        newChat("main", count = 20)
+        branch("main", "child", 15L)
+
+        // 在分支中编辑共享消息：只影响分支
+        store.prepareWrite("child", 5L)
+        val own = database.messageDao().getMessageByTimestamp("child", 5L)!!
+        database.messageDao().updateMessageContent(own.messageId, "edited in child")
+        assertEquals("edited in child", content("child", 5L))
+        assertEquals("5:xxxxxxxx", content("main", 5L))
+
+        // 在父对话中编辑分支仍共享的消息：分支保留原内容
+        store.prepareWrite("main", 3L)
+        val parentRow = database.messageDao().getMessageByTimestamp("main", 3L)!!
+        database.messageDao().updateMessageContent(parentRow.messageId, "edited in main")
+        assertEquals("edited in main", content("main", 3L))
+        assertEquals("3:xxxxxxxx", content("child", 3L))
+        assertEquals((1L..15L).toList(), timestamps("child"))
+    }
+
+    @Test
+    fun testDeletesOnSharedPrefix() = runBlocking {
+        newChat("main", count = 30)
+        branch("main", "child", 20L)
+        branch("main", "other", 25L)
+
+        // 父对话回滚（删除 >= 10）不影响分支
+        store.prepareTruncate("main", 10L)
+        database.messageDao().deleteMessagesFrom("main", 10L)
+        assertEquals((1L..9L).toList(), timestamps("main"))
+        assertEquals((1L..20L).toList(), timestamps("child"))
+        assertEquals((1L..25L).toList(), timestamps("other"))
+
+        // 分支删除共享前缀中的单条消息
+        store.prepareWrite("child", 4L)
+        database.messageDao().deleteMessageByTimestamp("child", 4L)
+        assertEquals((1L..20L).filter { it != 4L }, timestamps("child"))
+        assertEquals((1L..9L).toList(), timestamps("main"))
+
+        // 分支从共享前缀处截断后只剩共享部分
+        store.prepareTruncate("other", 3L)
+        database.messageDao().deleteMessagesFrom("other", 3L)
+        assertEquals(listOf(1L, 2L), timestamps("other"))
+    }
+
+    @Test
+    fun testDeletingSourceKeepsBranchesReadableForExport() = runBlocking {
+        newChat("main", count = 10)
+        branch("main", "child", 8L)
+        append("child", 100L)
+        branch("child", "grandchild", null)
+
+        store.releaseDependents("main")
+        database.chatDao().deleteChat("main")
+
+        assertNull(database.chatDao().getChatById("child")!!.baseChatId)
+        // 导出读取的就是拼接后的完整消息列表
+        assertEquals((1L..8L).toList() + 100L, timestamps("child"))
+        assertEquals((1L..8L).toList() + 100L, timestamps("grandchild"))
+    }
+
+    @Test
+    fun testCompactionBoundsChainDepth() = runBlocking {
+        newChat("c0", count = 5)
+        var previous = "c0"
+        for (i in 1..8) {
+            val id = "c$i"
+            branch(previous, id, null)
+            append(id, 100L + i)
+            previous = id
+        }
+        assertEquals(8, store.depthOf("c8"))
+        val expected = timestamps("c8")
+
+        assertTrue(store.compactChains(maxDepth = 2) > 0)
+        assertTrue(store.depthOf("c8") <= 2)
+        assertEquals(expected, timestamps("c8"))
+        assertEquals((1L..5L).toList() + (101L..104L), timestamps("c4"))
+    }
+
+    /** 5000 条消息（每条约 1KB）的对话上反复“从这里重新生成”：分支创建耗时与消息行数对比整体复制 */
+    @Test
+    @LargeTest
+    fun benchmarkBranchCreationAgainstCopy() = runBlocking {
+        val total = 5_000
+        val branches = 10
+        newChat("main", count = total, contentSize = 1_024)
+        val dao = database.messageDao()
+
+        val copyStart = System.nanoTime()
+        repeat(branches) { i ->
+            val id = "copy$i"
+            database.chatDao().insertChat(ChatEntity(id = id, title = id, parentChatId = "main"))
+            val upTo = (total - i * 10).toLong()
+            dao.insertMessages(
+                dao.getMessagesForChat("main").filter { it.timestamp <= upTo }.map { it.copy(messageId = 0, chatId = id) }
+            )
+        }
+        val copyMs = (System.nanoTime() - copyStart) / 1_000_000.0 / branches
+        var copyRows = 0
+        repeat(branches) { copyRows += dao.getOwnMessageCount("copy$it") }
+
+        val cowStart = System.nanoTime()
+        repeat(branches) { i -> branch("main", "cow$i", (total - i * 10).toLong()) }
+        val cowMs = (System.nanoTime() - cowStart) / 1_000_000.0 / branches
+        var cowRows = 0
+        repeat(branches) { cowRows += dao.getOwnMessageCount("cow$it") }
+        assertEquals(total - 90, dao.getMessageCount("cow9"))
+
+        Log.i(
+            "BranchBenchmark",
+            "messages=$total branches=$branches copy=${"%.1f".format(copyMs)}ms/${copyRows}rows " +
+                "cow=${"%.2f".format(cowMs)}ms/${cowRows}rows"
+        )
+        assertEquals(0, cowRows)
+        assertTrue(cowMs * 10 < copyMs)
+    }
+}
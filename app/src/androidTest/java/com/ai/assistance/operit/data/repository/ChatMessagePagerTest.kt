@@ -0,0 +1,162 @@
+package com.ai.assistance.operit.data.repository
+
+import android.util.Log
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.ai.assistance.operit.data.db.AppDatabase
+import com.ai.assistance.operit.data.model.ChatEntity
+import com.ai.assistance.operit.data.model.MessageEntity
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** 聊天消息键集分页的正确性，以及 1 万条消息下打开聊天的首屏耗时对比 */
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class ChatMessagePagerTest {
+
+    private lateinit var database: AppDatabase
+    private lateinit var pager: ChatMessagePager
+    private val chatId = "paging_test_chat"
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).build()
+        pager = ChatMessagePager(database.messageDao(), MessageBodyStore(database))
+        runBlocking { database.chatDao().insertChat(ChatEntity(id = chatId, title = "paging")) }
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    /** 写入 count 条消息，时间戳为 1..count；summaryAt 中的位置写为总结消息 */
+    private fun insertMessages(count: Int, summaryAt: Set<Int> = emptySet(), contentSize: Int = 16) = runBlocking {
+        val body = "x".repeat(contentSize)
+        database.messageDao().insertMessages(
+            (1..count).map { i ->
+                MessageEntity(
+                    chatId = chatId,
+                    sender = if (i in summaryAt) "summary" else if (i % 2 == 1) "user" else "ai",
+                    content = "$i:$body",
+                    timestamp = i.toLong(),
+                    orderIndex = 0
+                )
+            }
+        )
+    }
+
+    @Test
+    fun testLatestAndBackfillPagesAreContiguous() = runBlocking {
+        insertMessages(95)
+
+        val latest = pager.loadLatest(chatId, 40)
+        assertEquals((56L..95L).toList(), latest.messages.map { it.timestamp })
+        assertTrue(latest.hasOlder)
+
+        val second = pager.loadBefore(chatId, latest.messages.first().timestamp, 40)
+        assertEquals((16L..55L).toList(), second.messages.map { it.timestamp })
+        assertTrue(second.hasOlder)
+
+        val last = pager.loadBefore(chatId, second.messages.first().timestamp, 40)
+        assertEquals((1L..15L).toList(), last.messages.map { it.timestamp })
+        assertFalse(last.hasOlder)
+    }
+
+    @Test
+    fun testContextRangeStartsAtLastSummary() = runBlocking {
+        insertMessages(100, summaryAt = setOf(20, 50))
+        assertEquals(50L, pager.contextStartTimestamp(chatId))
+
+        val range = pager.loadRange(chatId, 50L, 61L)
+        assertEquals((50L..60L).toList(), range.messages.map { it.timestamp })
+        assertTrue(range.hasOlder)
+
+        val all = pager.loadRange(chatId, null, 11L)
+        assertEquals(10, all.messages.size)
+        assertFalse(all.hasOlder)
+    }
+
+    @Test
+    fun testAiContextIgnoresPagedWindow() = runBlocking {
+        insertMessages(300, summaryAt = setOf(20, 50))
+
+        // 与界面窗口无关：始终从最后一条总结读到最新
+        val context = pager.loadContext(chatId)
+        assertEquals((50L..300L).toList(), context.map { it.timestamp })
+
+        // 截止到历史中间时，从截止点之前的最后一条总结开始
+        assertEquals((20L..40L).toList(), pager.loadContext(chatId, 40L).map { it.timestamp })
+        assertEquals((1L..10L).toList(), pager.loadContext(chatId, 10L).map { it.timestamp })
+    }
+
+    @Test
+    fun testAggregateQueries() = runBlocking {
+        val dao = database.messageDao()
+        assertFalse(dao.hasMessageFromSender(chatId, "user"))
+        assertEquals(0, dao.getMessageCount(chatId))
+
+        insertMessages(30, summaryAt = setOf(12))
+        assertTrue(dao.hasMessageFromSender(chatId, "user"))
+        assertEquals(30, dao.getMessageCount(chatId))
+        assertEquals(9, dao.countMessagesBefore(chatId, 10L))
+        assertEquals(12L, dao.getLatestTimestampBySender(chatId, "summary"))
+    }
+
+    /**
+     * 1 万条带工具输出的消息（每条约 2KB），对比原来的全量加载与首屏分页加载的耗时。
+     * 首屏只需最新一页，总结之后的上下文补齐在首屏渲染之后进行。
+     */
+    @Test
+    @LargeTest
+    fun benchmarkOpenToFirstPage() = runBlocking {
+        val total = 10_000
+        insertMessages(total, summaryAt = setOf(total - 300), contentSize = 2_048)
+        val dao = database.messageDao()
+
+        // 预热，避免首次查询的语句编译计入耗时
+        dao.getMessagesForChat(chatId)
+        pager.loadLatest(chatId)
+
+        val runs = 5
+        var fullNs = 0L
+        var pageNs = 0L
+        var contextNs = 0L
+        repeat(runs) {
+            val fullStart = System.nanoTime()
+            val all = dao.getMessagesForChat(chatId).map { it.toChatMessage() }
+            fullNs += System.nanoTime() - fullStart
+            assertEquals(total, all.size)
+
+            val pageStart = System.nanoTime()
+            val page = pager.loadLatest(chatId)
+            pageNs += System.nanoTime() - pageStart
+            assertEquals(ChatMessagePager.DEFAULT_PAGE_SIZE, page.messages.size)
+
+            val contextStart = System.nanoTime()
+            val context = pager.loadRange(chatId, pager.contextStartTimestamp(chatId), page.messages.first().timestamp)
+            contextNs += System.nanoTime() - contextStart
+            assertEquals(301 - ChatMessagePager.DEFAULT_PAGE_SIZE, context.messages.size)
+        }
+
+        val fullMs = fullNs / runs / 1_000_000.0
+        val pageMs = pageNs / runs / 1_000_000.0
+        val contextMs = contextNs / runs / 1_000_000.0
+        Log.i(
+            "ChatPagingBenchmark",
+            "messages=$total full=${"%.1f".format(fullMs)}ms firstPage=${"%.1f".format(pageMs)}ms " +
+                "contextFill=${"%.1f".format(contextMs)}ms"
+        )
+        assertTrue("first page should be much faster than a full load", pageMs * 10 < fullMs)
+    }
+}
@@ -0,0 +1,211 @@
+package com.ai.assistance.operit.data.repository
+
+import android.util.Log
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.ai.assistance.operit.data.db.AppDatabase
+import com.ai.assistance.operit.data.model.ChatEntity
+import com.ai.assistance.operit.data.model.MessageEntity
+import com.ai.assistance.operit.util.vector.QuantizedVector
+import java.io.File
+import kotlin.random.Random
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** 跨对话检索索引：增量索引、编辑与删除失效、聊天范围过滤、快照恢复，以及 10 万条消息上的耗时与召回率 */
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class ChatSearchIndexTest {
+
+    /** 特征哈希的词袋向量，代替 ONNX 模型：共享词越多越相似 */
+    private class HashingEmbedder(override val dimensions: Int = 128) : ChatEmbedder {
+        override fun isReady() = true
+
+        override fun embed(texts: List<String>): List<FloatArray?> = texts.map { text ->
+            val words = text.lowercase().split(Regex("[^\\p{L}\\p{N}]+")).filter { it.isNotEmpty() }
+            if (words.isEmpty()) return@map null
+            val vector = FloatArray(dimensions)
+            words.forEach { word ->
+                val h = word.hashCode()
+                vector[Math.floorMod(h, dimensions)] += if ((h ushr 16) and 1 == 0) 1f else -1f
+            }
+            vector
+        }
+    }
+
+    private lateinit var database: AppDatabase
+    private lateinit var bodyStore: MessageBodyStore
+    private lateinit var indexDir: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).build()
+        bodyStore = MessageBodyStore(database)
+        indexDir = File(context.cacheDir, "chat_search_test").apply { deleteRecursively() }
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+        indexDir.deleteRecursively()
+    }
+
+    private fun newIndex() = ChatSearchIndex(database, bodyStore, indexDir, HashingEmbedder())
+
+    private suspend fun insert(chatId: String, contents: List<String>) {
+        database.chatDao().insertChat(ChatEntity(id = chatId, title = chatId))
+        database.messageDao().insertMessages(
+            bodyStore.spill(
+                contents.mapIndexed { i, content ->
+                    MessageEntity(chatId = chatId, sender = if (i % 2 == 0) "user" else "ai", content = content, timestamp = i + 1L, orderIndex = 0)
+                }
+            )
+        )
+    }
+
+    @Test
+    fun testIndexesAndFindsAcrossChats() = runBlocking {
+        insert("travel", listOf("We booked a train ticket to Kyoto for the cherry blossom trip", "Remember to pack the rail pass"))
+        insert("code", listOf("The gradle build fails with a kotlin compiler error", "Try upgrading the kapt plugin"))
+        val index = newIndex()
+        assertEquals(4, index.indexPending())
+
+        val hits = index.search("cherry blossom trip to kyoto", limit = 3)
+        assertEquals("travel", hits.first().chatId)
+        assertTrue(hits.first().snippet.contains("Kyoto"))
+        assertEquals("code", index.search("kotlin compiler error").first().chatId)
+        // 再次索引没有待处理的消息
+        assertEquals(0, index.indexPending())
+    }
+
+    @Test
+    fun testEditsAndDeletesDropOut() = runBlocking {
+        insert("chat", listOf("the secret password is pineapple", "noted", "something unrelated"))
+        val index = newIndex()
+        index.indexPending()
+        assertEquals(1L, index.search("pineapple password").first().messageTimestamp)
+
+        val row = database.messageDao().getMessageByTimestamp("chat", 1L)!!
+        val oldChunks = database.messageChunkDao().getChunkIdsForMessage(row.messageId)
+        database.messageDao().updateMessageContent(row.messageId, "the secret password is mango")
+        index.invalidateMessage(row.messageId)
+        // 旧分块立即移出关键词索引，不等重新索引或重启对账
+        assertTrue(oldChunks.isNotEmpty() && oldChunks.none { index.hasKeywordChunk(it) })
+        index.indexPending()
+        assertTrue(index.search("pineapple").none { it.snippet.contains("pineapple") })
+        assertTrue(index.search("mango").first().snippet.contains("mango"))
+
+        database.messageDao().deleteMessageByTimestamp("chat", 1L)
+        assertTrue(index.search("mango password").none { it.messageTimestamp == 1L })
+    }
+
+    @Test
+    fun testChatFilterIncludesSharedBranchPrefix() = runBlocking {
+        insert("main", listOf("first we discussed quantum entanglement", "then lunch plans", "later quantum computing jobs"))
+        insert("other", listOf("quantum physics homework"))
+        // 分支共享 main 中时间戳不大于 2 的消息，自身没有消息
+        database.chatDao().insertChat(ChatEntity(id = "branch", title = "branch", baseChatId = "main", baseTimestamp = 2L))
+        val index = newIndex()
+        index.indexPending()
+
+        val hits = index.search("quantum", chatIds = listOf("branch"), limit = 10)
+        assertEquals(listOf(1L), hits.map { it.messageTimestamp })
+        assertTrue(hits.all { it.chatId == "branch" })
+        assertEquals(setOf("main", "other"), index.search("quantum", limit = 10).map { it.chatId }.toSet())
+    }
+
+    @Test
+    fun testSnapshotReloadCatchesUp() = runBlocking {
+        insert("a", (1..20).map { "note number $it about topic$it" })
+        newIndex().indexPending()
+
+        // 新实例从快照加载，再追加快照之后写入的消息
+        insert("b", listOf("an entirely new remark about saturn rings"))
+        val reloaded = newIndex()
+        assertEquals(1, reloaded.indexPending())
+        assertEquals("b", reloaded.search("saturn rings").first().chatId)
+        assertEquals("a", reloaded.search("topic7").first().chatId)
+    }
+
+    /**
+     * 10 万条合成消息（500 个对话）：构建耗时、混合检索 p50/p95 延迟、HNSW 相对精确检索的 recall@10，
+     * 以及埋入的“针”消息能否被找回。
+     */
+    @Test
+    @LargeTest
+    fun benchmarkLatencyAndRecallOn100kMessages() = runBlocking {
+        val total = 100_000
+        val chats = 500
+        val random = Random(42)
+        val vocabulary = (0 until 5_000).map { "w$it" }
+        val needles = (0 until 20).map { "needle$it zephyr$it quokka$it" }
+        val needleAt = (0 until total).shuffled(random).take(needles.size).withIndex().associate { it.value to it.index }
+
+        val perChat = total / chats
+        for (c in 0 until chats) {
+            val contents = (0 until perChat).map { i ->
+                val n = c * perChat + i
+                val words = List(12 + random.nextInt(24)) { vocabulary[(random.nextDouble().let { it * it } * vocabulary.size).toInt()] }
+                val needle = needleAt[n]?.let { " " + needles[it] } ?: ""
+                words.joinToString(" ") + needle
+            }
+            insert("chat$c", contents)
+        }
+
+        val index = newIndex()
+        val buildStart = System.nanoTime()
+        val indexed = index.indexPending()
+        val buildMs = (System.nanoTime() - buildStart) / 1_000_000
+        assertEquals(total, indexed)
+
+        // 混合检索延迟
+        val latencies = (0 until 200).map {
+            val query = List(4) { vocabulary[random.nextInt(vocabulary.size)] }.joinToString(" ")
+            val start = System.nanoTime()
+            index.search(query, limit = 10)
+            (System.nanoTime() - start) / 1_000_000.0
+        }.sorted()
+
+        // HNSW 召回率：与全部分块上的精确量化检索对比
+        val embedder = HashingEmbedder()
+        val all = ArrayList<Pair<Long, QuantizedVector>>()
+        var after = 0L
+        while (true) {
+            val batch = database.messageChunkDao().getEmbeddedChunksAfter(after, 5_000)
+            if (batch.isEmpty()) break
+            batch.forEach { all.add(it.id to QuantizedVector(it.codes!!, it.scale)) }
+            after = batch.last().id
+        }
+        var overlap = 0
+        val queries = 50
+        repeat(queries) {
+            val query = embedder.embed(listOf(List(6) { vocabulary[random.nextInt(200)] }.joinToString(" "))).single()!!
+            val exact = QuantizedVector.search(query, all, limit = 10).map { it.value }.toSet()
+            val approximate = index.nearestChunkIds(query, 10)
+            overlap += approximate.count { it in exact }
+        }
+        val recall = overlap / (queries * 10.0)
+
+        val needleHits = needles.indices.count { i ->
+            index.search("zephyr$i quokka$i", limit = 5).any { it.snippet.contains("needle$i ") }
+        }
+
+        Log.i(
+            "ChatSearchBenchmark",
+            "messages=$total chunks=${all.size} build=${buildMs}ms " +
+                "p50=${"%.1f".format(latencies[latencies.size / 2])}ms p95=${"%.1f".format(latencies[latencies.size * 95 / 100])}ms " +
+                "recall@10=${"%.3f".format(recall)} needles=$needleHits/${needles.size}"
+        )
+        assertTrue("ANN recall too low: $recall", recall >= 0.9)
+        assertEquals(needles.size, needleHits)
+    }
+}
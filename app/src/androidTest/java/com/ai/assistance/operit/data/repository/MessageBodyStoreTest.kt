@@ -0,0 +1,175 @@
+package com.ai.assistance.operit.data.repository
+
+import android.content.Context
+import android.util.Log
+import androidx.room.Room
+import androidx.room.RoomDatabase
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.ai.assistance.operit.data.db.AppDatabase
+import com.ai.assistance.operit.data.model.ChatEntity
+import com.ai.assistance.operit.data.model.MessageEntity
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** 大消息体的行外压缩存储：读写还原、内容寻址去重与回收、搜索，以及数据库体积与打开聊天耗时的对比 */
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class MessageBodyStoreTest {
+
+    private lateinit var context: Context
+    private lateinit var database: AppDatabase
+    private lateinit var store: MessageBodyStore
+
+    @Before
+    fun setUp() {
+        context = InstrumentationRegistry.getInstrumentation().targetContext
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).build()
+        store = MessageBodyStore(database)
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    /** 模拟 list_files 的工具输出，约 [entries] * 65 个字符 */
+    private fun toolOutput(seed: Int, entries: Int = 200, marker: String = ""): String {
+        val builder = StringBuilder("<tool_result name=\"list_files\" status=\"success\"><content>")
+        builder.append("{\"path\": \"/storage/emulated/0/Download/$seed\", \"entries\": [")
+        for (i in 0 until entries) {
+            builder.append("{\"name\": \"file_${seed}_$i.txt\", \"isDirectory\": false, \"size\": ${(seed * 31 + i * 37) % 90_000}},")
+        }
+        builder.append(marker).append("]}</content></tool_result>")
+        return builder.toString()
+    }
+
+    private suspend fun insert(db: AppDatabase, bodies: MessageBodyStore, chatId: String, contents: List<String>) {
+        db.chatDao().insertChat(ChatEntity(id = chatId, title = chatId))
+        val rows = contents.mapIndexed { i, content ->
+            MessageEntity(chatId = chatId, sender = if (i % 2 == 0) "user" else "ai", content = content, timestamp = i + 1L, orderIndex = 0)
+        }
+        db.messageDao().insertMessages(bodies.spill(rows))
+    }
+
+    @Test
+    fun testLargeBodiesRoundTripWithPreviewInline() = runBlocking {
+        val large = toolOutput(1)
+        insert(database, store, "chat", listOf("hello", large))
+
+        val rows = database.messageDao().getMessagesForChat("chat")
+        assertNull(rows[0].bodyHash)
+        assertNotNull(rows[1].bodyHash)
+        assertEquals(large.take(MessageBodyStore.PREVIEW_LENGTH), rows[1].content)
+
+        val page = ChatMessagePager(database.messageDao(), store).loadLatest("chat")
+        assertEquals(listOf("hello", large), page.messages.map { it.content })
+    }
+
+    @Test
+    fun testIdenticalBodiesAreStoredOnceAndCollected() = runBlocking {
+        val large = toolOutput(2)
+        insert(database, store, "a", listOf(large))
+        insert(database, store, "b", listOf(large))
+        assertEquals(1, database.messageBodyDao().getBodiesAfter("", 10).size)
+
+        database.chatDao().deleteChat("a")
+        assertEquals(0, store.collectGarbage())
+        database.chatDao().deleteChat("b")
+        assertEquals(1, store.collectGarbage())
+    }
+
+    @Test
+    fun testInlineUpdateDropsBodyReference() = runBlocking {
+        insert(database, store, "chat", listOf(toolOutput(3)))
+        val row = database.messageDao().getMessageByTimestamp("chat", 1L)!!
+        database.messageDao().updateMessageContent(row.messageId, "short")
+
+        assertNull(database.messageDao().getMessageByTimestamp("chat", 1L)!!.bodyHash)
+        assertEquals("short", store.resolve(database.messageDao().getMessagesForChat("chat")).single().content)
+    }
+
+    @Test
+    fun testSearchMatchesTextBeyondPreview() = runBlocking {
+        insert(database, store, "hit", listOf(toolOutput(4, marker = "needle_in_body")))
+        insert(database, store, "miss", listOf(toolOutput(5)))
+
+        assertTrue(database.messageDao().searchChatIdsByContent("needle_in_body").isEmpty())
+        assertEquals(setOf("hit"), store.searchChatIds("NEEDLE_IN_BODY"))
+    }
+
+    @Test
+    fun testExistingInlineRowsAreSpilledInBatches() = runBlocking {
+        val inlineStore = MessageBodyStore(database, spillThreshold = Int.MAX_VALUE)
+        val contents = (1..10).map { toolOutput(it) }
+        insert(database, inlineStore, "chat", contents)
+        assertTrue(database.messageDao().getMessagesForChat("chat").all { it.bodyHash == null })
+
+        var cursor = 0L
+        while (true) {
+            cursor = store.spillInlineBatch(cursor, limit = 3) ?: break
+        }
+        assertTrue(database.messageDao().getMessagesForChat("chat").all { it.bodyHash != null })
+        assertEquals(contents, store.resolve(database.messageDao().getMessagesForChat("chat")).map { it.content })
+    }
+
+    /**
+     * 2000 条消息、其中三分之一为约 13KB 的工具输出：对比内联存储与行外压缩存储的数据库文件大小，
+     * 以及打开聊天（首屏一页 + 上下文补齐）的耗时。
+     */
+    @Test
+    @LargeTest
+    fun benchmarkDatabaseSizeAndOpenLatency() = runBlocking {
+        val total = 2_000
+        val contents = (1..total).map { i -> if (i % 3 == 0) toolOutput(i) else "message $i ".repeat(20) }
+
+        fun open(name: String): AppDatabase {
+            context.deleteDatabase(name)
+            return Room.databaseBuilder(context, AppDatabase::class.java, name)
+                .setJournalMode(RoomDatabase.JournalMode.TRUNCATE)
+                .build()
+        }
+
+        val results = listOf("inline" to Int.MAX_VALUE, "spilled" to MessageBodyStore.SPILL_THRESHOLD).map { (label, threshold) ->
+            val name = "body_benchmark_$label.db"
+            val db = open(name)
+            insert(db, MessageBodyStore(db, threshold), "chat", contents)
+
+            // 预热
+            ChatMessagePager(db.messageDao(), MessageBodyStore(db, threshold)).loadLatest("chat")
+            val runs = 5
+            var openNs = 0L
+            repeat(runs) {
+                // 每轮使用新的存储实例，解压缓存为空
+                val pager = ChatMessagePager(db.messageDao(), MessageBodyStore(db, threshold))
+                val start = System.nanoTime()
+                val page = pager.loadLatest("chat")
+                val backfill = pager.loadRange("chat", null, page.messages.first().timestamp)
+                openNs += System.nanoTime() - start
+                assertEquals(total, page.messages.size + backfill.messages.size)
+            }
+            db.close()
+            val size = context.getDatabasePath(name).length()
+            context.deleteDatabase(name)
+            Triple(label, size, openNs / runs / 1_000_000.0)
+        }
+
+        val (_, inlineSize, inlineMs) = results[0]
+        val (_, spilledSize, spilledMs) = results[1]
+        Log.i(
+            "MessageBodyBenchmark",
+            "messages=$total inline=${inlineSize / 1024}KB/${"%.1f".format(inlineMs)}ms " +
+                "spilled=${spilledSize / 1024}KB/${"%.1f".format(spilledMs)}ms"
+        )
+        assertTrue("compressed storage should be much smaller", spilledSize * 2 < inlineSize)
+    }
+}
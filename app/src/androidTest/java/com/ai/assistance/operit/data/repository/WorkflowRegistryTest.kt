@@ -0,0 +1,201 @@
+package com.ai.assistance.operit.data.repository
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.SmallTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.ai.assistance.operit.data.model.ExecuteNode
+import com.ai.assistance.operit.data.model.ParameterValue
+import com.ai.assistance.operit.data.model.TriggerNode
+import com.ai.assistance.operit.data.model.Workflow
+import java.io.File
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** 工作流注册表：分发表随增删改更新、从索引文件重新加载、发现目录外部变化，以及 500 个工作流下的事件分发耗时 */
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class WorkflowRegistryTest {
+
+    private val json = Json {
+        prettyPrint = true
+        ignoreUnknownKeys = true
+        classDiscriminator = "__type"
+    }
+
+    private lateinit var dir: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        dir = File(context.cacheDir, "workflow_registry_test").apply {
+            deleteRecursively()
+            mkdirs()
+        }
+    }
+
+    @After
+    fun tearDown() {
+        dir.deleteRecursively()
+    }
+
+    /** 与 WorkflowRepository 相同：先写文件，再通知注册表 */
+    private fun save(registry: WorkflowRegistry, workflow: Workflow) {
+        val file = File(dir, "${workflow.id}.json")
+        file.writeText(json.encodeToString(workflow))
+        registry.put(workflow, file)
+    }
+
+    private fun workflow(index: Int, enabled: Boolean = true) = Workflow(
+        id = "wf$index",
+        name = "workflow $index",
+        enabled = enabled,
+        updatedAt = index.toLong(),
+        nodes = listOf(
+            TriggerNode(id = "tasker$index", triggerType = "tasker", triggerConfig = mapOf("command" to "Cmd_$index")),
+            TriggerNode(id = "intent$index", triggerType = "intent", triggerConfig = mapOf("action" to "com.example.ACTION_$index")),
+            TriggerNode(
+                id = "speech$index",
+                triggerType = "speech",
+                triggerConfig = mapOf("pattern" to "turn (on|off) light $index\\b", "require_final" to "false")
+            ),
+            TriggerNode(id = "manual$index", triggerType = "manual"),
+            ExecuteNode(id = "exec$index", actionType = "http_request", actionConfig = mapOf("url" to ParameterValue.StaticValue("https://example.com/$index"))),
+            ExecuteNode(id = "log$index", actionType = "log", actionConfig = mapOf("message" to ParameterValue.StaticValue("done $index")))
+        )
+    )
+
+    @Test
+    fun testDispatchTablesFollowCreateUpdateDelete() {
+        val registry = WorkflowRegistry(dir, json)
+        (1..3).forEach { save(registry, workflow(it)) }
+
+        assertEquals(listOf("wf3", "wf2", "wf1"), registry.summaries().map { it.id })
+        assertEquals(6, registry.summaries().first().nodeCount)
+        assertEquals(listOf("tasker2"), registry.taskerTriggers(listOf("x", "cmd_2")).map { it.nodeId })
+        assertEquals(listOf("intent1"), registry.intentTriggers("COM.EXAMPLE.ACTION_1").map { it.nodeId })
+        assertEquals(
+            listOf("speech3"),
+            registry.speechTriggers().filter { it.regex.containsMatchIn("please Turn ON light 3") }.map { it.ref.nodeId }
+        )
+
+        // 禁用后不再参与分发，但仍出现在列表中
+        save(registry, workflow(2, enabled = false))
+        assertTrue(registry.taskerTriggers(listOf("cmd_2")).isEmpty())
+        assertEquals(3, registry.summaries().size)
+
+        File(dir, "wf1.json").delete()
+        registry.remove("wf1")
+        assertTrue(registry.intentTriggers("com.example.ACTION_1").isEmpty())
+        assertEquals(listOf("wf3", "wf2"), registry.summaries().map { it.id })
+    }
+
+    @Test
+    fun testReloadUsesIndexAndPicksUpExternalChanges() {
+        val first = WorkflowRegistry(dir, json)
+        (1..3).forEach { save(first, workflow(it)) }
+        assertTrue(File(dir, WorkflowRegistry.INDEX_FILE_NAME).exists())
+
+        // 文件大小和修改时间不变时直接使用索引，不重新解析（这里把内容换成无法解析的同长度文本）
+        val file = File(dir, "wf2.json")
+        val modified = file.lastModified()
+        file.writeText("x".repeat(file.length().toInt()))
+        file.setLastModified(modified)
+        val reloaded = WorkflowRegistry(dir, json)
+        assertEquals(listOf("wf3", "wf2", "wf1"), reloaded.summaries().map { it.id })
+        assertEquals(listOf("tasker2"), reloaded.taskerTriggers(listOf("CMD_2")).map { it.nodeId })
+
+        // 在目录中直接新增文件：目录修改时间变化，注册表重新核对
+        Thread.sleep(1100)
+        File(dir, "wf9.json").writeText(json.encodeToString(workflow(9)))
+        assertEquals("wf9", reloaded.summaries().first().id)
+        assertEquals(listOf("tasker9"), reloaded.taskerTriggers(listOf("cmd_9")).map { it.nodeId })
+    }
+
+    @Test
+    fun testPicksUpInPlaceEdits() {
+        val registry = WorkflowRegistry(dir, json, fileCheckIntervalMs = 0L)
+        (1..2).forEach { save(registry, workflow(it)) }
+        assertEquals(listOf("tasker1"), registry.taskerTriggers(listOf("cmd_1")).map { it.nodeId })
+
+        // 外部就地改写文件：目录修改时间不变，只有文件的修改时间和大小变化
+        val file = File(dir, "wf1.json")
+        val directoryModified = dir.lastModified()
+        val edited = workflow(1).let { wf ->
+            wf.copy(nodes = wf.nodes.map {
+                if (it is TriggerNode && it.triggerType == "tasker") it.copy(triggerConfig = mapOf("command" to "renamed_cmd")) else it
+            })
+        }
+        file.writeText(json.encodeToString(edited))
+        file.setLastModified(file.lastModified() + 2_000)
+        assertEquals(directoryModified, dir.lastModified())
+
+        assertTrue(registry.taskerTriggers(listOf("cmd_1")).isEmpty())
+        assertEquals(listOf("tasker1"), registry.taskerTriggers(listOf("RENAMED_CMD")).map { it.nodeId })
+    }
+
+    /**
+     * 500 个工作流：原先每个事件都列出目录、逐个反序列化并遍历节点，
+     * 对比注册表查表（语音模式也改为预编译）
+     */
+    @Test
+    @LargeTest
+    fun benchmarkDispatchWith500Workflows() {
+        val writer = WorkflowRegistry(dir, json)
+        (0 until 500).forEach { save(writer, workflow(it)) }
+
+        fun scanAll(): List<Workflow> = dir.listFiles { f -> f.isFile && f.extension == "json" }!!
+            .map { json.decodeFromString<Workflow>(it.readText()) }
+
+        fun medianMs(runs: Int, block: () -> Unit): Double {
+            val times = (0 until runs).map {
+                val start = System.nanoTime()
+                block()
+                (System.nanoTime() - start) / 1_000_000.0
+            }.sorted()
+            return times[times.size / 2]
+        }
+
+        val scanTasker = medianMs(10) {
+            val matched = scanAll().filter { it.enabled }.flatMap { wf ->
+                wf.nodes.filter { it is TriggerNode && it.triggerType == "tasker" && it.triggerConfig["command"].equals("cmd_250", ignoreCase = true) }
+            }
+            assertEquals(1, matched.size)
+        }
+        val scanSpeech = medianMs(10) {
+            val matched = scanAll().filter { it.enabled }.flatMap { wf ->
+                wf.nodes.filter {
+                    it is TriggerNode && it.triggerType == "speech" &&
+                        Regex(it.triggerConfig["pattern"]!!, RegexOption.IGNORE_CASE).containsMatchIn("turn on light 250")
+                }
+            }
+            assertEquals(1, matched.size)
+        }
+
+        // 新进程首次加载：只读索引并核对文件的修改时间和大小
+        val coldLoadMs = medianMs(10) { assertEquals(500, WorkflowRegistry(dir, json).summaries().size) }
+        val registry = WorkflowRegistry(dir, json)
+
+        val tableTasker = medianMs(200) { assertEquals(1, registry.taskerTriggers(listOf("cmd_250")).size) }
+        val tableIntent = medianMs(200) { assertEquals(1, registry.intentTriggers("com.example.ACTION_250").size) }
+        val tableSpeech = medianMs(200) {
+            assertEquals(1, registry.speechTriggers().count { it.regex.containsMatchIn("turn on light 250") })
+        }
+
+        Log.i(
+            "WorkflowRegistryBenchmark",
+            "workflows=500 scanTasker=${"%.2f".format(scanTasker)}ms scanSpeech=${"%.2f".format(scanSpeech)}ms " +
+                "coldLoadFromIndex=${"%.2f".format(coldLoadMs)}ms tableTasker=${"%.3f".format(tableTasker)}ms " +
+                "tableIntent=${"%.3f".format(tableIntent)}ms tableSpeech=${"%.3f".format(tableSpeech)}ms"
+        )
+        assertTrue(tableTasker * 10 < scanTasker)
+        assertTrue(tableSpeech * 10 < scanSpeech)
+    }
+}
@@ -0,0 +1,229 @@
+package com.ai.assistance.operit.ui.features.chat.webview.workspace.editor
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.SmallTest
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.LineHighlighter.Companion.TOKEN_COMMENT
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.LineHighlighter.Companion.TOKEN_FUNCTION
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.LineHighlighter.Companion.TOKEN_KEYWORD
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.LineHighlighter.Companion.TOKEN_NUMBER
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.LineHighlighter.Companion.TOKEN_STRING
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.LineHighlighter.Companion.TOKEN_TYPE
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.LineHighlighter.Companion.TOKEN_VARIABLE
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.language.LanguageFactory
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.language.LanguageSupport
+import kotlin.random.Random
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** 按行增量高亮：各语言的记号、块注释与多行字符串的状态传播、随机编辑与完整分析一致，以及 1 万行文件上的按键延迟 */
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class LineHighlighterTest {
+
+    /** 模拟编辑器：修改文本后按 TextWatcher 的参数通知高亮器 */
+    private class Document(val language: LanguageSupport?, initial: String) {
+        val text = StringBuilder(initial)
+        val highlighter = LineHighlighter(language).apply {
+            reset(text)
+            relex(text)
+        }
+
+        /** 替换 [start, end) 并分析完成，返回重新分析的行数 */
+        fun replace(start: Int, end: Int, insert: String, maxLines: Int = Int.MAX_VALUE): Int {
+            val before = highlighter.relexedLines
+            text.replace(start, end, insert)
+            highlighter.edit(text, start, end - start, insert.length)
+            highlighter.relex(text, maxLines)
+            return (highlighter.relexedLines - before).toInt()
+        }
+
+        fun insert(at: Int, insert: String) = replace(at, at, insert)
+
+        fun tokenOf(word: String, occurrence: Int = 0): Int {
+            var index = -1
+            repeat(occurrence + 1) { index = text.indexOf(word, index + 1) }
+            return highlighter.tokenAt(index)
+        }
+
+        fun assertMatchesFullParse() {
+            val full = LineHighlighter(language).apply {
+                reset(text)
+                relex(text)
+            }
+            assertEquals(full.lineCount, highlighter.lineCount)
+            for (line in 0 until full.lineCount) {
+                assertEquals("start of line $line", full.lineStart(line), highlighter.lineStart(line))
+                assertEquals("state of line $line", full.lineState(line), highlighter.lineState(line))
+                assertArrayEquals("spans of line $line", full.spans(line), highlighter.spans(line))
+            }
+        }
+    }
+
+    private fun support(name: String) = LanguageFactory.getLanguageSupport(name)!!
+
+    @Test
+    fun testTokensForEachLanguage() {
+        val kotlin = Document(support("kotlin"), "fun main() {\n    val s: String = \"hi\" // note\n    println(0x1F + 2.5e-3)\n}")
+        assertEquals(TOKEN_KEYWORD, kotlin.tokenOf("fun"))
+        assertEquals(TOKEN_FUNCTION, kotlin.tokenOf("main"))
+        assertEquals(TOKEN_TYPE, kotlin.tokenOf("String"))
+        assertEquals(TOKEN_STRING, kotlin.tokenOf("hi"))
+        assertEquals(TOKEN_COMMENT, kotlin.tokenOf("note"))
+        assertEquals(TOKEN_FUNCTION, kotlin.tokenOf("println"))
+        assertEquals(TOKEN_NUMBER, kotlin.tokenOf("1F"))
+        assertEquals(TOKEN_NUMBER, kotlin.tokenOf("-3"))
+        // 行尾注释是一个区段
+        val spans = kotlin.highlighter.spans(1)
+        assertEquals(TOKEN_COMMENT, spans.last())
+        assertEquals("    val s: String = \"hi\" ".length, spans[spans.size - 2])
+
+        val js = Document(support("javascript"), "const m = new Map(); console.log(`a ${'$'}{b}`, 'c')")
+        assertEquals(TOKEN_KEYWORD, js.tokenOf("const"))
+        assertEquals(TOKEN_TYPE, js.tokenOf("Map"))
+        assertEquals(TOKEN_VARIABLE, js.tokenOf("console"))
+        assertEquals(TOKEN_STRING, js.tokenOf("a "))
+        assertEquals(TOKEN_STRING, js.tokenOf("'c'"))
+
+        val html = Document(support("html"), "<div class=\"x\">\n<!-- c\n d -->\n</div>")
+        assertEquals(TOKEN_KEYWORD, html.tokenOf("div"))
+        assertEquals(TOKEN_FUNCTION, html.tokenOf("class"))
+        assertEquals(TOKEN_STRING, html.tokenOf("x"))
+        assertEquals(TOKEN_COMMENT, html.tokenOf(" d "))
+        assertEquals(TOKEN_KEYWORD, html.tokenOf("div", 1))
+
+        // 没有语言支持时只识别注释、字符串和数字
+        val plain = Document(null, "abc /* x */ 'y' 12")
+        assertEquals(LineHighlighter.TOKEN_DEFAULT, plain.tokenOf("abc"))
+        assertEquals(TOKEN_COMMENT, plain.tokenOf("x"))
+        assertEquals(TOKEN_STRING, plain.tokenOf("y"))
+        assertEquals(TOKEN_NUMBER, plain.tokenOf("12"))
+    }
+
+    @Test
+    fun testBlockCommentRelexesOnlyUntilStateConverges() {
+        val doc = Document(support("javascript"), (0 until 1000).joinToString("\n") { "let a$it = $it;" })
+
+        // 只改动一行内部：只分析这一行
+        assertEquals(1, doc.insert(doc.highlighter.lineStart(500) + 4, "x"))
+
+        // 打开块注释：后续所有行都变为注释
+        assertEquals(990, doc.insert(doc.highlighter.lineStart(10), "/*"))
+        assertEquals(TOKEN_COMMENT, doc.tokenOf("a500"))
+        assertEquals(LineHighlighter.STATE_BLOCK_COMMENT, doc.highlighter.lineState(999))
+
+        // 在第 20 行关闭：状态在下一行恢复，之后的行全部重新分析一遍
+        val close = doc.highlighter.lineStart(21) - 1
+        assertEquals(980, doc.insert(close, "*/"))
+        assertEquals(TOKEN_COMMENT, doc.tokenOf("a15"))
+        assertEquals(TOKEN_VARIABLE, doc.tokenOf("a21"))
+
+        // 注释内部的修改不会改变行尾状态
+        assertEquals(1, doc.insert(doc.highlighter.lineStart(15), "zz"))
+        doc.assertMatchesFullParse()
+    }
+
+    @Test
+    fun testMultiLineStrings() {
+        val kotlin = Document(support("kotlin"), "val a = \"\"\"\n  raw \\\"\"\" + 1\nval b = 2")
+        assertEquals(TOKEN_STRING, kotlin.tokenOf("raw"))
+        // 原始字符串没有转义，\"\"\" 处结束
+        assertEquals(TOKEN_NUMBER, kotlin.tokenOf("1"))
+        assertEquals(TOKEN_KEYWORD, kotlin.tokenOf("val", 1))
+
+        val js = Document(support("javascript"), "const t = `line1\n\\` still\nline3` + x\nlet y")
+        assertEquals(TOKEN_STRING, js.tokenOf("still"))
+        assertEquals(TOKEN_STRING, js.tokenOf("line3"))
+        assertEquals(TOKEN_VARIABLE, js.tokenOf("x"))
+        // 普通字符串不跨行
+        val quoted = Document(support("javascript"), "let s = 'open\nlet t")
+        assertEquals(TOKEN_KEYWORD, quoted.tokenOf("let", 1))
+    }
+
+    @Test
+    fun testRandomEditsMatchFullParse() {
+        val random = Random(7)
+        val fragments = listOf("\n", "\n\n", "/*", "*/", "//", "\"", "'", "`", "\"\"\"", "<!--", "-->", "\\", "val ", "foo(", "0x1f", " ", "\$x", "class")
+        for (name in listOf("kotlin", "javascript", "html", null)) {
+            val language = name?.let { support(it) }
+            val doc = Document(language, (0 until 200).joinToString("\n") { "fun f$it(x: Int) = \"s$it\" + x /* c */ // d" })
+            repeat(400) {
+                val start = random.nextInt(doc.text.length + 1)
+                val end = if (random.nextInt(3) == 0) (start + random.nextInt(20)).coerceAtMost(doc.text.length) else start
+                val insert = if (random.nextInt(4) == 0) "" else fragments[random.nextInt(fragments.size)]
+                // 一半的修改只分析几行就继续下一次修改，模拟分帧分析尚未完成时又有输入
+                if (random.nextBoolean()) {
+                    doc.replace(start, end, insert, maxLines = 1 + random.nextInt(5))
+                } else {
+                    doc.replace(start, end, insert)
+                    doc.assertMatchesFullParse()
+                }
+            }
+            doc.highlighter.relex(doc.text)
+            doc.assertMatchesFullParse()
+        }
+    }
+
+    /**
+     * 1 万行 Kotlin 文件：完整分析耗时，对比在文件中部逐键输入时每次按键的增量分析耗时，
+     * 以及在文件开头打开块注释这种最坏情况
+     */
+    @Test
+    @LargeTest
+    fun benchmarkKeystrokeLatencyOn10kLines() {
+        val source = (0 until 10_000).joinToString("\n") { i ->
+            when (i % 5) {
+                0 -> "    // doc $i"
+                1 -> "    fun method$i(value: Int): String {"
+                2 -> "        val text = \"value=\$value\" // trailing $i"
+                3 -> "        return text.repeat(${i % 7}) + listOf(1, 2.5f, 0x1F).size"
+                else -> "    }"
+            }
+        }
+        val kotlin = support("kotlin")
+
+        val fullStart = System.nanoTime()
+        val doc = Document(kotlin, source)
+        val fullNanos = System.nanoTime() - fullStart
+
+        val random = Random(1)
+        val typed = "val answer = compute(42) // ok"
+        val latencies = ArrayList<Long>()
+        var relexed = 0
+        repeat(20) { round ->
+            var at = doc.highlighter.lineStart(4_000 + round * 100)
+            for (c in typed) {
+                val start = System.nanoTime()
+                relexed += doc.insert(at, c.toString())
+                latencies.add(System.nanoTime() - start)
+                at++
+            }
+            val newline = System.nanoTime()
+            relexed += doc.insert(at, "\n")
+            latencies.add(System.nanoTime() - newline)
+            if (random.nextBoolean()) doc.replace(at - 3, at, "")
+        }
+        latencies.sort()
+        val p50 = latencies[latencies.size / 2]
+        val p95 = latencies[latencies.size * 95 / 100]
+
+        val worstStart = System.nanoTime()
+        val worstLines = doc.insert(0, "/*")
+        val worstNanos = System.nanoTime() - worstStart
+        doc.replace(0, 2, "")
+
+        Log.i(
+            "LineHighlighterBenchmark",
+            "lines=10000 fullParse=${fullNanos / 1000}us keystroke p50=${p50 / 1000}us p95=${p95 / 1000}us " +
+                "linesPerKeystroke=${"%.2f".format(relexed.toDouble() / latencies.size)} " +
+                "openComment=${worstNanos / 1000}us ($worstLines lines)"
+        )
+        assertTrue(relexed <= latencies.size * 2)
+        assertTrue("p95=$p95 full=$fullNanos", p95 * 10 < fullNanos)
+        doc.assertMatchesFullParse()
+    }
+}
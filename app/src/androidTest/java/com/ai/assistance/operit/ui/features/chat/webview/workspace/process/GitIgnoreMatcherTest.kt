@@ -0,0 +1,152 @@
+package com.ai.assistance.operit.ui.features.chat.webview.workspace.process
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.SmallTest
+import androidx.test.platform.app.InstrumentationRegistry
+import java.io.File
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** 忽略规则与 git 的一致性（期望值取自 `git check-ignore` 的输出），以及并行遍历在 20 万文件上的耗时 */
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class GitIgnoreMatcherTest {
+
+    private lateinit var root: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        root = File(context.cacheDir, "gitignore_test").apply { deleteRecursively() }
+    }
+
+    @After
+    fun tearDown() {
+        root.deleteRecursively()
+    }
+
+    private fun write(path: String, content: String = "") {
+        val file = File(root, path)
+        file.parentFile?.mkdirs()
+        file.writeText(content)
+    }
+
+    @Test
+    fun testRootRulesMatchGit() {
+        val rules = GitIgnoreRuleSet.compile(
+            """
+            # comment
+            *.log
+            !important.log
+            build/
+            /root_only.txt
+            docs/*.md
+            !docs/keep.md
+            **/tmp
+            logs/**
+            a/**/z.txt
+            *.[oa]
+            foo?.txt
+            \#hash
+            trailing.txt
+            *~
+            *_test.go
+            *-lock.json
+            *${'$'}py.class
+            """.trimIndent().lines()
+        )
+        val ignored = listOf(
+            "a.log", "x/y/b.log", "build", "src/build", "root_only.txt", "docs/a.md", "tmp", "x/tmp",
+            "logs/a.txt", "logs/d/e.txt", "a/z.txt", "a/b/c/z.txt", "main.o", "lib.a", "foo1.txt", "#hash", "trailing.txt",
+            "notes.txt~", "x/main_test.go", "package-lock.json", "x/y/yarn-lock.json", "mod${'$'}py.class"
+        )
+        val kept = listOf(
+            "important.log", "x/important.log", "x/root_only.txt", "docs/keep.md", "docs/sub/b.md",
+            "b/a/z.txt", "main.c", "foo12.txt", "logs", "# comment",
+            "main.go", "lock.json", "py.class"
+        )
+        val directories = setOf("build", "src/build", "tmp", "x/tmp", "logs")
+        ignored.forEach { assertTrue(it, rules.isIgnored(it, it in directories)) }
+        kept.forEach { assertFalse(it, rules.isIgnored(it, it in directories)) }
+        // 只匹配目录的规则不匹配同名文件
+        assertFalse(rules.isIgnored("build", false))
+    }
+
+    @Test
+    fun testNegationCannotReincludeInsideExcludedDirectory() {
+        write(".gitignore", "out/\n!out/keep.txt\ncache/*\n!cache/keep/\n")
+        val matcher = GitIgnoreMatcher(root)
+        assertTrue(matcher.isIgnored("out/keep.txt", false))
+        assertTrue(matcher.isIgnored("cache/drop/d.txt", false))
+        assertFalse(matcher.isIgnored("cache/keep/k.txt", false))
+    }
+
+    @Test
+    fun testNestedIgnoreFilesOverrideParents() {
+        write(".gitignore", "*.log\n")
+        write("n/.gitignore", "a.txt\n!*.log\ndeep/c.log\n/d2/*.tmp\n")
+        write("n/d2/.gitignore", "!y.tmp\n")
+        val matcher = GitIgnoreMatcher(root)
+        assertTrue(matcher.isIgnored("x.log", false))
+        assertFalse(matcher.isIgnored("n/deep/keep.log", false))
+        assertTrue(matcher.isIgnored("n/deep/c.log", false))
+        assertTrue(matcher.isIgnored("n/deep/a.txt", false))
+        assertTrue(matcher.isIgnored("n/d2/x.tmp", false))
+        assertFalse(matcher.isIgnored("n/d2/y.tmp", false))
+        // 子目录的规则不影响其他目录
+        assertFalse(matcher.isIgnored("a.txt", false))
+    }
+
+    @Test
+    fun testWalkerPrunesIgnoredDirectories() {
+        write(".gitignore", "node_modules/\n*.tmp\n")
+        write("src/main.kt")
+        write("src/notes.tmp")
+        write("node_modules/p/index.js")
+        write("lib/.gitignore", "generated/\n")
+        write("lib/generated/a.kt")
+        write("lib/b.kt")
+        write(".backup/objects/x")
+
+        val files = WorkspaceWalker.walkFiles(root).map { it.relativeTo(root).path.replace(File.separatorChar, '/') }
+        assertEquals(listOf(".gitignore", "lib/.gitignore", "lib/b.kt", "src/main.kt"), files)
+    }
+
+    /**
+     * 20 万个文件（其中 18 万个在 node_modules 和 build 中）：
+     * 并行剪枝遍历对比先完整遍历再逐个匹配的方式。
+     */
+    @Test
+    @LargeTest
+    fun benchmarkWalkOn200kFileTree() {
+        write(".gitignore", "node_modules/\nbuild/\n*.log\n")
+        for (p in 0 until 20) {
+            for (d in 0 until 100) {
+                for (f in 0 until 45) write("packages/p$p/node_modules/m$d/f$f.js")
+                for (f in 0 until 45) write("packages/p$p/build/o$d/f$f.class")
+                for (f in 0 until 10) write("packages/p$p/src/d$d/f$f.kt")
+            }
+        }
+
+        val fullStart = System.nanoTime()
+        val matcher = GitIgnoreMatcher(root)
+        val full = root.walkTopDown().filter { it.isFile && !matcher.isIgnored(it) }.count()
+        val fullMs = (System.nanoTime() - fullStart) / 1_000_000
+
+        val walkStart = System.nanoTime()
+        val walked = WorkspaceWalker.walkFiles(root)
+        val walkMs = (System.nanoTime() - walkStart) / 1_000_000
+
+        Log.i("GitIgnoreBenchmark", "files=200000 kept=${walked.size} fullWalk=${fullMs}ms prunedParallel=${walkMs}ms")
+        assertEquals(full, walked.size)
+        assertEquals(20 * 100 * 10 + 1, walked.size)
+        assertTrue(walkMs < fullMs)
+    }
+}
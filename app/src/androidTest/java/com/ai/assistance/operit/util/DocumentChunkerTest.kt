@@ -0,0 +1,123 @@
+package com.ai.assistance.operit.util
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.SmallTest
+import com.ai.assistance.operit.services.OnnxEmbeddingService
+import java.io.StringReader
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** 流式分块器的正确性测试，以及多 MB 文本的导入吞吐基准 */
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class DocumentChunkerTest {
+
+    private val config = DocumentChunker.Config(targetChars = 200, maxChars = 400, overlapChars = 40)
+
+    private fun chunk(text: String, config: DocumentChunker.Config = this.config) =
+        DocumentChunker(config).chunks(StringReader(text)).toList()
+
+    @Test
+    fun testShortParagraphsAreMergedUpToTarget() {
+        val text = (1..12).joinToString("\n\n") { "第${it}段的内容。" }
+        val chunks = chunk(text, DocumentChunker.Config(targetChars = 60, maxChars = 120, overlapChars = 0))
+        assertTrue(chunks.size in 2..4)
+        assertTrue(chunks.all { it.length <= 60 })
+        assertEquals(text.replace("\n\n", ""), chunks.joinToString("").replace("\n", ""))
+    }
+
+    @Test
+    fun testLongParagraphIsSplitAtSentenceEnds() {
+        val paragraph = (1..60).joinToString(" ") { "Sentence number $it ends here." }
+        val chunks = chunk(paragraph, config.copy(overlapChars = 0))
+        assertTrue(chunks.size > 1)
+        assertTrue(chunks.all { it.length <= config.maxChars })
+        assertTrue(chunks.dropLast(1).all { it.endsWith(".") })
+    }
+
+    @Test
+    fun testConsecutiveChunksOverlap() {
+        val paragraph = (1..60).joinToString(" ") { "Sentence number $it ends here." }
+        val chunks = chunk(paragraph)
+        for (i in 1 until chunks.size) {
+            val head = chunks[i].substringBefore('\n')
+            assertTrue("chunk $i should start with the tail of chunk ${i - 1}", chunks[i - 1].endsWith(head))
+            assertTrue(head.length <= config.overlapChars)
+        }
+    }
+
+    @Test
+    fun testSeparatorLinesAreDropped() {
+        val chunks = chunk("标题\n***\n正文内容\n\n-----\n\n结尾")
+        assertFalse(chunks.any { it.contains("***") || it.contains("---") })
+        assertTrue(chunks.joinToString("").contains("结尾"))
+    }
+
+    @Test
+    fun testStreamingReadsWithoutBlankLines() {
+        // 没有空行的超长文本也能按上限切分，而不会累积成一个段落
+        val text = "没有空行的一行文本。".repeat(2000)
+        val chunks = chunk(text)
+        assertTrue(chunks.size > 10)
+        assertTrue(chunks.all { it.length <= config.maxChars + config.overlapChars + 1 })
+    }
+
+    /**
+     * 多 MB 文本的分块吞吐，以及（嵌入模型已就绪时）逐条与批量生成嵌入的吞吐对比。
+     */
+    @Test
+    @LargeTest
+    fun benchmarkIngestionThroughput() {
+        val text = buildString {
+            var i = 0
+            while (length < 8 * 1024 * 1024) {
+                append("这是第").append(i).append("句测试文本，用于衡量文档导入的吞吐。")
+                if (i % 5 == 0) append("\n\n")
+                i++
+            }
+        }
+        val megabytes = text.toByteArray().size / (1024.0 * 1024.0)
+
+        val chunkStart = System.nanoTime()
+        val chunks = DocumentChunker().chunks(StringReader(text)).toList()
+        val chunkSeconds = (System.nanoTime() - chunkStart) / 1e9
+        Log.i("IngestionBenchmark", "chunking: ${"%.1f".format(megabytes)}MB -> ${chunks.size} chunks, ${"%.1f".format(megabytes / chunkSeconds)}MB/s")
+        assertTrue(chunks.isNotEmpty())
+
+        // 嵌入模型由应用在空闲时加载，未就绪时只报告分块吞吐
+        var waited = 0
+        while (!OnnxEmbeddingService.isInitialized() && waited < 30_000) {
+            Thread.sleep(500)
+            waited += 500
+        }
+        if (!OnnxEmbeddingService.isInitialized()) {
+            Log.w("IngestionBenchmark", "Embedding model not initialized; skipping embedding throughput")
+            return
+        }
+
+        val sample = chunks.take(256)
+        val serialStart = System.nanoTime()
+        sample.forEach { OnnxEmbeddingService.generateEmbedding(it) }
+        val serialRate = sample.size / ((System.nanoTime() - serialStart) / 1e9)
+
+        val batchStart = System.nanoTime()
+        sample.chunked(16).forEach { OnnxEmbeddingService.generateEmbeddings(it) }
+        val batchRate = sample.size / ((System.nanoTime() - batchStart) / 1e9)
+
+        Log.i(
+            "IngestionBenchmark",
+            "embedding: serial=${"%.1f".format(serialRate)} chunks/s batched=${"%.1f".format(batchRate)} chunks/s, " +
+                "estimated ${"%.1f".format(chunks.size / batchRate)}s for the whole document"
+        )
+
+        // 批量结果应与逐条结果一致
+        val single = OnnxEmbeddingService.generateEmbedding(sample[0])!!
+        val batched = OnnxEmbeddingService.generateEmbeddings(sample.take(4))[0]!!
+        assertTrue(OnnxEmbeddingService.cosineSimilarity(single, batched) > 0.999f)
+    }
+}
@@ -0,0 +1,185 @@
+package com.ai.assistance.operit.util
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import java.io.File
+import java.io.RandomAccessFile
+import java.net.ServerSocket
+import java.net.Socket
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.concurrent.thread
+import kotlin.random.Random
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class HttpMultiPartDownloaderTest {
+
+    /**
+     * 支持 HEAD 与 Range 请求的本地 HTTP 服务，可注入限速、断线和整体故障
+     */
+    private class FlakyServer(private val data: ByteArray) {
+        private val socket = ServerSocket(0)
+        private val requests = AtomicInteger()
+        val servedBytes = AtomicLong()
+
+        // 每 dropEvery 个 GET 请求中有一个在发送 dropAfterBytes 字节后断开
+        @Volatile var dropEvery = 0
+        @Volatile var dropAfterBytes = 64 * 1024
+        // 第一个连接每发送 16KB 休眠的毫秒数，模拟慢连接
+        @Volatile var slowFirstConnectionMs = 0L
+        // 累计发送超过该字节数后所有连接立即断开，模拟进程被杀/网络中断
+        @Volatile var crashAfterBytes = Long.MAX_VALUE
+
+        val url: String
+            get() = "http://127.0.0.1:${socket.localPort}/file.bin"
+
+        init {
+            thread(isDaemon = true) {
+                while (!socket.isClosed) {
+                    val client = try {
+                        socket.accept()
+                    } catch (e: Exception) {
+                        break
+                    }
+                    thread(isDaemon = true) { client.use { handle(it) } }
+                }
+            }
+        }
+
+        private fun handle(client: Socket) {
+            val reader = client.getInputStream().bufferedReader(Charsets.ISO_8859_1)
+            val requestLine = reader.readLine() ?: return
+            val headers = generateSequence { reader.readLine()?.takeIf { it.isNotEmpty() } }
+                .associate { it.substringBefore(':').trim().lowercase() to it.substringAfter(':').trim() }
+            val out = client.getOutputStream()
+            val common = "Accept-Ranges: bytes\r\nETag: \"v1\"\r\nConnection: close\r\n"
+
+            if (requestLine.startsWith("HEAD")) {
+                out.write("HTTP/1.1 200 OK\r\nContent-Length: ${data.size}\r\n$common\r\n".toByteArray())
+                return
+            }
+
+            val index = requests.incrementAndGet()
+            val range = headers["range"]?.removePrefix("bytes=")
+            val start = range?.substringBefore('-')?.toLong() ?: 0L
+            val end = range?.substringAfter('-')?.takeIf { it.isNotEmpty() }?.toLong() ?: (data.size - 1L)
+            val length = end - start + 1
+            val status = if (range != null) "206 Partial Content" else "200 OK"
+            out.write(
+                ("HTTP/1.1 $status\r\nContent-Length: $length\r\n" +
+                    "Content-Range: bytes $start-$end/${data.size}\r\n$common\r\n").toByteArray()
+            )
+
+            val dropAt = if (dropEvery > 0 && index % dropEvery == 0) dropAfterBytes.toLong() else Long.MAX_VALUE
+            var sent = 0L
+            while (sent < length) {
+                if (servedBytes.get() >= crashAfterBytes) return
+                if (sent >= dropAt) return
+                val size = minOf(16 * 1024L, length - sent).toInt()
+                out.write(data, (start + sent).toInt(), size)
+                sent += size
+                servedBytes.addAndGet(size.toLong())
+                if (index == 1 && slowFirstConnectionMs > 0) Thread.sleep(slowFirstConnectionMs)
+            }
+            out.flush()
+        }
+
+        fun close() = socket.close()
+    }
+
+    private val data = Random(42).nextBytes(8 * 1024 * 1024)
+    private val dataSha256 = sha256(data)
+    private lateinit var server: FlakyServer
+    private lateinit var dest: File
+
+    @Before
+    fun setUp() {
+        server = FlakyServer(data)
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        dest = File(context.cacheDir, "multipart_${System.nanoTime()}.bin")
+    }
+
+    @After
+    fun tearDown() {
+        server.close()
+        dest.delete()
+        File(dest.parentFile, dest.name + ".dlmanifest").delete()
+    }
+
+    @Test
+    fun testDownloadSurvivesThrottlingAndDisconnects() {
+        server.dropEvery = 3
+        server.slowFirstConnectionMs = 20
+
+        HttpMultiPartDownloader.download(server.url, dest, threadCount = 4, expectedSha256 = dataSha256)
+
+        assertArrayEquals(data, dest.readBytes())
+        assertFalse(File(dest.parentFile, dest.name + ".dlmanifest").exists())
+    }
+
+    @Test
+    fun testResumesFromManifestAfterInterruption() {
+        server.crashAfterBytes = 3L * 1024 * 1024
+        try {
+            HttpMultiPartDownloader.download(server.url, dest, threadCount = 4)
+            fail("Expected the interrupted download to fail")
+        } catch (e: RuntimeException) {
+            // expected
+        }
+        assertTrue(File(dest.parentFile, dest.name + ".dlmanifest").exists())
+
+        server.crashAfterBytes = Long.MAX_VALUE
+        server.servedBytes.set(0)
+        HttpMultiPartDownloader.download(server.url, dest, threadCount = 4, expectedSha256 = dataSha256)
+
+        assertArrayEquals(data, dest.readBytes())
+        // 已完成的区间不会重新下载
+        assertTrue(server.servedBytes.get() < data.size - 2L * 1024 * 1024)
+    }
+
+    @Test
+    fun testCorruptedChunkIsDownloadedAgainOnResume() {
+        server.crashAfterBytes = 4L * 1024 * 1024
+        try {
+            HttpMultiPartDownloader.download(server.url, dest, threadCount = 2)
+            fail("Expected the interrupted download to fail")
+        } catch (e: RuntimeException) {
+            // expected
+        }
+
+        // 破坏文件开头已下载的内容
+        RandomAccessFile(dest, "rw").use { raf ->
+            raf.seek(1024)
+            raf.write(ByteArray(4096) { 0x5A })
+        }
+
+        server.crashAfterBytes = Long.MAX_VALUE
+        HttpMultiPartDownloader.download(server.url, dest, threadCount = 2, expectedSha256 = dataSha256)
+        assertArrayEquals(data, dest.readBytes())
+    }
+
+    @Test
+    fun testWholeFileChecksumMismatchFails() {
+        try {
+            HttpMultiPartDownloader.download(server.url, dest, threadCount = 4, expectedSha256 = "00".repeat(32))
+            fail("Expected checksum mismatch")
+        } catch (e: java.io.IOException) {
+            assertTrue(e.message!!.contains("Checksum mismatch"))
+        }
+        assertFalse(dest.exists())
+    }
+
+    private fun sha256(bytes: ByteArray): String =
+        MessageDigest.getInstance("SHA-256").digest(bytes).joinToString("") { "%02x".format(it) }
+}
@@ -0,0 +1,321 @@
+package com.ai.assistance.operit.util
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.RandomAccessFile
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipInputStream
+import java.util.zip.ZipOutputStream
+import kotlin.random.Random
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** 并行 ZIP：与标准库读取器互通、分块压缩率、zip-slip 校验、取消时清理输出，以及与原实现的吞吐量对比 */
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class ParallelZipTest {
+
+    private lateinit var dir: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        dir = File(context.cacheDir, "parallel_zip_test").apply {
+            deleteRecursively()
+            mkdirs()
+        }
+    }
+
+    @After
+    fun tearDown() {
+        dir.deleteRecursively()
+    }
+
+    private val words = listOf("val", "fun", "return", "class", "import", "workspace", "message", "index", "0x1F", "{", "}", "\n")
+
+    /** 类似源代码的可压缩文本 */
+    private fun text(random: Random, size: Int): ByteArray {
+        val sb = StringBuilder(size + 16)
+        while (sb.length < size) sb.append(words[random.nextInt(words.size)]).append(' ')
+        return sb.substring(0, size).toByteArray()
+    }
+
+    private fun makeTree(root: File): Map<String, ByteArray> {
+        val random = Random(3)
+        val files = linkedMapOf(
+            "a.txt" to "hello".toByteArray(),
+            "empty.bin" to ByteArray(0),
+            "src/Main.kt" to text(random, 20_000),
+            "src/deep/nested/Util.kt" to text(random, 70_000),
+            "media/photo.jpg" to random.nextBytes(300_000),
+            // 跨越多个 1MB 块，文本与随机数据交替
+            "model/weights.bin" to text(random, 1_500_000) + random.nextBytes(600_000) + text(random, 1_300_000),
+            "中文/名字.txt" to "内容".toByteArray()
+        )
+        for ((path, bytes) in files) {
+            File(root, path).apply { parentFile!!.mkdirs() }.writeBytes(bytes)
+        }
+        File(root, "empty/dir").mkdirs()
+        return files
+    }
+
+    @Test
+    fun testRoundTripMatchesJavaZipReaders() = runBlocking {
+        val source = File(dir, "tree")
+        val files = makeTree(source)
+        val zip = File(dir, "out/tree.zip")
+        val progress = ArrayList<ParallelZip.Progress>()
+        val count = ParallelZip.compress(source, zip, includeRoot = true, threads = 4) { synchronized(progress) { progress.add(it) } }
+        assertEquals(files.size + 2, count) // 根目录和空目录
+        assertEquals(1f, progress.last().fraction)
+
+        // 中央目录
+        ZipFile(zip).use { zf ->
+            val names = zf.entries().toList().map { it.name }.toSet()
+            assertEquals(files.keys.map { "tree/$it" }.toSet() + setOf("tree/", "tree/empty/dir/"), names)
+            for ((path, bytes) in files) {
+                val entry = zf.getEntry("tree/$path")
+                assertArrayEquals(path, bytes, zf.getInputStream(entry).use { it.readBytes() })
+                assertEquals(bytes.size.toLong(), entry.size)
+            }
+            // 随机数据存储而不压缩；分块压缩后的大小与单线程压缩接近
+            assertEquals(ZipEntry.STORED, zf.getEntry("tree/media/photo.jpg").method)
+            val weights = files.getValue("model/weights.bin")
+            val deflater = Deflater(Deflater.DEFAULT_COMPRESSION, true).apply {
+                setInput(weights)
+                finish()
+            }
+            val out = ByteArray(weights.size * 2)
+            var single = 0
+            while (!deflater.finished()) single += deflater.deflate(out, single, out.size - single)
+            deflater.end()
+            val parallel = zf.getEntry("tree/model/weights.bin").compressedSize
+            assertTrue("parallel=$parallel single=$single", parallel < single * 1.01 + 64)
+        }
+
+        // 本地文件头（顺序读取时使用，多块条目的 CRC 和大小是回填的）
+        ZipInputStream(FileInputStream(zip)).use { zis ->
+            var seen = 0
+            while (true) {
+                val entry = zis.nextEntry ?: break
+                val bytes = zis.readBytes()
+                if (!entry.isDirectory) {
+                    assertArrayEquals(entry.name, files.getValue(entry.name.removePrefix("tree/")), bytes)
+                    seen++
+                }
+            }
+            assertEquals(files.size, seen)
+        }
+
+        // 并行解压
+        val target = File(dir, "extracted")
+        ParallelZip.extract(zip, target, threads = 4)
+        for ((path, bytes) in files) {
+            assertArrayEquals(path, bytes, File(target, "tree/$path").readBytes())
+        }
+        assertTrue(File(target, "tree/empty/dir").isDirectory)
+
+        // 单个文件直接作为条目；目标文件位于源目录中时不会把自己打包进去
+        val inside = File(source, "self.zip")
+        ParallelZip.compress(source, inside, includeRoot = false)
+        ZipFile(inside).use { zf -> assertFalse(zf.entries().toList().any { it.name.endsWith("self.zip") }) }
+        val single = File(dir, "single.zip")
+        ParallelZip.compress(File(source, "a.txt"), single)
+        ZipFile(single).use { zf -> assertEquals(listOf("a.txt"), zf.entries().toList().map { it.name }) }
+    }
+
+    @Test
+    fun testRejectsZipSlipEntries() = runBlocking {
+        val zip = File(dir, "evil.zip")
+        ZipOutputStream(FileOutputStream(zip)).use { zos ->
+            zos.putNextEntry(ZipEntry("ok.txt"))
+            zos.write("ok".toByteArray())
+            zos.putNextEntry(ZipEntry("../evil.txt"))
+            zos.write("evil".toByteArray())
+        }
+        val target = File(dir, "target")
+        try {
+            ParallelZip.extract(zip, target)
+            fail("expected SecurityException")
+        } catch (e: SecurityException) {
+            // 先校验全部条目，一个文件都不写
+        }
+        assertFalse(File(dir, "evil.txt").exists())
+        assertFalse(File(target, "ok.txt").exists())
+
+        // 中央目录损坏时走顺序解压，同样校验
+        RandomAccessFile(zip, "rw").use { it.setLength(it.length() - 22) }
+        try {
+            ParallelZip.extract(zip, target)
+            fail("expected SecurityException")
+        } catch (e: SecurityException) {
+        }
+        assertFalse(File(dir, "evil.txt").exists())
+    }
+
+    @Test
+    fun testCancellationDeletesPartialOutput() = runBlocking {
+        val source = File(dir, "big").apply { mkdirs() }
+        File(source, "large.bin").writeBytes(text(Random(1), 48 * 1024 * 1024))
+        val zip = File(dir, "big.zip")
+
+        val started = CompletableDeferred<Unit>()
+        val job = launch(Dispatchers.IO) {
+            ParallelZip.compress(source, zip, threads = 2) { started.complete(Unit) }
+        }
+        started.await()
+        job.cancel()
+        job.join()
+        assertTrue(job.isCancelled)
+        assertFalse(zip.exists())
+
+        ParallelZip.compress(source, zip)
+        val target = File(dir, "target")
+        val extracting = CompletableDeferred<Unit>()
+        val extractJob = launch(Dispatchers.IO) {
+            ParallelZip.extract(zip, target, threads = 2) { extracting.complete(Unit) }
+        }
+        extracting.await()
+        extractJob.cancel()
+        extractJob.join()
+        assertFalse(File(target, "big/large.bin").exists())
+    }
+
+    @Test
+    fun testCrc32Combine() {
+        val random = Random(5)
+        repeat(20) {
+            val a = random.nextBytes(random.nextInt(0, 5000))
+            val b = random.nextBytes(random.nextInt(1, 5000))
+            val crcA = CRC32().apply { update(a) }.value
+            val crcB = CRC32().apply { update(b) }.value
+            val whole = CRC32().apply { update(a + b) }.value
+            assertEquals(whole, ParallelZip.crc32Combine(crcA, crcB, b.size.toLong()))
+        }
+    }
+
+    /**
+     * 与原实现（ZipOutputStream + 1KB 缓冲区、ZipInputStream 顺序解压）对比压缩和解压吞吐量。
+     * 默认 2GB 的混合目录：可压缩的大文件、不可压缩的媒体文件和大量小源文件各占约三分之一，
+     * 可通过 instrumentation 参数 archiveBenchmarkMb 调整大小
+     */
+    @Test
+    @LargeTest
+    fun benchmarkAgainstSequentialZip() = runBlocking {
+        val totalMb = InstrumentationRegistry.getArguments().getString("archiveBenchmarkMb")?.toIntOrNull() ?: 2048
+        val source = File(dir, "workspace")
+        val random = Random(9)
+        val third = totalMb.toLong() * 1024 * 1024 / 3
+        var written = 0L
+        var index = 0
+        while (written < third) {
+            val bytes = text(random, 32 * 1024 * 1024)
+            File(source, "models/model$index.bin").apply { parentFile!!.mkdirs() }.writeBytes(bytes)
+            written += bytes.size
+            index++
+        }
+        written = 0L
+        while (written < third) {
+            val bytes = random.nextBytes(8 * 1024 * 1024)
+            File(source, "media/video$index.mp4").apply { parentFile!!.mkdirs() }.writeBytes(bytes)
+            written += bytes.size
+            index++
+        }
+        written = 0L
+        while (written < third) {
+            val bytes = text(random, random.nextInt(4 * 1024, 64 * 1024))
+            File(source, "src/module${index % 50}/File$index.kt").apply { parentFile!!.mkdirs() }.writeBytes(bytes)
+            written += bytes.size
+            index++
+        }
+        val totalBytes = source.walkTopDown().filter { it.isFile }.sumOf { it.length() }
+
+        fun seconds(block: () -> Unit): Double {
+            val start = System.nanoTime()
+            block()
+            return (System.nanoTime() - start) / 1e9
+        }
+
+        // 原 zipFiles 的写法
+        val legacyZip = File(dir, "legacy.zip")
+        val legacyZipSeconds = seconds {
+            ZipOutputStream(BufferedOutputStream(FileOutputStream(legacyZip))).use { zos ->
+                val buffer = ByteArray(1024)
+                source.walkTopDown().filter { it.isFile }.forEach { file ->
+                    zos.putNextEntry(ZipEntry("workspace/" + file.toRelativeString(source)))
+                    BufferedInputStream(FileInputStream(file)).use { input ->
+                        while (true) {
+                            val len = input.read(buffer)
+                            if (len <= 0) break
+                            zos.write(buffer, 0, len)
+                        }
+                    }
+                    zos.closeEntry()
+                }
+            }
+        }
+
+        val parallelZip = File(dir, "parallel.zip")
+        val parallelZipSeconds = seconds { runBlocking { ParallelZip.compress(source, parallelZip) } }
+
+        // 原 unzipFiles 的写法
+        val legacyOut = File(dir, "legacy_out")
+        val legacyUnzipSeconds = seconds {
+            ZipInputStream(BufferedInputStream(FileInputStream(parallelZip))).use { zis ->
+                val buffer = ByteArray(64 * 1024)
+                while (true) {
+                    val entry = zis.nextEntry ?: break
+                    val file = File(legacyOut, entry.name)
+                    if (entry.isDirectory) {
+                        file.mkdirs()
+                        continue
+                    }
+                    file.parentFile!!.mkdirs()
+                    BufferedOutputStream(FileOutputStream(file)).use { out ->
+                        while (true) {
+                            val len = zis.read(buffer)
+                            if (len <= 0) break
+                            out.write(buffer, 0, len)
+                        }
+                    }
+                }
+            }
+        }
+        legacyOut.deleteRecursively()
+
+        val parallelOut = File(dir, "parallel_out")
+        val parallelUnzipSeconds = seconds { runBlocking { ParallelZip.extract(parallelZip, parallelOut) } }
+        assertEquals(totalBytes, File(parallelOut, "workspace").walkTopDown().filter { it.isFile }.sumOf { it.length() })
+
+        val mb = totalBytes / 1024.0 / 1024.0
+        Log.i(
+            "ParallelZipBenchmark",
+            "tree=${"%.0f".format(mb)}MB files=$index threads=${ParallelZip.defaultThreads()} " +
+                "zip legacy=${"%.1f".format(mb / legacyZipSeconds)}MB/s parallel=${"%.1f".format(mb / parallelZipSeconds)}MB/s " +
+                "(size legacy=${legacyZip.length() / 1024 / 1024}MB parallel=${parallelZip.length() / 1024 / 1024}MB) " +
+                "unzip legacy=${"%.1f".format(mb / legacyUnzipSeconds)}MB/s parallel=${"%.1f".format(mb / parallelUnzipSeconds)}MB/s"
+        )
+    }
+}
@@ -0,0 +1,156 @@
+package com.ai.assistance.operit.util.search
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import java.io.File
+import kotlin.random.Random
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** BM25 倒排索引的正确性、持久化与查询延迟测试 */
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class Bm25IndexTest {
+
+    private lateinit var dir: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        dir = File(context.cacheDir, "bm25_test").apply {
+            deleteRecursively()
+            mkdirs()
+        }
+    }
+
+    @After
+    fun tearDown() {
+        dir.deleteRecursively()
+    }
+
+    private fun words(text: String) = text.lowercase().split(' ').filter { it.isNotEmpty() }
+
+    @Test
+    fun testRanksRarerAndMoreFrequentTermsHigher() {
+        val index = Bm25Index()
+        index.put(1, 1, words("kotlin coroutine flow"))
+        index.put(2, 2, words("kotlin kotlin android"))
+        index.put(3, 3, words("android compose layout"))
+
+        val hits = index.search(listOf("kotlin"))
+        assertEquals(listOf(2L, 1L), hits.map { it.id })
+
+        // "flow" 只出现在一篇文档中，idf 更高
+        assertEquals(1L, index.search(listOf("flow", "android")).first().id)
+        assertEquals(listOf(3L), index.search(listOf("compose"), filter = { it != 2L }).map { it.id })
+    }
+
+    @Test
+    fun testUpdateAndRemoveKeepPostingsConsistent() {
+        val index = Bm25Index()
+        index.put(1, 1, words("alpha beta"))
+        index.put(2, 2, words("beta gamma"))
+        index.put(1, 10, words("delta"))
+        index.remove(2)
+
+        assertTrue(index.verify())
+        assertTrue(index.search(listOf("beta")).isEmpty())
+        assertEquals(listOf(1L), index.search(listOf("delta")).map { it.id })
+        assertEquals(listOf(1L, 3L), index.reconcile(mapOf(1L to 11L, 3L to 3L)))
+    }
+
+    @Test
+    fun testSnapshotAndJournalSurviveReload() {
+        val file = File(dir, "memory_bm25.idx")
+        Bm25Index(file).apply {
+            rebuild(sequenceOf(Triple(1L, 1L, words("first memory")), Triple(2L, 2L, words("second memory"))))
+            put(3, 3, words("third memory"))
+            remove(1)
+            close()
+        }
+
+        val reloaded = Bm25Index(file)
+        assertTrue(reloaded.load())
+        assertTrue(reloaded.verify())
+        assertEquals(2, reloaded.size)
+        assertEquals(setOf(2L, 3L), reloaded.search(listOf("memory")).map { it.id }.toSet())
+
+        // 日志尾部残缺（写入中途被杀）时，已完整写入的记录仍然生效
+        reloaded.put(4, 4, words("fourth memory"))
+        reloaded.close()
+        File(dir, "memory_bm25.idx.journal").appendBytes(byteArrayOf(1, 0, 0))
+        val truncated = Bm25Index(file)
+        assertTrue(truncated.load())
+        assertTrue(truncated.contains(4))
+        assertTrue(truncated.verify())
+    }
+
+    @Test
+    fun testCorruptSnapshotIsReportedForRebuild() {
+        val file = File(dir, "memory_bm25.idx")
+        file.writeBytes(byteArrayOf(1, 2, 3, 4, 5))
+        val index = Bm25Index(file)
+        assertFalse(index.load())
+        assertEquals(0, index.size)
+    }
+
+    @Test
+    fun testChineseTokenizationMatchesQuery() {
+        val index = Bm25Index()
+        index.put(1, 1, Bm25Index.tokenize("长安大学位于陕西省西安市"))
+        index.put(2, 2, Bm25Index.tokenize("今天的天气非常好"))
+        assertEquals(listOf(1L), index.search(Bm25Index.tokenize("西安的大学")).map { it.id })
+    }
+
+    /**
+     * 10k / 100k 条记忆下的查询延迟，与原先逐条 contains 扫描对比。
+     * 语料为 Zipf 分布的合成词表，跳过分词以便专注于检索本身。
+     */
+    @Test
+    @LargeTest
+    fun benchmarkQueryLatency() {
+        for (docCount in listOf(10_000, 100_000)) {
+            val random = Random(42)
+            val vocabulary = List(20_000) { "w$it" }
+            fun zipfWord(): String {
+                val rank = (vocabulary.size * Math.pow(random.nextDouble(), 3.0)).toInt()
+                return vocabulary[rank.coerceAtMost(vocabulary.size - 1)]
+            }
+            val texts = List(docCount) { List(40) { zipfWord() }.joinToString(" ") }
+
+            val index = Bm25Index()
+            val buildStart = System.nanoTime()
+            index.rebuild(texts.asSequence().mapIndexed { i, text -> Triple(i.toLong(), i.toLong(), words(text)) })
+            val buildMs = (System.nanoTime() - buildStart) / 1_000_000
+
+            val queries = List(200) { listOf(zipfWord(), zipfWord()) }
+            queries.take(20).forEach { index.search(it, limit = 50) } // 预热
+
+            val indexStart = System.nanoTime()
+            queries.forEach { index.search(it, limit = 50) }
+            val indexUs = (System.nanoTime() - indexStart) / 1000.0 / queries.size
+
+            val scanQueries = queries.take(20)
+            val scanStart = System.nanoTime()
+            scanQueries.forEach { query ->
+                texts.count { text -> query.any { text.contains(it, ignoreCase = true) } }
+            }
+            val scanUs = (System.nanoTime() - scanStart) / 1000.0 / scanQueries.size
+
+            Log.i(
+                "Bm25Benchmark",
+                "docs=$docCount terms=${index.termCount} build=${buildMs}ms " +
+                    "bm25=${"%.1f".format(indexUs)}us/query scan=${"%.1f".format(scanUs)}us/query"
+            )
+            assertTrue(indexUs < scanUs)
+        }
+    }
+}
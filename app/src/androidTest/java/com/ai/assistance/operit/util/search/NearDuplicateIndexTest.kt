@@ -0,0 +1,156 @@
+package com.ai.assistance.operit.util.search
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.MediumTest
+import androidx.test.platform.app.InstrumentationRegistry
+import java.io.File
+import kotlin.random.Random
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** 近似重复索引的正确性、持久化，以及批量查重的精确率/召回率基准 */
+@RunWith(AndroidJUnit4::class)
+@MediumTest
+class NearDuplicateIndexTest {
+
+    private lateinit var dir: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        dir = File(context.cacheDir, "dedup_test").apply {
+            deleteRecursively()
+            mkdirs()
+        }
+    }
+
+    @After
+    fun tearDown() {
+        dir.deleteRecursively()
+    }
+
+    @Test
+    fun testRestatementIsFoundAndUnrelatedIsNot() {
+        val index = NearDuplicateIndex()
+        index.put(1, 1, "用户喜欢在周末去西湖边跑步，通常跑十公里左右，结束后会去附近的咖啡店")
+        index.put(2, 2, "项目使用 Kotlin 和 Jetpack Compose 开发，数据库是 ObjectBox")
+
+        val restated = index.findDuplicates("用户喜欢在周末去西湖边跑步，一般跑十公里左右，结束后会去附近的咖啡店", 0.5f)
+        assertEquals(1L, restated.first().id)
+        assertTrue(restated.first().hammingDistance < 16)
+
+        assertTrue(index.findDuplicates("今天的天气非常好，适合出去散步", 0.3f).isEmpty())
+        assertTrue(index.findDuplicates("。。！", 0.1f).isEmpty())
+    }
+
+    @Test
+    fun testRemoveAndDuplicatePairs() {
+        val index = NearDuplicateIndex()
+        val text = "alpha beta gamma delta epsilon zeta eta theta"
+        index.put(1, 1, text)
+        index.put(2, 2, text)
+        index.put(3, 3, "completely different words in this memory")
+        assertEquals(listOf(Triple(1L, 2L, 1f)), index.duplicatePairs(0.9f))
+
+        index.remove(2)
+        assertTrue(index.duplicatePairs(0.9f).isEmpty())
+        // 1 的内容已变化、4 尚未索引，都需要重新写入
+        assertEquals(setOf(1L, 4L), index.reconcile(mapOf(1L to 10L, 3L to 3L, 4L to 4L)).toSet())
+    }
+
+    @Test
+    fun testSnapshotAndJournalSurviveReload() {
+        val file = File(dir, "memory_dedup.idx")
+        NearDuplicateIndex(file).apply {
+            rebuild(sequenceOf(Triple(1L, 1L, "first memory about kotlin coroutines"), Triple(2L, 2L, "second memory about compose")))
+            put(3, 3, "first memory about kotlin coroutines and flows")
+            remove(2)
+            close()
+        }
+
+        val reloaded = NearDuplicateIndex(file)
+        assertTrue(reloaded.load())
+        assertEquals(2, reloaded.size)
+        assertEquals(setOf(1L, 3L), reloaded.findDuplicates("first memory about kotlin coroutines", 0.4f).map { it.id }.toSet())
+
+        // 分带参数不同的快照不能复用
+        reloaded.close()
+        File(dir, "memory_dedup.idx.journal").delete()
+        assertTrue(!NearDuplicateIndex(file, bands = 8, rows = 8).load())
+    }
+
+    /**
+     * 合成语料：每条基础记忆生成若干“重述”（替换 5%～15% 的词），另加同等数量的无关记忆。
+     * 以生成关系为真值，统计 LSH 批量查重的精确率/召回率，并与两两比较 MinHash 的耗时对比。
+     */
+    @Test
+    @LargeTest
+    fun benchmarkPrecisionAndRecall() {
+        val random = Random(42)
+        val vocabulary = List(8_000) { "w$it" }
+        fun document() = List(30) { vocabulary[random.nextInt(vocabulary.size)] }
+        fun restate(words: List<String>) =
+            words.map { if (random.nextDouble() < 0.05 + random.nextDouble() * 0.1) vocabulary[random.nextInt(vocabulary.size)] else it }
+
+        val texts = ArrayList<String>()
+        val origin = ArrayList<Int>() // 每条记忆所属的基础记忆编号，无关记忆各自独立
+        repeat(2_000) { base ->
+            val words = document()
+            texts.add(words.joinToString(" "))
+            origin.add(base)
+            repeat(random.nextInt(3)) {
+                texts.add(restate(words).joinToString(" "))
+                origin.add(base)
+            }
+        }
+        repeat(texts.size) {
+            texts.add(document().joinToString(" "))
+            origin.add(-1 - it)
+        }
+
+        val index = NearDuplicateIndex()
+        val buildStart = System.nanoTime()
+        index.rebuild(texts.asSequence().mapIndexed { i, text -> Triple(i.toLong(), i.toLong(), text) })
+        val buildMs = (System.nanoTime() - buildStart) / 1_000_000
+
+        val threshold = 0.5f
+        val lshStart = System.nanoTime()
+        val found = index.duplicatePairs(threshold).map { it.first.toInt() to it.second.toInt() }.toSet()
+        val lshMs = (System.nanoTime() - lshStart) / 1_000_000
+
+        val expected = HashSet<Pair<Int, Int>>()
+        val groups = origin.indices.groupBy { origin[it] }.values
+        groups.forEach { members ->
+            for (i in members.indices) for (j in i + 1 until members.size) expected.add(members[i] to members[j])
+        }
+
+        // 两两比较的基线，只取前 2000 条估算，避免基准本身耗时过长
+        val signatures = texts.take(2_000).map { index.signature(it) }
+        val bruteStart = System.nanoTime()
+        var bruteCount = 0
+        for (i in signatures.indices) for (j in i + 1 until signatures.size) {
+            if (index.estimateJaccard(signatures[i].minHash, signatures[j].minHash) >= threshold) bruteCount++
+        }
+        val bruteMs = (System.nanoTime() - bruteStart) / 1_000_000.0
+        val n = texts.size.toDouble()
+        val bruteEstimateMs = bruteMs * (n * n) / (2_000.0 * 2_000.0)
+
+        val truePositives = found.count { it in expected }
+        val precision = if (found.isEmpty()) 1.0 else truePositives.toDouble() / found.size
+        val recall = if (expected.isEmpty()) 1.0 else truePositives.toDouble() / expected.size
+
+        Log.i(
+            "DedupBenchmark",
+            "memories=${texts.size} duplicatePairs=${expected.size} build=${buildMs}ms lsh=${lshMs}ms " +
+                "pairwise≈${"%.0f".format(bruteEstimateMs)}ms precision=${"%.3f".format(precision)} recall=${"%.3f".format(recall)}"
+        )
+        assertTrue("precision too low: $precision", precision >= 0.95)
+        assertTrue("recall too low: $recall", recall >= 0.85)
+    }
+}
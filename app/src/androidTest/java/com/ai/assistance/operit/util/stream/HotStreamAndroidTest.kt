@@ -1,10 +1,14 @@
 package com.ai.assistance.operit.util.stream
 
+import android.util.Log
 import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
 import androidx.test.filters.MediumTest
 import androidx.test.platform.app.InstrumentationRegistry
+import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
@@ -373,4 +377,120 @@ class HotStreamAndroidTest {
         // 两个收集器应该收到相同的值
         assertEquals(collector1, collector2)
     }
-} 
\ No newline at end of file
+
+    @Test
+    fun testCompactedReplayCoalescesHistoryThenStreamsLive() = runBlocking {
+        val stream = CompactingSharedStreamImpl(StringReplayCompactor(), tailCapacity = 16)
+        val history = (0 until 1000).map { "c$it;" }
+        history.forEach { stream.emit(it) }
+        assertEquals(listOf(history.joinToString("")), stream.replayCache)
+
+        val received = mutableListOf<String>()
+        val job = testScope.launch { stream.collect { received.add(it) } }
+        while (stream.subscriptionCount == 0) delay(10)
+        stream.emit("live1;")
+        stream.emit("live2;")
+        stream.close()
+        withTimeout(5_000) { job.join() }
+
+        // 一次合并的追赶值，随后是按顺序的实时分块
+        assertEquals(listOf(history.joinToString(""), "live1;", "live2;"), received)
+    }
+
+    @Test
+    fun testCompactedReplayHasNoGapsOrDuplicatesUnderConcurrentSubscribe() = runBlocking {
+        val stream = CompactingSharedStreamImpl(StringReplayCompactor(), tailCapacity = 8)
+        val total = 20_000
+        val expected = (0 until total).joinToString("") { "$it," }
+        val results = ConcurrentLinkedQueue<String>()
+
+        val emitter = testScope.launch {
+            for (i in 0 until total) {
+                stream.emit("$i,")
+                if (i % 500 == 0) delay(1)
+            }
+            stream.close()
+        }
+        // 在发射过程中不断有新订阅者加入
+        val subscribers = (0 until 20).map { n ->
+            testScope.launch {
+                delay(n * 3L)
+                val builder = StringBuilder()
+                stream.collect { builder.append(it) }
+                results.add(builder.toString())
+            }
+        }
+        withTimeout(30_000) {
+            emitter.join()
+            subscribers.forEach { it.join() }
+        }
+
+        assertEquals(20, results.size)
+        results.forEach { assertEquals(expected, it) }
+    }
+
+    @Test
+    fun testClosedCompactedStreamReplaysSnapshotToLateSubscribers() = runBlocking {
+        val stream = CompactingSharedStreamImpl(StringReplayCompactor(), tailCapacity = 2)
+        listOf("a", "b", "c", "d").forEach { stream.emit(it) }
+        stream.close()
+        assertFalse(stream.tryEmit("e"))
+
+        val received = mutableListOf<String>()
+        withTimeout(5_000) { stream.collect { received.add(it) } }
+        assertEquals(listOf("abcd"), received)
+
+        stream.resetReplayCache()
+        assertTrue(stream.replayCache.isEmpty())
+    }
+
+    /**
+     * 10 万个分块的响应：对比逐块全量重放（replay = Int.MAX_VALUE）与压缩重放下，
+     * 迟到订阅者拿到完整历史所需的时间和收到的元素数量。
+     */
+    @Test
+    @LargeTest
+    fun benchmarkResubscribeCost() = runBlocking {
+        val chunkCount = 100_000
+        val chunks = List(chunkCount) { "tok$it " }
+        val fullLength = chunks.sumOf { it.length }
+
+        suspend fun resubscribe(stream: SharedStream<String>): Pair<Long, Int> {
+            var length = 0
+            var emissions = 0
+            val done = CompletableDeferred<Unit>()
+            val start = System.nanoTime()
+            val job = testScope.launch {
+                stream.collect {
+                    emissions++
+                    length += it.length
+                    if (length >= fullLength) done.complete(Unit)
+                }
+            }
+            withTimeout(60_000) { done.await() }
+            val elapsedUs = (System.nanoTime() - start) / 1000
+            job.cancelAndJoin()
+            return elapsedUs to emissions
+        }
+
+        val legacy = MutableSharedStream<String>(replay = Int.MAX_VALUE)
+        chunks.forEach { legacy.emit(it) }
+        val compacted = CompactingSharedStreamImpl(StringReplayCompactor())
+        chunks.forEach { compacted.emit(it) }
+
+        // 预热
+        resubscribe(legacy)
+        resubscribe(compacted)
+
+        val (legacyUs, legacyEmissions) = resubscribe(legacy)
+        val (compactedUs, compactedEmissions) = resubscribe(compacted)
+        Log.i(
+            "HotStreamBenchmark",
+            "chunks=$chunkCount legacy=${legacyUs}us/$legacyEmissions emissions " +
+                "compacted=${compactedUs}us/$compactedEmissions emissions"
+        )
+        assertEquals(1, compactedEmissions)
+        assertEquals(chunkCount, legacyEmissions)
+        assertTrue(compactedUs < legacyUs)
+    }
+}
@@ -0,0 +1,146 @@
+package com.ai.assistance.operit.util.vector
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.filters.SmallTest
+import com.ai.assistance.operit.data.model.Embedding
+import com.ai.assistance.operit.data.model.EmbeddingConverter
+import kotlin.random.Random
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** int8 量化向量的精度、存储格式兼容性，以及与浮点基线的召回率/延迟对比 */
+@RunWith(AndroidJUnit4::class)
+@SmallTest
+class QuantizedVectorTest {
+
+    private val dimensions = 384
+
+    @After
+    fun tearDown() {
+        EmbeddingConverter.quantizeOnWrite = false
+    }
+
+    private fun randomVector(random: Random): FloatArray =
+        QuantizedVector.l2Normalize(FloatArray(dimensions) { (random.nextFloat() * 2f - 1f) })
+
+    private fun dot(a: FloatArray, b: FloatArray): Float {
+        var sum = 0f
+        for (i in a.indices) sum += a[i] * b[i]
+        return sum
+    }
+
+    @Test
+    fun testQuantizedSimilarityTracksFloatCosine() {
+        val random = Random(7)
+        repeat(200) {
+            val a = randomVector(random)
+            val b = randomVector(random)
+            val exact = dot(a, b)
+            val qa = QuantizedVector.quantize(a)
+            val qb = QuantizedVector.quantize(b)
+            assertEquals(exact, qa.similarity(qb), 0.02f)
+            assertEquals(exact, qb.similarity(a), 0.01f)
+        }
+    }
+
+    @Test
+    fun testQuantizeNormalizesInput() {
+        val vector = FloatArray(dimensions) { if (it == 3) 5f else 0f }
+        val quantized = QuantizedVector.quantize(vector)
+        assertEquals(127.toByte(), quantized.codes[3])
+        assertEquals(1f, quantized.similarity(quantized), 1e-3f)
+        assertEquals(0f, QuantizedVector.quantize(FloatArray(dimensions)).similarity(quantized), 0f)
+    }
+
+    @Test
+    fun testConverterReadsBothFormats() {
+        val converter = EmbeddingConverter()
+        val vector = randomVector(Random(1))
+
+        EmbeddingConverter.quantizeOnWrite = false
+        val floatBytes = converter.convertToDatabaseValue(Embedding(vector))!!
+        assertEquals(dimensions * 4, floatBytes.size)
+        assertFalse(EmbeddingConverter.isQuantized(floatBytes))
+        val fromFloat = converter.convertToEntityProperty(floatBytes)!!
+        assertFalse(fromFloat.isQuantized)
+        assertArrayEquals(vector, fromFloat.vector, 0f)
+
+        EmbeddingConverter.quantizeOnWrite = true
+        val int8Bytes = converter.convertToDatabaseValue(Embedding(vector))!!
+        assertEquals(dimensions + 8, int8Bytes.size)
+        assertTrue(EmbeddingConverter.isQuantized(int8Bytes))
+        val fromInt8 = converter.convertToEntityProperty(int8Bytes)!!
+        assertTrue(fromInt8.isQuantized)
+        assertEquals(dimensions, fromInt8.dimensions)
+        assertTrue(dot(vector, fromInt8.vector) > 0.999f)
+
+        // 量化格式再写回时保持字节一致
+        assertArrayEquals(int8Bytes, converter.convertToDatabaseValue(fromInt8))
+    }
+
+    @Test
+    fun testSearchRespectsThresholdAndOrder() {
+        val random = Random(3)
+        val query = randomVector(random)
+        val candidates = List(500) { i -> i to QuantizedVector.quantize(randomVector(random)) } +
+            listOf(-1 to QuantizedVector.quantize(query))
+        val matches = QuantizedVector.search(query, candidates, limit = 10, minScore = 0.1f)
+        assertEquals(-1, matches.first().value)
+        assertTrue(matches.all { it.score >= 0.1f })
+        assertTrue(matches.zipWithNext().all { (a, b) -> a.score >= b.score })
+    }
+
+    /**
+     * 1 万 / 5 万条 384 维向量下，int8 粗筛 + 浮点重排与逐条浮点余弦的 recall@10 与单次查询延迟。
+     * 向量围绕若干簇中心生成，模拟真实嵌入中相近主题聚集的分布。
+     */
+    @Test
+    @LargeTest
+    fun benchmarkRecallAndLatency() {
+        for (count in listOf(10_000, 50_000)) {
+            val random = Random(42)
+            val centers = List(64) { randomVector(random) }
+            fun sample(): FloatArray {
+                val center = centers[random.nextInt(centers.size)]
+                return QuantizedVector.l2Normalize(FloatArray(dimensions) { center[it] + (random.nextFloat() - 0.5f) * 0.08f })
+            }
+            val floats = List(count) { sample() }
+            val quantized = floats.mapIndexed { i, v -> i to QuantizedVector.quantize(v) }
+            val queries = List(50) { sample() }
+            val k = 10
+
+            // 基线与原实现一致：对全部向量逐条计算浮点余弦后排序
+            fun floatTopK(query: FloatArray): List<Int> =
+                floats.indices.map { it to dot(query, floats[it]) }.sortedByDescending { it.second }.take(k).map { it.first }
+
+            queries.take(5).forEach { floatTopK(it); QuantizedVector.search(it, quantized, limit = k) } // 预热
+
+            val floatStart = System.nanoTime()
+            val expected = queries.map { floatTopK(it) }
+            val floatUs = (System.nanoTime() - floatStart) / 1000.0 / queries.size
+
+            val int8Start = System.nanoTime()
+            val actual = queries.map { q -> QuantizedVector.search(q, quantized, limit = k).map { it.value } }
+            val int8Us = (System.nanoTime() - int8Start) / 1000.0 / queries.size
+
+            val recall = expected.indices.sumOf { i -> expected[i].intersect(actual[i].toSet()).size }.toDouble() /
+                (expected.size * k)
+            val floatBytes = count.toLong() * dimensions * 4
+            val int8Bytes = count.toLong() * (dimensions + 8)
+
+            Log.i(
+                "QuantizedBenchmark",
+                "n=$count recall@$k=${"%.3f".format(recall)} float=${"%.0f".format(floatUs)}us int8=${"%.0f".format(int8Us)}us " +
+                    "storage ${floatBytes / 1024}KB -> ${int8Bytes / 1024}KB"
+            )
+            assertTrue("recall@$k too low: $recall", recall >= 0.95)
+        }
+    }
+}
@@ -215,7 +215,7 @@ object ToolExecutionManager {
         // 2. 按并行/串行对工具进行分组
         val parallelizableToolNames = setOf(
             "list_files", "read_file", "read_file_part", "read_file_full", "file_exists",
-            "find_files", "file_info", "grep_code", "query_memory", "calculate", "ffmpeg_info"
+            "find_files", "file_info", "grep_code", "query_memory", "search_chat_history", "calculate", "ffmpeg_info"
         )
         val (parallelInvocations, serialInvocations) = permittedInvocations.partition {
             parallelizableToolNames.contains(
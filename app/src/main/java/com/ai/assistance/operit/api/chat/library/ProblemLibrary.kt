@@ -6,6 +6,7 @@ import com.ai.assistance.operit.util.ChatMarkupRegex
 import com.ai.assistance.operit.api.chat.llmprovider.AIService
 import com.ai.assistance.operit.core.tools.AIToolHandler
 import com.ai.assistance.operit.data.model.Memory
+import com.ai.assistance.operit.data.model.NearDuplicateAction
 import com.ai.assistance.operit.data.preferences.ApiPreferences
 import com.ai.assistance.operit.data.preferences.preferencesManager
 import com.ai.assistance.operit.data.repository.MemoryRepository
@@ -362,11 +363,12 @@ object ProblemLibrary {
                             credibility = 1.0f,
                             folderPath = mainProblem.folderPath ?: ""
                         )
-                        memoryRepository.saveMemory(memory)
-                        mainProblem.tags.forEach { tagName ->
-                            memoryRepository.addTagToMemory(memory, tagName)
+                        // 与已有记忆近似重复时复用或合并，而不是再新建一条
+                        val result = memoryRepository.saveMemoryDeduplicated(memory, mainProblem.tags)
+                        if (result.action != NearDuplicateAction.CREATED) {
+                            AppLogger.d(TAG, "   -> 近似重复(${result.action}): '${result.memory.title}', 相似度 ${result.similarity}")
                         }
-                        memory
+                        result.memory
                     }
                 }
                 mainProblemMemory?.let {
@@ -406,16 +408,19 @@ object ProblemLibrary {
                         } else {
                             // Only create a new memory if no close match is found.
                             AppLogger.d(TAG, "   -> 本地查重未发现相似项。创建新的记忆节点。")
-                            memory = Memory(
-                                title = entity.title,
-                                content = entity.content,
-                                source = "problem_library_analysis",
-                                folderPath = entity.folderPath ?: analysis.mainProblem.folderPath ?: ""
+                            val result = memoryRepository.saveMemoryDeduplicated(
+                                Memory(
+                                    title = entity.title,
+                                    content = entity.content,
+                                    source = "problem_library_analysis",
+                                    folderPath = entity.folderPath ?: analysis.mainProblem.folderPath ?: ""
+                                ),
+                                entity.tags
                             )
-                            memoryRepository.saveMemory(memory)
-                            entity.tags.forEach { tagName ->
-                                memoryRepository.addTagToMemory(memory, tagName)
+                            if (result.action != NearDuplicateAction.CREATED) {
+                                AppLogger.d(TAG, "   -> 正文与 '${result.memory.title}' 近似重复(${result.action})，复用现有记忆节点。")
                             }
+                            memory = result.memory
                         }
                     }
 
@@ -75,7 +75,7 @@ object AIServiceFactory {
 
         // 根据配置决定使用单个API Key还是多API Key轮询
         val apiKeyProvider = if (config.useMultipleApiKeys) {
-            MultiApiKeyProvider(config.id, modelConfigManager)
+            MultiApiKeyProvider(config.id, modelConfigManager, config.enableHedgedRequests)
         } else {
             SingleApiKeyProvider(config.apiKey)
         }
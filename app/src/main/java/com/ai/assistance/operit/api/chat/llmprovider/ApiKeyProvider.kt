@@ -2,8 +2,10 @@ package com.ai.assistance.operit.api.chat.llmprovider
 
 import com.ai.assistance.operit.util.AppLogger
 import com.ai.assistance.operit.data.preferences.ModelConfigManager
-import kotlinx.coroutines.sync.Mutex
-import kotlinx.coroutines.sync.withLock
+import java.io.IOException
+import okhttp3.Call
+import okhttp3.Headers
+import okhttp3.Response
 
 /**
  * API密钥提供程序接口
@@ -12,6 +14,57 @@ import kotlinx.coroutines.sync.withLock
 interface ApiKeyProvider {
     /** 获取当前可用的API Key */
     suspend fun getApiKey(): String
+
+    /** 请求即将使用指定Key发出 */
+    fun onRequestStarted(apiKey: String) {}
+
+    /** 收到响应头（状态码、限流头）时回调，firstByteLatencyMs 为从发出请求到收到响应头的耗时 */
+    fun onResponse(apiKey: String, statusCode: Int, headers: Headers, firstByteLatencyMs: Long) {}
+
+    /** 请求结束（包括流读取完毕）；error 为网络层错误，正常结束或被主动取消时为null */
+    fun onRequestFinished(apiKey: String, error: Throwable?) {}
+
+    /** 是否可以切换到其他Key重试（例如遇到429时） */
+    val supportsKeyFailover: Boolean
+        get() = false
+
+    /**
+     * 对冲请求的等待时间：主请求在该时间内仍未收到响应头时，使用 [getHedgeApiKey] 的Key发出一个重复请求。
+     * 返回null表示不进行对冲。
+     */
+    fun getHedgeDelayMs(apiKey: String): Long? = null
+
+    /** 获取与 primaryKey 不同且当前健康的Key用于对冲请求，没有时返回null */
+    suspend fun getHedgeApiKey(primaryKey: String): String? = null
+
+    /**
+     * 重试前的等待时间，默认使用调用方给出的指数退避时长
+     * @param keySpecificFailure 本次失败是否只与所用Key有关（见 [KeyRateLimitedException]）
+     */
+    fun getRetryDelayMs(defaultDelayMs: Long, keySpecificFailure: Boolean = false): Long = defaultDelayMs
+}
+
+/**
+ * 所用Key被限流（429）且还有其他Key可以切换时抛出，换Key后可立即重试
+ */
+class KeyRateLimitedException(message: String) : IOException(message)
+
+/**
+ * 执行请求并把响应头、首字节延迟和网络错误上报给Key调度器。
+ * 网络错误时同时结束该Key的在途计数；返回响应后由调用方在读取结束时调用 [ApiKeyProvider.onRequestFinished]。
+ */
+fun ApiKeyProvider.executeTracked(call: Call, apiKey: String): Response {
+    onRequestStarted(apiKey)
+    val startNanos = System.nanoTime()
+    val response = try {
+        call.execute()
+    } catch (e: IOException) {
+        // 被主动取消不计为Key的失败
+        onRequestFinished(apiKey, if (call.isCanceled()) null else e)
+        throw e
+    }
+    onResponse(apiKey, response.code, response.headers, (System.nanoTime() - startNanos) / 1_000_000)
+    return response
 }
 
 /**
@@ -25,47 +78,70 @@ class SingleApiKeyProvider(private val apiKey: String) : ApiKeyProvider {
 }
 
 /**
- * 多API Key提供程序，实现密钥的轮询和状态管理。
+ * 多API Key提供程序，由 [ApiKeyScheduler] 根据限流、冷却和延迟状态选择负载最低的健康Key。
  * @param configId 配置ID
- * @param modelConfigManager 用于读取和更新模型配置的管理器
+ * @param modelConfigManager 用于读取模型配置的管理器
+ * @param enableHedging 是否在首字节延迟超过p95时向另一个Key发出对冲请求
  */
 class MultiApiKeyProvider(
     private val configId: String,
-    private val modelConfigManager: ModelConfigManager
+    private val modelConfigManager: ModelConfigManager,
+    private val enableHedging: Boolean = false,
+    private val scheduler: ApiKeyScheduler = ApiKeyScheduler.forConfig(configId)
 ) : ApiKeyProvider {
-    private val mutex = Mutex()
+    // 最近一次读取到的启用Key列表，供同步回调使用
+    @Volatile
+    private var enabledKeys: List<String> = emptyList()
 
     override suspend fun getApiKey(): String {
-        return mutex.withLock {
-            val config = modelConfigManager.getModelConfig(configId)
-                ?: throw IllegalStateException("Config with ID $configId not found")
-            
-            // 筛选出启用的key
-            val enabledKeys = config.apiKeyPool.filter { it.isEnabled }
-            AppLogger.d("ApiKeyProvider", "Config ${config.name}: Found ${enabledKeys.size} enabled keys out of ${config.apiKeyPool.size} total keys")
-            
-            if (enabledKeys.isEmpty()) {
-                // 如果池为空，尝试回退到单key
-                if (config.apiKey.isNotBlank()) {
-                    AppLogger.d("ApiKeyProvider", "Config ${config.name}: No enabled keys in pool, falling back to single API key: sk-...${config.apiKey.takeLast(4)}")
-                    return@withLock config.apiKey
-                }
-                AppLogger.e("ApiKeyProvider", "Config ${config.name}: API key pool is empty or all keys are disabled, and no fallback API key is available")
-                throw IllegalStateException("API key pool for ${config.name} is empty or all keys are disabled, and no fallback API key is available.")
+        val config = modelConfigManager.getModelConfig(configId)
+            ?: throw IllegalStateException("Config with ID $configId not found")
+
+        // 筛选出启用的key
+        val keys = config.apiKeyPool.filter { it.isEnabled }
+        val keyStrings = keys.map { it.key }
+        enabledKeys = keyStrings
+        scheduler.retainKeys(config.apiKeyPool.map { it.key })
+
+        if (keys.isEmpty()) {
+            // 如果池为空，尝试回退到单key
+            if (config.apiKey.isNotBlank()) {
+                AppLogger.d("ApiKeyProvider", "Config ${config.name}: No enabled keys in pool, falling back to single API key: sk-...${config.apiKey.takeLast(4)}")
+                return config.apiKey
             }
+            AppLogger.e("ApiKeyProvider", "Config ${config.name}: API key pool is empty or all keys are disabled, and no fallback API key is available")
+            throw IllegalStateException("API key pool for ${config.name} is empty or all keys are disabled, and no fallback API key is available.")
+        }
 
-            // 从当前索引开始寻找下一个有效的key
-            val startIndex = config.currentKeyIndex % enabledKeys.size
-            val selectedKey = enabledKeys[startIndex]
-            
-            AppLogger.d("ApiKeyProvider", "Config ${config.name}: Using key ${startIndex + 1}/${enabledKeys.size} - '${selectedKey.name}' (sk-...${selectedKey.key.takeLast(4)})")
+        val selectedKey = scheduler.selectKey(keyStrings)!!
+        val selected = keys.first { it.key == selectedKey }
+        AppLogger.d("ApiKeyProvider", "Config ${config.name}: Using key '${selected.name}' (sk-...${selectedKey.takeLast(4)}) of ${keys.size} enabled keys")
+        return selectedKey
+    }
 
-            // 更新并保存下一个索引
-            val nextIndex = (startIndex + 1) % enabledKeys.size
-            val updatedConfig = config.copy(currentKeyIndex = nextIndex)
-            modelConfigManager.saveModelConfig(updatedConfig)
+    override fun onRequestStarted(apiKey: String) = scheduler.onRequestStarted(apiKey)
 
-            selectedKey.key
-        }
+    override fun onResponse(apiKey: String, statusCode: Int, headers: Headers, firstByteLatencyMs: Long) =
+        scheduler.onResponse(apiKey, statusCode, headers, firstByteLatencyMs)
+
+    override fun onRequestFinished(apiKey: String, error: Throwable?) =
+        scheduler.onRequestFinished(apiKey, error)
+
+    override val supportsKeyFailover: Boolean
+        get() = enabledKeys.size > 1
+
+    override fun getHedgeDelayMs(apiKey: String): Long? =
+        if (enableHedging && enabledKeys.size > 1) scheduler.hedgeDelayMs(apiKey) else null
+
+    override suspend fun getHedgeApiKey(primaryKey: String): String? =
+        scheduler.selectKey(enabledKeys, exclude = primaryKey, requireHealthy = true)
+
+    override fun getRetryDelayMs(defaultDelayMs: Long, keySpecificFailure: Boolean): Long {
+        val keys = enabledKeys
+        if (keys.isEmpty()) return defaultDelayMs
+        val untilAvailable = scheduler.millisUntilAvailable(keys)
+        // 限流只影响当前Key：还有健康的Key就立即换Key重试，否则等到最早恢复的Key可用。
+        // 网络错误和5xx与Key无关，保留指数退避。失败类型由每次调用自己传入，并发请求互不影响
+        return if (keySpecificFailure) untilAvailable else maxOf(defaultDelayMs, untilAvailable)
     }
-} 
\ No newline at end of file
+}
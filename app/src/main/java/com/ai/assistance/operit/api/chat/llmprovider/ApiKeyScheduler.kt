@@ -0,0 +1,302 @@
+package com.ai.assistance.operit.api.chat.llmprovider
+
+import android.os.SystemClock
+import com.ai.assistance.operit.util.AppLogger
+import java.time.Instant
+import java.time.format.DateTimeParseException
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.max
+import kotlin.math.min
+import okhttp3.Headers
+
+/**
+ * API Key调度器（纯内存）
+ *
+ * 为密钥池中的每个Key维护运行时状态：
+ * - 令牌桶：根据响应头中的限流信息（x-ratelimit-* / anthropic-ratelimit-* / retry-after）记录剩余请求数与重置时间
+ * - 冷却：429/5xx/网络错误后按指数退避进入冷却期
+ * - 延迟：首字节延迟的EWMA以及最近样本的p95，用于负载评估和对冲请求
+ *
+ * 每次选择时挑选"健康"（未冷却、令牌未耗尽）且负载最低的Key；若全部不可用，则返回最早恢复的Key。
+ * 状态按配置ID共享（见 [forConfig]），即使AIService被重新创建也不会丢失。
+ *
+ * @param clock 单调时钟（毫秒），测试时可注入
+ */
+class ApiKeyScheduler(
+    private val clock: () -> Long = { SystemClock.elapsedRealtime() }
+) {
+    companion object {
+        private const val TAG = "ApiKeyScheduler"
+
+        /** EWMA平滑系数 */
+        private const val EWMA_ALPHA = 0.2
+
+        /** 没有延迟样本时假定的首字节延迟 */
+        private const val DEFAULT_LATENCY_MS = 1500.0
+
+        /** 每个Key保留的延迟样本数量 */
+        private const val LATENCY_WINDOW = 64
+
+        /** 计算p95所需的最少样本数 */
+        private const val MIN_SAMPLES_FOR_HEDGE = 16
+
+        /** 对冲延迟的下限，避免过于激进地重复发送请求 */
+        private const val MIN_HEDGE_DELAY_MS = 500L
+
+        private const val RATE_LIMIT_BASE_COOLDOWN_MS = 2_000L
+        private const val RATE_LIMIT_MAX_COOLDOWN_MS = 60_000L
+        private const val SERVER_ERROR_BASE_COOLDOWN_MS = 1_000L
+        private const val SERVER_ERROR_MAX_COOLDOWN_MS = 30_000L
+        private const val AUTH_ERROR_COOLDOWN_MS = 5 * 60_000L
+        private const val NETWORK_ERROR_COOLDOWN_MS = 1_000L
+
+        private val schedulers = ConcurrentHashMap<String, ApiKeyScheduler>()
+
+        /** 获取指定配置共享的调度器实例 */
+        fun forConfig(configId: String): ApiKeyScheduler =
+            schedulers.getOrPut(configId) { ApiKeyScheduler() }
+
+        private val durationPartRegex = Regex("""(\d+(?:\.\d+)?)(ms|h|m|s)""")
+
+        /**
+         * 解析限流重置时间，支持：
+         * - OpenAI风格的时长："1s"、"6m0s"、"120ms"、"1h2m3.5s"
+         * - 纯数字秒数："20"
+         * - ISO-8601时间点（Anthropic）："2024-01-01T00:00:30Z"
+         * @return 距现在的毫秒数，无法解析时返回null
+         */
+        internal fun parseResetDelayMs(value: String?, nowEpochMs: Long = System.currentTimeMillis()): Long? {
+            val text = value?.trim().orEmpty()
+            if (text.isEmpty()) return null
+
+            text.toDoubleOrNull()?.let { return (it * 1000).toLong().coerceAtLeast(0) }
+
+            if (text.contains('T')) {
+                return try {
+                    (Instant.parse(text).toEpochMilli() - nowEpochMs).coerceAtLeast(0)
+                } catch (e: DateTimeParseException) {
+                    null
+                }
+            }
+
+            var totalMs = 0.0
+            var matched = false
+            durationPartRegex.findAll(text).forEach { match ->
+                matched = true
+                val amount = match.groupValues[1].toDouble()
+                totalMs += when (match.groupValues[2]) {
+                    "h" -> amount * 3_600_000
+                    "m" -> amount * 60_000
+                    "s" -> amount * 1_000
+                    else -> amount
+                }
+            }
+            return if (matched) totalMs.toLong() else null
+        }
+    }
+
+    /** 单个Key的运行时状态 */
+    private class KeyState {
+        var inFlight = 0
+        var remainingRequests: Int? = null
+        var requestsResetAt = 0L
+        var remainingTokens: Long? = null
+        var tokensResetAt = 0L
+        var cooldownUntil = 0L
+        var consecutiveFailures = 0
+        var latencyEwmaMs = DEFAULT_LATENCY_MS
+        val latencySamples = LongArray(LATENCY_WINDOW)
+        var sampleCount = 0
+        var sampleCursor = 0
+
+        fun availableAt(now: Long): Long {
+            var at = cooldownUntil
+            if (remainingRequests == 0 && requestsResetAt > now) at = max(at, requestsResetAt)
+            if (remainingTokens == 0L && tokensResetAt > now) at = max(at, tokensResetAt)
+            return at
+        }
+
+        fun isHealthy(now: Long): Boolean = availableAt(now) <= now
+
+        /** 过期的限流窗口视为令牌已补满 */
+        fun refill(now: Long) {
+            if (remainingRequests != null && requestsResetAt in 1..now) remainingRequests = null
+            if (remainingTokens != null && tokensResetAt in 1..now) remainingTokens = null
+        }
+
+        fun addLatencySample(latencyMs: Long) {
+            latencySamples[sampleCursor] = latencyMs
+            sampleCursor = (sampleCursor + 1) % LATENCY_WINDOW
+            if (sampleCount < LATENCY_WINDOW) sampleCount++
+            latencyEwmaMs = if (sampleCount == 1) {
+                latencyMs.toDouble()
+            } else {
+                EWMA_ALPHA * latencyMs + (1 - EWMA_ALPHA) * latencyEwmaMs
+            }
+        }
+
+        fun p95LatencyMs(): Long? {
+            if (sampleCount < MIN_SAMPLES_FOR_HEDGE) return null
+            val sorted = latencySamples.copyOf(sampleCount).also { it.sort() }
+            return sorted[min(sampleCount - 1, (sampleCount * 95) / 100)]
+        }
+
+        /** 负载评分：越低越好。在途请求越多、延迟越高，评分越高 */
+        fun loadScore(): Double = (inFlight + 1) * latencyEwmaMs
+    }
+
+    private val states = HashMap<String, KeyState>()
+    private var roundRobinCursor = 0
+
+    private fun stateOf(key: String): KeyState = states.getOrPut(key) { KeyState() }
+
+    /**
+     * 从候选Key中选出负载最低的健康Key。
+     * 评分相同时按轮询顺序打破平局，保证在没有任何反馈时退化为round-robin。
+     * @param exclude 需要排除的Key（例如对冲请求时排除主请求使用的Key）
+     * @param requireHealthy 为true时若没有健康Key则返回null，否则返回最早恢复的Key
+     */
+    @Synchronized
+    fun selectKey(candidates: List<String>, exclude: String? = null, requireHealthy: Boolean = false): String? {
+        val keys = if (exclude != null) candidates.filter { it != exclude } else candidates
+        if (keys.isEmpty()) return null
+
+        val now = clock()
+        val offset = roundRobinCursor % keys.size
+        var best: String? = null
+        var bestScore = Double.MAX_VALUE
+        for (i in keys.indices) {
+            val key = keys[(offset + i) % keys.size]
+            val state = stateOf(key)
+            state.refill(now)
+            if (!state.isHealthy(now)) continue
+            val score = state.loadScore()
+            if (score < bestScore) {
+                bestScore = score
+                best = key
+            }
+        }
+
+        if (best == null) {
+            if (requireHealthy) return null
+            best = keys.minByOrNull { stateOf(it).availableAt(now) }
+            AppLogger.w(TAG, "No healthy key available, using the one that recovers first (sk-...${best?.takeLast(4)})")
+        }
+
+        val chosen = best ?: return null
+        roundRobinCursor = (roundRobinCursor + 1) and Int.MAX_VALUE
+        // 本地预扣一个请求令牌，避免并发请求在收到下一次响应头前集中打到同一个Key
+        val chosenState = stateOf(chosen)
+        chosenState.remainingRequests?.let { chosenState.remainingRequests = (it - 1).coerceAtLeast(0) }
+        return chosen
+    }
+
+    /** 丢弃不在 keys 中的Key（已从密钥池删除）的状态 */
+    @Synchronized
+    fun retainKeys(keys: Collection<String>) {
+        if (states.keys.retainAll(keys.toSet())) {
+            AppLogger.d(TAG, "Pruned scheduler state, ${states.size} keys left")
+        }
+    }
+
+    /** 标记请求开始，增加在途计数 */
+    @Synchronized
+    fun onRequestStarted(key: String) {
+        stateOf(key).inFlight++
+    }
+
+    /**
+     * 记录收到响应头：更新首字节延迟、令牌桶和冷却状态
+     */
+    @Synchronized
+    fun onResponse(key: String, statusCode: Int, headers: Headers, firstByteLatencyMs: Long) {
+        val now = clock()
+        val state = stateOf(key)
+        state.addLatencySample(firstByteLatencyMs)
+        applyRateLimitHeaders(state, headers, now)
+
+        val retryAfterMs = parseResetDelayMs(headers["retry-after"])
+        when {
+            statusCode == 429 -> {
+                state.consecutiveFailures++
+                val backoff = backoffMs(RATE_LIMIT_BASE_COOLDOWN_MS, RATE_LIMIT_MAX_COOLDOWN_MS, state.consecutiveFailures)
+                state.cooldownUntil = now + (retryAfterMs ?: backoff)
+                AppLogger.w(TAG, "Key sk-...${key.takeLast(4)} rate limited, cooling down for ${state.cooldownUntil - now}ms")
+            }
+            statusCode == 401 || statusCode == 403 -> {
+                state.consecutiveFailures++
+                state.cooldownUntil = now + AUTH_ERROR_COOLDOWN_MS
+                AppLogger.w(TAG, "Key sk-...${key.takeLast(4)} rejected ($statusCode), cooling down")
+            }
+            statusCode >= 500 -> {
+                state.consecutiveFailures++
+                val backoff = backoffMs(SERVER_ERROR_BASE_COOLDOWN_MS, SERVER_ERROR_MAX_COOLDOWN_MS, state.consecutiveFailures)
+                state.cooldownUntil = now + (retryAfterMs ?: backoff)
+            }
+            statusCode in 200..299 -> {
+                state.consecutiveFailures = 0
+                state.cooldownUntil = 0
+            }
+        }
+    }
+
+    /**
+     * 标记请求结束，释放在途计数。
+     * @param error 网络层错误；为null表示正常结束或被主动取消
+     */
+    @Synchronized
+    fun onRequestFinished(key: String, error: Throwable?) {
+        val state = stateOf(key)
+        state.inFlight = (state.inFlight - 1).coerceAtLeast(0)
+        if (error != null) {
+            state.consecutiveFailures++
+            state.cooldownUntil = max(state.cooldownUntil, clock() + NETWORK_ERROR_COOLDOWN_MS)
+        }
+    }
+
+    /**
+     * 对冲延迟：当该Key积累了足够的延迟样本时返回其首字节延迟的p95，否则返回null（不对冲）
+     */
+    @Synchronized
+    fun hedgeDelayMs(key: String): Long? =
+        stateOf(key).p95LatencyMs()?.coerceAtLeast(MIN_HEDGE_DELAY_MS)
+
+    /**
+     * 距离候选Key中任意一个恢复可用还需等待的时间（毫秒），已有健康Key时返回0
+     */
+    @Synchronized
+    fun millisUntilAvailable(candidates: List<String>): Long {
+        if (candidates.isEmpty()) return 0
+        val now = clock()
+        return candidates.minOf { key ->
+            val state = stateOf(key)
+            state.refill(now)
+            (state.availableAt(now) - now).coerceAtLeast(0)
+        }
+    }
+
+    private fun applyRateLimitHeaders(state: KeyState, headers: Headers, now: Long) {
+        val remainingRequests = (headers["x-ratelimit-remaining-requests"]
+            ?: headers["anthropic-ratelimit-requests-remaining"])?.trim()?.toIntOrNull()
+        if (remainingRequests != null) {
+            state.remainingRequests = remainingRequests
+            val resetMs = parseResetDelayMs(
+                headers["x-ratelimit-reset-requests"] ?: headers["anthropic-ratelimit-requests-reset"]
+            )
+            state.requestsResetAt = if (resetMs != null) now + resetMs else 0
+        }
+
+        val remainingTokens = (headers["x-ratelimit-remaining-tokens"]
+            ?: headers["anthropic-ratelimit-tokens-remaining"])?.trim()?.toLongOrNull()
+        if (remainingTokens != null) {
+            state.remainingTokens = remainingTokens
+            val resetMs = parseResetDelayMs(
+                headers["x-ratelimit-reset-tokens"] ?: headers["anthropic-ratelimit-tokens-reset"]
+            )
+            state.tokensResetAt = if (resetMs != null) now + resetMs else 0
+        }
+    }
+
+    private fun backoffMs(baseMs: Long, maxMs: Long, failures: Int): Long =
+        min(maxMs, baseMs shl (failures - 1).coerceIn(0, 16))
+}
@@ -662,8 +662,7 @@ class ClaudeProvider(
     }
 
     // 创建请求
-    private suspend fun createRequest(requestBody: RequestBody): Request {
-        val currentApiKey = apiKeyProvider.getApiKey()
+    private fun createRequest(requestBody: RequestBody, currentApiKey: String): Request {
         val completedEndpoint = EndpointCompleter.completeEndpoint(apiEndpoint, providerType)
         val builder =
                 Request.Builder()
@@ -761,6 +760,7 @@ class ClaudeProvider(
                 throw UserCancellationException("请求已被用户取消")
             }
 
+            val usedApiKey = apiKeyProvider.getApiKey()
             val call = try {
                 val currentMessage: String
                 val currentHistory: List<Pair<String, String>>
@@ -789,7 +789,7 @@ class ClaudeProvider(
                     tokenCacheManager.cachedInputTokenCount,
                     tokenCacheManager.outputTokenCount
                 )
-                val request = createRequest(requestBody)
+                val request = createRequest(requestBody, usedApiKey)
                 client.newCall(request)
             } catch (e: Exception) {
                 throw e
@@ -799,11 +799,16 @@ class ClaudeProvider(
             try {
                 AppLogger.d("AIService", "正在建立连接...")
                 withContext(Dispatchers.IO) {
-                    val response = call.execute()
+                    val response = apiKeyProvider.executeTracked(call, usedApiKey)
                     activeResponse = response
+                    var streamError: Throwable? = null
                     try {
                         if (!response.isSuccessful) {
                             val errorBody = response.body?.string() ?: "No error details"
+                            // 限流时如果还有其他Key可用，则换Key重试
+                            if (response.code == 429 && apiKeyProvider.supportsKeyFailover) {
+                                throw KeyRateLimitedException("API请求被限流，状态码: ${response.code}，错误信息: $errorBody")
+                            }
                             if (response.code in 400..499) {
                                 throw NonRetriableException("API请求失败，状态码: ${response.code}，错误信息: $errorBody")
                             }
@@ -1070,8 +1075,13 @@ class ClaudeProvider(
                         if (!emittedAny && previewTrim.isNotEmpty() && looksLikeJson) {
                             AppLogger.w("AIService", "Claude流式响应未解析到任何内容，可能不是SSE，preview=${previewTrim.take(200)}")
                         }
+                    } catch (e: IOException) {
+                        // 只有读取响应流时的网络错误才计入Key的失败，错误状态码已在onResponse中处理
+                        if (response.isSuccessful) streamError = e
+                        throw e
                     } finally {
                         response.close()
+                        apiKeyProvider.onRequestFinished(usedApiKey, if (isManuallyCancelled) null else streamError)
                         AppLogger.d("AIService", "【Claude】关闭响应连接")
                     }
                 }
@@ -1094,7 +1104,7 @@ class ClaudeProvider(
                 }
                 AppLogger.w("AIService", "【Claude】连接超时，正在进行第 $retryCount 次重试...", e)
                 onNonFatalError("【网络超时，正在进行第 $retryCount 次重试...】")
-                delay(1000L * (1 shl (retryCount - 1)))
+                delay(apiKeyProvider.getRetryDelayMs(1000L * (1 shl (retryCount - 1))))
             } catch (e: UnknownHostException) {
                 if (isManuallyCancelled) {
                     AppLogger.d("AIService", "【Claude】请求被用户取消，停止重试。")
@@ -1108,7 +1118,7 @@ class ClaudeProvider(
                 }
                 AppLogger.w("AIService", "【Claude】无法解析主机，正在进行第 $retryCount 次重试...", e)
                 onNonFatalError("【网络不稳定，正在进行第 $retryCount 次重试...】")
-                delay(1000L * (1 shl (retryCount - 1)))
+                delay(apiKeyProvider.getRetryDelayMs(1000L * (1 shl (retryCount - 1))))
             } catch (e: IOException) {
                 if (isManuallyCancelled) {
                     AppLogger.d("AIService", "【Claude】请求被用户取消，停止重试。")
@@ -1122,7 +1132,7 @@ class ClaudeProvider(
                 }
                 AppLogger.w("AIService", "【Claude】网络中断，正在进行第 $retryCount 次重试...", e)
                 onNonFatalError("【网络中断，正在进行第 $retryCount 次重试...】")
-                delay(1000L * (1 shl (retryCount - 1)))
+                delay(apiKeyProvider.getRetryDelayMs(1000L * (1 shl (retryCount - 1)), e is KeyRateLimitedException))
             } catch (e: Exception) {
                 if (isManuallyCancelled) {
                     AppLogger.d("AIService", "【Claude】请求被用户取消，停止重试。")
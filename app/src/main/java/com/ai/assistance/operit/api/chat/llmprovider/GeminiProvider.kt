@@ -707,7 +707,8 @@ class GeminiProvider(
                         tokenCacheManager.cachedInputTokenCount,
                         tokenCacheManager.outputTokenCount
                 )
-                val request = createRequest(requestBody, stream, requestId) // 根据stream参数决定使用流式还是非流式
+                val usedApiKey = apiKeyProvider.getApiKey()
+                val request = createRequest(requestBody, stream, requestId, usedApiKey) // 根据stream参数决定使用流式还是非流式
 
                 val call = client.newCall(request)
                 activeCall = call
@@ -716,8 +717,9 @@ class GeminiProvider(
 
                 val startTime = System.currentTimeMillis()
                 withContext(kotlinx.coroutines.Dispatchers.IO) {
-                    val response = call.execute()
+                    val response = apiKeyProvider.executeTracked(call, usedApiKey)
                     activeResponse = response
+                    var streamError: Throwable? = null
                     try {
                         val duration = System.currentTimeMillis() - startTime
                         AppLogger.d(TAG, "收到初始响应, 耗时: ${duration}ms, 状态码: ${response.code}")
@@ -727,6 +729,10 @@ class GeminiProvider(
                         if (!response.isSuccessful) {
                             val errorBody = response.body?.string() ?: "无错误详情"
                             logError("API请求失败: ${response.code}, $errorBody")
+                            // 限流时如果还有其他Key可用，则换Key重试
+                            if (response.code == 429 && apiKeyProvider.supportsKeyFailover) {
+                                throw KeyRateLimitedException("API请求被限流: ${response.code}, $errorBody")
+                            }
                             // 对于4xx这类明确的客户端错误，直接抛出，不进行重试
                             if (response.code in 400..499) {
                                 throw NonRetriableException("API请求失败: ${response.code}, $errorBody")
@@ -743,8 +749,13 @@ class GeminiProvider(
                             // 处理非流式响应并转换为Stream
                             processNonStreamingResponse(response, streamCollector, requestId, onTokensUpdated, receivedContent)
                         }
+                    } catch (e: IOException) {
+                        // 只有读取响应流时的网络错误才计入Key的失败，错误状态码已在onResponse中处理
+                        if (response.isSuccessful) streamError = e
+                        throw e
                     } finally {
                         response.close()
+                        apiKeyProvider.onRequestFinished(usedApiKey, if (isManuallyCancelled) null else streamError)
                         AppLogger.d(TAG, "关闭响应连接")
                     }
                 }
@@ -769,7 +780,7 @@ class GeminiProvider(
                 }
                 logError("连接超时，尝试重试 $retryCount/$maxRetries", e)
                 onNonFatalError("【网络超时，正在进行第 $retryCount 次重试...】")
-                delay(1000L * (1 shl (retryCount - 1)))
+                delay(apiKeyProvider.getRetryDelayMs(1000L * (1 shl (retryCount - 1))))
             } catch (e: UnknownHostException) {
                 if (isManuallyCancelled) {
                     logError("请求被用户取消，停止重试。")
@@ -783,7 +794,7 @@ class GeminiProvider(
                 }
                 logError("无法解析主机，尝试重试 $retryCount/$maxRetries", e)
                 onNonFatalError("【网络不稳定，正在进行第 $retryCount 次重试...】")
-                delay(1000L * (1 shl (retryCount - 1)))
+                delay(apiKeyProvider.getRetryDelayMs(1000L * (1 shl (retryCount - 1))))
             } catch (e: IOException) {
                 if (isManuallyCancelled) {
                     logError("请求被用户取消，停止重试。")
@@ -798,7 +809,7 @@ class GeminiProvider(
                 }
                 logError("IO异常，尝试重试 $retryCount/$maxRetries", e)
                 onNonFatalError("【网络中断，正在进行第 $retryCount 次重试...】")
-                delay(1000L * (1 shl (retryCount - 1)))
+                delay(apiKeyProvider.getRetryDelayMs(1000L * (1 shl (retryCount - 1)), e is KeyRateLimitedException))
             } catch (e: Exception) {
                 if (isManuallyCancelled) {
                     logError("请求被用户取消，停止重试。")
@@ -942,10 +953,11 @@ class GeminiProvider(
     }
 
     /** 创建HTTP请求 */
-    private suspend fun createRequest(
+    private fun createRequest(
             requestBody: RequestBody,
             isStreaming: Boolean,
-            requestId: String
+            requestId: String,
+            currentApiKey: String
     ): Request {
         // 确定请求URL
         val baseUrl = determineBaseUrl(apiEndpoint)
@@ -963,7 +975,6 @@ class GeminiProvider(
         }
 
         // 添加API密钥
-        val currentApiKey = apiKeyProvider.getApiKey()
         val finalUrl =
                 if (requestUrl.contains("?")) {
                     "$requestUrl&key=$currentApiKey"
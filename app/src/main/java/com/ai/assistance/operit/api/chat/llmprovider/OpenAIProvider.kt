@@ -26,8 +26,12 @@ import java.io.IOException
 import java.net.SocketTimeoutException
 import java.net.UnknownHostException
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.selects.select
 import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import okhttp3.*
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.RequestBody.Companion.toRequestBody
@@ -96,6 +100,10 @@ open class OpenAIProvider(
     // 当前活跃的Response对象，用于强制关闭流
     private var activeResponse: Response? = null
 
+    // 对冲请求的Call对象，用于取消
+    @Volatile
+    private var activeHedgeCall: Call? = null
+
     @Volatile
     private var isManuallyCancelled = false
 
@@ -135,6 +143,8 @@ open class OpenAIProvider(
              }
          }
          activeCall = null
+         activeHedgeCall?.let { runCatching { it.cancel() } }
+         activeHedgeCall = null
      }
 
      override suspend fun getModelsList(): Result<List<ModelOption>> {
@@ -1142,7 +1152,13 @@ open class OpenAIProvider(
 
         AppLogger.w("AIService", "【发送消息】$errorType，正在进行第 $newRetryCount 次重试...", exception)
         onNonFatalError("【$errorType，正在进行第 $newRetryCount 次重试...】")
-        delay(1000L * (1 shl (newRetryCount - 1)))
+        // 多Key模式下由调度器决定等待时间：仍有健康Key时立即换Key重试
+        delay(
+            apiKeyProvider.getRetryDelayMs(
+                1000L * (1 shl (newRetryCount - 1)),
+                keySpecificFailure = exception is KeyRateLimitedException
+            )
+        )
 
         return newRetryCount
     }
@@ -1243,8 +1259,7 @@ open class OpenAIProvider(
     }
 
     // 创建请求
-    private suspend fun createRequest(requestBody: RequestBody): Request {
-        val currentApiKey = apiKeyProvider.getApiKey()
+    private fun createRequest(requestBody: RequestBody, currentApiKey: String): Request {
         val builder = Request.Builder()
             .url(EndpointCompleter.completeEndpoint(apiEndpoint))
             .addHeader("Authorization", "Bearer $currentApiKey")
@@ -1260,6 +1275,87 @@ open class OpenAIProvider(
         return request
     }
 
+    /**
+     * 一次（可能对冲的）请求的结果
+     */
+    private class KeyedAttempt(
+        val apiKey: String,
+        val call: Call,
+        val response: Response?,
+        val error: Throwable?
+    )
+
+    /**
+     * 执行请求并上报给Key调度器（见 [ApiKeyProvider.executeTracked]），网络错误记录在结果中而不是抛出，
+     * 便于对冲时比较两个请求。
+     */
+    private fun executeAttempt(call: Call, apiKey: String): KeyedAttempt {
+        return try {
+            KeyedAttempt(apiKey, call, apiKeyProvider.executeTracked(call, apiKey), null)
+        } catch (e: IOException) {
+            KeyedAttempt(apiKey, call, null, e)
+        }
+    }
+
+    /**
+     * 发送请求，必要时进行对冲：
+     * 主请求在其Key的首字节延迟p95内仍未收到响应头时，用另一个健康Key发出重复请求，
+     * 采用先成功返回的响应并取消另一个。
+     */
+    private suspend fun executeWithHedging(requestBody: RequestBody): KeyedAttempt = coroutineScope {
+        val primaryKey = apiKeyProvider.getApiKey()
+        val primaryCall = client.newCall(createRequest(requestBody, primaryKey))
+        activeCall = primaryCall
+        val primary = async(Dispatchers.IO) { executeAttempt(primaryCall, primaryKey) }
+
+        val hedgeDelayMs = apiKeyProvider.getHedgeDelayMs(primaryKey)
+            ?: return@coroutineScope primary.await()
+        withTimeoutOrNull(hedgeDelayMs) { primary.await() }?.let { return@coroutineScope it }
+
+        val hedgeKey = apiKeyProvider.getHedgeApiKey(primaryKey)
+            ?: return@coroutineScope primary.await()
+        AppLogger.d(
+            "AIService",
+            "【发送消息】主请求超过 ${hedgeDelayMs}ms 未响应，使用备用Key (sk-...${hedgeKey.takeLast(4)}) 发出对冲请求"
+        )
+        val hedgeCall = client.newCall(createRequest(requestBody, hedgeKey))
+        activeHedgeCall = hedgeCall
+        val hedge = async(Dispatchers.IO) { executeAttempt(hedgeCall, hedgeKey) }
+
+        val first = select<KeyedAttempt> {
+            primary.onAwait { it }
+            hedge.onAwait { it }
+        }
+        val other = if (first.call === primaryCall) hedge else primary
+
+        val winner = if (first.response?.isSuccessful == true) {
+            first
+        } else {
+            val second = other.await()
+            if (second.response?.isSuccessful == true || first.response == null && second.response != null) second else first
+        }
+
+        // 取消并释放落败的请求
+        val loser = if (winner === first) other else null
+        if (loser != null) {
+            (if (winner.call === primaryCall) hedgeCall else primaryCall).cancel()
+            releaseAttempt(loser.await())
+        } else {
+            releaseAttempt(first)
+        }
+
+        activeCall = winner.call
+        activeHedgeCall = null
+        winner
+    }
+
+    private fun releaseAttempt(attempt: KeyedAttempt) {
+        attempt.response?.let { response ->
+            runCatching { response.close() }
+            apiKeyProvider.onRequestFinished(attempt.apiKey, null)
+        }
+    }
+
     /**
      * 流式响应处理状态
      */
@@ -1664,7 +1760,6 @@ open class OpenAIProvider(
                     tokenCacheManager.cachedInputTokenCount,
                     tokenCacheManager.outputTokenCount
                 )
-                val request = createRequest(requestBody)
                 AppLogger.d(
                     "AIService",
                     "【发送消息】请求体构建完成，目标模型: $modelName，API端点: $apiEndpoint"
@@ -1672,15 +1767,13 @@ open class OpenAIProvider(
 
                 AppLogger.d("AIService", "【发送消息】准备连接到AI服务...")
 
-                // 创建Call对象并保存到activeCall中，以便可以取消
-                val call = client.newCall(request)
-                activeCall = call
-
-                AppLogger.d("AIService", "【发送消息】正在建立连接到服务器...")
-
-                // 确保在IO线程执行网络请求
+                // 确保在IO线程执行网络请求（多Key模式下可能对冲到另一个Key）
                 AppLogger.d("AIService", "【发送消息】切换到IO线程执行网络请求")
-                val response = withContext(Dispatchers.IO) { call.execute() }
+                val attempt = executeWithHedging(requestBody)
+                attempt.error?.let { throw it }
+                val response = attempt.response ?: throw IOException("API响应为空")
+                val usedApiKey = attempt.apiKey
+                var streamError: Throwable? = null
 
                 // 保存response引用，以便取消时能强制关闭
                 activeResponse = response
@@ -1692,6 +1785,10 @@ open class OpenAIProvider(
                             "AIService",
                             "【发送消息】API请求失败，状态码: ${response.code}，错误信息: $errorBody"
                         )
+                        // 限流时如果还有其他Key可用，则换Key重试
+                        if (response.code == 429 && apiKeyProvider.supportsKeyFailover) {
+                            throw KeyRateLimitedException("API请求被限流，状态码: ${response.code}，错误信息: $errorBody")
+                        }
                         // 对于4xx这类明确的客户端错误，直接抛出，不进行重试
                         if (response.code in 400..499) {
                             throw NonRetriableException("API请求失败，状态码: ${response.code}，错误信息: $errorBody")
@@ -1791,8 +1888,13 @@ open class OpenAIProvider(
                     activeCall = null
                     activeResponse = null
                     AppLogger.d("AIService", "【发送消息】响应处理完成，已清理活跃引用")
+                } catch (e: IOException) {
+                    // 只有读取响应流时的网络错误才计入Key的失败，错误状态码已在onResponse中处理
+                    if (response.isSuccessful) streamError = e
+                    throw e
                 } finally {
                     response.close()
+                    apiKeyProvider.onRequestFinished(usedApiKey, if (isManuallyCancelled) null else streamError)
                     AppLogger.d("AIService", "【发送消息】关闭响应连接")
                 }
 
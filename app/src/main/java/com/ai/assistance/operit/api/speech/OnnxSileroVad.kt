@@ -2,14 +2,16 @@ package com.ai.assistance.operit.api.speech
 
 import ai.onnxruntime.OnnxTensor
 import ai.onnxruntime.OrtEnvironment
+import ai.onnxruntime.OrtException
 import ai.onnxruntime.OrtSession
 import ai.onnxruntime.TensorInfo
 import android.content.Context
 import com.ai.assistance.operit.util.AppLogger
 import java.io.File
 import java.io.FileOutputStream
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
 import java.nio.FloatBuffer
-import java.nio.LongBuffer
 import kotlin.math.ceil
 
 class OnnxSileroVad(
@@ -51,18 +53,49 @@ class OnnxSileroVad(
     private val stateTensorShape: LongArray
     private val hTensorShape: LongArray
     private val cTensorShape: LongArray
-
-    private var audioContext = FloatArray(0)
-
-    private var h = FloatArray(128)
-    private var c = FloatArray(128)
-    private var state = FloatArray(256)
+    private val probTensorShape: LongArray
+
+    /**
+     * 模型输入窗口 [上一帧末尾 contextSize 个样本 | 当前帧]，直接内存，音频张量直接引用它，
+     * 每帧只需原地写入样本，不再创建数组和张量
+     */
+    private val window: FloatBuffer
+    // 当前帧在窗口中已写入的样本数，供 [acceptSamples] 跨调用拼帧
+    private var pendingSamples = 0
+
+    /**
+     * 循环状态（state 或 h/c）的双缓冲：本帧读 A 写 B，下一帧读 B 写 A，
+     * 交换只切换预先构建好的输入/输出映射，不复制数据
+     */
+    private class RecurrentState(
+        val inputName: String,
+        val outputName: String,
+        val a: FloatBuffer,
+        val b: FloatBuffer,
+        val tensorA: OnnxTensor,
+        val tensorB: OnnxTensor,
+    )
+
+    private val recurrentStates: List<RecurrentState>
+    private val audioTensor: OnnxTensor
+    private val srTensor: OnnxTensor?
+    private val probBuffer: FloatBuffer
+    private val probTensor: OnnxTensor
+    private val inputsByParity: Array<Map<String, OnnxTensor>>
+    private val outputsByParity: Array<Map<String, OnnxTensor>>
+    private var parity = 0
+    // 运行时不支持固定输出时回退为复制输出
+    private var pinnedOutputs = true
 
     private var speechFramesCount = 0
     private var silenceFramesCount = 0
     private var maxSpeechFramesCount = msToFrames(speechDurationMs)
     private var maxSilenceFramesCount = msToFrames(silenceDurationMs)
 
+    /** 已推理的帧数 */
+    var processedFrames = 0L
+        private set
+
     init {
         val modelFile = copyAssetToCache(context, modelAssetPath)
         val opts = OrtSession.SessionOptions().apply {
@@ -120,7 +153,6 @@ class OnnxSileroVad(
                 }
             }
         contextSize = (inputWindowSize - frameSize).coerceAtLeast(0)
-        audioContext = FloatArray(contextSize)
 
         audioTensorShape = when (audioModelShape?.size) {
             1 -> longArrayOf(inputWindowSize.toLong())
@@ -143,6 +175,54 @@ class OnnxSileroVad(
         hTensorShape = normalizeShape(hInfo?.shape, longArrayOf(2, 1, 64))
         cTensorShape = normalizeShape(cInfo?.shape, longArrayOf(2, 1, 64))
 
+        val probInfo = outputNameOrder.firstOrNull()?.let { session.outputInfo[it]?.info as? TensorInfo }
+        probTensorShape = normalizeShape(probInfo?.shape, longArrayOf(1, 1))
+
+        window = directFloatBuffer(contextSize + frameSize)
+        audioTensor = OnnxTensor.createTensor(env, window, audioTensorShape)
+        srTensor = srInputName?.let {
+            val sr = ByteBuffer.allocateDirect(8).order(ByteOrder.nativeOrder()).asLongBuffer()
+            sr.put(0, sampleRate.toLong())
+            OnnxTensor.createTensor(env, sr, srTensorShape)
+        }
+        probBuffer = directFloatBuffer(probTensorShape.fold(1L) { acc, v -> acc * v }.toInt())
+        probTensor = OnnxTensor.createTensor(env, probBuffer, probTensorShape)
+
+        fun recurrent(inputName: String, outputIndex: Int, shape: LongArray): RecurrentState? {
+            val outputName = outputNameOrder.getOrNull(outputIndex) ?: return null
+            val size = shape.fold(1L) { acc, v -> acc * v }.toInt()
+            val a = directFloatBuffer(size)
+            val b = directFloatBuffer(size)
+            return RecurrentState(
+                inputName,
+                outputName,
+                a,
+                b,
+                OnnxTensor.createTensor(env, a, shape),
+                OnnxTensor.createTensor(env, b, shape),
+            )
+        }
+        recurrentStates = when {
+            stateInputName != null -> listOfNotNull(recurrent(stateInputName, 1, stateTensorShape))
+            hInputName != null && cInputName != null ->
+                listOfNotNull(recurrent(hInputName, 1, hTensorShape), recurrent(cInputName, 2, cTensorShape))
+            else -> emptyList()
+        }
+
+        inputsByParity = Array(2) { p ->
+            val inputs = LinkedHashMap<String, OnnxTensor>()
+            inputs[audioInputName] = audioTensor
+            if (srInputName != null && srTensor != null) inputs[srInputName] = srTensor
+            recurrentStates.forEach { inputs[it.inputName] = if (p == 0) it.tensorA else it.tensorB }
+            inputs
+        }
+        outputsByParity = Array(2) { p ->
+            val outputs = LinkedHashMap<String, OnnxTensor>()
+            outputNameOrder.firstOrNull()?.let { outputs[it] = probTensor }
+            recurrentStates.forEach { outputs[it.outputName] = if (p == 0) it.tensorB else it.tensorA }
+            outputs
+        }
+
         AppLogger.d(
             TAG,
             "Loaded Silero VAD model. inputs=$inputNameOrder outputs=$outputNameOrder inputWindowSize=$inputWindowSize audioShape=${audioTensorShape.toList()} srShape=${srTensorShape.toList()} stateShape=${stateTensorShape.toList()}"
@@ -150,10 +230,13 @@ class OnnxSileroVad(
     }
 
     fun reset() {
-        h = FloatArray(128)
-        c = FloatArray(128)
-        state = FloatArray(256)
-        audioContext = FloatArray(contextSize)
+        recurrentStates.forEach { st ->
+            fill(st.a, 0f)
+            fill(st.b, 0f)
+        }
+        fill(window, 0f)
+        pendingSamples = 0
+        parity = 0
         speechFramesCount = 0
         silenceFramesCount = 0
     }
@@ -166,27 +249,53 @@ class OnnxSileroVad(
         maxSilenceFramesCount = msToFrames(ms)
     }
 
+    /** 判断一帧（[frameSize] 个样本）是否处于连续语音中，会丢弃 [acceptSamples] 中未凑满的样本 */
     fun isSpeech(frame: ShortArray): Boolean {
         if (mode == Mode.OFF) return false
         require(frame.size == frameSize)
 
-        val audio = FloatArray(frameSize) { i -> frame[i] / 32768.0f }
-        val modelInput = if (contextSize > 0) {
-            val input = FloatArray(contextSize + frameSize)
-            if (audioContext.isNotEmpty()) {
-                java.lang.System.arraycopy(audioContext, 0, input, 0, contextSize)
+        for (i in 0 until frameSize) {
+            window.put(contextSize + i, frame[i] / 32768.0f)
+        }
+        pendingSamples = 0
+        return evaluateFrame()
+    }
+
+    /**
+     * 流式输入任意长度的 PCM，内部拼成完整帧后逐帧推理
+     *
+     * 样本直接写入模型输入窗口，不需要调用方维护待处理缓冲；积压多帧时在一次调用内连续处理完。
+     * @return 本次输入中是否有任一帧处于连续语音中
+     */
+    fun acceptSamples(samples: ShortArray, offset: Int = 0, length: Int = samples.size - offset): Boolean {
+        if (mode == Mode.OFF) return false
+        var hasSpeech = false
+        var idx = offset
+        val end = offset + length
+        while (idx < end) {
+            val toCopy = minOf(frameSize - pendingSamples, end - idx)
+            val base = contextSize + pendingSamples
+            for (i in 0 until toCopy) {
+                window.put(base + i, samples[idx + i] / 32768.0f)
+            }
+            pendingSamples += toCopy
+            idx += toCopy
+            if (pendingSamples == frameSize) {
+                pendingSamples = 0
+                if (evaluateFrame()) hasSpeech = true
             }
-            java.lang.System.arraycopy(audio, 0, input, contextSize, frameSize)
-            input
-        } else {
-            audio
         }
+        return hasSpeech
+    }
 
-        val prob = predictProbability(modelInput)
+    private fun evaluateFrame(): Boolean {
+        val prob = predictProbability()
+        processedFrames++
         val isSpeechFrame = prob > threshold()
 
-        if (contextSize > 0) {
-            java.lang.System.arraycopy(modelInput, modelInput.size - contextSize, audioContext, 0, contextSize)
+        // 当前帧的末尾作为下一帧的上下文，原地前移
+        for (i in 0 until contextSize) {
+            window.put(i, window.get(frameSize + i))
         }
 
         return isContinuousSpeech(isSpeechFrame)
@@ -213,101 +322,34 @@ class OnnxSileroVad(
         return false
     }
 
-    private fun predictProbability(audioData: FloatArray): Float {
-        val toClose = ArrayList<AutoCloseable>(4)
-        try {
-            val inputs = LinkedHashMap<String, OnnxTensor>()
-
-            val inputTensor = OnnxTensor.createTensor(
-                env,
-                FloatBuffer.wrap(audioData),
-                audioTensorShape
-            )
-            toClose.add(inputTensor)
-            inputs[audioInputName] = inputTensor
-
-            srInputName?.let { name ->
-                val srTensor = OnnxTensor.createTensor(
-                    env,
-                    LongBuffer.wrap(longArrayOf(sampleRate.toLong())),
-                    srTensorShape
-                )
-                toClose.add(srTensor)
-                inputs[name] = srTensor
-            }
-
-            if (stateInputName != null) {
-                val stateTensor = OnnxTensor.createTensor(
-                    env,
-                    FloatBuffer.wrap(state),
-                    stateTensorShape
-                )
-                toClose.add(stateTensor)
-                inputs[stateInputName] = stateTensor
-            } else if (hInputName != null && cInputName != null) {
-                val hTensor = OnnxTensor.createTensor(
-                    env,
-                    FloatBuffer.wrap(h),
-                    hTensorShape
-                )
-                toClose.add(hTensor)
-                inputs[hInputName] = hTensor
-
-                val cTensor = OnnxTensor.createTensor(
-                    env,
-                    FloatBuffer.wrap(c),
-                    cTensorShape
-                )
-                toClose.add(cTensor)
-                inputs[cInputName] = cTensor
-            }
-
-            session.run(inputs).use { out ->
-                val confidence = extractScalarFloat(out[0].value)
-
-                if (stateInputName != null && out.size() >= 2) {
-                    extractFloatArray(out[1].value, 256)?.let { st ->
-                        state = st
-                    }
-                } else if (hInputName != null && cInputName != null && out.size() >= 3) {
-                    extractFloatArray(out[1].value, 128)?.let { hn ->
-                        h = hn
-                    }
-                    extractFloatArray(out[2].value, 128)?.let { cn ->
-                        c = cn
-                    }
-                }
-
-                return confidence
-            }
-        } finally {
-            for (i in toClose.indices.reversed()) {
-                try {
-                    toClose[i].close()
-                } catch (_: Exception) {
-                }
+    private fun predictProbability(): Float {
+        val inputs = inputsByParity[parity]
+        if (pinnedOutputs) {
+            try {
+                // 输出直接写入预分配的张量：概率写入 probBuffer，新状态写入另一半双缓冲
+                session.run(inputs, outputsByParity[parity]).use { }
+                parity = parity xor 1
+                return probBuffer.get(0)
+            } catch (e: OrtException) {
+                AppLogger.w(TAG, "Pinned outputs unsupported, falling back to copied outputs: ${e.message}")
+                pinnedOutputs = false
             }
         }
-    }
 
-    private fun extractScalarFloat(value: Any?): Float {
-        return when (value) {
-            is FloatArray -> value.firstOrNull() ?: 0f
-            is Array<*> -> extractScalarFloat(value.firstOrNull())
-            else -> 0f
-        }
-    }
-
-    private fun extractFloatArray(value: Any?, expectedSize: Int): FloatArray? {
-        val out = ArrayList<Float>(expectedSize)
-        fun walk(v: Any?) {
-            when (v) {
-                is FloatArray -> v.forEach { out.add(it) }
-                is Array<*> -> v.forEach { walk(it) }
+        session.run(inputs).use { out ->
+            val confidence = (out[0] as? OnnxTensor)?.floatBuffer?.get(0) ?: 0f
+            recurrentStates.forEach { st ->
+                val next = (out.get(st.outputName).orElse(null) as? OnnxTensor)?.floatBuffer ?: return@forEach
+                val target = if (parity == 0) st.b else st.a
+                if (next.remaining() == target.capacity()) {
+                    target.clear()
+                    target.put(next)
+                    target.clear()
+                }
             }
+            parity = parity xor 1
+            return confidence
         }
-        walk(value)
-        return if (out.size == expectedSize) out.toFloatArray() else null
     }
 
     private fun threshold(): Float {
@@ -343,7 +385,24 @@ class OnnxSileroVad(
         return cacheFile
     }
 
+    private fun directFloatBuffer(size: Int): FloatBuffer {
+        return ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
+    }
+
+    private fun fill(buffer: FloatBuffer, value: Float) {
+        for (i in 0 until buffer.capacity()) {
+            buffer.put(i, value)
+        }
+    }
+
     override fun close() {
+        recurrentStates.forEach { st ->
+            st.tensorA.close()
+            st.tensorB.close()
+        }
+        probTensor.close()
+        srTensor?.close()
+        audioTensor.close()
         session.close()
     }
 }
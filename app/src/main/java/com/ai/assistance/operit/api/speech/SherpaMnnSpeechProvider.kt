@@ -270,35 +270,6 @@ class SherpaMnnSpeechProvider(private val context: Context) : SpeechService {
         sileroVad = OnnxSileroVad(context = context)
     }
 
-    private fun detectSpeechBySilero(
-        vad: OnnxSileroVad,
-        pending: ShortArray,
-        buffer: ShortArray,
-        size: Int,
-    ): Pair<Boolean, ShortArray> {
-        val frameSize = 512
-        val merged = ShortArray(pending.size + size)
-        if (pending.isNotEmpty()) {
-            java.lang.System.arraycopy(pending, 0, merged, 0, pending.size)
-        }
-        java.lang.System.arraycopy(buffer, 0, merged, pending.size, size)
-
-        val frame = ShortArray(frameSize)
-        var offset = 0
-        var hasSpeech = false
-        while (offset + frameSize <= merged.size) {
-            java.lang.System.arraycopy(merged, offset, frame, 0, frameSize)
-            if (vad.isSpeech(frame)) {
-                hasSpeech = true
-            }
-            offset += frameSize
-        }
-
-        val remain = merged.size - offset
-        val newPending = if (remain > 0) merged.copyOfRange(offset, merged.size) else ShortArray(0)
-        return Pair(hasSpeech, newPending)
-    }
-
     /**
      * 计算音频缓冲区的音量级别
      */
@@ -388,7 +359,8 @@ class SherpaMnnSpeechProvider(private val context: Context) : SpeechService {
             val audioBuffer = ShortArray(bufferSize)
             var lastText = ""
             var hasSpeechDetected = false
-            var vadPending = ShortArray(0)
+            // 丢弃上一次识别残留的半帧样本
+            sileroVad?.reset()
 
             while (isActive &&
                     _recognitionState.value == SpeechService.RecognitionState.RECOGNIZING) {
@@ -409,9 +381,7 @@ class SherpaMnnSpeechProvider(private val context: Context) : SpeechService {
                     // VAD 检测
                     val silero = sileroVad
                     if (silero != null) {
-                        val (isSpeech, newPending) =
-                            detectSpeechBySilero(silero, vadPending, audioBuffer, ret)
-                        vadPending = newPending
+                        val isSpeech = silero.acceptSamples(audioBuffer, 0, ret)
 
                         if (isSpeech) {
                             hasSpeechDetected = true
@@ -16,6 +16,7 @@ import coil.ImageLoaderFactory
 import coil.disk.DiskCache
 import coil.request.CachePolicy
 import okhttp3.OkHttpClient
+import java.io.File
 import java.util.concurrent.TimeUnit
 import com.ai.assistance.operit.BuildConfig
 import com.ai.assistance.operit.R
@@ -35,9 +36,9 @@ import com.ai.assistance.operit.data.preferences.initAndroidPermissionPreference
 import com.ai.assistance.operit.data.preferences.initUserPreferencesManager
 import com.ai.assistance.operit.data.preferences.preferencesManager
 import com.ai.assistance.operit.data.repository.CustomEmojiRepository
+import com.ai.assistance.operit.data.repository.UIHierarchyManager
 import com.ai.assistance.operit.services.OnnxEmbeddingService
 import com.ai.assistance.operit.ui.features.chat.webview.LocalWebServer
-import com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.language.LanguageFactory
 import com.ai.assistance.operit.util.GlobalExceptionHandler
 import com.ai.assistance.operit.util.ImagePoolManager
 import com.ai.assistance.operit.util.LocaleUtils
@@ -57,7 +58,6 @@ import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.runBlocking
-import kotlinx.coroutines.withContext
 import kotlinx.serialization.json.Json
 
 /** Application class for Operit */
@@ -76,7 +76,13 @@ class OperitApplication : Application(), ImageLoaderFactory, WorkConfiguration.P
         lateinit var globalImageLoader: ImageLoader
             private set
 
+        // 启动任务图，可用于等待某个启动任务完成或读取启动追踪
+        lateinit var startupGraph: StartupGraph
+            private set
+
         private const val TAG = "OperitApplication"
+        private const val STARTUP_TRACE_DIR = "startup"
+        private const val STARTUP_TRACE_FILE = "startup_trace.json"
     }
 
     // 应用级协程作用域
@@ -87,116 +93,119 @@ class OperitApplication : Application(), ImageLoaderFactory, WorkConfiguration.P
 
     override fun onCreate() {
         super.onCreate()
-        val startTime = System.currentTimeMillis()
         instance = this
 
         // 每次应用冷启动时重置上一轮日志，避免日志无限增长
         AppLogger.resetLogFile()
 
-        ensureWorkManagerInitialized()
-
-        AppLogger.d(TAG, "【启动计时】应用启动开始")
-        AppLogger.d(TAG, "【启动计时】实例初始化完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        // Initialize ActivityLifecycleManager to track the current activity
-        ActivityLifecycleManager.initialize(this)
-        AppLogger.d(TAG, "【启动计时】ActivityLifecycleManager初始化完成 - ${System.currentTimeMillis() - startTime}ms")
+        val graph = StartupGraph(applicationScope)
+        startupGraph = graph
+        registerStartupTasks(graph)
+        graph.start()
+        AppLogger.d(TAG, "【启动计时】onCreate 同步阶段完成 - 进程启动后 ${graph.trace.now() / 1_000_000}ms")
 
-        // Initialize AIMessageManager
-        AIMessageManager.initialize(this)
-        AppLogger.d(TAG, "【启动计时】AIMessageManager初始化完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        startGlobalAIForegroundService()
-        AppLogger.d(TAG, "【启动计时】AIForegroundService 启动完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        // Initialize Embedding Service asynchronously in background
-        // Using ONNX-based multilingual model for better Chinese support
+        // 所有启动任务完成后输出启动追踪，仅调试版导出到外部存储
         applicationScope.launch {
-            val embeddingStartTime = System.currentTimeMillis()
-            OnnxEmbeddingService.initialize(this@OperitApplication)
-            AppLogger.d(TAG, "【启动计时】OnnxEmbeddingService初始化完成（异步） - ${System.currentTimeMillis() - embeddingStartTime}ms")
+            graph.awaitAll()
+            AppLogger.d(TAG, "【启动计时】启动任务全部完成:\n${graph.trace.summary()}")
+            if (!BuildConfig.DEBUG) return@launch
+            try {
+                graph.trace.exportTo(File(getExternalFilesDir(STARTUP_TRACE_DIR), STARTUP_TRACE_FILE))
+            } catch (e: Exception) {
+                AppLogger.w(TAG, "导出启动追踪失败: ${e.message}")
+            }
         }
+    }
 
-        // Initialize ANR monitor
-        // AnrMonitor.start()
-
+    /**
+     * 声明启动任务及其依赖。
+     * - MAIN：onCreate 返回前必须完成的轻量初始化（其它组件会直接访问其结果）
+     * - BACKGROUND：相互独立、尽早完成即可的初始化，并行执行
+     * - IDLE：首屏渲染后再执行的重任务，串行执行
+     */
+    private fun registerStartupTasks(graph: StartupGraph) {
         // 在所有其他初始化之前设置全局异常处理器
-        Thread.setDefaultUncaughtExceptionHandler(GlobalExceptionHandler(this))
-        AppLogger.d(TAG, "【启动计时】全局异常处理器设置完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        // Initialize the JSON serializer with our custom module
-        json = Json {
-            serializersModule = SerializationSetup.module
-            ignoreUnknownKeys = true
-            isLenient = true
-            prettyPrint = false
-            encodeDefaults = true
+        graph.main("exception_handler") {
+            Thread.setDefaultUncaughtExceptionHandler(GlobalExceptionHandler(this))
+        }
+        graph.main("work_manager") { ensureWorkManagerInitialized() }
+        // Initialize ActivityLifecycleManager to track the current activity
+        graph.main("activity_lifecycle") { ActivityLifecycleManager.initialize(this) }
+        graph.main("json") {
+            json = Json {
+                serializersModule = SerializationSetup.module
+                ignoreUnknownKeys = true
+                isLenient = true
+                prettyPrint = false
+                encodeDefaults = true
+            }
+        }
+        graph.main("user_preferences") {
+            val defaultProfileName = applicationContext.getString(R.string.default_profile)
+            initUserPreferencesManager(applicationContext, defaultProfileName)
+        }
+        graph.main("permission_preferences") { initAndroidPermissionPreferences(applicationContext) }
+        // 在最早时机初始化并应用语言设置
+        graph.main("app_language", dependsOn = listOf("user_preferences")) { initializeAppLanguage() }
+        graph.main("ai_message_manager") { AIMessageManager.initialize(this) }
+        graph.main("ai_foreground_service") { startGlobalAIForegroundService() }
+        graph.main("shell_executor") {
+            AndroidShellExecutor.setContext(applicationContext)
+            // 初始化 Shower 虚拟屏客户端的 ShellRunner 环境
+            ShowerEnvironment.shellRunner = OperitShowerShellRunner
+        }
+        graph.main("pdfbox") { PDFBoxResourceLoader.init(applicationContext) }
+        graph.main("waifu_processor") { WaifuMessageProcessor.initialize(applicationContext) }
+        // Coil 可能随时通过 newImageLoader() 取用，必须同步完成
+        graph.main("image_loader") { globalImageLoader = createImageLoader() }
+        graph.main("media_pools") {
+            // 初始化图片/媒体池管理器，支持本地持久化缓存，磁盘预加载延后到空闲时
+            ImagePoolManager.initialize(filesDir, preloadNow = false)
+            MediaPoolManager.initialize(filesDir, preloadNow = false)
         }
-        AppLogger.d(TAG, "【启动计时】JSON序列化器初始化完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        // 初始化用户偏好管理器
-        val defaultProfileName = applicationContext.getString(R.string.default_profile)
-        initUserPreferencesManager(applicationContext, defaultProfileName)
-        AppLogger.d(TAG, "【启动计时】用户偏好管理器初始化完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        // 初始化Android权限偏好管理器
-        initAndroidPermissionPreferences(applicationContext)
-        AppLogger.d(TAG, "【启动计时】Android权限偏好管理器初始化完成 - ${System.currentTimeMillis() - startTime}ms")
 
-        // 初始化功能提示词管理器
-        applicationScope.launch {
-            val characterStartTime = System.currentTimeMillis()
+        graph.background("character_cards", dependsOn = listOf("user_preferences")) {
             CharacterCardManager.getInstance(applicationContext).initializeIfNeeded()
-            AppLogger.d(TAG, "【启动计时】功能提示词管理器初始化完成（异步） - ${System.currentTimeMillis() - characterStartTime}ms")
         }
-
-        // 初始化自定义表情
-        applicationScope.launch {
-            val emojiStartTime = System.currentTimeMillis()
+        graph.background("custom_emoji") {
             CustomEmojiRepository.getInstance(applicationContext).initializeBuiltinEmojis()
-            AppLogger.d(TAG, "【启动计时】自定义表情初始化完成（异步） - ${System.currentTimeMillis() - emojiStartTime}ms")
         }
-
-        // 在最早时机初始化并应用语言设置
-        initializeAppLanguage()
-        AppLogger.d(TAG, "【启动计时】语言设置初始化完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        // 初始化AndroidShellExecutor上下文
-        AndroidShellExecutor.setContext(applicationContext)
-        AppLogger.d(TAG, "【启动计时】AndroidShellExecutor初始化完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        // 初始化 Shower 虚拟屏客户端的 ShellRunner 环境
-        ShowerEnvironment.shellRunner = OperitShowerShellRunner
-        AppLogger.d(TAG, "【启动计时】ShowerEnvironment.shellRunner 已配置 - ${System.currentTimeMillis() - startTime}ms")
-
-        // 初始化PDFBox资源加载器
-        PDFBoxResourceLoader.init(getApplicationContext());
-        AppLogger.d(TAG, "【启动计时】PDFBox资源加载器初始化完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        // 初始化语言支持
-        LanguageFactory.init()
-        AppLogger.d(TAG, "【启动计时】语言工厂初始化完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        // 初始化TextSegmenter
-        applicationScope.launch {
-            val segmenterStartTime = System.currentTimeMillis()
-            TextSegmenter.initialize(applicationContext)
-            AppLogger.d(TAG, "【启动计时】TextSegmenter初始化完成（异步） - ${System.currentTimeMillis() - segmenterStartTime}ms")
+        graph.background("text_segmenter") { TextSegmenter.initialize(applicationContext) }
+        // 简单访问数据库以触发初始化
+        graph.background("database") { database.problemDao().getProblemCount() }
+        graph.background("workflow_scheduler") {
+            WorkflowSchedulerInitializer.initialize(applicationContext)
+        }
+        // 在应用启动时尝试绑定无障碍服务提供者（解决后台绑定限制问题）
+        graph.background("accessibility_bind") {
+            val bound = UIHierarchyManager.bindToService(this@OperitApplication)
+            AppLogger.d(TAG, "无障碍服务预绑定结果: $bound")
         }
-        
-        // Initialize WaifuMessageProcessor
-        WaifuMessageProcessor.initialize(applicationContext)
-        AppLogger.d(TAG, "【启动计时】WaifuMessageProcessor初始化完成 - ${System.currentTimeMillis() - startTime}ms")
 
-        // 预加载数据库
-        applicationScope.launch {
-            val dbStartTime = System.currentTimeMillis()
-            // 简单访问数据库以触发初始化
-            database.problemDao().getProblemCount()
-            AppLogger.d(TAG, "【启动计时】数据库预加载完成（异步） - ${System.currentTimeMillis() - dbStartTime}ms")
+        graph.idle("image_pool_preload", dependsOn = listOf("media_pools")) {
+            ImagePoolManager.preloadFromDisk()
         }
+        graph.idle("media_pool_preload", dependsOn = listOf("media_pools")) {
+            MediaPoolManager.preloadFromDisk()
+        }
+        graph.idle("tool_handler", dependsOn = listOf("json", "ai_message_manager")) {
+            AIToolHandler.getInstance(this@OperitApplication).registerDefaultTools()
+        }
+        // 加载 tokenizer.json 与 ONNX 模型。耗时最长，但未初始化时 generateEmbedding 返回 null，
+        // 这段时间保存的记忆不会有向量，因此在后台尽早加载，不等首屏空闲
+        graph.background("onnx_embedding") { OnnxEmbeddingService.initialize(this@OperitApplication) }
+        graph.idle("database_backup_schedule", dependsOn = listOf("work_manager")) {
+            val prefs = RoomDatabaseBackupPreferences.getInstance(applicationContext)
+            if (prefs.isDailyBackupEnabled()) {
+                RoomDatabaseBackupScheduler.ensureScheduled(applicationContext)
+            } else {
+                RoomDatabaseBackupScheduler.cancelScheduled(applicationContext)
+            }
+        }
+    }
 
-        // 初始化全局图片加载器，设置强大的缓存策略
+    /** 初始化全局图片加载器，设置强大的缓存策略 */
+    private fun createImageLoader(): ImageLoader {
         // 创建自定义 OkHttp 客户端，增加超时时间以支持慢速图片服务器
         val imageOkHttpClient = OkHttpClient.Builder()
                 .connectTimeout(30, TimeUnit.SECONDS) // 连接超时：30秒（默认10秒）
@@ -204,88 +213,24 @@ class OperitApplication : Application(), ImageLoaderFactory, WorkConfiguration.P
                 .writeTimeout(30, TimeUnit.SECONDS)   // 写入超时：30秒（默认10秒）
                 .retryOnConnectionFailure(true)       // 连接失败时自动重试
                 .build()
-        
-        globalImageLoader =
-                ImageLoader.Builder(this)
-                        .okHttpClient(imageOkHttpClient) // 使用自定义 OkHttp 客户端
-                        .crossfade(true)
-                        .respectCacheHeaders(true)
-                        .memoryCachePolicy(CachePolicy.ENABLED)
-                        .diskCachePolicy(CachePolicy.ENABLED)
-                        .diskCache {
-                            DiskCache.Builder()
-                                    .directory(filesDir.resolve("image_cache"))
-                                    .maxSizeBytes(50 * 1024 * 1024) // 50MB磁盘缓存上限，比百分比更精确
-                                    .build()
-                        }
-                        .memoryCache {
-                            // 设置内存缓存最大大小为应用可用内存的15%
-                            coil.memory.MemoryCache.Builder(this).maxSizePercent(0.15).build()
-                        }
-                        .build()
-        AppLogger.d(TAG, "【启动计时】全局图片加载器初始化完成（超时配置：连接30s/读取60s） - ${System.currentTimeMillis() - startTime}ms")
-        
-        // 初始化图片池管理器，支持本地持久化缓存
-        ImagePoolManager.initialize(filesDir, preloadNow = false)
-        AppLogger.d(TAG, "【启动计时】图片池管理器初始化完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        // 初始化媒体池管理器（音频/视频），支持本地持久化缓存
-        MediaPoolManager.initialize(filesDir, preloadNow = false)
-        AppLogger.d(TAG, "【启动计时】媒体池管理器初始化完成 - ${System.currentTimeMillis() - startTime}ms")
-
-        // 启动后重任务统一后台串行执行，避免多个大任务同时跑导致首屏掉帧
-        applicationScope.launch(Dispatchers.Default) {
-            // 给 UI 一个缓冲时间先完成首屏渲染
-            kotlinx.coroutines.delay(800)
-
-            val imagePreloadStartTime = System.currentTimeMillis()
-            withContext(Dispatchers.IO) { ImagePoolManager.preloadFromDisk() }
-            AppLogger.d(TAG, "【启动计时】图片池磁盘预加载完成（异步/串行） - ${System.currentTimeMillis() - imagePreloadStartTime}ms")
-
-            val mediaPreloadStartTime = System.currentTimeMillis()
-            withContext(Dispatchers.IO) { MediaPoolManager.preloadFromDisk() }
-            AppLogger.d(TAG, "【启动计时】媒体池磁盘预加载完成（异步/串行） - ${System.currentTimeMillis() - mediaPreloadStartTime}ms")
-
-            val toolStartTime = System.currentTimeMillis()
-            val toolHandler = AIToolHandler.getInstance(this@OperitApplication)
-            toolHandler.registerDefaultTools()
-            AppLogger.d(TAG, "【启动计时】AIToolHandler初始化并注册工具完成（异步/串行） - ${System.currentTimeMillis() - toolStartTime}ms")
-        }
-        
-        // 初始化工作流调度器（异步）
-        applicationScope.launch {
-            val schedulerStartTime = System.currentTimeMillis()
-            WorkflowSchedulerInitializer.initialize(applicationContext)
-            AppLogger.d(TAG, "【启动计时】WorkflowScheduler初始化完成（异步） - ${System.currentTimeMillis() - schedulerStartTime}ms")
-        }
 
-        applicationScope.launch {
-            try {
-                val prefs = RoomDatabaseBackupPreferences.getInstance(applicationContext)
-                if (prefs.isDailyBackupEnabled()) {
-                    RoomDatabaseBackupScheduler.ensureScheduled(applicationContext)
-                } else {
-                    RoomDatabaseBackupScheduler.cancelScheduled(applicationContext)
+        return ImageLoader.Builder(this)
+                .okHttpClient(imageOkHttpClient) // 使用自定义 OkHttp 客户端
+                .crossfade(true)
+                .respectCacheHeaders(true)
+                .memoryCachePolicy(CachePolicy.ENABLED)
+                .diskCachePolicy(CachePolicy.ENABLED)
+                .diskCache {
+                    DiskCache.Builder()
+                            .directory(filesDir.resolve("image_cache"))
+                            .maxSizeBytes(50 * 1024 * 1024) // 50MB磁盘缓存上限，比百分比更精确
+                            .build()
                 }
-            } catch (e: Exception) {
-                AppLogger.e(TAG, "Room DB backup schedule init failed", e)
-            }
-        }
-
-        // 在应用启动时尝试绑定无障碍服务提供者（解决后台绑定限制问题）
-        applicationScope.launch {
-            AppLogger.d(TAG, "【启动计时】开始预绑定无障碍服务提供者...")
-            val bindStartTime = System.currentTimeMillis()
-            try {
-                val bound = com.ai.assistance.operit.data.repository.UIHierarchyManager.bindToService(this@OperitApplication)
-                AppLogger.d(TAG, "【启动计时】无障碍服务预绑定完成（异步） - 结果: $bound, 耗时: ${System.currentTimeMillis() - bindStartTime}ms")
-            } catch (e: Exception) {
-                AppLogger.e(TAG, "无障碍服务预绑定失败", e)
-            }
-        }
-        
-        val totalTime = System.currentTimeMillis() - startTime
-        AppLogger.d(TAG, "【启动计时】应用启动全部完成 - 总耗时: ${totalTime}ms")
+                .memoryCache {
+                    // 设置内存缓存最大大小为应用可用内存的15%
+                    coil.memory.MemoryCache.Builder(this).maxSizePercent(0.15).build()
+                }
+                .build()
     }
 
     /**
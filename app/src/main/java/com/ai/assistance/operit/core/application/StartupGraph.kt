@@ -0,0 +1,232 @@
+package com.ai.assistance.operit.core.application
+
+import android.os.Looper
+import com.ai.assistance.operit.util.AppLogger
+import java.util.PriorityQueue
+import kotlin.coroutines.cancellation.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+
+/** 启动任务的执行方式 */
+enum class StartupMode {
+    /** 在调用 [StartupGraph.start] 的线程上同步执行，start 返回前完成 */
+    MAIN,
+
+    /** 依赖完成后立即在后台执行，相互独立的任务并行执行 */
+    BACKGROUND,
+
+    /**
+     * 依赖完成、主线程首次空闲且距启动超过最小延迟后才在后台执行，空闲任务之间串行执行，
+     * 避免多个大任务同时抢占首屏渲染资源。被 [StartupGraph.await] 请求时会提前执行。
+     */
+    IDLE
+}
+
+/**
+ * 启动任务图
+ *
+ * 任务通过名称声明依赖，[start] 时先校验依赖（未知依赖、环、MAIN 任务依赖后台任务都会抛出
+ * [IllegalStateException]），再按拓扑序执行。每个任务的开始/结束/线程都会写入 [trace]。
+ * 后台任务抛出的异常只记录日志，不会阻止依赖它的任务继续执行；MAIN 任务的异常会直接抛出。
+ *
+ * @param idleDelayMs IDLE 任务距 [start] 的最小延迟
+ * @param onMainThreadIdle 注册"主线程空闲"回调，测试时可注入
+ */
+class StartupGraph(
+    private val scope: CoroutineScope,
+    val trace: StartupTrace = StartupTrace(),
+    private val idleDelayMs: Long = 800,
+    private val onMainThreadIdle: (callback: () -> Unit) -> Unit = ::addMainThreadIdleHandler
+) {
+    companion object {
+        private const val TAG = "StartupGraph"
+
+        private fun addMainThreadIdleHandler(callback: () -> Unit) {
+            Looper.getMainLooper().queue.addIdleHandler {
+                callback()
+                false
+            }
+        }
+    }
+
+    private class Task(
+        val name: String,
+        val mode: StartupMode,
+        val dependsOn: List<String>,
+        val dispatcher: CoroutineDispatcher?,
+        val syncAction: (() -> Unit)?,
+        val asyncAction: (suspend () -> Unit)?
+    ) {
+        val done = CompletableDeferred<Unit>()
+        val trigger = CompletableDeferred<Unit>()
+    }
+
+    private val tasks = LinkedHashMap<String, Task>()
+    private val idleLock = Mutex()
+
+    @Volatile
+    private var started = false
+
+    /** 注册在调用线程同步执行的任务 */
+    fun main(name: String, dependsOn: List<String> = emptyList(), block: () -> Unit) =
+        add(Task(name, StartupMode.MAIN, dependsOn, null, block, null))
+
+    /** 注册后台任务 */
+    fun background(
+        name: String,
+        dependsOn: List<String> = emptyList(),
+        dispatcher: CoroutineDispatcher = Dispatchers.IO,
+        block: suspend () -> Unit
+    ) = add(Task(name, StartupMode.BACKGROUND, dependsOn, dispatcher, null, block))
+
+    /** 注册空闲时执行的任务 */
+    fun idle(
+        name: String,
+        dependsOn: List<String> = emptyList(),
+        dispatcher: CoroutineDispatcher = Dispatchers.IO,
+        block: suspend () -> Unit
+    ) = add(Task(name, StartupMode.IDLE, dependsOn, dispatcher, null, block))
+
+    private fun add(task: Task) {
+        check(!started) { "Startup graph already started" }
+        check(tasks.put(task.name, task) == null) { "Duplicate startup task: ${task.name}" }
+    }
+
+    /**
+     * 校验并启动任务图。MAIN 任务在返回前全部完成，其余任务在 [scope] 中异步执行。
+     */
+    fun start() {
+        check(!started) { "Startup graph already started" }
+        val order = topologicalOrder()
+        started = true
+
+        val startNanos = trace.now()
+        onMainThreadIdle {
+            scope.launch {
+                val elapsedMs = (trace.now() - startNanos) / 1_000_000
+                delay((idleDelayMs - elapsedMs).coerceAtLeast(0))
+                tasks.values.forEach { it.trigger.complete(Unit) }
+            }
+        }
+
+        // 先启动后台任务，使其与后续 MAIN 任务并行
+        for (task in order) {
+            if (task.mode != StartupMode.MAIN) launchAsync(task)
+        }
+        for (task in order) {
+            if (task.mode == StartupMode.MAIN) {
+                trace.measure(task.name, task.mode) { task.syncAction!!.invoke() }
+                task.done.complete(Unit)
+            }
+        }
+    }
+
+    /**
+     * 等待指定任务完成；若是尚未开始的 IDLE 任务（及其 IDLE 依赖），会立即提前执行。
+     */
+    suspend fun await(name: String) {
+        val task = requireNotNull(tasks[name]) { "Unknown startup task: $name" }
+        promote(task)
+        task.done.await()
+    }
+
+    /** 等待全部任务完成 */
+    suspend fun awaitAll() {
+        tasks.values.map { it.done }.awaitAll()
+    }
+
+    private fun promote(task: Task) {
+        if (!task.trigger.complete(Unit)) return
+        task.dependsOn.forEach { dependency -> tasks[dependency]?.let { promote(it) } }
+    }
+
+    private fun launchAsync(task: Task): Job =
+        scope.launch {
+            task.dependsOn.map { tasks.getValue(it).done }.awaitAll()
+            if (task.mode == StartupMode.IDLE) task.trigger.await()
+            val queued = trace.now()
+            try {
+                withContext(task.dispatcher!!) {
+                    if (task.mode == StartupMode.IDLE) {
+                        idleLock.withLock { runAsync(task, queued) }
+                    } else {
+                        runAsync(task, queued)
+                    }
+                }
+            } finally {
+                task.done.complete(Unit)
+            }
+        }
+
+    private suspend fun runAsync(task: Task, queued: Long) {
+        val thread = Thread.currentThread()
+        val start = trace.now()
+        var error: Throwable? = null
+        try {
+            task.asyncAction!!.invoke()
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            error = e
+            AppLogger.e(TAG, "启动任务 ${task.name} 失败", e)
+        }
+        trace.record(
+            StartupTrace.Span(
+                name = task.name,
+                mode = task.mode,
+                threadId = thread.id,
+                threadName = thread.name,
+                queuedNanos = queued,
+                startNanos = start,
+                endNanos = trace.now(),
+                error = error?.let { it.message ?: it.javaClass.simpleName }
+            )
+        )
+    }
+
+    /** Kahn 拓扑排序，同时校验依赖合法性 */
+    private fun topologicalOrder(): List<Task> {
+        val inDegree = HashMap<String, Int>()
+        val dependents = HashMap<String, MutableList<Task>>()
+        for (task in tasks.values) {
+            inDegree[task.name] = task.dependsOn.size
+            for (dependency in task.dependsOn) {
+                val target = tasks[dependency]
+                    ?: throw IllegalStateException("Startup task ${task.name} depends on unknown task $dependency")
+                if (task.mode == StartupMode.MAIN && target.mode != StartupMode.MAIN) {
+                    throw IllegalStateException("MAIN task ${task.name} cannot depend on ${target.mode} task $dependency")
+                }
+                dependents.getOrPut(dependency) { ArrayList() }.add(task)
+            }
+        }
+
+        // 就绪任务按注册顺序出队，保证结果稳定且尽量贴近声明顺序
+        val registrationIndex = tasks.keys.withIndex().associate { (index, name) -> name to index }
+        val ready = PriorityQueue<Task>(compareBy { registrationIndex.getValue(it.name) })
+        tasks.values.filterTo(ready) { it.dependsOn.isEmpty() }
+        val order = ArrayList<Task>(tasks.size)
+        while (ready.isNotEmpty()) {
+            val task = ready.poll()!!
+            order.add(task)
+            for (dependent in dependents[task.name].orEmpty()) {
+                val remaining = inDegree.getValue(dependent.name) - 1
+                inDegree[dependent.name] = remaining
+                if (remaining == 0) ready.add(dependent)
+            }
+        }
+        if (order.size != tasks.size) {
+            val cycle = tasks.keys.filter { inDegree.getValue(it) > 0 }
+            throw IllegalStateException("Startup task dependency cycle: $cycle")
+        }
+        return order
+    }
+}
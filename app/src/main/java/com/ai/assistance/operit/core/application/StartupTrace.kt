@@ -0,0 +1,152 @@
+package com.ai.assistance.operit.core.application
+
+import android.os.Process
+import android.os.SystemClock
+import java.io.File
+import java.util.Locale
+import org.json.JSONArray
+import org.json.JSONObject
+
+/**
+ * 启动追踪记录
+ *
+ * 记录每个启动任务的开始/结束时间与执行线程，时间以进程启动时刻为原点，
+ * 可导出为 Chrome Trace Event 格式（可直接用 Perfetto / chrome://tracing 打开）。
+ *
+ * @param clock 单调时钟（纳秒），测试时可注入
+ * @param originNanos 时间原点，默认是进程启动时刻
+ */
+class StartupTrace(
+    private val clock: () -> Long = { SystemClock.elapsedRealtimeNanos() },
+    private val originNanos: Long = Process.getStartElapsedRealtime() * 1_000_000L
+) {
+    /**
+     * 单个任务的执行区间
+     * @property queuedNanos 任务可以开始（依赖全部完成）的时刻；MAIN 任务与 [startNanos] 相同
+     */
+    data class Span(
+        val name: String,
+        val mode: StartupMode,
+        val threadId: Long,
+        val threadName: String,
+        val queuedNanos: Long,
+        val startNanos: Long,
+        val endNanos: Long,
+        val error: String? = null
+    ) {
+        val durationMs: Double
+            get() = (endNanos - startNanos) / 1_000_000.0
+    }
+
+    private val spans = ArrayList<Span>()
+
+    /** 当前时刻（相对进程启动，纳秒） */
+    fun now(): Long = clock() - originNanos
+
+    /**
+     * 在当前线程执行 [block] 并记录区间
+     */
+    inline fun <T> measure(
+        name: String,
+        mode: StartupMode,
+        queuedNanos: Long = now(),
+        block: () -> T
+    ): T {
+        val thread = Thread.currentThread()
+        val start = now()
+        var error: Throwable? = null
+        try {
+            return block()
+        } catch (e: Throwable) {
+            error = e
+            throw e
+        } finally {
+            record(
+                Span(
+                    name = name,
+                    mode = mode,
+                    threadId = thread.id,
+                    threadName = thread.name,
+                    queuedNanos = queuedNanos,
+                    startNanos = start,
+                    endNanos = now(),
+                    error = error?.let { it.message ?: it.javaClass.simpleName }
+                )
+            )
+        }
+    }
+
+    @Synchronized
+    fun record(span: Span) {
+        spans.add(span)
+    }
+
+    /** 所有已记录的区间，按开始时间排序 */
+    @Synchronized
+    fun spans(): List<Span> = spans.sortedBy { it.startNanos }
+
+    /** 可读的文本摘要，每个任务一行 */
+    fun summary(): String {
+        val sb = StringBuilder()
+        for (span in spans()) {
+            sb.append(
+                String.format(
+                    Locale.ROOT,
+                    "%-28s %-10s start=%8.1fms dur=%8.1fms wait=%7.1fms thread=%s%s\n",
+                    span.name,
+                    span.mode.name,
+                    span.startNanos / 1_000_000.0,
+                    span.durationMs,
+                    (span.startNanos - span.queuedNanos) / 1_000_000.0,
+                    span.threadName,
+                    span.error?.let { " error=$it" } ?: ""
+                )
+            )
+        }
+        return sb.toString()
+    }
+
+    /**
+     * 导出为 Chrome Trace Event JSON（时间单位为微秒）
+     */
+    fun toChromeTraceJson(): String {
+        val events = JSONArray()
+        val threadNames = LinkedHashMap<Long, String>()
+        for (span in spans()) {
+            threadNames.putIfAbsent(span.threadId, span.threadName)
+            events.put(
+                JSONObject()
+                    .put("name", span.name)
+                    .put("cat", span.mode.name.lowercase())
+                    .put("ph", "X")
+                    .put("pid", 0)
+                    .put("tid", span.threadId)
+                    .put("ts", span.startNanos / 1_000)
+                    .put("dur", (span.endNanos - span.startNanos) / 1_000)
+                    .put(
+                        "args",
+                        JSONObject()
+                            .put("waitUs", (span.startNanos - span.queuedNanos) / 1_000)
+                            .apply { span.error?.let { put("error", it) } }
+                    )
+            )
+        }
+        for ((tid, name) in threadNames) {
+            events.put(
+                JSONObject()
+                    .put("name", "thread_name")
+                    .put("ph", "M")
+                    .put("pid", 0)
+                    .put("tid", tid)
+                    .put("args", JSONObject().put("name", name))
+            )
+        }
+        return JSONObject().put("traceEvents", events).toString()
+    }
+
+    /** 将追踪写入文件 */
+    fun exportTo(file: File) {
+        file.parentFile?.mkdirs()
+        file.writeText(toChromeTraceJson())
+    }
+}
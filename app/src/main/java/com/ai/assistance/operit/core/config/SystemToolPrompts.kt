@@ -645,6 +645,15 @@ object SystemToolPrompts {
                     ToolParameterSchema(name = "query", type = "string", description = "optional, string, search for matching chunks within the document using keywords or semantic search", required = false)
                 )
             ),
+            ToolPrompt(
+                name = "search_chat_history",
+                description = "Searches past conversations (across all chats) for messages related to the query, using hybrid search (keyword matching + semantic understanding). Use this when the user refers to something discussed in an earlier chat that is not in the current context. Returns matching message snippets with their chat id and title.",
+                parametersStructured = listOf(
+                    ToolParameterSchema(name = "query", type = "string", description = "string, the keyword or question to search for", required = true),
+                    ToolParameterSchema(name = "chat_id", type = "string", description = "optional, string, restrict the search to these chat ids (comma-separated)", required = false),
+                    ToolParameterSchema(name = "limit", type = "integer", description = "optional, int 1-20, maximum number of results to return", required = false, default = "5")
+                )
+            ),
             ToolPrompt(
                 name = "create_memory",
                 description = "Creates a new memory node in the library. Use this when you want to save important information for future reference.",
@@ -728,6 +737,15 @@ object SystemToolPrompts {
                     ToolParameterSchema(name = "query", type = "string", description = "可选, 字符串, 使用关键词或语义搜索在文档内查找匹配的分块", required = false)
                 )
             ),
+            ToolPrompt(
+                name = "search_chat_history",
+                description = "使用混合搜索（关键词匹配 + 语义理解）在所有历史对话中检索与查询相关的消息。当用户提到之前某次对话中讨论过、但不在当前上下文中的内容时使用。返回匹配的消息片段及其所属对话的 ID 和标题。",
+                parametersStructured = listOf(
+                    ToolParameterSchema(name = "query", type = "string", description = "string, 搜索的关键词或问题", required = true),
+                    ToolParameterSchema(name = "chat_id", type = "string", description = "可选, string, 将搜索限制在这些对话 ID 内（逗号分隔）", required = false),
+                    ToolParameterSchema(name = "limit", type = "integer", description = "可选, int 1-20, 返回结果的最大数量", required = false, default = "5")
+                )
+            ),
             ToolPrompt(
                 name = "create_memory",
                 description = "在记忆库中创建新的记忆节点。当你想保存重要信息供将来参考时使用。",
@@ -392,6 +392,32 @@ object SystemToolPromptsInternal {
                             description = "List chats.",
                             parametersStructured = listOf()
                         ),
+                        ToolPrompt(
+                            name = "search_chat_history",
+                            description = "Search messages across chats (keyword + semantic).",
+                            parametersStructured =
+                                listOf(
+                                    ToolParameterSchema(
+                                        name = "query",
+                                        type = "string",
+                                        description = "search query",
+                                        required = true
+                                    ),
+                                    ToolParameterSchema(
+                                        name = "chat_id",
+                                        type = "string",
+                                        description = "optional chat ids, comma-separated",
+                                        required = false
+                                    ),
+                                    ToolParameterSchema(
+                                        name = "limit",
+                                        type = "integer",
+                                        description = "optional max results, 1-20",
+                                        required = false,
+                                        default = "5"
+                                    )
+                                )
+                        ),
                         ToolPrompt(
                             name = "switch_chat",
                             description = "Switch to a chat.",
@@ -562,6 +588,19 @@ object SystemToolPromptsInternal {
                                         type = "string",
                                         description = "optional, display id for multi-display",
                                         required = false
+                                    ),
+                                    ToolParameterSchema(
+                                        name = "diff",
+                                        type = "boolean",
+                                        description = "optional, with base_version, only return elements changed since that snapshot; otherwise returns the full page with its snapshot version",
+                                        required = false,
+                                        default = "false"
+                                    ),
+                                    ToolParameterSchema(
+                                        name = "base_version",
+                                        type = "integer",
+                                        description = "optional, the UI Snapshot version from your previous get_page_info result",
+                                        required = false
                                     )
                                 )
                         ),
@@ -1399,6 +1438,32 @@ object SystemToolPromptsInternal {
                             description = "列出所有对话。",
                             parametersStructured = listOf()
                         ),
+                        ToolPrompt(
+                            name = "search_chat_history",
+                            description = "跨对话检索历史消息（关键词 + 语义）。",
+                            parametersStructured =
+                                listOf(
+                                    ToolParameterSchema(
+                                        name = "query",
+                                        type = "string",
+                                        description = "搜索内容",
+                                        required = true
+                                    ),
+                                    ToolParameterSchema(
+                                        name = "chat_id",
+                                        type = "string",
+                                        description = "可选，对话 ID，逗号分隔",
+                                        required = false
+                                    ),
+                                    ToolParameterSchema(
+                                        name = "limit",
+                                        type = "integer",
+                                        description = "可选，最大结果数，1-20",
+                                        required = false,
+                                        default = "5"
+                                    )
+                                )
+                        ),
                         ToolPrompt(
                             name = "switch_chat",
                             description = "切换到指定对话。",
@@ -1569,6 +1634,19 @@ object SystemToolPromptsInternal {
                                         type = "string",
                                         description = "可选，多屏 display id",
                                         required = false
+                                    ),
+                                    ToolParameterSchema(
+                                        name = "diff",
+                                        type = "boolean",
+                                        description = "可选，配合 base_version 仅返回相对该快照发生变化的元素；未给出时返回全量页面及其快照版本",
+                                        required = false,
+                                        default = "false"
+                                    ),
+                                    ToolParameterSchema(
+                                        name = "base_version",
+                                        type = "integer",
+                                        description = "可选，上一次 get_page_info 结果中的 UI Snapshot 版本号",
+                                        required = false
                                     )
                                 )
                         ),
@@ -570,6 +570,16 @@ fun registerAllTools(handler: AIToolHandler, context: Context) {
             executor = { tool -> runBlocking(Dispatchers.IO) { chatManagerTool.listChats(tool) } }
     )
 
+    // 跨对话检索历史消息
+    handler.registerTool(
+            name = "search_chat_history",
+            descriptionGenerator = { tool ->
+                val query = tool.parameters.find { it.name == "query" }?.value ?: ""
+                s(R.string.toolreg_search_chat_history_desc, query)
+            },
+            executor = { tool -> runBlocking(Dispatchers.IO) { chatManagerTool.searchChatHistory(tool) } }
+    )
+
     // 切换对话
     handler.registerTool(
             name = "switch_chat",
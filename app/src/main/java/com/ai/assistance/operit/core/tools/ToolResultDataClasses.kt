@@ -461,12 +461,15 @@ data class SimplifiedUINode(
 data class UIPageResultData(
         val packageName: String,
         val activityName: String,
-        val uiElements: SimplifiedUINode
+        val uiElements: SimplifiedUINode,
+        /** 快照版本，仅在请求 diff 时给出，供下一次调用作为 base_version */
+        val snapshotVersion: Long? = null
 ) : ToolResultData() {
     override fun toString(): String {
+        val versionLine = if (snapshotVersion != null) "\nUI Snapshot: v$snapshotVersion" else ""
         return """
             |Current Application: $packageName
-            |Current Activity: $activityName
+            |Current Activity: $activityName$versionLine
             |
             |UI Elements:
             |${uiElements.toTreeString()}
@@ -474,6 +477,37 @@ data class UIPageResultData(
     }
 }
 
+/** Represents the changes of a UI page relative to a previous snapshot */
+@Serializable
+data class UIPageDiffResultData(
+        val packageName: String,
+        val activityName: String,
+        val baseVersion: Long,
+        val version: Long,
+        val changedSubtrees: List<SimplifiedUINode>,
+        val removedNodes: List<String>
+) : ToolResultData() {
+    override fun toString(): String {
+        val sb = StringBuilder()
+        sb.append("Current Application: $packageName\n")
+        sb.append("Current Activity: $activityName\n")
+        sb.append("UI Snapshot: v$version (diff against v$baseVersion)\n")
+        if (changedSubtrees.isEmpty() && removedNodes.isEmpty()) {
+            sb.append("\nNo UI changes.")
+            return sb.toString()
+        }
+        if (changedSubtrees.isNotEmpty()) {
+            sb.append("\nChanged Elements:\n")
+            changedSubtrees.forEach { sb.append(it.toTreeString()) }
+        }
+        if (removedNodes.isNotEmpty()) {
+            sb.append("\nRemoved Elements:\n")
+            removedNodes.forEach { sb.append("✕ ").append(it).append("\n") }
+        }
+        return sb.toString().trimEnd()
+    }
+}
+
 /** Represents a UI action result data */
 @Serializable
 data class UIActionResultData(
@@ -1436,6 +1470,38 @@ data class ChatListResultData(
     }
 }
 
+/** 跨对话检索结果数据 */
+@Serializable
+data class ChatHistorySearchResultData(
+    val query: String,
+    val hits: List<Hit>
+) : ToolResultData() {
+
+    @Serializable
+    data class Hit(
+        val chatId: String,
+        val chatTitle: String,
+        val sender: String,
+        val timestamp: Long,
+        val snippet: String,
+        val score: Double
+    )
+
+    override fun toString(): String {
+        if (hits.isEmpty()) return "未找到与 \"$query\" 相关的历史消息"
+        val sb = StringBuilder()
+        sb.appendLine("与 \"$query\" 相关的历史消息 (共 ${hits.size} 条):")
+        sb.appendLine()
+        hits.forEach { hit ->
+            sb.appendLine("对话: ${hit.chatTitle} (ID: ${hit.chatId})")
+            sb.appendLine("发送者: ${hit.sender}  时间: ${hit.timestamp}")
+            sb.appendLine(hit.snippet)
+            sb.appendLine("---")
+        }
+        return sb.toString().trim()
+    }
+}
+
 /** 切换对话结果数据 */
 @Serializable
 data class ChatSwitchResultData(
@@ -2,6 +2,7 @@ package com.ai.assistance.operit.core.tools.agent
 
 import android.content.Context
 import com.ai.assistance.showerclient.ShowerController as ClientShowerController
+import com.ai.assistance.showerclient.ShowerVideoFeedback
 import java.util.concurrent.ConcurrentHashMap
 
 /**
@@ -40,6 +41,11 @@ object ShowerController {
 
     fun setBinaryHandler(handler: ((ByteArray) -> Unit)?) = setBinaryHandler("default", handler)
 
+    /** Forwards decoder feedback for a specific agent's virtual display to the Shower server. */
+    fun reportVideoFeedback(agentId: String, feedback: ShowerVideoFeedback) {
+        instances[agentId]?.reportVideoFeedback(feedback)
+    }
+
     suspend fun requestScreenshot(agentId: String, timeoutMs: Long = 3000L): ByteArray? =
         getInstance(agentId).requestScreenshot(timeoutMs)
 
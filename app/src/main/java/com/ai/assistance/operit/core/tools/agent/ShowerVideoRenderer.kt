@@ -15,13 +15,25 @@ object ShowerVideoRenderer {
 
     private val core = com.ai.assistance.showerclient.ShowerVideoRenderer()
 
-    fun attach(surface: Surface, videoWidth: Int, videoHeight: Int) =
+    /**
+     * Attaches the decoder to [surface] and routes its feedback (decode latency, queue depth,
+     * key frame requests) to the Shower server of [agentId], so the encoder can adapt.
+     */
+    fun attach(surface: Surface, videoWidth: Int, videoHeight: Int, agentId: String = "default") {
+        core.setFeedbackListener { feedback -> ShowerController.reportVideoFeedback(agentId, feedback) }
         core.attach(surface, videoWidth, videoHeight)
+    }
 
-    fun detach() = core.detach()
+    fun detach() {
+        core.setFeedbackListener(null)
+        core.detach()
+    }
 
     fun onFrame(data: ByteArray) = core.onFrame(data)
 
+    fun setFeedbackListener(listener: ((com.ai.assistance.showerclient.ShowerVideoFeedback) -> Unit)?) =
+        core.setFeedbackListener(listener)
+
     suspend fun captureCurrentFramePng(): ByteArray? =
         core.captureCurrentFramePng()
 }
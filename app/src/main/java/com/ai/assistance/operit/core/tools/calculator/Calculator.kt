@@ -10,6 +10,11 @@ class Calculator {
             return JsCalculator.evaluate(expression)
         }
 
+        /** 使用独立的变量集合计算表达式，线程安全 */
+        fun evalExpression(expression: String, variables: Map<String, Any?>): Double {
+            return JsCalculator.evaluate(expression, variables)
+        }
+
         /** 获取变量值 */
         fun getVariable(name: String): Double? {
             return try {
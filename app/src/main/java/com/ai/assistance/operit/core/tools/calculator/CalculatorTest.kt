@@ -1,5 +1,9 @@
 package com.ai.assistance.operit.core.tools.calculator
 
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
 /**
  * 计算器测试类
  *
@@ -35,6 +39,11 @@ class CalculatorTest {
             // 清理
             JsCalculator.clearVariables()
 
+            // 编译与并发
+            testConstantFolding()
+            testThroughput()
+            testThreadSafety()
+
             println("所有测试完成!")
         }
 
@@ -53,6 +62,94 @@ class CalculatorTest {
             }
         }
 
+        /** 常量子表达式在编译期折叠，变量表达式保留槽位 */
+        private fun testConstantFolding() {
+            val constant = ExpressionCompiler.compile("2 * (3 + 4) ** 2 - sqrt(16)")
+            val variable = ExpressionCompiler.compile("x * (3 + 4)")
+            if (constant.isConstant && !variable.isConstant && variable.variableNames == listOf("x")) {
+                println("测试通过: 常量折叠")
+            } else {
+                println("测试失败: 常量折叠 constant=${constant.isConstant}, slots=${variable.variableNames}")
+            }
+        }
+
+        /** 对比逐次解析执行语法树与复用编译结果的吞吐量 */
+        private fun testThroughput() {
+            val expression = "x * x + 3 * x - y / 2 > 10 ? max(x, y) : abs(x - y)"
+            val iterations = 200_000
+
+            var checksum = 0.0
+            JsCalculator.setVariable("x", 0.0)
+            JsCalculator.setVariable("y", 7.0)
+            val treeStart = System.nanoTime()
+            for (i in 0 until iterations / 10) {
+                JsCalculator.setVariable("x", (i % 100).toDouble())
+                checksum += ExpressionParser(expression).parse().evaluate()
+            }
+            val treeNs = (System.nanoTime() - treeStart) * 10
+            JsCalculator.clearVariables()
+
+            val compiled = ExpressionCompiler.compile(expression)
+            val frame = compiled.newFrame()
+            val xSlot = frame.slotOf("x")
+            val ySlot = frame.slotOf("y")
+            val compiledStart = System.nanoTime()
+            for (i in 0 until iterations) {
+                frame.set(xSlot, (i % 100).toDouble()).set(ySlot, 7.0)
+                checksum += compiled.evaluate(frame)
+            }
+            val compiledNs = System.nanoTime() - compiledStart
+
+            println(
+                    "吞吐量: 解析+树遍历 ${iterations * 1_000_000_000L / treeNs} 次/秒, " +
+                            "编译后 ${iterations * 1_000_000_000L / compiledNs} 次/秒 (checksum=$checksum)"
+            )
+            if (compiledNs < treeNs) {
+                println("测试通过: 编译后吞吐量更高")
+            } else {
+                println("测试失败: 编译后吞吐量没有提升")
+            }
+        }
+
+        /** 多个线程用不同变量同时计算同一表达式，结果互不干扰 */
+        private fun testThreadSafety() {
+            val expression = "x * 2 + y"
+            val threads = 8
+            val iterations = 20_000
+            val failures = AtomicInteger()
+            val start = CountDownLatch(1)
+
+            val workers =
+                    (0 until threads).map { t ->
+                        thread {
+                            start.await()
+                            for (i in 0 until iterations) {
+                                val x = (t * iterations + i).toDouble()
+                                val result =
+                                        Calculator.evalExpression(
+                                                expression,
+                                                mapOf("x" to x, "y" to t.toDouble())
+                                        )
+                                if (result != x * 2 + t) failures.incrementAndGet()
+                            }
+                        }
+                    }
+            start.countDown()
+            workers.forEach { it.join() }
+
+            // 赋值只写入各自的调用上下文
+            val compiled = ExpressionCompiler.compile("a = x * 2")
+            val frame = compiled.newFrame().set("x", 4.0)
+            compiled.evaluate(frame)
+            val leaked = Calculator.getVariable("a") != null
+
+            if (failures.get() == 0 && frame.get("a") == 8.0 && !leaked) {
+                println("测试通过: $threads 个线程并发计算 ${threads * iterations} 次")
+            } else {
+                println("测试失败: 并发计算出错 ${failures.get()} 次, leaked=$leaked")
+            }
+        }
+
         /** 主函数，用于直接运行测试 */
         @JvmStatic
         fun main(args: Array<String>) {
@@ -0,0 +1,127 @@
+package com.ai.assistance.operit.core.tools.calculator
+
+/**
+ * 编译后的表达式
+ *
+ * 由 [ExpressionCompiler] 从语法树生成：操作符已解析为操作码、常量子树已折叠、
+ * 变量引用已替换为槽位下标。自身不可变，可被多个线程同时使用；
+ * 变量值保存在每次调用各自的 [ExpressionFrame] 中，互不干扰。
+ */
+class CompiledExpression internal constructor(
+        val source: String,
+        private val root: CompiledNode,
+        private val slotNames: Array<String>
+) {
+    /** 表达式引用的变量名，下标即槽位 */
+    val variableNames: List<String>
+        get() = slotNames.asList()
+
+    /** 是否已被折叠为常量 */
+    val isConstant: Boolean
+        get() = root is ConstNode
+
+    /** 创建一个新的调用上下文，PI/E 预先绑定为常量 */
+    fun newFrame(): ExpressionFrame {
+        val frame = ExpressionFrame(slotNames)
+        frame.bindBuiltins()
+        return frame
+    }
+
+    /** 在给定上下文中求值，不分配额外对象（模板字符串与变参函数除外） */
+    fun evaluate(frame: ExpressionFrame): Double {
+        require(frame.names === slotNames) { "Frame does not belong to this expression" }
+        return root.eval(frame)
+    }
+
+    /** 使用一组变量求值，不读写全局 [ExpressionContext] */
+    fun evaluate(variables: Map<String, Any?>): Double {
+        val frame = newFrame()
+        for ((name, value) in variables) {
+            frame.set(name, value)
+        }
+        return root.eval(frame)
+    }
+}
+
+/**
+ * 单次调用的变量上下文
+ *
+ * 每个槽位对应 [CompiledExpression.variableNames] 中的一个变量。非线程安全，
+ * 同一线程可通过 [reset] 后重复使用以避免分配。
+ */
+class ExpressionFrame internal constructor(internal val names: Array<String>) {
+    internal val values = DoubleArray(names.size)
+    // 列表或字符串变量的原始值，供下标访问使用
+    internal val raw = arrayOfNulls<Any>(names.size)
+    internal val defined = BooleanArray(names.size)
+    // 被表达式中的赋值修改过的槽位
+    internal val dirty = BooleanArray(names.size)
+
+    /** 按变量名绑定值，表达式未引用的变量会被忽略 */
+    fun set(name: String, value: Any?): ExpressionFrame {
+        val slot = slotOf(name)
+        if (slot >= 0) bind(slot, value)
+        return this
+    }
+
+    /** 按槽位绑定数值 */
+    fun set(slot: Int, value: Double): ExpressionFrame {
+        values[slot] = value
+        raw[slot] = null
+        defined[slot] = true
+        return this
+    }
+
+    /** 读取变量当前值，未定义时返回 null */
+    fun get(name: String): Double? {
+        val slot = slotOf(name)
+        return if (slot >= 0 && defined[slot]) values[slot] else null
+    }
+
+    /** 变量名对应的槽位，不存在返回 -1 */
+    fun slotOf(name: String): Int {
+        for (i in names.indices) {
+            if (names[i] == name) return i
+        }
+        return -1
+    }
+
+    /** 清空所有绑定，以便复用 */
+    fun reset(): ExpressionFrame {
+        for (i in names.indices) {
+            values[i] = 0.0
+            raw[i] = null
+            defined[i] = false
+            dirty[i] = false
+        }
+        bindBuiltins()
+        return this
+    }
+
+    internal fun bind(slot: Int, value: Any?) {
+        values[slot] = ExpressionContext.coerceToNumber(value)
+        raw[slot] = if (value is List<*> || value is String) value else null
+        defined[slot] = true
+    }
+
+    internal fun bindBuiltins() {
+        for (i in names.indices) {
+            when (names[i]) {
+                "PI" -> set(i, Math.PI)
+                "E" -> set(i, Math.E)
+            }
+        }
+    }
+
+    internal fun read(slot: Int): Double {
+        if (!defined[slot]) throw IllegalArgumentException("Variable ${names[slot]} not defined")
+        return values[slot]
+    }
+
+    internal fun write(slot: Int, value: Double) {
+        values[slot] = value
+        raw[slot] = null
+        defined[slot] = true
+        dirty[slot] = true
+    }
+}
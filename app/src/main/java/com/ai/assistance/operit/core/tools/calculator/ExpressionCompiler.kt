@@ -0,0 +1,396 @@
+package com.ai.assistance.operit.core.tools.calculator
+
+/**
+ * 表达式编译器
+ *
+ * 把 [ExpressionParser] 生成的语法树转换为 [CompiledExpression]，并按表达式文本缓存结果，
+ * 相同的表达式只解析、编译一次。
+ */
+object ExpressionCompiler {
+    private const val MAX_CACHED_EXPRESSIONS = 256
+
+    private val cache =
+            object : LinkedHashMap<String, CompiledExpression>(64, 0.75f, true) {
+                override fun removeEldestEntry(
+                        eldest: MutableMap.MutableEntry<String, CompiledExpression>
+                ): Boolean = size > MAX_CACHED_EXPRESSIONS
+            }
+
+    // JavaScript 关键字在编译期直接替换为常量
+    private val KEYWORDS =
+            mapOf(
+                    "true" to 1.0,
+                    "false" to 0.0,
+                    "null" to 0.0,
+                    "undefined" to Double.NaN,
+                    "NaN" to Double.NaN,
+                    "Infinity" to Double.POSITIVE_INFINITY
+            )
+
+    // 常量折叠时使用，常量节点不会访问任何槽位
+    private val EMPTY_FRAME = ExpressionFrame(emptyArray())
+
+    /** 编译表达式文本，命中缓存时直接返回 */
+    fun compile(expression: String): CompiledExpression {
+        synchronized(cache) { cache[expression]?.let { return it } }
+        val compiled = compile(expression, ExpressionParser(expression).parse())
+        synchronized(cache) { cache[expression] = compiled }
+        return compiled
+    }
+
+    /** 编译已解析的语法树，不使用缓存 */
+    fun compile(source: String, tree: ExpressionNode): CompiledExpression {
+        val slots = ArrayList<String>()
+        val root = compileNode(tree, slots)
+        return CompiledExpression(source, root, slots.toTypedArray())
+    }
+
+    /** 当前缓存的表达式数量 */
+    fun cacheSize(): Int = synchronized(cache) { cache.size }
+
+    /** 清空编译缓存 */
+    fun clearCache() {
+        synchronized(cache) { cache.clear() }
+    }
+
+    private fun slotOf(name: String, slots: MutableList<String>): Int {
+        val index = slots.indexOf(name)
+        if (index >= 0) return index
+        slots.add(name)
+        return slots.size - 1
+    }
+
+    private fun compileNode(node: ExpressionNode, slots: MutableList<String>): CompiledNode {
+        return when (node) {
+            is NumberNode -> ConstNode(node.value)
+            is VariableNode -> {
+                val keyword = KEYWORDS[node.name]
+                if (keyword != null) ConstNode(keyword) else SlotNode(slotOf(node.name, slots))
+            }
+            is BinaryOperationNode ->
+                    fold(BinaryNode(binaryOpcode(node.operator), compileNode(node.left, slots), compileNode(node.right, slots)))
+            is UnaryOperationNode ->
+                    fold(UnaryNode(unaryOpcode(node.operator), compileNode(node.operand, slots)))
+            is TernaryOperationNode -> {
+                val condition = compileNode(node.condition, slots)
+                val whenTrue = compileNode(node.trueExpression, slots)
+                val whenFalse = compileNode(node.falseExpression, slots)
+                if (condition is ConstNode) {
+                    if (condition.value != 0.0) whenTrue else whenFalse
+                } else {
+                    TernaryNode(condition, whenTrue, whenFalse)
+                }
+            }
+            is FunctionCallNode -> compileCall(node, slots)
+            is AssignmentNode -> AssignNode(slotOf(node.variableName, slots), compileNode(node.value, slots))
+            is CompoundAssignmentNode ->
+                    CompoundAssignNode(
+                            compoundOpcode(node.operator),
+                            slotOf(node.variableName, slots),
+                            compileNode(node.value, slots)
+                    )
+            is ArrayAccessNode -> {
+                val array = node.array
+                if (array is VariableNode) {
+                    VariableElementNode(slotOf(array.name, slots), array.name, compileNode(node.index, slots))
+                } else {
+                    ValueElementNode(compileNode(array, slots), compileNode(node.index, slots))
+                }
+            }
+            is TemplateStringNode ->
+                    TemplateNode(
+                            node.parts
+                                    .map { part -> if (part is ExpressionNode) compileNode(part, slots) else part.toString() }
+                                    .toTypedArray()
+                    )
+        }
+    }
+
+    private fun compileCall(node: FunctionCallNode, slots: MutableList<String>): CompiledNode {
+        val args = node.arguments.map { compileNode(it, slots) }.toTypedArray()
+        val opcode = functionOpcode(node.name, args.size)
+        if (opcode < 0) return CallNode(node.name, args)
+        val call = MathCallNode(opcode, args)
+        return if (opcode < FN_RANDOM) fold(call) else call
+    }
+
+    /** 子节点全为常量时预先求值；求值出错则保留原节点，让错误在运行时抛出 */
+    private fun fold(node: CompiledNode): CompiledNode {
+        val constant =
+                when (node) {
+                    is BinaryNode -> node.left is ConstNode && node.right is ConstNode
+                    is UnaryNode -> node.operand is ConstNode
+                    is MathCallNode -> node.args.all { it is ConstNode }
+                    else -> false
+                }
+        if (!constant) return node
+        return try {
+            ConstNode(node.eval(EMPTY_FRAME))
+        } catch (e: Exception) {
+            node
+        }
+    }
+}
+
+// 二元操作码
+private const val OP_ADD = 0
+private const val OP_SUB = 1
+private const val OP_MUL = 2
+private const val OP_DIV = 3
+private const val OP_POW = 4
+private const val OP_MOD = 5
+private const val OP_EQ = 6
+private const val OP_NE = 7
+private const val OP_GT = 8
+private const val OP_GE = 9
+private const val OP_LT = 10
+private const val OP_LE = 11
+private const val OP_AND = 12
+private const val OP_OR = 13
+
+// 一元操作码
+private const val OP_PLUS = 0
+private const val OP_NEG = 1
+private const val OP_NOT = 2
+
+// 内置函数操作码，小于 FN_RANDOM 的为纯函数，可参与常量折叠
+private const val FN_ABS = 0
+private const val FN_SQRT = 1
+private const val FN_SIN = 2
+private const val FN_COS = 3
+private const val FN_TAN = 4
+private const val FN_ASIN = 5
+private const val FN_ACOS = 6
+private const val FN_ATAN = 7
+private const val FN_LOG = 8
+private const val FN_LN = 9
+private const val FN_ROUND = 10
+private const val FN_FLOOR = 11
+private const val FN_CEIL = 12
+private const val FN_POW = 13
+private const val FN_RANDOM = 14
+private const val FN_NOW = 15
+private const val FN_TODAY = 16
+
+private fun binaryOpcode(operator: String): Int =
+        when (operator) {
+            "+" -> OP_ADD
+            "-" -> OP_SUB
+            "*" -> OP_MUL
+            "/" -> OP_DIV
+            "**", "^" -> OP_POW
+            "%" -> OP_MOD
+            "==" -> OP_EQ
+            "!=" -> OP_NE
+            ">" -> OP_GT
+            ">=" -> OP_GE
+            "<" -> OP_LT
+            "<=" -> OP_LE
+            "&&" -> OP_AND
+            "||" -> OP_OR
+            else -> throw IllegalArgumentException("Unknown operator: $operator")
+        }
+
+private fun unaryOpcode(operator: String): Int =
+        when (operator) {
+            "+" -> OP_PLUS
+            "-" -> OP_NEG
+            "!" -> OP_NOT
+            else -> throw IllegalArgumentException("Unknown unary operator: $operator")
+        }
+
+private fun compoundOpcode(operator: String): Int =
+        when (operator) {
+            "+=" -> OP_ADD
+            "-=" -> OP_SUB
+            "*=" -> OP_MUL
+            "/=" -> OP_DIV
+            else -> throw IllegalArgumentException("Unknown compound assignment operator: $operator")
+        }
+
+/** 固定参数个数的内置函数解析为操作码，其余（日期、统计、变参等）返回 -1 交给 [ExpressionContext.callFunction] */
+private fun functionOpcode(name: String, argCount: Int): Int {
+    val opcode =
+            when (name.lowercase().removePrefix("math.")) {
+                "abs" -> FN_ABS
+                "sqrt" -> FN_SQRT
+                "sin" -> FN_SIN
+                "cos" -> FN_COS
+                "tan" -> FN_TAN
+                "asin" -> FN_ASIN
+                "acos" -> FN_ACOS
+                "atan" -> FN_ATAN
+                "log" -> FN_LOG
+                "ln" -> FN_LN
+                "round" -> FN_ROUND
+                "floor" -> FN_FLOOR
+                "ceil" -> FN_CEIL
+                "pow" -> FN_POW
+                "random" -> FN_RANDOM
+                "now" -> FN_NOW
+                "today" -> FN_TODAY
+                else -> return -1
+            }
+    val arity =
+            when (opcode) {
+                FN_POW -> 2
+                FN_RANDOM, FN_NOW, FN_TODAY -> 0
+                else -> 1
+            }
+    return if (argCount == arity) opcode else -1
+}
+
+/** 编译后的节点，求值时只读写传入的 [ExpressionFrame] */
+internal sealed class CompiledNode {
+    abstract fun eval(frame: ExpressionFrame): Double
+}
+
+internal class ConstNode(val value: Double) : CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double = value
+}
+
+internal class SlotNode(private val slot: Int) : CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double = frame.read(slot)
+}
+
+internal class BinaryNode(private val opcode: Int, val left: CompiledNode, val right: CompiledNode) :
+        CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double {
+        val l = left.eval(frame)
+        val r = right.eval(frame)
+        return when (opcode) {
+            OP_ADD -> l + r
+            OP_SUB -> l - r
+            OP_MUL -> l * r
+            OP_DIV -> l / r
+            OP_POW -> Math.pow(l, r)
+            OP_MOD -> l % r
+            OP_EQ -> if (l == r) 1.0 else 0.0
+            OP_NE -> if (l != r) 1.0 else 0.0
+            OP_GT -> if (l > r) 1.0 else 0.0
+            OP_GE -> if (l >= r) 1.0 else 0.0
+            OP_LT -> if (l < r) 1.0 else 0.0
+            OP_LE -> if (l <= r) 1.0 else 0.0
+            OP_AND -> if (l != 0.0 && r != 0.0) 1.0 else 0.0
+            else -> if (l != 0.0 || r != 0.0) 1.0 else 0.0
+        }
+    }
+}
+
+internal class UnaryNode(private val opcode: Int, val operand: CompiledNode) : CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double {
+        val value = operand.eval(frame)
+        return when (opcode) {
+            OP_PLUS -> value
+            OP_NEG -> -value
+            else -> if (value == 0.0) 1.0 else 0.0
+        }
+    }
+}
+
+internal class TernaryNode(
+        private val condition: CompiledNode,
+        private val whenTrue: CompiledNode,
+        private val whenFalse: CompiledNode
+) : CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double =
+            if (condition.eval(frame) != 0.0) whenTrue.eval(frame) else whenFalse.eval(frame)
+}
+
+internal class AssignNode(private val slot: Int, private val value: CompiledNode) : CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double {
+        val result = value.eval(frame)
+        frame.write(slot, result)
+        return result
+    }
+}
+
+internal class CompoundAssignNode(private val opcode: Int, private val slot: Int, private val value: CompiledNode) :
+        CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double {
+        val current = frame.read(slot)
+        val right = value.eval(frame)
+        val result =
+                when (opcode) {
+                    OP_ADD -> current + right
+                    OP_SUB -> current - right
+                    OP_MUL -> current * right
+                    else -> current / right
+                }
+        frame.write(slot, result)
+        return result
+    }
+}
+
+internal class MathCallNode(private val opcode: Int, val args: Array<CompiledNode>) : CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double {
+        return when (opcode) {
+            FN_RANDOM -> Math.random()
+            FN_NOW -> System.currentTimeMillis().toDouble()
+            FN_TODAY -> java.util.concurrent.TimeUnit.MILLISECONDS.toDays(System.currentTimeMillis()).toDouble()
+            FN_POW -> Math.pow(args[0].eval(frame), args[1].eval(frame))
+            else -> {
+                val x = args[0].eval(frame)
+                when (opcode) {
+                    FN_ABS -> Math.abs(x)
+                    FN_SQRT -> Math.sqrt(x)
+                    FN_SIN -> Math.sin(x)
+                    FN_COS -> Math.cos(x)
+                    FN_TAN -> Math.tan(x)
+                    FN_ASIN -> Math.asin(x)
+                    FN_ACOS -> Math.acos(x)
+                    FN_ATAN -> Math.atan(x)
+                    FN_LOG -> Math.log10(x)
+                    FN_LN -> Math.log(x)
+                    FN_ROUND -> Math.round(x).toDouble()
+                    FN_FLOOR -> Math.floor(x)
+                    else -> Math.ceil(x)
+                }
+            }
+        }
+    }
+}
+
+/** 变参或需要特殊处理的函数，回退到 [ExpressionContext.callFunction] */
+internal class CallNode(private val name: String, private val args: Array<CompiledNode>) : CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double {
+        val values = ArrayList<Double>(args.size)
+        for (arg in args) {
+            values.add(arg.eval(frame))
+        }
+        return ExpressionContext.callFunction(name, values)
+    }
+}
+
+internal class VariableElementNode(private val slot: Int, private val name: String, private val index: CompiledNode) :
+        CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double {
+        val i = index.eval(frame).toInt()
+        return ExpressionContext.elementAt(frame.raw[slot], i, name)
+    }
+}
+
+internal class ValueElementNode(private val array: CompiledNode, private val index: CompiledNode) :
+        CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double {
+        val i = index.eval(frame).toInt()
+        val text = array.eval(frame).toString()
+        if (i < 0 || i >= text.length) return Double.NaN
+        return text[i].code.toDouble()
+    }
+}
+
+internal class TemplateNode(private val parts: Array<Any>) : CompiledNode() {
+    override fun eval(frame: ExpressionFrame): Double {
+        val sb = StringBuilder()
+        for (part in parts) {
+            if (part is CompiledNode) sb.append(part.eval(frame).toString()) else sb.append(part)
+        }
+        return try {
+            sb.toString().toDouble()
+        } catch (e: NumberFormatException) {
+            // JS的行为是返回NaN
+            Double.NaN
+        }
+    }
+}
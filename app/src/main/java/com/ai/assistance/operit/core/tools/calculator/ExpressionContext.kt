@@ -2,14 +2,15 @@ package com.ai.assistance.operit.core.tools.calculator
 
 import java.text.SimpleDateFormat
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.TimeUnit
 import kotlin.math.pow
 import kotlin.math.sqrt
 
 /** 表达式计算上下文，用于存储变量和函数 */
 object ExpressionContext {
-    // 变量存储
-    private val variables = mutableMapOf<String, Any>()
+    // 变量存储，可能被多个线程同时读写
+    private val variables = ConcurrentHashMap<String, Any>()
 
     // 常量
     init {
@@ -34,6 +35,9 @@ object ExpressionContext {
         return coerceToNumber(value)
     }
 
+    /** 获取变量的原始值（数字、列表或字符串），未定义时返回 null */
+    fun getRawVariable(name: String): Any? = variables[name]
+
     /** 设置变量值 */
     fun setVariable(name: String, value: Double) {
         variables[name] = value
@@ -70,23 +74,7 @@ object ExpressionContext {
         val indexValue = index.evaluate().toInt()
 
         when (array) {
-            is VariableNode -> {
-                val arrayValue = variables[array.name]
-                when (arrayValue) {
-                    is List<*> -> {
-                        if (indexValue < 0 || indexValue >= arrayValue.size) return Double.NaN
-                        return coerceToNumber(arrayValue[indexValue])
-                    }
-                    is String -> {
-                        if (indexValue < 0 || indexValue >= arrayValue.length) return Double.NaN
-                        return arrayValue[indexValue].code.toDouble()
-                    }
-                    else ->
-                            throw IllegalArgumentException(
-                                    "Value is not an array or string: ${array.name}"
-                            )
-                }
-            }
+            is VariableNode -> return elementAt(variables[array.name], indexValue, array.name)
             else -> {
                 val arrayResult = array.evaluate().toString()
                 if (indexValue < 0 || indexValue >= arrayResult.length) return Double.NaN
@@ -95,6 +83,21 @@ object ExpressionContext {
         }
     }
 
+    /** 读取列表或字符串变量的元素，越界返回NaN */
+    fun elementAt(arrayValue: Any?, indexValue: Int, name: String): Double {
+        when (arrayValue) {
+            is List<*> -> {
+                if (indexValue < 0 || indexValue >= arrayValue.size) return Double.NaN
+                return coerceToNumber(arrayValue[indexValue])
+            }
+            is String -> {
+                if (indexValue < 0 || indexValue >= arrayValue.length) return Double.NaN
+                return arrayValue[indexValue].code.toDouble()
+            }
+            else -> throw IllegalArgumentException("Value is not an array or string: $name")
+        }
+    }
+
     /** 调用函数 */
     fun callFunction(name: String, args: List<Double>): Double {
         return when {
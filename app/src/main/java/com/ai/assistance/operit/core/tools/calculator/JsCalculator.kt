@@ -17,9 +17,35 @@ class JsCalculator {
          */
         fun evaluate(expression: String): Double {
             try {
-                val parser = ExpressionParser(expression)
-                val expressionTree = parser.parse()
-                return expressionTree.evaluate()
+                val compiled = ExpressionCompiler.compile(expression)
+                val frame = compiled.newFrame()
+                for (slot in frame.names.indices) {
+                    val value = ExpressionContext.getRawVariable(frame.names[slot]) ?: continue
+                    frame.bind(slot, value)
+                }
+                val result = compiled.evaluate(frame)
+                // 把表达式中的赋值写回全局上下文
+                for (slot in frame.names.indices) {
+                    if (frame.dirty[slot]) {
+                        ExpressionContext.setVariable(frame.names[slot], frame.values[slot])
+                    }
+                }
+                return result
+            } catch (e: Exception) {
+                throw IllegalArgumentException("Error evaluating expression: ${e.message}", e)
+            }
+        }
+
+        /**
+         * 使用独立的变量集合计算表达式，不读写全局变量，可在多个线程中同时调用
+         *
+         * @param expression 要计算的表达式字符串
+         * @param variables 变量名到值的映射
+         * @return 计算结果
+         */
+        fun evaluate(expression: String, variables: Map<String, Any?>): Double {
+            try {
+                return ExpressionCompiler.compile(expression).evaluate(variables)
             } catch (e: Exception) {
                 throw IllegalArgumentException("Error evaluating expression: ${e.message}", e)
             }
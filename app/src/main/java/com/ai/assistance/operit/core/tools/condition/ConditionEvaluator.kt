@@ -4,6 +4,14 @@ import com.ai.assistance.operit.util.AppLogger
 
 object ConditionEvaluator {
     private const val TAG = "ConditionEvaluator"
+    private const val MAX_CACHED_EXPRESSIONS = 256
+
+    // 按表达式文本缓存解析结果；语法树不可变，可在多线程间共享
+    private val parsedCache =
+        object : LinkedHashMap<String, Expr>(64, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Expr>): Boolean =
+                size > MAX_CACHED_EXPRESSIONS
+        }
 
     fun evaluate(expression: String, capabilities: Map<String, Any?>): Boolean {
         val trimmed = expression.trim()
@@ -12,9 +20,7 @@ object ConditionEvaluator {
         }
 
         return try {
-            val tokens = Tokenizer(trimmed).tokenize()
-            val parser = Parser(tokens)
-            val ast = parser.parseExpression()
+            val ast = parse(trimmed)
             val value = ast.eval(capabilities)
             value.isTruthy()
         } catch (e: Exception) {
@@ -23,6 +29,14 @@ object ConditionEvaluator {
         }
     }
 
+    private fun parse(expression: String): Expr {
+        synchronized(parsedCache) { parsedCache[expression]?.let { return it } }
+        val tokens = Tokenizer(expression).tokenize()
+        val ast = Parser(tokens).parseExpression()
+        synchronized(parsedCache) { parsedCache[expression] = ast }
+        return ast
+    }
+
     private sealed interface Token {
         data class Identifier(val text: String) : Token
         data class StringLiteral(val value: String) : Token
@@ -192,34 +206,37 @@ object ConditionEvaluator {
         }
     }
 
-    private data class BinaryExpr(val left: Expr, val op: String, val right: Expr) : Expr {
+    private enum class BinaryOp {
+        AND, OR, EQ, NE, GT, GE, LT, LE, IN
+    }
+
+    private data class BinaryExpr(val left: Expr, val op: BinaryOp, val right: Expr) : Expr {
         override fun eval(capabilities: Map<String, Any?>): Value {
             return when (op) {
-                "&&" -> {
+                BinaryOp.AND -> {
                     val lv = left.eval(capabilities)
                     if (!lv.isTruthy()) return Value.Bool(false)
                     val rv = right.eval(capabilities)
                     Value.Bool(rv.isTruthy())
                 }
-                "||" -> {
+                BinaryOp.OR -> {
                     val lv = left.eval(capabilities)
                     if (lv.isTruthy()) return Value.Bool(true)
                     val rv = right.eval(capabilities)
                     Value.Bool(rv.isTruthy())
                 }
-                "==" -> Value.Bool(left.eval(capabilities) == right.eval(capabilities))
-                "!=" -> Value.Bool(left.eval(capabilities) != right.eval(capabilities))
-                ">" -> Value.Bool(left.eval(capabilities).compareTo(right.eval(capabilities)) > 0)
-                ">=" -> Value.Bool(left.eval(capabilities).compareTo(right.eval(capabilities)) >= 0)
-                "<" -> Value.Bool(left.eval(capabilities).compareTo(right.eval(capabilities)) < 0)
-                "<=" -> Value.Bool(left.eval(capabilities).compareTo(right.eval(capabilities)) <= 0)
-                "in" -> {
+                BinaryOp.EQ -> Value.Bool(left.eval(capabilities) == right.eval(capabilities))
+                BinaryOp.NE -> Value.Bool(left.eval(capabilities) != right.eval(capabilities))
+                BinaryOp.GT -> Value.Bool(left.eval(capabilities).compareTo(right.eval(capabilities)) > 0)
+                BinaryOp.GE -> Value.Bool(left.eval(capabilities).compareTo(right.eval(capabilities)) >= 0)
+                BinaryOp.LT -> Value.Bool(left.eval(capabilities).compareTo(right.eval(capabilities)) < 0)
+                BinaryOp.LE -> Value.Bool(left.eval(capabilities).compareTo(right.eval(capabilities)) <= 0)
+                BinaryOp.IN -> {
                     val item = left.eval(capabilities)
                     val container = right.eval(capabilities)
                     val ok = (container as? Value.Array)?.items?.any { it == item } == true
                     Value.Bool(ok)
                 }
-                else -> throw IllegalArgumentException("Unsupported operator: $op")
             }
         }
     }
@@ -288,7 +305,7 @@ object ConditionEvaluator {
             var left = parseAnd()
             while (matchOp("||")) {
                 val right = parseAnd()
-                left = BinaryExpr(left, "||", right)
+                left = BinaryExpr(left, BinaryOp.OR, right)
             }
             return left
         }
@@ -297,7 +314,7 @@ object ConditionEvaluator {
             var left = parseEquality()
             while (matchOp("&&")) {
                 val right = parseEquality()
-                left = BinaryExpr(left, "&&", right)
+                left = BinaryExpr(left, BinaryOp.AND, right)
             }
             return left
         }
@@ -306,8 +323,8 @@ object ConditionEvaluator {
             var left = parseRelational()
             while (true) {
                 left = when {
-                    matchOp("==") -> BinaryExpr(left, "==", parseRelational())
-                    matchOp("!=") -> BinaryExpr(left, "!=", parseRelational())
+                    matchOp("==") -> BinaryExpr(left, BinaryOp.EQ, parseRelational())
+                    matchOp("!=") -> BinaryExpr(left, BinaryOp.NE, parseRelational())
                     else -> return left
                 }
             }
@@ -317,11 +334,11 @@ object ConditionEvaluator {
             var left = parseUnary()
             while (true) {
                 left = when {
-                    matchOp(">=") -> BinaryExpr(left, ">=", parseUnary())
-                    matchOp("<=") -> BinaryExpr(left, "<=", parseUnary())
-                    matchOp(">") -> BinaryExpr(left, ">", parseUnary())
-                    matchOp("<") -> BinaryExpr(left, "<", parseUnary())
-                    matchOp("in") -> BinaryExpr(left, "in", parseUnary())
+                    matchOp(">=") -> BinaryExpr(left, BinaryOp.GE, parseUnary())
+                    matchOp("<=") -> BinaryExpr(left, BinaryOp.LE, parseUnary())
+                    matchOp(">") -> BinaryExpr(left, BinaryOp.GT, parseUnary())
+                    matchOp("<") -> BinaryExpr(left, BinaryOp.LT, parseUnary())
+                    matchOp("in") -> BinaryExpr(left, BinaryOp.IN, parseUnary())
                     else -> return left
                 }
             }
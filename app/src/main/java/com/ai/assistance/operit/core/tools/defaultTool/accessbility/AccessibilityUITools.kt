@@ -6,8 +6,8 @@ import com.ai.assistance.operit.util.AppLogger
 import com.ai.assistance.operit.core.tools.SimplifiedUINode
 import com.ai.assistance.operit.core.tools.StringResultData
 import com.ai.assistance.operit.core.tools.UIActionResultData
-import com.ai.assistance.operit.core.tools.UIPageResultData
 import com.ai.assistance.operit.core.tools.defaultTool.standard.StandardUITools
+import com.ai.assistance.operit.core.tools.uihierarchy.UiSnapshot
 import com.ai.assistance.operit.data.model.AITool
 import com.ai.assistance.operit.data.model.ToolResult
 import com.ai.assistance.operit.data.repository.UIHierarchyManager
@@ -97,19 +97,9 @@ open class AccessibilityUITools(context: Context) : StandardUITools(context) {
                 )
             }
 
-            // 解析当前窗口信息
-            val focusInfo = extractFocusInfoFromAccessibility()
-
-            // 简化布局信息
-            val simplifiedLayout = simplifyLayout(uiXml)
-
-            // 创建结构化数据
-            val resultData =
-                    UIPageResultData(
-                            packageName = focusInfo.packageName ?: "Unknown",
-                            activityName = focusInfo.activityName ?: "Unknown",
-                            uiElements = simplifiedLayout
-                    )
+            // 包名直接取自本次XML的根节点，避免再次获取并解析UI层次结构
+            val activityName = UIHierarchyManager.getCurrentActivityName(context) ?: "ForegroundActivity"
+            val resultData = buildPageInfoResult(tool, "accessibility", uiXml, null, activityName, "android")
 
             ToolResult(toolName = tool.name, success = true, result = resultData, error = "")
             }
@@ -124,101 +114,8 @@ open class AccessibilityUITools(context: Context) : StandardUITools(context) {
         }
     }
 
-    /** 从无障碍服务获取焦点信息 */
-    private suspend fun extractFocusInfoFromAccessibility(): FocusInfo {
-        val focusInfo = FocusInfo()
-        try {
-            // 1. 获取UI层次结构的XML快照（带重试）
-            val hierarchyXml = getUIHierarchyWithRetry()
-            if (hierarchyXml.isEmpty()) {
-                AppLogger.w(TAG, "无法获取UI层次结构XML，使用默认值。")
-                focusInfo.packageName = "android"
-                // 即使XML获取失败，仍然尝试获取Activity名称
-                focusInfo.activityName = UIHierarchyManager.getCurrentActivityName(context) ?: "ForegroundActivity"
-                return focusInfo
-            }
-
-            // 2. 从XML中解析包名
-            val (packageName, _) = UIHierarchyManager.extractWindowInfo(hierarchyXml)
-            // 3. 从服务中直接获取当前Activity名称
-            val activityName = UIHierarchyManager.getCurrentActivityName(context)
-
-            focusInfo.packageName = packageName
-            focusInfo.activityName = activityName // 使用从服务获取的Activity名称
-
-            // 如果没有获取到，使用默认值
-            if (focusInfo.packageName == null) focusInfo.packageName = "android"
-            if (focusInfo.activityName == null) focusInfo.activityName = "ForegroundActivity"
-        } catch (e: Exception) {
-            AppLogger.e(TAG, "从XML解析焦点信息时出错", e)
-            // 设置默认值
-            focusInfo.packageName = "android"
-            focusInfo.activityName = "ForegroundActivity"
-        }
-        return focusInfo
-    }
-
     /** 简化XML布局为节点树 */
-    fun simplifyLayout(xml: String): SimplifiedUINode {
-        val factory = XmlPullParserFactory.newInstance().apply { isNamespaceAware = false }
-        val parser = factory.newPullParser().apply { setInput(StringReader(xml)) }
-
-        val nodeStack = mutableListOf<UINode>()
-        var rootNode: UINode? = null
-
-        while (parser.eventType != XmlPullParser.END_DOCUMENT) {
-            when (parser.eventType) {
-                XmlPullParser.START_TAG -> {
-                    if (parser.name == "node") {
-                        val newNode = createNode(parser)
-                        if (rootNode == null) {
-                            rootNode = newNode
-                            nodeStack.add(newNode)
-                        } else {
-                            nodeStack.lastOrNull()?.children?.add(newNode)
-                            nodeStack.add(newNode)
-                        }
-                    }
-                }
-                XmlPullParser.END_TAG -> {
-                    if (parser.name == "node") {
-                        nodeStack.removeLastOrNull()
-                    }
-                }
-            }
-            parser.next()
-        }
-
-        return rootNode?.toUINode()
-                ?: SimplifiedUINode(
-                        className = null,
-                        text = null,
-                        contentDesc = null,
-                        resourceId = null,
-                        bounds = null,
-                        isClickable = false,
-                        children = emptyList()
-                )
-    }
-
-    private fun createNode(parser: XmlPullParser): UINode {
-        // 解析关键属性
-        val className = parser.getAttributeValue(null, "class")?.substringAfterLast('.')
-        val text = parser.getAttributeValue(null, "text")?.replace("&#10;", "\n")
-        val contentDesc = parser.getAttributeValue(null, "content-desc")
-        val resourceId = parser.getAttributeValue(null, "resource-id")
-        val bounds = parser.getAttributeValue(null, "bounds")
-        val isClickable = parser.getAttributeValue(null, "clickable") == "true"
-
-        return UINode(
-                className = className,
-                text = text,
-                contentDesc = contentDesc,
-                resourceId = resourceId,
-                bounds = bounds,
-                isClickable = isClickable
-        )
-    }
+    fun simplifyLayout(xml: String): SimplifiedUINode = UiSnapshot.parse(xml).toSimplifiedUINode()
 
     /** 点击元素 */
     override suspend fun clickElement(tool: AITool): ToolResult {
@@ -7,22 +7,17 @@ import android.content.Context
 import android.graphics.BitmapFactory
 import java.io.File
 import com.ai.assistance.operit.util.AppLogger
-import com.ai.assistance.operit.core.tools.SimplifiedUINode
 import com.ai.assistance.operit.core.tools.StringResultData
 import com.ai.assistance.operit.core.tools.UIActionResultData
-import com.ai.assistance.operit.core.tools.UIPageResultData
 import com.ai.assistance.operit.core.tools.defaultTool.accessbility.AccessibilityUITools
 import com.ai.assistance.operit.core.tools.defaultTool.standard.StandardUITools
 import com.ai.assistance.operit.core.tools.system.AndroidShellExecutor
 import com.ai.assistance.operit.data.model.AITool
 import com.ai.assistance.operit.data.model.ToolResult
 import com.ai.assistance.operit.data.repository.UIHierarchyManager
-import java.io.StringReader
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import org.json.JSONObject
-import org.xmlpull.v1.XmlPullParser
-import org.xmlpull.v1.XmlPullParserFactory
 
 /** 调试级别的UI工具，通过Shell命令实现UI操作，继承无障碍版本 */
 open class DebuggerUITools(context: Context) : AccessibilityUITools(context) {
@@ -557,15 +552,14 @@ open class DebuggerUITools(context: Context) : AccessibilityUITools(context) {
             // 解析当前窗口信息
             val focusInfo = extractFocusInfoFromShell(uiData.windowInfo)
 
-            // 简化布局信息
-            val simplifiedLayout = simplifyLayoutFromXml(uiData.uiXml)
-
-            // 创建结构化数据
+            // 解析布局并与同一显示器的上一次快照比较
             val resultData =
-                    UIPageResultData(
-                            packageName = focusInfo.packageName ?: "Unknown",
-                            activityName = focusInfo.activityName ?: "Unknown",
-                            uiElements = simplifiedLayout
+                    buildPageInfoResult(
+                            tool,
+                            "shell:${displaySourceKey(tool)}",
+                            uiData.uiXml,
+                            focusInfo.packageName,
+                            focusInfo.activityName
                     )
 
             ToolResult(toolName = tool.name, success = true, result = resultData, error = "")
@@ -689,93 +683,6 @@ open class DebuggerUITools(context: Context) : AccessibilityUITools(context) {
         return ""
     }
 
-    /** UI节点数据类，仅在Shell实现中使用 */
-    private data class UINodeShell(
-            val className: String?,
-            val text: String?,
-            val contentDesc: String?,
-            val resourceId: String?,
-            val bounds: String?,
-            val isClickable: Boolean,
-            val children: MutableList<UINodeShell> = mutableListOf()
-    )
-
-    /** 简化布局，从XML中提取UI元素，Shell版本 */
-    private fun simplifyLayoutFromXml(xml: String): SimplifiedUINode {
-        val factory = XmlPullParserFactory.newInstance().apply { isNamespaceAware = false }
-        val parser = factory.newPullParser().apply { setInput(StringReader(xml)) }
-
-        val nodeStack = mutableListOf<UINodeShell>()
-        var rootNode: UINodeShell? = null
-
-        while (parser.eventType != XmlPullParser.END_DOCUMENT) {
-            when (parser.eventType) {
-                XmlPullParser.START_TAG -> {
-                    if (parser.name == "node") {
-                        val newNode = createNodeShell(parser)
-                        if (rootNode == null) {
-                            rootNode = newNode
-                            nodeStack.add(newNode)
-                        } else {
-                            nodeStack.lastOrNull()?.children?.add(newNode)
-                            nodeStack.add(newNode)
-                        }
-                    }
-                }
-                XmlPullParser.END_TAG -> {
-                    if (parser.name == "node") {
-                        nodeStack.removeLastOrNull()
-                    }
-                }
-            }
-            parser.next()
-        }
-
-        // 创建默认根节点，如果解析失败
-        return rootNode?.toUINodeSimplified()
-                ?: SimplifiedUINode(
-                        className = null,
-                        text = null,
-                        contentDesc = null,
-                        resourceId = null,
-                        bounds = null,
-                        isClickable = false,
-                        children = emptyList()
-                )
-    }
-
-    // 转换内部UINodeShell为SimplifiedUINode
-    private fun UINodeShell.toUINodeSimplified(): SimplifiedUINode {
-        return SimplifiedUINode(
-                className = className,
-                text = text,
-                contentDesc = contentDesc,
-                resourceId = resourceId,
-                bounds = bounds,
-                isClickable = isClickable,
-                children = children.map { it.toUINodeSimplified() }
-        )
-    }
-
-    private fun createNodeShell(parser: XmlPullParser): UINodeShell {
-        // 解析关键属性
-        val className = parser.getAttributeValue(null, "class")?.substringAfterLast('.')
-        val text = parser.getAttributeValue(null, "text")?.replace("&#10;", "\n")
-        val contentDesc = parser.getAttributeValue(null, "content-desc")
-        val resourceId = parser.getAttributeValue(null, "resource-id")
-        val bounds = parser.getAttributeValue(null, "bounds")
-        val isClickable = parser.getAttributeValue(null, "clickable") == "true"
-
-        return UINodeShell(
-                className = className,
-                text = text,
-                contentDesc = contentDesc,
-                resourceId = resourceId,
-                bounds = bounds,
-                isClickable = isClickable
-        )
-    }
-
     /** 窗口焦点信息数据类 */
     private data class FocusInfoShell(
             var packageName: String? = null,
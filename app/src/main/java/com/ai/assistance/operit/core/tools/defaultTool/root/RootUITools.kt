@@ -4,21 +4,16 @@ import android.content.ClipData
 import android.content.ClipboardManager
 import android.content.Context
 import com.ai.assistance.operit.util.AppLogger
-import com.ai.assistance.operit.core.tools.SimplifiedUINode
 import com.ai.assistance.operit.core.tools.StringResultData
 import com.ai.assistance.operit.core.tools.UIActionResultData
-import com.ai.assistance.operit.core.tools.UIPageResultData
 import com.ai.assistance.operit.core.tools.defaultTool.admin.AdminUITools
 import com.ai.assistance.operit.core.tools.system.AndroidShellExecutor
 import com.ai.assistance.operit.data.model.AITool
 import com.ai.assistance.operit.data.model.ToolParameter
 import com.ai.assistance.operit.data.model.ToolResult
-import java.io.StringReader
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.withContext
-import org.xmlpull.v1.XmlPullParser
-import org.xmlpull.v1.XmlPullParserFactory
 
 /**
  * Root-level UI tools that use shell commands (uiautomator, input) for robust UI automation.
@@ -361,13 +356,13 @@ open class RootUITools(context: Context) : AdminUITools(context) {
                 )
 
             val focusInfo = extractFocusInfoFromShell(uiData.windowInfo)
-            val simplifiedLayout = simplifyLayoutFromXml(uiData.uiXml)
-
             val resultData =
-                UIPageResultData(
-                    packageName = focusInfo.packageName ?: "Unknown",
-                    activityName = focusInfo.activityName ?: "Unknown",
-                    uiElements = simplifiedLayout
+                buildPageInfoResult(
+                    tool,
+                    "shell:${displaySourceKey(tool)}",
+                    uiData.uiXml,
+                    focusInfo.packageName,
+                    focusInfo.activityName
                 )
 
             ToolResult(toolName = tool.name, success = true, result = resultData, error = "")
@@ -454,62 +449,6 @@ open class RootUITools(context: Context) : AdminUITools(context) {
         return ""
     }
 
-    private data class UINodeShell(
-        val className: String?,
-        val text: String?,
-        val contentDesc: String?,
-        val resourceId: String?,
-        val bounds: String?,
-        val isClickable: Boolean,
-        val children: MutableList<UINodeShell> = mutableListOf()
-    )
-
-    private fun simplifyLayoutFromXml(xml: String): SimplifiedUINode {
-        return try {
-            val factory = XmlPullParserFactory.newInstance().apply { isNamespaceAware = false }
-            val parser = factory.newPullParser().apply { setInput(StringReader(xml)) }
-            val nodeStack = mutableListOf<UINodeShell>()
-            var rootNode: UINodeShell? = null
-
-            while (parser.eventType != XmlPullParser.END_DOCUMENT) {
-                when (parser.eventType) {
-                    XmlPullParser.START_TAG -> {
-                        if (parser.name == "node") {
-                            val newNode = createNodeShell(parser)
-                            if (rootNode == null) {
-                                rootNode = newNode
-                            } else {
-                                nodeStack.lastOrNull()?.children?.add(newNode)
-                            }
-                            nodeStack.add(newNode)
-                        }
-                    }
-                    XmlPullParser.END_TAG -> if (parser.name == "node") nodeStack.removeLastOrNull()
-                }
-                parser.next()
-            }
-            rootNode?.toUINodeSimplified() ?: SimplifiedUINode(null, null, null, null, null, false, emptyList())
-        } catch (e: Exception) {
-            AppLogger.e(TAG, "Error parsing XML layout", e)
-            SimplifiedUINode(null, null, null, null, null, false, emptyList())
-        }
-    }
-
-    private fun UINodeShell.toUINodeSimplified(): SimplifiedUINode = SimplifiedUINode(
-        className, text, contentDesc, resourceId, bounds, isClickable, children.map { it.toUINodeSimplified() }
-    )
-
-    private fun createNodeShell(parser: XmlPullParser): UINodeShell {
-        return UINodeShell(
-            className = parser.getAttributeValue(null, "class")?.substringAfterLast('.'),
-            text = parser.getAttributeValue(null, "text")?.replace("&#10;", "\n"),
-            contentDesc = parser.getAttributeValue(null, "content-desc"),
-            resourceId = parser.getAttributeValue(null, "resource-id"),
-            bounds = parser.getAttributeValue(null, "bounds"),
-            isClickable = parser.getAttributeValue(null, "clickable") == "true"
-        )
-    }
-
     private data class FocusInfoShell(var packageName: String? = null, var activityName: String? = null)
 
     private fun extractFocusInfoFromShell(windowInfo: String): FocusInfoShell {
@@ -0,0 +1,140 @@
+package com.ai.assistance.operit.core.tools.defaultTool.standard
+
+import com.ai.assistance.operit.util.AppLogger
+import java.io.InputStreamReader
+import java.nio.charset.Charset
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import okhttp3.CacheControl
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import okio.BufferedSource
+
+/**
+ * 不经过 WebView 的网页访问
+ *
+ * 用 OkHttp 获取 HTML，在后台线程池上流式提取正文，结果保存到 [WebPageCache]，
+ * 再次访问时用 ETag / Last-Modified 重新验证。
+ * 非 HTML 内容、请求失败以及依赖 JavaScript 渲染的页面返回 null，由调用方回退到 WebView。
+ */
+class HeadlessWebFetcher(
+    private val client: OkHttpClient,
+    private val cache: WebPageCache,
+    private val userAgent: String
+) {
+    companion object {
+        private const val TAG = "HeadlessWebFetcher"
+
+        // 提取在 IO 线程上进行，限制并发数以免同时解析过多大页面
+        private val extractDispatcher = Dispatchers.IO.limitedParallelism(4)
+
+        // 用于查找 <meta charset> 的字节数
+        private const val CHARSET_SNIFF_BYTES = 2048L
+
+        private val META_CHARSET = Regex("""<meta[^>]+charset\s*=\s*["']?([\w-]+)""", RegexOption.IGNORE_CASE)
+    }
+
+    suspend fun fetch(url: String): ExtractedHtmlPage? = withContext(extractDispatcher) {
+        if (!url.startsWith("http://", ignoreCase = true) && !url.startsWith("https://", ignoreCase = true)) {
+            return@withContext null
+        }
+        val cached = cache.get(url)
+        val now = System.currentTimeMillis()
+        if (cached != null && cached.isFresh(now)) {
+            AppLogger.d(TAG, "Cache hit (fresh): $url")
+            return@withContext cached.page
+        }
+
+        val request = Request.Builder()
+            .url(url)
+            .header("User-Agent", userAgent)
+            .header("Accept", "text/html,application/xhtml+xml;q=0.9,text/plain;q=0.8,*/*;q=0.5")
+            .apply {
+                cached?.etag?.let { header("If-None-Match", it) }
+                cached?.lastModified?.let { header("If-Modified-Since", it) }
+            }
+            .build()
+
+        try {
+            client.newCall(request).execute().use { response ->
+                if (response.code == 304 && cached != null) {
+                    AppLogger.d(TAG, "Cache revalidated: $url")
+                    cache.put(cached.copy(storedAt = now, maxAgeMs = maxAgeMs(response.cacheControl)))
+                    return@withContext cached.page
+                }
+                if (!response.isSuccessful) {
+                    AppLogger.d(TAG, "HTTP ${response.code} for $url, falling back to WebView")
+                    return@withContext null
+                }
+                val page = extract(response) ?: return@withContext null
+                if (page.needsJavaScript) {
+                    AppLogger.d(TAG, "Page needs JavaScript, falling back to WebView: $url")
+                    return@withContext null
+                }
+                store(url, page, response, now)
+                page
+            }
+        } catch (e: Exception) {
+            AppLogger.w(TAG, "Headless fetch failed for $url: ${e.message}")
+            // 网络出错时使用已缓存的内容
+            cached?.page
+        }
+    }
+
+    private fun extract(response: Response): ExtractedHtmlPage? {
+        val body = response.body ?: return null
+        val mediaType = body.contentType()
+        val subtype = mediaType?.let { "${it.type}/${it.subtype}".lowercase() }
+        val finalUrl = response.request.url.toString()
+        return when (subtype) {
+            null, "text/html", "application/xhtml+xml" -> {
+                val source = body.source()
+                val charset = mediaType?.charset() ?: sniffCharset(source)
+                InputStreamReader(source.inputStream(), charset).use { reader ->
+                    WebPageExtractor.extract(reader, finalUrl)
+                }
+            }
+            "text/plain" -> ExtractedHtmlPage(
+                url = finalUrl,
+                title = response.request.url.pathSegments.lastOrNull().orEmpty().ifEmpty { "No Title" },
+                content = body.string()
+            )
+            // PDF、图片等交给 WebView
+            else -> null
+        }
+    }
+
+    /** 响应头没有给出编码时，从文档开头的 <meta charset> 判断，默认 UTF-8 */
+    private fun sniffCharset(source: BufferedSource): Charset {
+        val peek = source.peek()
+        peek.request(CHARSET_SNIFF_BYTES)
+        val head = peek.readString(minOf(peek.buffer.size, CHARSET_SNIFF_BYTES), Charsets.ISO_8859_1)
+        val name = META_CHARSET.find(head)?.groupValues?.get(1)
+        return try {
+            if (name != null) Charset.forName(name) else Charsets.UTF_8
+        } catch (e: Exception) {
+            Charsets.UTF_8
+        }
+    }
+
+    private fun store(url: String, page: ExtractedHtmlPage, response: Response, now: Long) {
+        val cacheControl = response.cacheControl
+        if (cacheControl.noStore) return
+        val entry = WebPageCache.Entry(
+            url = url,
+            page = page,
+            etag = response.header("ETag"),
+            lastModified = response.header("Last-Modified"),
+            storedAt = now,
+            maxAgeMs = maxAgeMs(cacheControl)
+        )
+        // 既不能重新验证也没有有效期的内容，缓存了也用不上
+        if (entry.hasValidators || entry.maxAgeMs > 0) {
+            cache.put(entry)
+        }
+    }
+
+    private fun maxAgeMs(cacheControl: CacheControl): Long =
+        if (cacheControl.noCache || cacheControl.maxAgeSeconds <= 0) 0L else cacheControl.maxAgeSeconds * 1000L
+}
@@ -9,6 +9,7 @@ import android.os.IBinder
 import com.ai.assistance.operit.util.AppLogger
 import com.ai.assistance.operit.util.stream.SharedStream
 import com.ai.assistance.operit.core.tools.ChatCreationResultData
+import com.ai.assistance.operit.core.tools.ChatHistorySearchResultData
 import com.ai.assistance.operit.core.tools.ChatListResultData
 import com.ai.assistance.operit.core.tools.ChatServiceStartResultData
 import com.ai.assistance.operit.core.tools.ChatSwitchResultData
@@ -19,6 +20,7 @@ import com.ai.assistance.operit.data.model.InputProcessingState
 import com.ai.assistance.operit.data.model.PromptFunctionType
 import com.ai.assistance.operit.data.model.ToolResult
 import com.ai.assistance.operit.data.preferences.ApiPreferences
+import com.ai.assistance.operit.data.repository.ChatHistoryManager
 import com.ai.assistance.operit.services.ChatServiceCore
 import com.ai.assistance.operit.services.FloatingChatService
 import com.ai.assistance.operit.ui.floating.FloatingMode
@@ -487,6 +489,57 @@ class StandardChatManagerTool(private val context: Context) {
         }
     }
 
+    /**
+     * 跨对话检索历史消息，直接读取本地聊天记录，不需要连接对话服务
+     */
+    suspend fun searchChatHistory(tool: AITool): ToolResult {
+        val query = tool.parameters.find { it.name == "query" }?.value?.trim().orEmpty()
+        return try {
+            if (query.isBlank()) {
+                return ToolResult(
+                    toolName = tool.name,
+                    success = false,
+                    result = ChatHistorySearchResultData(query = query, hits = emptyList()),
+                    error = "缺少参数: query"
+                )
+            }
+            val chatIds = tool.parameters.find { it.name == "chat_id" }?.value
+                ?.split(',')
+                ?.map { it.trim() }
+                ?.filter { it.isNotEmpty() }
+                ?.takeIf { it.isNotEmpty() }
+            val limit = tool.parameters.find { it.name == "limit" }?.value?.trim()?.toIntOrNull()
+                ?.coerceIn(1, 20) ?: 5
+
+            val hits = ChatHistoryManager.getInstance(appContext).searchMessages(query, chatIds, limit)
+            ToolResult(
+                toolName = tool.name,
+                success = true,
+                result = ChatHistorySearchResultData(
+                    query = query,
+                    hits = hits.map { hit ->
+                        ChatHistorySearchResultData.Hit(
+                            chatId = hit.chatId,
+                            chatTitle = hit.chatTitle,
+                            sender = hit.sender,
+                            timestamp = hit.messageTimestamp,
+                            snippet = hit.snippet,
+                            score = hit.score
+                        )
+                    }
+                )
+            )
+        } catch (e: Exception) {
+            AppLogger.e(TAG, "Failed to search chat history", e)
+            ToolResult(
+                toolName = tool.name,
+                success = false,
+                result = ChatHistorySearchResultData(query = query, hits = emptyList()),
+                error = "检索历史对话时发生错误: ${e.message}"
+            )
+        }
+    }
+
     /**
      * 切换对话
      */
@@ -18,28 +18,22 @@ import com.ai.assistance.operit.core.tools.StringResultData
 import com.ai.assistance.operit.data.model.AITool
 import com.ai.assistance.operit.data.model.ToolParameter
 import com.ai.assistance.operit.data.model.ToolResult
-import java.io.BufferedInputStream
-import java.io.BufferedOutputStream
 import java.io.File
-import java.io.FileInputStream
-import java.io.FileOutputStream
 import java.io.IOException
 import java.net.HttpURLConnection
 import java.net.URL
 import java.text.SimpleDateFormat
 import java.util.Date
 import java.util.Locale
-import java.util.zip.ZipEntry
-import java.util.zip.ZipFile
-import java.util.zip.ZipInputStream
-import java.util.zip.ZipOutputStream
 import com.ai.assistance.operit.util.FileUtils
 import com.ai.assistance.operit.util.SyntaxCheckUtil
 import com.ai.assistance.operit.util.PathMapper
 import com.ai.assistance.operit.util.ImagePoolManager
 import com.ai.assistance.operit.util.MediaPoolManager
 import com.ai.assistance.operit.util.HttpMultiPartDownloader
+import com.ai.assistance.operit.util.ParallelZip
 import com.ai.assistance.operit.util.FFmpegUtil
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.async
 import kotlinx.coroutines.awaitAll
@@ -3281,31 +3275,16 @@ open class StandardFileSystemTools(protected val context: Context) {
                 zipDir.mkdirs()
             }
 
-            // Initialize buffer for file operations
-            val buffer = ByteArray(1024)
-
-            ZipOutputStream(BufferedOutputStream(FileOutputStream(destZipFile))).use { zos ->
-                if (sourceFile.isDirectory) {
-                    // For directories, add all files recursively
-                    addDirectoryToZip(sourceFile, sourceFile.name, zos)
-                } else {
-                    // For a single file, add it directly
-                    val entryName = sourceFile.name
-                    zos.putNextEntry(ZipEntry(entryName))
-
-                    FileInputStream(sourceFile).use { fis ->
-                        BufferedInputStream(fis).use { bis ->
-                            var len: Int
-                            while (bis.read(buffer).also { len = it } >
-                                0) {
-                                zos.write(buffer, 0, len)
-                            }
-                        }
-                    }
-
-                    zos.closeEntry()
-                }
+            ToolProgressBus.update(tool.name, -1f, "Preparing to zip...")
+            // 多线程分块压缩；目录以目录名为根，单个文件直接作为条目
+            ParallelZip.compress(sourceFile, destZipFile, includeRoot = true) { progress ->
+                ToolProgressBus.update(
+                    tool.name,
+                    progress.fraction,
+                    "Zipping... (${progress.processedEntries}/${progress.totalEntries})"
+                )
             }
+            ToolProgressBus.update(tool.name, 1f, "Zip completed")
 
             if (destZipFile.exists()) {
                 return ToolResult(
@@ -3329,6 +3308,10 @@ open class StandardFileSystemTools(protected val context: Context) {
                     error = "Failed to create zip file"
                 )
             }
+        } catch (e: CancellationException) {
+            // 未完成的 zip 文件已删除
+            AppLogger.d(TAG, "Zip cancelled: $sourcePath")
+            throw e
         } catch (e: Exception) {
             AppLogger.e(TAG, "Error compressing files", e)
             return ToolResult(
@@ -3337,33 +3320,8 @@ open class StandardFileSystemTools(protected val context: Context) {
                 result = StringResultData(""),
                 error = "Error compressing files: ${e.message}"
             )
-        }
-    }
-
-    /** Helper method to add directory contents to zip */
-    private fun addDirectoryToZip(dir: File, baseName: String, zos: ZipOutputStream) {
-        val buffer = ByteArray(1024)
-        val files = dir.listFiles() ?: return
-
-        for (file in files) {
-            if (file.isDirectory) {
-                addDirectoryToZip(file, "$baseName/${file.name}", zos)
-                continue
-            }
-
-            val entryName = "$baseName/${file.name}"
-            zos.putNextEntry(ZipEntry(entryName))
-
-            FileInputStream(file).use { fis ->
-                BufferedInputStream(fis).use { bis ->
-                    var len: Int
-                    while (bis.read(buffer).also { len = it } > 0) {
-                        zos.write(buffer, 0, len)
-                    }
-                }
-            }
-
-            zos.closeEntry()
+        } finally {
+            ToolProgressBus.clear()
         }
     }
 
@@ -3415,70 +3373,13 @@ open class StandardFileSystemTools(protected val context: Context) {
                 destDir.mkdirs()
             }
 
-            val totalEntries = try {
-                ZipFile(zipFile).use { it.size() }
-            } catch (_: Exception) {
-                null
-            }
-            var processedEntries = 0
-
-            val destDirCanonical = destDir.canonicalPath + File.separator
-            val buffer = ByteArray(64 * 1024)
-
-            ZipInputStream(BufferedInputStream(FileInputStream(zipFile))).use { zis ->
-                var zipEntry: ZipEntry? = zis.nextEntry
-
-                while (zipEntry != null) {
-                    val fileName = zipEntry.name
-                    val newFile = File(destDir, fileName)
-
-                    val newFileCanonical = newFile.canonicalPath
-                    if (!newFileCanonical.startsWith(destDirCanonical)) {
-                        throw SecurityException("Zip entry is outside of the target dir: $fileName")
-                    }
-
-                    // Create parent directories if needed
-                    val parentDir = newFile.parentFile
-                    if (parentDir != null && !parentDir.exists()) {
-                        parentDir.mkdirs()
-                    }
-
-                    if (zipEntry.isDirectory) {
-                        // Create directory if it doesn't exist
-                        if (!newFile.exists()) {
-                            newFile.mkdirs()
-                        }
-                    } else {
-                        // Extract file
-                        FileOutputStream(newFile).use { fos ->
-                            BufferedOutputStream(fos).use { bos ->
-                                var len: Int
-                                while (zis.read(buffer).also {
-                                        len = it
-                                    } > 0) {
-                                    bos.write(buffer, 0, len)
-                                }
-                            }
-                        }
-                    }
-
-                    zis.closeEntry()
-                    processedEntries++
-                    val progress =
-                        if (totalEntries != null && totalEntries > 0) {
-                            (processedEntries.toFloat() / totalEntries.toFloat()).coerceIn(0f, 1f)
-                        } else {
-                            -1f
-                        }
-                    val msg =
-                        if (totalEntries != null && totalEntries > 0) {
-                            "Unzipping... ($processedEntries/$totalEntries)"
-                        } else {
-                            "Unzipping..."
-                        }
-                    ToolProgressBus.update(tool.name, progress, msg)
-                    zipEntry = zis.nextEntry
-                }
+            // 通过中央目录并行解压，每个条目都校验不会写到目标目录之外
+            ParallelZip.extract(zipFile, destDir) { progress ->
+                ToolProgressBus.update(
+                    tool.name,
+                    progress.fraction,
+                    "Unzipping... (${progress.processedEntries}/${progress.totalEntries})"
+                )
             }
 
             ToolProgressBus.update(tool.name, 1f, "Unzip completed")
@@ -3495,6 +3396,10 @@ open class StandardFileSystemTools(protected val context: Context) {
                 ),
                 error = ""
             )
+        } catch (e: CancellationException) {
+            // 已解压的文件保留，正在写入的文件已删除
+            AppLogger.d(TAG, "Unzip cancelled: $zipPath")
+            throw e
         } catch (e: Exception) {
             AppLogger.e(TAG, "Error extracting zip file", e)
             return ToolResult(
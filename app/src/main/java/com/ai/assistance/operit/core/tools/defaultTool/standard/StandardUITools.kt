@@ -11,12 +11,16 @@ import com.ai.assistance.operit.core.config.FunctionalPrompts
 import com.ai.assistance.operit.core.tools.AutomationExecutionResult
 import com.ai.assistance.operit.core.tools.SimplifiedUINode
 import com.ai.assistance.operit.core.tools.StringResultData
+import com.ai.assistance.operit.core.tools.ToolResultData
+import com.ai.assistance.operit.core.tools.UIPageDiffResultData
 import com.ai.assistance.operit.core.tools.UIPageResultData
 import com.ai.assistance.operit.core.tools.AppListData
 import com.ai.assistance.operit.core.tools.defaultTool.ToolGetter
 import com.ai.assistance.operit.core.tools.system.MediaProjectionCaptureManager
 import com.ai.assistance.operit.core.tools.system.MediaProjectionHolder
 import com.ai.assistance.operit.core.tools.system.ScreenCaptureActivity
+import com.ai.assistance.operit.core.tools.uihierarchy.UiSnapshot
+import com.ai.assistance.operit.core.tools.uihierarchy.UiSnapshotCache
 import kotlinx.coroutines.delay
 import com.ai.assistance.operit.data.model.AITool
 import com.ai.assistance.operit.data.model.FunctionType
@@ -341,6 +345,84 @@ open class StandardUITools(protected val context: Context) : ToolImplementations
             var activityName: String? = null
     )
 
+    /**
+     * 通过快照缓存构建页面信息结果。
+     * 默认返回完整的 [UIPageResultData]；当工具参数 diff=true 且 base_version 指向同一来源仍保留的快照时，
+     * 只返回相对该快照发生变化的子树（[UIPageDiffResultData]）。base_version 缺失、已被淘汰或变化过大时返回全量，
+     * 并附带快照版本供下一次调用使用。差异基准由调用方给出，其他调用方（UI调试器、附件截取）的获取不会影响它。
+     *
+     * @param source 快照来源标识，不同获取方式/显示器的快照互不比较
+     * @param packageName 已知的包名；为null时使用XML根节点的包名，两者都没有时使用 [fallbackPackageName]
+     */
+    protected fun buildPageInfoResult(
+            tool: AITool,
+            source: String,
+            uiXml: String,
+            packageName: String?,
+            activityName: String?,
+            fallbackPackageName: String = "Unknown"
+    ): ToolResultData {
+        val update = UiSnapshotCache.update(source, uiXml)
+        val snapshot = update.snapshot
+        val resolvedPackage = packageName ?: snapshot.packageName ?: fallbackPackageName
+        val resolvedActivity = activityName ?: "Unknown"
+        val wantDiff = tool.parameters.find { it.name == "diff" }?.value?.toBoolean() ?: false
+        val fullResult =
+                UIPageResultData(
+                        packageName = resolvedPackage,
+                        activityName = resolvedActivity,
+                        uiElements = snapshot.toSimplifiedUINode(),
+                        snapshotVersion = if (wantDiff) snapshot.version else null
+                )
+        val fullBytes = fullResult.toString().toByteArray().size
+
+        val baseVersion = tool.parameters.find { it.name == "base_version" }?.value?.trim()?.toLongOrNull()
+        val diff = if (wantDiff && baseVersion != null) update.diffFrom(baseVersion) else null
+        if (diff == null || diff.isFull) {
+            UiSnapshotCache.recordPayload(update, fullBytes, fullBytes, 1)
+            return fullResult
+        }
+
+        val previous = update.snapshotAt(diff.baseVersion)
+        val diffResult =
+                UIPageDiffResultData(
+                        packageName = resolvedPackage,
+                        activityName = resolvedActivity,
+                        baseVersion = diff.baseVersion,
+                        version = diff.version,
+                        changedSubtrees = diff.changedRoots.map { snapshot.toSimplifiedUINode(it) },
+                        removedNodes =
+                                if (previous == null) emptyList()
+                                else diff.removedRoots.map { describeNode(previous, it) }
+                )
+        UiSnapshotCache.recordPayload(
+                update,
+                fullBytes,
+                diffResult.toString().toByteArray().size,
+                diff.changedRoots.size
+        )
+        return diffResult
+    }
+
+    /** 快照来源中的显示器标识，未指定 display 参数时为 "default" */
+    protected fun displaySourceKey(tool: AITool): String =
+            tool.parameters
+                    .find { it.name.equals("display", ignoreCase = true) }
+                    ?.value
+                    ?.trim()
+                    ?.takeIf { it.isNotEmpty() }
+                    ?: "default"
+
+    private fun describeNode(snapshot: UiSnapshot, index: Int): String {
+        val sb = StringBuilder()
+        snapshot.className(index)?.let { sb.append("[$it] ") }
+        snapshot.text(index)?.takeIf { it.isNotBlank() }?.let { sb.append("T: \"${it.take(30)}\" ") }
+        snapshot.contentDesc(index)?.takeIf { it.isNotBlank() }?.let { sb.append("D: \"$it\" ") }
+        snapshot.resourceId(index)?.takeIf { it.isNotBlank() }?.let { sb.append("ID: $it ") }
+        snapshot.boundsString(index)?.let { sb.append("⮞ $it") }
+        return sb.toString().trimEnd()
+    }
+
     /** Simulates a tap/click at specific coordinates */
     override suspend fun tap(tool: AITool): ToolResult {
             return ToolResult(
@@ -67,6 +67,7 @@ import com.ai.assistance.operit.core.tools.VisitWebResultData
 import com.ai.assistance.operit.data.model.AITool
 import com.ai.assistance.operit.data.model.ToolResult
 import com.ai.assistance.operit.data.model.ToolValidationResult
+import java.io.File
 import java.util.UUID
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.TimeUnit
@@ -90,6 +91,12 @@ class StandardWebVisitTool(private val context: Context) : ToolExecutor {
         
         // Cache to store visit results
         private val visitCache = ConcurrentHashMap<String, VisitWebResultData>()
+
+        private const val PAGE_CACHE_DIR = "web_visit_cache"
+
+        // 进程内共享的磁盘缓存
+        @Volatile
+        private var sharedPageCache: WebPageCache? = null
     }
 
     // 创建OkHttpClient实例，配置超时
@@ -99,6 +106,13 @@ class StandardWebVisitTool(private val context: Context) : ToolExecutor {
                     .readTimeout(15, TimeUnit.SECONDS)
                     .build()
 
+    private val pageCache: WebPageCache
+        get() = sharedPageCache ?: synchronized(StandardWebVisitTool::class.java) {
+            sharedPageCache ?: WebPageCache(File(context.cacheDir, PAGE_CACHE_DIR)).also { sharedPageCache = it }
+        }
+
+    private val headlessFetcher by lazy { HeadlessWebFetcher(client, pageCache, USER_AGENT) }
+
     // 存储WebView引用，用于在不同方法间共享
     private var webViewReference: WebView? = null
     private var overlayWindowManager: WindowManager? = null
@@ -126,12 +140,13 @@ class StandardWebVisitTool(private val context: Context) : ToolExecutor {
                     return ToolResult(tool.name, false, StringResultData(""), "Invalid link number.")
                 }
                 
-                val cachedVisit = visitCache[visitKey]
-                if (cachedVisit == null) {
+                // 内存中没有时查找磁盘缓存（应用重启前的访问）
+                val cachedLinks = visitCache[visitKey]?.links ?: pageCache.getVisit(visitKey)?.links
+                if (cachedLinks == null) {
                     return ToolResult(tool.name, false, StringResultData(""), "Invalid visit key.")
                 }
 
-                val link = cachedVisit.links.getOrNull(linkNumber - 1)
+                val link = cachedLinks.getOrNull(linkNumber - 1)
                 if (link == null) {
                     return ToolResult(tool.name, false, StringResultData(""), "Link number out of bounds.")
                 }
@@ -295,6 +310,21 @@ class StandardWebVisitTool(private val context: Context) : ToolExecutor {
 
     /** Visit web page and extract content */
     private fun visitWebPage(url: String): VisitWebResultData {
+        // 先直接获取并提取 HTML，依赖 JavaScript 渲染的页面才使用 WebView
+        val page = runBlocking { headlessFetcher.fetch(url) }
+        if (page != null) {
+            return rememberVisit(
+                    VisitWebResultData(
+                            url = url,
+                            title = page.title,
+                            content = page.content,
+                            metadata = page.metadata,
+                            links = page.links,
+                            visitKey = UUID.randomUUID().toString()
+                    )
+            )
+        }
+
         // Use WebView to visit the page and extract content
         val extractedJson = runBlocking { loadWebPageAndExtractContent(url) }
 
@@ -367,8 +397,7 @@ class StandardWebVisitTool(private val context: Context) : ToolExecutor {
                     links = result.links.map { VisitWebResultData.LinkData(it.url, it.text) },
                     visitKey = visitKey
             )
-            visitCache[visitKey] = resultData
-            resultData
+            rememberVisit(resultData)
         } catch (e: Exception) {
             AppLogger.e(TAG, "Error parsing extracted web content", e)
             // Fallback for old format or error
@@ -376,6 +405,14 @@ class StandardWebVisitTool(private val context: Context) : ToolExecutor {
         }
     }
 
+    /** 保存访问结果，供之后按 visit_key 和链接序号访问 */
+    private fun rememberVisit(result: VisitWebResultData): VisitWebResultData {
+        val visitKey = result.visitKey ?: return result
+        visitCache[visitKey] = result
+        pageCache.putVisit(visitKey, WebPageCache.VisitRecord(result.url, result.title, result.links))
+        return result
+    }
+
     /** 使用WebView加载页面并提取内容 */
     private suspend fun loadWebPageAndExtractContent(url: String): String {
         return suspendCancellableCoroutine { continuation ->
@@ -42,7 +42,7 @@ class StandardWorkflowTools(private val context: Context) {
      */
     suspend fun getAllWorkflows(tool: AITool): ToolResult {
         return try {
-            val result = workflowRepository.getAllWorkflows()
+            val result = workflowRepository.getWorkflowSummaries()
             
             if (result.isSuccess) {
                 val workflows = result.getOrNull() ?: emptyList()
@@ -55,8 +55,8 @@ class StandardWorkflowTools(private val context: Context) {
                                 id = workflow.id,
                                 name = workflow.name,
                                 description = workflow.description,
-                                nodeCount = workflow.nodes.size,
-                                connectionCount = workflow.connections.size,
+                                nodeCount = workflow.nodeCount,
+                                connectionCount = workflow.connectionCount,
                                 enabled = workflow.enabled,
                                 createdAt = workflow.createdAt,
                                 updatedAt = workflow.updatedAt,
@@ -0,0 +1,151 @@
+package com.ai.assistance.operit.core.tools.defaultTool.standard
+
+import com.ai.assistance.operit.core.tools.VisitWebResultData
+import com.ai.assistance.operit.util.AppLogger
+import java.io.File
+import java.security.MessageDigest
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+
+/**
+ * 网页内容的磁盘缓存
+ *
+ * 按 URL 保存提取后的页面和响应的 ETag / Last-Modified，再次访问时带条件请求重新验证，
+ * 服务器返回 304 即直接使用缓存内容。另外按访问键保存每次访问的链接列表，
+ * 应用重启后仍可通过 visit_key + link_number 访问之前的链接。
+ *
+ * 总大小超过 [maxBytes] 时按最近使用时间淘汰（读取时更新文件修改时间）。
+ */
+class WebPageCache(private val directory: File, private val maxBytes: Long = DEFAULT_MAX_BYTES) {
+
+    /** 一个缓存的页面 */
+    @Serializable
+    data class Entry(
+        val url: String,
+        val page: ExtractedHtmlPage,
+        val etag: String? = null,
+        val lastModified: String? = null,
+        val storedAt: Long = 0L,
+        val maxAgeMs: Long = 0L
+    ) {
+        /** 在 Cache-Control: max-age 内，无需重新验证 */
+        fun isFresh(now: Long): Boolean = now - storedAt < maxAgeMs
+
+        val hasValidators: Boolean
+            get() = etag != null || lastModified != null
+    }
+
+    /** 一次访问的结果，用于按序号访问其中的链接 */
+    @Serializable
+    data class VisitRecord(
+        val url: String,
+        val title: String,
+        val links: List<VisitWebResultData.LinkData> = emptyList()
+    )
+
+    companion object {
+        private const val TAG = "WebPageCache"
+        const val DEFAULT_MAX_BYTES = 32L * 1024 * 1024
+
+        // 淘汰到上限的 90%，避免每次写入都触发淘汰
+        private const val EVICT_TARGET_RATIO = 0.9
+
+        private const val PAGE_PREFIX = "page_"
+        private const val VISIT_PREFIX = "visit_"
+        private const val SUFFIX = ".json"
+    }
+
+    private val json = Json { ignoreUnknownKeys = true }
+
+    private val lock = Any()
+
+    // 目录中缓存文件的总大小，首次写入时统计
+    private var totalBytes = -1L
+
+    fun get(url: String): Entry? {
+        val entry = read<Entry>(pageFile(url)) ?: return null
+        // 文件名是哈希，核对 URL 防止冲突
+        return entry.takeIf { it.url == url }
+    }
+
+    fun put(entry: Entry) = write(pageFile(entry.url), json.encodeToString(entry))
+
+    fun getVisit(visitKey: String): VisitRecord? = read(visitFile(visitKey))
+
+    fun putVisit(visitKey: String, record: VisitRecord) = write(visitFile(visitKey), json.encodeToString(record))
+
+    /** 当前缓存占用的字节数 */
+    fun size(): Long = synchronized(lock) { countedBytes() }
+
+    private inline fun <reified T> read(file: File): T? {
+        if (!file.exists()) return null
+        return try {
+            val value = json.decodeFromString<T>(file.readText())
+            file.setLastModified(System.currentTimeMillis())
+            value
+        } catch (e: Exception) {
+            AppLogger.w(TAG, "Dropping unreadable cache file ${file.name}: ${e.message}")
+            synchronized(lock) {
+                if (totalBytes >= 0) totalBytes -= file.length()
+                file.delete()
+            }
+            null
+        }
+    }
+
+    private fun write(file: File, content: String) {
+        synchronized(lock) {
+            try {
+                countedBytes()
+                directory.mkdirs()
+                val previous = if (file.exists()) file.length() else 0L
+                val temp = File(directory, file.name + ".tmp")
+                temp.writeText(content)
+                if (!temp.renameTo(file)) {
+                    file.delete()
+                    temp.renameTo(file)
+                }
+                totalBytes += file.length() - previous
+                if (totalBytes > maxBytes) evict()
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "Failed to write cache file ${file.name}", e)
+            }
+        }
+    }
+
+    private fun countedBytes(): Long {
+        if (totalBytes < 0) {
+            totalBytes = cacheFiles().sumOf { it.length() }
+        }
+        return totalBytes
+    }
+
+    /** 按修改时间从旧到新删除，直到低于上限的 90% */
+    private fun evict() {
+        val target = (maxBytes * EVICT_TARGET_RATIO).toLong()
+        val files = cacheFiles().map { Triple(it, it.lastModified(), it.length()) }.sortedBy { it.second }
+        var total = files.sumOf { it.third }
+        var removed = 0
+        for ((file, _, length) in files) {
+            if (total <= target) break
+            if (file.delete()) {
+                total -= length
+                removed++
+            }
+        }
+        totalBytes = total
+        AppLogger.d(TAG, "Evicted $removed cache files, ${total / 1024} KB left")
+    }
+
+    private fun cacheFiles(): List<File> =
+        directory.listFiles { file -> file.isFile && file.name.endsWith(SUFFIX) }?.toList() ?: emptyList()
+
+    private fun pageFile(url: String) = File(directory, PAGE_PREFIX + sha1(url) + SUFFIX)
+
+    private fun visitFile(visitKey: String) =
+        File(directory, VISIT_PREFIX + visitKey.filter { it.isLetterOrDigit() || it == '-' } + SUFFIX)
+
+    private fun sha1(value: String): String =
+        MessageDigest.getInstance("SHA-1").digest(value.toByteArray()).joinToString("") { "%02x".format(it) }
+}
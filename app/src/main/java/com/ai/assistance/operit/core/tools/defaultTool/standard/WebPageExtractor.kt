@@ -0,0 +1,532 @@
+package com.ai.assistance.operit.core.tools.defaultTool.standard
+
+import com.ai.assistance.operit.core.tools.VisitWebResultData
+import java.io.Reader
+import java.net.URL
+import kotlinx.serialization.Serializable
+
+/** 无头提取得到的页面内容 */
+@Serializable
+data class ExtractedHtmlPage(
+    val url: String,
+    val title: String,
+    val content: String,
+    val metadata: Map<String, String> = emptyMap(),
+    val links: List<VisitWebResultData.LinkData> = emptyList(),
+    val scriptCount: Int = 0,
+    val hasAppRoot: Boolean = false,
+    val noscriptText: String = ""
+) {
+    /**
+     * 静态 HTML 中几乎没有正文、内容要靠脚本渲染的页面，需要交给 WebView
+     */
+    val needsJavaScript: Boolean
+        get() {
+            val textLength = content.count { !it.isWhitespace() }
+            return when {
+                textLength < 200 && (scriptCount > 0 || hasAppRoot) -> true
+                hasAppRoot && textLength < 500 -> true
+                textLength < 1000 && noscriptText.contains("javascript", ignoreCase = true) -> true
+                else -> false
+            }
+        }
+}
+
+/**
+ * 流式 HTML 正文提取
+ *
+ * 按块读取 HTML，边扫描边输出可读文本、链接和 meta 信息，不建立 DOM 树。
+ * 输出与 WebView 中 document.body.innerText 相近：块级元素换行，连续空白合并，
+ * 脚本、样式、模板等不可见内容跳过。
+ */
+object WebPageExtractor {
+
+    // 与 WebView 提取脚本保留的元数据一致
+    private val METADATA_KEYS = setOf("description", "keywords", "author", "og:title", "og:description")
+
+    // 内容不参与解析的元素
+    private val RAW_TEXT_ELEMENTS = setOf("script", "style", "noscript", "iframe", "xmp", "noembed", "noframes")
+
+    // 内容不可见的元素
+    private val HIDDEN_ELEMENTS = setOf("template", "svg", "canvas", "object", "select", "datalist", "audio", "video")
+
+    // 前后各空一行的块级元素
+    private val PARAGRAPH_ELEMENTS = setOf("p", "h1", "h2", "h3", "h4", "h5", "h6")
+
+    private val BLOCK_ELEMENTS = setOf(
+        "address", "article", "aside", "blockquote", "body", "caption", "dd", "details", "dialog", "div",
+        "dl", "dt", "fieldset", "figcaption", "figure", "footer", "form", "header", "hgroup", "hr", "li",
+        "main", "nav", "ol", "pre", "section", "summary", "table", "tbody", "tfoot", "thead", "tr", "ul"
+    )
+
+    private val VOID_ELEMENTS = setOf(
+        "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr"
+    )
+
+    // 常见前端框架的挂载点
+    private val APP_ROOT_IDS = setOf("root", "app", "__next", "__nuxt", "___gatsby", "svelte")
+
+    private val ENTITIES = mapOf(
+        "amp" to "&", "lt" to "<", "gt" to ">", "quot" to "\"", "apos" to "'", "nbsp" to " ",
+        "copy" to "©", "reg" to "®", "trade" to "™", "hellip" to "…", "mdash" to "—", "ndash" to "–",
+        "lsquo" to "‘", "rsquo" to "’", "ldquo" to "“", "rdquo" to "”", "laquo" to "«", "raquo" to "»",
+        "middot" to "·", "bull" to "•", "times" to "×", "divide" to "÷", "deg" to "°", "euro" to "€",
+        "pound" to "£", "yen" to "¥", "cent" to "¢", "sect" to "§", "para" to "¶", "shy" to "",
+        "zwj" to "", "zwnj" to "", "ensp" to " ", "emsp" to " ", "thinsp" to " "
+    )
+
+    // 不带分号也识别的实体
+    private val LEGACY_ENTITIES = setOf("amp", "lt", "gt", "quot", "nbsp", "copy", "reg")
+
+    private val WHITESPACE = Regex("\\s+")
+
+    private const val MAX_ENTITY_LENGTH = 32
+    private const val MAX_RAW_TEXT_LENGTH = 4096
+
+    /**
+     * 从 [reader] 读取 HTML 并提取内容，相对链接按 [baseUrl] 解析
+     */
+    fun extract(reader: Reader, baseUrl: String): ExtractedHtmlPage = Parser(reader, baseUrl).run()
+
+    private class Parser(private val reader: Reader, private var baseUrl: String) {
+        private val buffer = CharArray(8192)
+        private var position = 0
+        private var limit = 0
+        private var pushback = -1
+
+        private val out = StringBuilder()
+        private var pendingSpace = false
+        private var pendingNewlines = 0
+        private var pendingTab = false
+
+        private var title: String? = null
+        private val metadata = LinkedHashMap<String, String>()
+        private val links = ArrayList<VisitWebResultData.LinkData>()
+        private var scriptCount = 0
+        private var hasAppRoot = false
+        private val noscript = StringBuilder()
+
+        // 正在跳过的不可见元素及其同名嵌套层数
+        private var hiddenName: String? = null
+        private var hiddenDepth = 0
+        private var preDepth = 0
+
+        // 解析相对链接用的基准地址
+        private var base: URL? = null
+
+        // 当前链接
+        private var linkHref: String? = null
+        private var linkStart = 0
+
+        fun run(): ExtractedHtmlPage {
+            while (true) {
+                val c = read()
+                if (c == -1) break
+                if (c == '<'.code) {
+                    markup()
+                } else if (hiddenName == null) {
+                    if (c == '&'.code) text(entity()) else text(c.toChar())
+                }
+            }
+            closeLink()
+            return ExtractedHtmlPage(
+                url = baseUrl,
+                title = title?.trim().orEmpty().ifEmpty { "No Title" },
+                content = out.toString().trim(),
+                metadata = metadata,
+                links = links,
+                scriptCount = scriptCount,
+                hasAppRoot = hasAppRoot,
+                noscriptText = noscript.toString().trim()
+            )
+        }
+
+        private fun read(): Int {
+            if (pushback != -1) {
+                val c = pushback
+                pushback = -1
+                return c
+            }
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.size)
+                position = 0
+                if (limit <= 0) {
+                    limit = 0
+                    return -1
+                }
+            }
+            return buffer[position++].code
+        }
+
+        private fun unread(c: Int) {
+            pushback = c
+        }
+
+        private fun text(s: String) {
+            for (c in s) text(c)
+        }
+
+        private fun text(c: Char) {
+            if (preDepth > 0) {
+                if (hasPending()) flushPending()
+                out.append(if (c == '\u00a0') ' ' else c)
+                return
+            }
+            if (c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\u000c') {
+                pendingSpace = true
+                return
+            }
+            if (hasPending()) flushPending()
+            // 不换行空格不参与合并，输出为普通空格
+            out.append(if (c == '\u00a0') ' ' else c)
+        }
+
+        private fun hasPending() = pendingSpace || pendingNewlines > 0 || pendingTab
+
+        private fun flushPending() {
+            if (out.isNotEmpty()) {
+                when {
+                    pendingNewlines > 0 -> {
+                        trimTrailingSpaces()
+                        repeat(pendingNewlines - trailingNewlines()) { out.append('\n') }
+                    }
+                    pendingTab -> out.append('\t')
+                    pendingSpace && out[out.length - 1] != '\n' -> out.append(' ')
+                }
+            }
+            pendingSpace = false
+            pendingNewlines = 0
+            pendingTab = false
+        }
+
+        private fun trimTrailingSpaces() {
+            var end = out.length
+            while (end > 0 && (out[end - 1] == ' ' || out[end - 1] == '\t')) end--
+            out.setLength(end)
+        }
+
+        private fun trailingNewlines(): Int {
+            var count = 0
+            while (count < out.length && out[out.length - 1 - count] == '\n') count++
+            return count
+        }
+
+        private fun blockBoundary(lines: Int) {
+            pendingNewlines = maxOf(pendingNewlines, lines)
+        }
+
+        private fun markup() {
+            val c = read()
+            when {
+                c == '!'.code -> bang()
+                c == '?'.code -> skipUntil('>')
+                c == '/'.code -> {
+                    val name = tagName(read())
+                    if (name == null) {
+                        skipUntil('>')
+                    } else {
+                        skipUntil('>')
+                        endTag(name)
+                    }
+                }
+                c != -1 && c.toChar().isLetter() -> {
+                    val name = tagName(c)!!
+                    val attributes = HashMap<String, String>()
+                    val selfClosing = attributes(attributes)
+                    startTag(name, attributes, selfClosing)
+                }
+                else -> {
+                    if (hiddenName == null) text('<')
+                    if (c != -1) unread(c)
+                }
+            }
+        }
+
+        /** 注释、DOCTYPE 和 CDATA */
+        private fun bang() {
+            val first = read()
+            if (first == '-'.code) {
+                val second = read()
+                if (second == '-'.code) {
+                    skipUntil("-->")
+                    return
+                }
+                if (second != -1) unread(second)
+            } else if (first != -1) {
+                unread(first)
+            }
+            skipUntil('>')
+        }
+
+        private fun tagName(first: Int): String? {
+            if (first == -1 || !first.toChar().isLetter()) {
+                if (first != -1) unread(first)
+                return null
+            }
+            val name = StringBuilder()
+            var c = first
+            while (c != -1 && !c.toChar().isWhitespace() && c != '>'.code && c != '/'.code) {
+                name.append(c.toChar().lowercaseChar())
+                c = read()
+            }
+            if (c != -1) unread(c)
+            return name.toString()
+        }
+
+        /** 读取属性直到 '>'，返回是否为自闭合标签 */
+        private fun attributes(into: MutableMap<String, String>): Boolean {
+            var selfClosing = false
+            while (true) {
+                var c = read()
+                while (c != -1 && c.toChar().isWhitespace()) c = read()
+                when (c) {
+                    -1, '>'.code -> return selfClosing
+                    '/'.code -> {
+                        selfClosing = true
+                        continue
+                    }
+                }
+                selfClosing = false
+                val name = StringBuilder()
+                while (c != -1 && !c.toChar().isWhitespace() && c != '='.code && c != '>'.code && c != '/'.code) {
+                    name.append(c.toChar().lowercaseChar())
+                    c = read()
+                }
+                while (c != -1 && c.toChar().isWhitespace()) c = read()
+                if (c != '='.code) {
+                    into[name.toString()] = ""
+                    if (c != -1) unread(c)
+                    continue
+                }
+                c = read()
+                while (c != -1 && c.toChar().isWhitespace()) c = read()
+                val value = StringBuilder()
+                if (c == '"'.code || c == '\''.code) {
+                    val quote = c
+                    c = read()
+                    while (c != -1 && c != quote) {
+                        if (c == '&'.code) value.append(entity()) else value.append(c.toChar())
+                        c = read()
+                    }
+                } else {
+                    while (c != -1 && !c.toChar().isWhitespace() && c != '>'.code) {
+                        if (c == '&'.code) value.append(entity()) else value.append(c.toChar())
+                        c = read()
+                    }
+                    if (c != -1) unread(c)
+                }
+                into[name.toString()] = value.toString()
+            }
+        }
+
+        private fun startTag(name: String, attributes: Map<String, String>, selfClosing: Boolean) {
+            if (hiddenName != null) {
+                if (name == hiddenName && !selfClosing) hiddenDepth++
+                if (name in RAW_TEXT_ELEMENTS) skipRawText(name, null)
+                return
+            }
+            when (name) {
+                "title" -> {
+                    val content = StringBuilder()
+                    skipRawText(name, content)
+                    if (title == null) title = decode(content.toString()).replace(WHITESPACE, " ")
+                    return
+                }
+                "script" -> scriptCount++
+                "meta" -> {
+                    val key = attributes["name"] ?: attributes["property"] ?: attributes["itemprop"]
+                    val content = attributes["content"]
+                    if (key != null && content != null && key.lowercase() in METADATA_KEYS) {
+                        metadata.putIfAbsent(key.lowercase(), content.trim())
+                    }
+                }
+                "base" -> attributes["href"]?.let { href ->
+                    resolve(href)?.let {
+                        baseUrl = it
+                        base = null
+                    }
+                }
+                "br" -> {
+                    pendingSpace = false
+                    if (pendingNewlines > 0) flushPending()
+                    out.append('\n')
+                }
+                "a" -> {
+                    closeLink()
+                    linkHref = attributes["href"]
+                    linkStart = out.length
+                }
+            }
+            if (attributes["id"] in APP_ROOT_IDS || "ng-app" in attributes || "data-reactroot" in attributes) {
+                hasAppRoot = true
+            }
+            if (name in RAW_TEXT_ELEMENTS) {
+                if (!selfClosing) skipRawText(name, if (name == "noscript") noscript else null)
+                return
+            }
+            if (selfClosing || name in VOID_ELEMENTS) {
+                if (name == "hr") blockBoundary(1)
+                return
+            }
+            if (name in HIDDEN_ELEMENTS || "hidden" in attributes || attributes["aria-hidden"] == "true") {
+                hiddenName = name
+                hiddenDepth = 1
+                return
+            }
+            when {
+                name in PARAGRAPH_ELEMENTS -> blockBoundary(2)
+                name in BLOCK_ELEMENTS -> blockBoundary(1)
+            }
+            if (name == "pre") {
+                flushPending()
+                preDepth++
+            }
+        }
+
+        private fun endTag(name: String) {
+            if (hiddenName != null) {
+                if (name == hiddenName && --hiddenDepth == 0) hiddenName = null
+                return
+            }
+            when {
+                name in PARAGRAPH_ELEMENTS -> blockBoundary(2)
+                name in BLOCK_ELEMENTS -> blockBoundary(1)
+                name == "td" || name == "th" -> pendingTab = true
+                name == "a" -> closeLink()
+            }
+            if (name == "pre" && preDepth > 0) preDepth--
+        }
+
+        private fun closeLink() {
+            val href = linkHref ?: return
+            linkHref = null
+            if (linkStart > out.length) return
+            val text = out.substring(linkStart).trim().replace(WHITESPACE, " ")
+            if (text.isEmpty() || href.isBlank() || href.trim().startsWith("javascript:", ignoreCase = true)) return
+            resolve(href.trim())?.let { links.add(VisitWebResultData.LinkData(it, text)) }
+        }
+
+        private fun resolve(href: String): String? = try {
+            val context = base ?: URL(baseUrl).also { base = it }
+            URL(context, href).toString()
+        } catch (e: Exception) {
+            null
+        }
+
+        /**
+         * 跳过 script 等元素的内容直到对应的结束标签，[into] 不为空时保存内容
+         */
+        private fun skipRawText(name: String, into: StringBuilder?) {
+            val end = "</$name"
+            var matched = 0
+            while (true) {
+                val c = read()
+                if (c == -1) return
+                if (c.toChar().lowercaseChar() == end[matched]) {
+                    matched++
+                    if (matched < end.length) continue
+                    val next = read()
+                    if (next == -1 || next == '>'.code || next == '/'.code || next.toChar().isWhitespace()) {
+                        if (next != -1 && next != '>'.code) skipUntil('>')
+                        return
+                    }
+                    // "</scripts" 之类不是结束标签
+                    appendRaw(into, end)
+                    matched = 0
+                    unread(next)
+                    continue
+                }
+                if (matched > 0) {
+                    appendRaw(into, end.substring(0, matched))
+                    matched = 0
+                    if (c == '<'.code) {
+                        matched = 1
+                        continue
+                    }
+                }
+                appendRaw(into, c.toChar().toString())
+            }
+        }
+
+        private fun appendRaw(into: StringBuilder?, s: String) {
+            if (into != null && into.length < MAX_RAW_TEXT_LENGTH) into.append(s)
+        }
+
+        private fun skipUntil(terminator: Char) {
+            while (true) {
+                val c = read()
+                if (c == -1 || c == terminator.code) return
+            }
+        }
+
+        private fun skipUntil(terminator: String) {
+            var matched = 0
+            while (true) {
+                val c = read()
+                if (c == -1) return
+                matched = when {
+                    c == terminator[matched].code -> matched + 1
+                    // "--->" 这类重复前缀
+                    matched > 0 && c == terminator[matched - 1].code -> matched
+                    c == terminator[0].code -> 1
+                    else -> 0
+                }
+                if (matched == terminator.length) return
+            }
+        }
+
+        /** 读取 '&' 之后的实体并解码，无法识别时原样返回 */
+        private fun entity(): String {
+            val name = StringBuilder()
+            var c = read()
+            while (c != -1 && name.length < MAX_ENTITY_LENGTH &&
+                (c.toChar().isLetterOrDigit() || (c == '#'.code && name.isEmpty()))) {
+                name.append(c.toChar())
+                c = read()
+            }
+            val terminated = c == ';'.code
+            if (!terminated && c != -1) unread(c)
+            val decoded = decodeEntity(name.toString(), terminated)
+            return decoded ?: ("&" + name + if (terminated) ";" else "")
+        }
+
+        /** 解码标题中的实体 */
+        private fun decode(s: String): String {
+            if ('&' !in s) return s
+            val result = StringBuilder(s.length)
+            var i = 0
+            while (i < s.length) {
+                val c = s[i]
+                if (c == '&') {
+                    var j = i + 1
+                    while (j < s.length && j - i <= MAX_ENTITY_LENGTH && (s[j].isLetterOrDigit() || (s[j] == '#' && j == i + 1))) j++
+                    val terminated = j < s.length && s[j] == ';'
+                    val decoded = decodeEntity(s.substring(i + 1, j), terminated)
+                    if (decoded != null) {
+                        result.append(decoded)
+                        i = if (terminated) j + 1 else j
+                        continue
+                    }
+                }
+                result.append(c)
+                i++
+            }
+            return result.toString()
+        }
+
+        private fun decodeEntity(name: String, terminated: Boolean): String? {
+            if (name.isEmpty()) return null
+            if (name[0] == '#') {
+                val code = if (name.length > 1 && (name[1] == 'x' || name[1] == 'X')) {
+                    name.substring(2).toIntOrNull(16)
+                } else {
+                    name.substring(1).toIntOrNull()
+                } ?: return null
+                if (code <= 0 || code > Character.MAX_CODE_POINT) return null
+                return String(Character.toChars(code))
+            }
+            if (!terminated && name !in LEGACY_ENTITIES) return null
+            return ENTITIES[name]
+        }
+    }
+}
@@ -68,6 +68,11 @@ class JsEngine(private val context: Context) {
         private const val TAG = "JsEngine"
         private const val BINARY_DATA_THRESHOLD = 32 * 1024 // 32KB
         private const val BINARY_HANDLE_PREFIX = "@binary_handle:"
+        private const val MAX_CACHED_SCRIPTS = 16
+        private const val MODULE_CACHE_MISS = "Cached module missing:"
+
+        @Volatile
+        private var initScriptSnapshot: String? = null
     }
 
     // 存储原生Bitmap对象的注册表
@@ -99,6 +104,9 @@ class JsEngine(private val context: Context) {
 
     private var envOverrides: Map<String, String> = emptyMap()
 
+    // 已在 WebView 中求值并缓存模块的脚本 key，按最近使用排序
+    private val cachedScriptKeys = LinkedHashMap<String, Unit>(MAX_CACHED_SCRIPTS, 0.75f, true)
+
     // 初始化 WebView
     private fun initWebView() {
         if (webView == null) {
@@ -137,6 +145,59 @@ class JsEngine(private val context: Context) {
             return // 如果已经初始化，直接返回
         }
 
+        val initScript = getInitScriptSnapshot()
+
+        // 在 WebView 中执行初始化脚本
+        val initLatch = CountDownLatch(1)
+        ContextCompat.getMainExecutor(context).execute {
+            try {
+                webView?.evaluateJavascript(initScript) { result ->
+                    AppLogger.d(TAG, "JS environment initialization completed: $result")
+                    try {
+                        webView?.evaluateJavascript("typeof __handleAsync === 'function'") { checkResult ->
+                            val isHandleAsyncDefined = checkResult == "true"
+                            if (isHandleAsyncDefined) {
+                                jsEnvironmentInitialized = true
+                            } else {
+                                jsEnvironmentInitialized = false
+                                AppLogger.e(TAG, "__handleAsync is not defined after JS environment initialization. Result: $checkResult")
+                            }
+                            initLatch.countDown()
+                        }
+                    } catch (e: Exception) {
+                        AppLogger.e(TAG, "Failed to verify __handleAsync after JS environment initialization: ${e.message}", e)
+                        jsEnvironmentInitialized = false
+                        initLatch.countDown()
+                    }
+                }
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "Failed to initialize JS environment: ${e.message}", e)
+                jsEnvironmentInitialized = false
+                initLatch.countDown()
+            }
+        }
+
+        // 等待初始化完成，使用超时避免无限等待
+        try {
+            if (!initLatch.await(10, TimeUnit.SECONDS)) {
+                AppLogger.w(TAG, "JS environment initialization timeout after 10 seconds")
+            }
+        } catch (e: InterruptedException) {
+            AppLogger.e(TAG, "JS environment initialization interrupted", e)
+            Thread.currentThread().interrupt()
+        }
+    }
+
+    /** 初始化脚本与引擎实例无关，整个进程只拼装一次，后续引擎直接复用 */
+    private fun getInitScriptSnapshot(): String {
+        initScriptSnapshot?.let { return it }
+        synchronized(JsEngine::class.java) {
+            initScriptSnapshot?.let { return it }
+            return buildInitScript().also { initScriptSnapshot = it }
+        }
+    }
+
+    private fun buildInitScript(): String {
         val initScript =
                 """
             // 添加全局错误处理器，捕获所有未处理的错误
@@ -642,53 +703,45 @@ class JsEngine(private val context: Context) {
                 return false; // Not a promise
             }
         """.trimIndent()
+        return initScript
+    }
 
-        // 在 WebView 中执行初始化脚本
-        val initLatch = CountDownLatch(1)
-        ContextCompat.getMainExecutor(context).execute {
-            try {
-                webView?.evaluateJavascript(initScript) { result ->
-                    AppLogger.d(TAG, "JS environment initialization completed: $result")
-                    try {
-                        webView?.evaluateJavascript("typeof __handleAsync === 'function'") { checkResult ->
-                            val isHandleAsyncDefined = checkResult == "true"
-                            if (isHandleAsyncDefined) {
-                                jsEnvironmentInitialized = true
-                            } else {
-                                jsEnvironmentInitialized = false
-                                AppLogger.e(TAG, "__handleAsync is not defined after JS environment initialization. Result: $checkResult")
-                            }
-                            initLatch.countDown()
-                        }
-                    } catch (e: Exception) {
-                        AppLogger.e(TAG, "Failed to verify __handleAsync after JS environment initialization: ${e.message}", e)
-                        jsEnvironmentInitialized = false
-                        initLatch.countDown()
-                    }
-                }
-            } catch (e: Exception) {
-                AppLogger.e(TAG, "Failed to initialize JS environment: ${e.message}", e)
-                jsEnvironmentInitialized = false
-                initLatch.countDown()
-            }
+    /**
+     * 预热引擎：创建 WebView 并注入 JavaScript 环境，使首次执行无需等待初始化。
+     * 会阻塞等待主线程，不能在主线程调用。
+     */
+    fun warmUp() {
+        initWebView()
+        if (!jsEnvironmentInitialized) {
+            initJavaScriptEnvironment()
         }
+    }
 
-        // 等待初始化完成，使用超时避免无限等待
-        try {
-            if (!initLatch.await(10, TimeUnit.SECONDS)) {
-                AppLogger.w(TAG, "JS environment initialization timeout after 10 seconds")
+    /** 指定 key 的脚本模块是否已缓存在该引擎中 */
+    fun hasCachedScript(scriptKey: String): Boolean =
+            synchronized(cachedScriptKeys) { cachedScriptKeys.containsKey(scriptKey) }
+
+    /** 记录新缓存的脚本 key，返回超出容量被淘汰的 key */
+    private fun rememberScriptKey(scriptKey: String): List<String> =
+            synchronized(cachedScriptKeys) {
+                cachedScriptKeys[scriptKey] = Unit
+                val evicted = ArrayList<String>()
+                val iterator = cachedScriptKeys.keys.iterator()
+                while (cachedScriptKeys.size - evicted.size > MAX_CACHED_SCRIPTS && iterator.hasNext()) {
+                    evicted.add(iterator.next())
+                }
+                evicted.forEach { cachedScriptKeys.remove(it) }
+                evicted
             }
-        } catch (e: InterruptedException) {
-            AppLogger.e(TAG, "JS environment initialization interrupted", e)
-            Thread.currentThread().interrupt()
-        }
-    }
 
     /**
      * 执行 JavaScript 脚本并调用其中的特定函数
      * @param script 完整的JavaScript脚本内容
      * @param functionName 要调用的函数名称
      * @param params 要传递给函数的参数
+     * @param scriptKey 脚本缓存 key（内容变化时 key 必须变化）。不为空时脚本源码只在首次执行时传输和解析，
+     *   编译好的模块工厂函数缓存在 WebView 中。每次调用都重新执行工厂函数，模块顶层代码和顶层变量
+     *   与不缓存时一样每次都是全新的，调用之间不会共享状态
      * @return 函数执行结果
      */
     fun executeScriptFunction(
@@ -696,6 +749,7 @@ class JsEngine(private val context: Context) {
             functionName: String,
             params: Map<String, Any?>,
             envOverrides: Map<String, String> = emptyMap(),
+            scriptKey: String? = null,
             onIntermediateResult: ((Any?) -> Unit)? = null
     ): Any? {
         // Reset any previous state
@@ -703,12 +757,80 @@ class JsEngine(private val context: Context) {
         this.envOverrides = envOverrides
         this.intermediateResultCallback = onIntermediateResult
 
-        initWebView()
+        // 确保 WebView 与 JavaScript 环境已初始化
+        warmUp()
 
-        // 确保JavaScript环境已初始化
-        if (!jsEnvironmentInitialized) {
-            initJavaScriptEnvironment()
-        }
+        val scriptCached = scriptKey != null && hasCachedScript(scriptKey)
+        val evictedKeys = if (scriptKey != null && !scriptCached) rememberScriptKey(scriptKey) else emptyList()
+        val scriptKeyJson = if (scriptKey != null) JSONObject.quote(scriptKey) else "null"
+
+        // 模块加载代码：已缓存时直接取出编译好的工厂函数，否则解析脚本并按 key 缓存工厂函数。
+        // 只缓存函数而不缓存执行结果，每次调用都重新执行模块顶层，避免包的全局变量跨调用残留
+        val moduleLoader =
+                if (scriptCached) {
+                    """
+                const moduleFactory = window.__operitModuleCache[$scriptKeyJson];
+                if (typeof moduleFactory !== 'function') {
+                    throw new Error("$MODULE_CACHE_MISS " + $scriptKeyJson);
+                }
+                let moduleResult = moduleFactory();
+                    """.trimIndent()
+                } else {
+                    """
+                const moduleFactory = function() {
+                    // 创建一个自包含的模块环境
+                    const module = {exports: {}};
+                    const exports = module.exports;
+                    
+                    // 模拟requireJS
+                    const require = function(moduleName) {
+                        console.log('Attempted to require: ' + moduleName);
+                        // 这里可以扩展，添加对常用模块的模拟
+                        if (moduleName === 'lodash') return _;
+                        // 对其他常用模块的支持可以在这里添加
+                        if (moduleName === 'uuid') {
+                            return {
+                                v4: function() {
+                                    return 'xxxxxxxx-xxxx-4xxx-yxxx-xxxxxxxxxxxx'.replace(/[xy]/g, function(c) {
+                                        var r = Math.random() * 16 | 0, v = c == 'x' ? r : (r & 0x3 | 0x8);
+                                        return v.toString(16);
+                                    });
+                                }
+                            };
+                        }
+                        if (moduleName === 'axios') {
+                            return {
+                                get: (url, config) => {
+                                    const params = config ? Object.assign({}, { url }, config) : { url };
+                                    return toolCall("http_request", params);
+                                },
+                                post: (url, data, config) => {
+                                    const params = config ? Object.assign({}, { url, data }, config) : { url, data };
+                                    return toolCall("http_request", params);
+                                }
+                            };
+                        }
+                        return {};
+                    };
+                    
+                    // 执行用户脚本，定义所有函数
+                    $script
+                    
+                    // 返回模块环境
+                    return {
+                        module: module,
+                        exports: exports,
+                        foundFunction: null
+                    };
+                };
+                window.__operitModuleCache = window.__operitModuleCache || {};
+                ${org.json.JSONArray(evictedKeys)}.forEach(function(key) { delete window.__operitModuleCache[key]; });
+                if ($scriptKeyJson !== null) {
+                    window.__operitModuleCache[$scriptKeyJson] = moduleFactory;
+                }
+                let moduleResult = moduleFactory();
+                    """.trimIndent()
+                }
 
         val future = CompletableFuture<Any?>()
         resultCallback = future
@@ -758,52 +880,7 @@ class JsEngine(private val context: Context) {
             // 执行用户脚本
             try {
                 // 创建模块执行环境 - 使用一个闭包来避免重复声明变量
-                let moduleResult = (function() {
-                    // 创建一个自包含的模块环境
-                    const module = {exports: {}};
-                    const exports = module.exports;
-                    
-                    // 模拟requireJS
-                    const require = function(moduleName) {
-                        console.log('Attempted to require: ' + moduleName);
-                        // 这里可以扩展，添加对常用模块的模拟
-                        if (moduleName === 'lodash') return _;
-                        // 对其他常用模块的支持可以在这里添加
-                        if (moduleName === 'uuid') {
-                            return {
-                                v4: function() {
-                                    return 'xxxxxxxx-xxxx-4xxx-yxxx-xxxxxxxxxxxx'.replace(/[xy]/g, function(c) {
-                                        var r = Math.random() * 16 | 0, v = c == 'x' ? r : (r & 0x3 | 0x8);
-                                        return v.toString(16);
-                                    });
-                                }
-                            };
-                        }
-                        if (moduleName === 'axios') {
-                            return {
-                                get: (url, config) => {
-                                    const params = config ? Object.assign({}, { url }, config) : { url };
-                                    return toolCall("http_request", params);
-                                },
-                                post: (url, data, config) => {
-                                    const params = config ? Object.assign({}, { url, data }, config) : { url, data };
-                                    return toolCall("http_request", params);
-                                }
-                            };
-                        }
-                        return {};
-                    };
-                    
-                    // 执行用户脚本，定义所有函数
-                    ${script}
-                    
-                    // 返回模块环境
-                    return {
-                        module: module,
-                        exports: exports,
-                        foundFunction: null
-                    };
-                })();
+                $moduleLoader
                 
                 // 从模块环境中获取结果
                 const module = moduleResult.module;
@@ -874,7 +951,7 @@ class JsEngine(private val context: Context) {
         }
 
         // 等待结果或超时
-        return try {
+        val result = try {
             // 创建一个定时器，在超时前提醒JavaScript
             val preTimeoutTimer = java.util.Timer()
 
@@ -925,6 +1002,13 @@ class JsEngine(private val context: Context) {
             }
             "Error: ${e.message}"
         }
+
+        // 页面中的模块缓存与记录不一致（例如脚本求值失败），忘掉该 key 并带源码重新执行一次
+        if (scriptCached && result is String && result.contains(MODULE_CACHE_MISS)) {
+            synchronized(cachedScriptKeys) { cachedScriptKeys.remove(scriptKey) }
+            return executeScriptFunction(script, functionName, params, envOverrides, scriptKey, onIntermediateResult)
+        }
+        return result
     }
 
     /** 重置引擎状态，避免多次调用时的状态干扰 */
@@ -1763,6 +1847,8 @@ class JsEngine(private val context: Context) {
             // 清理二进制数据注册表
             binaryDataRegistry.clear()
 
+            synchronized(cachedScriptKeys) { cachedScriptKeys.clear() }
+
             // 在主线程中销毁 WebView
             ContextCompat.getMainExecutor(context).execute {
                 try {
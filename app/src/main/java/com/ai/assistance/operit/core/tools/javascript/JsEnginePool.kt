@@ -0,0 +1,278 @@
+package com.ai.assistance.operit.core.tools.javascript
+
+import android.os.SystemClock
+import com.ai.assistance.operit.util.AppLogger
+import java.util.ArrayDeque
+import kotlin.coroutines.cancellation.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+
+/**
+ * 弹性引擎池
+ *
+ * - 启动后在后台预热 [minSize] 个引擎
+ * - 没有空闲引擎且总数小于 [maxSize] 时立即创建新引擎，达到上限后才排队等待
+ * - 空闲超过 [idleTimeoutMs] 的引擎会被回收，但总数不低于 [minSize]
+ * - 获取时可传入偏好条件（例如已缓存某个包脚本的引擎），空闲引擎中优先选择满足条件的
+ *
+ * 排队等待时间与引擎初始化时间记录在 [metrics] 中。
+ *
+ * @param create 创建并初始化引擎，在调用方线程执行（可能阻塞）
+ * @param destroy 销毁引擎
+ */
+class JsEnginePool<E : Any>(
+    private val minSize: Int,
+    private val maxSize: Int,
+    private val idleTimeoutMs: Long,
+    private val scope: CoroutineScope,
+    private val create: () -> E,
+    private val destroy: (E) -> Unit,
+    private val clock: () -> Long = { SystemClock.elapsedRealtime() }
+) {
+    companion object {
+        private const val TAG = "JsEnginePool"
+    }
+
+    init {
+        require(minSize in 0..maxSize && maxSize > 0) { "Invalid pool size: min=$minSize max=$maxSize" }
+    }
+
+    /** 引擎池统计数据 */
+    data class Metrics(
+        val size: Int,
+        val idle: Int,
+        val waiting: Int,
+        val created: Long,
+        val evicted: Long,
+        val acquisitions: Long,
+        val queuedAcquisitions: Long,
+        val totalQueueWaitMs: Long,
+        val maxQueueWaitMs: Long,
+        val totalInitMs: Long,
+        val maxInitMs: Long
+    ) {
+        val averageQueueWaitMs: Double
+            get() = if (queuedAcquisitions == 0L) 0.0 else totalQueueWaitMs.toDouble() / queuedAcquisitions
+
+        val averageInitMs: Double
+            get() = if (created == 0L) 0.0 else totalInitMs.toDouble() / created
+    }
+
+    private class IdleEngine<E>(val engine: E, val since: Long)
+
+    private val lock = Any()
+    // 队尾是最近归还的引擎
+    private val idle = ArrayDeque<IdleEngine<E>>()
+    private val waiters = ArrayDeque<CompletableDeferred<E>>()
+    private var size = 0
+    private var closed = false
+    private var evictionJob: Job? = null
+
+    private var created = 0L
+    private var evicted = 0L
+    private var acquisitions = 0L
+    private var queuedAcquisitions = 0L
+    private var totalQueueWaitMs = 0L
+    private var maxQueueWaitMs = 0L
+    private var totalInitMs = 0L
+    private var maxInitMs = 0L
+
+    /** 在后台将引擎数量补足到 [minSize] */
+    fun prewarm() {
+        val count = synchronized(lock) {
+            if (closed) return
+            val missing = (minSize - size).coerceAtLeast(0)
+            size += missing
+            missing
+        }
+        repeat(count) {
+            scope.launch {
+                val engine = try {
+                    createEngine()
+                } catch (e: Exception) {
+                    synchronized(lock) { size-- }
+                    AppLogger.e(TAG, "Failed to prewarm engine", e)
+                    return@launch
+                }
+                release(engine)
+            }
+        }
+    }
+
+    /**
+     * 获取一个引擎，用完后必须调用 [release]
+     * @param prefer 空闲引擎中优先选择满足该条件的
+     */
+    suspend fun acquire(prefer: ((E) -> Boolean)? = null): E {
+        var waiter: CompletableDeferred<E>? = null
+        val idleEngine = synchronized(lock) {
+            check(!closed) { "Engine pool is closed" }
+            acquisitions++
+            val engine = takeIdle(prefer)
+            if (engine == null) {
+                if (size < maxSize) {
+                    size++
+                } else {
+                    waiter = CompletableDeferred<E>().also { waiters.addLast(it) }
+                    queuedAcquisitions++
+                }
+            }
+            engine
+        }
+        if (idleEngine != null) return idleEngine
+        waiter?.let { return awaitEngine(it) }
+
+        return try {
+            createEngine()
+        } catch (e: Throwable) {
+            synchronized(lock) { size-- }
+            throw e
+        }
+    }
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private suspend fun awaitEngine(waiter: CompletableDeferred<E>): E {
+        val queuedAt = clock()
+        try {
+            return waiter.await()
+        } catch (e: CancellationException) {
+            val handedOver = synchronized(lock) {
+                waiters.remove(waiter)
+                waiter.isCompleted && !waiter.isCancelled
+            }
+            // 取消与归还同时发生时，引擎已交给了这个等待者，转交给下一个
+            if (handedOver) {
+                release(waiter.getCompleted())
+            }
+            throw e
+        } finally {
+            val waited = clock() - queuedAt
+            synchronized(lock) {
+                totalQueueWaitMs += waited
+                if (waited > maxQueueWaitMs) maxQueueWaitMs = waited
+            }
+        }
+    }
+
+    /** 归还引擎：有等待者时直接交给最早的等待者，否则放入空闲队列 */
+    fun release(engine: E) {
+        val toDestroy = synchronized(lock) {
+            if (closed) {
+                size--
+                engine
+            } else {
+                while (waiters.isNotEmpty()) {
+                    if (waiters.pollFirst()!!.complete(engine)) return
+                }
+                idle.addLast(IdleEngine(engine, clock()))
+                ensureEvictionLoop()
+                null
+            }
+        }
+        toDestroy?.let { destroyQuietly(it) }
+    }
+
+    /** 回收空闲超时的引擎，返回回收数量 */
+    fun evictIdle(): Int {
+        val now = clock()
+        val expired = ArrayList<E>()
+        synchronized(lock) {
+            // 队首空闲时间最长
+            while (size > minSize && idle.isNotEmpty() && now - idle.peekFirst()!!.since >= idleTimeoutMs) {
+                expired.add(idle.pollFirst()!!.engine)
+                size--
+                evicted++
+            }
+        }
+        expired.forEach { destroyQuietly(it) }
+        if (expired.isNotEmpty()) {
+            AppLogger.d(TAG, "Evicted ${expired.size} idle engines, ${metrics()}")
+        }
+        return expired.size
+    }
+
+    fun metrics(): Metrics = synchronized(lock) {
+        Metrics(
+            size = size,
+            idle = idle.size,
+            waiting = waiters.size,
+            created = created,
+            evicted = evicted,
+            acquisitions = acquisitions,
+            queuedAcquisitions = queuedAcquisitions,
+            totalQueueWaitMs = totalQueueWaitMs,
+            maxQueueWaitMs = maxQueueWaitMs,
+            totalInitMs = totalInitMs,
+            maxInitMs = maxInitMs
+        )
+    }
+
+    /** 关闭引擎池：销毁空闲引擎，正在使用的引擎在归还时销毁 */
+    fun close() {
+        val engines = synchronized(lock) {
+            closed = true
+            evictionJob?.cancel()
+            waiters.forEach { it.cancel() }
+            waiters.clear()
+            val engines = idle.map { it.engine }
+            idle.clear()
+            size -= engines.size
+            engines
+        }
+        engines.forEach { destroyQuietly(it) }
+    }
+
+    private fun takeIdle(prefer: ((E) -> Boolean)?): E? {
+        if (idle.isEmpty()) return null
+        if (prefer != null) {
+            val iterator = idle.descendingIterator()
+            while (iterator.hasNext()) {
+                val candidate = iterator.next()
+                if (prefer(candidate.engine)) {
+                    iterator.remove()
+                    return candidate.engine
+                }
+            }
+        }
+        // 优先复用最近使用过的引擎，让长时间空闲的引擎可以被回收
+        return idle.pollLast()!!.engine
+    }
+
+    private fun createEngine(): E {
+        val start = clock()
+        val engine = create()
+        val initMs = clock() - start
+        synchronized(lock) {
+            created++
+            totalInitMs += initMs
+            if (initMs > maxInitMs) maxInitMs = initMs
+        }
+        AppLogger.d(TAG, "Created engine in ${initMs}ms")
+        return engine
+    }
+
+    private fun ensureEvictionLoop() {
+        if (evictionJob?.isActive == true || idleTimeoutMs <= 0) return
+        evictionJob = scope.launch {
+            while (isActive) {
+                delay(idleTimeoutMs / 2)
+                evictIdle()
+                val done = synchronized(lock) { size <= minSize }
+                if (done) break
+            }
+        }
+    }
+
+    private fun destroyQuietly(engine: E) {
+        try {
+            destroy(engine)
+        } catch (e: Exception) {
+            AppLogger.e(TAG, "Failed to destroy engine", e)
+        }
+    }
+}
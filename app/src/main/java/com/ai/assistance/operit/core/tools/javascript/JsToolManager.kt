@@ -8,11 +8,14 @@ import com.ai.assistance.operit.core.tools.packTool.PackageManager
 import com.ai.assistance.operit.data.model.AITool
 import com.ai.assistance.operit.data.model.ToolResult
 import java.util.regex.Pattern
-import java.util.concurrent.ConcurrentHashMap
-import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.channelFlow
 import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
 import kotlinx.coroutines.withTimeout
 
 /**
@@ -23,7 +26,9 @@ class JsToolManager
 private constructor(private val context: Context, private val packageManager: PackageManager) {
     companion object {
         private const val TAG = "JsToolManager"
-        private const val MAX_CONCURRENT_ENGINES = 4
+        private const val MIN_ENGINES = 1
+        private const val MAX_ENGINES = 8
+        private const val ENGINE_IDLE_TIMEOUT_MS = 60_000L
 
         @Volatile private var INSTANCE: JsToolManager? = null
 
@@ -38,25 +43,39 @@ private constructor(private val context: Context, private val packageManager: Pa
         }
     }
 
-    private val enginePool = Channel<JsEngine>(capacity = MAX_CONCURRENT_ENGINES)
-    private val allEngines = ConcurrentHashMap.newKeySet<JsEngine>()
+    private val poolScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    private val enginePool =
+            JsEnginePool(
+                    minSize = MIN_ENGINES,
+                    maxSize = MAX_ENGINES,
+                    idleTimeoutMs = ENGINE_IDLE_TIMEOUT_MS,
+                    scope = poolScope,
+                    create = { JsEngine(context).apply { warmUp() } },
+                    destroy = { it.destroy() }
+            )
 
     init {
-        repeat(MAX_CONCURRENT_ENGINES) {
-            val engine = JsEngine(context)
-            allEngines.add(engine)
-            enginePool.trySend(engine)
-        }
+        enginePool.prewarm()
     }
 
-    private suspend fun acquireEngine(): JsEngine = enginePool.receive()
+    /** 优先选择已缓存该脚本模块的引擎，避免重新传输和解析脚本源码 */
+    private suspend fun acquireEngine(scriptKey: String): JsEngine =
+            withContext(Dispatchers.IO) { enginePool.acquire { it.hasCachedScript(scriptKey) } }
 
-    private fun acquireEngineBlocking(): JsEngine = runBlocking { acquireEngine() }
+    private fun acquireEngineBlocking(scriptKey: String): JsEngine = runBlocking { acquireEngine(scriptKey) }
 
     private fun releaseEngine(engine: JsEngine) {
-        enginePool.trySend(engine)
+        enginePool.release(engine)
     }
 
+    /** 引擎池的排队等待与初始化统计 */
+    fun getEngineMetrics(): JsEnginePool.Metrics = enginePool.metrics()
+
+    /** 脚本缓存 key，脚本内容变化时随之变化 */
+    private fun scriptKey(packageName: String, script: String): String =
+            "$packageName@${script.length}:${script.hashCode()}"
+
     // Tool handler for executing tools
     private val toolHandler = AIToolHandler.getInstance(context)
 
@@ -67,21 +86,23 @@ private constructor(private val context: Context, private val packageManager: Pa
      * @return The result of tool execution
      */
     fun executeScript(toolName: String, params: Map<String, String>): String {
-        val engine = acquireEngineBlocking()
-        try {
-            // Split the tool name to get package and function names
-            val parts = toolName.split(".")
-            if (parts.size < 2) {
-                return "Invalid tool name format: $toolName. Expected format: packageName.functionName"
-            }
+        // Split the tool name to get package and function names
+        val parts = toolName.split(".")
+        if (parts.size < 2) {
+            return "Invalid tool name format: $toolName. Expected format: packageName.functionName"
+        }
 
-            val packageName = parts[0]
-            val functionName = parts[1]
+        val packageName = parts[0]
+        val functionName = parts[1]
 
-            // Get the package script
-            val script =
-                    packageManager.getPackageScript(packageName)
-                            ?: return "Package not found: $packageName"
+        // Get the package script
+        val script =
+                packageManager.getPackageScript(packageName)
+                        ?: return "Package not found: $packageName"
+        val scriptKey = scriptKey(packageName, script)
+
+        val engine = acquireEngineBlocking(scriptKey)
+        try {
 
             AppLogger.d(TAG, "Executing function $functionName in package $packageName")
 
@@ -93,7 +114,13 @@ private constructor(private val context: Context, private val packageManager: Pa
             } else {
                 injectedParams.remove("__operit_package_state")
             }
-            val result = engine.executeScriptFunction(script, functionName, injectedParams)
+            val result =
+                    engine.executeScriptFunction(
+                            script,
+                            functionName,
+                            injectedParams,
+                            scriptKey = scriptKey
+                    )
 
             return result?.toString() ?: "null"
         } catch (e: Exception) {
@@ -115,8 +142,6 @@ private constructor(private val context: Context, private val packageManager: Pa
         try {
             AppLogger.d(TAG, "Executing script for tool: ${tool.name}")
 
-            engine = acquireEngine()
-
             // Extract the function name from the tool name (packageName:toolName)
             val parts = tool.name.split(":")
             if (parts.size != 2) {
@@ -133,6 +158,10 @@ private constructor(private val context: Context, private val packageManager: Pa
 
             val packageName = parts[0]
             val functionName = parts[1]
+            val scriptKey = scriptKey(packageName, script)
+
+            val activeEngine = acquireEngine(scriptKey)
+            engine = activeEngine
 
             val stateId = packageManager.getActivePackageStateId(packageName)
 
@@ -173,10 +202,11 @@ private constructor(private val context: Context, private val packageManager: Pa
 
                     val startTime = System.currentTimeMillis()
                     val scriptResult =
-                            engine!!.executeScriptFunction(
+                            activeEngine.executeScriptFunction(
                                     script,
                                     functionName,
-                                    injectedParams
+                                    injectedParams,
+                                    scriptKey = scriptKey
                             ) { intermediateResult ->
                                 val resultString = intermediateResult?.toString() ?: "null"
                                 AppLogger.d(TAG, "Intermediate JS result: $resultString")
@@ -275,7 +305,6 @@ private constructor(private val context: Context, private val packageManager: Pa
     /** Clean up resources when the manager is no longer needed */
     fun destroy() {
         enginePool.close()
-        allEngines.forEach { it.destroy() }
-        allEngines.clear()
+        poolScope.cancel()
     }
 }
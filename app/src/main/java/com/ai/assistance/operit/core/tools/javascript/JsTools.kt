@@ -435,6 +435,13 @@ fun getJsToolsDefinition(): String {
                 createNew: () => toolCall("create_new_chat", {}),
                 // 列出所有对话
                 listAll: () => toolCall("list_chats", {}),
+                // 跨对话检索历史消息
+                search: (query, chatId, limit) => {
+                    const params = { query };
+                    if (chatId) params.chat_id = chatId;
+                    if (limit !== undefined) params.limit = String(limit);
+                    return toolCall("search_chat_history", params);
+                },
                 // 切换对话
                 switchTo: (chatId) => toolCall("switch_chat", { chat_id: chatId }),
                 // 发送消息给AI
@@ -39,7 +39,12 @@ import org.hjson.JsonValue
  * 3. Used Packages: Packages that are loaded and registered with AI in current session
  */
 class PackageManager
-private constructor(private val context: Context, private val aiToolHandler: AIToolHandler) {
+private constructor(
+    private val context: Context,
+    private val aiToolHandler: AIToolHandler,
+    private val indexFile: File = File(context.filesDir, PACKAGE_INDEX_FILE),
+    private val externalPackagesRoot: File? = null
+) {
     companion object {
         private const val TAG = "PackageManager"
         private const val PACKAGES_DIR = "packages" // Directory for packages
@@ -48,6 +53,8 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
         private const val IMPORTED_PACKAGES_KEY = "imported_packages"
         private const val DISABLED_PACKAGES_KEY = "disabled_packages"
         private const val ACTIVE_PACKAGES_KEY = "active_packages"
+        private const val PACKAGE_INDEX_FILE = "package_metadata_index.json"
+        private const val BUNDLED_INDEX_ASSET = "packages/index.json"
 
         @Volatile
         private var INSTANCE: PackageManager? = null
@@ -61,6 +68,18 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
                         }
                 }
         }
+
+        /**
+         * 创建不注册为单例的独立实例，用于基准测试模拟进程冷启动后的首次加载
+         * @param externalPackagesRoot 外部包目录，替代 getExternalFilesDir/packages
+         */
+        internal fun createDetached(
+            context: Context,
+            aiToolHandler: AIToolHandler,
+            indexFile: File,
+            externalPackagesRoot: File
+        ): PackageManager =
+            PackageManager(context.applicationContext, aiToolHandler, indexFile, externalPackagesRoot)
     }
 
     // Map of package name to package description (all available packages in market)
@@ -70,10 +89,25 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
 
     private val activePackageStateIds = ConcurrentHashMap<String, String?>()
 
+    // 包名 -> 脚本来源，脚本在真正需要时才读取
+    private val packageSources = ConcurrentHashMap<String, PackageSource>()
+
+    private val scriptCache = ConcurrentHashMap<String, String>()
+
+    private val metadataIndex by lazy { PackageMetadataIndex(indexFile) }
+
     @Volatile
     private var isInitialized = false
     private val initLock = Any()
 
+    private sealed class PackageSource {
+        data class Asset(val path: String) : PackageSource()
+        data class External(val file: File) : PackageSource()
+    }
+
+    /** 构建期生成的内置包索引条目 */
+    private class BundledPackageEntry(val contentHash: String, val metadata: String)
+
     private val skillManager by lazy { SkillManager.getInstance(context) }
 
     // JavaScript engine for executing JS package code
@@ -88,7 +122,7 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
     // Get the external packages directory
     private val externalPackagesDir: File
         get() {
-            val dir = File(context.getExternalFilesDir(null), PACKAGES_DIR)
+            val dir = externalPackagesRoot ?: File(context.getExternalFilesDir(null), PACKAGES_DIR)
             if (!dir.exists()) {
                 dir.mkdirs()
             }
@@ -116,7 +150,7 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
     fun resolvePackageForDisplay(packageName: String): ToolPackage? {
         ensureInitialized()
         val toolPackage = availablePackages[packageName] ?: return null
-        return selectToolPackageState(toolPackage)
+        return selectToolPackageState(withScripts(toolPackage))
     }
 
     /**
@@ -152,26 +186,28 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
 
     /**
      * Loads all available packages metadata (from assets and external storage, both JS and HJSON
-     * format)
+     * format). Unchanged packages are served from [metadataIndex] without reading their scripts.
      */
     private fun loadAvailablePackages() {
         synchronized(initLock) {
+            val startTime = System.currentTimeMillis()
+            metadataIndex.load()
+
             // Load packages from assets (JS only, skip TS files)
             val assetManager = context.assets
             val packageFiles = assetManager.list(ASSETS_PACKAGES_DIR) ?: emptyArray()
+            val bundledIndex = loadBundledPackageIndex()
 
             for (fileName in packageFiles) {
                 if (fileName.endsWith(".js")) {
                     // Only load JavaScript files, skip TypeScript files which require compilation
-                    val packageMetadata = loadPackageFromJsAsset("$ASSETS_PACKAGES_DIR/$fileName")
+                    val assetPath = "$ASSETS_PACKAGES_DIR/$fileName"
+                    val packageMetadata = loadPackageFromJsAsset(assetPath, bundledIndex[fileName])
                     if (packageMetadata != null) {
                         // Packages from assets are built-in
                         availablePackages[packageMetadata.name] =
                             packageMetadata.copy(isBuiltIn = true)
-                        AppLogger.d(
-                            TAG,
-                            "Loaded JavaScript package from assets: ${packageMetadata.name} with description: ${packageMetadata.description}, tools: ${packageMetadata.tools.size}"
-                        )
+                        packageSources[packageMetadata.name] = PackageSource.Asset(assetPath)
                     }
                 }
             }
@@ -182,19 +218,50 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
 
                 for (file in externalFiles) {
                     if (file.isFile && file.name.endsWith(".js")) {
-                        val packageMetadata = loadPackageFromJsFile(file)
+                        val packageMetadata =
+                            try {
+                                metadataIndex.resolveFile("file:${file.name}", file) { parseJsPackage(it) }
+                            } catch (e: Exception) {
+                                AppLogger.e(TAG, "Error loading package from JS file: ${file.path}", e)
+                                null
+                            }
                         if (packageMetadata != null) {
                             // Packages from external storage are not built-in
                             availablePackages[packageMetadata.name] =
                                 packageMetadata.copy(isBuiltIn = false)
-                            AppLogger.d(
-                                TAG,
-                                "Loaded JS package from external storage: ${packageMetadata.name}"
-                            )
+                            packageSources[packageMetadata.name] = PackageSource.External(file)
                         }
                     }
                 }
             }
+
+            metadataIndex.save()
+            AppLogger.d(
+                TAG,
+                "Loaded ${availablePackages.size} packages in ${System.currentTimeMillis() - startTime}ms " +
+                    "(index hits: ${metadataIndex.hitCount}, parsed: ${metadataIndex.parseCount})"
+            )
+        }
+    }
+
+    /** Reads the build-time index of bundled packages (file name -> hash and raw metadata) */
+    private fun loadBundledPackageIndex(): Map<String, BundledPackageEntry> {
+        return try {
+            val content = context.assets.open(BUNDLED_INDEX_ASSET).bufferedReader().use { it.readText() }
+            val packages = org.json.JSONObject(content).getJSONArray("packages")
+            val result = HashMap<String, BundledPackageEntry>(packages.length())
+            for (i in 0 until packages.length()) {
+                val entry = packages.getJSONObject(i)
+                result[entry.getString("file")] =
+                    BundledPackageEntry(entry.getString("sha256"), entry.optString("metadata", "{}"))
+            }
+            result
+        } catch (e: java.io.FileNotFoundException) {
+            // 未通过构建任务生成索引（例如直接拷贝的 assets），退化为读取并哈希每个脚本
+            emptyMap()
+        } catch (e: Exception) {
+            AppLogger.w(TAG, "Failed to read bundled package index: ${e.message}")
+            emptyMap()
         }
     }
 
@@ -209,27 +276,64 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
         }
     }
 
-    /** Loads a complete ToolPackage from a JavaScript file in assets */
-    private fun loadPackageFromJsAsset(assetPath: String): ToolPackage? {
+    /** Loads the metadata of a bundled package, using the build-time hash when available */
+    private fun loadPackageFromJsAsset(assetPath: String, bundled: BundledPackageEntry?): ToolPackage? {
         try {
-            val assetManager = context.assets
-            val jsContent = assetManager.open(assetPath).bufferedReader().use { it.readText() }
-            return parseJsPackage(jsContent)
+            val key = "asset:$assetPath"
+            if (bundled != null) {
+                return metadataIndex.resolveByHash(key, bundled.contentHash) {
+                    parsePackageMetadata(bundled.metadata)
+                }
+            }
+            val bytes = context.assets.open(assetPath).use { it.readBytes() }
+            return metadataIndex.resolveByHash(key, PackageMetadataIndex.sha256(bytes)) {
+                parseJsPackage(String(bytes, Charsets.UTF_8))
+            }
         } catch (e: Exception) {
             AppLogger.e(TAG, "Error loading package from JS asset: $assetPath", e)
             return null
         }
     }
 
+    /** Reads the full script of a package from its source, cached after the first read */
+    private fun loadScript(packageName: String): String? {
+        scriptCache[packageName]?.let { return it }
+        val source = packageSources[packageName] ?: return null
+        return try {
+            val script =
+                when (source) {
+                    is PackageSource.Asset ->
+                        context.assets.open(source.path).bufferedReader().use { it.readText() }
+                    is PackageSource.External -> source.file.readText()
+                }
+            scriptCache[packageName] = script
+            script
+        } catch (e: Exception) {
+            AppLogger.e(TAG, "Error reading script for package: $packageName", e)
+            null
+        }
+    }
+
+    /** Returns the package with the full script attached to all of its tools */
+    private fun withScripts(toolPackage: ToolPackage): ToolPackage {
+        if (toolPackage.tools.all { it.script.isNotEmpty() }) return toolPackage
+        val script = loadScript(toolPackage.name) ?: return toolPackage
+        return attachScript(toolPackage, script)
+    }
+
     /**
      * Parses a JavaScript package file into a ToolPackage object Uses the metadata in the file
      * header and extracts function definitions using JsEngine
      */
     private fun parseJsPackage(jsContent: String): ToolPackage? {
-        try {
-            // Extract metadata from comments at the top of the file
-            val metadataString = extractMetadataFromJs(jsContent)
+        // Extract metadata from comments at the top of the file
+        val packageMetadata = parsePackageMetadata(extractMetadataFromJs(jsContent)) ?: return null
+        return attachScript(packageMetadata, jsContent)
+    }
 
+    /** Parses the HJSON metadata block of a JS package. Tool scripts are left empty. */
+    private fun parsePackageMetadata(metadataString: String): ToolPackage? {
+        try {
             // 先将元数据解析为 JSONObject 以便修改 tools 数组中的每个元素
             val metadataJson = org.json.JSONObject(JsonValue.readHjson(metadataString).toString())
 
@@ -266,35 +370,38 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
             val jsonString = metadataJson.toString()
 
             val jsonConfig = Json { ignoreUnknownKeys = true }
-            val packageMetadata = jsonConfig.decodeFromString<ToolPackage>(jsonString)
-
-            // 更新所有工具，使用相同的完整脚本内容，但记录每个工具的函数名
-            val tools =
-                packageMetadata.tools.map { tool ->
-                    // 检查函数是否存在于脚本中
-                    validateToolFunctionExists(jsContent, tool.name)
-
-                    // 使用整个脚本，并记录函数名，而不是提取单个函数
-                    tool.copy(script = jsContent)
-                }
-
-            val states =
-                packageMetadata.states.map { state ->
-                    val stateTools =
-                        state.tools.map { tool ->
-                            validateToolFunctionExists(jsContent, tool.name)
-                            tool.copy(script = jsContent)
-                        }
-                    state.copy(tools = stateTools)
-                }
-
-            return packageMetadata.copy(tools = tools, states = states)
+            return jsonConfig.decodeFromString<ToolPackage>(jsonString)
         } catch (e: Exception) {
             AppLogger.e(TAG, "Error parsing JS package: ${e.message}", e)
             return null
         }
     }
 
+    /** Attaches the full script to every tool of the package */
+    private fun attachScript(packageMetadata: ToolPackage, jsContent: String): ToolPackage {
+        // 更新所有工具，使用相同的完整脚本内容，但记录每个工具的函数名
+        val tools =
+            packageMetadata.tools.map { tool ->
+                // 检查函数是否存在于脚本中
+                validateToolFunctionExists(jsContent, tool.name)
+
+                // 使用整个脚本，并记录函数名，而不是提取单个函数
+                tool.copy(script = jsContent)
+            }
+
+        val states =
+            packageMetadata.states.map { state ->
+                val stateTools =
+                    state.tools.map { tool ->
+                        validateToolFunctionExists(jsContent, tool.name)
+                        tool.copy(script = jsContent)
+                    }
+                state.copy(tools = stateTools)
+            }
+
+        return packageMetadata.copy(tools = tools, states = states)
+    }
+
     /** 验证JavaScript文件中是否存在指定的函数 这确保了我们可以在运行时调用该函数 */
     private fun validateToolFunctionExists(jsContent: String, toolName: String): Boolean {
         // 各种函数声明模式
@@ -388,6 +495,9 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
 
             // Add to available packages
             availablePackages[packageMetadata.name] = packageMetadata
+            if (!filePath.endsWith(".hjson")) {
+                packageSources[packageMetadata.name] = PackageSource.External(destinationFile)
+            }
 
             AppLogger.d(
                 TAG,
@@ -450,7 +560,7 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
         if (importedPackages.contains(packageName)) {
             // Load the full package data for a standard package
             val toolPackage =
-                getPackageTools(packageName)
+                getPackageTools(packageName)?.let { withScripts(it) }
                     ?: return "Failed to load package data for: $packageName"
 
             // Validate required environment variables, if any
@@ -872,7 +982,9 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
         ensureInitialized()
         val toolPackage = availablePackages[packageName] ?: return null
 
-        // Load script based on whether it's built-in or external
+        // Scripts of indexed packages are read from their source on first use
+        loadScript(packageName)?.let { return it }
+
         // All tools in a package share the same script, so we can get it from any tool
         return if (toolPackage.tools.isNotEmpty()) {
             toolPackage.tools[0].script
@@ -984,6 +1096,8 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
             // If file deletion is successful, remove it from the imported list and in-memory cache.
             removePackage(packageName)
             val removedFromCache = availablePackages.remove(packageName)
+            packageSources.remove(packageName)
+            scriptCache.remove(packageName)
             AppLogger.d(
                 TAG,
                 "Removed '$packageName' from availablePackages cache. Was it present? ${removedFromCache != null}"
@@ -1006,13 +1120,18 @@ private constructor(private val context: Context, private val aiToolHandler: AIT
      */
     private fun findPackageFile(packageName: String): File? {
         // Use the same directory logic as when loading packages.
-        val externalPackagesDir = File(context.getExternalFilesDir(null), PACKAGES_DIR)
+        val externalPackagesDir = externalPackagesRoot ?: File(context.getExternalFilesDir(null), PACKAGES_DIR)
         if (!externalPackagesDir.exists()) return null
 
         // First, try direct name match
         val jsFile = File(externalPackagesDir, "$packageName.js")
         if (jsFile.exists()) return jsFile
 
+        // The file the package was loaded from
+        (packageSources[packageName] as? PackageSource.External)?.file?.let {
+            if (it.exists()) return it
+        }
+
         // Fallback: iterate and parse files to find matching package name
         externalPackagesDir.listFiles()?.forEach { file ->
             if (file.name.endsWith(".js")) {
@@ -0,0 +1,171 @@
+package com.ai.assistance.operit.core.tools.packTool
+
+import com.ai.assistance.operit.core.tools.ToolPackage
+import com.ai.assistance.operit.util.AppLogger
+import java.io.File
+import java.security.MessageDigest
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+
+/**
+ * 工具包元数据的持久化索引
+ *
+ * 每个包文件对应一条记录：文件大小、修改时间、内容哈希以及解析好的 [ToolPackage]（不含脚本）。
+ * - 外部包：大小与修改时间都未变时直接使用索引；任一变化时读取文件比对哈希，内容相同则只刷新修改时间
+ * - 内置包：使用构建期生成的哈希（assets/packages/index.json）判断，无需读取脚本
+ * 只有新增或内容变化的包才会重新解析。脚本本身在真正需要时（例如 usePackage）才读取。
+ */
+class PackageMetadataIndex(private val indexFile: File) {
+    companion object {
+        private const val TAG = "PackageMetadataIndex"
+
+        /** 索引格式或 ToolPackage 解析逻辑变化时递增，使旧索引整体失效 */
+        private const val INDEX_VERSION = 1
+
+        private val json = Json {
+            ignoreUnknownKeys = true
+            encodeDefaults = true
+        }
+
+        fun sha256(bytes: ByteArray): String {
+            val digest = MessageDigest.getInstance("SHA-256").digest(bytes)
+            val sb = StringBuilder(digest.size * 2)
+            for (b in digest) {
+                val v = b.toInt() and 0xFF
+                sb.append("0123456789abcdef"[v ushr 4]).append("0123456789abcdef"[v and 0x0F])
+            }
+            return sb.toString()
+        }
+
+        /** 去掉脚本内容，仅保留元数据 */
+        fun stripScripts(toolPackage: ToolPackage): ToolPackage =
+            toolPackage.copy(
+                tools = toolPackage.tools.map { it.copy(script = "") },
+                states = toolPackage.states.map { state ->
+                    state.copy(tools = state.tools.map { it.copy(script = "") })
+                }
+            )
+    }
+
+    @Serializable
+    private data class Entry(
+        val size: Long,
+        val lastModified: Long,
+        val contentHash: String,
+        val toolPackage: ToolPackage
+    )
+
+    @Serializable
+    private data class IndexData(
+        val version: Int = INDEX_VERSION,
+        val entries: Map<String, Entry> = emptyMap()
+    )
+
+    private val entries = HashMap<String, Entry>()
+    private val seenKeys = HashSet<String>()
+    private var dirty = false
+
+    /** 本轮命中索引（未解析）的包数量 */
+    var hitCount = 0
+        private set
+
+    /** 本轮重新解析的包数量 */
+    var parseCount = 0
+        private set
+
+    /** 从磁盘加载索引；文件不存在、损坏或版本不一致时从空索引开始 */
+    fun load() {
+        entries.clear()
+        seenKeys.clear()
+        hitCount = 0
+        parseCount = 0
+        dirty = false
+        if (!indexFile.exists()) return
+        try {
+            val data = json.decodeFromString<IndexData>(indexFile.readText())
+            if (data.version == INDEX_VERSION) {
+                entries.putAll(data.entries)
+            } else {
+                dirty = true
+            }
+        } catch (e: Exception) {
+            AppLogger.w(TAG, "Package index is corrupted, rebuilding: ${e.message}")
+            dirty = true
+        }
+    }
+
+    /**
+     * 解析外部存储中的包文件
+     * @param parse 解析完整脚本内容为 ToolPackage，失败返回null
+     */
+    fun resolveFile(key: String, file: File, parse: (String) -> ToolPackage?): ToolPackage? {
+        seenKeys.add(key)
+        val size = file.length()
+        val lastModified = file.lastModified()
+        val cached = entries[key]
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            hitCount++
+            return cached.toolPackage
+        }
+
+        val bytes = file.readBytes()
+        val hash = sha256(bytes)
+        if (cached != null && cached.contentHash == hash) {
+            entries[key] = cached.copy(size = size, lastModified = lastModified)
+            dirty = true
+            hitCount++
+            return cached.toolPackage
+        }
+
+        parseCount++
+        val parsed = parse(String(bytes, Charsets.UTF_8))?.let { stripScripts(it) }
+        update(key, parsed) { Entry(size, lastModified, hash, it) }
+        return parsed
+    }
+
+    /**
+     * 解析内置包，[contentHash] 来自构建期索引或调用方自行计算
+     * @param parse 仅在哈希变化时调用
+     */
+    fun resolveByHash(key: String, contentHash: String, parse: () -> ToolPackage?): ToolPackage? {
+        seenKeys.add(key)
+        val cached = entries[key]
+        if (cached != null && cached.contentHash == contentHash) {
+            hitCount++
+            return cached.toolPackage
+        }
+
+        parseCount++
+        val parsed = parse()?.let { stripScripts(it) }
+        update(key, parsed) { Entry(0, 0, contentHash, it) }
+        return parsed
+    }
+
+    private inline fun update(key: String, parsed: ToolPackage?, entry: (ToolPackage) -> Entry) {
+        if (parsed != null) {
+            entries[key] = entry(parsed)
+        } else {
+            entries.remove(key)
+        }
+        dirty = true
+    }
+
+    /** 移除本轮未出现的记录（对应文件已删除），有变化时写回磁盘 */
+    fun save() {
+        if (entries.keys.retainAll(seenKeys)) dirty = true
+        if (!dirty) return
+        try {
+            indexFile.parentFile?.mkdirs()
+            val tmp = File(indexFile.parentFile, indexFile.name + ".tmp")
+            tmp.writeText(json.encodeToString(IndexData(INDEX_VERSION, HashMap(entries))))
+            if (!tmp.renameTo(indexFile)) {
+                indexFile.delete()
+                tmp.renameTo(indexFile)
+            }
+            dirty = false
+        } catch (e: Exception) {
+            AppLogger.e(TAG, "Failed to save package index", e)
+        }
+    }
+}
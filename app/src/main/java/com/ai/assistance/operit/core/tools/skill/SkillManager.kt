@@ -7,11 +7,21 @@ import java.io.File
 import java.io.FileInputStream
 import java.io.FileOutputStream
 import java.util.zip.ZipInputStream
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
 
 class SkillManager private constructor(private val context: Context) {
 
     companion object {
         private const val TAG = "SkillManager"
+        private const val SKILL_INDEX_FILE = "skill_metadata_index.json"
+        private const val SKILL_INDEX_VERSION = 1
+
+        private val indexJson = Json {
+            ignoreUnknownKeys = true
+            encodeDefaults = true
+        }
 
         @Volatile private var INSTANCE: SkillManager? = null
 
@@ -25,6 +35,28 @@ class SkillManager private constructor(private val context: Context) {
 
     private val availableSkills = mutableMapOf<String, SkillPackage>()
 
+    /** SKILL.md 路径 -> 上次解析结果，文件大小与修改时间不变时跳过解析 */
+    @Serializable
+    private data class CachedSkillMetadata(
+        val size: Long,
+        val lastModified: Long,
+        val name: String,
+        val description: String
+    )
+
+    @Serializable
+    private data class SkillIndexFile(
+        val version: Int = SKILL_INDEX_VERSION,
+        val entries: Map<String, CachedSkillMetadata> = emptyMap()
+    )
+
+    // 解析结果持久化到 filesDir，冷启动时只核对文件大小与修改时间
+    private val indexFile by lazy { File(context.filesDir, SKILL_INDEX_FILE) }
+
+    private val metadataCache by lazy { readSkillIndex() }
+
+    private var metadataCacheDirty = false
+
     private fun getSkillsRootDir(): File {
         val downloadsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS)
         val operitDir = File(downloadsDir, "Operit")
@@ -39,6 +71,7 @@ class SkillManager private constructor(private val context: Context) {
         return getSkillsRootDir().absolutePath
     }
 
+    @Synchronized
     fun refreshAvailableSkills() {
         availableSkills.clear()
 
@@ -54,6 +87,7 @@ class SkillManager private constructor(private val context: Context) {
         }
 
         val children = skillsDir.listFiles() ?: emptyArray()
+        val seenPaths = HashSet<String>()
         for (child in children) {
             if (!child.isDirectory) continue
 
@@ -62,9 +96,10 @@ class SkillManager private constructor(private val context: Context) {
             }
 
             if (!skillFile.exists() || !skillFile.isFile) continue
+            seenPaths.add(skillFile.absolutePath)
 
             try {
-                val (name, description) = parseSkillMetadata(skillFile)
+                val (name, description) = getSkillMetadata(skillFile)
                 val skillName = name.ifBlank { child.name }
                 val skillDesc = description.ifBlank { "" }
 
@@ -80,6 +115,50 @@ class SkillManager private constructor(private val context: Context) {
                 AppLogger.e(TAG, "Error loading skill from ${skillFile.absolutePath}", e)
             }
         }
+
+        // 已删除的 Skill 从索引中移除
+        if (metadataCache.keys.retainAll(seenPaths)) metadataCacheDirty = true
+        if (metadataCacheDirty) writeSkillIndex()
+    }
+
+    private fun readSkillIndex(): HashMap<String, CachedSkillMetadata> {
+        val file = indexFile
+        if (!file.exists()) return HashMap()
+        return try {
+            val index = indexJson.decodeFromString<SkillIndexFile>(file.readText())
+            if (index.version == SKILL_INDEX_VERSION) HashMap(index.entries) else HashMap()
+        } catch (e: Exception) {
+            AppLogger.w(TAG, "Skill index is corrupted, rebuilding: ${e.message}")
+            HashMap()
+        }
+    }
+
+    private fun writeSkillIndex() {
+        try {
+            val tmp = File(indexFile.parentFile, indexFile.name + ".tmp")
+            tmp.writeText(indexJson.encodeToString(SkillIndexFile(SKILL_INDEX_VERSION, metadataCache)))
+            if (!tmp.renameTo(indexFile)) {
+                indexFile.delete()
+                tmp.renameTo(indexFile)
+            }
+            metadataCacheDirty = false
+        } catch (e: Exception) {
+            AppLogger.e(TAG, "Failed to save skill index", e)
+        }
+    }
+
+    private fun getSkillMetadata(skillFile: File): Pair<String, String> {
+        val path = skillFile.absolutePath
+        val size = skillFile.length()
+        val lastModified = skillFile.lastModified()
+        val cached = metadataCache[path]
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            return cached.name to cached.description
+        }
+        val (name, description) = parseSkillMetadata(skillFile)
+        metadataCache[path] = CachedSkillMetadata(size, lastModified, name, description)
+        metadataCacheDirty = true
+        return name to description
     }
 
     private fun parseSkillMetadata(skillFile: File): Pair<String, String> {
@@ -0,0 +1,328 @@
+package com.ai.assistance.operit.core.tools.uihierarchy
+
+import com.ai.assistance.operit.core.tools.SimplifiedUINode
+import com.ai.assistance.operit.util.AppLogger
+import java.io.StringReader
+import org.xmlpull.v1.XmlPullParser
+import org.xmlpull.v1.XmlPullParserFactory
+
+/**
+ * 已解析的UI层次结构快照，使用紧凑的节点表存储。
+ *
+ * 节点按先序遍历编号（根节点为0），子树 i 覆盖下标区间 [i, i + subtreeSize[i])。
+ * 边界与标志位存放在基本类型数组中，字符串属性通过 [strings] 表驻留，节点只保存下标（-1 表示缺失）。
+ * 每个节点还带有自身属性哈希与子树哈希，用于相邻快照之间的结构化差异比较。
+ */
+class UiSnapshot internal constructor(
+    /** 快照版本号，由 [UiSnapshotCache] 分配，单调递增 */
+    val version: Long,
+    val nodeCount: Int,
+    val parent: IntArray,
+    val firstChild: IntArray,
+    val nextSibling: IntArray,
+    val subtreeSize: IntArray,
+    /** 每个节点4个int：left, top, right, bottom；没有 bounds 时全部为 [NO_BOUNDS] */
+    val bounds: IntArray,
+    val flags: IntArray,
+    val classNameIdx: IntArray,
+    val textIdx: IntArray,
+    val contentDescIdx: IntArray,
+    val resourceIdIdx: IntArray,
+    val strings: Array<String>,
+    val nodeHash: LongArray,
+    val subtreeHash: LongArray,
+    /** 根节点的包名 */
+    val packageName: String?,
+    /** 原始XML的字节数（UTF-16 字符数近似） */
+    val sourceLength: Int
+) {
+    companion object {
+        private const val TAG = "UiSnapshot"
+
+        const val FLAG_CLICKABLE = 1
+        const val FLAG_LONG_CLICKABLE = 1 shl 1
+        const val FLAG_SCROLLABLE = 1 shl 2
+        const val FLAG_FOCUSABLE = 1 shl 3
+        const val FLAG_FOCUSED = 1 shl 4
+        const val FLAG_CHECKABLE = 1 shl 5
+        const val FLAG_CHECKED = 1 shl 6
+        const val FLAG_ENABLED = 1 shl 7
+        const val FLAG_SELECTED = 1 shl 8
+        const val FLAG_PASSWORD = 1 shl 9
+
+        const val NO_BOUNDS = Int.MIN_VALUE
+
+        // 64位黄金比例常量，用作哈希种子与乘数
+        private const val HASH_SEED = -0x61c8864680b583ebL
+
+        private val FLAG_ATTRIBUTES = arrayOf(
+            "clickable" to FLAG_CLICKABLE,
+            "long-clickable" to FLAG_LONG_CLICKABLE,
+            "scrollable" to FLAG_SCROLLABLE,
+            "focusable" to FLAG_FOCUSABLE,
+            "focused" to FLAG_FOCUSED,
+            "checkable" to FLAG_CHECKABLE,
+            "checked" to FLAG_CHECKED,
+            "enabled" to FLAG_ENABLED,
+            "selected" to FLAG_SELECTED,
+            "password" to FLAG_PASSWORD
+        )
+
+        // XmlPullParserFactory.newInstance() 需要反射查找实现，缓存起来避免每次解析都创建
+        private val parserFactory: XmlPullParserFactory by lazy {
+            XmlPullParserFactory.newInstance().apply { isNamespaceAware = false }
+        }
+
+        private val EMPTY_NODE = SimplifiedUINode(
+            className = null,
+            text = null,
+            contentDesc = null,
+            resourceId = null,
+            bounds = null,
+            isClickable = false,
+            children = emptyList()
+        )
+
+        /**
+         * 一次遍历解析 uiautomator / 无障碍服务导出的XML，构建节点表。
+         * XML格式错误（例如导出被截断或混入了命令输出）时不抛出异常，保留出错前已解析的节点。
+         */
+        fun parse(xml: String, version: Long = 0): UiSnapshot {
+            val builder = Builder(xml.length)
+            if (xml.isEmpty()) return builder.build(version)
+
+            try {
+                val parser = parserFactory.newPullParser().apply { setInput(StringReader(xml)) }
+                var eventType = parser.eventType
+                while (eventType != XmlPullParser.END_DOCUMENT) {
+                    when (eventType) {
+                        XmlPullParser.START_TAG -> if (parser.name == "node") builder.startNode(parser)
+                        XmlPullParser.END_TAG -> if (parser.name == "node") builder.endNode()
+                    }
+                    eventType = parser.next()
+                }
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "Error parsing XML layout, keeping ${builder.count} parsed nodes", e)
+            }
+            return builder.build(version)
+        }
+
+        /** 解析 "[l,t][r,b]" 格式的 bounds，失败返回 false */
+        internal fun parseBounds(value: String, out: IntArray, offset: Int): Boolean {
+            var index = 0
+            var current = 0
+            var negative = false
+            var inNumber = false
+            for (ch in value) {
+                when {
+                    ch == '-' -> negative = true
+                    ch in '0'..'9' -> {
+                        current = current * 10 + (ch - '0')
+                        inNumber = true
+                    }
+                    else -> if (inNumber) {
+                        if (index >= 4) return false
+                        out[offset + index++] = if (negative) -current else current
+                        current = 0
+                        negative = false
+                        inNumber = false
+                    }
+                }
+            }
+            return index == 4
+        }
+
+        private fun mix(hash: Long, value: Long): Long {
+            var h = (hash xor value) * HASH_SEED
+            h = h xor (h ushr 29)
+            return h
+        }
+    }
+
+    /** 构建快照的可变状态，解析结束后转换为不可变数组 */
+    private class Builder(private val sourceLength: Int) {
+        var count = 0
+            private set
+        private var parent = IntArray(64)
+        private var firstChild = IntArray(64)
+        private var nextSibling = IntArray(64)
+        private var lastChild = IntArray(64)
+        private var subtreeSize = IntArray(64)
+        private var bounds = IntArray(256)
+        private var flags = IntArray(64)
+        private var classNameIdx = IntArray(64)
+        private var textIdx = IntArray(64)
+        private var contentDescIdx = IntArray(64)
+        private var resourceIdIdx = IntArray(64)
+        private val stringTable = HashMap<String, Int>()
+        private val strings = ArrayList<String>()
+        private val stack = ArrayList<Int>()
+        private var packageName: String? = null
+
+        private fun intern(value: String?): Int {
+            if (value == null) return -1
+            return stringTable.getOrPut(value) {
+                strings.add(value)
+                strings.size - 1
+            }
+        }
+
+        private fun ensureCapacity() {
+            if (count < parent.size) return
+            val newSize = parent.size * 2
+            parent = parent.copyOf(newSize)
+            firstChild = firstChild.copyOf(newSize)
+            nextSibling = nextSibling.copyOf(newSize)
+            lastChild = lastChild.copyOf(newSize)
+            subtreeSize = subtreeSize.copyOf(newSize)
+            bounds = bounds.copyOf(newSize * 4)
+            flags = flags.copyOf(newSize)
+            classNameIdx = classNameIdx.copyOf(newSize)
+            textIdx = textIdx.copyOf(newSize)
+            contentDescIdx = contentDescIdx.copyOf(newSize)
+            resourceIdIdx = resourceIdIdx.copyOf(newSize)
+        }
+
+        fun startNode(parser: XmlPullParser) {
+            ensureCapacity()
+            val index = count++
+            val parentIndex = if (stack.isEmpty()) -1 else stack[stack.size - 1]
+            parent[index] = parentIndex
+            firstChild[index] = -1
+            nextSibling[index] = -1
+            lastChild[index] = -1
+            if (parentIndex >= 0) {
+                if (firstChild[parentIndex] < 0) {
+                    firstChild[parentIndex] = index
+                } else {
+                    nextSibling[lastChild[parentIndex]] = index
+                }
+                lastChild[parentIndex] = index
+            } else if (packageName == null) {
+                packageName = parser.getAttributeValue(null, "package")
+            }
+
+            classNameIdx[index] = intern(parser.getAttributeValue(null, "class")?.substringAfterLast('.'))
+            textIdx[index] = intern(parser.getAttributeValue(null, "text")?.replace("&#10;", "\n"))
+            contentDescIdx[index] = intern(parser.getAttributeValue(null, "content-desc"))
+            resourceIdIdx[index] = intern(parser.getAttributeValue(null, "resource-id"))
+
+            val boundsValue = parser.getAttributeValue(null, "bounds")
+            if (boundsValue == null || !parseBounds(boundsValue, bounds, index * 4)) {
+                bounds.fill(NO_BOUNDS, index * 4, index * 4 + 4)
+            }
+
+            var nodeFlags = 0
+            for ((attribute, flag) in FLAG_ATTRIBUTES) {
+                if (parser.getAttributeValue(null, attribute) == "true") nodeFlags = nodeFlags or flag
+            }
+            flags[index] = nodeFlags
+
+            stack.add(index)
+        }
+
+        fun endNode() {
+            if (stack.isEmpty()) return
+            val index = stack.removeAt(stack.size - 1)
+            subtreeSize[index] = count - index
+        }
+
+        fun build(version: Long): UiSnapshot {
+            // 容错：未闭合的节点
+            while (stack.isNotEmpty()) endNode()
+
+            val stringArray = strings.toTypedArray()
+            val nodeHash = LongArray(count)
+            val subtreeHash = LongArray(count)
+            for (i in 0 until count) {
+                var h = HASH_SEED
+                h = mix(h, stringHash(stringArray, classNameIdx[i]))
+                h = mix(h, stringHash(stringArray, textIdx[i]))
+                h = mix(h, stringHash(stringArray, contentDescIdx[i]))
+                h = mix(h, stringHash(stringArray, resourceIdIdx[i]))
+                for (k in 0 until 4) h = mix(h, bounds[i * 4 + k].toLong())
+                h = mix(h, flags[i].toLong())
+                nodeHash[i] = h
+            }
+            // 先序编号中子节点总在父节点之后，逆序遍历即可自底向上合并子树哈希
+            for (i in count - 1 downTo 0) {
+                var h = nodeHash[i]
+                var child = firstChild[i]
+                while (child >= 0) {
+                    h = mix(h, subtreeHash[child])
+                    child = nextSibling[child]
+                }
+                subtreeHash[i] = h
+            }
+
+            return UiSnapshot(
+                version = version,
+                nodeCount = count,
+                parent = parent.copyOf(count),
+                firstChild = firstChild.copyOf(count),
+                nextSibling = nextSibling.copyOf(count),
+                subtreeSize = subtreeSize.copyOf(count),
+                bounds = bounds.copyOf(count * 4),
+                flags = flags.copyOf(count),
+                classNameIdx = classNameIdx.copyOf(count),
+                textIdx = textIdx.copyOf(count),
+                contentDescIdx = contentDescIdx.copyOf(count),
+                resourceIdIdx = resourceIdIdx.copyOf(count),
+                strings = stringArray,
+                nodeHash = nodeHash,
+                subtreeHash = subtreeHash,
+                packageName = packageName,
+                sourceLength = sourceLength
+            )
+        }
+
+        private fun stringHash(table: Array<String>, index: Int): Long =
+            if (index < 0) 0L else table[index].hashCode().toLong() + 1
+    }
+
+    fun className(index: Int): String? = stringAt(classNameIdx[index])
+    fun text(index: Int): String? = stringAt(textIdx[index])
+    fun contentDesc(index: Int): String? = stringAt(contentDescIdx[index])
+    fun resourceId(index: Int): String? = stringAt(resourceIdIdx[index])
+    fun hasFlag(index: Int, flag: Int): Boolean = (flags[index] and flag) != 0
+
+    fun boundsString(index: Int): String? {
+        val offset = index * 4
+        if (bounds[offset] == NO_BOUNDS) return null
+        return "[${bounds[offset]},${bounds[offset + 1]}][${bounds[offset + 2]},${bounds[offset + 3]}]"
+    }
+
+    /** 共享节点表，仅替换版本号 */
+    fun withVersion(newVersion: Long): UiSnapshot = UiSnapshot(
+        newVersion, nodeCount, parent, firstChild, nextSibling, subtreeSize, bounds, flags,
+        classNameIdx, textIdx, contentDescIdx, resourceIdIdx, strings, nodeHash, subtreeHash,
+        packageName, sourceLength
+    )
+
+    /** 子节点下标列表 */
+    fun children(index: Int): List<Int> {
+        val result = ArrayList<Int>()
+        var child = firstChild[index]
+        while (child >= 0) {
+            result.add(child)
+            child = nextSibling[child]
+        }
+        return result
+    }
+
+    /** 转换为现有工具输出使用的 [SimplifiedUINode] 子树 */
+    fun toSimplifiedUINode(index: Int = 0): SimplifiedUINode {
+        if (nodeCount == 0) return EMPTY_NODE
+        return SimplifiedUINode(
+            className = className(index),
+            text = text(index),
+            contentDesc = contentDesc(index),
+            resourceId = resourceId(index),
+            bounds = boundsString(index),
+            isClickable = hasFlag(index, FLAG_CLICKABLE),
+            children = children(index).map { toSimplifiedUINode(it) }
+        )
+    }
+
+    private fun stringAt(index: Int): String? = if (index < 0) null else strings[index]
+}
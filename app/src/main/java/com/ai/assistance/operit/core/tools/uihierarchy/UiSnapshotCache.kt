@@ -0,0 +1,123 @@
+package com.ai.assistance.operit.core.tools.uihierarchy
+
+import android.os.SystemClock
+import com.ai.assistance.operit.util.AppLogger
+
+/**
+ * UI快照缓存（纯内存）
+ *
+ * 按来源（例如 "accessibility"、"shell:0"）保存最近一次获取到的XML与解析后的 [UiSnapshot]：
+ * - XML与上一次完全相同时直接复用快照，不再重复解析
+ * - 每次更新分配单调递增的版本号，并保留最近几个版本的快照，供调用方请求相对自己上次看到的版本的差异。
+ *   同一来源会被多个调用方（AI工具调用、UI调试器、附件截取等）共用，因此差异基准由调用方指定，而不是"上一次更新"
+ * - 记录最近若干步的解析/输出指标，用于评估差异输出带来的收益
+ */
+object UiSnapshotCache {
+    private const val TAG = "UiSnapshotCache"
+
+    /** 保留的指标步数 */
+    private const val MAX_METRICS = 50
+
+    /** 每个来源保留的历史快照数 */
+    private const val MAX_HISTORY = 8
+
+    /** 单步指标 */
+    data class StepMetrics(
+        val source: String,
+        val version: Long,
+        val xmlLength: Int,
+        val nodeCount: Int,
+        val parseTimeMs: Double,
+        val reused: Boolean,
+        val fullPayloadBytes: Int,
+        val payloadBytes: Int,
+        val changedSubtrees: Int
+    )
+
+    /**
+     * 一次更新的结果
+     * @param history 同一来源最近的快照（含当前快照），按版本从旧到新
+     */
+    class Update(
+        val source: String,
+        val snapshot: UiSnapshot,
+        private val history: List<UiSnapshot>,
+        val parseTimeMs: Double,
+        val reused: Boolean
+    ) {
+        /** 指定版本的快照；已被淘汰或不属于该来源时返回null */
+        fun snapshotAt(version: Long): UiSnapshot? = history.lastOrNull { it.version == version }
+
+        /** 相对指定版本的结构化差异；该版本不可用时返回null，调用方应返回全量结果 */
+        fun diffFrom(baseVersion: Long): UiSnapshotDiff? =
+            snapshotAt(baseVersion)?.let { UiSnapshotDiff.compute(it, snapshot) }
+    }
+
+    private class SourceState(val xml: String, val snapshot: UiSnapshot, val history: List<UiSnapshot>)
+
+    private val sources = HashMap<String, SourceState>()
+    private val metrics = ArrayDeque<StepMetrics>()
+    private var nextVersion = 1L
+
+    /**
+     * 用新获取的XML更新指定来源的快照
+     */
+    fun update(source: String, xml: String): Update {
+        val previous = synchronized(this) { sources[source] }
+        if (previous != null && previous.xml == xml) {
+            return Update(source, previous.snapshot, previous.history, 0.0, reused = true)
+        }
+
+        // 解析放在锁外，避免不同来源互相阻塞
+        val start = SystemClock.elapsedRealtimeNanos()
+        val parsed = UiSnapshot.parse(xml)
+        val parseTimeMs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000.0
+
+        return synchronized(this) {
+            val snapshot = parsed.withVersion(nextVersion++)
+            // 以当前保存的历史为准：解析期间其他调用方可能已经更新过同一来源
+            val history = (sources[source]?.history.orEmpty() + snapshot).takeLast(MAX_HISTORY)
+            sources[source] = SourceState(xml, snapshot, history)
+            Update(source, snapshot, history, parseTimeMs, reused = false)
+        }
+    }
+
+    /**
+     * 记录一次输出的指标
+     * @param fullPayloadBytes 全量输出的字节数
+     * @param payloadBytes 实际输出的字节数（差异模式下可能远小于全量）
+     */
+    @Synchronized
+    fun recordPayload(update: Update, fullPayloadBytes: Int, payloadBytes: Int, changedSubtrees: Int) {
+        val step = StepMetrics(
+            source = update.source,
+            version = update.snapshot.version,
+            xmlLength = update.snapshot.sourceLength,
+            nodeCount = update.snapshot.nodeCount,
+            parseTimeMs = update.parseTimeMs,
+            reused = update.reused,
+            fullPayloadBytes = fullPayloadBytes,
+            payloadBytes = payloadBytes,
+            changedSubtrees = changedSubtrees
+        )
+        metrics.addLast(step)
+        while (metrics.size > MAX_METRICS) metrics.removeFirst()
+
+        AppLogger.d(
+            TAG,
+            "source=${step.source} v${step.version} xml=${step.xmlLength} nodes=${step.nodeCount} " +
+                "parse=${"%.2f".format(step.parseTimeMs)}ms reused=${step.reused} " +
+                "payload=${step.payloadBytes}/${step.fullPayloadBytes}B changed=${step.changedSubtrees}"
+        )
+    }
+
+    /** 最近若干步的指标（按时间顺序） */
+    @Synchronized
+    fun recentMetrics(): List<StepMetrics> = metrics.toList()
+
+    /** 清除指定来源（为null时清除全部）的缓存快照 */
+    @Synchronized
+    fun invalidate(source: String? = null) {
+        if (source == null) sources.clear() else sources.remove(source)
+    }
+}
@@ -0,0 +1,104 @@
+package com.ai.assistance.operit.core.tools.uihierarchy
+
+/**
+ * 两个相邻UI快照之间的结构化差异。
+ *
+ * @property changedRoots 新快照中发生变化的子树根节点（先序下标）。新增节点或自身属性变化的节点以整棵子树上报，
+ *   属性未变的父节点只向下递归，不会被整体上报。
+ * @property removedRoots 旧快照中被移除的子树根节点（旧快照下标）
+ * @property isFull 变化过大（或没有可比较的基准）时退化为全量结果，此时 [changedRoots] 只包含根节点
+ */
+data class UiSnapshotDiff(
+    val baseVersion: Long,
+    val version: Long,
+    val changedRoots: List<Int>,
+    val removedRoots: List<Int>,
+    val isFull: Boolean
+) {
+    val isUnchanged: Boolean
+        get() = !isFull && changedRoots.isEmpty() && removedRoots.isEmpty()
+
+    companion object {
+        /** 变化节点数超过新快照节点总数的该比例时，直接返回全量 */
+        private const val FULL_FALLBACK_RATIO = 0.6
+
+        fun full(snapshot: UiSnapshot, baseVersion: Long = -1): UiSnapshotDiff =
+            UiSnapshotDiff(
+                baseVersion = baseVersion,
+                version = snapshot.version,
+                changedRoots = if (snapshot.nodeCount > 0) listOf(0) else emptyList(),
+                removedRoots = emptyList(),
+                isFull = true
+            )
+
+        /**
+         * 计算 old -> new 的差异。
+         * 子树哈希相同的分支直接跳过；子节点按 (className, resourceId, 同键序号) 配对，
+         * 因此列表中插入/删除一项不会导致其后所有兄弟节点都被判定为变化。
+         */
+        fun compute(old: UiSnapshot?, new: UiSnapshot): UiSnapshotDiff {
+            if (old == null || old.nodeCount == 0 || new.nodeCount == 0) {
+                return full(new, old?.version ?: -1)
+            }
+            if (old.subtreeHash[0] == new.subtreeHash[0]) {
+                return UiSnapshotDiff(old.version, new.version, emptyList(), emptyList(), isFull = false)
+            }
+            if (old.nodeHash[0] != new.nodeHash[0]) {
+                return full(new, old.version)
+            }
+
+            val changed = ArrayList<Int>()
+            val removed = ArrayList<Int>()
+            compareChildren(old, new, 0, 0, changed, removed)
+
+            val changedNodeCount = changed.sumOf { new.subtreeSize[it] }
+            if (changedNodeCount > new.nodeCount * FULL_FALLBACK_RATIO) {
+                return full(new, old.version)
+            }
+            return UiSnapshotDiff(old.version, new.version, changed, removed, isFull = false)
+        }
+
+        private fun compareChildren(
+            old: UiSnapshot,
+            new: UiSnapshot,
+            oldIndex: Int,
+            newIndex: Int,
+            changed: MutableList<Int>,
+            removed: MutableList<Int>
+        ) {
+            val oldChildren = old.children(oldIndex)
+            val available = HashMap<String, ArrayDeque<Int>>()
+            for (child in oldChildren) {
+                available.getOrPut(matchKey(old, child)) { ArrayDeque() }.addLast(child)
+            }
+
+            val matchedOld = HashSet<Int>()
+            var child = new.firstChild[newIndex]
+            while (child >= 0) {
+                val candidates = available[matchKey(new, child)]
+                val counterpart = candidates?.removeFirstOrNull()
+                when {
+                    counterpart == null -> changed.add(child)
+                    old.subtreeHash[counterpart] == new.subtreeHash[child] -> matchedOld.add(counterpart)
+                    old.nodeHash[counterpart] != new.nodeHash[child] -> {
+                        matchedOld.add(counterpart)
+                        changed.add(child)
+                    }
+                    else -> {
+                        matchedOld.add(counterpart)
+                        compareChildren(old, new, counterpart, child, changed, removed)
+                    }
+                }
+                child = new.nextSibling[child]
+            }
+
+            for (oldChild in oldChildren) {
+                if (oldChild !in matchedOld) removed.add(oldChild)
+            }
+        }
+
+        private fun matchKey(snapshot: UiSnapshot, index: Int): String =
+            "${snapshot.classNameIdx[index].let { if (it < 0) "" else snapshot.strings[it] }}|" +
+                (snapshot.resourceIdIdx[index].let { if (it < 0) "" else snapshot.strings[it] })
+    }
+}
@@ -20,6 +20,10 @@ object OperitBackupDirs {
         return ensureDir(File(backupRootDir(), "room_db"))
     }
 
+    fun roomDbChunksDir(): File {
+        return ensureDir(File(roomDbDir(), "chunks"))
+    }
+
     fun chatDir(): File {
         return ensureDir(File(backupRootDir(), "chat"))
     }
@@ -23,6 +23,8 @@ object RoomDatabaseBackupManager {
     private const val DB_NAME = "app_database"
     private const val AUTO_BACKUP_FILE_PREFIX = "room_db_backup_"
     private const val MANUAL_BACKUP_FILE_PREFIX = "room_db_manual_backup_"
+    // 每日自动备份使用增量快照：清单文件 + 共享的块存储
+    private const val SNAPSHOT_SUFFIX = ".dbsnap"
 
     data class BackupResult(
         val performed: Boolean,
@@ -74,37 +76,31 @@ object RoomDatabaseBackupManager {
 
         try {
             val sqliteDb: SupportSQLiteDatabase = AppDatabase.getDatabase(context).openHelper.writableDatabase
-            sqliteDb.query("PRAGMA wal_checkpoint(FULL)").close()
+            // TRUNCATE 清空 WAL，避免每次备份都产生新的 WAL 块
+            sqliteDb.query("PRAGMA wal_checkpoint(TRUNCATE)").close()
         } catch (e: Exception) {
             AppLogger.w(TAG, "wal_checkpoint failed", e)
         }
 
         val operitDir = OperitBackupDirs.roomDbDir()
-
-        val targetFile = File(operitDir, "${AUTO_BACKUP_FILE_PREFIX}${day}.zip")
-        val tmpFile = File(operitDir, "${targetFile.name}.tmp")
-
-        if (tmpFile.exists()) {
-            tmpFile.delete()
-        }
+        val targetFile = File(operitDir, "${AUTO_BACKUP_FILE_PREFIX}${day}${SNAPSHOT_SUFFIX}")
 
         val walFile = File(dbFile.absolutePath + "-wal")
         val shmFile = File(dbFile.absolutePath + "-shm")
 
-        writeZip(tmpFile, mapOf(
-            DB_NAME to dbFile,
-            "${DB_NAME}-wal" to walFile,
-            "${DB_NAME}-shm" to shmFile
-        ))
-
-        if (targetFile.exists()) {
-            targetFile.delete()
-        }
-
-        if (!tmpFile.renameTo(targetFile)) {
-            tmpFile.copyTo(targetFile, overwrite = true)
-            tmpFile.delete()
-        }
+        val stats = RoomDatabaseChunkStore(OperitBackupDirs.roomDbChunksDir()).createSnapshot(
+            mapOf(
+                DB_NAME to dbFile,
+                "${DB_NAME}-wal" to walFile,
+                "${DB_NAME}-shm" to shmFile
+            ),
+            targetFile
+        )
+        AppLogger.i(
+            TAG,
+            "Incremental backup ${targetFile.name}: read ${stats.bytesRead} bytes, wrote ${stats.bytesWritten} bytes, " +
+                "${stats.newChunkCount}/${stats.chunkCount} new chunks in ${stats.durationMs}ms"
+        )
         return targetFile
     }
 
@@ -178,11 +174,18 @@ object RoomDatabaseBackupManager {
 
         val sorted = deduped.sortedWith(compareByDescending<File> { it.lastModified() }.thenByDescending { it.name })
         sorted.drop(safeKeepLatest).forEach { it.delete() }
+
+        // 回收不再被任何快照清单引用的块
+        val liveSnapshots = sorted.take(safeKeepLatest).filter { it.name.endsWith(SNAPSHOT_SUFFIX) }
+        val removedChunks = RoomDatabaseChunkStore(OperitBackupDirs.roomDbChunksDir()).collectGarbage(liveSnapshots)
+        if (removedChunks > 0) {
+            AppLogger.d(TAG, "Removed $removedChunks unreferenced backup chunks")
+        }
     }
 
     private fun isRoomDatabaseBackupFileName(name: String): Boolean {
         return (name.startsWith(AUTO_BACKUP_FILE_PREFIX) || name.startsWith(MANUAL_BACKUP_FILE_PREFIX)) &&
-            name.endsWith(".zip")
+            (name.endsWith(".zip") || name.endsWith(SNAPSHOT_SUFFIX))
     }
 
     private fun writeZip(outputFile: File, entries: Map<String, File>) {
@@ -205,7 +208,7 @@ object RoomDatabaseBackupManager {
     }
 
     private fun parseBackupDay(fileName: String): LocalDate {
-        val raw = fileName.removePrefix(AUTO_BACKUP_FILE_PREFIX).removeSuffix(".zip")
+        val raw = fileName.removePrefix(AUTO_BACKUP_FILE_PREFIX).removeSuffix(".zip").removeSuffix(SNAPSHOT_SUFFIX)
         return try {
             LocalDate.parse(raw, DateTimeFormatter.ISO_DATE)
         } catch (_: Exception) {
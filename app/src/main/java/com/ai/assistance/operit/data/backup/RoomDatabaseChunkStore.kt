@@ -0,0 +1,257 @@
+package com.ai.assistance.operit.data.backup
+
+import com.ai.assistance.operit.util.AppLogger
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.security.MessageDigest
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.InflaterInputStream
+import org.json.JSONArray
+import org.json.JSONObject
+
+/**
+ * 数据库增量备份的内容寻址块存储
+ *
+ * 数据库文件按固定大小（若干个 SQLite 页）切块，每块以 SHA-256 命名、压缩后存放在 [chunksDir] 下，
+ * 每次备份只写一个清单文件（记录各文件的块哈希序列）以及此前不存在的块。
+ * 未变化的页在各次备份之间共享；任意一个清单都能还原出当时的完整文件；
+ * [collectGarbage] 删除不再被任何清单引用的块。
+ */
+class RoomDatabaseChunkStore(private val chunksDir: File) {
+
+    companion object {
+        private const val TAG = "RoomDbChunkStore"
+        private const val MANIFEST_VERSION = 1
+        private const val DEFAULT_PAGE_SIZE = 4096
+        // 每块包含的页数：太小会产生过多文件，太大则小改动也要重写大量数据
+        private const val PAGES_PER_CHUNK = 16
+        private const val TMP_SUFFIX = ".tmp"
+
+        /** 从 SQLite 文件头读取页大小，无法识别时使用默认值 */
+        fun readPageSize(dbFile: File): Int {
+            if (!dbFile.exists() || dbFile.length() < 100) return DEFAULT_PAGE_SIZE
+            val header = ByteArray(18)
+            FileInputStream(dbFile).use { input ->
+                if (input.read(header) != header.size) return DEFAULT_PAGE_SIZE
+            }
+            if (String(header, 0, 15, Charsets.US_ASCII) != "SQLite format 3") return DEFAULT_PAGE_SIZE
+            val raw = ((header[16].toInt() and 0xFF) shl 8) or (header[17].toInt() and 0xFF)
+            return when {
+                raw == 1 -> 65536
+                raw >= 512 && raw and (raw - 1) == 0 -> raw
+                else -> DEFAULT_PAGE_SIZE
+            }
+        }
+    }
+
+    /** 一次备份的统计 */
+    data class SnapshotStats(
+        val bytesRead: Long,
+        val bytesWritten: Long,
+        val chunkCount: Int,
+        val newChunkCount: Int,
+        val durationMs: Long
+    )
+
+    private class FileEntry(val name: String, val size: Long, val chunkSize: Int, val chunks: List<String>)
+
+    /**
+     * 创建快照
+     * @param files 清单中的文件名 -> 源文件，不存在的文件会被跳过
+     * @param manifestFile 写入的清单文件，先写临时文件再替换
+     */
+    fun createSnapshot(files: Map<String, File>, manifestFile: File): SnapshotStats {
+        val startTime = System.currentTimeMillis()
+        chunksDir.mkdirs()
+        var bytesRead = 0L
+        var bytesWritten = 0L
+        var chunkCount = 0
+        var newChunkCount = 0
+        val entries = ArrayList<FileEntry>()
+
+        for ((name, file) in files) {
+            if (!file.exists() || !file.isFile) continue
+            val chunkSize = readPageSize(file) * PAGES_PER_CHUNK
+            val hashes = ArrayList<String>()
+            val buffer = ByteArray(chunkSize)
+            var size = 0L
+            BufferedInputStream(FileInputStream(file), chunkSize).use { input ->
+                while (true) {
+                    val read = readFully(input, buffer)
+                    if (read <= 0) break
+                    size += read
+                    val hash = sha256(buffer, read)
+                    val written = writeChunkIfAbsent(hash, buffer, read)
+                    if (written > 0) {
+                        bytesWritten += written
+                        newChunkCount++
+                    }
+                    hashes.add(hash)
+                    if (read < chunkSize) break
+                }
+            }
+            bytesRead += size
+            chunkCount += hashes.size
+            entries.add(FileEntry(name, size, chunkSize, hashes))
+        }
+
+        val manifestJson = JSONObject()
+            .put("version", MANIFEST_VERSION)
+            .put("createdAt", System.currentTimeMillis())
+            .put("files", JSONArray().apply {
+                entries.forEach { entry ->
+                    put(
+                        JSONObject()
+                            .put("name", entry.name)
+                            .put("size", entry.size)
+                            .put("chunkSize", entry.chunkSize)
+                            .put("chunks", JSONArray(entry.chunks))
+                    )
+                }
+            })
+            .toString()
+        manifestFile.parentFile?.mkdirs()
+        val tmpManifest = File(manifestFile.parentFile, manifestFile.name + TMP_SUFFIX)
+        tmpManifest.writeText(manifestJson)
+        bytesWritten += tmpManifest.length()
+        if (manifestFile.exists()) manifestFile.delete()
+        if (!tmpManifest.renameTo(manifestFile)) {
+            tmpManifest.copyTo(manifestFile, overwrite = true)
+            tmpManifest.delete()
+        }
+
+        return SnapshotStats(
+            bytesRead = bytesRead,
+            bytesWritten = bytesWritten,
+            chunkCount = chunkCount,
+            newChunkCount = newChunkCount,
+            durationMs = System.currentTimeMillis() - startTime
+        )
+    }
+
+    /**
+     * 按清单还原文件
+     * @param target 清单中的文件名 -> 还原目标；清单中没有的文件不会被写入
+     * @return 实际还原的文件名
+     */
+    fun restoreSnapshot(manifestFile: File, target: (String) -> File?): Set<String> {
+        val restored = HashSet<String>()
+        for (entry in readManifest(manifestFile)) {
+            val out = target(entry.name) ?: continue
+            out.parentFile?.mkdirs()
+            var size = 0L
+            BufferedOutputStream(FileOutputStream(out), 64 * 1024).use { output ->
+                for (hash in entry.chunks) {
+                    val bytes = readChunk(hash)
+                    output.write(bytes)
+                    size += bytes.size
+                }
+            }
+            if (size != entry.size) {
+                throw IOException("Restored ${entry.name} has $size bytes, expected ${entry.size}")
+            }
+            restored.add(entry.name)
+        }
+        return restored
+    }
+
+    /** 删除未被任何清单引用的块，返回删除的块数量 */
+    fun collectGarbage(liveManifests: Collection<File>): Int {
+        val live = HashSet<String>()
+        for (manifest in liveManifests) {
+            try {
+                readManifest(manifest).forEach { live.addAll(it.chunks) }
+            } catch (e: Exception) {
+                // 无法解析的清单无法确定引用关系，放弃本次回收以免误删
+                AppLogger.w(TAG, "Skip garbage collection, unreadable manifest ${manifest.name}: ${e.message}")
+                return 0
+            }
+        }
+        var deleted = 0
+        chunksDir.listFiles()?.forEach { bucket ->
+            bucket.listFiles()?.forEach { chunk ->
+                if (chunk.name.endsWith(TMP_SUFFIX) || chunk.name !in live) {
+                    if (chunk.delete()) deleted++
+                }
+            }
+            if (bucket.isDirectory && bucket.list().isNullOrEmpty()) bucket.delete()
+        }
+        return deleted
+    }
+
+    private fun readManifest(manifestFile: File): List<FileEntry> {
+        val json = JSONObject(manifestFile.readText())
+        if (json.getInt("version") != MANIFEST_VERSION) {
+            throw IOException("Unsupported backup manifest version: ${json.getInt("version")}")
+        }
+        val files = json.getJSONArray("files")
+        return (0 until files.length()).map { i ->
+            val file = files.getJSONObject(i)
+            val chunks = file.getJSONArray("chunks")
+            FileEntry(
+                name = file.getString("name"),
+                size = file.getLong("size"),
+                chunkSize = file.getInt("chunkSize"),
+                chunks = (0 until chunks.length()).map { chunks.getString(it) }
+            )
+        }
+    }
+
+    private fun chunkFile(hash: String) = File(File(chunksDir, hash.substring(0, 2)), hash)
+
+    /** 块不存在时压缩写入，返回写入的字节数（已存在返回 0） */
+    private fun writeChunkIfAbsent(hash: String, buffer: ByteArray, length: Int): Long {
+        val file = chunkFile(hash)
+        if (file.exists()) return 0L
+        file.parentFile?.mkdirs()
+        val tmp = File(file.parentFile, file.name + TMP_SUFFIX)
+        val deflater = Deflater(Deflater.BEST_SPEED)
+        try {
+            DeflaterOutputStream(FileOutputStream(tmp), deflater).use { it.write(buffer, 0, length) }
+        } finally {
+            deflater.end()
+        }
+        val written = tmp.length()
+        if (!tmp.renameTo(file)) {
+            tmp.delete()
+            if (!file.exists()) throw IOException("Failed to store chunk $hash")
+        }
+        return written
+    }
+
+    /** 读取并校验块内容 */
+    private fun readChunk(hash: String): ByteArray {
+        val file = chunkFile(hash)
+        if (!file.exists()) throw IOException("Missing backup chunk $hash")
+        val bytes = InflaterInputStream(FileInputStream(file)).use { it.readBytes() }
+        if (sha256(bytes, bytes.size) != hash) throw IOException("Corrupted backup chunk $hash")
+        return bytes
+    }
+
+    private fun readFully(input: InputStream, buffer: ByteArray): Int {
+        var total = 0
+        while (total < buffer.size) {
+            val read = input.read(buffer, total, buffer.size - total)
+            if (read <= 0) break
+            total += read
+        }
+        return total
+    }
+
+    private fun sha256(bytes: ByteArray, length: Int): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(bytes, 0, length)
+        val sb = StringBuilder(64)
+        for (b in digest.digest()) {
+            val v = b.toInt() and 0xFF
+            sb.append("0123456789abcdef"[v ushr 4]).append("0123456789abcdef"[v and 0x0F])
+        }
+        return sb.toString()
+    }
+}
@@ -21,6 +21,7 @@ object RoomDatabaseRestoreManager {
 
     private const val AUTO_BACKUP_FILE_PREFIX = "room_db_backup_"
     private const val MANUAL_BACKUP_FILE_PREFIX = "room_db_manual_backup_"
+    private const val SNAPSHOT_SUFFIX = ".dbsnap"
 
     fun listRecentAutoBackups(context: Context, limit: Int = 3): List<File> {
         val newDir = OperitBackupDirs.roomDbDir()
@@ -29,7 +30,8 @@ object RoomDatabaseRestoreManager {
         val backups = sequenceOf(newDir, legacyDir)
             .flatMap { dir ->
                 (dir.listFiles { f ->
-                    f.isFile && f.name.startsWith(AUTO_BACKUP_FILE_PREFIX) && f.name.endsWith(".zip")
+                    f.isFile && f.name.startsWith(AUTO_BACKUP_FILE_PREFIX) &&
+                        (f.name.endsWith(".zip") || f.name.endsWith(SNAPSHOT_SUFFIX))
                 }?.asSequence() ?: emptySequence())
             }
             .distinctBy { it.name }
@@ -58,7 +60,7 @@ object RoomDatabaseRestoreManager {
 
     fun isRoomDatabaseBackupFile(name: String): Boolean {
         return (name.startsWith(AUTO_BACKUP_FILE_PREFIX) || name.startsWith(MANUAL_BACKUP_FILE_PREFIX)) &&
-            name.endsWith(".zip")
+            (name.endsWith(".zip") || name.endsWith(SNAPSHOT_SUFFIX))
     }
 
     suspend fun restoreFromBackupUri(context: Context, uri: Uri) {
@@ -118,32 +120,48 @@ object RoomDatabaseRestoreManager {
         var extractedShm = false
 
         try {
-            ZipInputStream(BufferedInputStream(FileInputStream(zipFile))).use { zis ->
-                while (true) {
-                    val entry = zis.nextEntry ?: break
-                    val name = entry.name
-
-                    when (name) {
-                        DB_NAME -> {
-                            writeStreamToFile(zis, tmpDb)
-                            extractedDb = true
-                        }
-                        "${DB_NAME}-wal" -> {
-                            writeStreamToFile(zis, tmpWal)
-                            extractedWal = true
-                        }
-                        "${DB_NAME}-shm" -> {
-                            writeStreamToFile(zis, tmpShm)
-                            extractedShm = true
+            if (zipFile.name.endsWith(SNAPSHOT_SUFFIX)) {
+                // 增量快照：按清单从块存储重建文件
+                val restored = RoomDatabaseChunkStore(OperitBackupDirs.roomDbChunksDir())
+                    .restoreSnapshot(zipFile) { name ->
+                        when (name) {
+                            DB_NAME -> tmpDb
+                            "${DB_NAME}-wal" -> tmpWal
+                            "${DB_NAME}-shm" -> tmpShm
+                            else -> null
                         }
                     }
+                extractedDb = DB_NAME in restored
+                extractedWal = "${DB_NAME}-wal" in restored
+                extractedShm = "${DB_NAME}-shm" in restored
+            } else {
+                ZipInputStream(BufferedInputStream(FileInputStream(zipFile))).use { zis ->
+                    while (true) {
+                        val entry = zis.nextEntry ?: break
+                        val name = entry.name
+
+                        when (name) {
+                            DB_NAME -> {
+                                writeStreamToFile(zis, tmpDb)
+                                extractedDb = true
+                            }
+                            "${DB_NAME}-wal" -> {
+                                writeStreamToFile(zis, tmpWal)
+                                extractedWal = true
+                            }
+                            "${DB_NAME}-shm" -> {
+                                writeStreamToFile(zis, tmpShm)
+                                extractedShm = true
+                            }
+                        }
 
-                    zis.closeEntry()
+                        zis.closeEntry()
+                    }
                 }
             }
 
             if (!extractedDb) {
-                throw IllegalArgumentException("Invalid backup zip: missing $DB_NAME")
+                throw IllegalArgumentException("Invalid backup: missing $DB_NAME")
             }
 
             targetWal.delete()
@@ -111,6 +111,29 @@ interface ChatDao {
     @Query("SELECT * FROM chats WHERE parentChatId = :parentChatId ORDER BY displayOrder ASC")
     fun getBranchesByParentIdFlow(parentChatId: String): Flow<List<ChatEntity>>
 
+    /** 获取与指定聊天共享消息的写时复制分支 */
+    @Query("SELECT * FROM chats WHERE baseChatId = :baseChatId")
+    suspend fun getChatsByBase(baseChatId: String): List<ChatEntity>
+
+    /** 更新写时复制分支的共享来源与分叉点 */
+    @Query("UPDATE chats SET baseChatId = :baseChatId, baseTimestamp = :baseTimestamp WHERE id = :chatId")
+    suspend fun updateChatBase(chatId: String, baseChatId: String?, baseTimestamp: Long?)
+
+    /** 获取共享链深度超过 maxDepth 的聊天ID */
+    @Query(
+        """
+        WITH RECURSIVE chain(id, baseId, depth) AS (
+            SELECT id, baseChatId, 1 FROM chats WHERE baseChatId IS NOT NULL
+            UNION ALL
+            SELECT chain.id, c.baseChatId, chain.depth + 1
+            FROM chain JOIN chats c ON c.id = chain.baseId
+            WHERE c.baseChatId IS NOT NULL AND chain.depth < 64
+        )
+        SELECT id FROM chain GROUP BY id HAVING MAX(depth) > :maxDepth ORDER BY MAX(depth) DESC
+        """
+    )
+    suspend fun getChatIdsWithBaseDepthOver(maxDepth: Int): List<String>
+
     /** 获取所有没有父对话的对话（即主对话） */
     @Query("SELECT * FROM chats WHERE parentChatId IS NULL ORDER BY displayOrder ASC")
     suspend fun getMainChats(): List<ChatEntity>
@@ -162,19 +185,30 @@ interface ChatDao {
         timestamp: Long = System.currentTimeMillis()
     ): Int
 
-    /** 获取按角色卡分组的聊天与消息统计 */
+    /**
+     * 获取按角色卡分组的聊天与消息统计。
+     * 消息数按每个聊天的可见消息计算，分支从祖先继承的消息也计入，与 MessageDao.getMessageCount 一致。
+     */
     @Query(
         """
+        WITH RECURSIVE lineage(rootId, chatId, upTo, depth) AS (
+            SELECT id, id, 9223372036854775807, 0 FROM chats
+            UNION ALL
+            SELECT l.rootId, c.baseChatId, MIN(l.upTo, c.baseTimestamp), l.depth + 1
+            FROM chats c JOIN lineage l ON c.id = l.chatId
+            WHERE c.baseChatId IS NOT NULL AND c.baseTimestamp IS NOT NULL AND l.depth < 64
+        ),
+        mc AS (
+            SELECT l.rootId AS chatId, COUNT(*) AS messageCount
+            FROM lineage l JOIN messages m ON m.chatId = l.chatId AND m.timestamp <= l.upTo
+            GROUP BY l.rootId
+        )
         SELECT 
             c.characterCardName AS characterCardName,
             COUNT(c.id) AS chatCount,
             IFNULL(SUM(mc.messageCount), 0) AS messageCount
         FROM chats c
-        LEFT JOIN (
-            SELECT chatId, COUNT(*) AS messageCount
-            FROM messages
-            GROUP BY chatId
-        ) mc ON c.id = mc.chatId
+        LEFT JOIN mc ON c.id = mc.chatId
         GROUP BY c.characterCardName
         """
     )
@@ -0,0 +1,27 @@
+package com.ai.assistance.operit.data.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.ai.assistance.operit.data.model.MessageBodyEntity
+
+/** 行外消息体DAO，消息体按内容哈希寻址，写入后不再修改 */
+@Dao
+interface MessageBodyDao {
+    /** 批量写入消息体，已存在的哈希保持不变 */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertBodies(bodies: List<MessageBodyEntity>)
+
+    /** 按哈希批量读取消息体 */
+    @Query("SELECT * FROM message_bodies WHERE hash IN (:hashes)")
+    suspend fun getBodies(hashes: List<String>): List<MessageBodyEntity>
+
+    /** 按哈希顺序分批遍历全部消息体，用于全文搜索 */
+    @Query("SELECT * FROM message_bodies WHERE hash > :afterHash ORDER BY hash ASC LIMIT :limit")
+    suspend fun getBodiesAfter(afterHash: String, limit: Int): List<MessageBodyEntity>
+
+    /** 删除不再被任何消息引用的消息体 */
+    @Query("DELETE FROM message_bodies WHERE hash NOT IN (SELECT bodyHash FROM messages WHERE bodyHash IS NOT NULL)")
+    suspend fun deleteUnreferenced(): Int
+}
@@ -0,0 +1,54 @@
+package com.ai.assistance.operit.data.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.Query
+import com.ai.assistance.operit.data.model.MessageChunkEntity
+import com.ai.assistance.operit.data.model.MessageChunkSignature
+import com.ai.assistance.operit.data.model.MessageEntity
+
+/** 消息分块DAO，供跨对话检索的增量索引使用 */
+@Dao
+interface MessageChunkDao {
+    /** 写入分块并返回分块ID */
+    @Insert
+    suspend fun insertChunks(chunks: List<MessageChunkEntity>): List<Long>
+
+    /** 按 messageId 倒序查找尚未分块的用户和 AI 消息，最新的消息最先被索引 */
+    @Query(
+        "SELECT * FROM messages m WHERE m.messageId < :beforeMessageId AND m.sender IN ('user', 'ai') " +
+            "AND NOT EXISTS (SELECT 1 FROM message_chunks c WHERE c.messageId = m.messageId) " +
+            "ORDER BY m.messageId DESC LIMIT :limit"
+    )
+    suspend fun getUnindexedMessages(beforeMessageId: Long, limit: Int): List<MessageEntity>
+
+    @Query("SELECT id FROM message_chunks WHERE messageId = :messageId")
+    suspend fun getChunkIdsForMessage(messageId: Long): List<Long>
+
+    /** 删除一条消息的全部分块，使其被重新索引 */
+    @Query("DELETE FROM message_chunks WHERE messageId = :messageId")
+    suspend fun deleteChunksForMessage(messageId: Long)
+
+    @Query("SELECT * FROM message_chunks WHERE id IN (:ids)")
+    suspend fun getChunksByIds(ids: List<Long>): List<MessageChunkEntity>
+
+    /** 按ID顺序分批读取分块 */
+    @Query("SELECT * FROM message_chunks WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    suspend fun getChunksAfter(afterId: Long, limit: Int): List<MessageChunkEntity>
+
+    /** 按ID顺序分批读取带向量的分块，用于从快照追赶或重建向量索引 */
+    @Query("SELECT * FROM message_chunks WHERE id > :afterId AND codes IS NOT NULL ORDER BY id ASC LIMIT :limit")
+    suspend fun getEmbeddedChunksAfter(afterId: Long, limit: Int): List<MessageChunkEntity>
+
+    @Query("SELECT COUNT(*) FROM message_chunks WHERE codes IS NOT NULL")
+    suspend fun getEmbeddedChunkCount(): Int
+
+    @Query("SELECT id, signature FROM message_chunks")
+    suspend fun getSignatures(): List<MessageChunkSignature>
+
+    @Query("SELECT COUNT(*) FROM message_chunks WHERE chatId IN (:chatIds)")
+    suspend fun countChunksForChats(chatIds: List<String>): Int
+
+    @Query("SELECT * FROM message_chunks WHERE chatId IN (:chatIds)")
+    suspend fun getChunksForChats(chatIds: List<String>): List<MessageChunkEntity>
+}
@@ -6,13 +6,111 @@ import androidx.room.OnConflictStrategy
 import androidx.room.Query
 import com.ai.assistance.operit.data.model.MessageEntity
 
-/** 消息DAO接口，定义对消息表的数据访问方法 */
+/**
+ * 消息DAO接口，定义对消息表的数据访问方法。
+ *
+ * 读取类查询按聊天的可见消息计算：写时复制分支自身只存储分叉点之后的消息，
+ * 分叉点及之前的消息通过 [LINEAGE] 沿 baseChatId 链从祖先聊天中拼接。
+ * 写入类查询只作用于聊天自身存储的消息。
+ */
 @Dao
 interface MessageDao {
+    companion object {
+        /**
+         * 分支链：当前聊天及其共享消息的祖先，upTo 为该祖先对当前聊天可见的最大时间戳。
+         * 同一时间戳只会由链上的一个聊天提供，因为每个分支自身的消息都晚于它的分叉点。
+         * 链深度限制为 64（与 ChatSearchIndex 一致），baseChatId 数据损坏成环时也能终止。
+         */
+        const val LINEAGE =
+            "WITH RECURSIVE lineage(chatId, upTo, depth) AS (" +
+                "SELECT :chatId, 9223372036854775807, 0 " +
+                "UNION ALL " +
+                "SELECT c.baseChatId, MIN(l.upTo, c.baseTimestamp), l.depth + 1 FROM chats c JOIN lineage l ON c.id = l.chatId " +
+                "WHERE c.baseChatId IS NOT NULL AND c.baseTimestamp IS NOT NULL AND l.depth < 64) "
+
+        /** 可见消息的 messageId，配合 [LINEAGE] 使用；先在索引上排序分页，再回表读取内容 */
+        private const val VISIBLE_IDS =
+            "SELECT m.messageId FROM messages m JOIN lineage l ON m.chatId = l.chatId AND m.timestamp <= l.upTo "
+
+        private const val VISIBLE =
+            "SELECT m.* FROM messages m JOIN lineage l ON m.chatId = l.chatId AND m.timestamp <= l.upTo "
+    }
+
     /** 获取指定聊天的所有消息，按时间戳排序 */
-    @Query("SELECT * FROM messages WHERE chatId = :chatId ORDER BY timestamp ASC")
+    @Query(LINEAGE + VISIBLE + "ORDER BY m.timestamp ASC")
     suspend fun getMessagesForChat(chatId: String): List<MessageEntity>
 
+    /** 获取指定聊天最新的若干条消息，按时间戳倒序，用于首屏加载 */
+    @Query(
+        LINEAGE + "SELECT * FROM messages WHERE messageId IN (" +
+            VISIBLE_IDS + "ORDER BY m.timestamp DESC LIMIT :limit) ORDER BY timestamp DESC"
+    )
+    suspend fun getLatestMessages(chatId: String, limit: Int): List<MessageEntity>
+
+    /** 键集分页：获取早于指定时间戳的若干条消息，按时间戳倒序 */
+    @Query(
+        LINEAGE + "SELECT * FROM messages WHERE messageId IN (" +
+            VISIBLE_IDS + "WHERE m.timestamp < :beforeTimestamp ORDER BY m.timestamp DESC LIMIT :limit) " +
+            "ORDER BY timestamp DESC"
+    )
+    suspend fun getMessagesBefore(chatId: String, beforeTimestamp: Long, limit: Int): List<MessageEntity>
+
+    /** 获取时间戳位于 [fromTimestamp, toTimestamp) 区间内的消息，按时间戳排序 */
+    @Query(LINEAGE + VISIBLE + "WHERE m.timestamp >= :fromTimestamp AND m.timestamp < :toTimestamp ORDER BY m.timestamp ASC")
+    suspend fun getMessagesInRange(chatId: String, fromTimestamp: Long, toTimestamp: Long): List<MessageEntity>
+
+    /** 获取指定聊天的消息总数 */
+    @Query(LINEAGE + "SELECT COUNT(*) FROM messages m JOIN lineage l ON m.chatId = l.chatId AND m.timestamp <= l.upTo")
+    suspend fun getMessageCount(chatId: String): Int
+
+    /** 获取早于指定时间戳的消息数量 */
+    @Query(
+        LINEAGE + "SELECT COUNT(*) FROM messages m JOIN lineage l ON m.chatId = l.chatId AND m.timestamp <= l.upTo " +
+            "WHERE m.timestamp < :timestamp"
+    )
+    suspend fun countMessagesBefore(chatId: String, timestamp: Long): Int
+
+    /** 判断指定聊天中是否存在某个发送者的消息 */
+    @Query(
+        LINEAGE + "SELECT EXISTS(SELECT 1 FROM messages m JOIN lineage l ON m.chatId = l.chatId AND m.timestamp <= l.upTo " +
+            "WHERE m.sender = :sender)"
+    )
+    suspend fun hasMessageFromSender(chatId: String, sender: String): Boolean
+
+    /** 获取指定聊天中某个发送者最后一条消息的时间戳 */
+    @Query(
+        LINEAGE + "SELECT MAX(m.timestamp) FROM messages m JOIN lineage l ON m.chatId = l.chatId AND m.timestamp <= l.upTo " +
+            "WHERE m.sender = :sender"
+    )
+    suspend fun getLatestTimestampBySender(chatId: String, sender: String): Long?
+
+    /** 获取指定聊天中某个发送者在 [upToTimestamp]（包含）及之前最后一条消息的时间戳 */
+    @Query(
+        LINEAGE + "SELECT MAX(m.timestamp) FROM messages m JOIN lineage l ON m.chatId = l.chatId AND m.timestamp <= l.upTo " +
+            "WHERE m.sender = :sender AND m.timestamp <= :upToTimestamp"
+    )
+    suspend fun getLatestTimestampBySenderUpTo(chatId: String, sender: String, upToTimestamp: Long): Long?
+
+    /** 获取 [upToTimestamp]（包含）及之前的最后一条可见消息 */
+    @Query(LINEAGE + VISIBLE + "WHERE m.timestamp <= :upToTimestamp ORDER BY m.timestamp DESC LIMIT 1")
+    suspend fun getLastMessageUpTo(chatId: String, upToTimestamp: Long): MessageEntity?
+
+    /** 获取晚于 [afterTimestamp] 的第一条可见消息 */
+    @Query(LINEAGE + VISIBLE + "WHERE m.timestamp > :afterTimestamp ORDER BY m.timestamp ASC LIMIT 1")
+    suspend fun getFirstMessageAfter(chatId: String, afterTimestamp: Long): MessageEntity?
+
+    /** 获取指定聊天最后一条可见消息的时间戳 */
+    @Query(LINEAGE + "SELECT MAX(m.timestamp) FROM messages m JOIN lineage l ON m.chatId = l.chatId AND m.timestamp <= l.upTo")
+    suspend fun getLatestTimestamp(chatId: String): Long?
+
+    /** 获取指定聊天自身存储的、时间戳位于 (afterTimestamp, upToTimestamp] 区间内的消息 */
+    @Query("SELECT * FROM messages WHERE chatId = :chatId AND timestamp > :afterTimestamp AND timestamp <= :upToTimestamp ORDER BY timestamp ASC")
+    suspend fun getOwnMessagesInRange(chatId: String, afterTimestamp: Long, upToTimestamp: Long): List<MessageEntity>
+
+    /** 获取指定聊天自身存储的消息条数 */
+    @Query("SELECT COUNT(*) FROM messages WHERE chatId = :chatId")
+    suspend fun getOwnMessageCount(chatId: String): Int
+
     /** 插入单条消息并返回消息ID */
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insertMessage(message: MessageEntity): Long
@@ -21,10 +119,21 @@ interface MessageDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insertMessages(messages: List<MessageEntity>)
 
-    /** 更新消息内容 */
-    @Query("UPDATE messages SET content = :content WHERE messageId = :messageId")
+    /** 以内联方式更新消息内容，同时解除对行外消息体的引用 */
+    @Query("UPDATE messages SET content = :content, bodyHash = NULL WHERE messageId = :messageId")
     suspend fun updateMessageContent(messageId: Long, content: String)
 
+    /** 更新消息内容及其行外消息体引用，[bodyHash] 非空时 [content] 为预览 */
+    @Query("UPDATE messages SET content = :content, bodyHash = :bodyHash WHERE messageId = :messageId")
+    suspend fun updateMessageBody(messageId: Long, content: String, bodyHash: String?)
+
+    /** 按 messageId 顺序分批查找内容仍内联且超过指定长度的消息，用于把旧数据转存到行外 */
+    @Query(
+        "SELECT * FROM messages WHERE messageId > :afterMessageId AND bodyHash IS NULL " +
+            "AND length(content) > :minLength ORDER BY messageId ASC LIMIT :limit"
+    )
+    suspend fun getInlineMessagesLongerThan(afterMessageId: Long, minLength: Int, limit: Int): List<MessageEntity>
+
     /** 获取指定聊天中最大的序号 */
     @Query("SELECT MAX(orderIndex) FROM messages WHERE chatId = :chatId")
     suspend fun getMaxOrderIndex(chatId: String): Int?
@@ -33,6 +142,10 @@ interface MessageDao {
     @Query("DELETE FROM messages WHERE chatId = :chatId")
     suspend fun deleteAllMessagesForChat(chatId: String)
 
+    /** 按 messageId 批量读取消息 */
+    @Query("SELECT * FROM messages WHERE messageId IN (:messageIds)")
+    suspend fun getMessagesByIds(messageIds: List<Long>): List<MessageEntity>
+
     /** 根据时间戳查找消息 */
     @Query("SELECT * FROM messages WHERE chatId = :chatId AND timestamp = :timestamp LIMIT 1")
     suspend fun getMessageByTimestamp(chatId: String, timestamp: Long): MessageEntity?
@@ -48,6 +161,10 @@ interface MessageDao {
     @Query("SELECT DISTINCT chatId FROM messages WHERE content LIKE '%' || :query || '%' COLLATE NOCASE")
     suspend fun searchChatIdsByContent(query: String): List<String>
 
+    /** 查找引用了指定消息体的聊天ID列表（不重复） */
+    @Query("SELECT DISTINCT chatId FROM messages WHERE bodyHash IN (:hashes)")
+    suspend fun getChatIdsByBodyHashes(hashes: List<String>): List<String>
+
     /** 批量重命名消息中的角色名 */
     @Query("UPDATE messages SET roleName = :newName WHERE roleName = :oldName")
     suspend fun renameRoleName(oldName: String, newName: String): Int
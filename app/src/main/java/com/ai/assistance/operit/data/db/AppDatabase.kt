@@ -8,14 +8,18 @@ import androidx.room.TypeConverters
 import androidx.room.migration.Migration
 import androidx.sqlite.db.SupportSQLiteDatabase
 import com.ai.assistance.operit.data.dao.ChatDao
+import com.ai.assistance.operit.data.dao.MessageBodyDao
+import com.ai.assistance.operit.data.dao.MessageChunkDao
 import com.ai.assistance.operit.data.dao.MessageDao
 import com.ai.assistance.operit.data.model.ChatEntity
+import com.ai.assistance.operit.data.model.MessageBodyEntity
+import com.ai.assistance.operit.data.model.MessageChunkEntity
 import com.ai.assistance.operit.data.model.MessageEntity
 
-/** 应用数据库，包含问题记录表、聊天表和消息表 */
+/** 应用数据库，包含问题记录表、聊天表、消息表、行外消息体表和检索分块表 */
 @Database(
-        entities = [ProblemEntity::class, ChatEntity::class, MessageEntity::class],
-        version = 10,
+        entities = [ProblemEntity::class, ChatEntity::class, MessageEntity::class, MessageBodyEntity::class, MessageChunkEntity::class],
+        version = 14,
         exportSchema = false
 )
 @TypeConverters(StringListConverter::class)
@@ -30,6 +34,12 @@ abstract class AppDatabase : RoomDatabase() {
     /** 获取消息DAO */
     abstract fun messageDao(): MessageDao
 
+    /** 获取行外消息体DAO */
+    abstract fun messageBodyDao(): MessageBodyDao
+
+    /** 获取消息分块DAO */
+    abstract fun messageChunkDao(): MessageChunkDao
+
     companion object {
         @Volatile private var INSTANCE: AppDatabase? = null
 
@@ -155,6 +165,58 @@ abstract class AppDatabase : RoomDatabase() {
                     }
                 }
 
+        // 定义从版本10到11的迁移
+        private val MIGRATION_10_11 =
+                object : Migration(10, 11) {
+                    override fun migrate(db: SupportSQLiteDatabase) {
+                        // 为消息分页（按时间戳键集翻页）和聚合查询添加复合索引
+                        db.execSQL("CREATE INDEX IF NOT EXISTS `index_messages_chatId_timestamp` ON `messages` (`chatId`, `timestamp`)")
+                        db.execSQL("CREATE INDEX IF NOT EXISTS `index_messages_chatId_sender` ON `messages` (`chatId`, `sender`)")
+                    }
+                }
+
+        // 定义从版本11到12的迁移
+        private val MIGRATION_11_12 =
+                object : Migration(11, 12) {
+                    override fun migrate(db: SupportSQLiteDatabase) {
+                        // 向chats表添加写时复制分支的共享来源与分叉点，已有分支保持完整副本（两列为空）
+                        db.execSQL("ALTER TABLE chats ADD COLUMN `baseChatId` TEXT")
+                        db.execSQL("ALTER TABLE chats ADD COLUMN `baseTimestamp` INTEGER")
+                    }
+                }
+
+        // 定义从版本12到13的迁移
+        private val MIGRATION_12_13 =
+                object : Migration(12, 13) {
+                    override fun migrate(db: SupportSQLiteDatabase) {
+                        // 大消息体压缩后按内容哈希存入独立的表，messages 中只保留预览和哈希
+                        // 已有数据在迁移后由 ChatHistoryManager 在后台分批转存
+                        db.execSQL("ALTER TABLE messages ADD COLUMN `bodyHash` TEXT")
+                        db.execSQL("CREATE INDEX IF NOT EXISTS `index_messages_bodyHash` ON `messages` (`bodyHash`)")
+                        db.execSQL(
+                                "CREATE TABLE IF NOT EXISTS `message_bodies` (`hash` TEXT NOT NULL, `codec` INTEGER NOT NULL, " +
+                                        "`data` BLOB NOT NULL, `rawLength` INTEGER NOT NULL, PRIMARY KEY(`hash`))"
+                        )
+                    }
+                }
+
+        // 定义从版本13到14的迁移
+        private val MIGRATION_13_14 =
+                object : Migration(13, 14) {
+                    override fun migrate(db: SupportSQLiteDatabase) {
+                        // 跨对话检索的消息分块表，已有消息由 ChatSearchIndex 在后台增量分块
+                        db.execSQL(
+                                "CREATE TABLE IF NOT EXISTS `message_chunks` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                                        "`messageId` INTEGER NOT NULL, `chatId` TEXT NOT NULL, `timestamp` INTEGER NOT NULL, " +
+                                        "`chunkIndex` INTEGER NOT NULL, `startOffset` INTEGER NOT NULL, `endOffset` INTEGER NOT NULL, " +
+                                        "`signature` INTEGER NOT NULL, `codes` BLOB, `scale` REAL NOT NULL, " +
+                                        "FOREIGN KEY(`messageId`) REFERENCES `messages`(`messageId`) ON UPDATE NO ACTION ON DELETE CASCADE )"
+                        )
+                        db.execSQL("CREATE INDEX IF NOT EXISTS `index_message_chunks_messageId` ON `message_chunks` (`messageId`)")
+                        db.execSQL("CREATE INDEX IF NOT EXISTS `index_message_chunks_chatId` ON `message_chunks` (`chatId`)")
+                    }
+                }
+
         /** 获取数据库实例，单例模式 */
         fun getDatabase(context: Context): AppDatabase {
             return INSTANCE
@@ -165,7 +227,7 @@ abstract class AppDatabase : RoomDatabase() {
                                                 AppDatabase::class.java,
                                                 "app_database"
                                         )
-                                        .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10) // 添加新的迁移
+                                        .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11, MIGRATION_11_12, MIGRATION_12_13, MIGRATION_13_14) // 添加新的迁移
                                         .build()
                         INSTANCE = instance
                         instance
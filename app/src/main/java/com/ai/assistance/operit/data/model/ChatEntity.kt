@@ -21,7 +21,10 @@ data class ChatEntity(
         val workspace: String? = null,
         val parentChatId: String? = null,
         val characterCardName: String? = null,
-        val locked: Boolean = false
+        val locked: Boolean = false,
+        // 写时复制分支：与 baseChatId 共享时间戳不大于 baseTimestamp 的消息，自身只存储其后的消息
+        val baseChatId: String? = null,
+        val baseTimestamp: Long? = null
 ) {
     /** 转换为ChatHistory对象（供UI层使用） */
     fun toChatHistory(messages: List<ChatMessage>): ChatHistory {
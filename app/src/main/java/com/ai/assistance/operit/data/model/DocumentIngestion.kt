@@ -0,0 +1,40 @@
+package com.ai.assistance.operit.data.model
+
+import com.ai.assistance.operit.util.DocumentChunker
+
+/**
+ * 文档导入流水线的参数。
+ * @param embeddingBatchSize 每次推理合并的区块数
+ * @param embeddingParallelism 同时进行推理的批次数
+ * @param writeBatchSize 每个数据库事务写入的区块数
+ */
+data class DocumentIngestionOptions(
+    val chunking: DocumentChunker.Config = DocumentChunker.Config(),
+    val embeddingBatchSize: Int = 16,
+    val embeddingParallelism: Int = 2,
+    val writeBatchSize: Int = 128
+)
+
+/**
+ * 文档导入进度。[memory] 非空表示导入已完成。
+ * @param bytesRead 已读取的源数据字节数
+ * @param totalBytes 源数据总字节数，未知时为 null
+ * @param chunksWritten 已嵌入并写入数据库的区块数
+ */
+data class DocumentIngestionProgress(
+    val bytesRead: Long,
+    val totalBytes: Long?,
+    val chunksWritten: Int,
+    val memory: Memory? = null
+) {
+    val isComplete: Boolean
+        get() = memory != null
+
+    /** 0..1 的完成度；总大小未知时为 null */
+    val fraction: Float?
+        get() = when {
+            isComplete -> 1f
+            totalBytes == null || totalBytes <= 0 -> null
+            else -> (bytesRead.toDouble() / totalBytes).toFloat().coerceIn(0f, 0.99f)
+        }
+}
@@ -1,21 +1,51 @@
 package com.ai.assistance.operit.data.model
 
-import java.util.Arrays
+import com.ai.assistance.operit.util.vector.QuantizedVector
 
 /**
  * A wrapper class for a FloatArray to be used as an ObjectBox entity property.
  * This helps to avoid issues with ObjectBox's handling of primitive arrays.
+ *
+ * An embedding can also be backed by an int8 [QuantizedVector] (as read from quantized storage).
+ * In that case [vector] is dequantized lazily on first access, so searches that only use
+ * [quantized] never materialize the float array.
  */
-data class Embedding(val vector: FloatArray) {
+class Embedding private constructor(
+    private var floatVector: FloatArray?,
+    private var quantizedVector: QuantizedVector?
+) {
+    constructor(vector: FloatArray) : this(vector, null)
+
+    constructor(quantized: QuantizedVector) : this(null, quantized)
+
+    val vector: FloatArray
+        get() = floatVector ?: quantizedVector!!.dequantize().also { floatVector = it }
+
+    /** int8 form used for scoring; computed from [vector] on first access if necessary */
+    val quantized: QuantizedVector
+        get() = quantizedVector ?: QuantizedVector.quantize(floatVector!!).also { quantizedVector = it }
+
+    /** True if this embedding was loaded from quantized storage */
+    val isQuantized: Boolean
+        get() = floatVector == null
+
+    val dimensions: Int
+        get() = floatVector?.size ?: quantizedVector!!.dimensions
+
     // Custom equals/hashCode to properly compare float arrays
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (javaClass != other?.javaClass) return false
         other as Embedding
+        if (isQuantized && other.isQuantized) {
+            return quantized == other.quantized
+        }
         return vector.contentEquals(other.vector)
     }
 
     override fun hashCode(): Int {
         return vector.contentHashCode()
     }
-} 
\ No newline at end of file
+
+    override fun toString(): String = "Embedding(dimensions=$dimensions, quantized=$isQuantized)"
+}
@@ -1,17 +1,45 @@
 package com.ai.assistance.operit.data.model
 
+import com.ai.assistance.operit.util.vector.QuantizedVector
 import io.objectbox.converter.PropertyConverter
 import java.nio.ByteBuffer
 
 /**
  * ObjectBox-compatible converter for Embedding <-> ByteArray.
+ *
+ * Two storage formats are supported and told apart when reading:
+ * - float: raw big-endian floats, 4 bytes per dimension (the original format)
+ * - int8: [QUANTIZED_MAGIC] + per-vector scale + 1 byte per dimension
+ *
+ * The magic is a NaN bit pattern, which never starts a valid float embedding.
  */
 class EmbeddingConverter : PropertyConverter<Embedding?, ByteArray?> {
+
+    companion object {
+        const val QUANTIZED_MAGIC = 0x7FC05138
+        private const val QUANTIZED_HEADER_BYTES = 8
+
+        /** Whether new writes use the int8 format; toggled from the memory storage preference. */
+        @Volatile
+        var quantizeOnWrite: Boolean = false
+
+        fun isQuantized(databaseValue: ByteArray): Boolean =
+            databaseValue.size >= QUANTIZED_HEADER_BYTES &&
+                ByteBuffer.wrap(databaseValue).getInt(0) == QUANTIZED_MAGIC
+    }
+
     override fun convertToEntityProperty(databaseValue: ByteArray?): Embedding? {
         if (databaseValue == null) {
             return null
         }
         val buffer = ByteBuffer.wrap(databaseValue)
+        if (isQuantized(databaseValue)) {
+            buffer.position(4)
+            val scale = buffer.float
+            val codes = ByteArray(buffer.remaining())
+            buffer.get(codes)
+            return Embedding(QuantizedVector(codes, scale))
+        }
         val floatBuffer = buffer.asFloatBuffer()
         val floatArray = FloatArray(floatBuffer.remaining())
         floatBuffer.get(floatArray)
@@ -22,10 +50,18 @@ class EmbeddingConverter : PropertyConverter<Embedding?, ByteArray?> {
         if (entityProperty == null) {
             return null
         }
+        if (quantizeOnWrite) {
+            val quantized = entityProperty.quantized
+            val buffer = ByteBuffer.allocate(QUANTIZED_HEADER_BYTES + quantized.dimensions)
+            buffer.putInt(QUANTIZED_MAGIC)
+            buffer.putFloat(quantized.scale)
+            buffer.put(quantized.codes)
+            return buffer.array()
+        }
         val vector = entityProperty.vector
         val buffer = ByteBuffer.allocate(vector.size * 4) // 4 bytes per float
         val floatBuffer = buffer.asFloatBuffer()
         floatBuffer.put(vector)
         return buffer.array()
     }
-} 
\ No newline at end of file
+}
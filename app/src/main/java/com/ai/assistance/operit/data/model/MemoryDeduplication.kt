@@ -0,0 +1,47 @@
+package com.ai.assistance.operit.data.model
+
+/**
+ * 写入记忆时的近似重复处理策略，阈值为 MinHash 估计的 Jaccard 相似度。
+ * @param skipThreshold 不低于该值视为同一条记忆，直接复用已有记忆
+ * @param mergeThreshold 不低于该值视为重述，合并到已有记忆而不是新建
+ */
+data class NearDuplicatePolicy(
+    val skipThreshold: Float = 0.85f,
+    val mergeThreshold: Float = 0.6f
+) {
+    init {
+        require(mergeThreshold in 0f..skipThreshold) { "mergeThreshold must be in 0..skipThreshold" }
+    }
+}
+
+enum class NearDuplicateAction {
+    /** 未发现近似重复，按新记忆保存 */
+    CREATED,
+    /** 与已有记忆几乎相同，未写入 */
+    SKIPPED,
+    /** 内容合并进了已有记忆 */
+    MERGED
+}
+
+/**
+ * 带查重的保存结果。
+ * @param memory 实际生效的记忆：新建的记忆，或被复用/合并的已有记忆
+ * @param similarity 与已有记忆的相似度，新建时为 0
+ */
+data class NearDuplicateSaveResult(
+    val memory: Memory,
+    val action: NearDuplicateAction,
+    val similarity: Float = 0f
+)
+
+/**
+ * 批量去重的结果。
+ * @param scanned 参与查重的记忆数
+ * @param clusters 发现的重复簇数量
+ * @param removedTitles 被合并删除的记忆标题（dryRun 时为将要删除的标题）
+ */
+data class MemoryDeduplicationReport(
+    val scanned: Int,
+    val clusters: Int,
+    val removedTitles: List<String>
+)
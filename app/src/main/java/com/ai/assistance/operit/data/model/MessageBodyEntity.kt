@@ -0,0 +1,16 @@
+package com.ai.assistance.operit.data.model
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * 大消息体的行外存储，按内容的 SHA-256 寻址，相同内容（例如分支复制、重复的工具输出）只存一份。
+ * 不设外键，由 [com.ai.assistance.operit.data.repository.MessageBodyStore] 回收不再被引用的行。
+ */
+@Entity(tableName = "message_bodies")
+data class MessageBodyEntity(
+        @PrimaryKey val hash: String,
+        val codec: Int, // 编码方式，见 MessageBodyStore 中的 CODEC_* 常量
+        val data: ByteArray,
+        val rawLength: Int // 原文 UTF-8 字节数
+)
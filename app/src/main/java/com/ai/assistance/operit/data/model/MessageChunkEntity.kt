@@ -0,0 +1,39 @@
+package com.ai.assistance.operit.data.model
+
+import androidx.room.Entity
+import androidx.room.ForeignKey
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * 跨对话检索用的消息分块，记录在消息正文中的字符区间和 int8 量化后的向量。
+ * 随消息级联删除；消息内容被修改时由 ChatSearchIndex 删除后重新生成。
+ * 正文为空的消息也会写入一行没有向量的分块，表示已处理过。
+ */
+@Entity(
+        tableName = "message_chunks",
+        foreignKeys =
+                [
+                        ForeignKey(
+                                entity = MessageEntity::class,
+                                parentColumns = ["messageId"],
+                                childColumns = ["messageId"],
+                                onDelete = ForeignKey.CASCADE
+                        )],
+        indices = [Index("messageId"), Index("chatId")]
+)
+data class MessageChunkEntity(
+        @PrimaryKey(autoGenerate = true) val id: Long = 0,
+        val messageId: Long,
+        val chatId: String,
+        val timestamp: Long, // 所属消息的时间戳
+        val chunkIndex: Int,
+        val startOffset: Int, // 在消息正文中的起点（包含）
+        val endOffset: Int, // 在消息正文中的终点（不包含）
+        val signature: Long, // 分块文本的指纹，用于关键词索引对账
+        val codes: ByteArray?, // int8 向量，为空表示没有可检索的内容
+        val scale: Float
+)
+
+/** 分块ID与文本指纹 */
+data class MessageChunkSignature(val id: Long, val signature: Long)
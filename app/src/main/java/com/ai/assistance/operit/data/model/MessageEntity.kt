@@ -16,7 +16,12 @@ import androidx.room.PrimaryKey
                                 childColumns = ["chatId"],
                                 onDelete = ForeignKey.CASCADE
                         )],
-        indices = [Index("chatId")]
+        indices =
+                [
+                        Index("chatId"),
+                        Index(value = ["chatId", "timestamp"]),
+                        Index(value = ["chatId", "sender"]),
+                        Index("bodyHash")]
 )
 data class MessageEntity(
         @PrimaryKey(autoGenerate = true) val messageId: Long = 0,
@@ -27,13 +32,14 @@ data class MessageEntity(
         val orderIndex: Int, // 保持消息顺序
         val roleName: String = "", // 角色名字段
         val provider: String = "", // 供应商
-        val modelName: String = "" // 模型名称
+        val modelName: String = "", // 模型名称
+        val bodyHash: String? = null // 非空时正文存于 message_bodies，content 只保留开头的预览
 ) {
-    /** 转换为ChatMessage对象（供UI层使用） */
-    fun toChatMessage(): ChatMessage {
+    /** 转换为ChatMessage对象（供UI层使用）；正文在行外存储时 [fullContent] 为解压后的完整内容 */
+    fun toChatMessage(fullContent: String = content): ChatMessage {
         return ChatMessage(
             sender = sender, 
-            content = content, 
+            content = fullContent, 
             timestamp = timestamp,
             roleName = roleName,
             provider = provider,
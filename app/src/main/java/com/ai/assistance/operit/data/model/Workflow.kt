@@ -25,6 +25,27 @@ data class Workflow(
     var failedExecutions: Int = 0  // 失败执行次数
 )
 
+/**
+ * 工作流摘要
+ * 列表展示用，不包含节点和连接，由工作流索引文件提供
+ */
+@Serializable
+data class WorkflowSummary(
+    val id: String,
+    val name: String = "",
+    val description: String = "",
+    val enabled: Boolean = true,
+    val nodeCount: Int = 0,
+    val connectionCount: Int = 0,
+    val createdAt: Long = 0L,
+    val updatedAt: Long = 0L,
+    val lastExecutionTime: Long? = null,
+    val lastExecutionStatus: ExecutionStatus? = null,
+    val totalExecutions: Int = 0,
+    val successfulExecutions: Int = 0,
+    val failedExecutions: Int = 0
+)
+
 /**
  * 执行状态枚举
  */
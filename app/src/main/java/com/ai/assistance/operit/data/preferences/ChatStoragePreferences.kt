@@ -0,0 +1,22 @@
+package com.ai.assistance.operit.data.preferences
+
+import android.content.Context
+import android.content.SharedPreferences
+
+/** Tracks one-off maintenance of the chat message database */
+class ChatStoragePreferences(context: Context) {
+    private val PREFS_NAME = "chat_storage_preferences"
+    private val KEY_MESSAGE_BODY_FORMAT = "message_body_format"
+
+    private val prefs: SharedPreferences =
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+
+    /** The message body storage format existing rows were last migrated to, or 0 if never */
+    fun getMessageBodyFormat(): Int {
+        return prefs.getInt(KEY_MESSAGE_BODY_FORMAT, 0)
+    }
+
+    fun setMessageBodyFormat(format: Int) {
+        prefs.edit().putInt(KEY_MESSAGE_BODY_FORMAT, format).apply()
+    }
+}
@@ -0,0 +1,25 @@
+package com.ai.assistance.operit.data.preferences
+
+import android.content.Context
+import android.content.SharedPreferences
+
+/** Manages how memory embeddings are stored on disk */
+class MemoryStoragePreferences(context: Context) {
+    private val PREFS_NAME = "memory_storage_preferences"
+    private val KEY_QUANTIZE_EMBEDDINGS = "quantize_embeddings"
+
+    private val prefs: SharedPreferences =
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+
+    /**
+     * Whether embeddings are stored as int8 instead of float32. Off by default: the conversion is
+     * lossy, so existing float vectors are only rewritten after the user opts in.
+     */
+    fun isQuantizationEnabled(): Boolean {
+        return prefs.getBoolean(KEY_QUANTIZE_EMBEDDINGS, false)
+    }
+
+    fun setQuantizationEnabled(enabled: Boolean) {
+        prefs.edit().putBoolean(KEY_QUANTIZE_EMBEDDINGS, enabled).apply()
+    }
+}
@@ -0,0 +1,202 @@
+package com.ai.assistance.operit.data.repository
+
+import androidx.room.withTransaction
+import com.ai.assistance.operit.data.db.AppDatabase
+import com.ai.assistance.operit.data.model.ChatEntity
+import com.ai.assistance.operit.data.model.MessageEntity
+
+/**
+ * 写时复制的分支存储。
+ *
+ * 分支通过 baseChatId/baseTimestamp 引用来源聊天，共享来源中时间戳不大于分叉点的消息，
+ * 自身只存储分叉点之后的消息（不变式：聊天自身存储的消息时间戳都大于它的 baseTimestamp）。
+ * 任何会改变共享前缀的写入都先把受影响的区间复制到写入方或依赖方，再缩小分叉点，
+ * 使其他聊天看到的消息保持不变。
+ *
+ * 调用方负责串行化写入（ChatHistoryManager 的互斥锁），这里的每个操作各自在一个事务中完成。
+ */
+class ChatBranchStore(private val database: AppDatabase) {
+
+    companion object {
+        /** 共享链超过该深度后由后台压缩，避免读取时递归过深 */
+        const val MAX_CHAIN_DEPTH = 4
+    }
+
+    private val chatDao = database.chatDao()
+    private val messageDao = database.messageDao()
+
+    /**
+     * 创建共享前缀的分支，只写入一行聊天记录，不复制消息。
+     * @param upToTimestamp 分叉点（包含），为 null 时共享来源当前的全部消息
+     */
+    suspend fun createBranch(source: ChatEntity, branch: ChatEntity, upToTimestamp: Long?): ChatEntity {
+        return database.withTransaction {
+            val latest = messageDao.getLatestTimestamp(source.id)
+            val forkTimestamp = when {
+                latest == null -> null
+                upToTimestamp == null -> latest
+                else -> minOf(upToTimestamp, latest)
+            }
+            val shared =
+                forkTimestamp != null && messageDao.countMessagesBefore(source.id, forkTimestamp + 1) > 0
+            val entity = branch.copy(
+                baseChatId = if (shared) source.id else null,
+                baseTimestamp = if (shared) forkTimestamp else null
+            )
+            chatDao.insertChat(entity)
+            entity
+        }
+    }
+
+    /**
+     * 在修改 [chatId] 中时间戳不小于 [fromTimestamp] 的消息之前调用：
+     * 依赖它的分支先复制将被影响的共享消息，[chatId] 自身再把这一段共享消息复制为自有消息。
+     * 之后可以直接按时间戳修改、删除或插入 [chatId] 自身的消息。
+     */
+    suspend fun prepareWrite(chatId: String, fromTimestamp: Long) {
+        database.withTransaction {
+            detachDependents(chatId, fromTimestamp)
+            localize(chatId, fromTimestamp)
+        }
+    }
+
+    /**
+     * 在删除 [chatId] 中时间戳不小于 [fromTimestamp] 的全部消息之前调用。
+     * 与 [prepareWrite] 不同，被删除的共享消息无需复制，只需把分叉点移到删除位置之前。
+     */
+    suspend fun prepareTruncate(chatId: String, fromTimestamp: Long) {
+        database.withTransaction {
+            detachDependents(chatId, fromTimestamp)
+            val chat = chatDao.getChatById(chatId) ?: return@withTransaction
+            val base = chat.baseTimestamp ?: return@withTransaction
+            if (base >= fromTimestamp) {
+                moveBase(chat, fromTimestamp)
+            }
+        }
+    }
+
+    /**
+     * 在整体替换、清空或删除 [chatId] 之前调用：所有依赖它的分支改为直接引用它的来源，
+     * 只需复制 [chatId] 自身存储的那部分消息。
+     * @param detachSelf 是否同时断开 [chatId] 与其来源的共享（清空或整体替换时需要）
+     */
+    suspend fun releaseDependents(chatId: String, detachSelf: Boolean = false) {
+        database.withTransaction {
+            chatDao.getChatsByBase(chatId).forEach { splice(it) }
+            if (detachSelf) {
+                chatDao.updateChatBase(chatId, null, null)
+            }
+        }
+    }
+
+    /** 删除一批聊天之前调用，保证不被删除的分支不再引用其中任何一个 */
+    suspend fun releaseDependents(chatIds: Collection<String>) {
+        val deleting = chatIds.toSet()
+        database.withTransaction {
+            var changed = true
+            while (changed) {
+                changed = false
+                for (id in deleting) {
+                    chatDao.getChatsByBase(id).filter { it.id !in deleting }.forEach {
+                        splice(it)
+                        changed = true
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 压缩过深的共享链：把链上较深的分支逐级改为引用更上层的祖先，
+     * 每一步只复制被跳过的那个聊天在分叉区间内的自有消息。
+     * @return 被压缩的聊天数量
+     */
+    suspend fun compactChains(maxDepth: Int = MAX_CHAIN_DEPTH): Int {
+        val chatIds = chatDao.getChatIdsWithBaseDepthOver(maxDepth)
+        chatIds.forEach { chatId ->
+            database.withTransaction {
+                while (depthOf(chatId) > maxDepth) {
+                    val chat = chatDao.getChatById(chatId) ?: break
+                    splice(chat)
+                }
+            }
+        }
+        return chatIds.size
+    }
+
+    /** 聊天的共享链深度，不共享任何消息时为 0 */
+    suspend fun depthOf(chatId: String): Int {
+        var depth = 0
+        var current = chatDao.getChatById(chatId)
+        while (current?.baseChatId != null && depth < 64) {
+            depth++
+            current = chatDao.getChatById(current.baseChatId!!)
+        }
+        return depth
+    }
+
+    /** 让依赖 [chatId] 且分叉点不早于 [fromTimestamp] 的分支复制 [fromTimestamp, 分叉点] 区间，再把分叉点移到其之前 */
+    private suspend fun detachDependents(chatId: String, fromTimestamp: Long) {
+        chatDao.getChatsByBase(chatId).forEach { dependent ->
+            val base = dependent.baseTimestamp ?: return@forEach
+            if (base < fromTimestamp) return@forEach
+            copyVisible(chatId, dependent.id, fromTimestamp, base)
+            moveBase(dependent, fromTimestamp)
+        }
+    }
+
+    /** 把 [chatId] 在 [fromTimestamp, 分叉点] 区间内共享的消息复制为自有消息，再把分叉点移到其之前 */
+    private suspend fun localize(chatId: String, fromTimestamp: Long) {
+        val chat = chatDao.getChatById(chatId) ?: return
+        val base = chat.baseTimestamp ?: return
+        if (base < fromTimestamp) return
+        copyVisible(chatId, chatId, fromTimestamp, base)
+        moveBase(chat, fromTimestamp)
+    }
+
+    /**
+     * 把分支从链上移除一级：复制直接来源自有的、分支可见的消息，再改为引用来源的来源。
+     * 分支看到的消息不变。
+     */
+    private suspend fun splice(chat: ChatEntity) {
+        val baseChatId = chat.baseChatId ?: return
+        val upTo = chat.baseTimestamp ?: return
+        val source = chatDao.getChatById(baseChatId)
+        val sourceBase = source?.baseTimestamp
+        if (source?.baseChatId == null || sourceBase == null) {
+            copyRows(messageDao.getOwnMessagesInRange(baseChatId, Long.MIN_VALUE, upTo), chat.id)
+            chatDao.updateChatBase(chat.id, null, null)
+        } else {
+            if (upTo > sourceBase) {
+                copyRows(messageDao.getOwnMessagesInRange(baseChatId, sourceBase, upTo), chat.id)
+            }
+            chatDao.updateChatBase(chat.id, source.baseChatId, minOf(upTo, sourceBase))
+        }
+    }
+
+    /** 把分叉点移到 [fromTimestamp] 之前；之前已没有共享消息时直接断开共享 */
+    private suspend fun moveBase(chat: ChatEntity, fromTimestamp: Long) {
+        val baseChatId = chat.baseChatId ?: return
+        val stillShared =
+            fromTimestamp != Long.MIN_VALUE && messageDao.countMessagesBefore(baseChatId, fromTimestamp) > 0
+        if (stillShared) {
+            chatDao.updateChatBase(chat.id, baseChatId, minOf(chat.baseTimestamp ?: Long.MAX_VALUE, fromTimestamp - 1))
+        } else {
+            chatDao.updateChatBase(chat.id, null, null)
+        }
+    }
+
+    /** 复制 [sourceChatId] 可见的 [fromTimestamp, upToTimestamp] 区间消息到 [targetChatId] */
+    private suspend fun copyVisible(sourceChatId: String, targetChatId: String, fromTimestamp: Long, upToTimestamp: Long) {
+        if (upToTimestamp == Long.MAX_VALUE) {
+            copyRows(messageDao.getMessagesInRange(sourceChatId, fromTimestamp, Long.MAX_VALUE), targetChatId)
+        } else {
+            copyRows(messageDao.getMessagesInRange(sourceChatId, fromTimestamp, upToTimestamp + 1), targetChatId)
+        }
+    }
+
+    private suspend fun copyRows(rows: List<MessageEntity>, targetChatId: String) {
+        if (rows.isEmpty()) return
+        messageDao.insertMessages(rows.map { it.copy(messageId = 0, chatId = targetChatId) })
+    }
+}
@@ -15,6 +15,7 @@ import com.ai.assistance.operit.data.model.ChatHistory
 import com.ai.assistance.operit.data.model.ChatMessage
 import com.ai.assistance.operit.data.model.CharacterCardChatStats
 import com.ai.assistance.operit.data.model.MessageEntity
+import com.ai.assistance.operit.data.preferences.ChatStoragePreferences
 import com.ai.assistance.operit.util.LocaleUtils
 import com.ai.assistance.operit.data.converter.*
 import com.ai.assistance.operit.data.exporter.*
@@ -75,6 +76,11 @@ class ChatHistoryManager private constructor(private val context: Context) {
     private val database = AppDatabase.getDatabase(context)
     private val chatDao = database.chatDao()
     private val messageDao = database.messageDao()
+    private val bodyStore = MessageBodyStore(database)
+    private val messagePager = ChatMessagePager(messageDao, bodyStore)
+    private val branchStore = ChatBranchStore(database)
+    private val storagePreferences = ChatStoragePreferences(context)
+    private val searchIndex = ChatSearchIndex(database, bodyStore, File(context.filesDir, "chat_search"))
 
     init {
         // 确保数据库被初始化
@@ -94,6 +100,13 @@ class ChatHistoryManager private constructor(private val context: Context) {
     // 互斥锁用于同步操作
     private val mutex = Mutex()
 
+    init {
+        // 升级前内联保存的大消息在后台分批转存到行外
+        CoroutineScope(Dispatchers.IO).launch { migrateMessageBodies() }
+        // 补齐尚未进入跨对话检索索引的历史消息
+        searchIndex.requestIndexing()
+    }
+
     // DataStore键
     private object PreferencesKeys {
         val CURRENT_CHAT_ID = stringPreferencesKey("current_chat_id")
@@ -203,6 +216,9 @@ class ChatHistoryManager private constructor(private val context: Context) {
                 // 创建聊天实体
                 val chatEntity = ChatEntity.fromChatHistory(history)
 
+                // 整体替换消息前，让共享该聊天消息的分支先保留自己的副本
+                branchStore.releaseDependents(chatEntity.id, detachSelf = true)
+
                 // 保存聊天实体
                 chatDao.insertChat(chatEntity)
 
@@ -214,11 +230,12 @@ class ChatHistoryManager private constructor(private val context: Context) {
                     history.messages.mapIndexed { index, message ->
                         MessageEntity.fromChatMessage(chatEntity.id, message, index)
                     }
-                messageDao.insertMessages(messageEntities)
+                messageDao.insertMessages(bodyStore.spill(messageEntities))
             } catch (e: Exception) {
                 throw e
             }
         }
+        searchIndex.requestIndexing()
     }
 
     /** 更新聊天锁定状态 */
@@ -234,64 +251,72 @@ class ChatHistoryManager private constructor(private val context: Context) {
     }
 
     // 添加单条消息
-    suspend fun addMessage(chatId: String, message: ChatMessage, position: Int? = null) {
+    suspend fun addMessage(chatId: String, message: ChatMessage) {
         mutex.withLock {
             try {
-                val messageToPersist =
-                    if (position != null) {
-                        val messages =
-                            messageDao.getMessagesForChat(
-                                chatId
-                            ) // Already ordered by timestamp
-                        if (messages.isEmpty()) {
-                            message
-                        } else {
-                            val validPosition = position.coerceIn(0, messages.size)
-                            val newTimestamp =
-                                when {
-                                    validPosition == 0 -> messages.first().timestamp - 1
-                                    validPosition >= messages.size ->
-                                        messages.last().timestamp + 1
-
-                                    else -> {
-                                        val before = messages[validPosition - 1].timestamp
-                                        val after = messages[validPosition].timestamp
-                                        // Take the average to find a point in between.
-                                        // This assumes timestamps have enough space.
-                                        before + (after - before) / 2
-                                    }
-                                }
-                            message.copy(timestamp = newTimestamp)
-                        }
-                    } else {
-                        message
-                    }
-
-                // Create message entity, orderIndex is no longer used for ordering.
-                val messageEntity =
-                    MessageEntity.fromChatMessage(
-                        chatId = chatId,
-                        message = messageToPersist,
-                        orderIndex = 0
-                    )
-                messageDao.insertMessage(messageEntity)
+                insertMessageLocked(chatId, message)
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "Failed to add message for chat $chatId", e)
+                throw e
+            }
+        }
+        searchIndex.requestIndexing()
+    }
 
-                // Update chat metadata
-                chatDao.getChatById(chatId)?.let { chat ->
-                    chatDao.updateChatMetadata(
-                        chatId = chatId,
-                        title = chat.title,
-                        timestamp = System.currentTimeMillis(),
-                        inputTokens = chat.inputTokens,
-                        outputTokens = chat.outputTokens,
-                        currentWindowSize = chat.currentWindowSize
-                    )
+    /**
+     * 在时间戳为 [afterTimestamp] 的消息之后插入总结（为 null 时插入到最前面），
+     * 时间戳取前后两条消息的中点。按时间戳定位，与界面窗口中的下标无关。
+     * @return 实际写入的总结；相邻位置已经是总结时不插入，返回 null
+     */
+    suspend fun insertSummaryAfter(chatId: String, summary: ChatMessage, afterTimestamp: Long?): ChatMessage? {
+        val inserted = mutex.withLock {
+            try {
+                val previous = afterTimestamp?.let { messageDao.getLastMessageUpTo(chatId, it) }
+                val next = messageDao.getFirstMessageAfter(chatId, afterTimestamp ?: Long.MIN_VALUE)
+                if (previous?.sender == "summary" || next?.sender == "summary") {
+                    AppLogger.w(TAG, "相邻位置已是总结消息，取消插入以避免重复")
+                    return@withLock null
+                }
+                val timestamp = when {
+                    previous != null && next != null -> previous.timestamp + (next.timestamp - previous.timestamp) / 2
+                    previous != null -> previous.timestamp + 1
+                    next != null -> next.timestamp - 1
+                    else -> summary.timestamp
                 }
+                summary.copy(timestamp = timestamp).also { insertMessageLocked(chatId, it) }
             } catch (e: Exception) {
-                AppLogger.e(TAG, "Failed to add message for chat $chatId", e)
+                AppLogger.e(TAG, "Failed to insert summary for chat $chatId", e)
                 throw e
             }
         }
+        if (inserted != null) searchIndex.requestIndexing()
+        return inserted
+    }
+
+    private suspend fun insertMessageLocked(chatId: String, message: ChatMessage) {
+        // 插入位置可能落在与分支共享的前缀中，先完成写时复制
+        branchStore.prepareWrite(chatId, message.timestamp)
+
+        // Create message entity, orderIndex is no longer used for ordering.
+        val messageEntity =
+            MessageEntity.fromChatMessage(
+                chatId = chatId,
+                message = message,
+                orderIndex = 0
+            )
+        messageDao.insertMessage(bodyStore.spill(messageEntity))
+
+        // Update chat metadata
+        chatDao.getChatById(chatId)?.let { chat ->
+            chatDao.updateChatMetadata(
+                chatId = chatId,
+                title = chat.title,
+                timestamp = System.currentTimeMillis(),
+                inputTokens = chat.inputTokens,
+                outputTokens = chat.outputTokens,
+                currentWindowSize = chat.currentWindowSize
+            )
+        }
     }
 
     /**
@@ -355,6 +380,16 @@ class ChatHistoryManager private constructor(private val context: Context) {
     suspend fun deleteGroup(groupName: String, deleteChats: Boolean, characterCardName: String?) {
         mutex.withLock {
             try {
+                if (deleteChats) {
+                    // 批量删除前，让其余分支不再共享将被删除的聊天的消息
+                    val deletingIds = chatDao.getAllChatsDirectly()
+                        .filter {
+                            it.group == groupName && !it.locked &&
+                                (characterCardName == null || it.characterCardName == characterCardName)
+                        }
+                        .map { it.id }
+                    branchStore.releaseDependents(deletingIds)
+                }
                 if (characterCardName != null) {
                     // 只删除指定角色卡下的分组（使用 SQL 批量操作）
                     if (deleteChats) {
@@ -374,6 +409,9 @@ class ChatHistoryManager private constructor(private val context: Context) {
                         chatDao.removeGroupFromChats(groupName)
                     }
                 }
+                if (deleteChats) {
+                    bodyStore.collectGarbage()
+                }
             } catch (e: Exception) {
                 AppLogger.e(
                     TAG,
@@ -394,6 +432,7 @@ class ChatHistoryManager private constructor(private val context: Context) {
         mutex.withLock {
             try {
                 AppLogger.d(TAG, "正在从数据库删除消息. ChatId: $chatId, Timestamp: $timestamp")
+                branchStore.prepareWrite(chatId, timestamp)
                 messageDao.deleteMessageByTimestamp(chatId, timestamp)
                 AppLogger.d(TAG, "消息从数据库删除成功.")
 
@@ -419,6 +458,9 @@ class ChatHistoryManager private constructor(private val context: Context) {
     suspend fun updateMessage(chatId: String, message: ChatMessage) {
         mutex.withLock {
             try {
+                // 消息可能属于与分支共享的前缀，先复制为当前聊天自有的消息
+                branchStore.prepareWrite(chatId, message.timestamp)
+
                 // 找到相应的消息实体
                 val existingMessage = messageDao.getMessageByTimestamp(chatId, message.timestamp)
 
@@ -426,8 +468,16 @@ class ChatHistoryManager private constructor(private val context: Context) {
                     val shouldUpdateChatMetadata =
                         message.contentStream == null ||
                             (existingMessage.content.isEmpty() && message.content.isNotEmpty())
-                    // 更新现有消息
-                    messageDao.updateMessageContent(existingMessage.messageId, message.content)
+                    // 更新现有消息；流式输出过程中内容频繁变化，先内联保存，结束后再按需转存到行外
+                    if (message.contentStream == null) {
+                        val stored = bodyStore.spill(existingMessage.copy(content = message.content, bodyHash = null))
+                        messageDao.updateMessageBody(existingMessage.messageId, stored.content, stored.bodyHash)
+                        // 最终内容确定后重新分块索引
+                        searchIndex.invalidateMessage(existingMessage.messageId)
+                        searchIndex.requestIndexing()
+                    } else {
+                        messageDao.updateMessageContent(existingMessage.messageId, message.content)
+                    }
 
                     if (shouldUpdateChatMetadata) {
                         // 更新聊天元数据时间戳
@@ -466,6 +516,7 @@ class ChatHistoryManager private constructor(private val context: Context) {
         mutex.withLock {
             try {
                 AppLogger.d(TAG, "正在从数据库删除消息. ChatId: $chatId, Timestamp >=: $timestamp")
+                branchStore.prepareTruncate(chatId, timestamp)
                 messageDao.deleteMessagesFrom(chatId, timestamp)
                 AppLogger.d(TAG, "后续消息从数据库删除成功.")
                 // 更新聊天元数据时间戳
@@ -498,7 +549,9 @@ class ChatHistoryManager private constructor(private val context: Context) {
     suspend fun clearChatMessages(chatId: String) {
         mutex.withLock {
             try {
+                branchStore.releaseDependents(chatId, detachSelf = true)
                 messageDao.deleteAllMessagesForChat(chatId)
+                bodyStore.collectGarbage()
                 // 更新聊天元数据
                 chatDao.getChatById(chatId)?.let { chat ->
                     chatDao.updateChatMetadata(
@@ -586,8 +639,10 @@ class ChatHistoryManager private constructor(private val context: Context) {
                 if (chat == null) {
                     return false
                 }
-                // 删除聊天实体（级联删除所有消息）
+                // 删除聊天实体（级联删除所有消息），共享其消息的分支先保留自己的副本
+                branchStore.releaseDependents(chatId)
                 chatDao.deleteChat(chatId)
+                bodyStore.collectGarbage()
 
                 // 如果删除的是当前聊天，清除当前聊天ID
                 val currentChatId = currentChatIdFlow.first()
@@ -680,7 +735,7 @@ class ChatHistoryManager private constructor(private val context: Context) {
                 // AppLogger.d(TAG, "直接从数据库加载聊天 $chatId 的消息")
                 val messages = messageDao.getMessagesForChat(chatId)
                 // AppLogger.d(TAG, "聊天 $chatId 共加载 ${messages.size} 条消息")
-                messages.map { it.toChatMessage() }
+                bodyStore.resolve(messages)
             } catch (e: Exception) {
                 AppLogger.e(TAG, "加载聊天消息失败", e)
                 emptyList()
@@ -688,6 +743,105 @@ class ChatHistoryManager private constructor(private val context: Context) {
         }
     }
 
+    // 分页加载：最新一页消息
+    suspend fun loadLatestMessages(
+        chatId: String,
+        pageSize: Int = ChatMessagePager.DEFAULT_PAGE_SIZE
+    ): ChatMessagePage {
+        return withContext(Dispatchers.IO) {
+            try {
+                messagePager.loadLatest(chatId, pageSize)
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "分页加载最新消息失败", e)
+                ChatMessagePage(emptyList(), hasOlder = false)
+            }
+        }
+    }
+
+    // 分页加载：早于指定时间戳的一页消息
+    suspend fun loadMessagesBefore(
+        chatId: String,
+        beforeTimestamp: Long,
+        pageSize: Int = ChatMessagePager.DEFAULT_PAGE_SIZE
+    ): ChatMessagePage {
+        return withContext(Dispatchers.IO) {
+            try {
+                messagePager.loadBefore(chatId, beforeTimestamp, pageSize)
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "分页加载历史消息失败", e)
+                ChatMessagePage(emptyList(), hasOlder = true)
+            }
+        }
+    }
+
+    /**
+     * 加载 AI 上下文所需、但尚未在窗口中的更早消息：从最后一条总结（没有总结时从第一条消息）
+     * 到 [beforeTimestamp] 之前。窗口已覆盖上下文起点时返回空页。
+     */
+    suspend fun loadContextBefore(chatId: String, beforeTimestamp: Long): ChatMessagePage {
+        return withContext(Dispatchers.IO) {
+            try {
+                val contextStart = messagePager.contextStartTimestamp(chatId)
+                if (contextStart != null && contextStart >= beforeTimestamp) {
+                    ChatMessagePage(emptyList(), hasOlder = messageDao.countMessagesBefore(chatId, beforeTimestamp) > 0)
+                } else {
+                    messagePager.loadRange(chatId, contextStart, beforeTimestamp)
+                }
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "加载上下文消息失败", e)
+                ChatMessagePage(emptyList(), hasOlder = true)
+            }
+        }
+    }
+
+    /**
+     * 发给 AI 的上下文（最后一条总结及其之后的消息），直接从数据库读取。
+     * 界面只持有分页窗口，发送消息、生成总结等需要完整上下文的地方都应使用这里的结果。
+     * @param upToTimestamp 只取该时间戳（包含）及之前的消息，用于在历史中间插入总结
+     */
+    suspend fun loadAiContext(chatId: String, upToTimestamp: Long = Long.MAX_VALUE): List<ChatMessage> {
+        return withContext(Dispatchers.IO) {
+            try {
+                messagePager.loadContext(chatId, upToTimestamp)
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "加载 AI 上下文失败", e)
+                emptyList()
+            }
+        }
+    }
+
+    // 早于指定时间戳的上一条消息的时间戳，没有时为 null
+    suspend fun getPreviousMessageTimestamp(chatId: String, timestamp: Long): Long? {
+        return withContext(Dispatchers.IO) { messageDao.getLastMessageUpTo(chatId, timestamp - 1)?.timestamp }
+    }
+
+    // 重新加载从指定时间戳（包含）开始的消息，用于刷新已加载的窗口
+    suspend fun loadMessagesSince(chatId: String, fromTimestamp: Long): List<ChatMessage> {
+        return withContext(Dispatchers.IO) {
+            try {
+                messagePager.loadSince(chatId, fromTimestamp)
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "加载窗口消息失败", e)
+                emptyList()
+            }
+        }
+    }
+
+    // 消息总数（索引聚合查询，不加载消息内容）
+    suspend fun getMessageCount(chatId: String): Int {
+        return withContext(Dispatchers.IO) { messageDao.getMessageCount(chatId) }
+    }
+
+    // 早于指定时间戳的消息数量，用于把窗口内的位置换算为全量位置
+    suspend fun countMessagesBefore(chatId: String, timestamp: Long): Int {
+        return withContext(Dispatchers.IO) { messageDao.countMessagesBefore(chatId, timestamp) }
+    }
+
+    // 是否已有用户消息
+    suspend fun hasUserMessage(chatId: String): Boolean {
+        return withContext(Dispatchers.IO) { messageDao.hasMessageFromSender(chatId, "user") }
+    }
+
     /** 搜索包含特定关键词的聊天ID列表 */
     suspend fun searchChatIdsByContent(query: String): Set<String> {
         return kotlinx.coroutines.withContext(Dispatchers.IO) {
@@ -695,8 +849,10 @@ class ChatHistoryManager private constructor(private val context: Context) {
                 if (query.isBlank()) {
                     return@withContext emptySet()
                 }
-                val chatIds = messageDao.searchChatIdsByContent(query)
-                chatIds.toSet()
+                // 内联内容（含行外消息的预览）用 LIKE 查询，行外消息体解压后逐个匹配
+                val chatIds = messageDao.searchChatIdsByContent(query).toMutableSet()
+                chatIds.addAll(bodyStore.searchChatIds(query))
+                chatIds
             } catch (e: Exception) {
                 AppLogger.e(TAG, "搜索聊天内容失败: $query", e)
                 emptySet()
@@ -705,38 +861,41 @@ class ChatHistoryManager private constructor(private val context: Context) {
     }
 
     /**
-     * 创建对话分支
+     * 跨对话语义检索：向量与关键词混合排序，返回最相关的消息片段
+     * @param chatIds 限定的聊天范围（分支包含与父对话共享的消息），为 null 时检索全部聊天
+     */
+    suspend fun searchMessages(query: String, chatIds: Collection<String>? = null, limit: Int = 10): List<ChatSearchHit> {
+        return withContext(Dispatchers.IO) {
+            try {
+                searchIndex.search(query, chatIds, limit)
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "跨对话检索失败: $query", e)
+                emptyList()
+            }
+        }
+    }
+
+    /**
+     * 创建对话分支。分支与父对话写时复制地共享分叉点及之前的消息，不复制消息行。
      * @param parentChatId 父对话ID
-     * @param upToMessageTimestamp 复制消息到指定时间戳（包含该时间戳的消息）
-     * @return 新创建的分支对话
+     * @param upToMessageTimestamp 共享消息到指定时间戳（包含该时间戳的消息）
+     * @return 新创建的分支对话，messages 为空，消息通过分页接口按需加载
      */
     suspend fun createBranch(
         parentChatId: String,
         upToMessageTimestamp: Long? = null
     ): ChatHistory {
-        return mutex.withLock {
+        val branch = mutex.withLock {
             try {
                 // 获取父对话
                 val parentChat = chatDao.getChatById(parentChatId)
                     ?: throw IllegalArgumentException("父对话不存在: $parentChatId")
 
-                // 获取父对话的消息
-                val parentMessages = messageDao.getMessagesForChat(parentChatId)
-                    .map { it.toChatMessage() }
-                    .sortedBy { it.timestamp }
-
-                // 如果指定了时间戳，只复制到该时间戳的消息
-                val messagesToCopy = if (upToMessageTimestamp != null) {
-                    parentMessages.filter { it.timestamp <= upToMessageTimestamp }
-                } else {
-                    parentMessages
-                }
-
                 // 创建新对话
                 // 分支标题保持与父对话相同，通过 parentChatId 字段和 UI 图标来区分
                 val branchHistory = ChatHistory(
                     title = parentChat.title,
-                    messages = messagesToCopy,
+                    messages = emptyList(),
                     inputTokens = parentChat.inputTokens, // 继承父对话的token统计
                     outputTokens = parentChat.outputTokens, // 继承父对话的token统计
                     currentWindowSize = parentChat.currentWindowSize, // 继承父对话的窗口大小
@@ -746,22 +905,19 @@ class ChatHistoryManager private constructor(private val context: Context) {
                     characterCardName = parentChat.characterCardName // 分支继承父对话的角色卡绑定
                 )
 
-                // 保存分支对话
-                val branchEntity = ChatEntity.fromChatHistory(branchHistory)
-                chatDao.insertChat(branchEntity)
-
-                // 复制消息
-                val messageEntities = messagesToCopy.mapIndexed { index, message ->
-                    MessageEntity.fromChatMessage(branchEntity.id, message, index)
-                }
-                messageDao.insertMessages(messageEntities)
+                // 保存分支对话，只记录共享来源和分叉点
+                val branchEntity = branchStore.createBranch(
+                    parentChat,
+                    ChatEntity.fromChatHistory(branchHistory),
+                    upToMessageTimestamp
+                )
 
                 // 设置为当前聊天
                 setCurrentChatId(branchHistory.id)
 
                 AppLogger.d(
                     TAG,
-                    "创建分支对话: ${branchHistory.id}, 父对话: $parentChatId, 消息数: ${messagesToCopy.size}"
+                    "创建分支对话: ${branchHistory.id}, 父对话: $parentChatId, 分叉点: ${branchEntity.baseTimestamp}"
                 )
                 branchHistory
             } catch (e: Exception) {
@@ -769,6 +925,47 @@ class ChatHistoryManager private constructor(private val context: Context) {
                 throw e
             }
         }
+
+        // 反复分支会让共享链变深，在后台压缩
+        CoroutineScope(Dispatchers.IO).launch { compactBranchChains() }
+        return branch
+    }
+
+    /** 压缩过深的分支共享链，返回被压缩的聊天数量 */
+    suspend fun compactBranchChains(): Int {
+        return mutex.withLock {
+            try {
+                val compacted = branchStore.compactChains()
+                if (compacted > 0) {
+                    AppLogger.d(TAG, "压缩分支共享链: $compacted 个聊天")
+                }
+                compacted
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "压缩分支共享链失败", e)
+                0
+            }
+        }
+    }
+
+    /**
+     * 把升级前内联保存的大消息转存到行外并回收无引用的消息体。
+     * 每批在互斥锁内完成，不阻塞其他读写太久；全部完成后记录存储格式，之后不再扫描。
+     */
+    private suspend fun migrateMessageBodies() {
+        if (storagePreferences.getMessageBodyFormat() >= MessageBodyStore.STORAGE_FORMAT) return
+        try {
+            var cursor = 0L
+            var batches = 0
+            while (true) {
+                cursor = mutex.withLock { bodyStore.spillInlineBatch(cursor) } ?: break
+                batches++
+            }
+            mutex.withLock { bodyStore.collectGarbage() }
+            storagePreferences.setMessageBodyFormat(MessageBodyStore.STORAGE_FORMAT)
+            AppLogger.d(TAG, "大消息体转存完成，共处理 $batches 批")
+        } catch (e: Exception) {
+            AppLogger.e(TAG, "大消息体转存失败，下次启动时重试", e)
+        }
     }
 
     /**
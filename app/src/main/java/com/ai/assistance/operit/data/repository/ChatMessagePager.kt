@@ -0,0 +1,84 @@
+package com.ai.assistance.operit.data.repository
+
+import com.ai.assistance.operit.data.dao.MessageDao
+import com.ai.assistance.operit.data.model.ChatMessage
+import com.ai.assistance.operit.data.model.MessageEntity
+
+/**
+ * 一页聊天消息，按时间戳升序排列。
+ * @param hasOlder 数据库中是否还有更早的消息未加载
+ */
+data class ChatMessagePage(
+    val messages: List<ChatMessage>,
+    val hasOlder: Boolean
+)
+
+/**
+ * 基于时间戳的键集分页读取，依赖 messages 表上的 (chatId, timestamp) 索引。
+ * 每次只读取一页并多取一行用于判断是否还有更早的消息，避免 COUNT 全表扫描。
+ * 行外存储的大消息体只为读到的这一页批量取出并解压。
+ */
+class ChatMessagePager(
+    private val messageDao: MessageDao,
+    private val bodyStore: MessageBodyStore
+) {
+
+    companion object {
+        const val DEFAULT_PAGE_SIZE = 40
+        private const val SUMMARY_SENDER = "summary"
+    }
+
+    /** 读取最新的一页消息，用于打开聊天时的首屏渲染 */
+    suspend fun loadLatest(chatId: String, pageSize: Int = DEFAULT_PAGE_SIZE): ChatMessagePage {
+        return toPage(messageDao.getLatestMessages(chatId, pageSize + 1), pageSize)
+    }
+
+    /** 读取早于指定时间戳的一页消息，用于向上滚动时回填 */
+    suspend fun loadBefore(
+        chatId: String,
+        beforeTimestamp: Long,
+        pageSize: Int = DEFAULT_PAGE_SIZE
+    ): ChatMessagePage {
+        return toPage(messageDao.getMessagesBefore(chatId, beforeTimestamp, pageSize + 1), pageSize)
+    }
+
+    /**
+     * AI 上下文的起点：最后一条总结消息的时间戳。
+     * 上下文只取最后一条总结及其之后的消息，没有总结时为 null，表示需要全部消息。
+     */
+    suspend fun contextStartTimestamp(chatId: String): Long? {
+        return messageDao.getLatestTimestampBySender(chatId, SUMMARY_SENDER)
+    }
+
+    /**
+     * 读取 [fromTimestamp, beforeTimestamp) 区间内的全部消息，用于把已加载窗口向前补齐到上下文起点。
+     * @param fromTimestamp 起点（包含），为 null 时从第一条消息开始
+     */
+    suspend fun loadRange(chatId: String, fromTimestamp: Long?, beforeTimestamp: Long): ChatMessagePage {
+        val from = fromTimestamp ?: Long.MIN_VALUE
+        val messages = bodyStore.resolve(messageDao.getMessagesInRange(chatId, from, beforeTimestamp))
+        val hasOlder = fromTimestamp != null && messageDao.countMessagesBefore(chatId, fromTimestamp) > 0
+        return ChatMessagePage(messages, hasOlder)
+    }
+
+    /**
+     * 读取发给 AI 的上下文：截至 [upToTimestamp]（包含）的最后一条总结及其之后、到 [upToTimestamp] 为止的消息，
+     * 没有总结时从第一条消息开始。直接按时间戳读取，与界面已加载的窗口无关。
+     */
+    suspend fun loadContext(chatId: String, upToTimestamp: Long = Long.MAX_VALUE): List<ChatMessage> {
+        val from = messageDao.getLatestTimestampBySenderUpTo(chatId, SUMMARY_SENDER, upToTimestamp) ?: Long.MIN_VALUE
+        val before = if (upToTimestamp == Long.MAX_VALUE) Long.MAX_VALUE else upToTimestamp + 1
+        return bodyStore.resolve(messageDao.getMessagesInRange(chatId, from, before))
+    }
+
+    /** 读取从指定时间戳（包含）开始到最新的全部消息 */
+    suspend fun loadSince(chatId: String, fromTimestamp: Long): List<ChatMessage> {
+        return bodyStore.resolve(messageDao.getMessagesInRange(chatId, fromTimestamp, Long.MAX_VALUE))
+    }
+
+    private suspend fun toPage(rowsNewestFirst: List<MessageEntity>, pageSize: Int): ChatMessagePage {
+        val hasOlder = rowsNewestFirst.size > pageSize
+        val rows = rowsNewestFirst.take(pageSize).asReversed()
+        return ChatMessagePage(bodyStore.resolve(rows), hasOlder)
+    }
+}
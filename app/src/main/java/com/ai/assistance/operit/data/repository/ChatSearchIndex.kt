@@ -0,0 +1,583 @@
+package com.ai.assistance.operit.data.repository
+
+import com.ai.assistance.operit.data.db.AppDatabase
+import com.ai.assistance.operit.data.model.MessageChunkEntity
+import com.ai.assistance.operit.data.model.MessageEntity
+import com.ai.assistance.operit.services.OnnxEmbeddingService
+import com.ai.assistance.operit.util.AppLogger
+import com.ai.assistance.operit.util.search.Bm25Index
+import com.ai.assistance.operit.util.vector.HnswIndexManager
+import com.ai.assistance.operit.util.vector.QuantizedCosineDistance
+import com.ai.assistance.operit.util.vector.QuantizedIndexItem
+import com.ai.assistance.operit.util.vector.QuantizedVector
+import java.io.File
+import java.io.IOException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.yield
+
+/** 跨对话检索的一条命中 */
+data class ChatSearchHit(
+    val chatId: String,
+    val chatTitle: String,
+    val messageTimestamp: Long,
+    val sender: String,
+    val snippet: String,
+    val score: Double
+)
+
+/** 聊天检索使用的文本向量化接口，返回的向量无需归一化 */
+interface ChatEmbedder {
+    val dimensions: Int
+
+    fun isReady(): Boolean
+
+    /** 批量向量化，失败或空白文本的位置为 null */
+    fun embed(texts: List<String>): List<FloatArray?>
+}
+
+/** 使用本地 ONNX 嵌入模型（与记忆库相同） */
+object OnnxChatEmbedder : ChatEmbedder {
+    override val dimensions = 384
+
+    override fun isReady(): Boolean = OnnxEmbeddingService.isInitialized()
+
+    override fun embed(texts: List<String>): List<FloatArray?> =
+        OnnxEmbeddingService.generateEmbeddings(texts).map { it?.vector }
+}
+
+/**
+ * 聊天记录的跨对话检索索引。
+ *
+ * 用户和 AI 的消息被切成带重叠的分块，分块区间和 int8 向量存入 message_chunks 表；
+ * 内存中维护两份可重建的索引：分块向量的 HNSW 图和分块文本的 BM25 倒排表，
+ * 检索时两路结果用 RRF 融合。索引在后台按 messageId 倒序增量构建，最新的消息最先可检索。
+ *
+ * 失效处理：消息删除时分块随外键级联删除，内容修改时由 [invalidateMessage] 删除，
+ * 并同时移出关键词索引；级联删除的分块由关键词索引在加载时与数据库对账清理。
+ * 向量索引不支持删除，命中已不存在的分块时直接跳过，失效条目（包括被修改消息的旧分块）
+ * 过多时重建。
+ *
+ * 持久化：HNSW 快照连同“已包含的最大分块ID”一起写入 [indexDir]，加载后只需追加之后的分块；
+ * BM25 使用自身的快照 + 日志。
+ */
+class ChatSearchIndex(
+    private val database: AppDatabase,
+    private val bodyStore: MessageBodyStore,
+    private val indexDir: File?,
+    private val embedder: ChatEmbedder = OnnxChatEmbedder
+) {
+
+    companion object {
+        private const val TAG = "ChatSearchIndex"
+
+        /** 分块长度与相邻分块的重叠（字符），约对应嵌入模型 128 个 token 的输入上限 */
+        const val CHUNK_CHARS = 400
+        const val CHUNK_OVERLAP = 80
+
+        /** 单条消息最多索引的分块数，过长的工具输出只索引开头部分 */
+        const val MAX_CHUNKS_PER_MESSAGE = 12
+
+        private const val INDEX_BATCH = 32
+        private const val LOAD_BATCH = 1_000
+        private const val QUERY_CHUNK = 500
+
+        /** RRF 融合常数，与记忆检索一致 */
+        private const val RRF_K = 60.0
+
+        /** 每一路召回的候选数 */
+        private const val CANDIDATES = 100
+
+        /** 限定聊天范围时，范围内分块不超过该数量则直接精确扫描，否则在 HNSW 结果中过滤 */
+        private const val EXACT_SCAN_LIMIT = 5_000
+
+        /** 向量召回的相似度下限，低于该值的分块只能通过关键词命中 */
+        private const val MIN_VECTOR_SIMILARITY = 0.3f
+
+        /** HNSW 查询的候选集大小（ef），结果再用全精度相似度重排 */
+        private const val HNSW_EF_SEARCH = 100
+
+        /** 在 HNSW 结果中过滤时的多取倍数 */
+        private const val FILTER_OVERFETCH = 8
+
+        /** HNSW 中失效条目超过该比例（且超过最小数量）时重建 */
+        private const val STALE_REBUILD_RATIO = 0.25
+        private const val STALE_REBUILD_MIN = 1_000
+
+        private const val HNSW_M = 16
+        private const val HNSW_EF_CONSTRUCTION = 100
+        private const val INITIAL_CAPACITY = 10_000
+
+        /** 写入后延迟一段时间再索引，合并连续写入 */
+        private const val INDEX_DEBOUNCE_MS = 3_000L
+
+        /** 启动时等待嵌入模型初始化的轮询间隔与次数 */
+        private const val EMBEDDER_POLL_MS = 10_000L
+        private const val EMBEDDER_POLL_TIMES = 30
+
+        private const val VECTOR_FILE = "chunks.hnsw"
+        private const val VECTOR_META_FILE = "chunks.hnsw.meta"
+        private const val KEYWORD_FILE = "chunks.bm25"
+
+        private val BREAK_CHARS = "。！？；，.!?;,\n".toSet()
+
+        /** 把消息正文切成带重叠的分块区间，优先在标点或空白处断开 */
+        fun chunkSpans(content: String): List<IntRange> {
+            if (content.isBlank()) return emptyList()
+            val spans = ArrayList<IntRange>()
+            var start = 0
+            while (start < content.length && spans.size < MAX_CHUNKS_PER_MESSAGE) {
+                var end = minOf(content.length, start + CHUNK_CHARS)
+                if (end < content.length) {
+                    val floor = start + CHUNK_CHARS / 2
+                    for (i in end - 1 downTo floor) {
+                        if (content[i] in BREAK_CHARS || content[i].isWhitespace()) {
+                            end = i + 1
+                            break
+                        }
+                    }
+                }
+                spans.add(start until end)
+                if (end >= content.length) break
+                start = maxOf(end - CHUNK_OVERLAP, start + 1)
+            }
+            return spans
+        }
+
+        /** FNV-1a 64 位指纹 */
+        private fun fingerprint(text: String): Long {
+            var hash = -0x340d631b7bdddcdbL
+            for (c in text) {
+                hash = (hash xor c.code.toLong()) * 0x100000001b3L
+            }
+            return hash
+        }
+    }
+
+    private val chunkDao = database.messageChunkDao()
+    private val messageDao = database.messageDao()
+    private val chatDao = database.chatDao()
+
+    // 串行化加载、增量索引和重建；检索只在首次加载时等待
+    private val lock = Mutex()
+
+    @Volatile private var loaded = false
+    @Volatile private var vectors: HnswIndexManager<QuantizedIndexItem<Long>, Long, QuantizedVector>? = null
+    @Volatile private var keywords: Bm25Index? = null
+
+    // HNSW 中已包含全部 id 不大于该值的带向量分块
+    private var vectorWatermark = 0L
+
+    private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+    private var scheduled: Job? = null
+    @Volatile private var rerunRequested = false
+
+    /** 请求后台增量索引；已在进行时在结束后再补一轮 */
+    fun requestIndexing() {
+        synchronized(this) {
+            if (scheduled?.isActive == true) {
+                rerunRequested = true
+                return
+            }
+            scheduled = scope.launch {
+                do {
+                    rerunRequested = false
+                    delay(INDEX_DEBOUNCE_MS)
+                    if (!awaitEmbedder()) break
+                    try {
+                        val count = indexPending()
+                        if (count > 0) AppLogger.d(TAG, "已索引 $count 条消息")
+                    } catch (e: Exception) {
+                        AppLogger.e(TAG, "后台索引失败", e)
+                    }
+                } while (rerunRequested)
+            }
+        }
+    }
+
+    /**
+     * 消息内容被修改后调用，删除旧分块，下次索引时重新生成。
+     * 旧分块ID同时从关键词索引移除；向量索引中的旧条目计入失效数，由 [rebuildVectorsIfStale] 处理。
+     */
+    suspend fun invalidateMessage(messageId: Long) {
+        val staleIds = chunkDao.getChunkIdsForMessage(messageId)
+        chunkDao.deleteChunksForMessage(messageId)
+        keywords?.let { index -> staleIds.forEach { index.remove(it) } }
+    }
+
+    /**
+     * 索引尚未分块的消息，从最新的消息开始，每批之间释放锁，让检索和加载可以插入。
+     * @return 本次处理的消息数
+     */
+    suspend fun indexPending(maxMessages: Int = Int.MAX_VALUE): Int {
+        if (!embedder.isReady()) return 0
+        ensureLoaded()
+        var processed = 0
+        var cursor = Long.MAX_VALUE
+        while (processed < maxMessages) {
+            val count = lock.withLock {
+                val rows = chunkDao.getUnindexedMessages(cursor, minOf(INDEX_BATCH, maxMessages - processed))
+                if (rows.isNotEmpty()) {
+                    cursor = rows.last().messageId
+                    indexMessages(rows)
+                }
+                rows.size
+            }
+            if (count == 0) break
+            processed += count
+            yield()
+        }
+        if (processed > 0) {
+            lock.withLock {
+                rebuildVectorsIfStale()
+                saveVectors()
+            }
+        }
+        return processed
+    }
+
+    /**
+     * 混合检索：向量与 BM25 各召回一批分块，RRF 融合后按消息去重。
+     * @param chatIds 限定的聊天范围，包含写时复制分支共享的祖先消息；为 null 时检索全部聊天
+     */
+    suspend fun search(query: String, chatIds: Collection<String>? = null, limit: Int = 10): List<ChatSearchHit> {
+        if (query.isBlank() || limit <= 0) return emptyList()
+        ensureLoaded()
+
+        val visible = chatIds?.let { resolveScope(it) }
+        if (visible != null && visible.isEmpty()) return emptyList()
+        val owners = visible?.keys?.toList()
+        val scopedRows =
+            if (owners != null && chunkDao.countChunksForChats(owners) <= EXACT_SCAN_LIMIT) {
+                chunkDao.getChunksForChats(owners).filter { inScope(visible, it) != null }
+            } else {
+                null
+            }
+        val overfetch = if (visible != null && scopedRows == null) FILTER_OVERFETCH else 1
+
+        // 向量召回
+        val queryVector = if (embedder.isReady()) embedder.embed(listOf(query)).firstOrNull() else null
+        val vectorRanking: List<Long> = when {
+            queryVector == null -> emptyList()
+            scopedRows != null ->
+                QuantizedVector.search(
+                    queryVector,
+                    scopedRows.filter { it.codes != null }.map { it.id to QuantizedVector(it.codes!!, it.scale) },
+                    limit = CANDIDATES,
+                    minScore = MIN_VECTOR_SIMILARITY
+                ).map { it.value }
+            else ->
+                nearestChunks(queryVector, CANDIDATES * overfetch)
+                    .filter { it.second >= MIN_VECTOR_SIMILARITY }
+                    .map { it.first }
+        }
+
+        // 关键词召回
+        val allowed = scopedRows?.mapTo(HashSet()) { it.id }
+        val keywordRanking = keywords?.search(
+            Bm25Index.tokenize(query),
+            limit = CANDIDATES * overfetch,
+            filter = allowed?.let { ids -> { id: Long -> id in ids } }
+        )?.map { it.id } ?: emptyList()
+
+        // RRF 融合
+        val fused = HashMap<Long, Double>()
+        vectorRanking.forEachIndexed { rank, id -> fused[id] = (fused[id] ?: 0.0) + 1.0 / (RRF_K + rank + 1) }
+        keywordRanking.forEachIndexed { rank, id -> fused[id] = (fused[id] ?: 0.0) + 1.0 / (RRF_K + rank + 1) }
+        if (fused.isEmpty()) return emptyList()
+        val ordered = fused.entries.sortedByDescending { it.value }
+
+        val rows = HashMap<Long, MessageChunkEntity>()
+        ordered.map { it.key }.chunked(QUERY_CHUNK).forEach { ids ->
+            chunkDao.getChunksByIds(ids).forEach { rows[it.id] = it }
+        }
+
+        // 每条消息只保留得分最高的分块；已失效或不在范围内的分块跳过
+        val picked = ArrayList<Triple<MessageChunkEntity, String, Double>>()
+        val seenMessages = HashSet<Long>()
+        for ((id, score) in ordered) {
+            val row = rows[id] ?: continue
+            val chatId = if (visible != null) inScope(visible, row) ?: continue else row.chatId
+            if (!seenMessages.add(row.messageId)) continue
+            picked.add(Triple(row, chatId, score))
+            if (picked.size >= limit) break
+        }
+        if (picked.isEmpty()) return emptyList()
+
+        val messages = loadMessages(picked.map { it.first.messageId })
+        val titles = picked.map { it.second }.distinct().associateWith { chatDao.getChatById(it)?.title ?: "" }
+        return picked.mapNotNull { (row, chatId, score) ->
+            val message = messages[row.messageId] ?: return@mapNotNull null
+            val content = message.second
+            val snippet = content.substring(
+                row.startOffset.coerceIn(0, content.length),
+                row.endOffset.coerceIn(0, content.length)
+            ).trim()
+            ChatSearchHit(
+                chatId = chatId,
+                chatTitle = titles[chatId] ?: "",
+                messageTimestamp = row.timestamp,
+                sender = message.first.sender,
+                snippet = snippet,
+                score = score
+            )
+        }
+    }
+
+    /** 关键词索引中的分块ID是否存在 */
+    internal fun hasKeywordChunk(chunkId: Long): Boolean = keywords?.contains(chunkId) == true
+
+    /** HNSW 召回的分块ID */
+    internal suspend fun nearestChunkIds(queryVector: FloatArray, k: Int): List<Long> {
+        return nearestChunks(queryVector, k).map { it.first }
+    }
+
+    /** HNSW 召回的 (分块ID, 相似度)，按与查询的全精度相似度重排 */
+    private suspend fun nearestChunks(queryVector: FloatArray, k: Int): List<Pair<Long, Float>> {
+        ensureLoaded()
+        val index = vectors ?: return emptyList()
+        val normalized = QuantizedVector.l2Normalize(queryVector)
+        return index.findNearest(QuantizedVector.quantize(normalized), maxOf(k, HNSW_EF_SEARCH))
+            .map { it.id() to it.vector().similarity(normalized) }
+            .sortedByDescending { it.second }
+            .take(k)
+    }
+
+    private suspend fun ensureLoaded() {
+        if (loaded) return
+        lock.withLock {
+            if (loaded) return
+            loadVectors()
+            loadKeywords()
+            loaded = true
+        }
+    }
+
+    private suspend fun indexMessages(rows: List<MessageEntity>) {
+        val contents = bodyStore.resolve(rows).map { it.content }
+        val chunks = ArrayList<MessageChunkEntity>()
+        val texts = ArrayList<String>()
+        rows.forEachIndexed { i, row ->
+            val content = contents[i]
+            val spans = chunkSpans(content)
+            if (spans.isEmpty()) {
+                chunks.add(chunkRow(row, 0, 0 until 0, 0L))
+                texts.add("")
+            }
+            spans.forEachIndexed { n, span ->
+                val text = content.substring(span.first, span.last + 1)
+                chunks.add(chunkRow(row, n, span, fingerprint(text)))
+                texts.add(text)
+            }
+        }
+
+        // 只对有内容的分块向量化，空白消息的标记行不带向量
+        val pending = texts.indices.filter { texts[it].isNotBlank() }
+        val embeddings = HashMap<Int, FloatArray>()
+        embedder.embed(pending.map { texts[it] }).forEachIndexed { n, vector ->
+            if (vector != null) embeddings[pending[n]] = vector
+        }
+        val embedded = chunks.mapIndexed { i, chunk ->
+            val vector = embeddings[i] ?: return@mapIndexed chunk
+            val quantized = QuantizedVector.quantize(vector)
+            chunk.copy(codes = quantized.codes, scale = quantized.scale)
+        }
+
+        // 向量化期间消息可能被修改或删除：内容已变的消息留到下一轮，外键约束失败的消息跳过
+        val current = messageDao.getMessagesByIds(rows.map { it.messageId }).associateBy { it.messageId }
+        var offset = 0
+        rows.forEach { row ->
+            val end = offset + embedded.subList(offset, embedded.size).takeWhile { it.messageId == row.messageId }.size
+            val latest = current[row.messageId]
+            val unchanged = latest != null && latest.content == row.content && latest.bodyHash == row.bodyHash
+            val ids = if (!unchanged) null else try {
+                chunkDao.insertChunks(embedded.subList(offset, end))
+            } catch (e: Exception) {
+                AppLogger.d(TAG, "消息 ${row.messageId} 已不存在，跳过索引")
+                null
+            }
+            ids?.forEachIndexed { n, id -> addToIndexes(id, embedded[offset + n], texts[offset + n]) }
+            offset = end
+        }
+    }
+
+    private fun chunkRow(row: MessageEntity, index: Int, span: IntRange, signature: Long): MessageChunkEntity {
+        return MessageChunkEntity(
+            messageId = row.messageId,
+            chatId = row.chatId,
+            timestamp = row.timestamp,
+            chunkIndex = index,
+            startOffset = span.first,
+            endOffset = span.last + 1,
+            signature = signature,
+            codes = null,
+            scale = 0f
+        )
+    }
+
+    private fun addToIndexes(id: Long, chunk: MessageChunkEntity, text: String) {
+        val codes = chunk.codes
+        if (codes != null) {
+            vectors?.addItem(QuantizedIndexItem(id, QuantizedVector(codes, chunk.scale)))
+            if (id > vectorWatermark) vectorWatermark = id
+        }
+        if (text.isNotBlank()) {
+            keywords?.put(id, chunk.signature, Bm25Index.tokenize(text))
+        }
+    }
+
+    /**
+     * 把聊天范围展开为 分块所属聊天 -> [(检索的聊天, 可见的最大时间戳)]，
+     * 写时复制分支共享的祖先消息归属到检索的分支本身。
+     */
+    private suspend fun resolveScope(chatIds: Collection<String>): Map<String, List<Pair<String, Long>>> {
+        val visible = HashMap<String, MutableList<Pair<String, Long>>>()
+        for (chatId in chatIds.toSet()) {
+            var current = chatDao.getChatById(chatId) ?: continue
+            var upTo = Long.MAX_VALUE
+            visible.getOrPut(current.id) { ArrayList() }.add(chatId to upTo)
+            var depth = 0
+            while (depth < 64) {
+                val baseId = current.baseChatId ?: break
+                val baseTimestamp = current.baseTimestamp ?: break
+                upTo = minOf(upTo, baseTimestamp)
+                visible.getOrPut(baseId) { ArrayList() }.add(chatId to upTo)
+                current = chatDao.getChatById(baseId) ?: break
+                depth++
+            }
+        }
+        return visible
+    }
+
+    /** 分块在范围内时返回它所计入的聊天，优先计入所属聊天本身 */
+    private fun inScope(scope: Map<String, List<Pair<String, Long>>>, row: MessageChunkEntity): String? {
+        val entries = scope[row.chatId] ?: return null
+        entries.firstOrNull { it.first == row.chatId && row.timestamp <= it.second }?.let { return it.first }
+        return entries.firstOrNull { row.timestamp <= it.second }?.first
+    }
+
+    /** messageId -> (消息行, 完整正文) */
+    private suspend fun loadMessages(messageIds: List<Long>): Map<Long, Pair<MessageEntity, String>> {
+        val result = HashMap<Long, Pair<MessageEntity, String>>()
+        messageIds.distinct().chunked(QUERY_CHUNK).forEach { ids ->
+            val rows = messageDao.getMessagesByIds(ids)
+            val messages = bodyStore.resolve(rows)
+            rows.forEachIndexed { i, row -> result[row.messageId] = row to messages[i].content }
+        }
+        return result
+    }
+
+    private suspend fun loadVectors() {
+        val file = indexDir?.let { File(it, VECTOR_FILE) }
+        val metaFile = indexDir?.let { File(it, VECTOR_META_FILE) }
+        val watermark = metaFile?.takeIf { it.exists() }?.readText()?.trim()?.toLongOrNull()
+        if (file != null && file.exists() && watermark == null) {
+            // 没有水位记录的快照无法确定覆盖范围，直接重建
+            file.delete()
+        }
+        val manager = HnswIndexManager<QuantizedIndexItem<Long>, Long, QuantizedVector>(
+            dimensions = embedder.dimensions,
+            maxElements = INITIAL_CAPACITY,
+            indexFile = file,
+            distanceFunction = QuantizedCosineDistance,
+            m = HNSW_M,
+            efConstruction = HNSW_EF_CONSTRUCTION
+        )
+        vectors = manager
+        vectorWatermark = if (manager.size() > 0) watermark ?: 0L else 0L
+        val before = manager.size()
+        catchUpVectors(manager)
+        if (manager.size() > before) {
+            AppLogger.d(TAG, "向量索引从快照追加了 ${manager.size() - before} 个分块")
+        }
+        rebuildVectorsIfStale()
+    }
+
+    private suspend fun catchUpVectors(manager: HnswIndexManager<QuantizedIndexItem<Long>, Long, QuantizedVector>) {
+        while (true) {
+            val batch = chunkDao.getEmbeddedChunksAfter(vectorWatermark, LOAD_BATCH)
+            if (batch.isEmpty()) break
+            batch.forEach { manager.addItem(QuantizedIndexItem(it.id, QuantizedVector(it.codes!!, it.scale))) }
+            vectorWatermark = batch.last().id
+            yield()
+        }
+    }
+
+    private suspend fun rebuildVectorsIfStale() {
+        val manager = vectors ?: return
+        // 已删除或被修改消息的旧分块仍留在图中，而数据库中已不存在，二者之差即失效条目数
+        val stale = manager.size() - chunkDao.getEmbeddedChunkCount()
+        if (stale < STALE_REBUILD_MIN || stale < manager.size() * STALE_REBUILD_RATIO) return
+        AppLogger.d(TAG, "向量索引中有 $stale 个失效条目，重建")
+        manager.clear()
+        vectorWatermark = 0L
+        catchUpVectors(manager)
+        saveVectors()
+    }
+
+    private fun saveVectors() {
+        val dir = indexDir ?: return
+        val manager = vectors ?: return
+        manager.save()
+        val meta = File(dir, VECTOR_META_FILE)
+        val tmp = File(dir, "$VECTOR_META_FILE.tmp")
+        try {
+            tmp.writeText(vectorWatermark.toString())
+            if (!tmp.renameTo(meta)) {
+                meta.delete()
+                if (!tmp.renameTo(meta)) throw IOException("Failed to replace ${meta.name}")
+            }
+        } catch (e: IOException) {
+            AppLogger.e(TAG, "保存向量索引水位失败", e)
+            tmp.delete()
+        }
+    }
+
+    private suspend fun loadKeywords() {
+        val index = Bm25Index(indexDir?.let { File(it, KEYWORD_FILE) })
+        keywords = index
+        val expected = chunkDao.getSignatures().filter { it.signature != 0L }.associate { it.id to it.signature }
+        if (!index.load() || !index.verify()) {
+            AppLogger.d(TAG, "关键词索引缺失或损坏，重建")
+            index.rebuild(emptySequence())
+            putKeywords(index, null)
+        } else {
+            val stale = index.reconcile(expected)
+            if (stale.isNotEmpty()) putKeywords(index, stale.toHashSet())
+        }
+    }
+
+    /** 把分块文本写入关键词索引；[only] 为 null 时写入全部分块 */
+    private suspend fun putKeywords(index: Bm25Index, only: Set<Long>?) {
+        var after = 0L
+        while (true) {
+            val batch = chunkDao.getChunksAfter(after, LOAD_BATCH)
+            if (batch.isEmpty()) break
+            after = batch.last().id
+            val rows = batch.filter { it.endOffset > it.startOffset && (only == null || it.id in only) }
+            if (rows.isEmpty()) continue
+            val messages = loadMessages(rows.map { it.messageId })
+            rows.forEach { row ->
+                val content = messages[row.messageId]?.second ?: return@forEach
+                if (row.endOffset > content.length) return@forEach
+                val text = content.substring(row.startOffset, row.endOffset)
+                index.put(row.id, row.signature, Bm25Index.tokenize(text))
+            }
+            yield()
+        }
+    }
+
+    private suspend fun awaitEmbedder(): Boolean {
+        repeat(EMBEDDER_POLL_TIMES) {
+            if (embedder.isReady()) return true
+            delay(EMBEDDER_POLL_MS)
+        }
+        return embedder.isReady()
+    }
+}
@@ -11,19 +11,42 @@ import com.ai.assistance.operit.data.model.Memory_
 import com.ai.assistance.operit.data.model.DocumentChunk
 import com.ai.assistance.operit.data.model.DocumentChunk_
 import com.ai.assistance.operit.data.model.Embedding
+import com.ai.assistance.operit.data.model.EmbeddingConverter
 import com.ai.assistance.operit.data.model.ChunkReference
+import com.ai.assistance.operit.data.model.DocumentIngestionOptions
+import com.ai.assistance.operit.data.model.DocumentIngestionProgress
+import com.ai.assistance.operit.data.preferences.MemoryStoragePreferences
 import com.ai.assistance.operit.services.OnnxEmbeddingService
 import com.ai.assistance.operit.ui.features.memory.screens.graph.model.Edge
 import com.ai.assistance.operit.ui.features.memory.screens.graph.model.Graph
 import com.ai.assistance.operit.ui.features.memory.screens.graph.model.Node
+import com.ai.assistance.operit.util.DocumentChunker
+import com.ai.assistance.operit.util.search.Bm25Index
+import com.ai.assistance.operit.util.search.NearDuplicateIndex
 import com.ai.assistance.operit.util.vector.IndexItem
+import com.ai.assistance.operit.util.vector.QuantizedVector
 import com.ai.assistance.operit.util.vector.VectorIndexManager
 import io.objectbox.Box
+import io.objectbox.BoxStore
 import io.objectbox.kotlin.boxFor
 import io.objectbox.kotlin.query
 import io.objectbox.query.QueryBuilder
 import java.io.File
+import java.io.FilterInputStream
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.last
+import kotlinx.coroutines.joinAll
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import io.objectbox.query.QueryCondition
 import java.io.IOException
@@ -33,6 +56,10 @@ import com.ai.assistance.operit.data.model.MemoryExportData
 import com.ai.assistance.operit.data.model.SerializableMemory
 import com.ai.assistance.operit.data.model.SerializableLink
 import com.ai.assistance.operit.data.model.ImportStrategy
+import com.ai.assistance.operit.data.model.MemoryDeduplicationReport
+import com.ai.assistance.operit.data.model.NearDuplicateAction
+import com.ai.assistance.operit.data.model.NearDuplicatePolicy
+import com.ai.assistance.operit.data.model.NearDuplicateSaveResult
 import com.ai.assistance.operit.data.model.MemoryImportResult
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.decodeFromString
@@ -42,7 +69,7 @@ import kotlinx.serialization.json.Json
  * Repository for handling Memory data operations. It abstracts the data source (ObjectBox) from the
  * rest of the application.
  */
-class MemoryRepository(private val context: Context, profileId: String) {
+class MemoryRepository(private val context: Context, private val profileId: String) {
 
     companion object {
         /** Represents a strong link, e.g., "A is a B". */
@@ -54,6 +81,10 @@ class MemoryRepository(private val context: Context, profileId: String) {
         /** Represents a weak link, e.g., "A is sometimes associated with B". */
         const val WEAK_LINK = 0.3f
 
+        /** createFolder 创建的占位记忆标题 */
+        private const val FOLDER_PLACEHOLDER_TITLE = "文件夹说明"
+        private val PLACEHOLDER_TITLES = setOf(FOLDER_PLACEHOLDER_TITLE, ".folder_placeholder")
+
         fun normalizeFolderPath(folderPath: String?): String? {
             val raw = folderPath?.trim() ?: return null
             if (raw.isBlank() || raw == "未分类") return null
@@ -65,6 +96,36 @@ class MemoryRepository(private val context: Context, profileId: String) {
 
             return parts.takeIf { it.isNotEmpty() }?.joinToString("/")
         }
+
+        /**
+         * 同一档案的文本索引在进程内只保留一份。仓库实例在各处按需创建，索引若跟随实例，
+         * 长期存活的实例看不到其他实例写入的记忆，多个实例还会交错写同一个日志文件。
+         * 档案的 ObjectBox store 被关闭重开（如删除后重建）时，按 store 识别并重新加载。
+         */
+        private class SharedTextIndexes(val store: BoxStore) {
+            @Volatile
+            var keyword: Bm25Index? = null
+
+            @Volatile
+            var duplicate: NearDuplicateIndex? = null
+
+            fun close() {
+                keyword?.close()
+                duplicate?.close()
+            }
+        }
+
+        private val sharedTextIndexes = ConcurrentHashMap<String, SharedTextIndexes>()
+
+        private fun sharedTextIndexesFor(profileId: String, store: BoxStore): SharedTextIndexes =
+            sharedTextIndexes.compute(profileId) { _, existing ->
+                if (existing != null && existing.store === store) {
+                    existing
+                } else {
+                    existing?.close()
+                    SharedTextIndexes(store)
+                }
+            }!!
     }
 
     private val store = ObjectBoxManager.get(context, profileId)
@@ -72,13 +133,18 @@ class MemoryRepository(private val context: Context, profileId: String) {
     private val tagBox = store.boxFor<MemoryTag>()
     private val linkBox = store.boxFor<MemoryLink>()
     private val chunkBox = store.boxFor<DocumentChunk>()
+    private val storagePreferences = MemoryStoragePreferences(context)
+
+    init {
+        EmbeddingConverter.quantizeOnWrite = storagePreferences.isQuantizationEnabled()
+    }
     
     // --- HNSW向量索引集成 ---
     private val vectorIndexManager: VectorIndexManager<IndexItem<Memory>, String> by lazy {
         val indexFile = File(context.filesDir, "memory_hnsw_${profileId}.idx")
         
         // 检查是否有旧的100维向量，如果有则删除旧索引
-        val hasOldEmbeddings = memoryBox.all.any { it.embedding != null && it.embedding!!.vector.size == 100 }
+        val hasOldEmbeddings = memoryBox.all.any { it.embedding != null && it.embedding!!.dimensions == 100 }
         if (hasOldEmbeddings && indexFile.exists()) {
             com.ai.assistance.operit.util.AppLogger.w("MemoryRepo", "Detected old 100-dim embeddings, deleting old index file")
             indexFile.delete()
@@ -92,12 +158,165 @@ class MemoryRepository(private val context: Context, profileId: String) {
                 )
         manager.initIndex()
         // 首次构建索引 - 只添加384维的向量
-        memoryBox.all.filter { it.embedding != null && it.embedding!!.vector.size == 384 }.forEach { memory ->
+        memoryBox.all.filter { it.embedding != null && it.embedding!!.dimensions == 384 }.forEach { memory ->
             manager.addItem(IndexItem(memory.uuid, memory.embedding!!.vector, memory))
         }
         manager
     }
     
+    private val textIndexes = sharedTextIndexesFor(profileId, store)
+
+    // --- BM25关键词倒排索引（同档案的仓库实例共用） ---
+    private val keywordIndex: Bm25Index
+        get() = textIndexes.keyword ?: synchronized(textIndexes) {
+            textIndexes.keyword ?: loadKeywordIndex().also { textIndexes.keyword = it }
+        }
+
+    private fun loadKeywordIndex(): Bm25Index {
+        val index = Bm25Index(File(context.filesDir, "memory_bm25_${profileId}.idx"))
+        val loaded = index.load()
+        if (!loaded || !index.verify()) {
+            com.ai.assistance.operit.util.AppLogger.w("MemoryRepo", "BM25 index missing or inconsistent, rebuilding from scratch")
+            rebuildKeywordIndex(index)
+        } else {
+            // 与数据库对账，补上索引外发生的增删改（如崩溃前未落盘的写入）
+            val memories = memoryBox.all
+            val stale = index.reconcile(memories.associate { it.id to keywordSignature(it) })
+            if (stale.isNotEmpty()) {
+                com.ai.assistance.operit.util.AppLogger.d("MemoryRepo", "BM25 index reconciled, reindexing ${stale.size} memories")
+                val staleIds = stale.toHashSet()
+                memories.filter { it.id in staleIds }.forEach { putKeywordIndex(index, it) }
+            }
+        }
+        return index
+    }
+
+    // --- 近似重复索引（MinHash LSH + SimHash，同档案的仓库实例共用） ---
+    private val duplicateIndex: NearDuplicateIndex
+        get() = textIndexes.duplicate ?: synchronized(textIndexes) {
+            textIndexes.duplicate ?: loadDuplicateIndex().also { textIndexes.duplicate = it }
+        }
+
+    private fun loadDuplicateIndex(): NearDuplicateIndex {
+        val index = NearDuplicateIndex(File(context.filesDir, "memory_dedup_${profileId}.idx"))
+        val memories = memoryBox.all.filter { isDeduplicable(it) }
+        if (!index.load()) {
+            com.ai.assistance.operit.util.AppLogger.w("MemoryRepo", "Near-duplicate index missing, rebuilding from scratch")
+            index.rebuild(memories.asSequence().map { Triple(it.id, keywordSignature(it), duplicateText(it)) })
+        } else {
+            val stale = index.reconcile(memories.associate { it.id to keywordSignature(it) }).toHashSet()
+            memories.filter { it.id in stale }.forEach { index.put(it.id, keywordSignature(it), duplicateText(it)) }
+        }
+        return index
+    }
+
+    /** 标题和正文共同决定关键词索引内容 */
+    private fun keywordSignature(memory: Memory): Long =
+        (memory.title.hashCode().toLong() shl 32) xor (memory.content.hashCode().toLong() and 0xFFFFFFFFL)
+
+    /** 标题词项计两次，相当于给标题字段加权 */
+    private fun keywordTokens(memory: Memory): List<String> {
+        val titleTokens = Bm25Index.tokenize(memory.title)
+        return titleTokens + titleTokens + Bm25Index.tokenize(memory.content)
+    }
+
+    private fun putKeywordIndex(index: Bm25Index, memory: Memory) {
+        val signature = keywordSignature(memory)
+        if (index.signatureOf(memory.id) == signature) return
+        index.put(memory.id, signature, keywordTokens(memory))
+    }
+
+    private fun rebuildKeywordIndex(index: Bm25Index) {
+        index.rebuild(memoryBox.all.asSequence().map { Triple(it.id, keywordSignature(it), keywordTokens(it)) })
+    }
+
+    /** 记忆的标题或正文写入数据库后调用，保持关键词索引与近似重复索引同步。 */
+    private fun updateTextIndexes(memory: Memory) {
+        if (memory.id == 0L) return
+        putKeywordIndex(keywordIndex, memory)
+        if (isDeduplicable(memory)) {
+            duplicateIndex.put(memory.id, keywordSignature(memory), duplicateText(memory))
+        } else {
+            duplicateIndex.remove(memory.id)
+        }
+    }
+
+    private fun removeFromTextIndexes(memoryIds: Collection<Long>) {
+        memoryIds.forEach {
+            keywordIndex.remove(it)
+            duplicateIndex.remove(it)
+        }
+    }
+
+    /** 文档节点和文件夹占位记忆的正文是模板化的，不参与查重 */
+    private fun isDeduplicable(memory: Memory): Boolean =
+        !memory.isDocumentNode && memory.title !in PLACEHOLDER_TITLES
+
+    private fun duplicateText(memory: Memory): String = memory.title + "\n" + memory.content
+
+    /** 丢弃并重建关键词索引。 */
+    suspend fun rebuildKeywordIndex() = withContext(Dispatchers.IO) {
+        rebuildKeywordIndex(keywordIndex)
+    }
+
+    /** 校验关键词索引自身一致性以及与数据库的一致性，不一致时自动修复。 */
+    suspend fun checkKeywordIndex(): Boolean = withContext(Dispatchers.IO) {
+        val index = keywordIndex
+        if (!index.verify()) {
+            rebuildKeywordIndex(index)
+            return@withContext false
+        }
+        val memories = memoryBox.all
+        val stale = index.reconcile(memories.associate { it.id to keywordSignature(it) }).toHashSet()
+        memories.filter { it.id in stale }.forEach { putKeywordIndex(index, it) }
+        stale.isEmpty()
+    }
+
+    /**
+     * 把已有的记忆与区块向量改写为当前偏好的存储格式（int8 或 float32）。
+     * 按批读取、按批在事务中写回。只在用户于设置中切换存储格式后调用，检索路径不会触发；
+     * 转为 int8 是有损的，之后切回 float32 也无法恢复原精度。
+     * @return 改写的实体数量。
+     */
+    suspend fun migrateEmbeddingStorage(): Int = withContext(Dispatchers.IO) {
+        val quantize = storagePreferences.isQuantizationEnabled()
+        EmbeddingConverter.quantizeOnWrite = quantize
+        val targetFormat = if (quantize) "int8" else "float32"
+        val batchSize = 500L
+        var migrated = 0
+
+        val memoryQuery = memoryBox.query().build()
+        var offset = 0L
+        while (true) {
+            val page = memoryQuery.find(offset, batchSize)
+            if (page.isEmpty()) break
+            val stale = page.filter { it.embedding != null && it.embedding!!.isQuantized != quantize }
+            if (stale.isNotEmpty()) {
+                store.runInTx { memoryBox.put(stale) }
+                migrated += stale.size
+            }
+            offset += page.size
+        }
+        memoryQuery.close()
+
+        val chunkQuery = chunkBox.query().build()
+        offset = 0L
+        while (true) {
+            val page = chunkQuery.find(offset, batchSize)
+            if (page.isEmpty()) break
+            val stale = page.filter { it.embedding != null && it.embedding!!.isQuantized != quantize }
+            if (stale.isNotEmpty()) {
+                store.runInTx { chunkBox.put(stale) }
+                migrated += stale.size
+            }
+            offset += page.size
+        }
+        chunkQuery.close()
+
+        com.ai.assistance.operit.util.AppLogger.d("MemoryRepo", "Embedding storage migrated to $targetFormat, rewrote $migrated entities")
+        migrated
+    }
+
     /**
      * 从外部文档创建记忆。
      * @param title 文档记忆的标题。
@@ -107,10 +326,31 @@ class MemoryRepository(private val context: Context, profileId: String) {
      * @return 创建的Memory对象。
      */
     suspend fun createMemoryFromDocument(documentName: String, originalPath: String, text: String, folderPath: String = ""): Memory = withContext(Dispatchers.IO) {
-        // 1. 为文档本身生成嵌入
-        val documentEmbedding = OnnxEmbeddingService.generateEmbedding(documentName)?.vector ?: FloatArray(384)
+        ingestDocument(documentName, originalPath, { text.byteInputStream() }, null, folderPath)
+            .last()
+            .memory!!
+    }
 
-        // 2. 创建一个初始的Memory对象并立即保存以获得ID
+    /**
+     * 流式导入文档：边读边分块，分批并行生成嵌入，按事务批量写入区块。
+     *
+     * 读取、嵌入、写入三段之间用有界通道衔接，内存占用只取决于批大小而与文档大小无关。
+     * 收集方取消时会回滚已写入的文档节点、区块和区块索引文件。
+     *
+     * @param openStream 打开 UTF-8 文本源，流水线负责关闭
+     * @param totalBytes 源数据总字节数（用于计算进度），未知时传 null
+     * @return 进度流，最后一个元素携带创建完成的文档记忆
+     */
+    fun ingestDocument(
+        documentName: String,
+        originalPath: String,
+        openStream: () -> InputStream,
+        totalBytes: Long? = null,
+        folderPath: String = "",
+        options: DocumentIngestionOptions = DocumentIngestionOptions()
+    ): Flow<DocumentIngestionProgress> = channelFlow {
+        // 1. 为文档本身生成嵌入，并立即保存以获得ID
+        val documentEmbedding = OnnxEmbeddingService.generateEmbedding(documentName)?.vector ?: FloatArray(384)
         val documentMemory = Memory(
             title = documentName,
             content = "这是一个文档节点，包含了文件 '${documentName}' 的内容。",
@@ -123,7 +363,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
         }
         memoryBox.put(documentMemory)
 
-        // 3. 为文档块创建专用的HNSW索引，确保从干净的状态开始
+        // 2. 为文档块创建专用的HNSW索引，确保从干净的状态开始；容量随区块数自动扩展
         val indexFile = context.getFileStreamPath("doc_index_${documentMemory.id}.hnsw")
         if (indexFile.exists()) {
             indexFile.delete()
@@ -131,57 +371,113 @@ class MemoryRepository(private val context: Context, profileId: String) {
         documentMemory.chunkIndexFilePath = indexFile.absolutePath
         val chunkIndexManager = VectorIndexManager<IndexItem<ChunkReference>, String>(
             dimensions = 384, // ONNX模型的embedding维度
-            maxElements = 20000,
+            maxElements = 1024,
             indexFile = indexFile
         )
 
-        // 4. 分割、清洗和处理文本块
-        val chunks = text.split(Regex("(\\r?\\n[\\t ]*){2,}"))
-            .mapNotNull { chunkText ->
-                val cleanedText = chunkText.replace(Regex("(?m)^[\\*\\-=_]{3,}\\s*$"), "").trim()
-                if (cleanedText.isNotBlank()) {
-                    DocumentChunk(content = cleanedText, chunkIndex = 0) // chunkIndex will be set later
-                } else {
-                    null
+        var completed = false
+        try {
+            val bytesRead = AtomicLong()
+            var chunksWritten = 0
+
+            coroutineScope {
+                val textBatches = Channel<List<DocumentChunk>>(options.embeddingParallelism)
+                val embeddedBatches = Channel<List<DocumentChunk>>(options.embeddingParallelism)
+
+                // 3. 读取并分块
+                launch(Dispatchers.IO) {
+                    CountingInputStream(openStream()).use { input ->
+                        val reader = InputStreamReader(input, Charsets.UTF_8)
+                        var chunkIndex = 0
+                        DocumentChunker(options.chunking).chunks(reader)
+                            .chunked(options.embeddingBatchSize)
+                            .forEach { texts ->
+                                bytesRead.set(input.count)
+                                textBatches.send(texts.map { DocumentChunk(content = it, chunkIndex = chunkIndex++) })
+                            }
+                        bytesRead.set(input.count)
+                    }
+                    textBatches.close()
                 }
-            }.mapIndexed { index, chunk ->
-                chunk.apply { this.chunkIndex = index }
-            }
 
-        // 5. 为所有块生成嵌入并添加到索引和数据库
-        if (chunks.isNotEmpty()) {
-            // 首先，将所有块链接到父级Memory
-            chunks.forEach { it.memory.target = documentMemory }
-            // 其次，将chunks存入数据库以获取它们的永久ID
-            chunkBox.put(chunks)
-
-            // 然后为所有块生成嵌入
-            val embeddings = chunks.map { OnnxEmbeddingService.generateEmbedding(it.content) }
-
-            // 最后，用有效ID和嵌入更新块，并将它们添加到索引管理器中
-            chunks.forEachIndexed { index, chunk ->
-                if (index < embeddings.size) {
-                    val embedding = embeddings[index]
-                    if (embedding != null) {
-                        chunk.embedding = embedding
-                        // 此时 chunk.id 是有效的, 存入ChunkReference而不是整个chunk
-                        val reference = ChunkReference(chunk.id)
-                        chunkIndexManager.addItem(IndexItem("chunk_${chunk.id}", embedding.vector, reference))
+                // 4. 有界并行生成嵌入
+                val embedders = List(options.embeddingParallelism) {
+                    launch(Dispatchers.Default) {
+                        for (batch in textBatches) {
+                            val embeddings = OnnxEmbeddingService.generateEmbeddings(batch.map { it.content })
+                            batch.forEachIndexed { i, chunk -> chunk.embedding = embeddings[i] }
+                            embeddedBatches.send(batch)
+                        }
                     }
                 }
+                launch {
+                    embedders.joinAll()
+                    embeddedBatches.close()
+                }
+
+                // 5. 按事务批量写入区块并加入索引
+                val pending = ArrayList<DocumentChunk>(options.writeBatchSize)
+                suspend fun flushPending() {
+                    if (pending.isEmpty()) return
+                    pending.forEach { it.memory.target = documentMemory }
+                    store.runInTx { chunkBox.put(pending) }
+                    pending.forEach { chunk ->
+                        val embedding = chunk.embedding ?: return@forEach
+                        chunkIndexManager.addItem(IndexItem("chunk_${chunk.id}", embedding.vector, ChunkReference(chunk.id)))
+                    }
+                    chunksWritten += pending.size
+                    pending.clear()
+                    send(DocumentIngestionProgress(bytesRead.get(), totalBytes, chunksWritten))
+                }
+                for (batch in embeddedBatches) {
+                    pending.addAll(batch)
+                    if (pending.size >= options.writeBatchSize) flushPending()
+                }
+                flushPending()
+            }
+
+            // 6. 保存索引到文件，并更新父Memory以保存索引路径
+            chunkIndexManager.save()
+            com.ai.assistance.operit.util.AppLogger.d("MemoryRepo", "Ingested '$documentName': $chunksWritten chunks, ${bytesRead.get()} bytes, index size ${chunkIndexManager.size()}")
+            memoryBox.put(documentMemory)
+            updateTextIndexes(documentMemory)
+            completed = true
+            send(DocumentIngestionProgress(bytesRead.get(), totalBytes, chunksWritten, documentMemory))
+        } finally {
+            if (!completed) {
+                withContext(NonCancellable) {
+                    com.ai.assistance.operit.util.AppLogger.w("MemoryRepo", "Document ingestion of '$documentName' aborted, rolling back")
+                    chunkBox.query(DocumentChunk_.memoryId.equal(documentMemory.id)).build().remove()
+                    memoryBox.remove(documentMemory.id)
+                    indexFile.delete()
+                }
             }
-            // 因为embedding被设置了，再次put来更新它们
-            chunkBox.put(chunks)
         }
+    }.flowOn(Dispatchers.IO)
 
-        // 保存索引到文件
-        chunkIndexManager.save()
-        com.ai.assistance.operit.util.AppLogger.d("MemoryRepo", "Chunk index saved to: ${indexFile.absolutePath}. File exists: ${indexFile.exists()}")
+    /** 统计已读取字节数，用于导入进度。 */
+    private class CountingInputStream(input: InputStream) : FilterInputStream(input) {
+        @Volatile
+        var count = 0L
+            private set
 
-        // 更新父Memory以保存ToMany关系和索引路径
-        com.ai.assistance.operit.util.AppLogger.d("MemoryRepo", "Saving memory ${documentMemory.id} with chunkIndexFilePath: ${documentMemory.chunkIndexFilePath}")
-        memoryBox.put(documentMemory)
-        documentMemory
+        override fun read(): Int {
+            val b = super.read()
+            if (b >= 0) count++
+            return b
+        }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            val n = super.read(b, off, len)
+            if (n > 0) count += n
+            return n
+        }
+
+        override fun skip(n: Long): Long {
+            val skipped = super.skip(n)
+            count += skipped
+            return skipped
+        }
     }
 
     /**
@@ -199,7 +495,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
      */
     private suspend fun ensureEmbeddingUpToDate(memory: Memory): Boolean = withContext(Dispatchers.IO) {
         val embedding = memory.embedding
-        if (embedding != null && embedding.vector.size == 100) {
+        if (embedding != null && embedding.dimensions == 100) {
             // 检测到旧的100维向量，重新生成
             com.ai.assistance.operit.util.AppLogger.d("MemoryRepo", "Upgrading embedding for '${memory.title}' from 100 to 384 dimensions")
             val textForEmbedding = generateTextForEmbedding(memory)
@@ -231,6 +527,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
         val id = memoryBox.put(memory)
         // After saving to DB, ensure it's also added to the live vector index
         addMemoryToIndex(memory)
+        updateTextIndexes(memory)
         id
     }
 
@@ -307,6 +604,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
         // This prevents dangling references.
         memory.links.forEach { linkBox.remove(it) }
         memory.backlinks.forEach { linkBox.remove(it) }
+        removeFromTextIndexes(listOf(memory.id))
         memoryBox.remove(memory)
     }
 
@@ -496,10 +794,24 @@ class MemoryRepository(private val context: Context, profileId: String) {
         }
 
 
-        // 1. Keyword-based search (Memory title/content contains query)
-        val keywordResults = memoriesToSearch.filter { memory ->
-            keywords.any { keyword ->
-                memory.title.contains(keyword, ignoreCase = true) || memory.content.contains(keyword, ignoreCase = true)
+        // 1. Keyword-based search (BM25 over the inverted index, ranked by relevance)
+        val searchScope = memoriesToSearch.associateBy { it.id }
+        val queryTerms = LinkedHashSet<String>()
+        val unindexableKeywords = mutableListOf<String>()
+        keywords.forEach { keyword ->
+            val terms = Bm25Index.tokenize(keyword)
+            if (terms.isEmpty()) unindexableKeywords.add(keyword) else queryTerms.addAll(terms)
+        }
+        val keywordResults = keywordIndex.search(queryTerms, filter = { it in searchScope })
+            .mapNotNull { searchScope[it.id] }
+            .toMutableList()
+        // 分词器会丢弃单字等词项，这类关键词仍按子串匹配兜底
+        if (unindexableKeywords.isNotEmpty()) {
+            val matchedIds = keywordResults.mapTo(HashSet()) { it.id }
+            memoriesToSearch.filterTo(keywordResults) { memory ->
+                memory.id !in matchedIds && unindexableKeywords.any { keyword ->
+                    memory.title.contains(keyword, ignoreCase = true) || memory.content.contains(keyword, ignoreCase = true)
+                }
             }
         }
 
@@ -534,12 +846,15 @@ class MemoryRepository(private val context: Context, profileId: String) {
         // 3. Semantic search (for conceptual matches)
         // 自动升级旧的100维向量到384维
         memoriesToSearch.forEach { memory ->
-            if (memory.embedding != null && memory.embedding!!.vector.size == 100) {
+            if (memory.embedding != null && memory.embedding!!.dimensions == 100) {
                 ensureEmbeddingUpToDate(memory)
             }
         }
         
-        val allMemoriesWithEmbedding = memoriesToSearch.filter { it.embedding != null }
+        // int8 向量只在循环外准备一次；量化点积粗筛后再用浮点查询向量重排
+        val quantizedCandidates = memoriesToSearch
+            .filter { it.embedding != null }
+            .map { it to it.embedding!!.quantized }
         val minSimilarityThreshold = semanticThreshold // 语义相似度阈值（可配置）
 
         // 对每个关键词分别进行语义搜索和评分
@@ -547,26 +862,13 @@ class MemoryRepository(private val context: Context, profileId: String) {
         keywords.forEachIndexed { keywordIndex, keyword ->
             val queryEmbedding = OnnxEmbeddingService.generateEmbedding(keyword)
             if (queryEmbedding != null) {
-                // Calculate ALL similarities for this keyword
-                val allSimilarities = allMemoriesWithEmbedding
-                    .map { memory ->
-                        memory.embedding?.let { memoryEmbedding ->
-                            val similarity = OnnxEmbeddingService.cosineSimilarity(
-                                queryEmbedding,
-                                memoryEmbedding
-                            )
-                            Triple(memory, similarity, similarity >= minSimilarityThreshold)
-                        } ?: Triple(memory, 0f, false)
-                    }
-                    .sortedByDescending { it.second }
-                
-                val semanticResultsWithScores = allSimilarities
-                    .filter { it.third }
-                    .map { Pair(it.first, it.second) }
+                val semanticResultsWithScores = QuantizedVector
+                    .search(queryEmbedding.vector, quantizedCandidates, minScore = minSimilarityThreshold)
+                    .map { Pair(it.value, it.score) }
 
                 // 只在有结果时输出关键词信息
                 if (semanticResultsWithScores.isNotEmpty()) {
-                    com.ai.assistance.operit.util.AppLogger.d("MemoryRepo", "Keyword '${keyword}': ${semanticResultsWithScores.size} matches (top: ${String.format("%.2f", allSimilarities.firstOrNull()?.second ?: 0f)})")
+                    com.ai.assistance.operit.util.AppLogger.d("MemoryRepo", "Keyword '${keyword}': ${semanticResultsWithScores.size} matches (top: ${String.format("%.2f", semanticResultsWithScores.first().second)})")
                 }
 
                 semanticResultsWithScores.forEachIndexed { index, (memory, similarity) ->
@@ -802,10 +1104,10 @@ class MemoryRepository(private val context: Context, profileId: String) {
     suspend fun addMemoryToIndex(memory: Memory) = withContext(Dispatchers.IO) {
         if (memory.embedding != null) {
             // 只添加384维的向量到索引
-            if (memory.embedding!!.vector.size == 384) {
+            if (memory.embedding!!.dimensions == 384) {
                 vectorIndexManager.addItem(IndexItem(memory.uuid, memory.embedding!!.vector, memory))
             } else {
-                com.ai.assistance.operit.util.AppLogger.w("MemoryRepo", "Skipping adding memory '${memory.title}' to index: wrong dimension ${memory.embedding!!.vector.size}")
+                com.ai.assistance.operit.util.AppLogger.w("MemoryRepo", "Skipping adding memory '${memory.title}' to index: wrong dimension ${memory.embedding!!.dimensions}")
             }
         }
     }
@@ -822,7 +1124,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
         val candidates = vectorIndexManager.findNearest(queryEmbedding.vector, 100)
         candidates.mapNotNull {
             val memory = it.value
-            if (memory.embedding != null && OnnxEmbeddingService.cosineSimilarity(queryEmbedding, memory.embedding!!) >= similarityThreshold) {
+            if (memory.embedding != null && memory.embedding!!.quantized.similarity(queryEmbedding.vector) >= similarityThreshold) {
                 memory
             } else {
                 null
@@ -976,7 +1278,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
             
             // 创建一个占位记忆
             val placeholder = Memory(
-                title = "文件夹说明",
+                title = FOLDER_PLACEHOLDER_TITLE,
                 content = "这是 $normalizedFolderPath 文件夹的说明。",
                 uuid = UUID.randomUUID().toString(),
                 folderPath = normalizedFolderPath
@@ -988,6 +1290,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
             }
             if (embedding != null) placeholder.embedding = embedding
             memoryBox.put(placeholder)
+            updateTextIndexes(placeholder)
             true
         } catch (e: Exception) {
             com.ai.assistance.operit.util.AppLogger.e("MemoryRepo", "Failed to create folder", e)
@@ -1028,7 +1331,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
         newTags: List<String>? = null // 可选的要更新的标签列表
     ): Memory? = withContext(Dispatchers.IO) {
         // 检查是否有旧的100维向量需要升级
-        val hasOldEmbedding = memory.embedding != null && memory.embedding!!.vector.size == 100
+        val hasOldEmbedding = memory.embedding != null && memory.embedding!!.dimensions == 100
         
         val contentChanged = memory.content != newContent
         val credibilityChanged = memory.credibility != newCredibility
@@ -1075,6 +1378,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
         // 这里不再需要调用 saveMemory，因为 memory 对象已经被修改，
         // 最后的 memoryBox.put(memory) 会保存所有更改。
         memoryBox.put(memory)
+        updateTextIndexes(memory)
 
         if (needsReEmbedding) {
             addMemoryToIndex(memory)
@@ -1164,6 +1468,8 @@ class MemoryRepository(private val context: Context, profileId: String) {
                 for (mem in sourceMemories) {
                     removeMemoryFromIndex(mem)
                 }
+                updateTextIndexes(memory)
+                removeFromTextIndexes(sourceMemories.map { it.id })
             }
         } catch (e: Exception) {
             com.ai.assistance.operit.util.AppLogger.e("MemoryRepo", "Error during memory merge transaction.", e)
@@ -1173,6 +1479,135 @@ class MemoryRepository(private val context: Context, profileId: String) {
         newMemory
     }
 
+    /**
+     * 查找与给定标题和正文近似重复的记忆。只比较与其共享 LSH 桶的记忆，代价与记忆总数基本无关。
+     * @return (记忆, 估计的 Jaccard 相似度) 列表，按相似度降序。
+     */
+    suspend fun findNearDuplicates(title: String, content: String, minSimilarity: Float): List<Pair<Memory, Float>> = withContext(Dispatchers.IO) {
+        val matches = duplicateIndex.findDuplicates(title + "\n" + content, minSimilarity)
+        if (matches.isEmpty()) return@withContext emptyList()
+        val memories = memoryBox.get(matches.map { it.id }).filterNotNull().associateBy { it.id }
+        matches.mapNotNull { match -> memories[match.id]?.let { it to match.similarity } }
+    }
+
+    /**
+     * 带查重的保存，用于自动提取的记忆。
+     * 与已有记忆几乎相同时直接复用；属于重述时把信息合并进已有记忆（保留较完整的正文，
+     * 重要性与可信度取较大值，补充标签）；否则按新记忆保存。
+     */
+    suspend fun saveMemoryDeduplicated(
+        memory: Memory,
+        tags: List<String> = emptyList(),
+        policy: NearDuplicatePolicy = NearDuplicatePolicy()
+    ): NearDuplicateSaveResult = withContext(Dispatchers.IO) {
+        val best = if (memory.id == 0L && isDeduplicable(memory)) {
+            findNearDuplicates(memory.title, memory.content, policy.mergeThreshold)
+                .firstOrNull { (existing, _) -> isDeduplicable(existing) }
+        } else {
+            null
+        }
+        if (best == null) {
+            saveMemory(memory)
+            tags.forEach { addTagToMemory(memory, it) }
+            return@withContext NearDuplicateSaveResult(memory, NearDuplicateAction.CREATED)
+        }
+
+        val (existing, similarity) = best
+        if (similarity >= policy.skipThreshold) {
+            com.ai.assistance.operit.util.AppLogger.d("MemoryRepo", "Skipping near-duplicate of '${existing.title}' (similarity=$similarity)")
+            return@withContext NearDuplicateSaveResult(existing, NearDuplicateAction.SKIPPED, similarity)
+        }
+
+        com.ai.assistance.operit.util.AppLogger.d("MemoryRepo", "Merging restatement into '${existing.title}' (similarity=$similarity)")
+        val merged = updateMemory(
+            memory = existing,
+            newTitle = existing.title,
+            newContent = if (memory.content.length > existing.content.length) memory.content else existing.content,
+            newCredibility = maxOf(existing.credibility, memory.credibility),
+            newImportance = maxOf(existing.importance, memory.importance),
+            newTags = if (tags.isEmpty()) null else (existing.tags.map { it.name } + tags).distinct()
+        ) ?: existing
+        NearDuplicateSaveResult(merged, NearDuplicateAction.MERGED, similarity)
+    }
+
+    /** 批量去重时保留记忆的优先级：重要性最高，其次最早创建 */
+    private val keeperOrder =
+        compareByDescending<Memory> { it.importance }.thenBy { it.createdAt }.thenBy { it.id }
+
+    /**
+     * 对已有记忆做一次批量去重：按保留优先级选出代表，与代表直接近似重复的记忆归为一簇，
+     * 其余记忆的链接、标签重定向到代表后删除。相似关系不做传递。
+     * @param minSimilarity 视为重复的 Jaccard 下限，默认与写入时的跳过阈值一致
+     * @param dryRun 为 true 时只报告将要删除的记忆
+     */
+    suspend fun deduplicateMemories(
+        minSimilarity: Float = NearDuplicatePolicy().skipThreshold,
+        dryRun: Boolean = false
+    ): MemoryDeduplicationReport = withContext(Dispatchers.IO) {
+        val pairs = duplicateIndex.duplicatePairs(minSimilarity)
+        val scanned = duplicateIndex.size
+        if (pairs.isEmpty()) return@withContext MemoryDeduplicationReport(scanned, 0, emptyList())
+
+        // 以代表为中心聚簇：按保留优先级依次选出代表，只把与代表本身相似的记忆归入其簇，
+        // 避免 A~B、B~C 时把与 A 并不相似的 C 也合并掉
+        val neighbours = HashMap<Long, MutableSet<Long>>()
+        for ((a, b, _) in pairs) {
+            neighbours.getOrPut(a) { HashSet() }.add(b)
+            neighbours.getOrPut(b) { HashSet() }.add(a)
+        }
+        val candidates = memoryBox.get(neighbours.keys.toList()).filterNotNull().filter { isDeduplicable(it) }
+        val candidateIds = candidates.map { it.id }.toHashSet()
+        val assigned = HashSet<Long>()
+        val clusters = ArrayList<List<Memory>>()
+        for (keeper in candidates.sortedWith(keeperOrder)) {
+            if (!assigned.add(keeper.id)) continue
+            val members = neighbours[keeper.id].orEmpty()
+                .filterTo(HashSet()) { it in candidateIds && it !in assigned }
+            if (members.isEmpty()) continue
+            assigned.addAll(members)
+            clusters.add(listOf(keeper) + candidates.filter { it.id in members })
+        }
+
+        val removedTitles = ArrayList<String>()
+        for (members in clusters) {
+            val keeper = members.first()
+            val duplicates = members.drop(1)
+            removedTitles.addAll(duplicates.map { it.title })
+            if (dryRun) continue
+
+            val duplicateIds = duplicates.map { it.id }.toHashSet()
+            store.runInTx {
+                val links = mutableSetOf<MemoryLink>()
+                duplicates.forEach {
+                    it.links.reset()
+                    it.backlinks.reset()
+                    links.addAll(it.links)
+                    links.addAll(it.backlinks)
+                }
+                val selfLinks = ArrayList<MemoryLink>()
+                links.forEach { link ->
+                    if (link.source.targetId in duplicateIds) link.source.target = keeper
+                    if (link.target.targetId in duplicateIds) link.target.target = keeper
+                    if (link.source.targetId == link.target.targetId) selfLinks.add(link)
+                }
+                linkBox.put(links.filter { it !in selfLinks })
+                linkBox.remove(selfLinks)
+
+                duplicates.flatMap { it.tags }.forEach { tag ->
+                    if (keeper.tags.none { it.id == tag.id }) keeper.tags.add(tag)
+                }
+                keeper.importance = duplicates.maxOf { it.importance }.coerceAtLeast(keeper.importance)
+                keeper.credibility = duplicates.maxOf { it.credibility }.coerceAtLeast(keeper.credibility)
+                keeper.updatedAt = Date()
+                memoryBox.put(keeper)
+                memoryBox.removeByIds(duplicateIds)
+            }
+            removeFromTextIndexes(duplicateIds)
+        }
+        com.ai.assistance.operit.util.AppLogger.d("MemoryRepo", "Deduplication ${if (dryRun) "(dry run) " else ""}found ${clusters.size} clusters, removing ${removedTitles.size} memories")
+        MemoryDeduplicationReport(scanned, clusters.size, removedTitles)
+    }
+
     /**
      * 删除记忆并同步索引。
      */
@@ -1252,6 +1687,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
         }
 
         // 4. 在事务外处理向量索引和文件
+        removeFromTextIndexes(memoriesToDelete.map { it.id })
         for (memory in memoriesToDelete) {
             removeMemoryFromIndex(memory)
             // 删除文档的专属索引文件
@@ -1491,6 +1927,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
                             updatedAt = Date()
                         }
                         memoryBox.put(existingMemory)
+                        updateTextIndexes(existingMemory)
                         updatedCount++
                         uuidMap[serializableMemory.uuid] = existingMemory
                         
@@ -1579,6 +2016,7 @@ class MemoryRepository(private val context: Context, profileId: String) {
         )
         
         memoryBox.put(memory)
+        updateTextIndexes(memory)
         
         // 添加标签
         updateMemoryTags(memory, serializable.tagNames)
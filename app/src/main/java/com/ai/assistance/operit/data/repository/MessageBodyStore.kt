@@ -0,0 +1,256 @@
+package com.ai.assistance.operit.data.repository
+
+import androidx.room.withTransaction
+import com.ai.assistance.operit.data.db.AppDatabase
+import com.ai.assistance.operit.data.model.ChatMessage
+import com.ai.assistance.operit.data.model.MessageBodyEntity
+import com.ai.assistance.operit.data.model.MessageEntity
+import com.ai.assistance.operit.util.AppLogger
+import java.io.ByteArrayOutputStream
+import java.security.MessageDigest
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * 大消息体的压缩与行外存储。
+ *
+ * 超过 [spillThreshold] 个字符的消息在写入时用带预置字典的 Deflate 压缩，按 SHA-256 存入 message_bodies，
+ * messages 中只保留开头 [PREVIEW_LENGTH] 个字符的预览和哈希。分页查询因此只搬运小行，
+ * 完整内容只在消息真正被读取时按页批量取出并解压；分支复制消息行时共享同一个消息体。
+ *
+ * 调用方负责串行化写入（ChatHistoryManager 的互斥锁）。
+ */
+class MessageBodyStore(
+    private val database: AppDatabase,
+    private val spillThreshold: Int = SPILL_THRESHOLD
+) {
+
+    companion object {
+        private const val TAG = "MessageBodyStore"
+
+        /** 超过该字符数的消息转存到行外 */
+        const val SPILL_THRESHOLD = 8 * 1024
+
+        /** 行内保留的预览字符数 */
+        const val PREVIEW_LENGTH = 512
+
+        /** 当前的存储格式，旧数据转存完成后记录在 ChatStoragePreferences 中 */
+        const val STORAGE_FORMAT = 1
+
+        /** 未压缩的 UTF-8（压缩无收益时使用） */
+        const val CODEC_RAW = 0
+
+        /** 使用 [DICTIONARY_V1] 的 Deflate；字典内容一旦发布不可修改，调整字典需新增编码 */
+        const val CODEC_DEFLATE_DICT_V1 = 1
+
+        /** 解压缓存的总字符数上限 */
+        private const val CACHE_CHARS = 2 * 1024 * 1024
+
+        /** SQLite 单条语句的参数个数有限，批量查询按此分块 */
+        private const val QUERY_CHUNK = 500
+
+        private const val SCAN_BATCH = 64
+
+        /**
+         * 预置字典：工具调用与工具结果的固定外壳、常见工具名和 JSON/Markdown 片段。
+         * Deflate 优先匹配字典末尾的内容，因此最常见的片段放在最后。
+         */
+        private val DICTIONARY_V1: ByteArray =
+            (
+                "\"timestamp\": \"modified\": \"permissions\": \"isDirectory\": false, \"isDirectory\": true, " +
+                    "\"lineCount\": \"totalLines\": \"encoding\": \"utf-8\", \"mimeType\": \"text/plain\", " +
+                    "\"statusCode\": 200, \"headers\": {\"content-type\": \"application/json\", " +
+                    "\"links\": [{\"text\": \"url\": \"https://\", \"title\": \"description\": " +
+                    "```kotlin\n```python\n```json\n```bash\n```\n\n## \n### \n- **\n| --- | --- |\n" +
+                    "grep_code find_files list_files file_exists read_file_part read_file_full read_file " +
+                    "write_file move_file zip_files unzip_files visit_web http_request execute_shell " +
+                    "query_memory update_memory use_package capture_screenshot " +
+                    "<error>Unknown error</error>" +
+                    "\"success\": true, \"success\": false, \"error\": null, \"message\": \"data\": {" +
+                    "\"name\": \"path\": \"/storage/emulated/0/\", \"size\": \"type\": \"file\", \"content\": \"" +
+                    "<tool name=\"\"><param name=\"path\">/storage/emulated/0/</param></tool>\n" +
+                    "<tool_result name=\"\" status=\"error\"><content><error></error></content></tool_result>\n" +
+                    "<tool_result name=\"\" status=\"success\"><content></content></tool_result>\n"
+                ).toByteArray(Charsets.UTF_8)
+    }
+
+    private val messageDao = database.messageDao()
+    private val bodyDao = database.messageBodyDao()
+
+    // 按访问顺序淘汰的解压缓存：哈希 -> 完整内容
+    private val cache = LinkedHashMap<String, String>(64, 0.75f, true)
+    private var cachedChars = 0
+
+    /** 写入前调用：需要转存时写入消息体，并返回只含预览和哈希的消息行 */
+    suspend fun spill(entity: MessageEntity): MessageEntity {
+        return spill(listOf(entity)).single()
+    }
+
+    /** 批量版本的 [spill]，消息体在同一个事务中写入 */
+    suspend fun spill(entities: List<MessageEntity>): List<MessageEntity> {
+        if (entities.none { shouldSpill(it) }) return entities
+        val bodies = LinkedHashMap<String, MessageBodyEntity>()
+        val result = entities.map { entity ->
+            if (!shouldSpill(entity)) return@map entity
+            val raw = entity.content.toByteArray(Charsets.UTF_8)
+            val hash = sha256(raw)
+            if (hash !in bodies) {
+                bodies[hash] = encode(hash, raw)
+            }
+            entity.copy(content = preview(entity.content), bodyHash = hash)
+        }
+        database.withTransaction { bodyDao.insertBodies(bodies.values.toList()) }
+        return result
+    }
+
+    /** 把消息行转换为 ChatMessage，行外存储的消息体按批读取并解压 */
+    suspend fun resolve(entities: List<MessageEntity>): List<ChatMessage> {
+        val contents = HashMap<String, String>()
+        val missing = ArrayList<String>()
+        entities.mapNotNullTo(LinkedHashSet()) { it.bodyHash }.forEach { hash ->
+            val content = cached(hash)
+            if (content != null) contents[hash] = content else missing.add(hash)
+        }
+        missing.chunked(QUERY_CHUNK).forEach { chunk ->
+            bodyDao.getBodies(chunk).forEach { body ->
+                val content = decode(body)
+                contents[body.hash] = content
+                remember(body.hash, content)
+            }
+        }
+        return entities.map { entity ->
+            val hash = entity.bodyHash ?: return@map entity.toChatMessage()
+            val content = contents[hash]
+            if (content == null) {
+                AppLogger.w(TAG, "消息体缺失，回退为预览: $hash")
+                entity.toChatMessage()
+            } else {
+                entity.toChatMessage(content)
+            }
+        }
+    }
+
+    /** 在行外存储的消息体中查找包含关键词的聊天ID（内联内容由 SQL 的 LIKE 查询覆盖） */
+    suspend fun searchChatIds(query: String): Set<String> {
+        val matched = ArrayList<String>()
+        var after = ""
+        while (true) {
+            val batch = bodyDao.getBodiesAfter(after, SCAN_BATCH)
+            if (batch.isEmpty()) break
+            batch.forEach { body ->
+                if (decode(body).contains(query, ignoreCase = true)) {
+                    matched.add(body.hash)
+                }
+            }
+            after = batch.last().hash
+        }
+        val chatIds = HashSet<String>()
+        matched.chunked(QUERY_CHUNK).forEach { chatIds.addAll(messageDao.getChatIdsByBodyHashes(it)) }
+        return chatIds
+    }
+
+    /**
+     * 把仍内联保存的大消息转存到行外，每次处理一批。
+     * @return 本批最后一条消息的 messageId，作为下一批的起点；没有需要转存的消息时返回 null
+     */
+    suspend fun spillInlineBatch(afterMessageId: Long, limit: Int = SCAN_BATCH): Long? {
+        val rows = messageDao.getInlineMessagesLongerThan(afterMessageId, spillThreshold, limit)
+        if (rows.isEmpty()) return null
+        val spilled = spill(rows)
+        database.withTransaction {
+            spilled.forEach { messageDao.updateMessageBody(it.messageId, it.content, it.bodyHash) }
+        }
+        return rows.last().messageId
+    }
+
+    /** 删除不再被任何消息引用的消息体，返回删除的行数 */
+    suspend fun collectGarbage(): Int {
+        return bodyDao.deleteUnreferenced()
+    }
+
+    private fun shouldSpill(entity: MessageEntity): Boolean {
+        return entity.bodyHash == null && entity.content.length > spillThreshold
+    }
+
+    /** 截取预览，避免把代理对从中间切开 */
+    private fun preview(content: String): String {
+        var end = minOf(PREVIEW_LENGTH, content.length)
+        if (end > 0 && Character.isHighSurrogate(content[end - 1])) end--
+        return content.substring(0, end)
+    }
+
+    private fun encode(hash: String, raw: ByteArray): MessageBodyEntity {
+        val deflater = Deflater(Deflater.DEFAULT_COMPRESSION)
+        val compressed = try {
+            deflater.setDictionary(DICTIONARY_V1)
+            deflater.setInput(raw)
+            deflater.finish()
+            val out = ByteArrayOutputStream(raw.size / 4 + 64)
+            val buffer = ByteArray(8 * 1024)
+            while (!deflater.finished()) {
+                val n = deflater.deflate(buffer)
+                out.write(buffer, 0, n)
+            }
+            out.toByteArray()
+        } finally {
+            deflater.end()
+        }
+        return if (compressed.size < raw.size) {
+            MessageBodyEntity(hash = hash, codec = CODEC_DEFLATE_DICT_V1, data = compressed, rawLength = raw.size)
+        } else {
+            MessageBodyEntity(hash = hash, codec = CODEC_RAW, data = raw, rawLength = raw.size)
+        }
+    }
+
+    private fun decode(body: MessageBodyEntity): String {
+        return when (body.codec) {
+            CODEC_RAW -> String(body.data, Charsets.UTF_8)
+            CODEC_DEFLATE_DICT_V1 -> {
+                val inflater = Inflater()
+                try {
+                    inflater.setInput(body.data)
+                    val raw = ByteArray(body.rawLength)
+                    var offset = 0
+                    while (offset < raw.size) {
+                        val n = inflater.inflate(raw, offset, raw.size - offset)
+                        if (n == 0) {
+                            when {
+                                inflater.needsDictionary() -> inflater.setDictionary(DICTIONARY_V1)
+                                inflater.finished() || inflater.needsInput() ->
+                                    throw IllegalStateException("消息体已损坏: ${body.hash}")
+                            }
+                        }
+                        offset += n
+                    }
+                    String(raw, Charsets.UTF_8)
+                } finally {
+                    inflater.end()
+                }
+            }
+            else -> throw IllegalStateException("未知的消息体编码: ${body.codec}")
+        }
+    }
+
+    private fun sha256(bytes: ByteArray): String {
+        val digest = MessageDigest.getInstance("SHA-256").digest(bytes)
+        val hex = StringBuilder(digest.size * 2)
+        digest.forEach { hex.append(String.format("%02x", it)) }
+        return hex.toString()
+    }
+
+    private fun cached(hash: String): String? = synchronized(cache) { cache[hash] }
+
+    private fun remember(hash: String, content: String) {
+        if (content.length > CACHE_CHARS / 4) return
+        synchronized(cache) {
+            if (cache.put(hash, content) == null) {
+                cachedChars += content.length
+            }
+            val iterator = cache.entries.iterator()
+            while (cachedChars > CACHE_CHARS && iterator.hasNext()) {
+                cachedChars -= iterator.next().value.length
+                iterator.remove()
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.ai.assistance.operit.data.repository
+
+import com.ai.assistance.operit.data.model.TriggerNode
+import com.ai.assistance.operit.data.model.Workflow
+import com.ai.assistance.operit.data.model.WorkflowSummary
+import com.ai.assistance.operit.util.AppLogger
+import java.io.File
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+
+/**
+ * 工作流注册表
+ *
+ * 工作流目录只在首次使用时加载一次，之后随创建、更新、删除同步更新。
+ * 目录中维护一个轻量索引文件（摘要 + 触发节点 + 文件修改时间和大小），
+ * 再次启动时只读取索引，修改时间或大小对不上的文件才重新解析。
+ * Tasker 命令、Intent action 和语音模式预先建成分发表，事件到来时直接查表。
+ *
+ * 目录的修改时间变化（外部新增、删除或替换了文件）时会立即重新核对。
+ * 就地编辑已有文件不会改变目录的修改时间，因此距上次核对超过 [fileCheckIntervalMs] 后，
+ * 下一次查询还会逐个比对文件的修改时间和大小（只读取文件属性，不解析内容）。
+ * 修改时间和大小都不变的编辑仍然无法发现。
+ */
+class WorkflowRegistry(
+    private val directory: File,
+    private val json: Json,
+    private val fileCheckIntervalMs: Long = FILE_CHECK_INTERVAL_MS
+) {
+
+    /** 一个触发节点 */
+    data class TriggerRef(
+        val workflowId: String,
+        val workflowName: String,
+        val nodeId: String,
+        val nodeName: String
+    )
+
+    /** 预编译的语音触发 */
+    class SpeechTrigger(
+        val ref: TriggerRef,
+        val regex: Regex,
+        val requireFinal: Boolean,
+        val cooldownMs: Long
+    )
+
+    @Serializable
+    private data class IndexedTrigger(
+        val nodeId: String,
+        val nodeName: String,
+        val triggerType: String,
+        val config: Map<String, String> = emptyMap()
+    )
+
+    @Serializable
+    private data class IndexEntry(
+        val summary: WorkflowSummary,
+        val triggers: List<IndexedTrigger> = emptyList(),
+        val fileModified: Long = 0L,
+        val fileSize: Long = 0L
+    )
+
+    @Serializable
+    private data class IndexFile(
+        val version: Int = INDEX_VERSION,
+        val entries: Map<String, IndexEntry> = emptyMap()
+    )
+
+    /** 某一时刻的注册表内容，发布后不再修改 */
+    private class Tables(
+        val entries: Map<String, IndexEntry>,
+        val summaries: List<WorkflowSummary>,
+        val taskerCommands: Map<String, List<TriggerRef>>,
+        val intentActions: Map<String, List<TriggerRef>>,
+        val speechTriggers: List<SpeechTrigger>,
+        val directoryModified: Long
+    )
+
+    companion object {
+        private const val TAG = "WorkflowRegistry"
+        const val INDEX_FILE_NAME = ".workflow_index"
+        private const val INDEX_VERSION = 1
+
+        /** 逐个文件核对修改时间和大小的最小间隔 */
+        const val FILE_CHECK_INTERVAL_MS = 2_000L
+
+        // 需要建分发表的触发类型
+        private val INDEXED_TRIGGER_TYPES = setOf("tasker", "intent", "speech")
+
+        fun parseBoolean(value: String?, defaultValue: Boolean): Boolean {
+            val normalized = value?.trim()?.lowercase() ?: return defaultValue
+            return when (normalized) {
+                "true", "1", "yes", "y", "on" -> true
+                "false", "0", "no", "n", "off" -> false
+                else -> defaultValue
+            }
+        }
+    }
+
+    private val indexJson = Json(json) { prettyPrint = false }
+
+    private val lock = Any()
+
+    @Volatile
+    private var tables: Tables? = null
+
+    // 上次逐个文件核对的时间
+    @Volatile
+    private var lastFileCheck = 0L
+
+    /**
+     * 列表用的工作流摘要，按更新时间倒序
+     */
+    fun summaries(): List<WorkflowSummary> = current().summaries
+
+    /**
+     * 与 Tasker 参数匹配的触发节点（任一参数等于节点的 command，忽略大小写）
+     */
+    fun taskerTriggers(params: List<String>): List<TriggerRef> {
+        val table = current().taskerCommands
+        val matched = LinkedHashSet<TriggerRef>()
+        for (param in params) {
+            table[param.lowercase()]?.let { matched.addAll(it) }
+        }
+        return matched.toList()
+    }
+
+    /**
+     * 与 Intent action 匹配的触发节点（忽略大小写）
+     */
+    fun intentTriggers(action: String?): List<TriggerRef> {
+        if (action == null) return emptyList()
+        return current().intentActions[action.lowercase()] ?: emptyList()
+    }
+
+    /**
+     * 所有启用的语音触发，模式已预编译
+     */
+    fun speechTriggers(): List<SpeechTrigger> = current().speechTriggers
+
+    /**
+     * 工作流文件写入后调用，更新索引和分发表
+     */
+    fun put(workflow: Workflow, file: File) {
+        synchronized(lock) {
+            val entries = LinkedHashMap(loadLocked().entries)
+            entries[file.nameWithoutExtension] = entryOf(workflow, file.lastModified(), file.length())
+            writeIndex(entries)
+            tables = build(entries)
+        }
+    }
+
+    /**
+     * 工作流文件删除后调用
+     */
+    fun remove(id: String) {
+        synchronized(lock) {
+            val entries = LinkedHashMap(loadLocked().entries)
+            if (entries.remove(id) != null) {
+                writeIndex(entries)
+            }
+            tables = build(entries)
+        }
+    }
+
+    private fun current(): Tables {
+        val loaded = tables
+        if (loaded != null && isFresh(loaded)) return loaded
+        return synchronized(lock) { loadLocked() }
+    }
+
+    private fun isFresh(loaded: Tables): Boolean =
+        loaded.directoryModified == directory.lastModified() &&
+            System.currentTimeMillis() - lastFileCheck < fileCheckIntervalMs
+
+    private fun loadLocked(): Tables {
+        val loaded = tables
+        if (loaded != null && isFresh(loaded)) return loaded
+        val reconciled = reconcile(loaded, loaded?.entries ?: readIndex())
+        lastFileCheck = System.currentTimeMillis()
+        tables = reconciled
+        return reconciled
+    }
+
+    /**
+     * 按目录中的实际文件核对索引：未变化的文件沿用索引条目，新增或被修改的文件重新解析。
+     * 没有任何变化时直接返回 [previous]，不重建分发表。
+     */
+    private fun reconcile(previous: Tables?, known: Map<String, IndexEntry>): Tables {
+        val files = directory.listFiles { file -> file.isFile && file.extension == "json" } ?: emptyArray()
+        val entries = LinkedHashMap<String, IndexEntry>(files.size * 2)
+        var changed = files.size != known.size
+        for (file in files) {
+            val id = file.nameWithoutExtension
+            val modified = file.lastModified()
+            val size = file.length()
+            val cached = known[id]
+            if (cached != null && cached.fileModified == modified && cached.fileSize == size) {
+                entries[id] = cached
+                continue
+            }
+            changed = true
+            try {
+                val workflow = json.decodeFromString<Workflow>(file.readText())
+                entries[id] = entryOf(workflow, modified, size)
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "Failed to parse workflow file: ${file.name}", e)
+            }
+        }
+        if (!changed && previous != null && previous.directoryModified == directory.lastModified()) {
+            return previous
+        }
+        if (changed) {
+            writeIndex(entries)
+        }
+        AppLogger.d(TAG, "Workflow registry loaded: ${entries.size} workflows")
+        return build(entries)
+    }
+
+    private fun readIndex(): Map<String, IndexEntry> {
+        val file = File(directory, INDEX_FILE_NAME)
+        if (!file.exists()) return emptyMap()
+        return try {
+            val index = indexJson.decodeFromString<IndexFile>(file.readText())
+            if (index.version == INDEX_VERSION) index.entries else emptyMap()
+        } catch (e: Exception) {
+            AppLogger.w(TAG, "Workflow index is unreadable, rebuilding: ${e.message}")
+            emptyMap()
+        }
+    }
+
+    private fun writeIndex(entries: Map<String, IndexEntry>) {
+        try {
+            val temp = File(directory, "$INDEX_FILE_NAME.tmp")
+            temp.writeText(indexJson.encodeToString(IndexFile(entries = entries)))
+            val target = File(directory, INDEX_FILE_NAME)
+            if (!temp.renameTo(target)) {
+                target.delete()
+                temp.renameTo(target)
+            }
+        } catch (e: Exception) {
+            // 索引只是缓存，写入失败下次启动时按文件重新核对
+            AppLogger.e(TAG, "Failed to write workflow index", e)
+        }
+    }
+
+    private fun entryOf(workflow: Workflow, fileModified: Long, fileSize: Long): IndexEntry {
+        val summary = WorkflowSummary(
+            id = workflow.id,
+            name = workflow.name,
+            description = workflow.description,
+            enabled = workflow.enabled,
+            nodeCount = workflow.nodes.size,
+            connectionCount = workflow.connections.size,
+            createdAt = workflow.createdAt,
+            updatedAt = workflow.updatedAt,
+            lastExecutionTime = workflow.lastExecutionTime,
+            lastExecutionStatus = workflow.lastExecutionStatus,
+            totalExecutions = workflow.totalExecutions,
+            successfulExecutions = workflow.successfulExecutions,
+            failedExecutions = workflow.failedExecutions
+        )
+        val triggers = workflow.nodes
+            .filterIsInstance<TriggerNode>()
+            .filter { it.triggerType in INDEXED_TRIGGER_TYPES }
+            .map { IndexedTrigger(it.id, it.name, it.triggerType, it.triggerConfig) }
+        return IndexEntry(summary, triggers, fileModified, fileSize)
+    }
+
+    /**
+     * 由索引条目建立摘要列表和分发表，只收录启用的工作流
+     */
+    private fun build(entries: Map<String, IndexEntry>): Tables {
+        val taskerCommands = HashMap<String, MutableList<TriggerRef>>()
+        val intentActions = HashMap<String, MutableList<TriggerRef>>()
+        val speechTriggers = ArrayList<SpeechTrigger>()
+        for ((id, entry) in entries) {
+            if (!entry.summary.enabled) continue
+            for (trigger in entry.triggers) {
+                val ref = TriggerRef(id, entry.summary.name, trigger.nodeId, trigger.nodeName)
+                when (trigger.triggerType) {
+                    // 例：{"command": "start_meeting"}
+                    "tasker" -> trigger.config["command"]?.let {
+                        taskerCommands.getOrPut(it.lowercase()) { ArrayList() }.add(ref)
+                    }
+                    // 例：{"action": "com.example.MY_ACTION"}
+                    "intent" -> trigger.config["action"]?.let {
+                        intentActions.getOrPut(it.lowercase()) { ArrayList() }.add(ref)
+                    }
+                    "speech" -> compileSpeechTrigger(ref, trigger.config)?.let { speechTriggers.add(it) }
+                }
+            }
+        }
+        return Tables(
+            entries = entries,
+            summaries = entries.values.map { it.summary }.sortedByDescending { it.updatedAt },
+            taskerCommands = taskerCommands,
+            intentActions = intentActions,
+            speechTriggers = speechTriggers,
+            directoryModified = directory.lastModified()
+        )
+    }
+
+    private fun compileSpeechTrigger(ref: TriggerRef, config: Map<String, String>): SpeechTrigger? {
+        val pattern = config["pattern"].orEmpty()
+        if (pattern.isBlank()) return null
+        val ignoreCase = parseBoolean(config["ignore_case"], true)
+        val regex = try {
+            Regex(pattern, if (ignoreCase) setOf(RegexOption.IGNORE_CASE) else emptySet())
+        } catch (e: Exception) {
+            AppLogger.w(TAG, "Invalid speech trigger pattern in workflow ${ref.workflowId}: $pattern")
+            return null
+        }
+        return SpeechTrigger(
+            ref = ref,
+            regex = regex,
+            requireFinal = parseBoolean(config["require_final"], true),
+            cooldownMs = config["cooldown_ms"]?.toLongOrNull()?.coerceAtLeast(0L) ?: 3000L
+        )
+    }
+}
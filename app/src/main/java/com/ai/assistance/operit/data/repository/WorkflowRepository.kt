@@ -8,7 +8,7 @@ import com.ai.assistance.operit.core.workflow.WorkflowExecutor
 import com.ai.assistance.operit.core.workflow.WorkflowScheduler
 import com.ai.assistance.operit.data.model.ExecutionStatus
 import com.ai.assistance.operit.data.model.Workflow
-import com.ai.assistance.operit.data.model.TriggerNode
+import com.ai.assistance.operit.data.model.WorkflowSummary
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import kotlinx.serialization.encodeToString
@@ -38,16 +38,21 @@ class WorkflowRepository(private val context: Context) {
         private const val TAG = "WorkflowRepository"
         private const val WORKFLOW_DIR = "Operit/workflow"
 
-        private const val SPEECH_TRIGGER_CACHE_TTL_MS = 2000L
         private val speechTriggerLastFireAtMs = ConcurrentHashMap<String, Long>()
 
+        // 进程内共享的注册表，所有仓库实例共用
         @Volatile
-        private var speechTriggerCachedWorkflows: List<Workflow>? = null
-
-        @Volatile
-        private var speechTriggerCachedAtMs: Long = 0L
+        private var sharedRegistry: WorkflowRegistry? = null
     }
     
+    /**
+     * 获取工作流注册表（首次使用时创建）
+     */
+    private val registry: WorkflowRegistry
+        get() = sharedRegistry ?: synchronized(WorkflowRepository::class.java) {
+            sharedRegistry ?: WorkflowRegistry(getWorkflowDirectory(), json).also { sharedRegistry = it }
+        }
+    
     /**
      * 获取工作流存储目录
      */
@@ -92,6 +97,18 @@ class WorkflowRepository(private val context: Context) {
         }
     }
     
+    /**
+     * 获取所有工作流的摘要（列表展示用），来自注册表，不读取工作流文件
+     */
+    suspend fun getWorkflowSummaries(): Result<List<WorkflowSummary>> = withContext(Dispatchers.IO) {
+        try {
+            Result.success(registry.summaries())
+        } catch (e: Exception) {
+            AppLogger.e(TAG, "Failed to get workflow summaries", e)
+            Result.failure(e)
+        }
+    }
+    
     /**
      * 根据ID获取工作流
      */
@@ -119,6 +136,7 @@ class WorkflowRepository(private val context: Context) {
             val file = getWorkflowFile(workflow.id)
             val content = json.encodeToString(workflow)
             file.writeText(content)
+            registry.put(workflow, file)
             
             AppLogger.d(TAG, "Workflow created: ${workflow.id}")
             
@@ -143,6 +161,7 @@ class WorkflowRepository(private val context: Context) {
             val file = getWorkflowFile(updatedWorkflow.id)
             val content = json.encodeToString(updatedWorkflow)
             file.writeText(content)
+            registry.put(updatedWorkflow, file)
             
             AppLogger.d(TAG, "Workflow updated: ${updatedWorkflow.id}")
             
@@ -170,6 +189,7 @@ class WorkflowRepository(private val context: Context) {
             } else {
                 false
             }
+            registry.remove(id)
             
             AppLogger.d(TAG, "Workflow deleted: $id, success: $deleted")
             Result.success(deleted)
@@ -301,6 +321,7 @@ class WorkflowRepository(private val context: Context) {
             val file = getWorkflowFile(id)
             val content = json.encodeToString(updatedWorkflow)
             file.writeText(content)
+            registry.put(updatedWorkflow, file)
             
             AppLogger.d(TAG, "Workflow execution status updated: $id -> $status")
         } catch (e: Exception) {
@@ -334,6 +355,7 @@ class WorkflowRepository(private val context: Context) {
             val file = getWorkflowFile(id)
             val content = json.encodeToString(updatedWorkflow)
             file.writeText(content)
+            registry.put(updatedWorkflow, file)
             
             AppLogger.d(TAG, "Workflow execution statistics updated: $id (total: ${updatedWorkflow.totalExecutions}, success: ${updatedWorkflow.successfulExecutions})")
         } catch (e: Exception) {
@@ -415,7 +437,8 @@ class WorkflowRepository(private val context: Context) {
 
     /**
      * Finds and triggers workflows based on a Tasker event.
-     * It checks all enabled workflows for a Tasker trigger node whose configuration matches the event data.
+     * Looks up the Tasker command table of enabled workflows; a trigger node matches when any of the
+     * parameters equals its configured command (case-insensitive).
      *
      * @param params The list of parameters received from Tasker.
      */
@@ -423,24 +446,13 @@ class WorkflowRepository(private val context: Context) {
         if (params.isNullOrEmpty()) return@withContext
 
         AppLogger.d(TAG, "Checking for Tasker-triggered workflows with params: $params")
-        val workflows = getAllWorkflows().getOrNull() ?: return@withContext
+        val matched = registry.taskerTriggers(params)
 
         coroutineScope {
-            workflows.filter { it.enabled }.forEach { workflow ->
-                workflow.nodes.forEach { node ->
-                    if (node is TriggerNode && node.triggerType == "tasker") {
-                        // Matching logic: The node's config expects a "command".
-                        // It checks if any of the parameters from Tasker exactly matches this command.
-                        // Example config: `{"command": "start_meeting"}`.
-                        // This will match if any of the params from Tasker is "start_meeting" (case-insensitive).
-                        val command = node.triggerConfig["command"]
-                        if (command != null && params.any { it.equals(command, ignoreCase = true) }) {
-                            AppLogger.d(TAG, "Tasker trigger matched for workflow '${workflow.name}' on node '${node.name}'. Triggering.")
-                            launch {
-                                triggerWorkflow(workflow.id, node.id)
-                            }
-                        }
-                    }
+            matched.forEach { trigger ->
+                AppLogger.d(TAG, "Tasker trigger matched for workflow '${trigger.workflowName}' on node '${trigger.nodeName}'. Triggering.")
+                launch {
+                    triggerWorkflow(trigger.workflowId, trigger.nodeId)
                 }
             }
         }
@@ -448,91 +460,50 @@ class WorkflowRepository(private val context: Context) {
 
     /**
      * Finds and triggers workflows based on a received Intent.
-     * It checks all enabled workflows for an Intent trigger node whose configuration matches the Intent's action.
+     * Looks up the Intent action table of enabled workflows (case-insensitive).
      *
      * @param intent The Intent received by the BroadcastReceiver.
      */
     suspend fun triggerWorkflowsByIntentEvent(intent: Intent) = withContext(Dispatchers.IO) {
         AppLogger.d(TAG, "Checking for Intent-triggered workflows for action: ${intent.action}")
-        val workflows = getAllWorkflows().getOrNull() ?: return@withContext
+        val matched = registry.intentTriggers(intent.action)
 
         coroutineScope {
-            workflows.filter { it.enabled }.forEach { workflow ->
-                workflow.nodes.forEach { node ->
-                    if (node is TriggerNode && node.triggerType == "intent") {
-                        // Match based on the Intent action.
-                        // Example config: `{"action": "com.example.MY_ACTION"}`.
-                        val expectedAction = node.triggerConfig["action"]
-                        if (expectedAction != null && expectedAction.equals(intent.action, ignoreCase = true)) {
-                            AppLogger.d(TAG, "Intent trigger matched for workflow '${workflow.name}' on node '${node.name}'. Triggering.")
-                            launch {
-                                triggerWorkflow(workflow.id, node.id)
-                            }
-                        }
-                    }
+            matched.forEach { trigger ->
+                AppLogger.d(TAG, "Intent trigger matched for workflow '${trigger.workflowName}' on node '${trigger.nodeName}'. Triggering.")
+                launch {
+                    triggerWorkflow(trigger.workflowId, trigger.nodeId)
                 }
             }
         }
     }
+
+    /**
+     * Finds and triggers workflows whose speech trigger pattern matches the recognized text.
+     * Patterns are precompiled by the registry; each trigger node has its own cooldown.
+     */
     suspend fun triggerWorkflowsBySpeechEvent(text: String, isFinal: Boolean) = withContext(Dispatchers.IO) {
         val trimmed = text.trim()
         if (trimmed.isBlank()) return@withContext
 
         val now = System.currentTimeMillis()
-        val cached = speechTriggerCachedWorkflows
-        val workflows = if (cached != null && now - speechTriggerCachedAtMs < SPEECH_TRIGGER_CACHE_TTL_MS) {
-            cached
-        } else {
-            val loaded = getAllWorkflows().getOrNull() ?: emptyList()
-            speechTriggerCachedWorkflows = loaded
-            speechTriggerCachedAtMs = now
-            loaded
-        }
-
-        fun parseBoolean(value: String?, defaultValue: Boolean): Boolean {
-            val normalized = value?.trim()?.lowercase() ?: return defaultValue
-            return when (normalized) {
-                "true", "1", "yes", "y", "on" -> true
-                "false", "0", "no", "n", "off" -> false
-                else -> defaultValue
-            }
-        }
 
         coroutineScope {
-            workflows.filter { it.enabled }.forEach { workflow ->
-                workflow.nodes.forEach { node ->
-                    if (node !is TriggerNode || node.triggerType != "speech") return@forEach
-
-                    val pattern = node.triggerConfig["pattern"].orEmpty()
-                    if (pattern.isBlank()) return@forEach
-
-                    val requireFinal = parseBoolean(node.triggerConfig["require_final"], true)
-                    if (requireFinal && !isFinal) return@forEach
-
-                    val ignoreCase = parseBoolean(node.triggerConfig["ignore_case"], true)
-                    val cooldownMs = node.triggerConfig["cooldown_ms"]?.toLongOrNull()?.coerceAtLeast(0L) ?: 3000L
-                    val cooldownKey = "${workflow.id}:${node.id}"
+            registry.speechTriggers().forEach { trigger ->
+                if (trigger.requireFinal && !isFinal) return@forEach
 
-                    val lastFireAt = speechTriggerLastFireAtMs[cooldownKey] ?: 0L
-                    if (cooldownMs > 0 && now - lastFireAt < cooldownMs) return@forEach
+                val cooldownKey = "${trigger.ref.workflowId}:${trigger.ref.nodeId}"
+                val lastFireAt = speechTriggerLastFireAtMs[cooldownKey] ?: 0L
+                if (trigger.cooldownMs > 0 && now - lastFireAt < trigger.cooldownMs) return@forEach
 
-                    val matches = try {
-                        val options = if (ignoreCase) setOf(RegexOption.IGNORE_CASE) else emptySet()
-                        Regex(pattern, options).containsMatchIn(trimmed)
-                    } catch (_: Exception) {
-                        false
-                    }
-
-                    if (matches) {
-                        speechTriggerLastFireAtMs[cooldownKey] = now
-                        AppLogger.d(TAG, "Speech trigger matched for workflow '${workflow.name}' on node '${node.name}'. Triggering.")
-                        launch {
-                            triggerWorkflow(workflow.id, node.id)
-                        }
+                if (trigger.regex.containsMatchIn(trimmed)) {
+                    speechTriggerLastFireAtMs[cooldownKey] = now
+                    AppLogger.d(TAG, "Speech trigger matched for workflow '${trigger.ref.workflowName}' on node '${trigger.ref.nodeName}'. Triggering.")
+                    launch {
+                        triggerWorkflow(trigger.ref.workflowId, trigger.ref.nodeId)
                     }
                 }
             }
         }
     }
 }
-
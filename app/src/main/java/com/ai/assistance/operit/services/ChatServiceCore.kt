@@ -121,7 +121,7 @@ class ChatServiceCore(
             context = context,
             coroutineScope = coroutineScope,
             getEnhancedAiService = { enhancedAiService },
-            getChatHistory = { chatHistoryDelegate.chatHistory.value },
+            getChatHistory = { chatId -> chatHistoryDelegate.loadAiContext(chatId) },
             addMessageToChat = { chatId, message ->
                 chatHistoryDelegate.addMessageToChat(message, chatId)
             },
@@ -247,7 +247,9 @@ class ChatServiceCore(
 
     /** 删除消息 */
     fun deleteMessage(index: Int) {
-        chatHistoryDelegate.deleteMessage(index)
+        // 下标对应当前窗口，立即换算为时间戳
+        val message = chatHistoryDelegate.chatHistory.value.getOrNull(index) ?: return
+        chatHistoryDelegate.deleteMessage(message.timestamp)
     }
 
     /** 清空当前聊天 */
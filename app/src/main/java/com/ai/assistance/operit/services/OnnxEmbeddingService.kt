@@ -193,6 +193,48 @@ object OnnxEmbeddingService {
         }
     }
     
+    /**
+     * Batched variant of [generateEmbedding]: one inference call for all [texts].
+     * The tokenizer pads every sequence to [MAX_SEQUENCE_LENGTH], so the batch is a plain
+     * [n, MAX_SEQUENCE_LENGTH] tensor. Blank texts yield null at their position.
+     */
+    fun generateEmbeddings(texts: List<String>): List<Embedding?> {
+        if (!isInitialized || ortSession == null || tokenizer == null) {
+            AppLogger.w(TAG, "OnnxEmbeddingService is not initialized")
+            return List(texts.size) { null }
+        }
+        val positions = texts.indices.filter { texts[it].isNotBlank() }
+        if (positions.isEmpty()) return List(texts.size) { null }
+
+        return try {
+            val tokens = positions.map { tokenizer!!.tokenize(texts[it], MAX_SEQUENCE_LENGTH) }
+            val env = ortEnvironment!!
+            val results = arrayOfNulls<Embedding>(texts.size)
+            OnnxTensor.createTensor(env, Array(tokens.size) { tokens[it].inputIds }).use { inputIds ->
+                OnnxTensor.createTensor(env, Array(tokens.size) { tokens[it].attentionMask }).use { attentionMask ->
+                    OnnxTensor.createTensor(env, Array(tokens.size) { tokens[it].tokenTypeIds }).use { tokenTypeIds ->
+                        val inputs = mapOf(
+                            "input_ids" to inputIds,
+                            "attention_mask" to attentionMask,
+                            "token_type_ids" to tokenTypeIds
+                        )
+                        ortSession!!.run(inputs).use { outputs ->
+                            val outputTensor = outputs[0].value as Array<Array<FloatArray>>
+                            positions.forEachIndexed { row, position ->
+                                val pooled = meanPooling(outputTensor[row], tokens[row].attentionMask)
+                                results[position] = Embedding(l2Normalize(pooled))
+                            }
+                        }
+                    }
+                }
+            }
+            results.toList()
+        } catch (e: Exception) {
+            AppLogger.e(TAG, "Batched embedding failed for ${texts.size} texts, falling back to single calls", e)
+            texts.map { generateEmbedding(it) }
+        }
+    }
+
     /**
      * Mean pooling over token embeddings, taking attention mask into account
      */
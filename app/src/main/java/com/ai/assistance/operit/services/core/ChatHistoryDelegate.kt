@@ -2,7 +2,6 @@ package com.ai.assistance.operit.services.core
 
 import android.content.Context
 import com.ai.assistance.operit.util.AppLogger
-import com.ai.assistance.operit.R
 import com.ai.assistance.operit.api.chat.EnhancedAIService
 import com.ai.assistance.operit.data.model.ChatHistory
 import com.ai.assistance.operit.data.model.ChatMessage
@@ -34,6 +33,10 @@ class ChatHistoryDelegate(
 ) {
     companion object {
         private const val TAG = "ChatHistoryDelegate"
+        // 打开聊天时首屏加载的消息数，以及向上回填时每页的消息数
+        private const val PAGE_SIZE = 40
+        // 内存窗口超过该条数时，丢弃总结之前、离底部较远的历史页
+        private const val MAX_WINDOW_SIZE = 200
         // This constant is now in AIMessageManager
         // private const val SUMMARY_CHUNK_SIZE = 8
     }
@@ -53,6 +56,11 @@ class ChatHistoryDelegate(
     private val _chatHistory = MutableStateFlow<List<ChatMessage>>(emptyList())
     val chatHistory: StateFlow<List<ChatMessage>> = _chatHistory.asStateFlow()
 
+    // 数据库中是否还有比当前窗口更早的消息
+    private val _hasOlderMessages = MutableStateFlow(false)
+    val hasOlderMessages: StateFlow<Boolean> = _hasOlderMessages.asStateFlow()
+    private val isLoadingOlder = AtomicBoolean(false)
+
     private val _showChatHistorySelector = MutableStateFlow(false)
     val showChatHistorySelector: StateFlow<Boolean> = _showChatHistorySelector.asStateFlow()
 
@@ -103,14 +111,22 @@ class ChatHistoryDelegate(
         }
     }
 
+    /**
+     * 加载聊天消息：先加载最新一页用于首屏渲染，再把窗口向前补齐到 AI 上下文的起点
+     * （最后一条总结，没有总结时为第一条消息），更早的消息在向上滚动时按页回填。
+     */
     private suspend fun loadChatMessages(chatId: String) {
         try {
-            // 直接从数据库加载消息
-            val messages = chatHistoryManager.loadChatMessages(chatId)
-            AppLogger.d(TAG, "加载聊天 $chatId 的消息：${messages.size} 条")
+            val firstPage = chatHistoryManager.loadLatestMessages(chatId, PAGE_SIZE)
+            AppLogger.d(TAG, "加载聊天 $chatId 的最新消息：${firstPage.messages.size} 条，更早消息: ${firstPage.hasOlder}")
 
             // 无论消息是否为空，都更新聊天历史
-            _chatHistory.value = messages
+            _chatHistory.value = firstPage.messages
+            _hasOlderMessages.value = firstPage.hasOlder
+
+            if (firstPage.hasOlder) {
+                fillContextWindow(chatId, firstPage.messages.first().timestamp)
+            }
 
             // 查找聊天元数据，更新token统计
             val selectedChat = _chatHistories.value.find { it.id == chatId }
@@ -131,6 +147,58 @@ class ChatHistoryDelegate(
         }
     }
 
+    /** 把窗口向前补齐到 AI 上下文的起点，保证发送消息时上下文完整 */
+    private suspend fun fillContextWindow(chatId: String, windowStartTimestamp: Long) {
+        val contextPage = chatHistoryManager.loadContextBefore(chatId, windowStartTimestamp)
+        historyUpdateMutex.withLock {
+            if (_currentChatId.value != chatId) return@withLock
+            val currentMessages = _chatHistory.value
+            if (currentMessages.firstOrNull()?.timestamp != windowStartTimestamp) return@withLock
+            if (contextPage.messages.isNotEmpty()) {
+                _chatHistory.value = contextPage.messages + currentMessages
+            }
+            _hasOlderMessages.value = contextPage.hasOlder
+            AppLogger.d(TAG, "补齐上下文窗口：新增 ${contextPage.messages.size} 条，当前 ${_chatHistory.value.size} 条")
+        }
+    }
+
+    /** 向上滚动时回填更早的一页消息 */
+    fun loadOlderMessages() {
+        val chatId = _currentChatId.value ?: return
+        if (!_hasOlderMessages.value || !isLoadingOlder.compareAndSet(false, true)) return
+        coroutineScope.launch {
+            try {
+                val oldest = _chatHistory.value.firstOrNull() ?: return@launch
+                val page = chatHistoryManager.loadMessagesBefore(chatId, oldest.timestamp, PAGE_SIZE)
+                historyUpdateMutex.withLock {
+                    if (_currentChatId.value != chatId || _chatHistory.value.firstOrNull()?.timestamp != oldest.timestamp) {
+                        return@withLock
+                    }
+                    _chatHistory.value = page.messages + _chatHistory.value
+                    _hasOlderMessages.value = page.hasOlder
+                    AppLogger.d(TAG, "回填历史消息 ${page.messages.size} 条，当前 ${_chatHistory.value.size} 条")
+                }
+            } finally {
+                isLoadingOlder.set(false)
+            }
+        }
+    }
+
+    /**
+     * 窗口过大时丢弃离底部较远的历史页。最后一条总结及其之后的消息属于 AI 上下文，始终保留；
+     * 窗口中没有总结时说明窗口覆盖了整个对话，也不做裁剪。
+     */
+    private fun evictFarHistory(messages: List<ChatMessage>): List<ChatMessage> {
+        if (messages.size <= MAX_WINDOW_SIZE) return messages
+        val lastSummaryIndex = messages.indexOfLast { it.sender == "summary" }
+        if (lastSummaryIndex <= 0) return messages
+        val keepFrom = minOf(lastSummaryIndex, messages.size - MAX_WINDOW_SIZE / 2)
+        if (keepFrom <= 0) return messages
+        _hasOlderMessages.value = true
+        AppLogger.d(TAG, "释放较早的历史消息 $keepFrom 条")
+        return messages.subList(keepFrom, messages.size).toList()
+    }
+
     /**
      * 智能重新加载聊天消息，通过 timestamp 匹配已存在的消息，保持原实例不变
      * 这样可以防止UI重组，提高性能
@@ -140,9 +208,16 @@ class ChatHistoryDelegate(
     suspend fun reloadChatMessagesSmart(chatId: String) {
         historyUpdateMutex.withLock {
             try {
-                // 从数据库加载最新消息
-                val newMessages = chatHistoryManager.loadChatMessages(chatId)
                 val currentMessages = _chatHistory.value
+                // 只刷新已加载的窗口：从窗口中最早的消息开始重新读取
+                val windowStart = currentMessages.firstOrNull()?.timestamp
+                val newMessages = if (windowStart != null) {
+                    chatHistoryManager.loadMessagesSince(chatId, windowStart)
+                } else {
+                    val page = chatHistoryManager.loadLatestMessages(chatId, PAGE_SIZE)
+                    _hasOlderMessages.value = page.hasOlder
+                    page.messages
+                }
                 
                 AppLogger.d(TAG, "智能重新加载聊天 $chatId: 当前 ${currentMessages.size} 条，数据库 ${newMessages.size} 条")
                 
@@ -181,23 +256,27 @@ class ChatHistoryDelegate(
         AppLogger.d(TAG, "开始同步开场白，聊天ID: $chatId")
         
         historyUpdateMutex.withLock {
-            // 在互斥锁内，先从数据库加载最新消息，确保数据一致性
+            // 在互斥锁内直接查询数据库，确保数据一致性
             // 这样可以避免竞态条件：如果内存中的_chatHistory还未加载，直接从数据库检查
-            val dbMessages = chatHistoryManager.loadChatMessages(chatId)
-            val hasUserMessage = dbMessages.any { it.sender == "user" }
+            val hasUserMessage = chatHistoryManager.hasUserMessage(chatId)
             
-            AppLogger.d(TAG, "从数据库检查消息 - 数据库消息数: ${dbMessages.size}, 内存消息数: ${_chatHistory.value.size}, 是否有用户消息: $hasUserMessage")
+            AppLogger.d(TAG, "从数据库检查消息 - 内存消息数: ${_chatHistory.value.size}, 是否有用户消息: $hasUserMessage")
             
             if (hasUserMessage) {
                 AppLogger.d(TAG, "聊天 $chatId 已存在用户消息，跳过开场白同步")
                 // 如果数据库有消息但内存中没有，同步一下内存状态
-                if (_chatHistory.value.size != dbMessages.size) {
-                    AppLogger.d(TAG, "同步内存消息列表，从 ${_chatHistory.value.size} 条更新为 ${dbMessages.size} 条")
-                    _chatHistory.value = dbMessages
+                if (_chatHistory.value.isEmpty()) {
+                    val page = chatHistoryManager.loadLatestMessages(chatId, PAGE_SIZE)
+                    AppLogger.d(TAG, "同步内存消息列表，加载最新 ${page.messages.size} 条")
+                    _chatHistory.value = page.messages
+                    _hasOlderMessages.value = page.hasOlder
                 }
                 return@withLock
             }
 
+            // 还没有用户消息的会话最多只有开场白，直接全量加载
+            val dbMessages = chatHistoryManager.loadChatMessages(chatId)
+
             val activeCard = characterCardManager.activeCharacterCardFlow.first()
             val opening = activeCard.openingStatement
             val roleName = activeCard.name
@@ -357,8 +436,8 @@ class ChatHistoryDelegate(
                 val branchChat = chatHistoryManager.createBranch(currentChatId, upToMessageTimestamp)
                 _currentChatId.value = branchChat.id
                 
-                // 加载分支的消息
-                _chatHistory.value = branchChat.messages
+                // 加载分支的消息（与父对话共享的前缀按需分页读取）
+                loadChatMessages(branchChat.id)
                 
                 // 加载分支的 token 统计（继承自父对话）
                 onTokenStatisticsLoaded(
@@ -391,40 +470,28 @@ class ChatHistoryDelegate(
         }
     }
 
-    /** 删除单条消息 */
-    fun deleteMessage(index: Int) {
+    /** 删除单条消息（按时间戳定位，窗口分页或裁剪后下标会变化） */
+    fun deleteMessage(timestamp: Long) {
         coroutineScope.launch {
             historyUpdateMutex.withLock {
                 _currentChatId.value?.let { chatId ->
-                    val currentMessages = _chatHistory.value.toMutableList()
-                    if (index >= 0 && index < currentMessages.size) {
-                        val messageToDelete = currentMessages[index]
-
-                        // 从数据库删除
-                        chatHistoryManager.deleteMessage(chatId, messageToDelete.timestamp)
+                    // 从数据库删除
+                    chatHistoryManager.deleteMessage(chatId, timestamp)
 
-                        // 从内存中删除
-                        currentMessages.removeAt(index)
-                        _chatHistory.value = currentMessages
-                    }
+                    // 从内存中删除
+                    _chatHistory.value = _chatHistory.value.filterNot { it.timestamp == timestamp }
                 }
             }
         }
     }
 
-    /** 从指定索引删除后续所有消息 */
-    suspend fun deleteMessagesFrom(index: Int) {
+    /** 删除指定时间戳（包含）及之后的所有消息 */
+    suspend fun deleteMessagesFrom(timestamp: Long) {
         historyUpdateMutex.withLock {
             _currentChatId.value?.let { chatId ->
-                val currentMessages = _chatHistory.value
-                if (index >= 0 && index < currentMessages.size) {
-                    val messageToStartDeletingFrom = currentMessages[index]
-                    val newHistory = currentMessages.subList(0, index)
-
-                    // 直接在这里处理数据库和内存更新，避免重复加锁
-                    chatHistoryManager.deleteMessagesFrom(chatId, messageToStartDeletingFrom.timestamp)
-                    _chatHistory.value = newHistory
-                }
+                // 直接在这里处理数据库和内存更新，避免重复加锁
+                chatHistoryManager.deleteMessagesFrom(chatId, timestamp)
+                _chatHistory.value = _chatHistory.value.filter { it.timestamp < timestamp }
             }
         }
     }
@@ -540,21 +607,22 @@ class ChatHistoryDelegate(
         }
     }
 
-    /** 根据第一条用户消息生成聊天标题 */
-    private fun generateChatTitle(): String {
-        val firstUserMessage = _chatHistory.value.firstOrNull { it.sender == "user" }?.content
-        return if (firstUserMessage != null) {
-            // 截取前20个字符作为标题，并添加省略号
-            if (firstUserMessage.length > 20) {
-                "${firstUserMessage.take(20)}..."
-            } else {
-                firstUserMessage
-            }
-        } else {
-            context.getString(R.string.new_conversation)
-        }
+    /**
+     * 从数据库读取当前聊天发给 AI 的上下文（最后一条总结及其之后的消息）。
+     * [chatHistory] 只是界面的分页窗口，不能直接作为上下文使用。
+     * @param upToTimestamp 只取该时间戳（包含）及之前的消息，用于在历史中间插入总结
+     */
+    suspend fun loadAiContext(chatIdOverride: String? = null, upToTimestamp: Long = Long.MAX_VALUE): List<ChatMessage> {
+        val chatId = chatIdOverride ?: _currentChatId.value ?: return emptyList()
+        return chatHistoryManager.loadAiContext(chatId, upToTimestamp)
     }
-    
+
+    /** 当前聊天中早于指定时间戳的上一条消息的时间戳，没有时为 null */
+    suspend fun previousMessageTimestamp(timestamp: Long): Long? {
+        val chatId = _currentChatId.value ?: return null
+        return chatHistoryManager.getPreviousMessageTimestamp(chatId, timestamp)
+    }
+
     /**
      * 向聊天历史添加或更新消息。
      *
@@ -607,7 +675,7 @@ class ChatHistoryDelegate(
                     TAG,
                     "添加新消息到聊天 $targetChatId, isCurrent=$isCurrentChat, stream is null: ${message.contentStream == null}, ts: ${message.timestamp}"
                 )
-                val updated = currentMessages + message
+                val updated = evictFarHistory(currentMessages + message)
                 _chatHistory.value = updated
                 chatHistoryManager.addMessage(targetChatId, message)
             }
@@ -626,10 +694,9 @@ class ChatHistoryDelegate(
     /**
      * 截断聊天记录，会同步删除数据库中指定时间戳之后的消息，并更新内存中的消息列表。
      *
-     * @param newHistory 截断后保留的消息列表。
      * @param timestampOfFirstDeletedMessage 用于删除数据库记录的起始时间戳。如果为null，则清空所有消息。
      */
-    suspend fun truncateChatHistory(newHistory: List<ChatMessage>, timestampOfFirstDeletedMessage: Long?) {
+    suspend fun truncateChatHistory(timestampOfFirstDeletedMessage: Long?) {
         historyUpdateMutex.withLock {
             _currentChatId.value?.let { chatId ->
                 if (timestampOfFirstDeletedMessage != null) {
@@ -638,22 +705,18 @@ class ChatHistoryDelegate(
                             chatId,
                             timestampOfFirstDeletedMessage
                     )
+                    // 更新内存中的聊天记录
+                    _chatHistory.value = _chatHistory.value.filter { it.timestamp < timestampOfFirstDeletedMessage }
                 } else {
                     // 如果时间戳为空，则清除该聊天的所有消息
                     chatHistoryManager.clearChatMessages(chatId)
+                    _chatHistory.value = emptyList()
+                    _hasOlderMessages.value = false
                 }
-
-                // 更新内存中的聊天记录
-                _chatHistory.value = newHistory
             }
         }
     }
 
-    /** 更新整个聊天历史 用于编辑或回档等操作 */
-    fun updateChatHistory(newHistory: List<ChatMessage>) {
-        _chatHistory.value = newHistory.toList()
-    }
-
     /**
      * 更新聊天记录的顺序和分组
      * @param reorderedHistories 重新排序后的完整聊天历史列表
@@ -721,49 +784,38 @@ class ChatHistoryDelegate(
             )
             _currentChatId.value = newChat.id
             _chatHistory.value = newChat.messages
+            _hasOlderMessages.value = false
 
             onTokenStatisticsLoaded(newChat.id, 0, 0, 0)
         }
     }
 
     /**
-     * 添加一条总结消息到预先计算好的位置。
+     * 在指定消息之后添加一条总结消息。按时间戳定位，不依赖窗口中的下标。
      *
      * @param summaryMessage 要添加的总结消息。
-     * @param insertPosition 预先计算好的插入索引。
+     * @param afterTimestamp 总结之前那条消息的时间戳；为 null 时插入到对话最前面。
      */
-    suspend fun addSummaryMessage(summaryMessage: ChatMessage, insertPosition: Int) {
+    suspend fun addSummaryMessage(summaryMessage: ChatMessage, afterTimestamp: Long?) {
         historyUpdateMutex.withLock {
             val chatId = _currentChatId.value ?: return@withLock
-            val currentMessages = _chatHistory.value.toMutableList()
 
-            // 检查插入位置是否越界
-            if (insertPosition < 0 || insertPosition > currentMessages.size) {
-                AppLogger.e(TAG, "总结插入位置越界: insertPosition=$insertPosition, size=${currentMessages.size}，取消插入")
-                return@withLock
-            }
-
-            // 检查上个消息是否为总结消息
-            if (insertPosition > 0 && currentMessages[insertPosition - 1].sender == "summary") {
-                AppLogger.e(TAG, "上个消息已是总结消息，取消插入以避免重复")
-                return@withLock
-            }
+            // 相邻消息已是总结时由 ChatHistoryManager 取消插入
+            val inserted = chatHistoryManager.insertSummaryAfter(chatId, summaryMessage, afterTimestamp)
+                ?: return@withLock
 
-            // 检查下个消息是否为总结消息
-            if (insertPosition < currentMessages.size && currentMessages[insertPosition].sender == "summary") {
-                AppLogger.e(TAG, "下个消息已是总结消息，取消插入以避免重复")
+            val currentMessages = _chatHistory.value
+            // 插入点早于窗口起点时只写数据库，向上回填时自然会读到
+            val windowStart = currentMessages.firstOrNull()?.timestamp
+            if (_hasOlderMessages.value && windowStart != null && inserted.timestamp < windowStart) {
+                AppLogger.d(TAG, "总结插入在已加载窗口之前，仅写入数据库")
                 return@withLock
             }
 
-            // 在预先计算好的位置插入总结消息
-            currentMessages.add(insertPosition, summaryMessage)
-            AppLogger.d(TAG, "在预计算索引 $insertPosition 处添加总结消息，更新后总消息数量: ${currentMessages.size}")
-
-            // 更新消息列表
-            _chatHistory.value = currentMessages
-
-            // 使用带有索引的重载方法更新数据库
-            chatHistoryManager.addMessage(chatId, summaryMessage, insertPosition)
+            val insertPosition = currentMessages.indexOfFirst { it.timestamp > inserted.timestamp }
+                .let { if (it < 0) currentMessages.size else it }
+            _chatHistory.value = currentMessages.toMutableList().apply { add(insertPosition, inserted) }
+            AppLogger.d(TAG, "在窗口索引 $insertPosition 处添加总结消息，更新后窗口消息数量: ${_chatHistory.value.size}")
         }
     }
 
@@ -796,6 +848,17 @@ class ChatHistoryDelegate(
         return lastAiMessageIndex + 1
     }
 
+    /**
+     * 找到总结应插入在哪条消息之后，返回该消息的时间戳，配合 [addSummaryMessage] 使用。
+     * [messages] 为 AI 上下文；插入位置在开头且上下文以总结开始时返回该总结的时间戳，
+     * 由插入时的相邻检查取消重复总结，而不是插入到整个对话的最前面。
+     */
+    fun findSummaryAnchorTimestamp(messages: List<ChatMessage>): Long? {
+        val insertPosition = findProperSummaryPosition(messages)
+        return messages.getOrNull(insertPosition - 1)?.timestamp
+            ?: messages.firstOrNull()?.takeIf { it.sender == "summary" }?.timestamp
+    }
+
     /** 切换是否显示聊天历史选择器 */
     fun toggleChatHistorySelector() {
         _showChatHistorySelector.value = !_showChatHistorySelector.value
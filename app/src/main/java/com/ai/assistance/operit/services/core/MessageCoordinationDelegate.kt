@@ -125,6 +125,8 @@ class MessageCoordinationDelegate(
 
         // 如果不是续写，检查是否需要总结
         if (!isContinuation && !skipSummaryCheck) {
+            // 窗口始终包含最后一条总结及之后的消息，足以判断是否需要总结；
+            // 总结内容与插入位置在异步任务中从数据库读取
             val currentMessages = chatHistoryDelegate.chatHistory.value
             val currentTokens = tokenStatsDelegate.currentWindowSizeFlow.value
             val maxTokens = (apiConfigDelegate.contextLength.value * 1024).toInt()
@@ -140,11 +142,11 @@ class MessageCoordinationDelegate(
             )
 
             if (isShouldGenerateSummary) {
-                val snapshotMessages = currentMessages.toList()
-                val insertPosition = chatHistoryDelegate.findProperSummaryPosition(snapshotMessages)
+                // 只总结发送前已有的消息
+                val snapshotUpTo = currentMessages.lastOrNull()?.timestamp
 
                 // 异步生成总结，不阻塞当前消息发送
-                launchAsyncSummaryForSend(snapshotMessages, insertPosition, chatId)
+                launchAsyncSummaryForSend(snapshotUpTo, chatId)
 
                 // 本次请求的Token阈值在原基础上增加 0.5
                 tokenUsageThresholdForSend += 0.5
@@ -270,11 +272,10 @@ class MessageCoordinationDelegate(
     }
 
     private fun launchAsyncSummaryForSend(
-        snapshotMessages: List<ChatMessage>,
-        insertPosition: Int,
+        snapshotUpTo: Long?,
         originalChatId: String?
     ) {
-        if (snapshotMessages.isEmpty() || originalChatId == null) {
+        if (snapshotUpTo == null || originalChatId == null) {
             return
         }
 
@@ -285,6 +286,10 @@ class MessageCoordinationDelegate(
             try {
                 val service = getEnhancedAiService() ?: return@launch
 
+                val snapshotMessages = chatHistoryDelegate.loadAiContext(originalChatId, snapshotUpTo)
+                if (snapshotMessages.isEmpty()) return@launch
+                val afterTimestamp = chatHistoryDelegate.findSummaryAnchorTimestamp(snapshotMessages)
+
                 val summaryMessage = AIMessageManager.summarizeMemory(
                     enhancedAiService = service,
                     messages = snapshotMessages,
@@ -300,19 +305,10 @@ class MessageCoordinationDelegate(
                     return@launch
                 }
 
-                val currentMessages = chatHistoryDelegate.chatHistory.value
-                if (insertPosition < 0 || insertPosition > currentMessages.size) {
-                    AppLogger.w(
-                        TAG,
-                        "Async summary insert skipped: position out of bounds: $insertPosition, size=${currentMessages.size}"
-                    )
-                    return@launch
-                }
-
-                chatHistoryDelegate.addSummaryMessage(summaryMessage, insertPosition)
+                chatHistoryDelegate.addSummaryMessage(summaryMessage, afterTimestamp)
 
                 val newHistoryForTokens =
-                    AIMessageManager.getMemoryFromMessages(chatHistoryDelegate.chatHistory.value)
+                    AIMessageManager.getMemoryFromMessages(chatHistoryDelegate.loadAiContext(originalChatId))
                 val chatService = service.getAIServiceForFunction(FunctionType.CHAT)
                 val newWindowSize = chatService.calculateInputTokens("", newHistoryForTokens)
                 val (inputTokens, outputTokens) = tokenStatsDelegate.getCumulativeTokenCounts(
@@ -369,22 +365,22 @@ class MessageCoordinationDelegate(
                 return false
             }
 
-            val currentMessages = chatHistoryDelegate.chatHistory.value
+            val currentMessages = chatHistoryDelegate.loadAiContext(currentChatId)
             if (currentMessages.isEmpty()) {
                 AppLogger.d(TAG, "历史记录为空，无需总结")
                 return false
             }
 
-            val insertPosition = chatHistoryDelegate.findProperSummaryPosition(currentMessages)
+            val afterTimestamp = chatHistoryDelegate.findSummaryAnchorTimestamp(currentMessages)
             val summaryMessage =
                 AIMessageManager.summarizeMemory(service, currentMessages, autoContinue)
 
             if (summaryMessage != null) {
-                chatHistoryDelegate.addSummaryMessage(summaryMessage, insertPosition)
+                chatHistoryDelegate.addSummaryMessage(summaryMessage, afterTimestamp)
 
                 // 更新窗口大小
                 val newHistoryForTokens =
-                    AIMessageManager.getMemoryFromMessages(chatHistoryDelegate.chatHistory.value)
+                    AIMessageManager.getMemoryFromMessages(chatHistoryDelegate.loadAiContext(currentChatId))
                 val chatService = service.getAIServiceForFunction(FunctionType.CHAT)
                 val newWindowSize = chatService.calculateInputTokens("", newHistoryForTokens)
                 val currentChatIdForStats = chatHistoryDelegate.currentChatId.value
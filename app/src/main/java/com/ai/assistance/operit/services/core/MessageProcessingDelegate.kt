@@ -13,7 +13,7 @@ import com.ai.assistance.operit.data.model.InputProcessingState as EnhancedInput
 import com.ai.assistance.operit.data.model.PromptFunctionType
 import com.ai.assistance.operit.util.NetworkUtils
 import com.ai.assistance.operit.util.stream.SharedStream
-import com.ai.assistance.operit.util.stream.share
+import com.ai.assistance.operit.util.stream.shareText
 import com.ai.assistance.operit.util.WaifuMessageProcessor
 import com.ai.assistance.operit.data.preferences.ApiPreferences
 import com.ai.assistance.operit.data.preferences.CharacterCardManager
@@ -45,7 +45,8 @@ class MessageProcessingDelegate(
         private val context: Context,
         private val coroutineScope: CoroutineScope,
         private val getEnhancedAiService: () -> EnhancedAIService?,
-        private val getChatHistory: () -> List<ChatMessage>,
+        // 按聊天ID从数据库读取发给 AI 的上下文（最后一条总结及之后），为 null 时使用当前聊天
+        private val getChatHistory: suspend (String?) -> List<ChatMessage>,
         private val addMessageToChat: suspend (String, ChatMessage) -> Unit,
         private val saveCurrentChat: () -> Unit,
         private val showErrorMessage: (String) -> Unit,
@@ -234,7 +235,8 @@ class MessageProcessingDelegate(
 
         coroutineScope.launch(Dispatchers.IO) {
             // 检查这是否是聊天中的第一条用户消息（忽略AI的开场白）
-            val isFirstMessage = getChatHistory().none { it.sender == "user" }
+            // 上下文从最后一条总结开始，存在总结说明之前已有用户消息
+            val isFirstMessage = getChatHistory(chatId).none { it.sender == "user" || it.sender == "summary" }
             if (isFirstMessage && chatId != null) {
                 val newTitle =
                     when {
@@ -294,7 +296,7 @@ class MessageProcessingDelegate(
             }
 
             if (shouldAddUserMessageToChat && chatId != null) {
-                // 等待消息添加到聊天历史完成，确保getChatHistory()包含新消息
+                // 等待消息写入数据库完成，确保getChatHistory()包含新消息
                 addMessageToChat(chatId, userMessage)
                 userMessageAdded = true
             }
@@ -343,7 +345,7 @@ class MessageProcessingDelegate(
                     Pair(null, null)
                 }
 
-                val chatHistory = getChatHistory()
+                val chatHistory = getChatHistory(activeChatId)
 
                 // 根据enableSummary控制Token阈值检查和Token超限回调
                 val effectiveMaxTokens = if (enableSummary) maxTokens else 0
@@ -355,8 +357,8 @@ class MessageProcessingDelegate(
                     enhancedAiService = service,
                     chatId = activeChatId,
                     messageContent = finalMessageContent,
-                    //现在chatHistory 100%包含最新的用户输入，所以可以截掉
-                    chatHistory = if (userMessageAdded && chatHistory.isNotEmpty()) {
+                    //chatHistory 从数据库读取，已包含最新的用户输入，所以可以截掉
+                    chatHistory = if (userMessageAdded && chatHistory.lastOrNull()?.timestamp == userMessage.timestamp) {
                         chatHistory.subList(0, chatHistory.size - 1)
                     } else {
                         chatHistory
@@ -377,12 +379,11 @@ class MessageProcessingDelegate(
                 )
 
                 // 将字符串流共享，以便多个收集器可以使用
-                // 关键修改：设置 replay = Int.MAX_VALUE，确保 UI 重组（重新订阅）时能收到所有历史字符
-                // 文本数据占用内存极小，全量缓冲不会造成内存压力
+                // UI 重组或悬浮窗重新订阅时需要拿到全部历史：使用压缩重放，
+                // 迟到的订阅者先收到一次合并后的全文，再接收后续的实时分块
                 val sharedCharStream =
-                    responseStream.share(
+                    responseStream.shareText(
                         scope = coroutineScope,
-                        replay = Int.MAX_VALUE, 
                         onComplete = {
                             deferred.complete(Unit)
                             AppLogger.d(
@@ -109,6 +109,8 @@ enum class ChatStyle {
 fun ChatArea(
     chatHistory: List<ChatMessage>,
     scrollState: ScrollState,
+    hasOlderMessages: Boolean = false, // 数据库中是否还有未加载的更早消息
+    onLoadOlderMessages: (() -> Unit)? = null, // 回填更早消息的回调
     aiReferences: List<AiReference> = emptyList(),
     isLoading: Boolean,
     userMessageColor: Color,
@@ -140,8 +142,8 @@ fun ChatArea(
     onToggleMessageSelection: ((Int) -> Unit)? = null, // 切换消息选中状态的回调
     horizontalPadding: Dp = 16.dp // 水平内边距，可自定义
 ) {
-    // 记住当前深度状态，但当chatHistory发生变化时重置为1
-    var currentDepth = remember(chatHistory) { mutableStateOf(1) }
+    // 记住当前深度状态，但当有新消息追加时重置为1；向前回填历史消息不会重置
+    var currentDepth = remember(chatHistory.lastOrNull()?.timestamp) { mutableStateOf(1) }
 
     Column(modifier = modifier) {
         // 移除References display
@@ -169,7 +171,7 @@ fun ChatArea(
             val maxVisibleIndex = messagesCount - 1
             val minVisibleIndex =
                 maxOf(0, maxVisibleIndex - currentDepth.value * messagesPerPage + 1)
-            val hasMoreMessages = minVisibleIndex > 0
+            val hasMoreMessages = minVisibleIndex > 0 || (hasOlderMessages && onLoadOlderMessages != null)
 
             // "加载更多"文本 - 改为灰色文本而非按钮
             if (hasMoreMessages) {
@@ -178,7 +180,11 @@ fun ChatArea(
                     modifier =
                     Modifier
                         .fillMaxWidth()
-                        .clickable { currentDepth.value += 1 }
+                        .clickable {
+                            // 内存中的消息已全部显示时，从数据库回填更早的一页
+                            if (minVisibleIndex == 0) onLoadOlderMessages?.invoke()
+                            currentDepth.value += 1
+                        }
                         .padding(vertical = 16.dp),
                     style = MaterialTheme.typography.bodyMedium,
                     color = Color.Gray,
@@ -179,6 +179,7 @@ fun ChatScreenContent(
     
     // 监听朗读状态
     val isPlaying by actualViewModel.isPlaying.collectAsState()
+    val hasOlderMessages by actualViewModel.hasOlderMessages.collectAsState()
     val isAutoReadEnabled by actualViewModel.isAutoReadEnabled.collectAsState()
     val characterCardManager = remember { CharacterCardManager.getInstance(context) }
     val activeCharacterCard by characterCardManager.activeCharacterCardFlow.collectAsState(initial = null)
@@ -247,6 +248,8 @@ fun ChatScreenContent(
                 ChatArea(
                         chatHistory = chatHistory,
                         scrollState = scrollState,
+                        hasOlderMessages = hasOlderMessages,
+                        onLoadOlderMessages = { actualViewModel.loadOlderMessages() },
                         isLoading = isLoading,
                         userMessageColor = userMessageColor,
                         aiMessageColor = aiMessageColor,
@@ -320,6 +323,8 @@ fun ChatScreenContent(
                 ChatArea(
                         chatHistory = chatHistory,
                         scrollState = scrollState,
+                        hasOlderMessages = hasOlderMessages,
+                        onLoadOlderMessages = { actualViewModel.loadOlderMessages() },
                         isLoading = isLoading,
                         userMessageColor = userMessageColor,
                         aiMessageColor = aiMessageColor,
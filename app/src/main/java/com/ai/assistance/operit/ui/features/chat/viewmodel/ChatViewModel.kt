@@ -192,6 +192,7 @@ class ChatViewModel(private val context: Context) : ViewModel() {
 
     // 聊天历史相关
     val chatHistory: StateFlow<List<ChatMessage>> by lazy { chatHistoryDelegate.chatHistory }
+    val hasOlderMessages: StateFlow<Boolean> by lazy { chatHistoryDelegate.hasOlderMessages }
     val showChatHistorySelector: StateFlow<Boolean> by lazy {
         chatHistoryDelegate.showChatHistorySelector
     }
@@ -377,7 +378,7 @@ class ChatViewModel(private val context: Context) : ViewModel() {
                         context = context,
                         coroutineScope = viewModelScope,  // 改用 coroutineScope 参数
                         getEnhancedAiService = { enhancedAiService },
-                        getChatHistory = { chatHistoryDelegate.chatHistory.value },
+                        getChatHistory = { chatId -> chatHistoryDelegate.loadAiContext(chatId) },
                         addMessageToChat = { targetChatId, message ->
                             // 将消息固定写入指定聊天，避免在切换会话后串流到新会话
                             // 这是suspend函数，在suspend上下文中会等待完成
@@ -674,17 +675,21 @@ class ChatViewModel(private val context: Context) : ViewModel() {
                 // 设置输入处理状态
                 messageProcessingDelegate.handleInputProcessingState(InputProcessingState.Summarizing("正在生成总结..."))
                 
-                val currentHistory = chatHistoryDelegate.chatHistory.value
-                
-                // 确定插入位置：用户消息插入在上面（index），AI消息插入在下面（index+1）
-                val insertPosition = if (message.sender == "user") {
-                    index
+                // 窗口只用于定位锚点消息，插入位置与待总结内容都按时间戳从数据库读取
+                val anchor = chatHistoryDelegate.chatHistory.value.getOrNull(index)
+                    ?.takeIf { it.timestamp == message.timestamp } ?: message
+
+                // 确定插入位置：用户消息插入在上面，AI消息插入在下面
+                val afterTimestamp = if (anchor.sender == "user") {
+                    chatHistoryDelegate.previousMessageTimestamp(anchor.timestamp)
                 } else {
-                    index + 1
+                    anchor.timestamp
                 }
-                
-                // 获取要总结的消息：从开始到插入位置的消息
-                val historyForSummary = currentHistory.subList(0, insertPosition)
+
+                // 获取要总结的消息：插入位置之前的上下文
+                val historyForSummary = afterTimestamp?.let {
+                    chatHistoryDelegate.loadAiContext(currentChatId, it)
+                } ?: emptyList()
 
                 val lastSummaryIndex = historyForSummary.indexOfLast { it.sender == "summary" }
                 val messagesToSummarize = when {
@@ -716,11 +721,11 @@ class ChatViewModel(private val context: Context) : ViewModel() {
                 
                 if (summaryMessage != null) {
                     // 插入总结消息
-                    chatHistoryDelegate.addSummaryMessage(summaryMessage, insertPosition)
+                    chatHistoryDelegate.addSummaryMessage(summaryMessage, afterTimestamp)
 
                     // 插入总结后，重新计算窗口大小并保存
                     val newHistoryForTokens =
-                        AIMessageManager.getMemoryFromMessages(chatHistoryDelegate.chatHistory.value)
+                        AIMessageManager.getMemoryFromMessages(chatHistoryDelegate.loadAiContext(currentChatId))
                     val chatService = enhancedAiService!!.getAIServiceForFunction(FunctionType.CHAT)
                     val newWindowSize = chatService.calculateInputTokens("", newHistoryForTokens)
                     val (inputTokens, outputTokens) = tokenStatsDelegate.getCumulativeTokenCounts()
@@ -743,28 +748,36 @@ class ChatViewModel(private val context: Context) : ViewModel() {
         }
     }
 
+    /** 回填更早的一页历史消息 */
+    fun loadOlderMessages() {
+        chatHistoryDelegate.loadOlderMessages()
+    }
+
     /** 删除单条消息 */
     fun deleteMessage(index: Int) {
-        AppLogger.d(TAG, "准备删除消息，索引: $index")
-        chatHistoryDelegate.deleteMessage(index)
+        // 界面传入的是窗口下标，立即换算为时间戳，避免分页或裁剪后错位
+        val message = chatHistoryDelegate.chatHistory.value.getOrNull(index) ?: return
+        AppLogger.d(TAG, "准备删除消息，索引: $index, 时间戳: ${message.timestamp}")
+        chatHistoryDelegate.deleteMessage(message.timestamp)
     }
 
     /** 从指定索引删除后续所有消息 */
     fun deleteMessagesFrom(index: Int) {
+        val message = chatHistoryDelegate.chatHistory.value.getOrNull(index) ?: return
         viewModelScope.launch {
-            AppLogger.d(TAG, "准备从索引 $index 开始删除后续消息")
-            chatHistoryDelegate.deleteMessagesFrom(index)
+            AppLogger.d(TAG, "准备从索引 $index（时间戳 ${message.timestamp}）开始删除后续消息")
+            chatHistoryDelegate.deleteMessagesFrom(message.timestamp)
         }
     }
 
     /** 批量删除消息 */
     fun deleteMessages(indices: Set<Int>) {
+        val currentHistory = chatHistoryDelegate.chatHistory.value
+        val timestamps = indices.mapNotNull { currentHistory.getOrNull(it)?.timestamp }
         viewModelScope.launch {
             AppLogger.d(TAG, "准备批量删除消息，索引: $indices")
-            // 按降序排列索引后依次删除，避免索引偏移问题
-            val sortedIndices = indices.sortedDescending()
-            sortedIndices.forEach { index ->
-                chatHistoryDelegate.deleteMessage(index)
+            timestamps.forEach { timestamp ->
+                chatHistoryDelegate.deleteMessage(timestamp)
             }
             AppLogger.d(TAG, "批量删除完成")
         }
@@ -850,23 +863,13 @@ class ChatViewModel(private val context: Context) : ViewModel() {
     fun updateMessage(index: Int, editedMessage: ChatMessage) {
         viewModelScope.launch {
             try {
-                // 获取当前聊天历史
-                val currentHistory = chatHistoryDelegate.chatHistory.value.toMutableList()
-
                 // 确保索引有效
-                if (index < 0 || index >= currentHistory.size) {
+                if (index < 0 || index >= chatHistoryDelegate.chatHistory.value.size) {
                     uiStateDelegate.showErrorMessage("无效的消息索引")
                     return@launch
                 }
 
-                // 更新消息
-                currentHistory[index] = editedMessage
-
-                // 将更新后的历史记录保存到ChatHistoryDelegate
-                // 注意：这里仅更新内存，因为此方法只用于单个消息内容的修改，不涉及历史截断
-                chatHistoryDelegate.updateChatHistory(currentHistory)
-
-                // 直接在数据库中更新该条消息
+                // 按时间戳同时更新窗口与数据库中的该条消息，不涉及历史截断
                 chatHistoryDelegate.addMessageToChat(editedMessage)
 
                 // 更新统计信息并保存
@@ -896,18 +899,13 @@ class ChatViewModel(private val context: Context) : ViewModel() {
     fun rewindAndResendMessage(index: Int, editedContent: String) {
         viewModelScope.launch {
             try {
-                // 获取当前聊天历史
-                val currentHistory = chatHistoryDelegate.chatHistory.value.toMutableList()
-
-                // 确保索引有效
-                if (index < 0 || index >= currentHistory.size) {
+                // 获取目标消息：窗口下标只用于定位，之后一律按时间戳操作
+                val targetMessage = chatHistoryDelegate.chatHistory.value.getOrNull(index)
+                if (targetMessage == null) {
                     uiStateDelegate.showErrorMessage("无效的消息索引")
                     return@launch
                 }
 
-                // 获取目标消息
-                val targetMessage = currentHistory[index]
-
                 // 检查目标消息是否是用户消息
                 if (targetMessage.sender != "user") {
                     uiStateDelegate.showErrorMessage("只能对用户消息执行此操作")
@@ -918,11 +916,9 @@ class ChatViewModel(private val context: Context) : ViewModel() {
                 // 我们需要恢复到目标消息 *之前* 的状态,
                 // 所以我们使用前一条消息的时间戳。
                 // 如果目标是第一条消息，则回滚到初始状态 (时间戳 0)。
-                val rewindTimestamp = if (index > 0) {
-                    currentHistory[index - 1].timestamp
-                } else {
-                    0L
-                }
+                // 上一条消息可能不在已加载的窗口中，从数据库查询。
+                val previousTimestamp = chatHistoryDelegate.previousMessageTimestamp(targetMessage.timestamp)
+                val rewindTimestamp = previousTimestamp ?: 0L
 
                 // 获取当前工作区路径
                 val chatId = currentChatId.value
@@ -930,8 +926,8 @@ class ChatViewModel(private val context: Context) : ViewModel() {
                 val workspacePath = currentChat?.workspace
 
                 AppLogger.d(TAG, "[Rewind] Target message timestamp: ${targetMessage.timestamp}")
-                if (index > 0) {
-                    AppLogger.d(TAG, "[Rewind] Previous message timestamp: ${currentHistory[index - 1].timestamp}")
+                if (previousTimestamp != null) {
+                    AppLogger.d(TAG, "[Rewind] Previous message timestamp: $previousTimestamp")
                 } else {
                     AppLogger.d(TAG, "[Rewind] No previous message, target is the first message.")
                 }
@@ -947,17 +943,8 @@ class ChatViewModel(private val context: Context) : ViewModel() {
                     AppLogger.d(TAG, "Workspace rewind complete.")
                 }
 
-                // 截取到指定消息的历史记录（不包含该消息本身）
-                val rewindHistory = currentHistory.subList(0, index)
-                
-                // 获取要删除的第一条消息的时间戳
-                val timestampOfFirstDeletedMessage = currentHistory[index].timestamp
-
-                // **核心修复**：调用新的委托方法，原子性地更新数据库和内存
-                chatHistoryDelegate.truncateChatHistory(
-                        rewindHistory,
-                        timestampOfFirstDeletedMessage
-                )
+                // **核心修复**：调用新的委托方法，原子性地删除该消息及之后的记录（数据库和内存）
+                chatHistoryDelegate.truncateChatHistory(targetMessage.timestamp)
 
                 // 显示重新发送的消息准备状态
                 uiStateDelegate.showToast("正在准备重新发送消息")
@@ -975,16 +962,13 @@ class ChatViewModel(private val context: Context) : ViewModel() {
     suspend fun previewWorkspaceChangesForMessage(index: Int): List<WorkspaceBackupManager.WorkspaceFileChange> {
         return withContext(Dispatchers.IO) {
             try {
-                val currentHistory = chatHistoryDelegate.chatHistory.value.toMutableList()
+                val targetMessage = chatHistoryDelegate.chatHistory.value.getOrNull(index)
 
-                if (index < 0 || index >= currentHistory.size) {
+                if (targetMessage == null) {
                     emptyList()
                 } else {
-                    val rewindTimestamp = if (index > 0) {
-                        currentHistory[index - 1].timestamp
-                    } else {
-                        0L
-                    }
+                    val rewindTimestamp =
+                        chatHistoryDelegate.previousMessageTimestamp(targetMessage.timestamp) ?: 0L
 
                     val chatId = currentChatId.value
                     val currentChat = chatHistories.value.find { it.id == chatId }
@@ -1021,26 +1005,20 @@ class ChatViewModel(private val context: Context) : ViewModel() {
     fun rollbackToMessage(index: Int) {
         viewModelScope.launch {
             try {
-                val currentHistory = chatHistoryDelegate.chatHistory.value.toMutableList()
-
-                if (index < 0 || index >= currentHistory.size) {
+                val targetMessage = chatHistoryDelegate.chatHistory.value.getOrNull(index)
+                if (targetMessage == null) {
                     uiStateDelegate.showErrorMessage("无效的消息索引")
                     return@launch
                 }
 
-                val targetMessage = currentHistory[index]
-
                 // 目前UI只允许对用户消息执行回滚，这里再做一次保护
                 if (targetMessage.sender != "user") {
                     uiStateDelegate.showErrorMessage("只能对用户消息执行此操作")
                     return@launch
                 }
 
-                val rewindTimestamp = if (index > 0) {
-                    currentHistory[index - 1].timestamp
-                } else {
-                    0L
-                }
+                val rewindTimestamp =
+                    chatHistoryDelegate.previousMessageTimestamp(targetMessage.timestamp) ?: 0L
 
                 val chatId = currentChatId.value
                 val currentChat = chatHistories.value.find { it.id == chatId }
@@ -1056,13 +1034,7 @@ class ChatViewModel(private val context: Context) : ViewModel() {
                 }
 
                 // 删除目标消息及其之后的所有消息
-                val newHistory = currentHistory.subList(0, index)
-
-                val timestampOfFirstDeletedMessage = currentHistory[index].timestamp
-                chatHistoryDelegate.truncateChatHistory(
-                    newHistory,
-                    timestampOfFirstDeletedMessage
-                )
+                chatHistoryDelegate.truncateChatHistory(targetMessage.timestamp)
 
                 val plainText = AvatarEmotionManager.stripXmlLikeTags(targetMessage.content)
                 updateUserMessage(TextFieldValue(plainText))
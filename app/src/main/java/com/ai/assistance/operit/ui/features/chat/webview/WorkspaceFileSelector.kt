@@ -25,7 +25,7 @@ import androidx.compose.ui.unit.dp
 import com.ai.assistance.operit.R
 import com.ai.assistance.operit.data.model.ChatHistory
 import com.ai.assistance.operit.ui.features.chat.viewmodel.ChatViewModel
-import com.ai.assistance.operit.ui.features.chat.webview.workspace.process.GitIgnoreFilter
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.process.WorkspaceWalker
 import com.ai.assistance.operit.util.FileUtils
 import java.io.File
 
@@ -55,12 +55,10 @@ fun WorkspaceFileSelector(
         if (workspacePath != null) {
             val workspaceDir = File(workspacePath)
             if (workspaceDir.exists() && workspaceDir.isDirectory) {
-                val gitignoreRules = GitIgnoreFilter.loadRules(workspaceDir)
-                val files = workspaceDir.walk()
-                    .filter { FileUtils.isWorkspaceFile(it, workspaceDir, gitignoreRules) }
-                    .filter { searchQuery.isEmpty() || it.path.contains(searchQuery, ignoreCase = true) }
-                    .sortedBy { it.path }
-                    .toList()
+                val files = WorkspaceWalker.walkFiles(workspaceDir) { file ->
+                    FileUtils.isTextBasedFile(file) &&
+                        (searchQuery.isEmpty() || file.path.contains(searchQuery, ignoreCase = true))
+                }
 
                 // 当筛选结果为空时，通知父组件隐藏
                 LaunchedEffect(files, searchQuery) {
@@ -9,7 +9,8 @@ import kotlinx.serialization.json.Json
 import java.io.File
 import java.io.FileInputStream
 import java.security.MessageDigest
-import com.ai.assistance.operit.ui.features.chat.webview.workspace.process.GitIgnoreFilter
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.process.GitIgnoreMatcher
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.process.WorkspaceWalker
 import com.ai.assistance.operit.util.FileUtils
 
 @Serializable
@@ -103,9 +104,7 @@ class WorkspaceBackupManager(private val context: Context) {
 
         val newManifestFiles = mutableMapOf<String, String>()
 
-        val gitignoreRules = GitIgnoreFilter.loadRules(workspaceDir)
-        workspaceDir.walkTopDown()
-            .filter { FileUtils.isWorkspaceFile(it, workspaceDir, gitignoreRules) }
+        workspaceFilesSequence(workspaceDir)
             .forEach { file ->
                 try {
                     val hash = getFileHash(file)
@@ -145,12 +144,10 @@ class WorkspaceBackupManager(private val context: Context) {
         val manifestFiles = targetManifest?.files ?: emptyMap()
         val manifestRelativePaths = manifestFiles.keys
 
-        val gitignoreRules = GitIgnoreFilter.loadRules(workspaceDir)
-
         // 1. Delete files from workspace that are not in the target manifest
         // Safety: Only delete text-based files that were previously tracked, preserve untracked binary files
         AppLogger.d(TAG, "Step 1: Deleting tracked files not present in the target manifest...")
-        workspaceFilesSequence(workspaceDir, gitignoreRules)
+        workspaceFilesSequence(workspaceDir)
             .forEach { currentFile ->
                 val relativePath = currentFile.relativeTo(workspaceDir).path
                 if (relativePath !in manifestRelativePaths) {
@@ -217,10 +214,10 @@ class WorkspaceBackupManager(private val context: Context) {
         }
     }
 
-    private fun workspaceFilesSequence(workspaceDir: File, gitignoreRules: List<String>): Sequence<File> {
-        return workspaceDir.walkTopDown()
-            .onEnter { dir -> dir.name != BACKUP_DIR_NAME }
-            .filter { it.isFile && FileUtils.isWorkspaceFile(it, workspaceDir, gitignoreRules) }
+    private fun workspaceFilesSequence(workspaceDir: File): Sequence<File> {
+        // 备份目录在默认排除项中，遍历时连同被忽略的目录一起剪掉
+        return WorkspaceWalker.walkFiles(workspaceDir, GitIgnoreMatcher(workspaceDir)) { FileUtils.isTextBasedFile(it) }
+            .asSequence()
     }
 
     private fun getFileHash(file: File): String {
@@ -294,7 +291,6 @@ class WorkspaceBackupManager(private val context: Context) {
 
         val backupDir = File(workspaceDir, BACKUP_DIR_NAME)
         val objectsDir = File(backupDir, OBJECTS_DIR_NAME)
-        val gitignoreRules = GitIgnoreFilter.loadRules(workspaceDir)
 
         val targetManifest = if (targetTimestamp != null) {
             loadBackupManifest(backupDir, targetTimestamp)
@@ -308,7 +304,7 @@ class WorkspaceBackupManager(private val context: Context) {
 
         val changes = mutableListOf<WorkspaceFileChange>()
 
-        workspaceFilesSequence(workspaceDir, gitignoreRules)
+        workspaceFilesSequence(workspaceDir)
             .forEach { currentFile ->
                 val relativePath = currentFile.relativeTo(workspaceDir).path
                 if (relativePath !in manifestRelativePaths) {
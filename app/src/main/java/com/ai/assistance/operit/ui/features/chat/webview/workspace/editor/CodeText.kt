@@ -320,10 +320,7 @@ class CodeText : ColorsText {
      * 手动触发完整代码解析（用于文件加载后初始化高亮）
      */
     fun triggerParse() {
-        val textLength = text?.length ?: 0
-        if (textLength > 0) {
-            codeParser.parse(0, 0, textLength)
-        }
+        codeParser.parseAll()
     }
 
     /**
@@ -367,13 +364,13 @@ class CodeText : ColorsText {
             }
             
             override fun onTextChanged(s: CharSequence, start: Int, before: Int, count: Int) {
+                // 解析代码（高亮按行增量维护，撤销、重做等修改也需要告知）
+                codeParser.parse(start, before, count)
+                
                 if (isUndoingOrRedoing || ignoreNextChange) return
                 
                 insertedText = s.subSequence(start, start + count).toString()
                 
-                // 解析代码
-                codeParser.parse(start, before, count)
-                
                 // 更新补全
                 updateCompletion()
             }
@@ -31,8 +31,9 @@ open class ColorsText : AppCompatEditText {
     }
     private val colorLock = Any()
     
-    // 代码高亮颜色数组
-    private var codeColors: IntArray? = null
+    // 代码高亮（按行的颜色区段）及记号对应的颜色，由 CodeParser 设置
+    private var highlighter: LineHighlighter? = null
+    private var tokenColors: IntArray? = null
     
     // 滑动组件
     private var scrollView: View? = null
@@ -625,29 +626,17 @@ open class ColorsText : AppCompatEditText {
      * 获取代码颜色
      */
     private fun getCodeColor(i: Int): Int {
-        return if (codeColors != null && i < codeColors!!.size) {
-            codeColors!![i]
-        } else 0
+        val h = highlighter ?: return 0
+        val colors = tokenColors ?: return 0
+        return colors[h.tokenAt(i)]
     }
     
     /**
-     * 获取代码颜色数组
+     * 设置语法高亮器
      */
-    fun getCodeColors(): IntArray {
-        val textLength = length()
-        if (codeColors == null) {
-            codeColors = IntArray(textLength)
-        }
-        
-        // 如果文字长度大于颜色长度，生成新的颜色数组
-        if (textLength >= codeColors!!.size) {
-            val newColors = IntArray(textLength + 500)
-            for (i in codeColors!!.indices) {
-                newColors[i] = codeColors!![i]
-            }
-            codeColors = newColors
-        }
-        return codeColors!!
+    fun setHighlighter(highlighter: LineHighlighter, tokenColors: IntArray) {
+        this.highlighter = highlighter
+        this.tokenColors = tokenColors
     }
     
     /**
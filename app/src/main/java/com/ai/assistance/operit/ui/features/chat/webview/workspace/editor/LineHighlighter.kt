@@ -0,0 +1,435 @@
+package com.ai.assistance.operit.ui.features.chat.webview.workspace.editor
+
+import com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.language.LanguageSupport
+
+/**
+ * 按行增量的语法高亮器
+ *
+ * 每行保存行首的词法状态（普通 / 块注释中 / 多行字符串中），颜色以 (列, 记号) 区段存放。
+ * 编辑后只从被修改的行开始重新分析，直到某一行的行首状态与原来一致为止，
+ * 因此打开或关闭块注释只会重新分析真正受影响的行。
+ * 非线程安全，由调用方在同一线程中使用。
+ */
+class LineHighlighter(private val language: LanguageSupport?) {
+    companion object {
+        // 记号类型，区段中存放的值
+        const val TOKEN_DEFAULT = 0
+        const val TOKEN_KEYWORD = 1
+        const val TOKEN_TYPE = 2
+        const val TOKEN_VARIABLE = 3
+        const val TOKEN_FUNCTION = 4
+        const val TOKEN_STRING = 5
+        const val TOKEN_NUMBER = 6
+        const val TOKEN_COMMENT = 7
+        const val TOKEN_OPERATOR = 8
+
+        // 行首词法状态，多行字符串为 STATE_STRING + 分隔符下标
+        const val STATE_NORMAL = 0
+        const val STATE_BLOCK_COMMENT = 1
+        const val STATE_STRING = 2
+        private const val STATE_UNKNOWN = -1
+
+        private const val OPERATORS = "+-*/%=&|<>!~^?:;,(){}[]."
+        private val EMPTY_SPANS = IntArray(0)
+    }
+
+    private val commentStarts = language?.getCommentStart() ?: listOf("//", "/*")
+    private val blockCommentEnd = language?.getMultiLineCommentEnd() ?: "*/"
+    private val multiLineStrings = language?.getMultiLineStringDelimiters() ?: emptyList()
+    private val escapeChar = language?.getStringEscapeChar() ?: '\\'
+    private val keywords = language?.getKeywords() ?: emptySet()
+    private val builtInTypes = language?.getBuiltInTypes() ?: emptySet()
+    private val builtInVariables = language?.getBuiltInVariables() ?: emptySet()
+    private val builtInFunctions = language?.getBuiltInFunctions() ?: emptySet()
+
+    // 每行的起始偏移、行首状态和颜色区段（[列, 记号] 成对存放）
+    private var lineStarts = IntArray(16)
+    private var lineStates = IntArray(16)
+    private var lineSpans = arrayOfNulls<IntArray>(16)
+
+    /** 当前行数 */
+    var lineCount = 1
+        private set
+
+    private var textLength = 0
+
+    // 待重新分析的行范围：从 dirtyFrom 开始，至少分析到 dirtyTo 之后才允许因状态一致而停止
+    private var dirtyFrom = -1
+    private var dirtyTo = -1
+
+    /** 累计重新分析过的行数，用于观察增量分析的范围 */
+    var relexedLines = 0L
+        private set
+
+    // 区段构建缓冲
+    private var spanBuffer = IntArray(64)
+    private var spanSize = 0
+
+    // tokenAt 的游标缓存，顺序访问时不需要重新查找
+    private var cursorLine = 0
+    private var cursorSpan = 0
+
+    /** 是否还有未分析完的行 */
+    val isDirty: Boolean
+        get() = dirtyFrom >= 0
+
+    /**
+     * 按完整文本重建行表，所有行标记为待分析
+     */
+    fun reset(text: CharSequence) {
+        lineCount = 1
+        lineStarts[0] = 0
+        for (i in 0 until text.length) {
+            if (text[i] == '\n') {
+                ensureCapacity(lineCount + 1)
+                lineStarts[lineCount++] = i + 1
+            }
+        }
+        lineStates.fill(STATE_UNKNOWN, 0, lineCount)
+        lineStates[0] = STATE_NORMAL
+        lineSpans.fill(null, 0, lineCount)
+        textLength = text.length
+        dirtyFrom = 0
+        dirtyTo = lineCount - 1
+        cursorLine = 0
+        cursorSpan = 0
+    }
+
+    /**
+     * 记录一次文本修改（参数与 TextWatcher.onTextChanged 相同），text 为修改后的文本。
+     * 只调整行表并标记受影响的行，实际分析由 relex 完成。
+     */
+    fun edit(text: CharSequence, start: Int, before: Int, count: Int) {
+        if (start < 0 || start + before > textLength || textLength - before + count != text.length) {
+            // 修改与记录的文本对不上（例如漏掉了某次修改），整体重建
+            reset(text)
+            return
+        }
+        val firstLine = lineOf(start)
+        val oldEnd = start + before
+
+        // 被删除的换行：起始偏移落在 (start, oldEnd] 中的行
+        var removed = 0
+        while (firstLine + 1 + removed < lineCount && lineStarts[firstLine + 1 + removed] <= oldEnd) {
+            removed++
+        }
+        var inserted = 0
+        for (i in start until start + count) {
+            if (text[i] == '\n') inserted++
+        }
+
+        val delta = count - before
+        val tail = firstLine + 1 + removed
+        val newCount = lineCount - removed + inserted
+        ensureCapacity(newCount)
+        if (inserted != removed && tail < lineCount) {
+            val target = firstLine + 1 + inserted
+            System.arraycopy(lineStarts, tail, lineStarts, target, lineCount - tail)
+            System.arraycopy(lineStates, tail, lineStates, target, lineCount - tail)
+            System.arraycopy(lineSpans, tail, lineSpans, target, lineCount - tail)
+        }
+        if (newCount < lineCount) {
+            lineSpans.fill(null, newCount, lineCount)
+        }
+        var line = firstLine + 1
+        for (i in start until start + count) {
+            if (text[i] == '\n') {
+                lineStarts[line] = i + 1
+                lineStates[line] = STATE_UNKNOWN
+                lineSpans[line] = null
+                line++
+            }
+        }
+        if (delta != 0) {
+            for (l in firstLine + 1 + inserted until newCount) {
+                lineStarts[l] += delta
+            }
+        }
+        lineCount = newCount
+        textLength = text.length
+
+        // 已有的待分析范围随行号平移
+        if (dirtyTo > firstLine) {
+            dirtyTo = (dirtyTo + inserted - removed).coerceAtLeast(firstLine)
+        }
+        if (dirtyFrom > firstLine) {
+            dirtyFrom = (dirtyFrom + inserted - removed).coerceAtLeast(firstLine)
+        }
+        dirtyFrom = if (dirtyFrom < 0) firstLine else minOf(dirtyFrom, firstLine)
+        dirtyTo = maxOf(dirtyTo, firstLine + inserted).coerceAtMost(lineCount - 1)
+        cursorLine = 0
+        cursorSpan = 0
+    }
+
+    /**
+     * 继续分析待处理的行，最多分析 maxLines 行
+     * @return 是否已全部分析完成
+     */
+    fun relex(text: CharSequence, maxLines: Int = Int.MAX_VALUE): Boolean {
+        if (dirtyFrom < 0) return true
+        var line = dirtyFrom
+        var processed = 0
+        while (true) {
+            val endState = lexLine(text, line)
+            processed++
+            val next = line + 1
+            if (next >= lineCount || (next > dirtyTo && lineStates[next] == endState)) {
+                dirtyFrom = -1
+                dirtyTo = -1
+                break
+            }
+            lineStates[next] = endState
+            line = next
+            if (processed >= maxLines) {
+                // 下次继续时必须先分析到这一行，之后的行首状态仍是修改前的
+                dirtyFrom = line
+                dirtyTo = maxOf(dirtyTo, line)
+                break
+            }
+        }
+        relexedLines += processed
+        return dirtyFrom < 0
+    }
+
+    /** 行的起始偏移 */
+    fun lineStart(line: Int): Int = lineStarts[line]
+
+    /** 行首的词法状态 */
+    fun lineState(line: Int): Int = lineStates[line]
+
+    /** 行的颜色区段，[列, 记号] 成对存放；尚未分析的行为空 */
+    fun spans(line: Int): IntArray = lineSpans[line] ?: EMPTY_SPANS
+
+    /**
+     * 偏移所在的行
+     */
+    fun lineOf(offset: Int): Int {
+        var low = 0
+        var high = lineCount - 1
+        while (low < high) {
+            val mid = (low + high + 1) ushr 1
+            if (lineStarts[mid] <= offset) low = mid else high = mid - 1
+        }
+        return low
+    }
+
+    /**
+     * 偏移处的记号类型，按偏移递增访问时为常数时间
+     */
+    fun tokenAt(offset: Int): Int {
+        if (offset < 0 || offset >= textLength) return TOKEN_DEFAULT
+        var line = cursorLine
+        if (line >= lineCount || offset < lineStarts[line] || (line + 1 < lineCount && offset >= lineStarts[line + 1])) {
+            line = lineOf(offset)
+            cursorLine = line
+            cursorSpan = 0
+        }
+        val spans = lineSpans[line] ?: return TOKEN_DEFAULT
+        if (spans.isEmpty()) return TOKEN_DEFAULT
+        val column = offset - lineStarts[line]
+        var s = cursorSpan
+        if (s >= spans.size || spans[s] > column) s = 0
+        while (s + 2 < spans.size && spans[s + 2] <= column) s += 2
+        cursorSpan = s
+        return spans[s + 1]
+    }
+
+    private fun ensureCapacity(size: Int) {
+        if (size <= lineStarts.size) return
+        val capacity = maxOf(size, lineStarts.size * 2)
+        lineStarts = lineStarts.copyOf(capacity)
+        lineStates = lineStates.copyOf(capacity)
+        lineSpans = lineSpans.copyOf(capacity)
+    }
+
+    /**
+     * 分析一行并保存其区段
+     * @return 行尾（即下一行行首）的词法状态
+     */
+    private fun lexLine(text: CharSequence, line: Int): Int {
+        val start = lineStarts[line]
+        val end = if (line + 1 < lineCount) lineStarts[line + 1] - 1 else textLength
+        var state = lineStates[line]
+        if (state == STATE_UNKNOWN) state = STATE_NORMAL
+        spanSize = 0
+        var i = start
+
+        // 承接上一行未结束的块注释或多行字符串
+        if (state == STATE_BLOCK_COMMENT) {
+            val close = indexOf(text, blockCommentEnd, i, end)
+            if (close < 0) {
+                addSpan(0, TOKEN_COMMENT)
+                return finishLine(line, STATE_BLOCK_COMMENT)
+            }
+            addSpan(0, TOKEN_COMMENT)
+            i = close + blockCommentEnd.length
+        } else if (state >= STATE_STRING) {
+            val delimiter = multiLineStrings.getOrNull(state - STATE_STRING)
+            addSpan(0, TOKEN_STRING)
+            if (delimiter != null) {
+                val close = findStringEnd(text, delimiter, i, end)
+                if (close < 0) return finishLine(line, state)
+                i = close
+            }
+        }
+
+        while (i < end) {
+            val c = text[i]
+
+            // 注释
+            var comment: String? = null
+            for (marker in commentStarts) {
+                if (startsWith(text, marker, i, end)) {
+                    comment = marker
+                    break
+                }
+            }
+            if (comment != null) {
+                addSpan(i - start, TOKEN_COMMENT)
+                if (comment == "//" || comment.length == 1) {
+                    return finishLine(line, STATE_NORMAL)
+                }
+                val close = indexOf(text, blockCommentEnd, i + comment.length, end)
+                if (close < 0) return finishLine(line, STATE_BLOCK_COMMENT)
+                i = close + blockCommentEnd.length
+                continue
+            }
+
+            // 可跨行的字符串（模板字符串、原始字符串）
+            var multiLine = -1
+            for (d in multiLineStrings.indices) {
+                if (startsWith(text, multiLineStrings[d], i, end)) {
+                    multiLine = d
+                    break
+                }
+            }
+            if (multiLine >= 0) {
+                val delimiter = multiLineStrings[multiLine]
+                addSpan(i - start, TOKEN_STRING)
+                val close = findStringEnd(text, delimiter, i + delimiter.length, end)
+                if (close < 0) return finishLine(line, STATE_STRING + multiLine)
+                i = close
+                continue
+            }
+
+            // 普通字符串，到行尾为止
+            if (isStringDelimiter(c)) {
+                addSpan(i - start, TOKEN_STRING)
+                i++
+                while (i < end && text[i] != c) {
+                    i += if (text[i] == escapeChar && i + 1 < end) 2 else 1
+                }
+                if (i < end) i++
+                continue
+            }
+
+            // 数字（包括十六进制、二进制、科学计数法和类型后缀）
+            if (c.isDigit()) {
+                addSpan(i - start, TOKEN_NUMBER)
+                i = scanNumber(text, i, end)
+                continue
+            }
+
+            // 标识符（关键字、类型、函数等）
+            if (Character.isJavaIdentifierStart(c)) {
+                val wordStart = i
+                while (i < end && Character.isJavaIdentifierPart(text[i])) i++
+                addSpan(wordStart - start, classifyWord(text, wordStart, i, end))
+                continue
+            }
+
+            addSpan(i - start, if (OPERATORS.indexOf(c) >= 0) TOKEN_OPERATOR else TOKEN_DEFAULT)
+            i++
+        }
+        return finishLine(line, STATE_NORMAL)
+    }
+
+    private fun finishLine(line: Int, endState: Int): Int {
+        lineSpans[line] = if (spanSize == 0) EMPTY_SPANS else spanBuffer.copyOf(spanSize)
+        return endState
+    }
+
+    /** 追加一个区段，与前一区段记号相同时合并 */
+    private fun addSpan(column: Int, token: Int) {
+        if (spanSize > 0 && spanBuffer[spanSize - 1] == token) return
+        if (spanSize + 2 > spanBuffer.size) spanBuffer = spanBuffer.copyOf(spanBuffer.size * 2)
+        spanBuffer[spanSize++] = column
+        spanBuffer[spanSize++] = token
+    }
+
+    private fun isStringDelimiter(c: Char): Boolean =
+        if (language != null) language.isStringDelimiter(c) else c == '"' || c == '\''
+
+    private fun classifyWord(text: CharSequence, start: Int, end: Int, lineEnd: Int): Int {
+        // 没有语言支持时标识符不着色
+        if (language == null) return TOKEN_DEFAULT
+        val word = text.subSequence(start, end).toString()
+        var next = end
+        while (next < lineEnd && (text[next] == ' ' || text[next] == '\t')) next++
+        return when {
+            word in keywords -> TOKEN_KEYWORD
+            word in builtInTypes -> TOKEN_TYPE
+            word in builtInVariables -> TOKEN_VARIABLE
+            word in builtInFunctions -> TOKEN_FUNCTION
+            next < lineEnd && text[next] == '(' -> TOKEN_FUNCTION
+            word[0].isUpperCase() -> TOKEN_TYPE
+            else -> TOKEN_VARIABLE
+        }
+    }
+
+    private fun scanNumber(text: CharSequence, start: Int, end: Int): Int {
+        var i = start
+        val prefix = if (text[i] == '0' && i + 1 < end) text[i + 1] else ' '
+        if (prefix == 'x' || prefix == 'X') {
+            i += 2
+            while (i < end && (text[i].isDigit() || text[i] in 'a'..'f' || text[i] in 'A'..'F' || text[i] == '_')) i++
+        } else if (prefix == 'b' || prefix == 'B') {
+            i += 2
+            while (i < end && (text[i] == '0' || text[i] == '1' || text[i] == '_')) i++
+        } else {
+            while (i < end) {
+                val c = text[i]
+                if (c.isDigit() || c == '.' || c == '_') {
+                    i++
+                } else if ((c == 'e' || c == 'E') && i + 1 < end) {
+                    i += if ((text[i + 1] == '+' || text[i + 1] == '-') && i + 2 < end) 2 else 1
+                } else {
+                    break
+                }
+            }
+        }
+        if (i < end && text[i] in "LlFfDdn") i++
+        return i
+    }
+
+    /** 查找多行字符串的结束位置（结束分隔符之后），单字符分隔符支持转义 */
+    private fun findStringEnd(text: CharSequence, delimiter: String, from: Int, end: Int): Int {
+        var i = from
+        while (i < end) {
+            if (delimiter.length == 1 && text[i] == escapeChar) {
+                i += 2
+                continue
+            }
+            if (startsWith(text, delimiter, i, end)) return i + delimiter.length
+            i++
+        }
+        return -1
+    }
+
+    private fun startsWith(text: CharSequence, marker: String, at: Int, end: Int): Boolean {
+        if (at + marker.length > end) return false
+        for (k in marker.indices) {
+            if (text[at + k] != marker[k]) return false
+        }
+        return true
+    }
+
+    private fun indexOf(text: CharSequence, marker: String, from: Int, end: Int): Int {
+        var i = from
+        while (i + marker.length <= end) {
+            if (startsWith(text, marker, i, end)) return i
+            i++
+        }
+        return -1
+    }
+}
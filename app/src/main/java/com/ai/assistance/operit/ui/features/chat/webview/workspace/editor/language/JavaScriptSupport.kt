@@ -49,6 +49,8 @@ class JavaScriptSupport : BaseLanguageSupport() {
     override fun getBuiltInFunctions(): Set<String> = BUILT_IN_FUNCTIONS
 
     override fun getBuiltInVariables(): Set<String> = BUILT_IN_VARIABLES
+
+    override fun getMultiLineStringDelimiters(): List<String> = listOf("`")
     
     override fun getFileExtensions(): List<String> = FILE_EXTENSIONS
 } 
\ No newline at end of file
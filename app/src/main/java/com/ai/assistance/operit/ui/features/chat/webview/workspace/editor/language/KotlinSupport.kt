@@ -45,6 +45,8 @@ class KotlinSupport : BaseLanguageSupport() {
     override fun getBuiltInTypes(): Set<String> = BUILT_IN_TYPES
     
     override fun getBuiltInFunctions(): Set<String> = BUILT_IN_FUNCTIONS
+
+    override fun getMultiLineStringDelimiters(): List<String> = listOf("\"\"\"")
     
     override fun getFileExtensions(): List<String> = FILE_EXTENSIONS
 } 
\ No newline at end of file
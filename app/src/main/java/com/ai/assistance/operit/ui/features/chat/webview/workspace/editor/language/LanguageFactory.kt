@@ -4,24 +4,31 @@ package com.ai.assistance.operit.ui.features.chat.webview.workspace.editor.langu
  * 语言工厂类，用于初始化和获取所有语言支持
  */
 object LanguageFactory {
-    /**
-     * 初始化所有语言支持
-     */
-    fun init() {
+    // 首次使用编辑器时才初始化，不占用应用启动时间
+    private val initialized by lazy {
         // 触发所有语言支持类的静态初始化
         JavaScriptSupport
         KotlinSupport
         HtmlSupport
         // 未来添加更多语言支持时，在这里添加
-        
+
         // 初始化语言注册表
         LanguageSupportRegistry.init()
+        true
+    }
+
+    /**
+     * 初始化所有语言支持（可重复调用）
+     */
+    fun init() {
+        initialized
     }
     
     /**
      * 根据文件名获取语言支持
      */
     fun getLanguageSupportForFile(fileName: String): LanguageSupport? {
+        init()
         return LanguageSupportRegistry.getLanguageSupportForFile(fileName)
     }
     
@@ -29,6 +36,7 @@ object LanguageFactory {
      * 根据语言名称获取语言支持
      */
     fun getLanguageSupport(language: String): LanguageSupport? {
+        init()
         return LanguageSupportRegistry.getLanguageSupport(language)
     }
     
@@ -36,6 +44,7 @@ object LanguageFactory {
      * 获取所有支持的语言
      */
     fun getSupportedLanguages(): Set<String> {
+        init()
         return LanguageSupportRegistry.getSupportedLanguages()
     }
 } 
\ No newline at end of file
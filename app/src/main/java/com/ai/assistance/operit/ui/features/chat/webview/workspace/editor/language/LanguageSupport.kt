@@ -52,6 +52,11 @@ interface LanguageSupport {
      * 获取语言的字符串转义字符
      */
     fun getStringEscapeChar(): Char
+
+    /**
+     * 获取可以跨行的字符串分隔符（起止相同），如 JavaScript 的模板字符串
+     */
+    fun getMultiLineStringDelimiters(): List<String> = emptyList()
     
     /**
      * 执行语法检查
@@ -11,7 +11,11 @@ object GitIgnoreFilter {
     private const val TAG = "GitIgnoreFilter"
     
     // 默认需要排除的目录（即使 .gitignore 中没有）
-    private val DEFAULT_EXCLUDES = setOf(".backup", ".operit")
+    internal val DEFAULT_EXCLUDES = setOf(".backup", ".operit")
+
+    // 最近一次编译的规则列表与结果
+    @Volatile
+    private var lastCompiled: Pair<List<String>, GitIgnoreRuleSet>? = null
     
     /**
      * 从工作区目录加载 .gitignore 规则
@@ -41,7 +45,9 @@ object GitIgnoreFilter {
     }
     
     /**
-     * 检查文件或目录是否应该被忽略
+     * 检查文件或目录是否应该被忽略（只使用根目录的规则）。
+     * 规则按列表实例缓存编译结果，对同一份规则的反复调用不会重复解析；
+     * 需要遍历整个工作区时请使用 [WorkspaceWalker]，它同时处理子目录中的 .gitignore。
      * @param file 要检查的文件或目录
      * @param workspaceDir 工作区根目录
      * @param rules gitignore 规则列表
@@ -53,100 +59,15 @@ object GitIgnoreFilter {
         } catch (e: Exception) {
             return false
         }
-        
-        val fileName = file.name
-        
-        for (rule in rules) {
-            if (matchesRule(relativePath, fileName, file.isDirectory, rule)) {
-                return true
-            }
-        }
-        
-        return false
-    }
-    
-    /**
-     * 匹配单个 gitignore 规则
-     */
-    private fun matchesRule(relativePath: String, fileName: String, isDirectory: Boolean, rule: String): Boolean {
-        var pattern = rule.trim()
-        if (pattern.isEmpty()) return false
-        
-        // 处理否定规则（以 ! 开头）
-        if (pattern.startsWith("!")) {
-            return false // 暂不支持否定规则
-        }
-        
-        // 处理目录规则（以 / 结尾）
-        val dirOnly = pattern.endsWith("/")
-        if (dirOnly) {
-            if (!isDirectory) return false
-            pattern = pattern.removeSuffix("/")
-        }
-        
-        // 处理根目录规则（以 / 开头）
-        val rootOnly = pattern.startsWith("/")
-        if (rootOnly) {
-            pattern = pattern.removePrefix("/")
-        }
-        
-        // 简单模式匹配
-        return when {
-            // 完整路径匹配
-            rootOnly -> matchPattern(relativePath, pattern)
-            
-            // 文件名匹配
-            pattern.contains("/") -> matchPattern(relativePath, pattern) || relativePath.endsWith("/$pattern")
-            
-            // 任何位置的文件名匹配
-            else -> {
-                fileName == pattern || 
-                matchPattern(fileName, pattern) ||
-                relativePath.split("/").any { matchPattern(it, pattern) }
-            }
-        }
+        if (relativePath.isEmpty()) return false
+        if (relativePath.split('/').any { it in DEFAULT_EXCLUDES }) return true
+        return compiled(rules).isIgnored(relativePath, file.isDirectory)
     }
-    
-    /**
-     * 简单的通配符模式匹配
-     * 支持 * 和 ** 通配符
-     */
-    private fun matchPattern(text: String, pattern: String): Boolean {
-        // 处理 **/ 前缀（匹配任意层级目录）
-        if (pattern.startsWith("**/")) {
-            val subPattern = pattern.removePrefix("**/")
-            return text.endsWith(subPattern) || matchPattern(text, subPattern)
-        }
-        
-        // 处理 /** 后缀（匹配目录下所有内容）
-        if (pattern.endsWith("/**")) {
-            val prefix = pattern.removeSuffix("/**")
-            return text.startsWith(prefix) || text == prefix
-        }
-        
-        // 简单的 * 通配符匹配
-        if (pattern.contains("*")) {
-            return matchWildcard(text, pattern)
-        }
-        
-        // 精确匹配
-        return text == pattern
-    }
-    
-    /**
-     * 通配符匹配（支持 * 和 ?）
-     */
-    private fun matchWildcard(text: String, pattern: String): Boolean {
-        val regex = pattern
-            .replace(".", "\\.")
-            .replace("*", ".*")
-            .replace("?", ".")
-        
-        return try {
-            text.matches(Regex("^$regex$"))
-        } catch (e: Exception) {
-            false
-        }
+
+    private fun compiled(rules: List<String>): GitIgnoreRuleSet {
+        lastCompiled?.let { (source, ruleSet) -> if (source === rules) return ruleSet }
+        val ruleSet = GitIgnoreRuleSet.compile(rules)
+        lastCompiled = rules to ruleSet
+        return ruleSet
     }
 }
-
@@ -0,0 +1,415 @@
+package com.ai.assistance.operit.ui.features.chat.webview.workspace.process
+
+import com.ai.assistance.operit.util.AppLogger
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 单个忽略文件中的规则，解析后一次性编译。
+ *
+ * 语义与 git 一致（gitignore(5)）：
+ * - 同一文件内最后一条匹配的规则生效，`!` 开头的规则重新包含；
+ * - 以 `/` 结尾的规则只匹配目录；
+ * - 开头或中间含 `/` 的规则相对于忽略文件所在目录锚定，否则匹配任意层级的文件名；
+ * - `*`、`?`、`[...]` 不匹配 `/`；`**` 只有作为完整的路径段时才跨目录匹配，其余情况等同于 `*`。
+ *
+ * 不含通配符的文件名规则和 `*.ext` 规则走哈希表，其余规则编译为锚定的正则。
+ */
+class GitIgnoreRuleSet private constructor(private val rules: List<Rule>) {
+
+    private class Rule(
+        val index: Int,
+        val negated: Boolean,
+        val dirOnly: Boolean,
+        // 锚定规则匹配相对路径，否则只匹配文件名
+        val anchored: Boolean,
+        val regex: Regex?
+    )
+
+    // 文件名 -> 规则序号（升序）
+    private val literalNames = HashMap<String, MutableList<Rule>>()
+
+    // "*.ext" 中 "*" 之后的部分 -> 规则序号（升序）
+    private val suffixes = HashMap<String, MutableList<Rule>>()
+
+    // 需要正则匹配的规则，按序号降序，便于从后往前找最后一条匹配
+    private val patterns: List<Rule>
+
+    init {
+        patterns = rules.filter { it.regex != null }.asReversed()
+    }
+
+    val isEmpty: Boolean get() = rules.isEmpty()
+
+    /**
+     * 判断一个路径在本规则集内的结果。
+     * @param relativePath 相对于忽略文件所在目录的路径，以 `/` 分隔
+     * @return true 忽略，false 明确重新包含，null 没有规则匹配
+     */
+    fun match(relativePath: String, isDirectory: Boolean): Boolean? {
+        if (rules.isEmpty()) return null
+        val name = relativePath.substring(relativePath.lastIndexOf('/') + 1)
+
+        var best: Rule? = null
+        literalNames[name]?.let { best = latest(it, isDirectory, best) }
+        if (suffixes.isNotEmpty()) {
+            var dot = name.indexOf('.')
+            while (dot >= 0) {
+                suffixes[name.substring(dot)]?.let { best = latest(it, isDirectory, best) }
+                dot = name.indexOf('.', dot + 1)
+            }
+        }
+
+        val floor = best?.index ?: -1
+        for (rule in patterns) {
+            if (rule.index <= floor) break
+            if (rule.dirOnly && !isDirectory) continue
+            val target = if (rule.anchored) relativePath else name
+            if (rule.regex!!.matches(target)) {
+                best = rule
+                break
+            }
+        }
+        return best?.let { !it.negated }
+    }
+
+    /**
+     * 单层规则集下的完整判断：任一上级目录被忽略时，其中的内容也被忽略（git 不会进入被忽略的目录）。
+     */
+    fun isIgnored(relativePath: String, isDirectory: Boolean): Boolean {
+        var slash = relativePath.indexOf('/')
+        while (slash > 0) {
+            if (match(relativePath.substring(0, slash), true) == true) return true
+            slash = relativePath.indexOf('/', slash + 1)
+        }
+        return match(relativePath, isDirectory) == true
+    }
+
+    private fun latest(candidates: List<Rule>, isDirectory: Boolean, current: Rule?): Rule? {
+        var best = current
+        for (i in candidates.indices.reversed()) {
+            val rule = candidates[i]
+            if (best != null && rule.index <= best.index) break
+            if (rule.dirOnly && !isDirectory) continue
+            best = rule
+            break
+        }
+        return best
+    }
+
+    companion object {
+        private const val TAG = "GitIgnoreRuleSet"
+
+        val EMPTY = GitIgnoreRuleSet(emptyList())
+
+        /** 编译忽略文件中的行；空行、注释和无法解析的行被跳过 */
+        fun compile(lines: List<String>): GitIgnoreRuleSet {
+            val rules = ArrayList<Rule>()
+            val literals = ArrayList<Pair<String, Rule>>()
+            val suffixRules = ArrayList<Pair<String, Rule>>()
+            for (line in lines) {
+                val parsed = parse(line, rules.size) ?: continue
+                val (rule, literal, suffix) = parsed
+                rules.add(rule)
+                when {
+                    literal != null -> literals.add(literal to rule)
+                    suffix != null -> suffixRules.add(suffix to rule)
+                }
+            }
+            return GitIgnoreRuleSet(rules).apply {
+                literals.forEach { (name, rule) -> literalNames.getOrPut(name) { ArrayList(1) }.add(rule) }
+                suffixRules.forEach { (suffix, rule) -> suffixes.getOrPut(suffix) { ArrayList(1) }.add(rule) }
+            }
+        }
+
+        /** 读取并编译一个忽略文件，不存在或读取失败时返回 [EMPTY] */
+        fun load(file: File): GitIgnoreRuleSet {
+            if (!file.isFile) return EMPTY
+            return try {
+                compile(file.readLines())
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "读取忽略文件失败: ${file.absolutePath}", e)
+                EMPTY
+            }
+        }
+
+        /** 解析一行规则，返回 (规则, 字面文件名, 后缀) */
+        private fun parse(raw: String, index: Int): Triple<Rule, String?, String?>? {
+            var line = raw.removeSuffix("\r")
+            if (line.isEmpty() || line.startsWith("#")) return null
+
+            // 去掉未转义的行尾空格
+            var end = line.length
+            while (end > 0 && line[end - 1] == ' ' && !isEscaped(line, end - 1)) end--
+            line = line.substring(0, end)
+            if (line.isEmpty()) return null
+
+            val negated = line.startsWith("!")
+            if (negated) line = line.substring(1)
+            if (line.startsWith("\\!") || line.startsWith("\\#")) line = line.substring(1)
+
+            val dirOnly = line.endsWith("/") && !isEscaped(line, line.length - 1)
+            if (dirOnly) line = line.trimEnd('/')
+            if (line.isEmpty()) return null
+
+            val anchored = line.contains('/')
+            if (line.startsWith("/")) line = line.substring(1)
+            if (line.isEmpty()) return null
+
+            if (!anchored && !hasWildcard(line)) {
+                val rule = Rule(index, negated, dirOnly, anchored = false, regex = null)
+                return Triple(rule, unescape(line), null)
+            }
+            // 只有以 '.' 开头的后缀走哈希表，match() 只在文件名的 '.' 处查找；"*~"、"*_test.go" 等走正则
+            if (!anchored && line.length > 1 && line[0] == '*' && line[1] != '*' && !hasWildcard(line.substring(1))) {
+                val suffix = unescape(line.substring(1))
+                if (suffix.startsWith(".")) {
+                    val rule = Rule(index, negated, dirOnly, anchored = false, regex = null)
+                    return Triple(rule, null, suffix)
+                }
+            }
+
+            val regex = try {
+                Regex(toRegex(line))
+            } catch (e: Exception) {
+                AppLogger.w(TAG, "无法解析的忽略规则: $raw")
+                return null
+            }
+            return Triple(Rule(index, negated, dirOnly, anchored, regex), null, null)
+        }
+
+        private fun isEscaped(text: String, position: Int): Boolean {
+            var backslashes = 0
+            var i = position - 1
+            while (i >= 0 && text[i] == '\\') {
+                backslashes++
+                i--
+            }
+            return backslashes % 2 == 1
+        }
+
+        private fun hasWildcard(pattern: String): Boolean {
+            var i = 0
+            while (i < pattern.length) {
+                when (pattern[i]) {
+                    '\\' -> i++
+                    '*', '?', '[' -> return true
+                }
+                i++
+            }
+            return false
+        }
+
+        private fun unescape(pattern: String): String {
+            if (!pattern.contains('\\')) return pattern
+            val sb = StringBuilder(pattern.length)
+            var i = 0
+            while (i < pattern.length) {
+                val c = pattern[i]
+                if (c == '\\' && i + 1 < pattern.length) {
+                    sb.append(pattern[i + 1])
+                    i += 2
+                } else {
+                    sb.append(c)
+                    i++
+                }
+            }
+            return sb.toString()
+        }
+
+        /** 把 glob 转换为锚定的正则，`/` 只能由字面 `/` 或 `**` 匹配 */
+        private fun toRegex(pattern: String): String {
+            val sb = StringBuilder("^")
+            var i = 0
+            val n = pattern.length
+            while (i < n) {
+                val c = pattern[i]
+                val atSegmentStart = i == 0 || pattern[i - 1] == '/'
+                when {
+                    c == '*' && i + 1 < n && pattern[i + 1] == '*' && atSegmentStart &&
+                        (i + 2 == n || pattern[i + 2] == '/') -> {
+                        if (i + 2 == n) {
+                            // 结尾的 "/**"：目录下的全部内容；单独的 "**" 匹配一切
+                            sb.append(".*")
+                            i += 2
+                        } else {
+                            // "**/"：零或多层目录
+                            sb.append("(?:.*/)?")
+                            i += 3
+                        }
+                    }
+                    c == '*' -> {
+                        while (i < n && pattern[i] == '*') i++
+                        sb.append("[^/]*")
+                    }
+                    c == '?' -> {
+                        sb.append("[^/]")
+                        i++
+                    }
+                    c == '[' -> {
+                        val close = findClassEnd(pattern, i)
+                        if (close < 0) {
+                            sb.append("\\[")
+                            i++
+                        } else {
+                            sb.append(toCharClass(pattern.substring(i + 1, close)))
+                            i = close + 1
+                        }
+                    }
+                    c == '\\' && i + 1 < n -> {
+                        sb.append(Regex.escape(pattern[i + 1].toString()))
+                        i += 2
+                    }
+                    else -> {
+                        sb.append(Regex.escape(c.toString()))
+                        i++
+                    }
+                }
+            }
+            return sb.append("$").toString()
+        }
+
+        private fun findClassEnd(pattern: String, open: Int): Int {
+            var i = open + 1
+            if (i < pattern.length && (pattern[i] == '!' || pattern[i] == '^')) i++
+            // 紧跟在开头的 ']' 是字面字符
+            if (i < pattern.length && pattern[i] == ']') i++
+            while (i < pattern.length) {
+                when (pattern[i]) {
+                    '\\' -> i++
+                    ']' -> return i
+                }
+                i++
+            }
+            return -1
+        }
+
+        private fun toCharClass(body: String): String {
+            val sb = StringBuilder("[")
+            var i = 0
+            if (body.isNotEmpty() && (body[0] == '!' || body[0] == '^')) {
+                sb.append('^')
+                i++
+            }
+            // 字符类不匹配路径分隔符
+            if (sb.length == 2) sb.append('/')
+            while (i < body.length) {
+                var c = body[i]
+                if (c == '\\' && i + 1 < body.length) {
+                    i++
+                    c = body[i]
+                }
+                if (c == '-' && sb.length > 1 && i + 1 < body.length) {
+                    sb.append('-')
+                } else {
+                    if (c in "[]\\^-&") sb.append('\\')
+                    sb.append(c)
+                }
+                i++
+            }
+            sb.append(']')
+            // 非取反的字符类如果包含 '/'，按 git 的行为它永远匹配不到路径分隔符
+            return if (sb[1] == '^') sb.toString() else "(?!/)" + sb.toString()
+        }
+    }
+}
+
+/**
+ * 工作区的忽略规则：默认排除项、.git/info/exclude、根目录和各级子目录的 .gitignore。
+ *
+ * 子目录的 .gitignore 在第一次访问该目录时加载并缓存。判断一个路径时从它所在的目录开始向上查找，
+ * 更深层的忽略文件优先，第一个有规则匹配的文件给出结果；被忽略目录中的内容一律忽略。
+ * 可以在多个线程中同时使用。
+ */
+class GitIgnoreMatcher(val root: File) {
+
+    private val rootRules: GitIgnoreRuleSet
+    private val nested = ConcurrentHashMap<String, GitIgnoreRuleSet>()
+    private val ignoredDirs = ConcurrentHashMap<String, Boolean>()
+
+    init {
+        val lines = ArrayList<String>()
+        lines.addAll(File(root, ".git/info/exclude").takeIf { it.isFile }?.let { readLinesSafely(it) } ?: emptyList())
+        lines.addAll(readLinesSafely(File(root, GITIGNORE)))
+        rootRules = GitIgnoreRuleSet.compile(lines)
+        nested[""] = rootRules
+    }
+
+    /** 判断工作区中的文件或目录是否被忽略 */
+    fun isIgnored(file: File): Boolean {
+        val relativePath = relativePathOf(file) ?: return false
+        if (relativePath.isEmpty()) return false
+        return isIgnored(relativePath, file.isDirectory)
+    }
+
+    /**
+     * @param relativePath 相对于工作区根目录、以 `/` 分隔的路径
+     */
+    fun isIgnored(relativePath: String, isDirectory: Boolean): Boolean {
+        val parent = relativePath.substringBeforeLast('/', "")
+        if (parent.isNotEmpty() && isDirectoryIgnored(parent)) return true
+        return decide(parent, relativePath, isDirectory)
+    }
+
+    /**
+     * 在父目录已知未被忽略时判断其子项，供遍历器在进入目录前剪枝使用。
+     * @param parent 父目录的相对路径，根目录为 ""
+     */
+    fun isChildIgnored(parent: String, name: String, isDirectory: Boolean): Boolean {
+        val relativePath = if (parent.isEmpty()) name else "$parent/$name"
+        return decide(parent, relativePath, isDirectory)
+    }
+
+    internal fun relativePathOf(file: File): String? {
+        return try {
+            file.relativeTo(root).path.replace(File.separatorChar, '/')
+        } catch (e: IllegalArgumentException) {
+            null
+        }
+    }
+
+    private fun isDirectoryIgnored(relativeDir: String): Boolean {
+        ignoredDirs[relativeDir]?.let { return it }
+        val parent = relativeDir.substringBeforeLast('/', "")
+        val ignored = (parent.isNotEmpty() && isDirectoryIgnored(parent)) || decide(parent, relativeDir, true)
+        ignoredDirs[relativeDir] = ignored
+        return ignored
+    }
+
+    private fun decide(parent: String, relativePath: String, isDirectory: Boolean): Boolean {
+        val name = relativePath.substring(relativePath.lastIndexOf('/') + 1)
+        if (name in GitIgnoreFilter.DEFAULT_EXCLUDES) return true
+
+        var dir = parent
+        while (true) {
+            val rules = rulesFor(dir)
+            if (!rules.isEmpty) {
+                val local = if (dir.isEmpty()) relativePath else relativePath.substring(dir.length + 1)
+                rules.match(local, isDirectory)?.let { return it }
+            }
+            if (dir.isEmpty()) return false
+            dir = dir.substringBeforeLast('/', "")
+        }
+    }
+
+    private fun rulesFor(relativeDir: String): GitIgnoreRuleSet {
+        return nested.getOrPut(relativeDir) {
+            GitIgnoreRuleSet.load(File(root, "$relativeDir/$GITIGNORE"))
+        }
+    }
+
+    private fun readLinesSafely(file: File): List<String> {
+        if (!file.isFile) return emptyList()
+        return try {
+            file.readLines()
+        } catch (e: Exception) {
+            AppLogger.e(TAG, "读取忽略文件失败: ${file.absolutePath}", e)
+            emptyList()
+        }
+    }
+
+    companion object {
+        private const val TAG = "GitIgnoreMatcher"
+        const val GITIGNORE = ".gitignore"
+    }
+}
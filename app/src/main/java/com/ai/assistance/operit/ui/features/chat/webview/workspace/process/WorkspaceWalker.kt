@@ -0,0 +1,61 @@
+package com.ai.assistance.operit.ui.features.chat.webview.workspace.process
+
+import java.io.File
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveAction
+
+/**
+ * 工作区文件遍历器。
+ * 每个目录是一个 fork/join 任务，子目录并行遍历；被忽略的目录在进入前剪掉，
+ * node_modules、build 等大目录不会被列出。
+ */
+object WorkspaceWalker {
+
+    /**
+     * 列出工作区中未被忽略的文件，按相对路径排序
+     * @param filter 额外的文件过滤条件，在遍历线程中执行
+     */
+    fun walkFiles(
+        workspaceDir: File,
+        matcher: GitIgnoreMatcher = GitIgnoreMatcher(workspaceDir),
+        filter: (File) -> Boolean = { true }
+    ): List<File> {
+        if (!workspaceDir.isDirectory) return emptyList()
+        val found = ConcurrentLinkedQueue<Pair<String, File>>()
+        val parallelism = Runtime.getRuntime().availableProcessors().coerceIn(2, 8)
+        val pool = ForkJoinPool(parallelism)
+        try {
+            pool.invoke(DirectoryTask(workspaceDir, "", matcher, filter, found))
+        } finally {
+            pool.shutdown()
+        }
+        return found.sortedBy { it.first }.map { it.second }
+    }
+
+    private class DirectoryTask(
+        private val dir: File,
+        private val relativeDir: String,
+        private val matcher: GitIgnoreMatcher,
+        private val filter: (File) -> Boolean,
+        private val found: ConcurrentLinkedQueue<Pair<String, File>>
+    ) : RecursiveAction() {
+
+        override fun compute() {
+            val children = dir.listFiles() ?: return
+            val subtasks = ArrayList<DirectoryTask>()
+            for (child in children) {
+                val name = child.name
+                val relativePath = if (relativeDir.isEmpty()) name else "$relativeDir/$name"
+                if (child.isDirectory) {
+                    if (!matcher.isChildIgnored(relativeDir, name, true)) {
+                        subtasks.add(DirectoryTask(child, relativePath, matcher, filter, found))
+                    }
+                } else if (!matcher.isChildIgnored(relativeDir, name, false) && filter(child)) {
+                    found.add(relativePath to child)
+                }
+            }
+            if (subtasks.isNotEmpty()) invokeAll(subtasks)
+        }
+    }
+}
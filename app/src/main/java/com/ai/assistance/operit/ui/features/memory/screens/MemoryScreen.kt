@@ -69,10 +69,9 @@ import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
-import java.io.BufferedReader
 import java.io.File
 import java.io.FileOutputStream
-import java.io.InputStreamReader
+import java.io.IOException
 import android.provider.OpenableColumns
 import com.ai.assistance.operit.util.AppLogger
 import androidx.compose.foundation.layout.fillMaxHeight
@@ -169,6 +168,7 @@ fun MemoryScreen() {
                     var tempFile: File? = null
                     try {
                         // More robust file name extraction
+                        var fileSize: Long? = null
                         val (fileName, mimeType) = withContext(Dispatchers.IO) {
                             // Execute ContentResolver operations on IO thread
                             var extractedFileName = "Untitled"
@@ -180,6 +180,10 @@ fun MemoryScreen() {
                                         if (displayNameIndex != -1) {
                                             extractedFileName = cursor.getString(displayNameIndex)
                                         }
+                                        val sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE)
+                                        if (sizeIndex != -1 && !cursor.isNull(sizeIndex)) {
+                                            fileSize = cursor.getLong(sizeIndex)
+                                        }
                                     }
                                 }
 
@@ -188,12 +192,16 @@ fun MemoryScreen() {
                         }
 
                         if (mimeType != null && mimeType.startsWith("text")) {
-                            val content = withContext(Dispatchers.IO) {
-                                val inputStream = context.contentResolver.openInputStream(fileUri)
-                                val reader = BufferedReader(InputStreamReader(inputStream))
-                                reader.readText()
-                            }
-                            viewModel.importDocument(fileName, fileUri.toString(), content)
+                            // 文本文件直接流式导入，不再整体读入内存
+                            viewModel.importDocument(
+                                fileName,
+                                fileUri.toString(),
+                                {
+                                    context.contentResolver.openInputStream(fileUri)
+                                        ?: throw IOException("Cannot open $fileUri")
+                                },
+                                fileSize
+                            )
                         } else {
                             // For binary files, use the tool
                             tempFile = File(context.cacheDir, fileName)
@@ -335,7 +343,15 @@ fun MemoryScreen() {
                 ) {
                     // 图谱区域（底层，占满整个空间）
                     if (uiState.isLoading) {
-                        CircularProgressIndicator(modifier = Modifier.align(Alignment.Center))
+                        val importProgress = uiState.documentImportProgress
+                        if (importProgress != null) {
+                            CircularProgressIndicator(
+                                progress = { importProgress },
+                                modifier = Modifier.align(Alignment.Center)
+                            )
+                        } else {
+                            CircularProgressIndicator(modifier = Modifier.align(Alignment.Center))
+                        }
                     } else {
                         GraphVisualizer(
                             graph = uiState.graph,
@@ -16,6 +16,9 @@ import com.ai.assistance.operit.core.tools.AIToolHandler
 import com.ai.assistance.operit.data.model.AITool
 import com.ai.assistance.operit.data.model.ToolParameter
 import com.google.gson.Gson
+import java.io.InputStream
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
@@ -29,6 +32,7 @@ data class MemoryUiState(
         val selectedMemory: Memory? = null,
         val selectedNodeId: String? = null,
         val isLoading: Boolean = false,
+        val documentImportProgress: Float? = null, // 文档导入进度（0..1），未在导入或总大小未知时为null
         val searchQuery: String = "",
         val error: String? = null,
         val editingMemory: Memory? = null, // 新增：用于编辑/新建
@@ -364,25 +368,49 @@ class MemoryViewModel(private val repository: MemoryRepository, private val cont
         }
     }
 
+    private var documentImportJob: Job? = null
+
     /** 从外部文件导入记忆 */
     fun importDocument(title: String, filePath: String, fileContent: String) {
-        viewModelScope.launch {
-            _uiState.update { it.copy(isLoading = true) }
+        importDocument(title, filePath, { fileContent.byteInputStream() }, null)
+    }
+
+    /**
+     * 以流的方式导入文档，不需要先把整个文件读入内存。
+     * @param openStream 打开文档的 UTF-8 文本流
+     * @param totalBytes 文件大小，用于显示进度；未知时传 null
+     */
+    fun importDocument(title: String, filePath: String, openStream: () -> InputStream, totalBytes: Long?) {
+        documentImportJob?.cancel()
+        documentImportJob = viewModelScope.launch {
+            _uiState.update { it.copy(isLoading = true, documentImportProgress = null) }
             try {
                 val currentFolder = _uiState.value.selectedFolderPath
-                repository.createMemoryFromDocument(title, filePath, fileContent, currentFolder)
+                repository.ingestDocument(title, filePath, openStream, totalBytes, currentFolder)
+                    .collect { progress ->
+                        _uiState.update { it.copy(documentImportProgress = progress.fraction) }
+                    }
                 // 刷新图谱和文件夹列表
                 val updatedGraph = refreshGraph()
                 loadFolderPaths()
-                _uiState.update { it.copy(graph = updatedGraph, isLoading = false) }
+                _uiState.update { it.copy(graph = updatedGraph, isLoading = false, documentImportProgress = null) }
+            } catch (e: CancellationException) {
+                _uiState.update { it.copy(isLoading = false, documentImportProgress = null) }
+                throw e
             } catch (e: Exception) {
                 _uiState.update {
-                    it.copy(isLoading = false, error = "Failed to import document: ${e.message}")
+                    it.copy(isLoading = false, documentImportProgress = null, error = "Failed to import document: ${e.message}")
                 }
             }
         }
     }
 
+    /** 取消正在进行的文档导入，已写入的部分会被回滚 */
+    fun cancelDocumentImport() {
+        documentImportJob?.cancel()
+        documentImportJob = null
+    }
+
     /** 新建记忆 */
     fun createMemory(title: String, content: String, contentType: String = "text/plain") {
         viewModelScope.launch {
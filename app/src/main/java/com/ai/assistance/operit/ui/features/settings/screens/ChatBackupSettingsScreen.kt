@@ -25,6 +25,7 @@ import androidx.compose.foundation.shape.RoundedCornerShape
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.filled.CloudDownload
 import androidx.compose.material.icons.filled.CloudUpload
+import androidx.compose.material.icons.filled.ContentCopy
 import androidx.compose.material.icons.filled.Delete
 import androidx.compose.material.icons.filled.FileOpen
 import androidx.compose.material.icons.filled.History
@@ -67,12 +68,15 @@ import androidx.compose.ui.text.font.FontWeight
 import androidx.compose.ui.unit.dp
 import com.ai.assistance.operit.R
 import com.ai.assistance.operit.data.model.ImportStrategy
+import com.ai.assistance.operit.data.model.MemoryDeduplicationReport
 import com.ai.assistance.operit.data.model.PreferenceProfile
 import com.ai.assistance.operit.data.backup.OperitBackupDirs
 import com.ai.assistance.operit.data.backup.RoomDatabaseBackupManager
 import com.ai.assistance.operit.data.backup.RoomDatabaseBackupPreferences
 import com.ai.assistance.operit.data.backup.RoomDatabaseBackupScheduler
 import com.ai.assistance.operit.data.backup.RoomDatabaseRestoreManager
+import com.ai.assistance.operit.data.preferences.MemoryStoragePreferences
+import com.ai.assistance.operit.util.AppLogger
 import com.ai.assistance.operit.data.preferences.UserPreferencesManager
 import com.ai.assistance.operit.data.preferences.ModelConfigManager
 import com.ai.assistance.operit.data.repository.ChatHistoryManager
@@ -121,6 +125,10 @@ enum class MemoryOperation {
     EXPORTED,
     IMPORTING,
     IMPORTED,
+    DEDUPLICATING,
+    DEDUPLICATED,
+    CONVERTING,
+    CONVERTED,
     FAILED
 }
 
@@ -161,6 +169,10 @@ fun ChatBackupSettingsScreen() {
     var roomDbRestoreOperationMessage by remember { mutableStateOf("") }
     var showDeleteConfirmDialog by remember { mutableStateOf(false) }
     var showMemoryImportStrategyDialog by remember { mutableStateOf(false) }
+    var pendingDeduplication by remember { mutableStateOf<MemoryDeduplicationReport?>(null) }
+    val memoryStoragePreferences = remember { MemoryStoragePreferences(context) }
+    var isEmbeddingQuantized by remember { mutableStateOf(memoryStoragePreferences.isQuantizationEnabled()) }
+    var showQuantizeConfirmDialog by remember { mutableStateOf(false) }
     var pendingMemoryImportUri by remember { mutableStateOf<Uri?>(null) }
     var pendingRoomDbRestoreUri by remember { mutableStateOf<Uri?>(null) }
     var pendingRoomDbRestoreFile by remember { mutableStateOf<File?>(null) }
@@ -736,6 +748,40 @@ fun ChatBackupSettingsScreen() {
                         type = "application/json"
                     }
                     memoryFilePickerLauncher.launch(intent)
+                },
+                isEmbeddingQuantized = isEmbeddingQuantized,
+                onEmbeddingQuantizedChange = { enabled ->
+                    if (enabled) {
+                        showQuantizeConfirmDialog = true
+                    } else {
+                        scope.launch {
+                            memoryOperationState = MemoryOperation.CONVERTING
+                            memoryOperationMessage = convertEmbeddingStorage(
+                                context, memoryStoragePreferences, profileIds, quantize = false
+                            )
+                            isEmbeddingQuantized = false
+                            memoryOperationState = MemoryOperation.CONVERTED
+                        }
+                    }
+                },
+                onDeduplicate = {
+                    val repo = memoryRepo ?: return@MemoryManagementCard
+                    scope.launch {
+                        memoryOperationState = MemoryOperation.DEDUPLICATING
+                        try {
+                            val report = repo.deduplicateMemories(dryRun = true)
+                            if (report.removedTitles.isEmpty()) {
+                                memoryOperationState = MemoryOperation.DEDUPLICATED
+                                memoryOperationMessage = "已检查 ${report.scanned} 条记忆，未发现重复"
+                            } else {
+                                memoryOperationState = MemoryOperation.IDLE
+                                pendingDeduplication = report
+                            }
+                        } catch (e: Exception) {
+                            memoryOperationState = MemoryOperation.FAILED
+                            memoryOperationMessage = "查重失败：${e.localizedMessage ?: e.toString()}"
+                        }
+                    }
                 }
             )
         }
@@ -802,6 +848,63 @@ fun ChatBackupSettingsScreen() {
         )
     }
 
+    if (showQuantizeConfirmDialog) {
+        AlertDialog(
+            onDismissRequest = { showQuantizeConfirmDialog = false },
+            title = { Text("压缩向量存储") },
+            text = {
+                Text(
+                    "将所有配置中已有的记忆向量改为 int8 存储，可节省约四分之三的空间，检索精度略有下降。" +
+                        "转换是有损的，之后关闭也无法恢复原始精度。"
+                )
+            },
+            confirmButton = {
+                TextButton(
+                    onClick = {
+                        showQuantizeConfirmDialog = false
+                        scope.launch {
+                            memoryOperationState = MemoryOperation.CONVERTING
+                            memoryOperationMessage = convertEmbeddingStorage(
+                                context, memoryStoragePreferences, profileIds, quantize = true
+                            )
+                            isEmbeddingQuantized = true
+                            memoryOperationState = MemoryOperation.CONVERTED
+                        }
+                    }
+                ) { Text("转换") }
+            },
+            dismissButton = {
+                TextButton(onClick = { showQuantizeConfirmDialog = false }) { Text("取消") }
+            }
+        )
+    }
+
+    pendingDeduplication?.let { preview ->
+        MemoryDeduplicationDialog(
+            report = preview,
+            onDismiss = { pendingDeduplication = null },
+            onConfirm = {
+                pendingDeduplication = null
+                val repo = memoryRepo ?: return@MemoryDeduplicationDialog
+                scope.launch {
+                    memoryOperationState = MemoryOperation.DEDUPLICATING
+                    try {
+                        val report = repo.deduplicateMemories()
+                        memoryOperationState = MemoryOperation.DEDUPLICATED
+                        memoryOperationMessage =
+                            "合并了 ${report.clusters} 组重复记忆，删除 ${report.removedTitles.size} 条"
+                        val memories = repo.searchMemories("")
+                        totalMemoryCount = memories.count { !it.isDocumentNode }
+                        totalMemoryLinkCount = repo.getMemoryGraph().edges.size
+                    } catch (e: Exception) {
+                        memoryOperationState = MemoryOperation.FAILED
+                        memoryOperationMessage = "去重失败：${e.localizedMessage ?: e.toString()}"
+                    }
+                }
+            }
+        )
+    }
+
     if (showMemoryImportStrategyDialog) {
         MemoryImportStrategyDialog(
             onDismiss = {
@@ -1295,10 +1398,10 @@ private fun RoomDbBackupListItem(
     val parsed = remember(file.name) {
         val name = file.name
         when {
-            name.startsWith("room_db_backup_") && name.endsWith(".zip") -> {
+            name.startsWith("room_db_backup_") && (name.endsWith(".zip") || name.endsWith(".dbsnap")) -> {
                 Pair(
                     R.string.backup_room_db_backup_type_auto,
-                    name.removePrefix("room_db_backup_").removeSuffix(".zip")
+                    name.removePrefix("room_db_backup_").removeSuffix(".zip").removeSuffix(".dbsnap")
                 )
             }
             name.startsWith("room_db_manual_backup_") && name.endsWith(".zip") -> {
@@ -1566,7 +1669,10 @@ private fun MemoryManagementCard(
     operationState: MemoryOperation,
     operationMessage: String,
     onExport: () -> Unit,
-    onImport: () -> Unit
+    onImport: () -> Unit,
+    isEmbeddingQuantized: Boolean,
+    onEmbeddingQuantizedChange: (Boolean) -> Unit,
+    onDeduplicate: () -> Unit
 ) {
     ElevatedCard(modifier = Modifier.fillMaxWidth()) {
         Column(
@@ -1602,6 +1708,36 @@ private fun MemoryManagementCard(
                     onClick = onImport,
                     modifier = Modifier.weight(1f, fill = false)
                 )
+                ManagementButton(
+                    text = "去重",
+                    icon = Icons.Default.ContentCopy,
+                    onClick = onDeduplicate,
+                    modifier = Modifier.weight(1f, fill = false)
+                )
+            }
+
+            Row(
+                modifier = Modifier.fillMaxWidth(),
+                verticalAlignment = Alignment.CenterVertically,
+                horizontalArrangement = Arrangement.SpaceBetween
+            ) {
+                Column(modifier = Modifier.weight(1f)) {
+                    Text(
+                        text = "压缩向量存储",
+                        style = MaterialTheme.typography.bodyMedium,
+                        fontWeight = FontWeight.Medium
+                    )
+                    Text(
+                        text = "以 int8 代替 float32 保存记忆向量，节省空间但有损精度",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = MaterialTheme.colorScheme.onSurfaceVariant
+                    )
+                }
+                Switch(
+                    checked = isEmbeddingQuantized,
+                    enabled = operationState != MemoryOperation.CONVERTING,
+                    onCheckedChange = onEmbeddingQuantizedChange
+                )
             }
 
             AnimatedVisibility(visible = operationState != MemoryOperation.IDLE) {
@@ -1609,6 +1745,18 @@ private fun MemoryManagementCard(
                     when (operationState) {
                         MemoryOperation.EXPORTING -> OperationProgressView(message = "正在导出记忆库...")
                         MemoryOperation.IMPORTING -> OperationProgressView(message = "正在导入记忆库...")
+                        MemoryOperation.DEDUPLICATING -> OperationProgressView(message = "正在查找重复记忆...")
+                        MemoryOperation.CONVERTING -> OperationProgressView(message = "正在转换向量存储格式...")
+                        MemoryOperation.CONVERTED -> OperationResultCard(
+                            title = "转换完成",
+                            message = operationMessage,
+                            icon = Icons.Default.Storage
+                        )
+                        MemoryOperation.DEDUPLICATED -> OperationResultCard(
+                            title = "去重完成",
+                            message = operationMessage,
+                            icon = Icons.Default.ContentCopy
+                        )
                         MemoryOperation.EXPORTED -> OperationResultCard(
                             title = "导出成功",
                             message = operationMessage,
@@ -1773,6 +1921,35 @@ private fun DeleteConfirmationDialog(onDismiss: () -> Unit, onConfirm: () -> Uni
     )
 }
 
+@Composable
+private fun MemoryDeduplicationDialog(
+    report: MemoryDeduplicationReport,
+    onDismiss: () -> Unit,
+    onConfirm: () -> Unit
+) {
+    val preview = report.removedTitles.take(8).joinToString("\n") { "- $it" } +
+        if (report.removedTitles.size > 8) "\n..." else ""
+    AlertDialog(
+        onDismissRequest = onDismiss,
+        title = { Text("合并重复记忆") },
+        text = {
+            Text(
+                "发现 ${report.clusters} 组近似重复的记忆，将保留每组中最重要的一条，" +
+                    "其余 ${report.removedTitles.size} 条的链接和标签并入后删除：\n$preview"
+            )
+        },
+        confirmButton = {
+            TextButton(
+                onClick = onConfirm,
+                colors = ButtonDefaults.textButtonColors(contentColor = MaterialTheme.colorScheme.error)
+            ) { Text("合并") }
+        },
+        dismissButton = {
+            TextButton(onClick = onDismiss) { Text("取消") }
+        }
+    )
+}
+
 @Composable
 private fun OperationResultCard(
     title: String,
@@ -1965,6 +2142,29 @@ private fun StrategyOption(
     }
 }
 
+/** 切换向量存储格式，并把每个配置中已有的向量改写为新格式。 */
+private suspend fun convertEmbeddingStorage(
+    context: Context,
+    preferences: MemoryStoragePreferences,
+    profileIds: List<String>,
+    quantize: Boolean
+): String {
+    preferences.setQuantizationEnabled(quantize)
+    var rewritten = 0
+    val failed = ArrayList<String>()
+    for (profileId in profileIds) {
+        try {
+            rewritten += MemoryRepository(context, profileId).migrateEmbeddingStorage()
+        } catch (e: Exception) {
+            AppLogger.e("ChatBackupSettings", "Embedding storage conversion failed for $profileId", e)
+            failed.add(profileId)
+        }
+    }
+    val format = if (quantize) "int8" else "float32"
+    return "已将 $rewritten 条向量改写为 $format 存储" +
+        if (failed.isEmpty()) "" else "\n以下配置转换失败：${failed.joinToString()}"
+}
+
 private suspend fun exportMemories(_context: Context, memoryRepository: MemoryRepository): String? =
     withContext(Dispatchers.IO) {
         try {
@@ -39,6 +39,7 @@ fun AdvancedSettingsSection(
 
     var useApiKeyPool by remember(config.id) { mutableStateOf(config.useMultipleApiKeys) }
     var apiKeyPool by remember(config.id) { mutableStateOf(config.apiKeyPool) }
+    var enableHedgedRequests by remember(config.id) { mutableStateOf(config.enableHedgedRequests) }
 
     var showAddKeyDialog by remember { mutableStateOf(false) }
     var editingKey by remember { mutableStateOf<ApiKeyInfo?>(null) }
@@ -48,7 +49,8 @@ fun AdvancedSettingsSection(
         scope.launch {
             val updatedConfig = config.copy(
                 useMultipleApiKeys = useApiKeyPool,
-                apiKeyPool = apiKeyPool
+                apiKeyPool = apiKeyPool,
+                enableHedgedRequests = enableHedgedRequests
             )
             configManager.saveModelConfig(updatedConfig)
             showNotification(context.getString(R.string.advanced_settings_saved))
@@ -160,6 +162,38 @@ fun AdvancedSettingsSection(
                 Column {
                     HorizontalDivider(modifier = Modifier.padding(vertical = 16.dp))
 
+                    // Hedged Requests Toggle
+                    Row(
+                        modifier = Modifier
+                            .fillMaxWidth()
+                            .padding(bottom = 8.dp)
+                            .clickable {
+                                enableHedgedRequests = !enableHedgedRequests
+                                saveChanges()
+                            },
+                        verticalAlignment = Alignment.CenterVertically,
+                        horizontalArrangement = Arrangement.SpaceBetween
+                    ) {
+                        Column(modifier = Modifier.weight(1f)) {
+                            Text(
+                                stringResource(R.string.enable_hedged_requests),
+                                style = MaterialTheme.typography.bodyLarge
+                            )
+                            Text(
+                                stringResource(R.string.enable_hedged_requests_desc),
+                                style = MaterialTheme.typography.bodySmall,
+                                color = MaterialTheme.colorScheme.onSurfaceVariant
+                            )
+                        }
+                        Switch(
+                            checked = enableHedgedRequests,
+                            onCheckedChange = {
+                                enableHedgedRequests = it
+                                saveChanges()
+                            }
+                        )
+                    }
+
                     if (apiKeyPool.isEmpty()) {
                         Text(
                             stringResource(R.string.api_key_pool_empty),
@@ -33,7 +33,7 @@ import androidx.compose.ui.unit.sp
 import androidx.lifecycle.viewmodel.compose.viewModel
 import com.ai.assistance.operit.R
 import com.ai.assistance.operit.data.model.ExecutionStatus
-import com.ai.assistance.operit.data.model.Workflow
+import com.ai.assistance.operit.data.model.WorkflowSummary
 import com.ai.assistance.operit.ui.components.CustomScaffold
 import com.ai.assistance.operit.ui.features.workflow.viewmodel.WorkflowViewModel
 import java.text.SimpleDateFormat
@@ -390,7 +390,7 @@ private fun SpeedDialAction(
 @OptIn(ExperimentalMaterial3Api::class)
 @Composable
 fun WorkflowCard(
-    workflow: Workflow,
+    workflow: WorkflowSummary,
     onClick: () -> Unit
 ) {
     Card(
@@ -486,7 +486,7 @@ fun WorkflowCard(
                         horizontalArrangement = Arrangement.spacedBy(4.dp)
                     ) {
                         Text(
-                            text = "${workflow.nodes.size}",
+                            text = "${workflow.nodeCount}",
                             style = MaterialTheme.typography.labelMedium.copy(
                                 fontWeight = FontWeight.SemiBold
                             ),
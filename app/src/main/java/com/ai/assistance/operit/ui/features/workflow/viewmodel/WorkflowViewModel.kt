@@ -19,6 +19,7 @@ import com.ai.assistance.operit.data.model.ParameterValue
 import com.ai.assistance.operit.data.model.TriggerNode
 import com.ai.assistance.operit.data.model.WorkflowNodeConnection
 import com.ai.assistance.operit.data.model.Workflow
+import com.ai.assistance.operit.data.model.WorkflowSummary
 import com.ai.assistance.operit.data.repository.WorkflowRepository
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
@@ -37,7 +38,7 @@ class WorkflowViewModel(application: Application) : AndroidViewModel(application
     
     private val repository = WorkflowRepository(application)
     
-    var workflows by mutableStateOf<List<Workflow>>(emptyList())
+    var workflows by mutableStateOf<List<WorkflowSummary>>(emptyList())
         private set
     
     var isLoading by mutableStateOf(false)
@@ -65,7 +66,7 @@ class WorkflowViewModel(application: Application) : AndroidViewModel(application
             isLoading = true
             error = null
             
-            repository.getAllWorkflows().fold(
+            repository.getWorkflowSummaries().fold(
                 onSuccess = { workflows = it },
                 onFailure = { error = it.message ?: "加载工作流失败" }
             )
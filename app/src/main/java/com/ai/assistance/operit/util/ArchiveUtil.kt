@@ -4,9 +4,7 @@ import android.content.Context
 import com.ai.assistance.operit.util.AppLogger
 import com.github.junrar.Archive
 import java.io.*
-import java.util.zip.ZipEntry
-import java.util.zip.ZipInputStream
-import java.util.zip.ZipOutputStream
+import kotlinx.coroutines.runBlocking
 import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry
 import org.apache.commons.compress.archivers.sevenz.SevenZFile
 import org.apache.commons.compress.archivers.sevenz.SevenZOutputFile
@@ -18,7 +16,7 @@ import org.apache.commons.compress.utils.IOUtils
 /** Utility class for archive operations */
 object ArchiveUtil {
     private const val TAG = "ArchiveUtil"
-    private const val BUFFER_SIZE = 8192
+    private const val BUFFER_SIZE = 64 * 1024
 
     /** Convert between archive formats or extract */
     fun convertArchive(
@@ -134,68 +132,38 @@ object ArchiveUtil {
 
     /** Extract a zip file */
     fun extractZip(zipFile: File, targetDir: File, password: String? = null): Boolean {
-        // Note: The standard ZipInputStream in Java doesn't support password-protected ZIPs
+        // Note: java.util.zip doesn't support password-protected ZIPs
         // We would need a third-party library like zip4j to implement password support
         // For now, we'll just note that password-protection is detected
 
         try {
-            ZipInputStream(BufferedInputStream(FileInputStream(zipFile))).use { zis ->
-                var entry: ZipEntry?
-                val buffer = ByteArray(BUFFER_SIZE)
-
-                try {
-                    while (zis.nextEntry.also { entry = it } != null) {
-                        val currentEntry = entry ?: continue
-
-                        val fileName = currentEntry.name
-                        val newFile = File(targetDir, fileName)
-
-                        // Create directories if needed
-                        if (currentEntry.isDirectory) {
-                            ensureDirectoryExists(newFile)
+            // 并行解压，并校验条目路径不越出目标目录
+            runBlocking { ParallelZip.extract(zipFile, targetDir) }
+            return true
+        } catch (e: java.util.zip.ZipException) {
+            if (e.message?.contains("encrypted", ignoreCase = true) == true) {
+                val msg =
+                        if (password != null) {
+                            "The ZIP file is encrypted, but standard Java ZipInputStream doesn't support passwords. " +
+                                    "Please use a dedicated ZIP application."
                         } else {
-                            newFile.parentFile?.let { ensureDirectoryExists(it) }
-
-                            // Extract file
-                            FileOutputStream(newFile).use { fos ->
-                                BufferedOutputStream(fos).use { bos ->
-                                    var len: Int
-                                    while (zis.read(buffer).also { len = it } > 0) {
-                                        bos.write(buffer, 0, len)
-                                    }
-                                }
-                            }
+                            "The ZIP file appears to be password-protected or encrypted.\n" +
+                                    "This tool currently does not support extracting encrypted ZIP files.\n" +
+                                    "Please use a dedicated archive manager with password support."
                         }
 
-                        zis.closeEntry()
-                    }
-                } catch (e: java.util.zip.ZipException) {
-                    if (e.message?.contains("encrypted", ignoreCase = true) == true) {
-                        val msg =
-                                if (password != null) {
-                                    "The ZIP file is encrypted, but standard Java ZipInputStream doesn't support passwords. " +
-                                            "Please use a dedicated ZIP application."
-                                } else {
-                                    "The ZIP file appears to be password-protected or encrypted.\n" +
-                                            "This tool currently does not support extracting encrypted ZIP files.\n" +
-                                            "Please use a dedicated archive manager with password support."
-                                }
-
-                        AppLogger.e(
-                                TAG,
-                                "Encrypted ZIP file detected. Password-protected ZIP files are not supported",
-                                e
-                        )
-                        // Create a note file in the target directory to inform the user
-                        val noteFile = File(targetDir, "EXTRACTION_FAILED.txt")
-                        noteFile.writeText(msg)
-                        return false
-                    } else {
-                        throw e
-                    }
-                }
+                AppLogger.e(
+                        TAG,
+                        "Encrypted ZIP file detected. Password-protected ZIP files are not supported",
+                        e
+                )
+                // Create a note file in the target directory to inform the user
+                val noteFile = File(targetDir, "EXTRACTION_FAILED.txt")
+                noteFile.writeText(msg)
+                return false
             }
-            return true
+            AppLogger.e(TAG, "Error extracting zip", e)
+            return false
         } catch (e: Exception) {
             AppLogger.e(TAG, "Error extracting zip", e)
             return false
@@ -450,9 +418,8 @@ object ArchiveUtil {
     /** Create a zip file from a directory */
     fun createZip(sourceDir: File, zipFile: File): Boolean {
         try {
-            ZipOutputStream(BufferedOutputStream(FileOutputStream(zipFile))).use { zos ->
-                addToZip(sourceDir, sourceDir, zos)
-            }
+            // 多线程分块压缩，条目路径相对于 sourceDir
+            runBlocking { ParallelZip.compress(sourceDir, zipFile, includeRoot = false) }
             return true
         } catch (e: Exception) {
             AppLogger.e(TAG, "Error creating zip", e)
@@ -460,34 +427,6 @@ object ArchiveUtil {
         }
     }
 
-    /** Add files to a zip archive recursively */
-    fun addToZip(baseDir: File, currentDir: File, zos: ZipOutputStream) {
-        val files = currentDir.listFiles() ?: return
-        val buffer = ByteArray(BUFFER_SIZE)
-
-        for (file in files) {
-            if (file.isDirectory) {
-                addToZip(baseDir, file, zos)
-                continue
-            }
-
-            val relativePath = file.toRelativeString(baseDir)
-            val entry = ZipEntry(relativePath)
-            zos.putNextEntry(entry)
-
-            FileInputStream(file).use { fis ->
-                BufferedInputStream(fis).use { bis ->
-                    var len: Int
-                    while (bis.read(buffer).also { len = it } > 0) {
-                        zos.write(buffer, 0, len)
-                    }
-                }
-            }
-
-            zos.closeEntry()
-        }
-    }
-
     /** Create a tar file from a directory */
     fun createTar(sourceDir: File, tarFile: File): Boolean {
         try {
@@ -0,0 +1,114 @@
+package com.ai.assistance.operit.util
+
+import java.io.BufferedReader
+import java.io.Reader
+
+/**
+ * 流式文档分块器。
+ *
+ * 按行读取输入，以空行划分段落，再把相邻段落合并到目标长度；超长段落在句末切开，
+ * 相邻块之间保留一段重叠文本，避免语义在块边界处被截断。整个过程只持有当前块，
+ * 不需要把整篇文档读入内存。
+ */
+class DocumentChunker(private val config: Config = Config()) {
+
+    /**
+     * @param targetChars 合并段落时的目标块长度
+     * @param maxChars 单块硬上限（不含重叠部分），超长段落按句子拆分
+     * @param overlapChars 从上一块末尾带入下一块的字符数，0 表示不重叠
+     */
+    data class Config(
+        val targetChars: Int = 400,
+        val maxChars: Int = 800,
+        val overlapChars: Int = 50
+    ) {
+        init {
+            require(targetChars in 1..maxChars) { "targetChars must be in 1..maxChars" }
+            require(overlapChars in 0 until targetChars) { "overlapChars must be smaller than targetChars" }
+        }
+    }
+
+    companion object {
+        private val SEPARATOR_LINE = Regex("^[\\*\\-=_]{3,}\\s*$")
+        private val SENTENCE_END = charArrayOf('。', '！', '？', '；', '.', '!', '?', ';', '\n')
+    }
+
+    /** 惰性地产生分块；读取发生在迭代时，调用方负责关闭 [reader]。 */
+    fun chunks(reader: Reader): Sequence<String> = sequence {
+        val lines = if (reader is BufferedReader) reader else BufferedReader(reader, 64 * 1024)
+        val paragraph = StringBuilder()
+        val current = StringBuilder()
+        var hasFreshContent = false
+
+        suspend fun SequenceScope<String>.emitCurrent() {
+            if (!hasFreshContent) return
+            val chunk = current.toString().trim()
+            if (chunk.isNotEmpty()) yield(chunk)
+            current.setLength(0)
+            hasFreshContent = false
+            if (config.overlapChars > 0) {
+                current.append(overlapTail(chunk))
+            }
+        }
+
+        suspend fun SequenceScope<String>.appendPiece(piece: String) {
+            if (hasFreshContent && current.length + piece.length + 1 > config.targetChars) {
+                emitCurrent()
+            }
+            if (current.isNotEmpty()) current.append('\n')
+            current.append(piece)
+            hasFreshContent = true
+        }
+
+        suspend fun SequenceScope<String>.flushParagraph() {
+            val text = paragraph.toString().trim()
+            paragraph.setLength(0)
+            if (text.isEmpty()) return
+            var start = 0
+            while (text.length - start > config.maxChars) {
+                val end = splitPoint(text, start)
+                appendPiece(text.substring(start, end).trim())
+                start = end
+            }
+            val rest = text.substring(start).trim()
+            if (rest.isNotEmpty()) appendPiece(rest)
+        }
+
+        while (true) {
+            val line = lines.readLine() ?: break
+            if (line.isBlank()) {
+                flushParagraph()
+                continue
+            }
+            // 与旧实现一致：去掉 *** / --- / === 之类的分隔线
+            if (SEPARATOR_LINE.matches(line)) continue
+            if (paragraph.isNotEmpty()) paragraph.append('\n')
+            paragraph.append(line)
+            // 没有空行的超长文本也不能无限累积
+            if (paragraph.length > config.maxChars * 4) flushParagraph()
+        }
+        flushParagraph()
+        emitCurrent()
+    }
+
+    /** 在 maxChars 之内寻找最后一个句末位置，找不到则硬切。 */
+    private fun splitPoint(text: String, start: Int): Int {
+        val limit = start + config.maxChars
+        val minimum = start + config.maxChars / 2
+        for (i in limit - 1 downTo minimum) {
+            if (text[i] in SENTENCE_END) return i + 1
+        }
+        return limit
+    }
+
+    /** 取块末尾约 overlapChars 个字符，尽量从句子或词的边界开始。 */
+    private fun overlapTail(chunk: String): String {
+        if (chunk.length <= config.overlapChars) return chunk
+        val from = chunk.length - config.overlapChars
+        for (i in from until chunk.length - 1) {
+            val c = chunk[i]
+            if (c in SENTENCE_END || c.isWhitespace()) return chunk.substring(i + 1).trim()
+        }
+        return chunk.substring(from)
+    }
+}
@@ -1,19 +1,60 @@
 package com.ai.assistance.operit.util
 
 import java.io.File
+import java.io.IOException
 import java.io.RandomAccessFile
 import java.net.HttpURLConnection
 import java.net.URL
-import java.util.concurrent.CountDownLatch
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.security.MessageDigest
+import java.util.ArrayDeque
+import java.util.concurrent.ExecutionException
 import java.util.concurrent.Executors
-import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.concurrent.atomic.AtomicLong
+import org.json.JSONArray
+import org.json.JSONObject
 
+/**
+ * 多线程分段下载
+ *
+ * 支持 Range 的服务器上，文件被切成小块放入共享队列，各连接依次领取；队列取空后，
+ * 空闲连接会把最慢连接剩余区间的后半段"偷"过来，避免单个慢连接拖住整个下载。
+ *
+ * 已完成的区间及其 SHA-256 记录在目标文件旁的清单文件（`<dest>.dlmanifest`）中，
+ * 崩溃或中断后再次下载同一 URL 时会先校验这些区间的磁盘内容，只重新下载缺失或损坏的部分。
+ * 提供 expectedSha256 时，完成后还会校验整个文件。
+ */
 object HttpMultiPartDownloader {
+    private const val TAG = "HttpMultiPartDownloader"
+
+    private const val MANIFEST_SUFFIX = ".dlmanifest"
+    private const val MANIFEST_VERSION = 1
+
+    private const val MIN_CHUNK_SIZE = 256 * 1024L
+    private const val MAX_CHUNK_SIZE = 4 * 1024 * 1024L
+    // 被偷取的连接至少要保留这么多剩余字节，避免频繁切分
+    private const val MIN_STEAL_SIZE = 128 * 1024L
+    private const val MAX_CHUNK_RETRIES = 5
+    private const val RETRY_BACKOFF_MS = 200L
+    private const val MANIFEST_SAVE_INTERVAL_MS = 1000L
+    private const val BUFFER_SIZE = 64 * 1024
+
+    private val workerIds = AtomicInteger()
+
+    // 所有下载共享的线程池，空闲线程会自动回收
+    private val executor =
+        Executors.newCachedThreadPool { runnable ->
+            Thread(runnable, "MultiPartDownload-${workerIds.incrementAndGet()}").apply { isDaemon = true }
+        }
+
     fun download(
         url: String,
         dest: File,
         threadCount: Int = 4,
+        expectedSha256: String? = null,
         onProgress: ((downloadedBytes: Long, totalBytes: Long) -> Unit)? = null
     ) {
         val safeThreads = threadCount.coerceIn(1, 8)
@@ -24,15 +65,25 @@ object HttpMultiPartDownloader {
 
         if (total <= 0L || !supportsRanges || safeThreads == 1) {
             downloadSingle(url, dest, total, onProgress)
-            return
+        } else {
+            downloadMulti(url, dest, meta, safeThreads, onProgress)
         }
 
-        downloadMulti(url, dest, total, safeThreads, onProgress)
+        if (expectedSha256 != null) {
+            val actual = sha256(dest, 0L, dest.length())
+            if (!actual.equals(expectedSha256, ignoreCase = true)) {
+                dest.delete()
+                manifestFile(dest).delete()
+                throw IOException("Checksum mismatch: expected $expectedSha256, got $actual")
+            }
+        }
     }
 
     private data class ProbeResult(
         val contentLength: Long,
-        val acceptRanges: Boolean
+        val acceptRanges: Boolean,
+        // ETag 或 Last-Modified，用于判断续传时远端文件是否变化
+        val validator: String? = null
     )
 
     private fun probe(url: String): ProbeResult {
@@ -50,7 +101,7 @@ object HttpMultiPartDownloader {
             if (code in 200..399) {
                 val len = conn.getHeaderFieldLong("Content-Length", -1L)
                 val acceptRanges = conn.getHeaderField("Accept-Ranges")?.contains("bytes", ignoreCase = true) == true
-                return ProbeResult(len, acceptRanges)
+                return ProbeResult(len, acceptRanges, validatorOf(conn))
             }
         } catch (_: Exception) {
             // ignore
@@ -80,7 +131,7 @@ object HttpMultiPartDownloader {
                 totalFromContentRange > 0L -> totalFromContentRange
                 else -> conn2.getHeaderFieldLong("Content-Length", -1L)
             }
-            return ProbeResult(total, acceptRanges)
+            return ProbeResult(total, acceptRanges, validatorOf(conn2))
         } catch (_: Exception) {
             return ProbeResult(-1L, false)
         } finally {
@@ -88,6 +139,9 @@ object HttpMultiPartDownloader {
         }
     }
 
+    private fun validatorOf(conn: HttpURLConnection): String? =
+        conn.getHeaderField("ETag") ?: conn.getHeaderField("Last-Modified")
+
     private fun parseTotalFromContentRange(contentRange: String?): Long {
         // format: bytes 0-0/12345
         if (contentRange.isNullOrBlank()) return -1L
@@ -123,7 +177,7 @@ object HttpMultiPartDownloader {
             dest.parentFile?.mkdirs()
             conn.inputStream.use { input ->
                 dest.outputStream().use { output ->
-                    val buffer = ByteArray(64 * 1024)
+                    val buffer = ByteArray(BUFFER_SIZE)
                     while (true) {
                         val read = input.read(buffer)
                         if (read <= 0) break
@@ -139,98 +193,380 @@ object HttpMultiPartDownloader {
         }
     }
 
+    /** 已完成并校验过的区间（闭区间） */
+    private data class DoneRange(val start: Long, val end: Long, val sha256: String)
+
+    /** 下载中的区间，[end] 可能被其他连接偷取而缩短 */
+    private class Chunk(val start: Long, end: Long, val retries: Int = 0) {
+        @Volatile
+        var end: Long = end
+
+        // 下一个要写入的位置，受 this 锁保护
+        var position: Long = start
+
+        val remaining: Long
+            get() = end - position + 1
+    }
+
+    private class Manifest(
+        val url: String,
+        val totalBytes: Long,
+        val validator: String?,
+        val done: List<DoneRange>
+    ) {
+        fun toJson(): String {
+            val ranges = JSONArray()
+            for (range in done) {
+                ranges.put(
+                    JSONObject()
+                        .put("start", range.start)
+                        .put("end", range.end)
+                        .put("sha256", range.sha256)
+                )
+            }
+            return JSONObject()
+                .put("version", MANIFEST_VERSION)
+                .put("url", url)
+                .put("totalBytes", totalBytes)
+                .put("validator", validator ?: JSONObject.NULL)
+                .put("done", ranges)
+                .toString()
+        }
+
+        companion object {
+            fun parse(text: String): Manifest? {
+                val json = JSONObject(text)
+                if (json.optInt("version") != MANIFEST_VERSION) return null
+                val ranges = json.getJSONArray("done")
+                val done = (0 until ranges.length()).map { i ->
+                    val range = ranges.getJSONObject(i)
+                    DoneRange(range.getLong("start"), range.getLong("end"), range.getString("sha256"))
+                }
+                return Manifest(
+                    url = json.getString("url"),
+                    totalBytes = json.getLong("totalBytes"),
+                    validator = if (json.isNull("validator")) null else json.getString("validator"),
+                    done = done
+                )
+            }
+        }
+    }
+
+    /**
+     * 分块调度：领取、偷取、失败重排以及已完成区间的记录
+     * 锁顺序：先 scheduler 再 chunk
+     */
+    private class Scheduler(
+        pending: List<Chunk>,
+        done: List<DoneRange>,
+        private val saveManifest: (List<DoneRange>) -> Unit
+    ) {
+        private val queue = ArrayDeque(pending)
+        private val active = HashSet<Chunk>()
+        private val done = ArrayList(done)
+        private var lastSaveMs = 0L
+
+        @Volatile
+        var failure: Throwable? = null
+            private set
+
+        @Synchronized
+        fun next(): Chunk? {
+            if (failure != null) return null
+            queue.pollFirst()?.let {
+                active.add(it)
+                return it
+            }
+            // 队列已空：从剩余最多的连接偷取后半段
+            val victim = active.maxByOrNull { synchronized(it) { it.remaining } } ?: return null
+            synchronized(victim) {
+                val remaining = victim.remaining
+                if (remaining < 2 * MIN_STEAL_SIZE) return null
+                val split = victim.position + remaining / 2
+                val stolen = Chunk(split, victim.end)
+                victim.end = split - 1
+                active.add(stolen)
+                return stolen
+            }
+        }
+
+        /**
+         * 结束一个区间：记录已写入部分，未完成部分按需重新入队
+         * @return 未完成部分是否已重新入队
+         */
+        @Synchronized
+        fun finish(chunk: Chunk, sha256: String, requeue: Boolean): Boolean {
+            active.remove(chunk)
+            val requeued: Boolean
+            synchronized(chunk) {
+                if (chunk.position > chunk.start) {
+                    done.add(DoneRange(chunk.start, chunk.position - 1, sha256))
+                }
+                requeued = requeue && chunk.remaining > 0
+                if (requeued) {
+                    queue.addFirst(Chunk(chunk.position, chunk.end, chunk.retries + 1))
+                }
+            }
+            val now = System.currentTimeMillis()
+            if (now - lastSaveMs >= MANIFEST_SAVE_INTERVAL_MS) {
+                lastSaveMs = now
+                saveManifest(ArrayList(done))
+            }
+            return requeued
+        }
+
+        @Synchronized
+        fun fail(error: Throwable) {
+            if (failure == null) failure = error
+        }
+
+        @Synchronized
+        fun doneRanges(): List<DoneRange> = ArrayList(done)
+    }
+
+    private fun manifestFile(dest: File) = File(dest.parentFile, dest.name + MANIFEST_SUFFIX)
+
     private fun downloadMulti(
         url: String,
         dest: File,
-        totalBytes: Long,
+        meta: ProbeResult,
         threadCount: Int,
         onProgress: ((Long, Long) -> Unit)?
     ) {
+        val totalBytes = meta.contentLength
         dest.parentFile?.mkdirs()
+        val manifestFile = manifestFile(dest)
 
-        // Pre-allocate file
-        RandomAccessFile(dest, "rw").use { raf ->
-            raf.setLength(totalBytes)
+        val resumed = loadVerifiedRanges(manifestFile, dest, url, meta)
+        if (resumed.isEmpty()) {
+            // Pre-allocate file
+            RandomAccessFile(dest, "rw").use { raf ->
+                raf.setLength(totalBytes)
+            }
+        } else {
+            AppLogger.d(TAG, "Resuming $url with ${resumed.sumOf { it.end - it.start + 1 }} verified bytes")
         }
 
-        val downloaded = AtomicLong(0L)
-        val firstError = AtomicReference<Throwable?>(null)
-        val pool = Executors.newFixedThreadPool(threadCount)
-        val latch = CountDownLatch(threadCount)
+        val chunkSize = (totalBytes / (threadCount * 8L)).coerceIn(MIN_CHUNK_SIZE, MAX_CHUNK_SIZE)
+        val pending = missingRanges(resumed, totalBytes).flatMap { (start, end) ->
+            (start..end step chunkSize).map { chunkStart -> Chunk(chunkStart, minOf(end, chunkStart + chunkSize - 1)) }
+        }
 
-        val partSize = (totalBytes + threadCount - 1) / threadCount
+        val downloaded = AtomicLong(resumed.sumOf { it.end - it.start + 1 })
+        val scheduler = Scheduler(pending, resumed) { done ->
+            writeManifest(manifestFile, Manifest(url, totalBytes, meta.validator, done))
+        }
 
-        for (part in 0 until threadCount) {
-            val start = part * partSize
-            val end = minOf(totalBytes - 1, (part + 1) * partSize - 1)
-            if (start > end) {
-                latch.countDown()
-                continue
+        RandomAccessFile(dest, "rw").use { raf ->
+            val channel = raf.channel
+            val workers = ArrayList<Future<*>>(threadCount)
+            repeat(minOf(threadCount, pending.size)) {
+                workers.add(executor.submit { runWorker(url, channel, scheduler, downloaded, totalBytes, onProgress) })
             }
+            try {
+                for (worker in workers) {
+                    try {
+                        worker.get()
+                    } catch (e: ExecutionException) {
+                        scheduler.fail(e.cause ?: e)
+                    }
+                }
+            } catch (e: InterruptedException) {
+                scheduler.fail(e)
+                workers.forEach { it.cancel(true) }
+                writeManifest(manifestFile, Manifest(url, totalBytes, meta.validator, scheduler.doneRanges()))
+                Thread.currentThread().interrupt()
+                throw e
+            }
+        }
+
+        val err = scheduler.failure
+        val done = scheduler.doneRanges()
+        if (err != null || done.sumOf { it.end - it.start + 1 } != totalBytes) {
+            // 保留已下载部分与清单，下次调用时续传
+            writeManifest(manifestFile, Manifest(url, totalBytes, meta.validator, done))
+            throw RuntimeException("Multi-part download failed", err)
+        }
 
-            pool.execute {
-                var conn: HttpURLConnection? = null
+        manifestFile.delete()
+        onProgress?.invoke(totalBytes, totalBytes)
+    }
+
+    private fun runWorker(
+        url: String,
+        channel: FileChannel,
+        scheduler: Scheduler,
+        downloaded: AtomicLong,
+        totalBytes: Long,
+        onProgress: ((Long, Long) -> Unit)?
+    ) {
+        while (true) {
+            val chunk = scheduler.next() ?: return
+            val digest = MessageDigest.getInstance("SHA-256")
+            try {
+                downloadChunk(url, channel, chunk, digest, scheduler) { bytes ->
+                    onProgress?.invoke(downloaded.addAndGet(bytes), totalBytes)
+                }
+                scheduler.finish(chunk, digest.digest().toHex(), requeue = false)
+            } catch (e: Exception) {
+                val retryable = e !is InterruptedException && scheduler.failure == null && chunk.retries < MAX_CHUNK_RETRIES
+                val requeued = scheduler.finish(chunk, digest.digest().toHex(), requeue = retryable)
+                if (!requeued) {
+                    if (chunk.remaining > 0) scheduler.fail(e)
+                    if (e is InterruptedException) return
+                    continue
+                }
+                AppLogger.w(TAG, "Chunk ${chunk.position}-${chunk.end} failed (${e.message}), retry ${chunk.retries + 1}")
                 try {
-                    conn = (URL(url).openConnection() as HttpURLConnection).apply {
-                        requestMethod = "GET"
-                        setRequestProperty("Accept-Encoding", "identity")
-                        instanceFollowRedirects = true
-                        connectTimeout = 15000
-                        readTimeout = 30000
-                        setRequestProperty("Range", "bytes=$start-$end")
-                    }
+                    Thread.sleep(RETRY_BACKOFF_MS * (chunk.retries + 1))
+                } catch (ie: InterruptedException) {
+                    scheduler.fail(ie)
+                    return
+                }
+            }
+        }
+    }
 
-                    val code = conn.responseCode
-                    if (code != HttpURLConnection.HTTP_PARTIAL && code != HttpURLConnection.HTTP_OK) {
-                        throw RuntimeException("HTTP $code")
-                    }
+    private fun downloadChunk(
+        url: String,
+        channel: FileChannel,
+        chunk: Chunk,
+        digest: MessageDigest,
+        scheduler: Scheduler,
+        onBytes: (Long) -> Unit
+    ) {
+        val requestStart = chunk.position
+        val requestEnd = chunk.end
+        var conn: HttpURLConnection? = null
+        var fullyRead = false
+        try {
+            conn = (URL(url).openConnection() as HttpURLConnection).apply {
+                requestMethod = "GET"
+                setRequestProperty("Accept-Encoding", "identity")
+                instanceFollowRedirects = true
+                connectTimeout = 15000
+                readTimeout = 30000
+                setRequestProperty("Range", "bytes=$requestStart-$requestEnd")
+            }
 
-                    conn.inputStream.use { input ->
-                        RandomAccessFile(dest, "rw").use { raf ->
-                            raf.seek(start)
-                            val buffer = ByteArray(64 * 1024)
-                            while (true) {
-                                val read = input.read(buffer)
-                                if (read <= 0) break
-                                raf.write(buffer, 0, read)
-                                val now = downloaded.addAndGet(read.toLong())
-                                onProgress?.invoke(now, totalBytes)
+            val code = conn.responseCode
+            if (code != HttpURLConnection.HTTP_PARTIAL) {
+                throw IOException("HTTP $code for range $requestStart-$requestEnd")
+            }
+            val contentRange = conn.getHeaderField("Content-Range")
+            if (contentRange != null && !contentRange.startsWith("bytes $requestStart-")) {
+                throw IOException("Unexpected Content-Range: $contentRange")
+            }
+
+            conn.inputStream.use { input ->
+                val buffer = ByteArray(BUFFER_SIZE)
+                while (true) {
+                    if (scheduler.failure != null) throw IOException("Download aborted")
+                    if (Thread.interrupted()) throw InterruptedException()
+                    val read = input.read(buffer)
+                    if (read <= 0) throw IOException("Connection closed at ${chunk.position}")
+                    var written = 0
+                    val complete = synchronized(chunk) {
+                        written = minOf(read.toLong(), chunk.remaining).toInt()
+                        if (written > 0) {
+                            val byteBuffer = ByteBuffer.wrap(buffer, 0, written)
+                            var offset = chunk.position
+                            while (byteBuffer.hasRemaining()) {
+                                offset += channel.write(byteBuffer, offset)
                             }
+                            digest.update(buffer, 0, written)
+                            chunk.position += written
                         }
+                        chunk.remaining <= 0
+                    }
+                    if (written > 0) onBytes(written.toLong())
+                    if (complete) {
+                        // 区间被偷取缩短时响应体没有读完，不能复用连接
+                        fullyRead = chunk.end == requestEnd && written == read
+                        return
                     }
-                } catch (t: Throwable) {
-                    firstError.compareAndSet(null, t)
-                } finally {
-                    conn?.disconnect()
-                    latch.countDown()
                 }
             }
+        } finally {
+            if (!fullyRead) conn?.disconnect()
         }
+    }
 
+    /** 读取清单并校验每个已完成区间的磁盘内容，返回仍然有效的区间 */
+    private fun loadVerifiedRanges(manifestFile: File, dest: File, url: String, meta: ProbeResult): List<DoneRange> {
+        if (!manifestFile.exists()) return emptyList()
+        val manifest = try {
+            Manifest.parse(manifestFile.readText())
+        } catch (e: Exception) {
+            AppLogger.w(TAG, "Corrupted download manifest, starting over: ${e.message}")
+            null
+        }
+        if (manifest == null ||
+            manifest.url != url ||
+            manifest.totalBytes != meta.contentLength ||
+            manifest.validator != meta.validator ||
+            !dest.exists() ||
+            dest.length() != meta.contentLength
+        ) {
+            manifestFile.delete()
+            return emptyList()
+        }
+
+        val valid = manifest.done.filter { range ->
+            val ok = sha256(dest, range.start, range.end - range.start + 1) == range.sha256
+            if (!ok) AppLogger.w(TAG, "Chunk ${range.start}-${range.end} failed verification, downloading again")
+            ok
+        }
+        return valid.sortedBy { it.start }
+    }
+
+    /** 总区间中去掉已完成区间后剩下的部分 */
+    private fun missingRanges(done: List<DoneRange>, totalBytes: Long): List<Pair<Long, Long>> {
+        val missing = ArrayList<Pair<Long, Long>>()
+        var next = 0L
+        for (range in done.sortedBy { it.start }) {
+            if (range.start > next) missing.add(next to range.start - 1)
+            next = maxOf(next, range.end + 1)
+        }
+        if (next < totalBytes) missing.add(next to totalBytes - 1)
+        return missing
+    }
+
+    private fun writeManifest(manifestFile: File, manifest: Manifest) {
         try {
-            latch.await()
-        } catch (e: InterruptedException) {
-            Thread.currentThread().interrupt()
-            firstError.compareAndSet(null, e)
-            throw e
-        } finally {
-            val err = firstError.get()
-            if (err != null) {
-                pool.shutdownNow()
-            } else {
-                pool.shutdown()
+            val tmp = File(manifestFile.parentFile, manifestFile.name + ".tmp")
+            tmp.writeText(manifest.toJson())
+            if (!tmp.renameTo(manifestFile)) {
+                manifestFile.delete()
+                tmp.renameTo(manifestFile)
             }
+        } catch (e: Exception) {
+            AppLogger.e(TAG, "Failed to write download manifest", e)
         }
+    }
 
-        val err = firstError.get()
-        if (err != null) {
-            try {
-                dest.delete()
-            } catch (_: Exception) {
+    private fun sha256(file: File, offset: Long, length: Long): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        RandomAccessFile(file, "r").use { raf ->
+            raf.seek(offset)
+            val buffer = ByteArray(BUFFER_SIZE)
+            var left = length
+            while (left > 0) {
+                val read = raf.read(buffer, 0, minOf(buffer.size.toLong(), left).toInt())
+                if (read <= 0) break
+                digest.update(buffer, 0, read)
+                left -= read
             }
-            throw RuntimeException("Multi-part download failed", err)
         }
+        return digest.digest().toHex()
+    }
 
-        onProgress?.invoke(totalBytes, totalBytes)
+    private fun ByteArray.toHex(): String {
+        val sb = StringBuilder(size * 2)
+        for (b in this) {
+            val v = b.toInt() and 0xFF
+            sb.append("0123456789abcdef"[v ushr 4]).append("0123456789abcdef"[v and 0x0F])
+        }
+        return sb.toString()
     }
 }
@@ -0,0 +1,681 @@
+package com.ai.assistance.operit.util
+
+import java.io.BufferedOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.time.Instant
+import java.time.ZoneId
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+import java.util.zip.ZipFile
+import java.util.zip.ZipInputStream
+import kotlin.coroutines.coroutineContext
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+
+/**
+ * 多线程 ZIP 压缩与解压
+ *
+ * 压缩：文件被切成 1MB 的块，各块在线程池上并行 deflate（与 pigz 相同，块之间用 SYNC_FLUSH 对齐到字节边界，
+ * 并以前一块末尾 32KB 作为字典，压缩率与单线程基本一致），写入线程按顺序拼接，最后写出中央目录。
+ * 每块的 CRC32 分别计算后合并。单块文件压缩后不变小时改为 STORED。超过 4GB 的文件、偏移或超过 65535 个条目时写 ZIP64 结构。
+ *
+ * 解压：通过中央目录随机访问，各文件在线程池上并行解压；中央目录无法读取时回退到顺序读取本地文件头。
+ * 所有条目在写入前都会校验目标路径（zip-slip）。
+ *
+ * 两个方向都通过 onProgress 报告进度；所在协程被取消时停止并删除未完成的输出。
+ */
+object ParallelZip {
+    private const val TAG = "ParallelZip"
+
+    private const val BLOCK_SIZE = 1024 * 1024
+    private const val DICTIONARY_SIZE = 32 * 1024
+    private const val BUFFER_SIZE = 64 * 1024
+    private const val PROGRESS_INTERVAL_MS = 100L
+
+    // 超过这个大小的文件在本地文件头中使用 ZIP64（留出 deflate 膨胀的余量）
+    private const val ZIP64_LOCAL_THRESHOLD = 0xFF000000L
+    private const val ZIP64_MAGIC = 0xFFFFFFFFL
+    private const val ZIP64_MAGIC_COUNT = 0xFFFF
+
+    private const val LOCAL_HEADER_SIGNATURE = 0x04034b50
+    private const val CENTRAL_HEADER_SIGNATURE = 0x02014b50
+    private const val END_SIGNATURE = 0x06054b50
+    private const val ZIP64_END_SIGNATURE = 0x06064b50
+    private const val ZIP64_LOCATOR_SIGNATURE = 0x07064b50
+    private const val ZIP64_EXTRA_ID = 0x0001
+
+    // 文件名使用 UTF-8
+    private const val FLAG_UTF8 = 0x0800
+    private const val METHOD_STORED = 0
+    private const val METHOD_DEFLATED = 8
+
+    /** 进度 */
+    data class Progress(
+        val processedBytes: Long,
+        val totalBytes: Long,
+        val processedEntries: Int,
+        val totalEntries: Int
+    ) {
+        val fraction: Float
+            get() = when {
+                totalBytes > 0 -> (processedBytes.toDouble() / totalBytes).toFloat().coerceIn(0f, 1f)
+                totalEntries > 0 -> processedEntries.toFloat() / totalEntries
+                else -> 1f
+            }
+    }
+
+    fun defaultThreads(): Int = Runtime.getRuntime().availableProcessors().coerceIn(1, 8)
+
+    /**
+     * 把 [source]（文件或目录）压缩到 [target]
+     *
+     * @param includeRoot 为 true 时目录中的条目以目录名为前缀，否则使用相对于目录的路径
+     * @return 写入的条目数
+     */
+    suspend fun compress(
+        source: File,
+        target: File,
+        includeRoot: Boolean = true,
+        level: Int = Deflater.DEFAULT_COMPRESSION,
+        threads: Int = defaultThreads(),
+        onProgress: ((Progress) -> Unit)? = null
+    ): Int {
+        val entries = collectEntries(source, target, includeRoot)
+        val totalBytes = entries.sumOf { it.size }
+        val reporter = ProgressReporter(totalBytes, entries.size, onProgress)
+        val dispatcher = Dispatchers.IO.limitedParallelism(threads.coerceAtLeast(1))
+        target.parentFile?.mkdirs()
+
+        try {
+            withContext(Dispatchers.IO) {
+                ZipWriter(target).use { writer ->
+                    coroutineScope {
+                        // 按顺序排队的压缩结果，容量限制了同时驻留内存的块数
+                        val pending = Channel<Deferred<Block>>(capacity = threads * 2)
+                        launch {
+                            try {
+                                for ((index, entry) in entries.withIndex()) {
+                                    for (job in entry.blocks(index)) {
+                                        pending.send(async(dispatcher) { compressBlock(job, level) })
+                                    }
+                                }
+                            } finally {
+                                pending.close()
+                            }
+                        }
+                        for (deferred in pending) {
+                            val block = deferred.await()
+                            writer.write(entries[block.entryIndex], block)
+                            reporter.add(block.rawLength.toLong(), if (block.last) 1 else 0)
+                        }
+                    }
+                    writer.finish()
+                }
+            }
+        } catch (e: Throwable) {
+            target.delete()
+            throw e
+        }
+        reporter.finish()
+        AppLogger.d(TAG, "Compressed ${entries.size} entries (${totalBytes / 1024} KB) into ${target.name}")
+        return entries.size
+    }
+
+    /**
+     * 把 [zipFile] 解压到 [targetDir]
+     *
+     * @return 解压的条目数
+     */
+    suspend fun extract(
+        zipFile: File,
+        targetDir: File,
+        threads: Int = defaultThreads(),
+        onProgress: ((Progress) -> Unit)? = null
+    ): Int = withContext(Dispatchers.IO) {
+        targetDir.mkdirs()
+        val zip = try {
+            ZipFile(zipFile)
+        } catch (e: ZipException) {
+            AppLogger.w(TAG, "Cannot read central directory of ${zipFile.name} (${e.message}), extracting sequentially")
+            return@withContext extractSequentially(zipFile, targetDir, onProgress)
+        }
+        zip.use { extractParallel(it, targetDir, threads, onProgress) }
+    }
+
+    /**
+     * 条目在 [root] 下对应的文件，路径跳出目标目录时抛出 SecurityException
+     */
+    fun resolveEntry(root: File, name: String): File {
+        val rootPath = root.canonicalPath
+        val file = File(root, name)
+        val path = file.canonicalPath
+        if (path != rootPath && !path.startsWith(rootPath + File.separator)) {
+            throw SecurityException("Zip entry is outside of the target dir: $name")
+        }
+        return file
+    }
+
+    private class SourceEntry(
+        val file: File,
+        val name: ByteArray,
+        val isDirectory: Boolean,
+        val size: Long,
+        val modified: Long
+    ) {
+        fun blocks(index: Int): List<BlockJob> {
+            if (isDirectory || size == 0L) return listOf(BlockJob(index, file, 0L, 0, first = true, last = true))
+            val count = ((size + BLOCK_SIZE - 1) / BLOCK_SIZE).toInt()
+            return (0 until count).map { i ->
+                val offset = i.toLong() * BLOCK_SIZE
+                BlockJob(index, file, offset, minOf(BLOCK_SIZE.toLong(), size - offset).toInt(), i == 0, i == count - 1)
+            }
+        }
+    }
+
+    private class BlockJob(
+        val entryIndex: Int,
+        val file: File,
+        val offset: Long,
+        val length: Int,
+        val first: Boolean,
+        val last: Boolean
+    )
+
+    private class Block(
+        val entryIndex: Int,
+        val first: Boolean,
+        val last: Boolean,
+        val data: ByteArray,
+        val dataOffset: Int,
+        val dataLength: Int,
+        val rawLength: Int,
+        val crc: Long,
+        val method: Int
+    )
+
+    private fun collectEntries(source: File, target: File, includeRoot: Boolean): List<SourceEntry> {
+        if (!source.exists()) throw IOException("Source does not exist: ${source.path}")
+        val entries = ArrayList<SourceEntry>()
+        if (source.isFile) {
+            entries.add(SourceEntry(source, source.name.toByteArray(), false, source.length(), source.lastModified()))
+            return entries
+        }
+        val targetPath = target.absoluteFile.canonicalPath
+        val rootPrefix = if (includeRoot) source.name + "/" else ""
+        if (includeRoot) {
+            entries.add(SourceEntry(source, rootPrefix.toByteArray(), true, 0L, source.lastModified()))
+        }
+
+        fun walk(dir: File, prefix: String) {
+            val children = dir.listFiles()?.sortedBy { it.name } ?: return
+            if (children.isEmpty() && prefix.isNotEmpty() && prefix != rootPrefix) {
+                // 空目录单独记录，解压后保留目录结构
+                entries.add(SourceEntry(dir, prefix.toByteArray(), true, 0L, dir.lastModified()))
+            }
+            for (child in children) {
+                if (child.isDirectory) {
+                    walk(child, prefix + child.name + "/")
+                } else if (child.canonicalPath != targetPath) {
+                    entries.add(SourceEntry(child, (prefix + child.name).toByteArray(), false, child.length(), child.lastModified()))
+                }
+            }
+        }
+        walk(source, rootPrefix)
+        return entries
+    }
+
+    private fun compressBlock(job: BlockJob, level: Int): Block {
+        if (job.length == 0) {
+            return Block(job.entryIndex, job.first, job.last, ByteArray(0), 0, 0, 0, 0L, METHOD_STORED)
+        }
+        // 非首块连同前 32KB 一起读出，作为字典
+        val dictionaryLength = if (job.first) 0 else minOf(DICTIONARY_SIZE.toLong(), job.offset).toInt()
+        val raw = ByteArray(dictionaryLength + job.length)
+        RandomAccessFile(job.file, "r").use { file ->
+            file.seek(job.offset - dictionaryLength)
+            file.readFully(raw)
+        }
+        val crc = CRC32().apply { update(raw, dictionaryLength, job.length) }.value
+
+        val deflater = Deflater(level, true)
+        try {
+            if (dictionaryLength > 0) deflater.setDictionary(raw, 0, dictionaryLength)
+            deflater.setInput(raw, dictionaryLength, job.length)
+            if (job.last) deflater.finish()
+            val length = job.length
+            var out = ByteArray(length + (length shr 3) + (length shr 6) + 64)
+            var written = 0
+            while (true) {
+                if (written == out.size) out = out.copyOf(out.size * 2)
+                val n = deflater.deflate(out, written, out.size - written, if (job.last) Deflater.NO_FLUSH else Deflater.SYNC_FLUSH)
+                written += n
+                if (job.last) {
+                    if (deflater.finished()) break
+                } else if (written < out.size) {
+                    break
+                }
+            }
+            // 单块文件压缩后不变小时直接存储
+            if (job.first && job.last && written >= length) {
+                return Block(job.entryIndex, true, true, raw, 0, length, length, crc, METHOD_STORED)
+            }
+            return Block(job.entryIndex, job.first, job.last, out, 0, written, length, crc, METHOD_DEFLATED)
+        } finally {
+            deflater.end()
+        }
+    }
+
+    /** 顺序写出 ZIP 文件并记录中央目录 */
+    private class ZipWriter(file: File) : AutoCloseable {
+        private class CentralRecord(
+            val entry: SourceEntry,
+            val method: Int,
+            val crc: Long,
+            val compressedSize: Long,
+            val size: Long,
+            val localOffset: Long,
+            val zip64Local: Boolean
+        )
+
+        private val stream = FileOutputStream(file)
+        private val output = BufferedOutputStream(stream, BUFFER_SIZE * 4)
+        private var position = 0L
+        private val records = ArrayList<CentralRecord>()
+
+        // 正在写入的条目
+        private var localOffset = 0L
+        private var zip64Local = false
+        private var crc = 0L
+        private var compressedSize = 0L
+        private var size = 0L
+        private var method = METHOD_STORED
+
+        fun write(entry: SourceEntry, block: Block) {
+            if (block.first) {
+                localOffset = position
+                crc = 0L
+                compressedSize = 0L
+                size = 0L
+                method = block.method
+                zip64Local = entry.size > ZIP64_LOCAL_THRESHOLD
+                // 单块条目此时已知 CRC 和大小，多块条目写完后回填
+                val complete = block.last
+                writeLocalHeader(
+                    entry,
+                    if (complete) block.crc else 0L,
+                    if (complete) block.dataLength.toLong() else 0L,
+                    if (complete) block.rawLength.toLong() else 0L
+                )
+            }
+            output.write(block.data, block.dataOffset, block.dataLength)
+            position += block.dataLength
+            crc = if (block.first) block.crc else crc32Combine(crc, block.crc, block.rawLength.toLong())
+            compressedSize += block.dataLength
+            size += block.rawLength
+
+            if (block.last) {
+                if (!block.first) patchLocalHeader(entry.name.size)
+                records.add(CentralRecord(entry, method, crc, compressedSize, size, localOffset, zip64Local))
+            }
+        }
+
+        private fun writeLocalHeader(entry: SourceEntry, crc: Long, compressedSize: Long, size: Long) {
+            val extraLength = if (zip64Local) 20 else 0
+            val header = buffer(30 + entry.name.size + extraLength)
+            header.putInt(LOCAL_HEADER_SIGNATURE)
+            header.putShort(versionNeeded(method, zip64Local).toShort())
+            header.putShort(FLAG_UTF8.toShort())
+            header.putShort(method.toShort())
+            header.putInt(dosTime(entry.modified))
+            header.putInt(crc.toInt())
+            header.putInt(if (zip64Local) ZIP64_MAGIC.toInt() else compressedSize.toInt())
+            header.putInt(if (zip64Local) ZIP64_MAGIC.toInt() else size.toInt())
+            header.putShort(entry.name.size.toShort())
+            header.putShort(extraLength.toShort())
+            header.put(entry.name)
+            if (zip64Local) {
+                header.putShort(ZIP64_EXTRA_ID.toShort())
+                header.putShort(16)
+                header.putLong(size)
+                header.putLong(compressedSize)
+            }
+            writeBuffer(header)
+        }
+
+        /** 多块条目写完后回填本地文件头中的 CRC 和大小 */
+        private fun patchLocalHeader(nameLength: Int) {
+            output.flush()
+            val channel = stream.channel
+            val crcField = buffer(4).putInt(crc.toInt())
+            crcField.flip()
+            channel.write(crcField, localOffset + 14)
+            val sizes = if (zip64Local) {
+                buffer(16).putLong(size).putLong(compressedSize)
+            } else {
+                buffer(8).putInt(compressedSize.toInt()).putInt(size.toInt())
+            }
+            sizes.flip()
+            // ZIP64 的大小在扩展字段中，位于文件名和扩展字段头之后
+            channel.write(sizes, if (zip64Local) localOffset + 30 + nameLength + 4 else localOffset + 18)
+        }
+
+        fun finish() {
+            val centralOffset = position
+            for (record in records) {
+                writeCentralHeader(record)
+            }
+            val centralSize = position - centralOffset
+            val zip64End = records.size >= ZIP64_MAGIC_COUNT || centralOffset >= ZIP64_MAGIC || centralSize >= ZIP64_MAGIC
+            if (zip64End) {
+                val zip64EndOffset = position
+                val end = buffer(56 + 20)
+                end.putInt(ZIP64_END_SIGNATURE)
+                end.putLong(44L)
+                end.putShort(45)
+                end.putShort(45)
+                end.putInt(0)
+                end.putInt(0)
+                end.putLong(records.size.toLong())
+                end.putLong(records.size.toLong())
+                end.putLong(centralSize)
+                end.putLong(centralOffset)
+                end.putInt(ZIP64_LOCATOR_SIGNATURE)
+                end.putInt(0)
+                end.putLong(zip64EndOffset)
+                end.putInt(1)
+                writeBuffer(end)
+            }
+            val end = buffer(22)
+            end.putInt(END_SIGNATURE)
+            end.putShort(0)
+            end.putShort(0)
+            val count = if (zip64End) ZIP64_MAGIC_COUNT else records.size
+            end.putShort(count.toShort())
+            end.putShort(count.toShort())
+            end.putInt(if (zip64End) ZIP64_MAGIC.toInt() else centralSize.toInt())
+            end.putInt(if (zip64End) ZIP64_MAGIC.toInt() else centralOffset.toInt())
+            end.putShort(0)
+            writeBuffer(end)
+            output.flush()
+        }
+
+        private fun writeCentralHeader(record: CentralRecord) {
+            val zip64Sizes = record.zip64Local || record.size >= ZIP64_MAGIC || record.compressedSize >= ZIP64_MAGIC
+            val zip64Offset = record.localOffset >= ZIP64_MAGIC
+            val extraData = (if (zip64Sizes) 16 else 0) + (if (zip64Offset) 8 else 0)
+            val extraLength = if (extraData > 0) 4 + extraData else 0
+            val zip64 = extraData > 0
+            val name = record.entry.name
+            val header = buffer(46 + name.size + extraLength)
+            header.putInt(CENTRAL_HEADER_SIGNATURE)
+            header.putShort(versionNeeded(record.method, zip64).toShort())
+            header.putShort(versionNeeded(record.method, zip64).toShort())
+            header.putShort(FLAG_UTF8.toShort())
+            header.putShort(record.method.toShort())
+            header.putInt(dosTime(record.entry.modified))
+            header.putInt(record.crc.toInt())
+            header.putInt(if (zip64Sizes) ZIP64_MAGIC.toInt() else record.compressedSize.toInt())
+            header.putInt(if (zip64Sizes) ZIP64_MAGIC.toInt() else record.size.toInt())
+            header.putShort(name.size.toShort())
+            header.putShort(extraLength.toShort())
+            header.putShort(0) // 注释长度
+            header.putShort(0) // 起始磁盘
+            header.putShort(0) // 内部属性
+            header.putInt(if (record.entry.isDirectory) 0x10 else 0) // MS-DOS 目录属性
+            header.putInt(if (zip64Offset) ZIP64_MAGIC.toInt() else record.localOffset.toInt())
+            header.put(name)
+            if (zip64) {
+                header.putShort(ZIP64_EXTRA_ID.toShort())
+                header.putShort(extraData.toShort())
+                if (zip64Sizes) {
+                    header.putLong(record.size)
+                    header.putLong(record.compressedSize)
+                }
+                if (zip64Offset) header.putLong(record.localOffset)
+            }
+            writeBuffer(header)
+        }
+
+        private fun buffer(size: Int): ByteBuffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN)
+
+        private fun writeBuffer(buffer: ByteBuffer) {
+            output.write(buffer.array(), 0, buffer.position())
+            position += buffer.position()
+        }
+
+        override fun close() {
+            output.close()
+        }
+    }
+
+    private fun versionNeeded(method: Int, zip64: Boolean): Int = when {
+        zip64 -> 45
+        method == METHOD_DEFLATED -> 20
+        else -> 10
+    }
+
+    /** MS-DOS 格式的修改时间（低 16 位为时间，高 16 位为日期） */
+    private fun dosTime(millis: Long): Int {
+        val time = Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDateTime()
+        if (time.year < 1980) return (1 shl 21) or (1 shl 16)
+        return ((time.year - 1980) shl 25) or (time.monthValue shl 21) or (time.dayOfMonth shl 16) or
+            (time.hour shl 11) or (time.minute shl 5) or (time.second shr 1)
+    }
+
+    /**
+     * 合并两段数据的 CRC32：已知 A 的 crc1、B 的 crc2 和 B 的长度，求 A+B 的 CRC（移植自 zlib 的 crc32_combine）
+     */
+    internal fun crc32Combine(crc1: Long, crc2: Long, length2: Long): Long {
+        if (length2 <= 0) return crc1
+        val even = LongArray(32)
+        val odd = LongArray(32)
+
+        // 表示移位一个零比特的算子
+        odd[0] = 0xEDB88320L
+        var row = 1L
+        for (n in 1 until 32) {
+            odd[n] = row
+            row = row shl 1
+        }
+        gf2MatrixSquare(even, odd) // 两个零比特
+        gf2MatrixSquare(odd, even) // 四个零比特
+
+        var result = crc1
+        var length = length2
+        do {
+            gf2MatrixSquare(even, odd)
+            if (length and 1L != 0L) result = gf2MatrixTimes(even, result)
+            length = length shr 1
+            if (length == 0L) break
+            gf2MatrixSquare(odd, even)
+            if (length and 1L != 0L) result = gf2MatrixTimes(odd, result)
+            length = length shr 1
+        } while (length != 0L)
+        return result xor crc2
+    }
+
+    private fun gf2MatrixTimes(matrix: LongArray, vector: Long): Long {
+        var sum = 0L
+        var vec = vector
+        var i = 0
+        while (vec != 0L) {
+            if (vec and 1L != 0L) sum = sum xor matrix[i]
+            vec = vec ushr 1
+            i++
+        }
+        return sum
+    }
+
+    private fun gf2MatrixSquare(square: LongArray, matrix: LongArray) {
+        for (n in 0 until 32) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n])
+        }
+    }
+
+    private suspend fun extractParallel(
+        zip: ZipFile,
+        targetDir: File,
+        threads: Int,
+        onProgress: ((Progress) -> Unit)?
+    ): Int {
+        val entries = zip.entries().toList()
+        // 先校验所有路径，有任何一个越界就不写入任何文件
+        val targets = entries.map { resolveEntry(targetDir, it.name) }
+        val files = ArrayList<Pair<ZipEntry, File>>()
+        val directories = HashSet<File>()
+        for ((entry, file) in entries.zip(targets)) {
+            if (entry.isDirectory) {
+                directories.add(file)
+            } else {
+                file.parentFile?.let { directories.add(it) }
+                files.add(entry to file)
+            }
+        }
+        directories.forEach { it.mkdirs() }
+
+        val totalBytes = files.sumOf { (entry, _) -> maxOf(entry.size, 0L) }
+        val reporter = ProgressReporter(totalBytes, entries.size, onProgress)
+        reporter.add(0L, entries.size - files.size)
+        // 大文件优先，避免最后只剩一个大文件在单线程解压
+        files.sortByDescending { it.first.size }
+        val next = AtomicInteger()
+        val dispatcher = Dispatchers.IO.limitedParallelism(threads.coerceAtLeast(1))
+
+        coroutineScope {
+            (0 until minOf(threads.coerceAtLeast(1), files.size)).map {
+                async(dispatcher) {
+                    val buffer = ByteArray(BUFFER_SIZE)
+                    while (true) {
+                        val index = next.getAndIncrement()
+                        if (index >= files.size) break
+                        val (entry, file) = files[index]
+                        zip.getInputStream(entry).use { input ->
+                            writeEntry(input, file, entry.time, buffer, reporter)
+                        }
+                        reporter.add(0L, 1)
+                    }
+                }
+            }.awaitAll()
+        }
+        reporter.finish()
+        return entries.size
+    }
+
+    /** 顺序读取本地文件头解压，用于中央目录损坏或缺失的文件 */
+    private suspend fun extractSequentially(zipFile: File, targetDir: File, onProgress: ((Progress) -> Unit)?): Int {
+        val reporter = ProgressReporter(zipFile.length(), 0, onProgress)
+        val counted = CountingInputStream(FileInputStream(zipFile))
+        var count = 0
+        ZipInputStream(counted.buffered(BUFFER_SIZE)).use { zis ->
+            val buffer = ByteArray(BUFFER_SIZE)
+            while (true) {
+                val entry = zis.nextEntry ?: break
+                val file = resolveEntry(targetDir, entry.name)
+                if (entry.isDirectory) {
+                    file.mkdirs()
+                } else {
+                    file.parentFile?.mkdirs()
+                    writeEntry(zis, file, entry.time, buffer, null)
+                }
+                zis.closeEntry()
+                count++
+                reporter.set(counted.count, count)
+            }
+        }
+        reporter.finish()
+        return count
+    }
+
+    private suspend fun writeEntry(
+        input: java.io.InputStream,
+        file: File,
+        time: Long,
+        buffer: ByteArray,
+        reporter: ProgressReporter?
+    ) {
+        val context = coroutineContext
+        try {
+            FileOutputStream(file).use { output ->
+                while (true) {
+                    context.ensureActive()
+                    val read = input.read(buffer)
+                    if (read < 0) break
+                    output.write(buffer, 0, read)
+                    reporter?.add(read.toLong(), 0)
+                }
+            }
+        } catch (e: Throwable) {
+            // 取消或出错时不留下不完整的文件
+            file.delete()
+            throw e
+        }
+        if (time > 0) file.setLastModified(time)
+    }
+
+    private class CountingInputStream(input: java.io.InputStream) : java.io.FilterInputStream(input) {
+        @Volatile
+        var count = 0L
+
+        override fun read(): Int = super.read().also { if (it >= 0) count++ }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int =
+            super.read(b, off, len).also { if (it > 0) count += it }
+
+        override fun skip(n: Long): Long = super.skip(n).also { count += it }
+    }
+
+    /** 合并各线程的进度，按时间间隔回调 */
+    private class ProgressReporter(
+        private val totalBytes: Long,
+        private var totalEntries: Int,
+        private val onProgress: ((Progress) -> Unit)?
+    ) {
+        private val bytes = AtomicLong()
+        private val entries = AtomicInteger()
+        private val lastReport = AtomicLong()
+
+        fun add(deltaBytes: Long, deltaEntries: Int) {
+            if (onProgress == null) return
+            bytes.addAndGet(deltaBytes)
+            entries.addAndGet(deltaEntries)
+            maybeReport()
+        }
+
+        fun set(processedBytes: Long, processedEntries: Int) {
+            if (onProgress == null) return
+            bytes.set(processedBytes)
+            entries.set(processedEntries)
+            if (processedEntries > totalEntries) totalEntries = processedEntries
+            maybeReport()
+        }
+
+        private fun maybeReport() {
+            val now = System.currentTimeMillis()
+            val last = lastReport.get()
+            if (now - last >= PROGRESS_INTERVAL_MS && lastReport.compareAndSet(last, now)) {
+                onProgress?.invoke(Progress(bytes.get(), totalBytes, entries.get(), totalEntries))
+            }
+        }
+
+        fun finish() {
+            onProgress?.invoke(Progress(totalBytes, totalBytes, maxOf(entries.get(), totalEntries), maxOf(entries.get(), totalEntries)))
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package com.ai.assistance.operit.util.search
+
+import com.ai.assistance.operit.util.AppLogger
+import com.ai.assistance.operit.util.TextSegmenter
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+import kotlin.math.ln
+
+/**
+ * 基于倒排表的 BM25 关键词索引。
+ *
+ * 词项 -> 倒排表（文档ID、词频、文档长度），文档表记录每篇文档的词项以便更新和删除。
+ * 持久化采用“快照 + 追加日志”：每次增删只追加一条日志记录，日志过长时再整体写快照，
+ * 避免在每次写入时重写整个索引文件。
+ */
+class Bm25Index(
+    private val snapshotFile: File? = null,
+    private val k1: Double = 1.2,
+    private val b: Double = 0.75
+) {
+
+    companion object {
+        private const val TAG = "Bm25Index"
+        private const val MAGIC = 0x424D3235 // "BM25"
+        private const val VERSION = 1
+        private const val OP_PUT: Byte = 1
+        private const val OP_REMOVE: Byte = 2
+
+        /** 日志记录数超过该值且超过文档数的四分之一时压缩为快照 */
+        private const val MIN_JOURNAL_OPS_BEFORE_COMPACT = 1000
+
+        /**
+         * 与记忆检索一致的分词：结巴 SEARCH 模式 + 小写化。
+         * 不写入分词缓存，避免长文本挤掉查询缓存。
+         */
+        fun tokenize(text: String): List<String> {
+            if (text.isBlank()) return emptyList()
+            return TextSegmenter.segment(text.lowercase(), useCached = false)
+        }
+    }
+
+    /** 文档表项。terms/tfs 为并行数组。 */
+    private class DocEntry(
+        val signature: Long,
+        val length: Int,
+        val terms: IntArray,
+        val tfs: IntArray
+    )
+
+    /** 单个词项的倒排表，并行数组存储，避免装箱。 */
+    private class Postings {
+        var size = 0
+        var docIds = LongArray(4)
+        var tfs = IntArray(4)
+        var lengths = IntArray(4)
+
+        fun add(docId: Long, tf: Int, length: Int) {
+            if (size == docIds.size) {
+                val capacity = size * 2
+                docIds = docIds.copyOf(capacity)
+                tfs = tfs.copyOf(capacity)
+                lengths = lengths.copyOf(capacity)
+            }
+            docIds[size] = docId
+            tfs[size] = tf
+            lengths[size] = length
+            size++
+        }
+
+        fun remove(docId: Long): Boolean {
+            for (i in 0 until size) {
+                if (docIds[i] == docId) {
+                    // 顺序无关，用末尾元素填补空位
+                    val last = size - 1
+                    docIds[i] = docIds[last]
+                    tfs[i] = tfs[last]
+                    lengths[i] = lengths[last]
+                    size = last
+                    return true
+                }
+            }
+            return false
+        }
+    }
+
+    data class Hit(val id: Long, val score: Double)
+
+    private val lock = ReentrantReadWriteLock()
+    private val termIds = HashMap<String, Int>()
+    private val termNames = ArrayList<String>()
+    private val postings = ArrayList<Postings>()
+    private val docs = HashMap<Long, DocEntry>()
+    private var totalLength = 0L
+
+    private val journalFile: File? = snapshotFile?.let { File(it.parentFile, it.name + ".journal") }
+    private var journal: DataOutputStream? = null
+    private var journalOps = 0
+
+    val size: Int
+        get() = lock.read { docs.size }
+
+    val termCount: Int
+        get() = lock.read { termIds.size }
+
+    fun contains(id: Long): Boolean = lock.read { docs.containsKey(id) }
+
+    fun signatureOf(id: Long): Long? = lock.read { docs[id]?.signature }
+
+    /**
+     * 写入或替换一篇文档。签名未变化时直接跳过。
+     * @param signature 文档内容的指纹，用于一致性校验和跳过无变化的更新
+     */
+    fun put(id: Long, signature: Long, tokens: List<String>) {
+        lock.write {
+            val existing = docs[id]
+            if (existing != null && existing.signature == signature) return
+            if (existing != null) removeLocked(id)
+            val entry = addLocked(id, signature, countTerms(tokens))
+            appendJournalLocked { writePut(it, id, entry) }
+        }
+    }
+
+    fun remove(id: Long) {
+        lock.write {
+            if (removeLocked(id) == null) return
+            appendJournalLocked {
+                it.writeByte(OP_REMOVE.toInt())
+                it.writeLong(id)
+            }
+        }
+    }
+
+    /**
+     * BM25 检索。
+     * @param queryTerms 已分词的查询词，重复词项只计一次
+     * @param filter 可选的文档过滤（如文件夹范围）
+     * @return 按得分降序的命中列表
+     */
+    fun search(queryTerms: Collection<String>, limit: Int = Int.MAX_VALUE, filter: ((Long) -> Boolean)? = null): List<Hit> {
+        lock.read {
+            val n = docs.size
+            if (n == 0 || queryTerms.isEmpty()) return emptyList()
+            val avgLength = totalLength.toDouble() / n
+            val scores = HashMap<Long, Double>()
+            for (term in queryTerms.toSet()) {
+                val termId = termIds[term] ?: continue
+                val list = postings[termId]
+                if (list.size == 0) continue
+                val df = list.size
+                val idf = ln(1.0 + (n - df + 0.5) / (df + 0.5))
+                for (i in 0 until list.size) {
+                    val docId = list.docIds[i]
+                    if (filter != null && !filter(docId)) continue
+                    val tf = list.tfs[i].toDouble()
+                    val norm = k1 * (1 - b + b * list.lengths[i] / avgLength)
+                    val score = idf * tf * (k1 + 1) / (tf + norm)
+                    scores[docId] = (scores[docId] ?: 0.0) + score
+                }
+            }
+            if (scores.isEmpty()) return emptyList()
+            val hits = scores.entries.map { Hit(it.key, it.value) }.sortedByDescending { it.score }
+            return if (hits.size > limit) hits.subList(0, limit) else hits
+        }
+    }
+
+    /**
+     * 从头重建索引，并立即写出快照。
+     * @param documents (id, signature, tokens) 序列
+     */
+    fun rebuild(documents: Sequence<Triple<Long, Long, List<String>>>) {
+        lock.write {
+            clearLocked()
+            for ((id, signature, tokens) in documents) {
+                addLocked(id, signature, countTerms(tokens))
+            }
+            writeSnapshotLocked()
+        }
+    }
+
+    /**
+     * 检查倒排表与文档表是否互相一致（词频、文档长度、总长度）。
+     * 任何不一致都意味着索引文件损坏，调用方应当重建。
+     */
+    fun verify(): Boolean {
+        lock.read {
+            var postingCount = 0L
+            var length = 0L
+            for ((id, entry) in docs) {
+                length += entry.length
+                postingCount += entry.terms.size
+                for (i in entry.terms.indices) {
+                    val list = postings.getOrNull(entry.terms[i]) ?: return false
+                    var found = false
+                    for (j in 0 until list.size) {
+                        if (list.docIds[j] == id) {
+                            if (list.tfs[j] != entry.tfs[i] || list.lengths[j] != entry.length) return false
+                            found = true
+                            break
+                        }
+                    }
+                    if (!found) return false
+                }
+            }
+            val indexed = postings.sumOf { it.size.toLong() }
+            return indexed == postingCount && length == totalLength
+        }
+    }
+
+    /**
+     * 与数据源对账：删除数据源中已不存在的文档，返回缺失或签名不符、需要重新写入的ID。
+     * @param expected 数据源中每篇文档的 id -> signature
+     */
+    fun reconcile(expected: Map<Long, Long>): List<Long> {
+        val stale = ArrayList<Long>()
+        val orphaned = lock.read {
+            for ((id, signature) in expected) {
+                if (docs[id]?.signature != signature) stale.add(id)
+            }
+            docs.keys.filter { it !in expected }
+        }
+        orphaned.forEach { remove(it) }
+        return stale
+    }
+
+    /** 从磁盘加载快照并重放日志；文件缺失或损坏时返回 false，索引保持为空。 */
+    fun load(): Boolean {
+        val file = snapshotFile ?: return false
+        lock.write {
+            clearLocked()
+            if (!file.exists()) return false
+            try {
+                DataInputStream(BufferedInputStream(file.inputStream())).use { input ->
+                    if (input.readInt() != MAGIC || input.readInt() != VERSION) return false.also { clearLocked() }
+                    val count = input.readInt()
+                    repeat(count) {
+                        if (input.readByte() != OP_PUT) throw IOException("Unexpected record in snapshot")
+                        readPutLocked(input)
+                    }
+                }
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "Failed to load BM25 snapshot, index will be rebuilt", e)
+                clearLocked()
+                return false
+            }
+            replayJournalLocked()
+            return true
+        }
+    }
+
+    /** 将当前状态写为快照并清空日志。 */
+    fun compact() {
+        lock.write { writeSnapshotLocked() }
+    }
+
+    fun close() {
+        lock.write {
+            try {
+                journal?.close()
+            } catch (_: IOException) {
+            }
+            journal = null
+        }
+    }
+
+    // --- 内部实现 ---
+
+    private fun countTerms(tokens: List<String>): Map<String, Int> {
+        val counts = LinkedHashMap<String, Int>()
+        for (token in tokens) {
+            if (token.isEmpty()) continue
+            counts[token] = (counts[token] ?: 0) + 1
+        }
+        return counts
+    }
+
+    private fun addLocked(id: Long, signature: Long, counts: Map<String, Int>): DocEntry {
+        val terms = IntArray(counts.size)
+        val tfs = IntArray(counts.size)
+        var length = 0
+        var i = 0
+        for ((term, tf) in counts) {
+            terms[i] = termIdLocked(term)
+            tfs[i] = tf
+            length += tf
+            i++
+        }
+        val entry = DocEntry(signature, length, terms, tfs)
+        for (j in terms.indices) {
+            postings[terms[j]].add(id, tfs[j], length)
+        }
+        docs[id] = entry
+        totalLength += length
+        return entry
+    }
+
+    private fun removeLocked(id: Long): DocEntry? {
+        val entry = docs.remove(id) ?: return null
+        for (termId in entry.terms) {
+            postings[termId].remove(id)
+        }
+        totalLength -= entry.length
+        return entry
+    }
+
+    private fun termIdLocked(term: String): Int {
+        return termIds.getOrPut(term) {
+            termNames.add(term)
+            postings.add(Postings())
+            termNames.size - 1
+        }
+    }
+
+    private fun clearLocked() {
+        termIds.clear()
+        termNames.clear()
+        postings.clear()
+        docs.clear()
+        totalLength = 0
+    }
+
+    private fun writePut(out: DataOutputStream, id: Long, entry: DocEntry) {
+        out.writeByte(OP_PUT.toInt())
+        out.writeLong(id)
+        out.writeLong(entry.signature)
+        out.writeInt(entry.terms.size)
+        for (i in entry.terms.indices) {
+            out.writeUTF(termNames[entry.terms[i]])
+            out.writeInt(entry.tfs[i])
+        }
+    }
+
+    private fun readPutLocked(input: DataInputStream) {
+        val id = input.readLong()
+        val signature = input.readLong()
+        val count = input.readInt()
+        val counts = LinkedHashMap<String, Int>(count * 2)
+        repeat(count) {
+            counts[input.readUTF()] = input.readInt()
+        }
+        removeLocked(id)
+        addLocked(id, signature, counts)
+    }
+
+    private fun replayJournalLocked() {
+        val file = journalFile ?: return
+        if (!file.exists()) return
+        var replayed = 0
+        try {
+            DataInputStream(BufferedInputStream(file.inputStream())).use { input ->
+                while (true) {
+                    val op = try {
+                        input.readByte()
+                    } catch (_: EOFException) {
+                        break
+                    }
+                    when (op) {
+                        OP_PUT -> readPutLocked(input)
+                        OP_REMOVE -> removeLocked(input.readLong())
+                        else -> throw IOException("Unknown journal op $op")
+                    }
+                    replayed++
+                }
+            }
+        } catch (e: Exception) {
+            // 进程在写日志中途被杀时末尾可能是半条记录，已重放的部分仍然有效
+            AppLogger.w(TAG, "Journal truncated after $replayed records: ${e.message}")
+        }
+        journalOps = replayed
+        // 立即压缩，丢弃可能残缺的日志尾部
+        writeSnapshotLocked()
+    }
+
+    private inline fun appendJournalLocked(block: (DataOutputStream) -> Unit) {
+        val file = journalFile ?: return
+        try {
+            val out = journal ?: DataOutputStream(BufferedOutputStream(FileOutputStream(file, true))).also { journal = it }
+            block(out)
+            out.flush()
+            journalOps++
+            if (journalOps >= MIN_JOURNAL_OPS_BEFORE_COMPACT && journalOps > docs.size / 4) {
+                writeSnapshotLocked()
+            }
+        } catch (e: IOException) {
+            AppLogger.e(TAG, "Failed to append BM25 journal", e)
+        }
+    }
+
+    private fun writeSnapshotLocked() {
+        val file = snapshotFile ?: return
+        try {
+            journal?.close()
+        } catch (_: IOException) {
+        }
+        journal = null
+        val tmp = File(file.parentFile, file.name + ".tmp")
+        try {
+            file.parentFile?.mkdirs()
+            DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use { out ->
+                out.writeInt(MAGIC)
+                out.writeInt(VERSION)
+                out.writeInt(docs.size)
+                for ((id, entry) in docs) {
+                    writePut(out, id, entry)
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete()
+                if (!tmp.renameTo(file)) throw IOException("Failed to replace ${file.name}")
+            }
+            journalFile?.delete()
+            journalOps = 0
+        } catch (e: IOException) {
+            AppLogger.e(TAG, "Failed to write BM25 snapshot", e)
+            tmp.delete()
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.ai.assistance.operit.util.search
+
+import com.ai.assistance.operit.util.AppLogger
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * 基于局部敏感签名的近似重复检测索引。
+ *
+ * 每篇文档保存一个 64 位 SimHash 和一组 MinHash 值。MinHash 按 LSH 分带（bands × rows），
+ * 每个带的哈希作为桶键；查询时只比较至少落入同一个桶的文档，而不是遍历全部文档。
+ * 候选的相似度取 MinHash 估计的 Jaccard 系数，SimHash 的汉明距离作为补充信号。
+ *
+ * 持久化方式与 [Bm25Index] 相同：快照 + 追加日志。
+ */
+class NearDuplicateIndex(
+    private val snapshotFile: File? = null,
+    private val bands: Int = DEFAULT_BANDS,
+    private val rows: Int = DEFAULT_ROWS
+) {
+
+    companion object {
+        private const val TAG = "NearDuplicateIndex"
+        private const val MAGIC = 0x4E445550 // "NDUP"
+        private const val VERSION = 1
+        private const val OP_PUT: Byte = 1
+        private const val OP_REMOVE: Byte = 2
+        private const val MIN_JOURNAL_OPS_BEFORE_COMPACT = 1000
+
+        /**
+         * 16 带 × 4 行：Jaccard 0.8 的文档对至少共享一个桶的概率约 0.999，
+         * 0.3 的约 0.12，兼顾召回与候选数量。
+         */
+        const val DEFAULT_BANDS = 16
+        const val DEFAULT_ROWS = 4
+
+        /**
+         * 文档特征：结巴分词后的词项（去掉纯标点）加上相邻词组成的二元组。
+         * 二元组保留了词序，避免词袋相同但意思不同的句子被误判为重复。
+         */
+        fun features(text: String): Set<String> {
+            val tokens = Bm25Index.tokenize(text).filter { token -> token.any { it.isLetterOrDigit() } }
+            val features = LinkedHashSet<String>(tokens.size * 2)
+            features.addAll(tokens)
+            for (i in 0 until tokens.size - 1) {
+                features.add(tokens[i] + "\u0001" + tokens[i + 1])
+            }
+            return features
+        }
+
+        /** 64 位 FNV-1a 后接 splitmix64 混合，保证低位也充分扩散 */
+        fun hash64(feature: String): Long {
+            var h = -0x340d631b7bdddcdbL
+            for (c in feature) {
+                h = h xor c.code.toLong()
+                h *= 0x100000001b3L
+            }
+            return mix64(h)
+        }
+
+        private fun mix64(value: Long): Long {
+            var z = value + -0x61c8864680b583ebL
+            z = (z xor (z ushr 30)) * -0x40a7b892e31b1a47L
+            z = (z xor (z ushr 27)) * -0x6b2fb644ecceee15L
+            return z xor (z ushr 31)
+        }
+
+        /** 特征集合的 SimHash；空集合返回 0 */
+        fun simHash(features: Collection<String>): Long {
+            if (features.isEmpty()) return 0L
+            val weights = IntArray(64)
+            for (feature in features) {
+                val h = hash64(feature)
+                for (bit in 0 until 64) {
+                    if ((h ushr bit) and 1L == 1L) weights[bit]++ else weights[bit]--
+                }
+            }
+            var result = 0L
+            for (bit in 0 until 64) {
+                if (weights[bit] > 0) result = result or (1L shl bit)
+            }
+            return result
+        }
+
+        fun hammingDistance(a: Long, b: Long): Int = java.lang.Long.bitCount(a xor b)
+    }
+
+    /** 一篇文档的签名 */
+    class Signature(val simHash: Long, val minHash: IntArray) {
+        /** 没有任何特征（空文本或纯标点）的签名不参与分桶，也不会与任何文档匹配 */
+        val isEmpty: Boolean
+            get() = minHash.all { it == Int.MAX_VALUE }
+    }
+
+    /**
+     * 近似重复候选。
+     * @param similarity MinHash 估计的 Jaccard 相似度
+     * @param hammingDistance 两个 SimHash 的汉明距离
+     */
+    data class Match(val id: Long, val similarity: Float, val hammingDistance: Int)
+
+    private class DocEntry(val contentSignature: Long, val signature: Signature)
+
+    private val hashCount = bands * rows
+
+    // 每个 MinHash 函数的随机种子，固定生成以保证跨进程的签名一致
+    private val seeds = LongArray(hashCount) { mix64(0x5DEECE66DL * (it + 1)) }
+
+    private val lock = ReentrantReadWriteLock()
+    private val docs = HashMap<Long, DocEntry>()
+    private val buckets = HashMap<Long, LongArray>()
+
+    private val journalFile: File? = snapshotFile?.let { File(it.parentFile, it.name + ".journal") }
+    private var journal: DataOutputStream? = null
+    private var journalOps = 0
+
+    val size: Int
+        get() = lock.read { docs.size }
+
+    fun contains(id: Long): Boolean = lock.read { docs.containsKey(id) }
+
+    fun contentSignatureOf(id: Long): Long? = lock.read { docs[id]?.contentSignature }
+
+    /** 计算文本的签名；不修改索引 */
+    fun signature(text: String): Signature = signature(features(text))
+
+    fun signature(features: Collection<String>): Signature {
+        val minHash = IntArray(hashCount) { Int.MAX_VALUE }
+        for (feature in features) {
+            val base = hash64(feature)
+            for (i in 0 until hashCount) {
+                val h = (mix64(base xor seeds[i]) ushr 33).toInt()
+                if (h < minHash[i]) minHash[i] = h
+            }
+        }
+        return Signature(simHash(features), minHash)
+    }
+
+    /**
+     * 写入或替换一篇文档。
+     * @param contentSignature 原文内容的指纹，用于与数据源对账和跳过无变化的更新
+     */
+    fun put(id: Long, contentSignature: Long, text: String) {
+        if (contentSignatureOf(id) == contentSignature) return
+        val signature = signature(text)
+        lock.write {
+            removeLocked(id)
+            addLocked(id, DocEntry(contentSignature, signature))
+            appendJournalLocked { writePut(it, id, docs[id]!!) }
+        }
+    }
+
+    fun remove(id: Long) {
+        lock.write {
+            if (removeLocked(id) == null) return
+            appendJournalLocked {
+                it.writeByte(OP_REMOVE.toInt())
+                it.writeLong(id)
+            }
+        }
+    }
+
+    /**
+     * 查找与给定签名近似重复的文档，按相似度降序返回。
+     * 只检查与其共享至少一个 LSH 桶的文档，代价与库的大小基本无关。
+     * @param minSimilarity Jaccard 估计值下限
+     * @param exclude 需要排除的文档（通常是自身）
+     */
+    fun findDuplicates(signature: Signature, minSimilarity: Float, exclude: Long? = null): List<Match> {
+        if (signature.isEmpty) return emptyList()
+        lock.read {
+            val candidates = HashSet<Long>()
+            for (band in 0 until bands) {
+                buckets[bandKey(signature.minHash, band)]?.let { ids ->
+                    for (id in ids) if (id != exclude) candidates.add(id)
+                }
+            }
+            if (candidates.isEmpty()) return emptyList()
+            val matches = ArrayList<Match>()
+            for (id in candidates) {
+                val entry = docs[id] ?: continue
+                val similarity = estimateJaccard(signature.minHash, entry.signature.minHash)
+                if (similarity >= minSimilarity) {
+                    matches.add(Match(id, similarity, hammingDistance(signature.simHash, entry.signature.simHash)))
+                }
+            }
+            matches.sortWith(compareByDescending<Match> { it.similarity }.thenBy { it.hammingDistance })
+            return matches
+        }
+    }
+
+    fun findDuplicates(text: String, minSimilarity: Float, exclude: Long? = null): List<Match> =
+        findDuplicates(signature(text), minSimilarity, exclude)
+
+    /** 已索引文档之间的近似重复对 (较小ID, 较大ID, 相似度)，用于批量去重 */
+    fun duplicatePairs(minSimilarity: Float): List<Triple<Long, Long, Float>> {
+        val snapshot = lock.read { docs.map { it.key to it.value.signature } }
+        val pairs = ArrayList<Triple<Long, Long, Float>>()
+        for ((id, signature) in snapshot) {
+            for (match in findDuplicates(signature, minSimilarity, exclude = id)) {
+                if (match.id > id) pairs.add(Triple(id, match.id, match.similarity))
+            }
+        }
+        return pairs
+    }
+
+    fun estimateJaccard(a: IntArray, b: IntArray): Float {
+        var equal = 0
+        for (i in a.indices) if (a[i] == b[i]) equal++
+        return equal.toFloat() / a.size
+    }
+
+    /**
+     * 从头重建索引，并立即写出快照。
+     * @param documents (id, contentSignature, text) 序列
+     */
+    fun rebuild(documents: Sequence<Triple<Long, Long, String>>) {
+        lock.write {
+            docs.clear()
+            buckets.clear()
+            for ((id, contentSignature, text) in documents) {
+                addLocked(id, DocEntry(contentSignature, signature(text)))
+            }
+            writeSnapshotLocked()
+        }
+    }
+
+    /**
+     * 与数据源对账：删除数据源中已不存在的文档，返回缺失或内容已变化、需要重新写入的ID。
+     */
+    fun reconcile(expected: Map<Long, Long>): List<Long> {
+        val stale = ArrayList<Long>()
+        val orphaned = lock.read {
+            for ((id, contentSignature) in expected) {
+                if (docs[id]?.contentSignature != contentSignature) stale.add(id)
+            }
+            docs.keys.filter { it !in expected }
+        }
+        orphaned.forEach { remove(it) }
+        return stale
+    }
+
+    /** 从磁盘加载快照并重放日志；文件缺失、损坏或分带参数不同时返回 false。 */
+    fun load(): Boolean {
+        val file = snapshotFile ?: return false
+        lock.write {
+            docs.clear()
+            buckets.clear()
+            if (!file.exists()) return false
+            try {
+                DataInputStream(BufferedInputStream(file.inputStream())).use { input ->
+                    if (input.readInt() != MAGIC || input.readInt() != VERSION) return false
+                    if (input.readInt() != bands || input.readInt() != rows) return false
+                    val count = input.readInt()
+                    repeat(count) {
+                        if (input.readByte() != OP_PUT) throw IOException("Unexpected record in snapshot")
+                        readPutLocked(input)
+                    }
+                }
+            } catch (e: Exception) {
+                AppLogger.e(TAG, "Failed to load near-duplicate snapshot, index will be rebuilt", e)
+                docs.clear()
+                buckets.clear()
+                return false
+            }
+            replayJournalLocked()
+            return true
+        }
+    }
+
+    fun close() {
+        lock.write {
+            try {
+                journal?.close()
+            } catch (_: IOException) {
+            }
+            journal = null
+        }
+    }
+
+    // --- 内部实现 ---
+
+    private fun bandKey(minHash: IntArray, band: Int): Long {
+        var h = band.toLong() * -0x61c8864680b583ebL
+        val start = band * rows
+        for (i in start until start + rows) {
+            h = mix64(h xor minHash[i].toLong())
+        }
+        return h
+    }
+
+    private fun addLocked(id: Long, entry: DocEntry) {
+        docs[id] = entry
+        if (entry.signature.isEmpty) return
+        for (band in 0 until bands) {
+            val key = bandKey(entry.signature.minHash, band)
+            val ids = buckets[key]
+            buckets[key] = if (ids == null) longArrayOf(id) else ids + id
+        }
+    }
+
+    private fun removeLocked(id: Long): DocEntry? {
+        val entry = docs.remove(id) ?: return null
+        if (entry.signature.isEmpty) return entry
+        for (band in 0 until bands) {
+            val key = bandKey(entry.signature.minHash, band)
+            val ids = buckets[key] ?: continue
+            val remaining = ids.filter { it != id }
+            if (remaining.isEmpty()) buckets.remove(key) else buckets[key] = remaining.toLongArray()
+        }
+        return entry
+    }
+
+    private fun writePut(out: DataOutputStream, id: Long, entry: DocEntry) {
+        out.writeByte(OP_PUT.toInt())
+        out.writeLong(id)
+        out.writeLong(entry.contentSignature)
+        out.writeLong(entry.signature.simHash)
+        for (value in entry.signature.minHash) out.writeInt(value)
+    }
+
+    private fun readPutLocked(input: DataInputStream) {
+        val id = input.readLong()
+        val contentSignature = input.readLong()
+        val simHash = input.readLong()
+        val minHash = IntArray(hashCount) { input.readInt() }
+        removeLocked(id)
+        addLocked(id, DocEntry(contentSignature, Signature(simHash, minHash)))
+    }
+
+    private fun replayJournalLocked() {
+        val file = journalFile ?: return
+        if (!file.exists()) return
+        var replayed = 0
+        try {
+            DataInputStream(BufferedInputStream(file.inputStream())).use { input ->
+                while (true) {
+                    val op = try {
+                        input.readByte()
+                    } catch (_: EOFException) {
+                        break
+                    }
+                    when (op) {
+                        OP_PUT -> readPutLocked(input)
+                        OP_REMOVE -> removeLocked(input.readLong())
+                        else -> throw IOException("Unknown journal op $op")
+                    }
+                    replayed++
+                }
+            }
+        } catch (e: Exception) {
+            AppLogger.w(TAG, "Journal truncated after $replayed records: ${e.message}")
+        }
+        journalOps = replayed
+        writeSnapshotLocked()
+    }
+
+    private inline fun appendJournalLocked(block: (DataOutputStream) -> Unit) {
+        val file = journalFile ?: return
+        try {
+            val out = journal ?: DataOutputStream(BufferedOutputStream(FileOutputStream(file, true))).also { journal = it }
+            block(out)
+            out.flush()
+            journalOps++
+            if (journalOps >= MIN_JOURNAL_OPS_BEFORE_COMPACT && journalOps > docs.size / 4) {
+                writeSnapshotLocked()
+            }
+        } catch (e: IOException) {
+            AppLogger.e(TAG, "Failed to append near-duplicate journal", e)
+        }
+    }
+
+    private fun writeSnapshotLocked() {
+        val file = snapshotFile ?: return
+        try {
+            journal?.close()
+        } catch (_: IOException) {
+        }
+        journal = null
+        val tmp = File(file.parentFile, file.name + ".tmp")
+        try {
+            file.parentFile?.mkdirs()
+            DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use { out ->
+                out.writeInt(MAGIC)
+                out.writeInt(VERSION)
+                out.writeInt(bands)
+                out.writeInt(rows)
+                out.writeInt(docs.size)
+                for ((id, entry) in docs) {
+                    writePut(out, id, entry)
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete()
+                if (!tmp.renameTo(file)) throw IOException("Failed to replace ${file.name}")
+            }
+            journalFile?.delete()
+            journalOps = 0
+        } catch (e: IOException) {
+            AppLogger.e(TAG, "Failed to write near-duplicate snapshot", e)
+            tmp.delete()
+        }
+    }
+}
@@ -5,8 +5,10 @@ import kotlin.coroutines.EmptyCoroutineContext
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.flow.MutableSharedFlow
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.coroutineScope
@@ -56,6 +58,7 @@ internal fun <T> SharedStream<T>.getInternalSubscriptionCountFlow():
     return when (this) {
         is MutableSharedStreamImpl<T> -> this.internalFlow.subscriptionCount
         is MutableStateStreamImpl<T> -> this.internalFlow.subscriptionCount
+        is CompactingSharedStreamImpl<T> -> this.subscriptionCountFlow
         else -> null
     }
 }
@@ -182,6 +185,150 @@ class MutableStateStreamImpl<T>(initialValue: T) : MutableStateStream<T> {
     }
 }
 
+/**
+ * 重放历史的压缩策略：把较早的元素合并成一个快照，新订阅者只需接收一次合并后的值。
+ * 实现只会在 [CompactingSharedStreamImpl] 的锁内被调用，无需自行同步。
+ */
+interface ReplayCompactor<T> {
+    /** 把一个元素并入快照 */
+    fun append(value: T)
+
+    /** 快照与尚未并入的尾部元素合并成一个值；没有任何历史时返回 null */
+    fun coalesce(tail: List<T>): T?
+
+    /** 清空快照 */
+    fun clear()
+}
+
+/** 字符串分块的压缩策略：快照为一个 StringBuilder，合并即拼接 */
+class StringReplayCompactor : ReplayCompactor<String> {
+    private val builder = StringBuilder()
+
+    override fun append(value: String) {
+        builder.append(value)
+    }
+
+    override fun coalesce(tail: List<String>): String? {
+        if (builder.isEmpty() && tail.isEmpty()) return null
+        if (tail.isEmpty()) return builder.toString()
+        val result = StringBuilder(builder.length + tail.sumOf { it.length })
+        result.append(builder)
+        tail.forEach { result.append(it) }
+        return result.toString()
+    }
+
+    override fun clear() {
+        builder.setLength(0)
+        builder.trimToSize()
+    }
+}
+
+/**
+ * 压缩重放的共享流。
+ *
+ * 与 `replay = Int.MAX_VALUE` 的 [MutableSharedStreamImpl] 不同，历史不按元素逐个保存：
+ * 最近的 [tailCapacity] 个元素保留在尾部，更早的元素由 [compactor] 合并进快照。
+ * 新订阅者先收到一次合并后的追赶值（快照 + 尾部），随后按发射顺序接收实时元素；
+ * 取追赶值与注册订阅在同一把锁内完成，因此既不会丢失也不会重复元素。
+ *
+ * 每个订阅者有独立的无界通道，发射方永不挂起，慢订阅者不会拖慢上游。
+ */
+class CompactingSharedStreamImpl<T>(
+        private val compactor: ReplayCompactor<T>,
+        private val tailCapacity: Int = 64
+) : MutableSharedStream<T> {
+    init {
+        require(tailCapacity >= 0) { "tailCapacity must be non-negative" }
+    }
+
+    private val lock = Any()
+    private val tail = ArrayDeque<T>()
+    private val subscribers = ArrayList<Channel<T>>()
+    private var closed = false
+    private var closeCause: Throwable? = null
+
+    internal val subscriptionCountFlow = MutableStateFlow(0)
+
+    // 热流不需要锁定机制，所以这里提供默认实现
+    override val isLocked: Boolean = false
+    override val bufferedCount: Int = 0
+
+    override suspend fun lock() {
+        StreamLogger.d("HotStream", "热流不支持锁定操作")
+    }
+
+    override suspend fun unlock() {
+        StreamLogger.d("HotStream", "热流不支持解锁操作")
+    }
+
+    override fun clearBuffer() {
+        StreamLogger.d("HotStream", "热流不支持清空缓冲区操作")
+    }
+
+    override val subscriptionCount: Int
+        get() = subscriptionCountFlow.value
+
+    /** 重放缓存只有一个元素：合并后的全部历史 */
+    override val replayCache: List<T>
+        get() = synchronized(lock) { listOfNotNull(compactor.coalesce(tail)) }
+
+    override suspend fun emit(value: T) {
+        tryEmit(value)
+    }
+
+    override fun tryEmit(value: T): Boolean {
+        synchronized(lock) {
+            if (closed) return false
+            tail.addLast(value)
+            while (tail.size > tailCapacity) {
+                compactor.append(tail.removeFirst())
+            }
+            // 在锁内投递，保证所有订阅者看到的顺序与历史一致
+            for (channel in subscribers) {
+                channel.trySend(value)
+            }
+        }
+        return true
+    }
+
+    override fun resetReplayCache() {
+        synchronized(lock) {
+            tail.clear()
+            compactor.clear()
+        }
+    }
+
+    /** 结束流：当前订阅者在收完已发射的元素后结束，之后的订阅者只收到追赶值 */
+    fun close(cause: Throwable? = null) {
+        synchronized(lock) {
+            if (closed) return
+            closed = true
+            closeCause = cause
+            subscribers.forEach { it.close(cause) }
+            subscribers.clear()
+        }
+    }
+
+    override suspend fun collect(collector: StreamCollector<T>) {
+        val channel = Channel<T>(Channel.UNLIMITED)
+        val catchUp = synchronized(lock) {
+            if (closed) channel.close(closeCause) else subscribers.add(channel)
+            compactor.coalesce(tail)
+        }
+        subscriptionCountFlow.update { it + 1 }
+        try {
+            if (catchUp != null) collector.emit(catchUp)
+            for (value in channel) {
+                collector.emit(value)
+            }
+        } finally {
+            synchronized(lock) { subscribers.remove(channel) }
+            channel.cancel()
+            subscriptionCountFlow.update { it - 1 }
+        }
+    }
+}
+
 /** 创建一个MutableSharedStream */
 fun <T> MutableSharedStream(
         replay: Int = 0,
@@ -270,6 +417,37 @@ fun <T> Stream<T>.share(
     return sharedStream
 }
 
+/**
+ * 将Stream转变为压缩重放的热流（立即启动）。
+ * 适合逐块输出的长文本：迟到的订阅者收到一次合并后的历史，而不是逐个重放全部分块。
+ */
+fun <T> Stream<T>.shareCompacted(
+        scope: CoroutineScope,
+        compactor: ReplayCompactor<T>,
+        tailCapacity: Int = 64,
+        onComplete: suspend () -> Unit = {}
+): SharedStream<T> {
+    val sharedStream = CompactingSharedStreamImpl(compactor, tailCapacity)
+    scope.launch {
+        try {
+            this@shareCompacted.collect { value -> sharedStream.emit(value) }
+        } finally {
+            // 与 share 一致：无论上游完成、取消还是异常，都正常结束订阅者
+            StreamLogger.d("Stream.shareCompacted", "上游流收集完成或取消，共享流协程结束。")
+            sharedStream.close()
+            onComplete()
+        }
+    }
+    return sharedStream
+}
+
+/** 字符串分块流的压缩重放共享 */
+fun Stream<String>.shareText(
+        scope: CoroutineScope,
+        tailCapacity: Int = 64,
+        onComplete: suspend () -> Unit = {}
+): SharedStream<String> = shareCompacted(scope, StringReplayCompactor(), tailCapacity, onComplete)
+
 /** 将Stream转变为StateStream，类似于Flow的stateIn */
 fun <T> Stream<T>.state(
         scope: CoroutineScope,
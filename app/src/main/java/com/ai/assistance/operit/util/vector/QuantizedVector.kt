@@ -0,0 +1,198 @@
+package com.ai.assistance.operit.util.vector
+
+import com.github.jelmerk.hnswlib.core.DistanceFunction
+import com.github.jelmerk.hnswlib.core.Item
+import java.io.Serializable
+import java.util.PriorityQueue
+import kotlin.math.abs
+import kotlin.math.sqrt
+
+/**
+ * int8 标量量化的向量。
+ *
+ * 量化前先做 L2 归一化，因此余弦相似度等价于点积；每个向量单独记录缩放系数
+ * （最大绝对分量 / 127），还原值为 `codes[i] * scale`。相比 FloatArray 占用约四分之一。
+ */
+class QuantizedVector(val codes: ByteArray, val scale: Float) : Serializable {
+
+    val dimensions: Int
+        get() = codes.size
+
+    /** 还原为（已归一化的）浮点向量 */
+    fun dequantize(): FloatArray = FloatArray(codes.size) { codes[it] * scale }
+
+    /** 两个量化向量的近似余弦相似度：整数点积再乘两边的缩放系数 */
+    fun similarity(other: QuantizedVector): Float {
+        if (other.codes.size != codes.size) return 0f
+        return dotInt8(codes, other.codes) * scale * other.scale
+    }
+
+    /** 与全精度（已归一化）查询向量的相似度，用于重排 */
+    fun similarity(query: FloatArray): Float {
+        if (query.size != codes.size) return 0f
+        val a = codes
+        var s0 = 0f
+        var s1 = 0f
+        var s2 = 0f
+        var s3 = 0f
+        var i = 0
+        val end = a.size - 3
+        while (i < end) {
+            s0 += a[i] * query[i]
+            s1 += a[i + 1] * query[i + 1]
+            s2 += a[i + 2] * query[i + 2]
+            s3 += a[i + 3] * query[i + 3]
+            i += 4
+        }
+        while (i < a.size) {
+            s0 += a[i] * query[i]
+            i++
+        }
+        return (s0 + s1 + s2 + s3) * scale
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is QuantizedVector) return false
+        return scale == other.scale && codes.contentEquals(other.codes)
+    }
+
+    override fun hashCode(): Int = 31 * codes.contentHashCode() + scale.hashCode()
+
+    /** 一次量化检索的结果 */
+    data class Match<T>(val value: T, val score: Float)
+
+    companion object {
+        private const val serialVersionUID = 1L
+
+        /** 近似分数的误差余量，低于阈值但在余量内的候选仍交给浮点重排判断 */
+        const val APPROXIMATION_MARGIN = 0.02f
+
+        /** 归一化后量化；零向量得到全零编码 */
+        fun quantize(vector: FloatArray): QuantizedVector {
+            val normalized = l2Normalize(vector)
+            var maxAbs = 0f
+            for (v in normalized) {
+                val a = abs(v)
+                if (a > maxAbs) maxAbs = a
+            }
+            if (maxAbs == 0f) return QuantizedVector(ByteArray(vector.size), 0f)
+            val scale = maxAbs / 127f
+            val inv = 1f / scale
+            val codes = ByteArray(normalized.size) { i ->
+                Math.round(normalized[i] * inv).coerceIn(-127, 127).toByte()
+            }
+            return QuantizedVector(codes, scale)
+        }
+
+        fun l2Normalize(vector: FloatArray): FloatArray {
+            var norm = 0f
+            for (v in vector) norm += v * v
+            if (norm == 0f) return vector.copyOf()
+            norm = sqrt(norm)
+            // 已归一化的向量（ONNX 模型输出）直接复用
+            if (abs(norm - 1f) < 1e-4f) return vector
+            return FloatArray(vector.size) { vector[it] / norm }
+        }
+
+        /**
+         * int8 点积。循环四路展开并使用独立的 Int 累加器，便于 JIT 消除依赖链并做向量化；
+         * 每项最大 127*127，384 维的和远小于 Int 上限。
+         */
+        fun dotInt8(a: ByteArray, b: ByteArray): Int {
+            var s0 = 0
+            var s1 = 0
+            var s2 = 0
+            var s3 = 0
+            var i = 0
+            val end = a.size - 3
+            while (i < end) {
+                s0 += a[i] * b[i]
+                s1 += a[i + 1] * b[i + 1]
+                s2 += a[i + 2] * b[i + 2]
+                s3 += a[i + 3] * b[i + 3]
+                i += 4
+            }
+            while (i < a.size) {
+                s0 += a[i] * b[i]
+                i++
+            }
+            return s0 + s1 + s2 + s3
+        }
+
+        /**
+         * 两阶段检索：先用整数点积对全部候选打分，保留前 `limit * rerankFactor` 个，
+         * 再用全精度查询向量重排并按 [minScore] 过滤。
+         *
+         * @param query 查询向量，内部会归一化
+         * @param limit 返回的最大数量
+         * @param minScore 最终（重排后）相似度下限
+         */
+        fun <T> search(
+            query: FloatArray,
+            candidates: List<Pair<T, QuantizedVector>>,
+            limit: Int = Int.MAX_VALUE,
+            minScore: Float = -1f,
+            rerankFactor: Int = 4
+        ): List<Match<T>> {
+            if (candidates.isEmpty() || limit <= 0) return emptyList()
+            val normalizedQuery = l2Normalize(query)
+            val quantizedQuery = quantize(normalizedQuery)
+            val keep = if (limit >= Int.MAX_VALUE / rerankFactor) Int.MAX_VALUE else limit * rerankFactor
+            val approximateFloor = minScore - APPROXIMATION_MARGIN
+
+            // 小顶堆保存近似分最高的 keep 个候选
+            val heap = PriorityQueue<Match<Pair<T, QuantizedVector>>>(minOf(keep, candidates.size) + 1, compareBy { it.score })
+            for (candidate in candidates) {
+                val vector = candidate.second
+                if (vector.dimensions != quantizedQuery.dimensions) continue
+                val approximate = quantizedQuery.similarity(vector)
+                if (approximate < approximateFloor) continue
+                if (heap.size < keep) {
+                    heap.add(Match(candidate, approximate))
+                } else if (approximate > heap.peek()!!.score) {
+                    heap.poll()
+                    heap.add(Match(candidate, approximate))
+                }
+            }
+
+            return heap
+                .map { Match(it.value.first, it.value.second.similarity(normalizedQuery)) }
+                .filter { it.score >= minScore }
+                .sortedByDescending { it.score }
+                .take(limit)
+        }
+    }
+}
+
+/** 量化向量间的余弦距离（1 - 近似相似度），供 HNSW 索引使用 */
+object QuantizedCosineDistance : DistanceFunction<QuantizedVector, Float> {
+    private const val serialVersionUID = 1L
+
+    override fun distance(u: QuantizedVector, v: QuantizedVector): Float = 1f - u.similarity(v)
+
+    private fun readResolve(): Any = QuantizedCosineDistance
+}
+
+/** 以量化向量存入 HNSW 索引的条目，只携带ID */
+class QuantizedIndexItem<Id : Any>(
+    private val id: Id,
+    private val vector: QuantizedVector
+) : Item<Id, QuantizedVector> {
+
+    override fun id(): Id = id
+    override fun vector(): QuantizedVector = vector
+    override fun dimensions(): Int = vector.dimensions
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is QuantizedIndexItem<*>) return false
+        return id == other.id
+    }
+
+    override fun hashCode(): Int = id.hashCode()
+
+    companion object {
+        private const val serialVersionUID = 1L
+    }
+}
@@ -1,5 +1,6 @@
 package com.ai.assistance.operit.util.vector
 
+import com.github.jelmerk.hnswlib.core.DistanceFunction
 import com.github.jelmerk.hnswlib.core.DistanceFunctions
 import com.github.jelmerk.hnswlib.core.Item
 import com.github.jelmerk.hnswlib.core.hnsw.HnswIndex
@@ -10,13 +11,23 @@ import java.io.IOException
 
 /**
  * 精简的HNSW向量索引管理器，支持初始化、添加、查询、保存、加载。
+ * 向量类型与距离函数由调用方指定，浮点余弦距离见 [VectorIndexManager]。
  */
-class VectorIndexManager<T : Item<Id, FloatArray>, Id : Any>(
+open class HnswIndexManager<T : Item<Id, V>, Id : Any, V>(
     private val dimensions: Int,
     private val maxElements: Int,
-    private val indexFile: File? = null
+    private val indexFile: File? = null,
+    private val distanceFunction: DistanceFunction<V, Float>,
+    private val m: Int = DEFAULT_M,
+    private val efConstruction: Int = DEFAULT_EF_CONSTRUCTION
 ) {
-    private var index: HnswIndex<Id, FloatArray, T, Float>? = null
+    companion object {
+        /** 与 hnswlib 的默认值一致 */
+        const val DEFAULT_M = 10
+        const val DEFAULT_EF_CONSTRUCTION = 200
+    }
+
+    private var index: HnswIndex<Id, V, T, Float>? = null
 
     init {
         initIndex()
@@ -26,32 +37,55 @@ class VectorIndexManager<T : Item<Id, FloatArray>, Id : Any>(
     fun initIndex() {
         index = if (indexFile != null && indexFile.exists()) {
             try {
-                ObjectInputStream(indexFile.inputStream()).use { it.readObject() as HnswIndex<Id, FloatArray, T, Float> }
+                ObjectInputStream(indexFile.inputStream()).use { it.readObject() as HnswIndex<Id, V, T, Float> }
             } catch (e: Exception) {
                 com.ai.assistance.operit.util.AppLogger.e("VectorIndexManager", "Failed to load index, creating new one.", e)
                 // 如果加载失败，删除可能已损坏的文件并创建一个新的
                 indexFile.delete()
-                HnswIndex
-                    .newBuilder(dimensions, DistanceFunctions.FLOAT_COSINE_DISTANCE, maxElements)
-                    .build()
+                newIndex()
             }
         } else {
-            HnswIndex
-                .newBuilder(dimensions, DistanceFunctions.FLOAT_COSINE_DISTANCE, maxElements)
-                .build()
+            newIndex()
         }
     }
 
-    /** 添加一个向量项 */
+    /** 丢弃当前内容，换成一个空索引（不删除磁盘上的文件） */
+    fun clear() {
+        index = newIndex()
+    }
+
+    private fun newIndex(): HnswIndex<Id, V, T, Float> {
+        return HnswIndex
+            .newBuilder(dimensions, distanceFunction, maxElements)
+            .withM(m)
+            .withEfConstruction(efConstruction)
+            .build()
+    }
+
+    /** 添加一个向量项，容量不足时自动扩容 */
     fun addItem(item: T) {
-        index?.add(item)
+        val current = index ?: return
+        synchronized(this) {
+            if (current.size() >= current.maxItemCount) {
+                current.resize(current.maxItemCount * 2)
+            }
+        }
+        current.add(item)
     }
 
+    /** 当前索引中的向量数量 */
+    fun size(): Int = index?.size() ?: 0
+
     /** 查询最近的K个邻居 */
-    fun findNearest(query: FloatArray, k: Int): List<T> {
+    fun findNearest(query: V, k: Int): List<T> {
         return index?.findNearest(query, k)?.map { it.item() } ?: emptyList()
     }
 
+    /** 查询最近的K个邻居及其距离，按距离升序 */
+    fun findNearestWithDistance(query: V, k: Int): List<Pair<T, Float>> {
+        return index?.findNearest(query, k)?.map { it.item() to it.distance() } ?: emptyList()
+    }
+
     /** 保存索引到文件 */
     fun save() {
         if (indexFile != null && index != null) {
@@ -69,4 +103,11 @@ class VectorIndexManager<T : Item<Id, FloatArray>, Id : Any>(
     fun close() {
         index = null
     }
-} 
\ No newline at end of file
+} 
+
+/** 使用浮点余弦距离的HNSW索引 */
+class VectorIndexManager<T : Item<Id, FloatArray>, Id : Any>(
+    dimensions: Int,
+    maxElements: Int,
+    indexFile: File? = null
+) : HnswIndexManager<T, Id, FloatArray>(dimensions, maxElements, indexFile, DistanceFunctions.FLOAT_COSINE_DISTANCE)
@@ -3,6 +3,7 @@
 #include "dragonBones/DragonBonesHeaders.h"
 #include "opengl/OpenGLFactory.h"
 #include "opengl/OpenGLSlot.h"
+#include "opengl/SlotBatcher.h"
 #include <GLES2/gl2.h>
 #include <string>
 #include <vector>
@@ -29,6 +30,14 @@ namespace {
         GLint textureLocation = -1;
         GLfloat projectionMatrix[16];
 
+        // 持久化的顶点/索引缓冲，每帧由 SlotBatcher 的结果整体上传
+        GLuint vertexBuffer = 0;
+        GLuint indexBuffer = 0;
+        std::size_t vertexBufferCapacity = 0; // 字节
+        std::size_t indexBufferCapacity = 0; // 字节
+        dragonBones::opengl::SlotBatcher batcher;
+        bool lastFrameEmpty = false;
+
         // Armature transform
         float worldScale = 0.5f;
         float worldTranslateX = 0.0f;
@@ -57,6 +66,20 @@ namespace {
                 glDeleteProgram(programId);
                 programId = 0;
             }
+            deleteBuffers();
+        }
+
+        void deleteBuffers() {
+            if (vertexBuffer) {
+                glDeleteBuffers(1, &vertexBuffer);
+                vertexBuffer = 0;
+            }
+            if (indexBuffer) {
+                glDeleteBuffers(1, &indexBuffer);
+                indexBuffer = 0;
+            }
+            vertexBufferCapacity = 0;
+            indexBufferCapacity = 0;
         }
     };
 
@@ -187,15 +210,14 @@ namespace {
         matrix[10] = sz;
     }
     
-    // 辅助函数：将 DragonBones 2D 矩阵转换为 OpenGL 4x4 矩阵
-    void convertDBMatrixToGL(const dragonBones::Matrix& dbMatrix, float* glMatrix) {
-        createIdentityMatrix(glMatrix);
-        glMatrix[0] = dbMatrix.a;
-        glMatrix[1] = dbMatrix.b;
-        glMatrix[4] = dbMatrix.c;
-        glMatrix[5] = dbMatrix.d;
-        glMatrix[12] = dbMatrix.tx;
-        glMatrix[13] = dbMatrix.ty;
+    // 辅助函数：上传数据到持久缓冲，容量不足时按需扩容（扩容同时起到 orphan 旧存储的作用）
+    void uploadBuffer(GLenum target, GLuint buffer, std::size_t& capacity, const void* data, std::size_t size) {
+        glBindBuffer(target, buffer);
+        if (size > capacity) {
+            capacity = size + size / 2;
+            glBufferData(target, (GLsizeiptr)capacity, nullptr, GL_DYNAMIC_DRAW);
+        }
+        glBufferSubData(target, 0, (GLsizeiptr)size, data);
     }
 
     // 辅助函数：矩阵乘法
@@ -392,7 +414,15 @@ Java_com_dragonbones_JniBridge_onSurfaceCreated(JNIEnv *env, jclass clazz) {
     glDisable(GL_DEPTH_TEST);
     glDisable(GL_CULL_FACE);
     
-    // 2. Create shader program
+    // 2. Create shader program and persistent buffers
+    // 旧上下文的句柄已经失效，直接丢弃而不是删除
+    instance->vertexBuffer = 0;
+    instance->indexBuffer = 0;
+    instance->vertexBufferCapacity = 0;
+    instance->indexBufferCapacity = 0;
+    glGenBuffers(1, &instance->vertexBuffer);
+    glGenBuffers(1, &instance->indexBuffer);
+
     instance->programId = createShaderProgram();
     if (!instance->programId) {
         LOGE("Failed to create shader program");
@@ -439,89 +469,97 @@ Java_com_dragonbones_JniBridge_onDrawFrame(JNIEnv *env, jclass clazz) {
             // 1. Clear the screen
             glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
-            // 2. Setup the rendering program and global GL state
-            glUseProgram(instance->programId);
-            glEnableVertexAttribArray(instance->positionLocation);
-            glEnableVertexAttribArray(instance->texCoordLocation);
-            
-            glActiveTexture(GL_TEXTURE0);
-            glUniform1i(instance->textureLocation, 0);
-            
-            // 3. Create a "view" matrix to scale and center the entire armature
-            float viewMatrix[16], scaleM[16], transM[16];
-            createScaleMatrix(scaleM, instance->worldScale, instance->worldScale, 1.0f);
-            createTranslateMatrix(transM, (viewportWidth / 2.0f) + instance->worldTranslateX, (viewportHeight / 2.0f) + instance->worldTranslateY, 0.0f);
-            multiplyMatrices(transM, scaleM, viewMatrix);
-            
-            // 4. Render each slot
+            // 2. Build batches: pre-transform every visible slot into one interleaved buffer,
+            //    merging consecutive slots that share a texture into a single run
             const auto& slots = instance->armature->getSlots();
+            auto& batcher = instance->batcher;
+            batcher.begin();
 
-            int renderedSlots = 0;
             for (const auto& slot : slots) {
-                if (!slot) {
-                    LOGW("onDrawFrame: Skipping null slot.");
+                if (!slot || !slot->getVisible() || !slot->getDisplay()) {
                     continue;
                 }
 
-                if (!slot->getVisible()) {
-                    LOGW("onDrawFrame: Slot '%s' is not visible.", slot->getName().c_str());
-                    continue;
-                }
-
-                if (!slot->getDisplay()) {
-                    // LOGW("onDrawFrame: Slot '%s' has no display object.", slot->getName().c_str());
-                    continue;
-                }
-                
                 auto* openglSlot = static_cast<dragonBones::opengl::OpenGLSlot*>(slot);
-                if (!openglSlot) {
-                    LOGW("onDrawFrame: Slot '%s' could not be cast to OpenGLSlot.", slot->getName().c_str());
+                if (openglSlot->vertices.empty() || openglSlot->indices.empty() || openglSlot->textureID == 0) {
                     continue;
                 }
 
-                if (openglSlot->vertices.empty() || openglSlot->indices.empty() || openglSlot->textureID == 0) {
-                    LOGW("onDrawFrame: Skipping slot '%s' due to empty buffers or texture ID 0 (vertices: %zu, indices: %zu, textureID: %u)",
-                        slot->getName().c_str(), openglSlot->vertices.size(), openglSlot->indices.size(), openglSlot->textureID);
-                    continue;
+                // 蒙皮网格的顶点已经在骨架空间，其余 slot 需要乘上自身的全局变换
+                dragonBones::opengl::BatchTransform transform;
+                if (!openglSlot->isSkinned) {
+                    const auto& m = slot->globalTransformMatrix;
+                    transform.a = m.a;
+                    transform.b = m.b;
+                    transform.c = m.c;
+                    transform.d = m.d;
+                    transform.tx = m.tx;
+                    transform.ty = m.ty;
                 }
 
-                // A. Get this slot's unique transformation matrix
-                float slotModelMatrix[16];
-                if (openglSlot->isSkinned)
-                {
-                    createIdentityMatrix(slotModelMatrix);
+                batcher.addSlot(
+                    openglSlot->vertices.data(), openglSlot->vertices.size() / dragonBones::opengl::SlotBatcher::FLOATS_PER_VERTEX,
+                    openglSlot->indices.data(), openglSlot->indices.size(),
+                    openglSlot->textureID,
+                    openglSlot->isSkinned ? nullptr : &transform
+                );
+            }
+
+            const auto& runs = batcher.getRuns();
+            if (runs.empty()) {
+                if (!instance->lastFrameEmpty && !slots.empty()) {
+                    LOGW("onDrawFrame: Rendered 0 slots out of %zu.", slots.size());
                 }
-                else
-                {
-                    convertDBMatrixToGL(slot->globalTransformMatrix, slotModelMatrix);
+                instance->lastFrameEmpty = true;
+                return;
+            }
+            instance->lastFrameEmpty = false;
+
+            // 3. Setup the rendering program and global GL state
+            glUseProgram(instance->programId);
+            glEnableVertexAttribArray(instance->positionLocation);
+            glEnableVertexAttribArray(instance->texCoordLocation);
+
+            glActiveTexture(GL_TEXTURE0);
+            glUniform1i(instance->textureLocation, 0);
+
+            // A "view" matrix scales and centers the entire armature; MVP = Projection * View, uploaded once per frame
+            float viewMatrix[16], scaleM[16], transM[16], mvpMatrix[16];
+            createScaleMatrix(scaleM, instance->worldScale, instance->worldScale, 1.0f);
+            createTranslateMatrix(transM, (viewportWidth / 2.0f) + instance->worldTranslateX, (viewportHeight / 2.0f) + instance->worldTranslateY, 0.0f);
+            multiplyMatrices(transM, scaleM, viewMatrix);
+            multiplyMatrices(instance->projectionMatrix, viewMatrix, mvpMatrix);
+            glUniformMatrix4fv(instance->mvpMatrixLocation, 1, GL_FALSE, mvpMatrix);
+
+            // 4. Upload the batch and draw one call per run
+            const auto& batchVertices = batcher.getVertices();
+            const auto& batchIndices = batcher.getIndices();
+            uploadBuffer(GL_ARRAY_BUFFER, instance->vertexBuffer, instance->vertexBufferCapacity,
+                         batchVertices.data(), batchVertices.size() * sizeof(float));
+            uploadBuffer(GL_ELEMENT_ARRAY_BUFFER, instance->indexBuffer, instance->indexBufferCapacity,
+                         batchIndices.data(), batchIndices.size() * sizeof(unsigned short));
+
+            const GLsizei stride = dragonBones::opengl::SlotBatcher::FLOATS_PER_VERTEX * sizeof(float);
+            GLuint boundTexture = 0;
+            for (const auto& run : runs) {
+                const std::size_t vertexByteOffset = run.vertexOffset * stride;
+                glVertexAttribPointer(instance->positionLocation, 2, GL_FLOAT, GL_FALSE, stride, (const GLvoid*)vertexByteOffset);
+                glVertexAttribPointer(instance->texCoordLocation, 2, GL_FLOAT, GL_FALSE, stride, (const GLvoid*)(vertexByteOffset + 2 * sizeof(float)));
+
+                if (run.textureID != boundTexture) {
+                    glBindTexture(GL_TEXTURE_2D, run.textureID);
+                    boundTexture = run.textureID;
                 }
 
-                // B. Create the final MVP matrix: MVP = Projection * View * SlotModel
-                float pvMatrix[16], mvpMatrix[16];
-                multiplyMatrices(instance->projectionMatrix, viewMatrix, pvMatrix);
-                multiplyMatrices(pvMatrix, slotModelMatrix, mvpMatrix);
-                
-                // C. Pass the final matrix to the shader
-                glUniformMatrix4fv(instance->mvpMatrixLocation, 1, GL_FALSE, mvpMatrix);
-                
-                // D. Bind the texture and draw
-                glBindTexture(GL_TEXTURE_2D, openglSlot->textureID);
-                
-                const GLsizei stride = 4 * sizeof(float);
-                glVertexAttribPointer(instance->positionLocation, 2, GL_FLOAT, GL_FALSE, stride, openglSlot->vertices.data());
-                glVertexAttribPointer(instance->texCoordLocation, 2, GL_FLOAT, GL_FALSE, stride, (const GLvoid*)(openglSlot->vertices.data() + 2));
-                
-                glDrawElements(GL_TRIANGLES, openglSlot->indices.size(), GL_UNSIGNED_SHORT, openglSlot->indices.data());
-                renderedSlots++;
-            }
-            
-            if (renderedSlots == 0 && !slots.empty()) {
-                LOGW("onDrawFrame: Rendered 0 slots out of %zu.", slots.size());
+                glDrawElements(GL_TRIANGLES, (GLsizei)run.indexCount, GL_UNSIGNED_SHORT,
+                               (const GLvoid*)(run.indexOffset * sizeof(unsigned short)));
             }
-            
+
             // 5. Cleanup
             glDisableVertexAttribArray(instance->positionLocation);
             glDisableVertexAttribArray(instance->texCoordLocation);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
         }
     }
 }
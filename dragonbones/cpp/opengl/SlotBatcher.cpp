@@ -0,0 +1,97 @@
+#include "opengl/SlotBatcher.h"
+
+namespace dragonBones
+{
+
+namespace opengl
+{
+
+void SlotBatcher::begin()
+{
+    _vertices.clear();
+    _indices.clear();
+    _runs.clear();
+    _slotCount = 0;
+}
+
+bool SlotBatcher::addSlot(
+    const float* vertices, std::size_t vertexCount,
+    const unsigned short* indices, std::size_t indexCount,
+    unsigned int textureID,
+    const BatchTransform* transform
+)
+{
+    if (vertices == nullptr || indices == nullptr || vertexCount == 0 || indexCount == 0 || textureID == 0)
+    {
+        return false;
+    }
+
+    if (vertexCount > MAX_VERTICES_PER_RUN)
+    {
+        return false;
+    }
+
+    for (std::size_t i = 0; i < indexCount; ++i)
+    {
+        if (indices[i] >= vertexCount)
+        {
+            return false;
+        }
+    }
+
+    // 纹理切换或索引即将溢出时开启新的 run
+    if (_runs.empty() || _runs.back().textureID != textureID || _runs.back().vertexCount + vertexCount > MAX_VERTICES_PER_RUN)
+    {
+        BatchRun run;
+        run.textureID = textureID;
+        run.vertexOffset = getVertexCount();
+        run.indexOffset = _indices.size();
+        _runs.push_back(run);
+    }
+
+    auto& run = _runs.back();
+    const auto base = (unsigned short)run.vertexCount;
+
+    const auto vertexStart = _vertices.size();
+    _vertices.resize(vertexStart + vertexCount * FLOATS_PER_VERTEX);
+    float* out = _vertices.data() + vertexStart;
+
+    if (transform != nullptr)
+    {
+        const float a = transform->a, b = transform->b, c = transform->c, d = transform->d;
+        const float tx = transform->tx, ty = transform->ty;
+        for (std::size_t i = 0; i < vertexCount; ++i)
+        {
+            const float* v = vertices + i * FLOATS_PER_VERTEX;
+            float* o = out + i * FLOATS_PER_VERTEX;
+            o[0] = a * v[0] + c * v[1] + tx;
+            o[1] = b * v[0] + d * v[1] + ty;
+            o[2] = v[2];
+            o[3] = v[3];
+        }
+    }
+    else
+    {
+        for (std::size_t i = 0, l = vertexCount * FLOATS_PER_VERTEX; i < l; ++i)
+        {
+            out[i] = vertices[i];
+        }
+    }
+
+    const auto indexStart = _indices.size();
+    _indices.resize(indexStart + indexCount);
+    unsigned short* indexOut = _indices.data() + indexStart;
+    for (std::size_t i = 0; i < indexCount; ++i)
+    {
+        indexOut[i] = (unsigned short)(indices[i] + base);
+    }
+
+    run.vertexCount += vertexCount;
+    run.indexCount += indexCount;
+    ++_slotCount;
+    return true;
+}
+
+}  // namespace opengl
+
+}  // namespace dragonBones
@@ -0,0 +1,93 @@
+#ifndef DRAGONBONES_OPENGL_SLOT_BATCHER_H
+#define DRAGONBONES_OPENGL_SLOT_BATCHER_H
+
+#include <cstddef>
+#include <vector>
+
+namespace dragonBones
+{
+
+namespace opengl
+{
+
+/**
+ * 2D 仿射变换，布局与 dragonBones::Matrix 一致：
+ * x' = a * x + c * y + tx
+ * y' = b * x + d * y + ty
+ */
+struct BatchTransform
+{
+    float a = 1.0f;
+    float b = 0.0f;
+    float c = 0.0f;
+    float d = 1.0f;
+    float tx = 0.0f;
+    float ty = 0.0f;
+};
+
+/**
+ * 一段连续使用同一纹理的绘制批次。
+ * 索引相对于 vertexOffset，绘制时将顶点属性指针偏移到 vertexOffset 即可（GLES2 没有 baseVertex）。
+ */
+struct BatchRun
+{
+    unsigned int textureID = 0;
+    std::size_t vertexOffset = 0; // 以顶点为单位
+    std::size_t vertexCount = 0;
+    std::size_t indexOffset = 0; // 以索引为单位
+    std::size_t indexCount = 0;
+};
+
+/**
+ * CPU 端几何合批。
+ *
+ * 每帧按绘制顺序把各 slot 的顶点（x, y, u, v 交错）在 CPU 上变换到骨架空间，
+ * 写入同一个交错顶点缓冲；相邻且纹理相同的 slot 合并为一个 BatchRun，
+ * 这样整帧只需一次 MVP 上传和每个 run 一次 glDrawElements。
+ *
+ * 不依赖 GL 或 DragonBones 运行时，可在主机端单独编译测试。
+ * 内部缓冲在 begin() 时只清空不释放，稳定状态下每帧不分配内存。
+ */
+class SlotBatcher
+{
+public:
+    static constexpr std::size_t FLOATS_PER_VERTEX = 4;
+    // unsigned short 索引可寻址的最大顶点数
+    static constexpr std::size_t MAX_VERTICES_PER_RUN = 65536;
+
+    /** 开始新的一帧，保留已分配的容量 */
+    void begin();
+
+    /**
+     * 追加一个 slot。
+     * @param vertices x, y, u, v 交错的顶点数组
+     * @param vertexCount 顶点数量
+     * @param indices 三角形索引（相对于该 slot 的顶点）
+     * @param transform slot 的全局变换；为 nullptr 表示顶点已在骨架空间（如蒙皮网格）
+     * @return 数据无效（空数据、纹理为 0、索引越界或超过单批上限）时返回 false 且不写入任何内容
+     */
+    bool addSlot(
+        const float* vertices, std::size_t vertexCount,
+        const unsigned short* indices, std::size_t indexCount,
+        unsigned int textureID,
+        const BatchTransform* transform
+    );
+
+    const std::vector<float>& getVertices() const { return _vertices; }
+    const std::vector<unsigned short>& getIndices() const { return _indices; }
+    const std::vector<BatchRun>& getRuns() const { return _runs; }
+    std::size_t getSlotCount() const { return _slotCount; }
+    std::size_t getVertexCount() const { return _vertices.size() / FLOATS_PER_VERTEX; }
+
+private:
+    std::vector<float> _vertices;
+    std::vector<unsigned short> _indices;
+    std::vector<BatchRun> _runs;
+    std::size_t _slotCount = 0;
+};
+
+}  // namespace opengl
+
+}  // namespace dragonBones
+
+#endif // DRAGONBONES_OPENGL_SLOT_BATCHER_H
@@ -0,0 +1,246 @@
+#include "opengl/SlotBatcher.h"
+
+#include <chrono>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <vector>
+
+using dragonBones::opengl::BatchRun;
+using dragonBones::opengl::BatchTransform;
+using dragonBones::opengl::SlotBatcher;
+
+namespace {
+
+int failures = 0;
+
+#define EXPECT(cond)                                                        \
+    do {                                                                    \
+        if (!(cond)) {                                                      \
+            std::fprintf(stderr, "%s:%d: EXPECT(%s) failed\n", __FILE__, __LINE__, #cond); \
+            ++failures;                                                     \
+        }                                                                   \
+    } while (0)
+
+bool near(float a, float b) { return std::fabs(a - b) < 1e-4f; }
+
+struct Quad {
+    float vertices[16];
+    unsigned short indices[6] = {0, 1, 2, 1, 3, 2};
+
+    Quad(float w, float h) {
+        const float v[16] = {
+            -w / 2, h / 2, 0.0f, 1.0f,
+            w / 2, h / 2, 1.0f, 1.0f,
+            -w / 2, -h / 2, 0.0f, 0.0f,
+            w / 2, -h / 2, 1.0f, 0.0f,
+        };
+        std::memcpy(vertices, v, sizeof(v));
+    }
+};
+
+void testTransformsVerticesAndKeepsUv() {
+    SlotBatcher batcher;
+    Quad quad(2.0f, 4.0f);
+    BatchTransform t;
+    t.a = 0.0f; t.b = 1.0f; t.c = -1.0f; t.d = 0.0f; // 旋转 90°
+    t.tx = 10.0f; t.ty = 20.0f;
+
+    batcher.begin();
+    EXPECT(batcher.addSlot(quad.vertices, 4, quad.indices, 6, 7, &t));
+
+    const auto& v = batcher.getVertices();
+    EXPECT(v.size() == 16);
+    // (-1, 2) -> (-2 + 10, -1 + 20)
+    EXPECT(near(v[0], 8.0f));
+    EXPECT(near(v[1], 19.0f));
+    EXPECT(near(v[2], 0.0f));
+    EXPECT(near(v[3], 1.0f));
+}
+
+void testMergesConsecutiveSlotsWithSameTexture() {
+    SlotBatcher batcher;
+    Quad quad(1.0f, 1.0f);
+
+    batcher.begin();
+    EXPECT(batcher.addSlot(quad.vertices, 4, quad.indices, 6, 1, nullptr));
+    EXPECT(batcher.addSlot(quad.vertices, 4, quad.indices, 6, 1, nullptr));
+    EXPECT(batcher.addSlot(quad.vertices, 4, quad.indices, 6, 2, nullptr));
+    EXPECT(batcher.addSlot(quad.vertices, 4, quad.indices, 6, 1, nullptr));
+
+    const auto& runs = batcher.getRuns();
+    // 保持绘制顺序：1,1 | 2 | 1
+    EXPECT(runs.size() == 3);
+    EXPECT(runs[0].textureID == 1 && runs[0].indexCount == 12 && runs[0].vertexCount == 8);
+    EXPECT(runs[1].textureID == 2 && runs[1].vertexOffset == 8 && runs[1].indexOffset == 12);
+    EXPECT(runs[2].textureID == 1 && runs[2].vertexOffset == 12 && runs[2].indexOffset == 18);
+
+    // 第二个 slot 的索引相对于 run 起点重新编号
+    const auto& indices = batcher.getIndices();
+    EXPECT(indices[6] == 4 && indices[7] == 5 && indices[8] == 6);
+    // 新 run 的索引从 0 开始
+    EXPECT(indices[12] == 0);
+    EXPECT(batcher.getSlotCount() == 4);
+}
+
+void testRejectsInvalidSlots() {
+    SlotBatcher batcher;
+    Quad quad(1.0f, 1.0f);
+    unsigned short badIndices[3] = {0, 1, 4};
+
+    batcher.begin();
+    EXPECT(!batcher.addSlot(quad.vertices, 4, quad.indices, 6, 0, nullptr));
+    EXPECT(!batcher.addSlot(quad.vertices, 0, quad.indices, 6, 1, nullptr));
+    EXPECT(!batcher.addSlot(quad.vertices, 4, badIndices, 3, 1, nullptr));
+    EXPECT(batcher.getRuns().empty());
+    EXPECT(batcher.getVertices().empty());
+}
+
+void testSplitsRunBeforeIndexOverflow() {
+    SlotBatcher batcher;
+    const std::size_t vertexCount = 40000;
+    std::vector<float> vertices(vertexCount * SlotBatcher::FLOATS_PER_VERTEX, 0.0f);
+    std::vector<unsigned short> indices = {0, 1, (unsigned short)(vertexCount - 1)};
+
+    batcher.begin();
+    EXPECT(batcher.addSlot(vertices.data(), vertexCount, indices.data(), 3, 1, nullptr));
+    EXPECT(batcher.addSlot(vertices.data(), vertexCount, indices.data(), 3, 1, nullptr));
+
+    const auto& runs = batcher.getRuns();
+    EXPECT(runs.size() == 2);
+    EXPECT(runs[1].vertexOffset == vertexCount);
+    EXPECT(batcher.getIndices()[5] == vertexCount - 1);
+}
+
+void testBeginReusesCapacity() {
+    SlotBatcher batcher;
+    Quad quad(1.0f, 1.0f);
+    batcher.begin();
+    for (int i = 0; i < 10; ++i) batcher.addSlot(quad.vertices, 4, quad.indices, 6, 1, nullptr);
+    const float* before = batcher.getVertices().data();
+
+    batcher.begin();
+    EXPECT(batcher.getVertices().empty());
+    for (int i = 0; i < 10; ++i) batcher.addSlot(quad.vertices, 4, quad.indices, 6, 1, nullptr);
+    EXPECT(batcher.getVertices().data() == before);
+}
+
+/**
+ * 帧时间基准：模拟一个桌宠骨架（80 个 slot，两张图集，少量网格），
+ * 对比逐 slot 计算 Projection × View × Model（旧渲染循环的 CPU 部分）与合批构建的耗时，
+ * 并给出合批后的 draw call 数量。
+ */
+void runBenchmark() {
+    const int slotCount = 80;
+    const int frames = 20000;
+
+    struct SyntheticSlot {
+        std::vector<float> vertices;
+        std::vector<unsigned short> indices;
+        unsigned int textureID;
+        BatchTransform transform;
+    };
+
+    std::vector<SyntheticSlot> slots;
+    for (int i = 0; i < slotCount; ++i) {
+        SyntheticSlot slot;
+        const bool isMesh = i % 8 == 0;
+        const int gridSize = isMesh ? 8 : 1;
+        for (int y = 0; y <= gridSize; ++y) {
+            for (int x = 0; x <= gridSize; ++x) {
+                slot.vertices.push_back((float)x * 10.0f);
+                slot.vertices.push_back((float)y * 10.0f);
+                slot.vertices.push_back((float)x / gridSize);
+                slot.vertices.push_back((float)y / gridSize);
+            }
+        }
+        for (int y = 0; y < gridSize; ++y) {
+            for (int x = 0; x < gridSize; ++x) {
+                const auto i0 = (unsigned short)(y * (gridSize + 1) + x);
+                const auto i1 = (unsigned short)(i0 + 1);
+                const auto i2 = (unsigned short)(i0 + gridSize + 1);
+                const auto i3 = (unsigned short)(i2 + 1);
+                slot.indices.insert(slot.indices.end(), {i0, i1, i2, i1, i3, i2});
+            }
+        }
+        slot.textureID = i < slotCount * 3 / 4 ? 1 : 2;
+        slot.transform.a = std::cos(i * 0.1f);
+        slot.transform.b = std::sin(i * 0.1f);
+        slot.transform.c = -slot.transform.b;
+        slot.transform.d = slot.transform.a;
+        slot.transform.tx = (float)i;
+        slot.transform.ty = (float)-i;
+        slots.push_back(slot);
+    }
+
+    // 旧路径：每个 slot 做两次 4x4 矩阵乘法
+    float projection[16] = {0}, view[16] = {0};
+    for (int i = 0; i < 16; i += 5) { projection[i] = 1.0f; view[i] = 0.5f; }
+    volatile float sink = 0.0f;
+    auto multiply = [](const float* a, const float* b, float* r) {
+        for (int i = 0; i < 4; i++)
+            for (int j = 0; j < 4; j++) {
+                float sum = 0.0f;
+                for (int k = 0; k < 4; k++) sum += a[k * 4 + i] * b[j * 4 + k];
+                r[j * 4 + i] = sum;
+            }
+    };
+
+    auto start = std::chrono::steady_clock::now();
+    for (int f = 0; f < frames; ++f) {
+        for (const auto& slot : slots) {
+            float model[16] = {0}, pv[16], mvp[16];
+            model[0] = slot.transform.a; model[1] = slot.transform.b;
+            model[4] = slot.transform.c; model[5] = slot.transform.d;
+            model[10] = 1.0f; model[15] = 1.0f;
+            model[12] = slot.transform.tx; model[13] = slot.transform.ty;
+            multiply(projection, view, pv);
+            multiply(pv, model, mvp);
+            sink = sink + mvp[0];
+        }
+    }
+    const double perSlotUs = std::chrono::duration<double, std::micro>(std::chrono::steady_clock::now() - start).count() / frames;
+
+    SlotBatcher batcher;
+    start = std::chrono::steady_clock::now();
+    for (int f = 0; f < frames; ++f) {
+        batcher.begin();
+        for (const auto& slot : slots) {
+            batcher.addSlot(slot.vertices.data(), slot.vertices.size() / SlotBatcher::FLOATS_PER_VERTEX,
+                            slot.indices.data(), slot.indices.size(), slot.textureID, &slot.transform);
+        }
+        sink = sink + batcher.getVertices()[0];
+    }
+    const double batchedUs = std::chrono::duration<double, std::micro>(std::chrono::steady_clock::now() - start).count() / frames;
+
+    std::printf("slots: %d, vertices/frame: %zu, upload bytes/frame: %zu\n",
+                slotCount, batcher.getVertexCount(),
+                batcher.getVertices().size() * sizeof(float) + batcher.getIndices().size() * sizeof(unsigned short));
+    std::printf("per-slot matrices (old CPU path): %.2f us/frame, %d draw calls, %d uniform uploads\n",
+                perSlotUs, slotCount, slotCount);
+    std::printf("batched build: %.2f us/frame, %zu draw calls, 1 uniform upload\n",
+                batchedUs, batcher.getRuns().size());
+}
+
+}  // namespace
+
+int main(int argc, char** argv) {
+    if (argc > 1 && std::strcmp(argv[1], "--bench") == 0) {
+        runBenchmark();
+        return 0;
+    }
+
+    testTransformsVerticesAndKeepsUv();
+    testMergesConsecutiveSlotsWithSameTexture();
+    testRejectsInvalidSlots();
+    testSplitsRunBeforeIndexOverflow();
+    testBeginReusesCapacity();
+
+    if (failures > 0) {
+        std::fprintf(stderr, "%d expectation(s) failed\n", failures);
+        return EXIT_FAILURE;
+    }
+    std::printf("All SlotBatcher tests passed\n");
+    return EXIT_SUCCESS;
+}
@@ -9,6 +9,7 @@ import {
     ChatServiceStartResultData,
     ChatCreationResultData,
     ChatListResultData,
+    ChatHistorySearchResultData,
     ChatSwitchResultData,
     MessageSendResultData
 } from './results';
@@ -36,6 +37,15 @@ export namespace Chat {
      */
     function listAll(): Promise<ChatListResultData>;
 
+    /**
+     * Search messages across all chats (keyword + semantic)
+     * @param query - The keyword or question to search for
+     * @param chatId - Optional chat IDs (comma-separated) to restrict the search to
+     * @param limit - Optional maximum number of results (1-20, default 5)
+     * @returns Promise resolving to the matched messages
+     */
+    function search(query: string, chatId?: string, limit?: number): Promise<ChatHistorySearchResultData>;
+
     /**
      * Switch to a specific chat conversation
      * @param chatId - The ID of the chat to switch to
@@ -997,6 +997,36 @@ export interface ChatListResultData {
     toString(): string;
 }
 
+/**
+ * A message matched by a chat history search
+ */
+export interface ChatHistorySearchHit {
+    /** The ID of the chat containing the message */
+    chatId: string;
+    /** The title of the chat */
+    chatTitle: string;
+    /** Message sender, "user" or "ai" */
+    sender: string;
+    /** Message timestamp */
+    timestamp: number;
+    /** The matched part of the message */
+    snippet: string;
+    /** Fused relevance score */
+    score: number;
+}
+
+/**
+ * Chat history search result data
+ */
+export interface ChatHistorySearchResultData {
+    /** The query that was searched */
+    query: string;
+    /** Matched messages, most relevant first */
+    hits: ChatHistorySearchHit[];
+    /** Returns a formatted string representation */
+    toString(): string;
+}
+
 /**
  * Chat switch result data
  */
@@ -13,7 +13,7 @@ import {
     UIPageResultData, UIActionResultData, CombinedOperationResultData, AutomationExecutionResultData,
     CalculationResultData, FFmpegResultData, ADBResultData, IntentResultData, TerminalCommandResultData,
     FilePartContentData, FileApplyResultData, WorkflowListResultData, WorkflowResultData, WorkflowDetailResultData,
-    StringResultData, ChatServiceStartResultData, ChatCreationResultData, ChatListResultData,
+    StringResultData, ChatServiceStartResultData, ChatCreationResultData, ChatListResultData, ChatHistorySearchResultData,
     ChatSwitchResultData, MessageSendResultData, MemoryLinkResultData, GrepResultData
 } from './results';
 
@@ -109,6 +109,7 @@ export interface ToolResultMap {
     'start_chat_service': ChatServiceStartResultData;
     'create_new_chat': ChatCreationResultData;
     'list_chats': ChatListResultData;
+    'search_chat_history': ChatHistorySearchResultData;
     'switch_chat': ChatSwitchResultData;
     'send_message_to_ai': MessageSendResultData;
 
@@ -8,6 +8,9 @@ import android.os.RemoteException;
 
 public interface IShowerService extends IInterface {
 
+    /** The server adapts bitrate and frame rate from {@link #reportVideoFeedback}. */
+    int CAPABILITY_VIDEO_FEEDBACK = 1;
+
     int ensureDisplay(int width, int height, int dpi, int bitrateKbps) throws RemoteException;
 
     void destroyDisplay(int displayId) throws RemoteException;
@@ -48,6 +51,19 @@ public interface IShowerService extends IInterface {
 
     void setVideoSink(int displayId, IBinder sink) throws RemoteException;
 
+    /**
+     * Client-side decode statistics used by the server to adapt bitrate and frame rate.
+     * One-way: never blocks the caller's decoder thread.
+     */
+    void reportVideoFeedback(int displayId, int decodeLatencyMs, int queueDepth, int droppedFrames, boolean requestKeyFrame)
+            throws RemoteException;
+
+    /**
+     * Bit set of {@code CAPABILITY_*} flags. Servers built before this call existed do not
+     * handle the transaction, and the proxy reports 0 for them.
+     */
+    int getCapabilities() throws RemoteException;
+
     abstract class Stub extends Binder implements IShowerService {
 
         private static final String DESCRIPTOR = "com.ai.assistance.shower.IShowerService";
@@ -64,6 +80,8 @@ public interface IShowerService extends IInterface {
         static final int TRANSACTION_injectKeyWithMeta = IBinder.FIRST_CALL_TRANSACTION + 10;
         static final int TRANSACTION_setVideoSink = IBinder.FIRST_CALL_TRANSACTION + 11;
         static final int TRANSACTION_injectTouchEvent = IBinder.FIRST_CALL_TRANSACTION + 12;
+        static final int TRANSACTION_reportVideoFeedback = IBinder.FIRST_CALL_TRANSACTION + 13;
+        static final int TRANSACTION_getCapabilities = IBinder.FIRST_CALL_TRANSACTION + 14;
 
         public Stub() {
             attachInterface(this, DESCRIPTOR);
@@ -232,6 +250,23 @@ public interface IShowerService extends IInterface {
                     reply.writeNoException();
                     return true;
                 }
+                case TRANSACTION_reportVideoFeedback: {
+                    data.enforceInterface(DESCRIPTOR);
+                    int displayId = data.readInt();
+                    int decodeLatencyMs = data.readInt();
+                    int queueDepth = data.readInt();
+                    int droppedFrames = data.readInt();
+                    boolean requestKeyFrame = data.readInt() != 0;
+                    reportVideoFeedback(displayId, decodeLatencyMs, queueDepth, droppedFrames, requestKeyFrame);
+                    return true;
+                }
+                case TRANSACTION_getCapabilities: {
+                    data.enforceInterface(DESCRIPTOR);
+                    int result = getCapabilities();
+                    reply.writeNoException();
+                    reply.writeInt(result);
+                    return true;
+                }
             }
             return super.onTransact(code, data, reply, flags);
         }
@@ -492,6 +527,46 @@ public interface IShowerService extends IInterface {
                     data.recycle();
                 }
             }
+
+            @Override
+            public void reportVideoFeedback(
+                    int displayId,
+                    int decodeLatencyMs,
+                    int queueDepth,
+                    int droppedFrames,
+                    boolean requestKeyFrame
+            ) throws RemoteException {
+                Parcel data = Parcel.obtain();
+                try {
+                    data.writeInterfaceToken(DESCRIPTOR);
+                    data.writeInt(displayId);
+                    data.writeInt(decodeLatencyMs);
+                    data.writeInt(queueDepth);
+                    data.writeInt(droppedFrames);
+                    data.writeInt(requestKeyFrame ? 1 : 0);
+                    remote.transact(TRANSACTION_reportVideoFeedback, data, null, IBinder.FLAG_ONEWAY);
+                } finally {
+                    data.recycle();
+                }
+            }
+
+            @Override
+            public int getCapabilities() throws RemoteException {
+                Parcel data = Parcel.obtain();
+                Parcel reply = Parcel.obtain();
+                try {
+                    data.writeInterfaceToken(DESCRIPTOR);
+                    // Older servers fall through to Binder.onTransact and return false for unknown codes.
+                    if (!remote.transact(TRANSACTION_getCapabilities, data, reply, 0)) {
+                        return 0;
+                    }
+                    reply.readException();
+                    return reply.readInt();
+                } finally {
+                    reply.recycle();
+                    data.recycle();
+                }
+            }
         }
     }
 }
@@ -0,0 +1,119 @@
+package com.ai.assistance.showerclient
+
+/**
+ * Allocation-free helpers for H.264 access units as delivered by the Shower server.
+ */
+internal object H264Packets {
+
+    const val NAL_SLICE = 1
+    const val NAL_IDR = 5
+    const val NAL_SPS = 7
+    const val NAL_PPS = 8
+
+    /** Packet carries SPS/PPS only. */
+    const val FLAG_CONFIG = 1
+
+    /** Packet contains an IDR slice; decoding can restart here. */
+    const val FLAG_KEY_FRAME = 2
+
+    /** At least one slice has nal_ref_idc != 0, i.e. later frames depend on it. */
+    const val FLAG_REFERENCE = 4
+
+    /** True if the packet already starts with a 3- or 4-byte Annex B start code. */
+    fun isAnnexB(data: ByteArray, offset: Int, length: Int): Boolean {
+        if (length < 3) return false
+        if (data[offset].toInt() != 0 || data[offset + 1].toInt() != 0) return false
+        val b2 = data[offset + 2].toInt()
+        return b2 == 1 || (b2 == 0 && length >= 4 && data[offset + 3].toInt() == 1)
+    }
+
+    /**
+     * Rewrites an AVCC packet (4-byte big-endian NAL lengths) to Annex B in place.
+     * A 4-byte length and a 4-byte start code have the same size, so nothing moves.
+     *
+     * @return false if the packet is not a well-formed AVCC sequence; it is then left untouched
+     */
+    fun avccToAnnexbInPlace(data: ByteArray, offset: Int, length: Int): Boolean {
+        val end = offset + length
+        // Validate the whole chain first so that a malformed packet is never half rewritten.
+        var i = offset
+        var count = 0
+        while (i + 4 <= end) {
+            val nalLen = readInt(data, i)
+            i += 4
+            if (nalLen <= 0 || nalLen > end - i) return false
+            i += nalLen
+            count++
+        }
+        if (i != end || count == 0) return false
+
+        i = offset
+        while (i < end) {
+            val nalLen = readInt(data, i)
+            data[i] = 0
+            data[i + 1] = 0
+            data[i + 2] = 0
+            data[i + 3] = 1
+            i += 4 + nalLen
+        }
+        return true
+    }
+
+    /** Converts to Annex B in place when needed; returns false if the packet is neither format. */
+    fun normalize(data: ByteArray, offset: Int, length: Int): Boolean {
+        return isAnnexB(data, offset, length) || avccToAnnexbInPlace(data, offset, length)
+    }
+
+    /** Type of the first NAL unit in an Annex B packet, or -1. */
+    fun firstNalType(data: ByteArray, offset: Int, length: Int): Int {
+        val start = nextNalStart(data, offset, offset + length)
+        return if (start >= 0) data[start].toInt() and 0x1F else -1
+    }
+
+    /** Combination of [FLAG_CONFIG], [FLAG_KEY_FRAME] and [FLAG_REFERENCE] for an Annex B packet. */
+    fun classify(data: ByteArray, offset: Int, length: Int): Int {
+        val end = offset + length
+        var flags = 0
+        var hasSlice = false
+        var hasConfig = false
+        var pos = nextNalStart(data, offset, end)
+        while (pos in 0 until end) {
+            val header = data[pos].toInt()
+            val type = header and 0x1F
+            val refIdc = (header shr 5) and 0x03
+            when (type) {
+                NAL_SPS, NAL_PPS -> hasConfig = true
+                NAL_IDR -> {
+                    hasSlice = true
+                    flags = flags or FLAG_KEY_FRAME or FLAG_REFERENCE
+                }
+                in NAL_SLICE..4 -> {
+                    hasSlice = true
+                    if (refIdc != 0) flags = flags or FLAG_REFERENCE
+                }
+            }
+            pos = nextNalStart(data, pos + 1, end)
+        }
+        if (hasConfig && !hasSlice) flags = flags or FLAG_CONFIG
+        return flags
+    }
+
+    /** Index of the first NAL header byte after a start code at or after [from], or -1. */
+    private fun nextNalStart(data: ByteArray, from: Int, end: Int): Int {
+        var i = from
+        while (i + 2 < end) {
+            if (data[i].toInt() == 0 && data[i + 1].toInt() == 0 && data[i + 2].toInt() == 1) {
+                return if (i + 3 < end) i + 3 else -1
+            }
+            i++
+        }
+        return -1
+    }
+
+    private fun readInt(data: ByteArray, i: Int): Int {
+        return ((data[i].toInt() and 0xFF) shl 24) or
+            ((data[i + 1].toInt() and 0xFF) shl 16) or
+            ((data[i + 2].toInt() and 0xFF) shl 8) or
+            (data[i + 3].toInt() and 0xFF)
+    }
+}
@@ -28,6 +28,26 @@ class ShowerController {
         @Volatile
         private var binderService: IShowerService? = null
 
+        /** getCapabilities() result and the service it was queried from; a restarted server is queried again. */
+        @Volatile
+        private var serviceCapabilities: Pair<IShowerService, Int>? = null
+
+        /** Capability flags of [service]. Performs a Binder call on first use; not for the main thread. */
+        private fun capabilitiesOf(service: IShowerService): Int {
+            serviceCapabilities?.let { (cached, flags) -> if (cached === service) return flags }
+            val flags = try {
+                service.getCapabilities()
+            } catch (e: Exception) {
+                Log.w(TAG, "getCapabilities failed", e)
+                0
+            }
+            if (flags and IShowerService.CAPABILITY_VIDEO_FEEDBACK == 0) {
+                Log.i(TAG, "Shower server does not support video feedback; adaptive bitrate is disabled")
+            }
+            serviceCapabilities = service to flags
+            return flags
+        }
+
         private suspend fun getBinder(context: Context? = null): IShowerService? = withContext(Dispatchers.IO) {
             if (binderService?.asBinder()?.isBinderAlive == true) {
                 return@withContext binderService
@@ -141,6 +161,28 @@ class ShowerController {
         }
     }
 
+    /**
+     * Forwards decoder health to the server so it can adapt bitrate and frame rate.
+     * One-way Binder call; safe to invoke from the decoder thread.
+     * Skipped when the running server predates the feedback transaction.
+     */
+    fun reportVideoFeedback(feedback: ShowerVideoFeedback) {
+        val service = binderService ?: return
+        val id = virtualDisplayId ?: return
+        if (capabilitiesOf(service) and IShowerService.CAPABILITY_VIDEO_FEEDBACK == 0) return
+        try {
+            service.reportVideoFeedback(
+                id,
+                feedback.decodeLatencyMs,
+                feedback.queueDepth,
+                feedback.droppedFrames,
+                feedback.requestKeyFrame,
+            )
+        } catch (e: Exception) {
+            Log.w(TAG, "reportVideoFeedback failed for $id", e)
+        }
+    }
+
     suspend fun requestScreenshot(timeoutMs: Long = 3000L): ByteArray? =
         withContext(Dispatchers.IO) {
             val service = getBinder() ?: return@withContext null
@@ -2,11 +2,12 @@ package com.ai.assistance.showerclient
 
 import android.graphics.Bitmap
 import android.media.MediaCodec
-import android.media.MediaCodec.BufferInfo
 import android.media.MediaFormat
 import android.os.Build
 import android.os.Handler
+import android.os.HandlerThread
 import android.os.Looper
+import android.os.SystemClock
 import android.util.Log
 import android.view.PixelCopy
 import android.view.Surface
@@ -17,14 +18,34 @@ import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.withContext
 import kotlin.coroutines.resume
 
+/**
+ * Decoder health reported back to the Shower server so that it can adapt bitrate and frame rate.
+ */
+data class ShowerVideoFeedback(
+    /** Smoothed time from packet arrival to the decoded frame being rendered. */
+    val decodeLatencyMs: Int,
+    /** Packets waiting for a decoder input buffer. */
+    val queueDepth: Int,
+    /** Packets dropped since the previous report. */
+    val droppedFrames: Int,
+    /** The decoder lost a reference frame and cannot continue until the next IDR. */
+    val requestKeyFrame: Boolean,
+)
+
 /**
  * H.264 decoder that renders the Shower video stream onto a Surface.
  * Each instance handles one video stream for a specific virtual display.
+ *
+ * The decoder runs in asynchronous mode. A packet is normalized to Annex B in place and,
+ * when an input buffer is free, copied straight into it; otherwise it waits in a small
+ * bounded queue backed by pooled direct buffers, shedding non-reference frames first.
  */
 class ShowerVideoRenderer {
 
     companion object {
         private const val TAG = "ShowerVideoRenderer"
+        private const val QUEUE_CAPACITY = 6
+        private const val FEEDBACK_INTERVAL_MS = 500L
     }
 
     private val lock = Any()
@@ -41,7 +62,15 @@ class ShowerVideoRenderer {
     @Volatile
     private var csd1: ByteArray? = null
 
-    private val pendingFrames = mutableListOf<ByteArray>()
+    private val framePool = VideoFramePool()
+    private val pendingFrames = VideoFrameQueue(QUEUE_CAPACITY, framePool)
+
+    /** Input buffer indices handed to us by the codec but not yet filled. */
+    private var freeInputs = IntArray(16)
+    private var freeInputCount = 0
+
+    private var codecThread: HandlerThread? = null
+    private var codecHandler: Handler? = null
 
     @Volatile
     private var width: Int = 0
@@ -52,6 +81,57 @@ class ShowerVideoRenderer {
     @Volatile
     private var warnedNoSurface: Boolean = false
 
+    @Volatile
+    private var feedbackListener: ((ShowerVideoFeedback) -> Unit)? = null
+
+    private var latencyEwmaMs = 0.0
+    private var keyFrameNeeded = false
+    private var lastFeedbackMs = 0L
+
+    private val codecCallback = object : MediaCodec.Callback() {
+        override fun onInputBufferAvailable(codec: MediaCodec, index: Int) {
+            val feedback: ShowerVideoFeedback?
+            synchronized(lock) {
+                if (codec !== decoder) return
+                pushFreeInputLocked(index)
+                drainPendingLocked(codec)
+                feedback = if (keyFrameNeeded) takeFeedbackLocked(force = true) else null
+            }
+            feedback?.let { dispatchFeedback(it) }
+        }
+
+        override fun onOutputBufferAvailable(codec: MediaCodec, index: Int, info: MediaCodec.BufferInfo) {
+            val feedback: ShowerVideoFeedback?
+            synchronized(lock) {
+                if (codec !== decoder) return
+                val latencyMs = (SystemClock.elapsedRealtimeNanos() / 1000 - info.presentationTimeUs) / 1000.0
+                if (latencyMs >= 0) {
+                    latencyEwmaMs = if (latencyEwmaMs == 0.0) latencyMs else latencyEwmaMs * 0.8 + latencyMs * 0.2
+                }
+                try {
+                    codec.releaseOutputBuffer(index, true)
+                } catch (e: Exception) {
+                    Log.w(TAG, "releaseOutputBuffer failed", e)
+                }
+                feedback = takeFeedbackLocked(force = false)
+            }
+            feedback?.let { dispatchFeedback(it) }
+        }
+
+        override fun onError(codec: MediaCodec, e: MediaCodec.CodecException) {
+            synchronized(lock) {
+                if (codec !== decoder) return
+                Log.e(TAG, "Decoder error", e)
+                // Do not release the codec from inside its own callback; recover on the next loop turn.
+                codecHandler?.post { recoverFromError(codec) }
+            }
+        }
+
+        override fun onOutputFormatChanged(codec: MediaCodec, format: MediaFormat) {
+            Log.d(TAG, "Decoder output format changed: $format")
+        }
+    }
+
     fun attach(surface: Surface, videoWidth: Int, videoHeight: Int) {
         synchronized(lock) {
             this.surface = surface
@@ -59,7 +139,7 @@ class ShowerVideoRenderer {
             this.height = videoHeight
             warnedNoSurface = false
             releaseDecoderLocked()
-            pendingFrames.clear()
+            pendingFrames.reset(awaitKeyFrame = false)
         }
     }
 
@@ -67,14 +147,24 @@ class ShowerVideoRenderer {
         synchronized(lock) {
             releaseDecoderLocked()
             surface = null
-            pendingFrames.clear()
+            pendingFrames.reset(awaitKeyFrame = false)
             warnedNoSurface = false
+            codecThread?.quitSafely()
+            codecThread = null
+            codecHandler = null
         }
     }
 
+    /** Receives periodic decoder health reports; invoked outside the renderer lock. */
+    fun setFeedbackListener(listener: ((ShowerVideoFeedback) -> Unit)?) {
+        feedbackListener = listener
+    }
+
     private fun releaseDecoderLocked() {
         val dec = decoder
         decoder = null
+        freeInputCount = 0
+        latencyEwmaMs = 0.0
         if (dec != null) {
             try {
                 dec.stop()
@@ -88,7 +178,14 @@ class ShowerVideoRenderer {
     }
 
     /** Called for each H.264 packet. */
-    fun onFrame(data: ByteArray) {
+    fun onFrame(data: ByteArray) = onFrame(data, 0, data.size)
+
+    /**
+     * Called for each H.264 packet. The bytes in [data] may be rewritten in place
+     * (AVCC length prefixes become start codes) and are not retained after return.
+     */
+    fun onFrame(data: ByteArray, offset: Int, length: Int) {
+        val feedback: ShowerVideoFeedback?
         synchronized(lock) {
             if (surface == null || width <= 0 || height <= 0) {
                 if (!warnedNoSurface) {
@@ -97,112 +194,173 @@ class ShowerVideoRenderer {
                 }
                 return
             }
+            if (length <= 0) return
 
-            val packet = maybeAvccToAnnexb(data)
+            H264Packets.normalize(data, offset, length)
+            val flags = H264Packets.classify(data, offset, length)
 
-            if (decoder == null) {
-                val nalType = findNalUnitType(packet)
-                if (nalType == 7) { // SPS
-                    if (csd0 == null) {
-                        csd0 = packet
-                    }
-                } else if (nalType == 8) { // PPS
-                    if (csd1 == null) {
-                        csd1 = packet
-                    }
-                } else {
-                    pendingFrames.add(packet)
+            if (flags and H264Packets.FLAG_CONFIG != 0) {
+                when (H264Packets.firstNalType(data, offset, length)) {
+                    H264Packets.NAL_SPS -> if (decoder == null || csd0 == null) csd0 = data.copyOfRange(offset, offset + length)
+                    H264Packets.NAL_PPS -> if (decoder == null || csd1 == null) csd1 = data.copyOfRange(offset, offset + length)
                 }
+            }
 
+            if (decoder == null) {
+                // Configuration packets are consumed as csd-0/csd-1; everything else waits.
+                if (flags and H264Packets.FLAG_CONFIG == 0) {
+                    enqueueLocked(data, offset, length, flags)
+                }
                 if (csd0 != null && csd1 != null) {
                     initDecoderLocked()
-                    val framesToProcess = pendingFrames.toList()
-                    pendingFrames.clear()
-                    framesToProcess.forEach { frame -> queueFrameToDecoder(frame) }
                 }
                 return
             }
 
-            queueFrameToDecoder(packet)
+            val dec = decoder!!
+            val canBypassQueue = pendingFrames.size == 0 &&
+                (!pendingFrames.awaitingKeyFrame || flags and (H264Packets.FLAG_KEY_FRAME or H264Packets.FLAG_CONFIG) != 0)
+            if (canBypassQueue && freeInputCount > 0 && queueDirectLocked(dec, data, offset, length, flags)) {
+                if (flags and H264Packets.FLAG_KEY_FRAME != 0) {
+                    pendingFrames.reset(awaitKeyFrame = false)
+                }
+            } else {
+                enqueueLocked(data, offset, length, flags)
+                // Free input buffers may already be waiting, e.g. after a failed direct copy.
+                drainPendingLocked(dec)
+            }
+            feedback = takeFeedbackLocked(force = keyFrameNeeded)
         }
+        feedback?.let { dispatchFeedback(it) }
     }
 
-    private fun findNalUnitType(packet: ByteArray): Int {
-        var offset = -1
-        for (i in 0 until packet.size - 3) {
-            if (packet[i] == 0.toByte() && packet[i + 1] == 0.toByte()) {
-                if (packet[i + 2] == 1.toByte()) {
-                    offset = i + 3
-                    break
-                } else if (i + 3 < packet.size && packet[i + 2] == 0.toByte() && packet[i + 3] == 1.toByte()) {
-                    offset = i + 4
-                    break
-                }
+    /** Copies the packet directly into a free codec input buffer. */
+    private fun queueDirectLocked(dec: MediaCodec, data: ByteArray, offset: Int, length: Int, flags: Int): Boolean {
+        val index = freeInputs[--freeInputCount]
+        return try {
+            val input: ByteBuffer? = dec.getInputBuffer(index)
+            if (input == null || input.capacity() < length) {
+                freeInputCount++
+                false
+            } else {
+                input.clear()
+                input.put(data, offset, length)
+                val codecFlags = if (flags and H264Packets.FLAG_KEY_FRAME != 0) MediaCodec.BUFFER_FLAG_KEY_FRAME else 0
+                dec.queueInputBuffer(index, 0, length, nowUs(), codecFlags)
+                true
             }
+        } catch (e: Exception) {
+            Log.w(TAG, "Direct queueInputBuffer failed", e)
+            // The buffer was never handed back to the codec; keep it available for the queued path.
+            freeInputCount++
+            false
         }
-        if (offset != -1 && offset < packet.size) {
-            return (packet[offset].toInt() and 0x1F)
-        }
-        return -1
     }
 
-    private fun queueFrameToDecoder(packet: ByteArray) {
-        synchronized(lock) {
-            val dec = decoder ?: return
+    /**
+     * Moves queued packets into free codec input buffers. Called whenever either side grows,
+     * so that queued packets never wait while input buffers sit unused.
+     */
+    private fun drainPendingLocked(codec: MediaCodec) {
+        while (freeInputCount > 0) {
+            val frame = pendingFrames.poll() ?: return
+            val index = freeInputs[--freeInputCount]
             try {
-                val inIndex = dec.dequeueInputBuffer(10000)
-                if (inIndex >= 0) {
-                    val inputBuffer: ByteBuffer? = dec.getInputBuffer(inIndex)
-                    if (inputBuffer != null) {
-                        inputBuffer.clear()
-                        inputBuffer.put(packet)
-                        dec.queueInputBuffer(inIndex, 0, packet.size, System.nanoTime() / 1000, 0)
-                    }
-                }
-
-                val bufferInfo = BufferInfo()
-                var outIndex = dec.dequeueOutputBuffer(bufferInfo, 0)
-                while (outIndex >= 0) {
-                    dec.releaseOutputBuffer(outIndex, true)
-                    outIndex = dec.dequeueOutputBuffer(bufferInfo, 0)
+                val input = codec.getInputBuffer(index)
+                if (input == null || input.capacity() < frame.size) {
+                    freeInputCount++
+                    dropUndecodableLocked(frame, "does not fit input buffer (${input?.capacity() ?: 0} bytes)")
+                    continue
                 }
+                // Read the size before put() consumes the frame buffer.
+                val size = frame.size
+                input.clear()
+                input.put(frame.buffer)
+                val codecFlags = if (frame.isKeyFrame) MediaCodec.BUFFER_FLAG_KEY_FRAME else 0
+                codec.queueInputBuffer(index, 0, size, frame.presentationTimeUs, codecFlags)
             } catch (e: Exception) {
-                Log.e(TAG, "Decoder error on frame", e)
-                releaseDecoderLocked()
-                pendingFrames.clear()
+                Log.w(TAG, "queueInputBuffer failed", e)
+                // The buffer was never handed back to the codec; keep it available.
+                freeInputCount++
+                dropUndecodableLocked(frame, "queueInputBuffer failed")
+                continue
             }
+            pendingFrames.recycle(frame)
         }
     }
 
-    private fun maybeAvccToAnnexb(packet: ByteArray): ByteArray {
-        if (packet.size >= 4) {
-            val b0 = packet[0].toInt() and 0xFF
-            val b1 = packet[1].toInt() and 0xFF
-            val b2 = packet[2].toInt() and 0xFF
-            val b3 = packet[3].toInt() and 0xFF
-            if (b0 == 0 && b1 == 0 && ((b2 == 0 && b3 == 1) || b2 == 1)) {
-                return packet
-            }
+    /**
+     * Drops a packet the decoder could not take. Losing anything other than a disposable frame
+     * breaks the reference chain, so the queue waits for the next IDR and the server is asked for one.
+     */
+    private fun dropUndecodableLocked(frame: VideoFrame, reason: String) {
+        pendingFrames.countDropped()
+        if (frame.isDisposable) {
+            Log.w(TAG, "Dropping ${frame.size}-byte disposable packet: $reason")
+        } else {
+            Log.w(TAG, "Dropping ${frame.size}-byte reference packet: $reason; requesting a key frame")
+            pendingFrames.reset(awaitKeyFrame = true)
+            keyFrameNeeded = true
+        }
+        pendingFrames.recycle(frame)
+    }
+
+    private fun enqueueLocked(data: ByteArray, offset: Int, length: Int, flags: Int) {
+        if (pendingFrames.awaitingKeyFrame && flags and (H264Packets.FLAG_KEY_FRAME or H264Packets.FLAG_CONFIG) == 0) {
+            // Skip the copy entirely; the frame could not be decoded anyway.
+            pendingFrames.countDropped()
+            return
+        }
+        val frame = VideoFrame(framePool.copyOf(data, offset, length), flags, nowUs())
+        if (pendingFrames.offer(frame) == VideoFrameQueue.OfferResult.NEED_KEY_FRAME) {
+            Log.w(TAG, "Decoder fell behind on reference frames; waiting for the next key frame")
+            keyFrameNeeded = true
+        }
+    }
+
+    private fun pushFreeInputLocked(index: Int) {
+        if (freeInputCount == freeInputs.size) {
+            freeInputs = freeInputs.copyOf(freeInputs.size * 2)
+        }
+        freeInputs[freeInputCount++] = index
+    }
+
+    private fun recoverFromError(codec: MediaCodec) {
+        synchronized(lock) {
+            if (codec !== decoder) return
+            releaseDecoderLocked()
+            pendingFrames.reset(awaitKeyFrame = true)
+            keyFrameNeeded = true
+            initDecoderLocked()
         }
-        val out = ByteArrayOutputStream()
-        var i = 0
-        val n = packet.size
-        while (i + 4 <= n) {
-            val nalLen =
-                ((packet[i].toInt() and 0xFF) shl 24) or
-                    ((packet[i + 1].toInt() and 0xFF) shl 16) or
-                    ((packet[i + 2].toInt() and 0xFF) shl 8) or
-                    (packet[i + 3].toInt() and 0xFF)
-            i += 4
-            if (nalLen <= 0 || i + nalLen > n) return packet
-            out.write(byteArrayOf(0, 0, 0, 1))
-            out.write(packet, i, nalLen)
-            i += nalLen
+    }
+
+    private fun takeFeedbackLocked(force: Boolean): ShowerVideoFeedback? {
+        if (feedbackListener == null) return null
+        val now = SystemClock.elapsedRealtime()
+        if (!force && now - lastFeedbackMs < FEEDBACK_INTERVAL_MS) return null
+        lastFeedbackMs = now
+        val feedback = ShowerVideoFeedback(
+            decodeLatencyMs = latencyEwmaMs.toInt(),
+            queueDepth = pendingFrames.size,
+            droppedFrames = pendingFrames.takeDroppedCount(),
+            requestKeyFrame = keyFrameNeeded,
+        )
+        keyFrameNeeded = false
+        return feedback
+    }
+
+    private fun dispatchFeedback(feedback: ShowerVideoFeedback) {
+        try {
+            feedbackListener?.invoke(feedback)
+        } catch (e: Exception) {
+            Log.w(TAG, "Feedback listener failed", e)
         }
-        val result = out.toByteArray()
-        return if (result.isNotEmpty()) result else packet
     }
 
+    /** Arrival timestamp, carried through the codec as the presentation time to measure latency. */
+    private fun nowUs(): Long = SystemClock.elapsedRealtimeNanos() / 1000
+
     suspend fun captureCurrentFramePng(): ByteArray? {
         val s: Surface
         val w: Int
@@ -248,17 +406,23 @@ class ShowerVideoRenderer {
         if (width <= 0 || height <= 0) return
 
         try {
-            val csd0Annexb = maybeAvccToAnnexb(localCsd0)
-            val csd1Annexb = maybeAvccToAnnexb(localCsd1)
-
             val format = MediaFormat.createVideoFormat("video/avc", width, height)
-            format.setByteBuffer("csd-0", ByteBuffer.wrap(csd0Annexb))
-            format.setByteBuffer("csd-1", ByteBuffer.wrap(csd1Annexb))
+            format.setByteBuffer("csd-0", ByteBuffer.wrap(localCsd0))
+            format.setByteBuffer("csd-1", ByteBuffer.wrap(localCsd1))
+
+            val handler = codecHandler ?: run {
+                val thread = HandlerThread("ShowerVideoDecoder").also { it.start() }
+                codecThread = thread
+                Handler(thread.looper).also { codecHandler = it }
+            }
 
             val dec = MediaCodec.createDecoderByType("video/avc")
+            dec.setCallback(codecCallback, handler)
             dec.configure(format, s, null, 0)
-            dec.start()
+            // Publish before start() so that the first input callbacks are not treated as stale.
             decoder = dec
+            freeInputCount = 0
+            dec.start()
             Log.d(TAG, "MediaCodec decoder initialized for ${width}x${height}")
         } catch (e: Exception) {
             Log.e(TAG, "Failed to init decoder", e)
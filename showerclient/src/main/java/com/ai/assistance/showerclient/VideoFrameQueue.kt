@@ -0,0 +1,195 @@
+package com.ai.assistance.showerclient
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/** One encoded access unit waiting for a decoder input buffer. */
+internal class VideoFrame(
+    val buffer: ByteBuffer,
+    val flags: Int,
+    val presentationTimeUs: Long,
+) {
+    val size: Int
+        get() = buffer.remaining()
+
+    val isKeyFrame: Boolean
+        get() = flags and H264Packets.FLAG_KEY_FRAME != 0
+
+    val isReference: Boolean
+        get() = flags and H264Packets.FLAG_REFERENCE != 0
+
+    val isConfig: Boolean
+        get() = flags and H264Packets.FLAG_CONFIG != 0
+
+    /** Nothing else depends on this frame, so it may be dropped without corrupting the stream. */
+    val isDisposable: Boolean
+        get() = !isReference && !isConfig
+}
+
+/**
+ * Pool of direct buffers for queued frames. Buffers are reused by capacity, so once the
+ * pool has warmed up a steady stream of frames causes no further allocation.
+ */
+internal class VideoFramePool(private val maxPooled: Int = 8) {
+
+    private val free = ArrayDeque<ByteBuffer>()
+
+    var allocations = 0
+        private set
+
+    fun acquire(size: Int): ByteBuffer {
+        synchronized(free) {
+            val iterator = free.iterator()
+            while (iterator.hasNext()) {
+                val candidate = iterator.next()
+                if (candidate.capacity() >= size) {
+                    iterator.remove()
+                    candidate.clear()
+                    candidate.limit(size)
+                    return candidate
+                }
+            }
+            allocations++
+        }
+        // Round up so that slightly larger frames can still reuse the buffer.
+        val capacity = (size + 16 * 1024 - 1) / (16 * 1024) * (16 * 1024)
+        val buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder())
+        buffer.limit(size)
+        return buffer
+    }
+
+    fun copyOf(data: ByteArray, offset: Int, length: Int): ByteBuffer {
+        val buffer = acquire(length)
+        buffer.put(data, offset, length)
+        buffer.flip()
+        return buffer
+    }
+
+    fun release(buffer: ByteBuffer) {
+        synchronized(free) {
+            if (free.size < maxPooled) {
+                free.addLast(buffer)
+            } else if (free.isNotEmpty() && free.first().capacity() < buffer.capacity()) {
+                // Keep the larger buffers; they can serve any frame.
+                free.removeFirst()
+                free.addLast(buffer)
+            }
+        }
+    }
+}
+
+/**
+ * Bounded queue between the Binder thread and the decoder.
+ *
+ * Drop policy when full: the oldest non-reference frame goes first, then an incoming
+ * non-reference frame. If only reference frames remain, the queue is flushed and everything
+ * up to the next key frame is discarded, because decoding past a missing reference would
+ * only produce corrupted output; [offer] then reports that a key frame is needed.
+ * SPS/PPS packets are never dropped.
+ *
+ * Not thread-safe; the renderer guards it with its own lock.
+ */
+internal class VideoFrameQueue(
+    private val capacity: Int,
+    private val pool: VideoFramePool,
+) {
+
+    enum class OfferResult {
+        QUEUED,
+        QUEUED_AFTER_DROP,
+        DROPPED,
+        NEED_KEY_FRAME,
+    }
+
+    private val frames = ArrayDeque<VideoFrame>(capacity)
+
+    /** Set after a reference frame was lost; cleared by the next key frame. */
+    var awaitingKeyFrame = false
+        private set
+
+    /** Frames dropped since the last [takeDroppedCount]. */
+    private var dropped = 0
+
+    val size: Int
+        get() = frames.size
+
+    fun offer(frame: VideoFrame): OfferResult {
+        if (frame.isKeyFrame) {
+            // Nothing queued before a key frame is needed to decode it or anything after it.
+            dropWhere { !it.isConfig }
+            awaitingKeyFrame = false
+            frames.addLast(frame)
+            return OfferResult.QUEUED
+        }
+        if (frame.isConfig) {
+            frames.addLast(frame)
+            return OfferResult.QUEUED
+        }
+        if (awaitingKeyFrame) {
+            discard(frame)
+            return OfferResult.DROPPED
+        }
+        if (frames.size < capacity) {
+            frames.addLast(frame)
+            return OfferResult.QUEUED
+        }
+
+        val victim = frames.indexOfFirst { it.isDisposable }
+        if (victim >= 0) {
+            discard(frames.removeAt(victim))
+            frames.addLast(frame)
+            return OfferResult.QUEUED_AFTER_DROP
+        }
+        if (frame.isDisposable) {
+            discard(frame)
+            return OfferResult.DROPPED
+        }
+
+        dropWhere { !it.isConfig }
+        discard(frame)
+        awaitingKeyFrame = true
+        return OfferResult.NEED_KEY_FRAME
+    }
+
+    fun poll(): VideoFrame? = frames.removeFirstOrNull()
+
+    /** Returns the frame's buffer to the pool once its bytes have been consumed. */
+    fun recycle(frame: VideoFrame) {
+        pool.release(frame.buffer)
+    }
+
+    /** Drops every queued frame, optionally waiting for a key frame before accepting more. */
+    fun reset(awaitKeyFrame: Boolean) {
+        while (frames.isNotEmpty()) {
+            pool.release(frames.removeFirst().buffer)
+        }
+        awaitingKeyFrame = awaitKeyFrame
+    }
+
+    /** Accounts for a frame that was dropped before it reached the queue. */
+    fun countDropped() {
+        dropped++
+    }
+
+    fun takeDroppedCount(): Int {
+        val count = dropped
+        dropped = 0
+        return count
+    }
+
+    private inline fun dropWhere(predicate: (VideoFrame) -> Boolean) {
+        val iterator = frames.iterator()
+        while (iterator.hasNext()) {
+            val frame = iterator.next()
+            if (predicate(frame)) {
+                iterator.remove()
+                discard(frame)
+            }
+        }
+    }
+
+    private fun discard(frame: VideoFrame) {
+        dropped++
+        pool.release(frame.buffer)
+    }
+}
@@ -73,6 +73,9 @@ open class ShowerSurfaceView @JvmOverloads constructor(
                 // Route binary video frames to the renderer only after the surface and size are ready,
                 // so that any buffered SPS/PPS frames can be consumed correctly by the decoder.
                 Log.d(TAG, "surfaceCreated: setting ShowerController binary handler")
+                renderer.setFeedbackListener { feedback ->
+                    ctrl.reportVideoFeedback(feedback)
+                }
                 ctrl.setBinaryHandler { data ->
                     renderer.onFrame(data)
                 }
@@ -95,6 +98,7 @@ open class ShowerSurfaceView @JvmOverloads constructor(
             Log.d(TAG, "surfaceDestroyed: clearing binary handler")
             ctrl.setBinaryHandler(null)
         }
+        renderer.setFeedbackListener(null)
         renderer.detach()
     }
 
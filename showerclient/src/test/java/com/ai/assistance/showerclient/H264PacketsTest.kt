@@ -0,0 +1,95 @@
+package com.ai.assistance.showerclient
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class H264PacketsTest {
+
+    /** NAL unit with the given header fields and a payload free of start-code emulation. */
+    private fun nal(type: Int, refIdc: Int, payloadSize: Int): ByteArray {
+        val nal = ByteArray(1 + payloadSize) { i -> (0x40 + i % 0x3F).toByte() }
+        nal[0] = ((refIdc shl 5) or type).toByte()
+        return nal
+    }
+
+    private fun avcc(vararg nals: ByteArray): ByteArray {
+        val out = ArrayList<Byte>()
+        for (nal in nals) {
+            val len = nal.size
+            out += (len ushr 24).toByte()
+            out += (len ushr 16).toByte()
+            out += (len ushr 8).toByte()
+            out += len.toByte()
+            out += nal.toList()
+        }
+        return out.toByteArray()
+    }
+
+    private fun annexb(vararg nals: ByteArray): ByteArray {
+        val out = ArrayList<Byte>()
+        for (nal in nals) {
+            out += listOf<Byte>(0, 0, 0, 1)
+            out += nal.toList()
+        }
+        return out.toByteArray()
+    }
+
+    @Test
+    fun avccIsRewrittenInPlace() {
+        val sps = nal(H264Packets.NAL_SPS, 3, 12)
+        val pps = nal(H264Packets.NAL_PPS, 3, 4)
+        val idr = nal(H264Packets.NAL_IDR, 3, 300)
+
+        // Surround the packet with guard bytes to check that only the given range is rewritten.
+        val packet = avcc(sps, pps, idr)
+        val buffer = ByteArray(packet.size + 8) { 0x55 }
+        System.arraycopy(packet, 0, buffer, 4, packet.size)
+
+        assertFalse(H264Packets.isAnnexB(buffer, 4, packet.size))
+        assertTrue(H264Packets.normalize(buffer, 4, packet.size))
+        assertArrayEquals(annexb(sps, pps, idr), buffer.copyOfRange(4, 4 + packet.size))
+        assertEquals(0x55.toByte(), buffer[3])
+        assertEquals(0x55.toByte(), buffer[4 + packet.size])
+    }
+
+    @Test
+    fun malformedAvccIsLeftUntouched() {
+        val packet = avcc(nal(H264Packets.NAL_SLICE, 2, 40))
+        packet[3] = (packet[3] + 1).toByte() // length now runs past the end of the packet
+        val copy = packet.copyOf()
+
+        assertFalse(H264Packets.avccToAnnexbInPlace(packet, 0, packet.size))
+        assertArrayEquals(copy, packet)
+    }
+
+    @Test
+    fun annexbIsDetectedWithEitherStartCode() {
+        val slice = nal(H264Packets.NAL_SLICE, 2, 8)
+        assertTrue(H264Packets.isAnnexB(annexb(slice), 0, slice.size + 4))
+        val short = byteArrayOf(0, 0, 1) + slice
+        assertTrue(H264Packets.isAnnexB(short, 0, short.size))
+        assertEquals(H264Packets.NAL_SLICE, H264Packets.firstNalType(short, 0, short.size))
+    }
+
+    @Test
+    fun classifiesRecordedStreamShapes() {
+        val config = annexb(nal(H264Packets.NAL_SPS, 3, 12), nal(H264Packets.NAL_PPS, 3, 4))
+        val idr = annexb(nal(H264Packets.NAL_IDR, 3, 500))
+        val pFrame = annexb(nal(H264Packets.NAL_SLICE, 2, 120))
+        val bFrame = annexb(nal(H264Packets.NAL_SLICE, 0, 60))
+        val configAndIdr = annexb(nal(H264Packets.NAL_SPS, 3, 12), nal(H264Packets.NAL_PPS, 3, 4), nal(H264Packets.NAL_IDR, 3, 500))
+
+        assertEquals(H264Packets.FLAG_CONFIG, H264Packets.classify(config, 0, config.size))
+        assertEquals(H264Packets.FLAG_KEY_FRAME or H264Packets.FLAG_REFERENCE, H264Packets.classify(idr, 0, idr.size))
+        assertEquals(H264Packets.FLAG_REFERENCE, H264Packets.classify(pFrame, 0, pFrame.size))
+        assertEquals(0, H264Packets.classify(bFrame, 0, bFrame.size))
+        // An IDR carrying its parameter sets is a key frame, not a config packet.
+        assertEquals(
+            H264Packets.FLAG_KEY_FRAME or H264Packets.FLAG_REFERENCE,
+            H264Packets.classify(configAndIdr, 0, configAndIdr.size)
+        )
+    }
+}
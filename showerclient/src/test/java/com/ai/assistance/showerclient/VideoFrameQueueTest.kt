@@ -0,0 +1,101 @@
+package com.ai.assistance.showerclient
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class VideoFrameQueueTest {
+
+    private val pool = VideoFramePool()
+
+    private fun frame(flags: Int, tag: Long, size: Int = 1200): VideoFrame {
+        val payload = ByteArray(size) { tag.toByte() }
+        return VideoFrame(pool.copyOf(payload, 0, size), flags, tag)
+    }
+
+    private fun idr(tag: Long) = frame(H264Packets.FLAG_KEY_FRAME or H264Packets.FLAG_REFERENCE, tag)
+    private fun pFrame(tag: Long) = frame(H264Packets.FLAG_REFERENCE, tag)
+    private fun bFrame(tag: Long) = frame(0, tag)
+    private fun config(tag: Long) = frame(H264Packets.FLAG_CONFIG, tag, size = 16)
+
+    private fun VideoFrameQueue.drain(): List<Long> {
+        val out = ArrayList<Long>()
+        while (true) {
+            val next = poll() ?: break
+            out += next.presentationTimeUs
+            recycle(next)
+        }
+        return out
+    }
+
+    @Test
+    fun dropsOldestNonReferenceFrameWhenFull() {
+        val queue = VideoFrameQueue(3, pool)
+        queue.offer(idr(1))
+        queue.offer(bFrame(2))
+        queue.offer(pFrame(3))
+
+        assertEquals(VideoFrameQueue.OfferResult.QUEUED_AFTER_DROP, queue.offer(pFrame(4)))
+        assertEquals(VideoFrameQueue.OfferResult.DROPPED, queue.offer(bFrame(5)))
+        assertEquals(2, queue.takeDroppedCount())
+        assertEquals(listOf(1L, 3L, 4L), queue.drain())
+    }
+
+    @Test
+    fun losingAReferenceFrameWaitsForTheNextKeyFrame() {
+        val queue = VideoFrameQueue(2, pool)
+        queue.offer(idr(1))
+        queue.offer(pFrame(2))
+
+        assertEquals(VideoFrameQueue.OfferResult.NEED_KEY_FRAME, queue.offer(pFrame(3)))
+        assertTrue(queue.awaitingKeyFrame)
+        assertEquals(0, queue.size)
+
+        // Anything before the next IDR would decode against a missing reference.
+        assertEquals(VideoFrameQueue.OfferResult.DROPPED, queue.offer(pFrame(4)))
+        assertEquals(VideoFrameQueue.OfferResult.DROPPED, queue.offer(bFrame(5)))
+
+        assertEquals(VideoFrameQueue.OfferResult.QUEUED, queue.offer(idr(6)))
+        assertFalse(queue.awaitingKeyFrame)
+        assertEquals(VideoFrameQueue.OfferResult.QUEUED, queue.offer(pFrame(7)))
+        assertEquals(listOf(6L, 7L), queue.drain())
+        assertEquals(5, queue.takeDroppedCount())
+    }
+
+    @Test
+    fun keyFrameSupersedesQueuedFramesButKeepsParameterSets() {
+        val queue = VideoFrameQueue(8, pool)
+        queue.offer(pFrame(1))
+        queue.offer(config(2))
+        queue.offer(bFrame(3))
+        queue.offer(idr(4))
+
+        assertEquals(listOf(2L, 4L), queue.drain())
+        assertEquals(2, queue.takeDroppedCount())
+        assertNull(queue.poll())
+    }
+
+    @Test
+    fun steadyStreamReusesPooledBuffers() {
+        val queue = VideoFrameQueue(4, pool)
+        // A GOP-like pattern: IDR, then P frames with non-reference frames in between.
+        fun next(i: Long) = when {
+            i % 30 == 0L -> idr(i)
+            i % 3 == 0L -> pFrame(i)
+            else -> bFrame(i)
+        }
+        for (i in 0L until 4L) queue.offer(next(i))
+        queue.drain()
+        val warmedUp = pool.allocations
+
+        for (i in 4L until 3_000L) {
+            queue.offer(next(i))
+            if (i % 2 == 0L) queue.poll()?.let { queue.recycle(it) }
+            if (i % 10 == 0L) queue.drain()
+        }
+        queue.drain()
+        assertTrue("allocations=${pool.allocations} warmedUp=$warmedUp", pool.allocations <= warmedUp + 4)
+    }
+}
@@ -10,6 +10,9 @@ public interface IShowerVideoSink extends IInterface {
 
     void onVideoFrame(byte[] data) throws RemoteException;
 
+    /** Sends {@code length} bytes starting at {@code offset}; lets the sender reuse one buffer for every frame. */
+    void onVideoFrame(byte[] data, int offset, int length) throws RemoteException;
+
     abstract class Stub extends Binder implements IShowerVideoSink {
 
         private static final String DESCRIPTOR = "com.ai.assistance.shower.IShowerVideoSink";
@@ -36,6 +39,11 @@ public interface IShowerVideoSink extends IInterface {
             return this;
         }
 
+        @Override
+        public void onVideoFrame(byte[] data, int offset, int length) throws RemoteException {
+            onVideoFrame(offset == 0 && length == data.length ? data : java.util.Arrays.copyOfRange(data, offset, offset + length));
+        }
+
         @Override
         public boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
             switch (code) {
@@ -69,11 +77,16 @@ public interface IShowerVideoSink extends IInterface {
 
             @Override
             public void onVideoFrame(byte[] data) throws RemoteException {
+                onVideoFrame(data, 0, data.length);
+            }
+
+            @Override
+            public void onVideoFrame(byte[] data, int offset, int length) throws RemoteException {
                 Parcel _data = Parcel.obtain();
                 Parcel _reply = Parcel.obtain();
                 try {
                     _data.writeInterfaceToken(DESCRIPTOR);
-                    _data.writeByteArray(data);
+                    _data.writeByteArray(data, offset, length);
                     remote.transact(TRANSACTION_onVideoFrame, _data, _reply, 0);
                     _reply.readException();
                 } finally {
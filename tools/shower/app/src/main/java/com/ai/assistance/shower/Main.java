@@ -11,6 +11,7 @@ import android.media.MediaCodec.BufferInfo;
 import android.media.MediaFormat;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.IBinder;
 import android.os.Looper;
 import android.view.Surface;
@@ -50,6 +51,7 @@ public class Main {
     private static final String TAG = "ShowerMain";
     private static final int DEFAULT_PORT = 8986;
     private static final int DEFAULT_BIT_RATE = 4_000_000;
+    private static final int DEFAULT_FRAME_RATE = 30;
 
     private static final String ACTION_SHOWER_BINDER_READY = "com.ai.assistance.operit.action.SHOWER_BINDER_READY";
     private static final String EXTRA_BINDER_CONTAINER = "binder_container";
@@ -116,9 +118,14 @@ public class Main {
         IBinder videoSinkBinder;
         IBinder.DeathRecipient videoSinkDeathRecipient;
         final Object lock = new Object();
+        final VideoRateController rateController;
+        // Reused for every encoded frame; only touched by the encoder thread.
+        private byte[] frameBuffer = new byte[64 * 1024];
 
-        DisplaySession(int displayId, VirtualDisplay virtualDisplay, MediaCodec videoEncoder, Surface encoderSurface, InputController inputController) {
+        DisplaySession(int displayId, VirtualDisplay virtualDisplay, MediaCodec videoEncoder, Surface encoderSurface,
+                       InputController inputController, int bitRate) {
             this.displayId = displayId;
+            this.rateController = new VideoRateController(bitRate, DEFAULT_FRAME_RATE);
             this.virtualDisplay = virtualDisplay;
             this.videoEncoder = videoEncoder;
             this.encoderSurface = encoderSurface;
@@ -238,9 +245,11 @@ public class Main {
                         if (outputBuffer != null) {
                             outputBuffer.position(bufferInfo.offset);
                             outputBuffer.limit(bufferInfo.offset + bufferInfo.size);
-                            byte[] data = new byte[bufferInfo.size];
-                            outputBuffer.get(data);
-                            sendVideoFrame(data);
+                            if (frameBuffer.length < bufferInfo.size) {
+                                frameBuffer = new byte[Math.max(bufferInfo.size, frameBuffer.length * 2)];
+                            }
+                            outputBuffer.get(frameBuffer, 0, bufferInfo.size);
+                            sendVideoFrame(frameBuffer, 0, bufferInfo.size);
                         }
                     }
                     codec.releaseOutputBuffer(index, false);
@@ -267,17 +276,17 @@ public class Main {
             dup.position(0);
             byte[] data = new byte[dup.remaining()];
             dup.get(data);
-            sendVideoFrame(data);
+            sendVideoFrame(data, 0, data.length);
         }
 
-        private void sendVideoFrame(byte[] data) {
+        private void sendVideoFrame(byte[] data, int offset, int length) {
             IShowerVideoSink sink;
              synchronized (lock) {
                  sink = videoSink;
              }
             if (sink != null) {
                 try {
-                    sink.onVideoFrame(data);
+                    sink.onVideoFrame(data, offset, length);
                 } catch (Exception e) {
                     // Client may have died, invalidate the sink.
                     synchronized (lock) {
@@ -286,6 +295,32 @@ public class Main {
                 }
             }
         }
+
+        void onVideoFeedback(int decodeLatencyMs, int queueDepth, int droppedFrames, boolean requestKeyFrame) {
+            VideoRateController.Decision decision = rateController.onFeedback(
+                    decodeLatencyMs, queueDepth, droppedFrames, requestKeyFrame, System.currentTimeMillis());
+            MediaCodec codec = videoEncoder;
+            if (decision == null || codec == null || !encoderRunning) {
+                return;
+            }
+            Bundle params = new Bundle();
+            params.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, decision.bitRate);
+            if (Build.VERSION.SDK_INT >= 29) {
+                // Honoured for surface input by the codec framework; ignored where unsupported.
+                params.putFloat(MediaFormat.KEY_MAX_FPS_TO_ENCODER, decision.frameRate);
+            }
+            if (decision.requestKeyFrame) {
+                params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+            }
+            try {
+                codec.setParameters(params);
+                logToFile("Display " + displayId + " rate adapted: bitRate=" + decision.bitRate
+                        + " frameRate=" + decision.frameRate + " latency=" + decodeLatencyMs + "ms queue=" + queueDepth
+                        + " dropped=" + droppedFrames + " keyFrame=" + decision.requestKeyFrame, null);
+            } catch (IllegalStateException e) {
+                logToFile("setParameters failed for display " + displayId + ": " + e.getMessage(), e);
+            }
+        }
     }
 
     private byte[] captureScreenshotBytes(int displayId) {
@@ -559,6 +594,21 @@ public class Main {
                         logToFile("setVideoSink for unknown displayId: " + displayId, null);
                     }
                 }
+
+                @Override
+                public void reportVideoFeedback(int displayId, int decodeLatencyMs, int queueDepth, int droppedFrames,
+                                                boolean requestKeyFrame) {
+                    markClientActive();
+                    DisplaySession session = displays.get(displayId);
+                    if (session != null) {
+                        session.onVideoFeedback(decodeLatencyMs, queueDepth, droppedFrames, requestKeyFrame);
+                    }
+                }
+
+                @Override
+                public int getCapabilities() {
+                    return CAPABILITY_VIDEO_FEEDBACK;
+                }
             };
             try {
                 Class<?> smClass = Class.forName("android.os.ServiceManager");
@@ -667,7 +717,7 @@ public class Main {
             MediaFormat format = MediaFormat.createVideoFormat("video/avc", alignedWidth, alignedHeight);
             format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
             format.setInteger(MediaFormat.KEY_BIT_RATE, actualBitRate);
-            format.setInteger(MediaFormat.KEY_FRAME_RATE, 30);
+            format.setInteger(MediaFormat.KEY_FRAME_RATE, DEFAULT_FRAME_RATE);
             format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, 1);
 
             videoEncoder = MediaCodec.createEncoderByType("video/avc");
@@ -731,7 +781,7 @@ public class Main {
                     inputController = null;
                 }
                 
-                DisplaySession session = new DisplaySession(virtualDisplayId, virtualDisplay, videoEncoder, encoderSurface, inputController);
+                DisplaySession session = new DisplaySession(virtualDisplayId, virtualDisplay, videoEncoder, encoderSurface, inputController, actualBitRate);
                 displays.put(virtualDisplayId, session);
                 logToFile("Registered DisplaySession for id=" + virtualDisplayId, null);
                 return virtualDisplayId;
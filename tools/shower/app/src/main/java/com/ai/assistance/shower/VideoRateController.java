@@ -0,0 +1,100 @@
+package com.ai.assistance.shower;
+
+/**
+ * Adapts encoder bitrate and frame rate to the decode latency reported by the client.
+ *
+ * Multiplicative decrease on congestion (high latency, growing client queue or dropped frames),
+ * slow additive increase after a sustained period of healthy reports. Pure logic, no Android
+ * dependencies, so the policy can be unit tested on the JVM.
+ */
+class VideoRateController {
+
+    static final int MIN_BIT_RATE = 500_000;
+    static final int MIN_FRAME_RATE = 10;
+
+    static final int HIGH_LATENCY_MS = 150;
+    static final int SEVERE_LATENCY_MS = 300;
+    static final int LOW_LATENCY_MS = 60;
+    static final int MAX_HEALTHY_QUEUE_DEPTH = 1;
+    static final int CONGESTED_QUEUE_DEPTH = 4;
+
+    static final long DECREASE_INTERVAL_MS = 500L;
+    static final long INCREASE_HOLD_OFF_MS = 3_000L;
+    static final int HEALTHY_REPORTS_BEFORE_INCREASE = 4;
+
+    static final class Decision {
+        final int bitRate;
+        final int frameRate;
+        final boolean requestKeyFrame;
+
+        Decision(int bitRate, int frameRate, boolean requestKeyFrame) {
+            this.bitRate = bitRate;
+            this.frameRate = frameRate;
+            this.requestKeyFrame = requestKeyFrame;
+        }
+    }
+
+    private final int maxBitRate;
+    private final int maxFrameRate;
+    private int bitRate;
+    private int frameRate;
+    private long lastDecreaseMs = Long.MIN_VALUE / 2;
+    private int healthyReports;
+
+    VideoRateController(int maxBitRate, int maxFrameRate) {
+        this.maxBitRate = Math.max(MIN_BIT_RATE, maxBitRate);
+        this.maxFrameRate = Math.max(MIN_FRAME_RATE, maxFrameRate);
+        this.bitRate = this.maxBitRate;
+        this.frameRate = this.maxFrameRate;
+    }
+
+    int getBitRate() {
+        return bitRate;
+    }
+
+    int getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * @return the new encoder settings, or {@code null} when nothing needs to change
+     */
+    synchronized Decision onFeedback(int decodeLatencyMs, int queueDepth, int droppedFrames, boolean requestKeyFrame, long nowMs) {
+        int newBitRate = bitRate;
+        int newFrameRate = frameRate;
+
+        boolean congested = decodeLatencyMs > HIGH_LATENCY_MS
+                || queueDepth >= CONGESTED_QUEUE_DEPTH
+                || droppedFrames > 0;
+        boolean healthy = decodeLatencyMs < LOW_LATENCY_MS && queueDepth <= MAX_HEALTHY_QUEUE_DEPTH && droppedFrames == 0;
+
+        if (congested) {
+            healthyReports = 0;
+            if (nowMs - lastDecreaseMs >= DECREASE_INTERVAL_MS) {
+                lastDecreaseMs = nowMs;
+                newBitRate = Math.max(MIN_BIT_RATE, (int) ((long) bitRate * 7 / 10));
+                // Bitrate alone cannot fix a decoder that is too slow; also shed frames.
+                if (decodeLatencyMs > SEVERE_LATENCY_MS || newBitRate == MIN_BIT_RATE) {
+                    newFrameRate = Math.max(MIN_FRAME_RATE, frameRate - 5);
+                }
+            }
+        } else if (healthy) {
+            healthyReports++;
+            if (healthyReports >= HEALTHY_REPORTS_BEFORE_INCREASE && nowMs - lastDecreaseMs >= INCREASE_HOLD_OFF_MS) {
+                healthyReports = 0;
+                newBitRate = Math.min(maxBitRate, bitRate + Math.max(100_000, bitRate / 10));
+                newFrameRate = Math.min(maxFrameRate, frameRate + 5);
+            }
+        } else {
+            healthyReports = 0;
+        }
+
+        boolean changed = newBitRate != bitRate || newFrameRate != frameRate;
+        bitRate = newBitRate;
+        frameRate = newFrameRate;
+        if (!changed && !requestKeyFrame) {
+            return null;
+        }
+        return new Decision(bitRate, frameRate, requestKeyFrame);
+    }
+}
@@ -0,0 +1,71 @@
+package com.ai.assistance.shower
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class VideoRateControllerTest {
+
+    @Test
+    fun congestionLowersBitrateAtMostOncePerInterval() {
+        val controller = VideoRateController(4_000_000, 30)
+
+        val first = controller.onFeedback(200, 2, 0, false, 1_000)
+        assertNotNull(first)
+        assertEquals(2_800_000, first!!.bitRate)
+        assertEquals(30, first.frameRate)
+
+        // Further reports within the same interval do not lower it again.
+        assertNull(controller.onFeedback(200, 2, 0, false, 1_200))
+        assertEquals(1_960_000, controller.onFeedback(200, 2, 0, false, 1_600)!!.bitRate)
+    }
+
+    @Test
+    fun severeLatencyAlsoShedsFrames() {
+        val controller = VideoRateController(4_000_000, 30)
+        val decision = controller.onFeedback(400, 6, 3, false, 0)!!
+        assertEquals(25, decision.frameRate)
+
+        var now = 0L
+        repeat(20) {
+            now += VideoRateController.DECREASE_INTERVAL_MS
+            controller.onFeedback(400, 6, 3, false, now)
+        }
+        assertEquals(VideoRateController.MIN_BIT_RATE, controller.bitRate)
+        assertEquals(VideoRateController.MIN_FRAME_RATE, controller.frameRate)
+    }
+
+    @Test
+    fun recoversSlowlyAfterSustainedHealthyReports() {
+        val controller = VideoRateController(4_000_000, 30)
+        controller.onFeedback(400, 6, 1, false, 0)
+        val reduced = controller.bitRate
+
+        // No increase during the hold-off period, even when healthy.
+        repeat(VideoRateController.HEALTHY_REPORTS_BEFORE_INCREASE) {
+            assertNull(controller.onFeedback(20, 0, 0, false, 1_000L + it * 500))
+        }
+        assertEquals(reduced, controller.bitRate)
+
+        var now = VideoRateController.INCREASE_HOLD_OFF_MS
+        var decision: VideoRateController.Decision? = null
+        repeat(VideoRateController.HEALTHY_REPORTS_BEFORE_INCREASE) {
+            controller.onFeedback(20, 0, 0, false, now)?.let { decision = it }
+            now += 500
+        }
+        assertNotNull(decision)
+        assertTrue(decision!!.bitRate > reduced)
+        assertTrue(decision!!.bitRate <= 4_000_000)
+        assertEquals(30, decision!!.frameRate)
+    }
+
+    @Test
+    fun keyFrameRequestIsForwardedWithoutRateChange() {
+        val controller = VideoRateController(4_000_000, 30)
+        val decision = controller.onFeedback(80, 1, 0, true, 0)!!
+        assertTrue(decision.requestKeyFrame)
+        assertEquals(4_000_000, decision.bitRate)
+    }
+}
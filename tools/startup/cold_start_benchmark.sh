@@ -0,0 +1,65 @@
+#!/bin/bash
+
+# Cold start benchmark for Operit.
+# Force-stops the app before every launch, measures `am start -W` TotalTime,
+# and pulls the startup trace (Chrome Trace Event JSON) written by the app
+# after its startup tasks finish (debug builds only). Open the trace in https://ui.perfetto.dev
+#
+# Usage: $0 [iterations] [output_dir]
+
+ITERATIONS="${1:-10}"
+OUT_DIR="${2:-./startup_benchmark}"
+PACKAGE="com.ai.assistance.operit"
+ACTIVITY="$PACKAGE/.ui.main.MainActivity"
+TRACE_PATH="/sdcard/Android/data/$PACKAGE/files/startup/startup_trace.json"
+# Time to wait after launch so idle-time startup tasks can finish and the trace gets exported
+SETTLE_SECONDS=8
+
+if ! command -v adb &> /dev/null; then
+    echo "Error: ADB command not found. Make sure Android SDK is installed and adb is in PATH"
+    exit 1
+fi
+
+DEVICE_COUNT=$(adb devices | grep -v "List" | grep -c "device$")
+if [ "$DEVICE_COUNT" -eq 0 ]; then
+    echo "Error: No Android devices detected"
+    exit 1
+fi
+
+mkdir -p "$OUT_DIR"
+RESULTS_FILE="$OUT_DIR/total_time_ms.txt"
+: > "$RESULTS_FILE"
+
+echo "Running $ITERATIONS cold starts of $ACTIVITY"
+for i in $(seq 1 "$ITERATIONS"); do
+    adb shell am force-stop "$PACKAGE"
+    adb shell rm -f "$TRACE_PATH"
+    sleep 1
+
+    TOTAL_TIME=$(adb shell am start -W -S -n "$ACTIVITY" | tr -d '\r' | awk -F': ' '/^TotalTime/ {print $2}')
+    if [ -z "$TOTAL_TIME" ]; then
+        echo "Run $i: failed to read TotalTime"
+        continue
+    fi
+    echo "Run $i: TotalTime=${TOTAL_TIME}ms"
+    echo "$TOTAL_TIME" >> "$RESULTS_FILE"
+
+    sleep "$SETTLE_SECONDS"
+    adb pull "$TRACE_PATH" "$OUT_DIR/startup_trace_$i.json" > /dev/null 2>&1 \
+        || echo "Run $i: startup trace not found"
+done
+
+adb shell am force-stop "$PACKAGE"
+
+if [ ! -s "$RESULTS_FILE" ]; then
+    echo "No successful runs"
+    exit 1
+fi
+
+sort -n "$RESULTS_FILE" | awk '
+    { values[NR] = $1; sum += $1 }
+    END {
+        median = (NR % 2) ? values[(NR + 1) / 2] : (values[NR / 2] + values[NR / 2 + 1]) / 2
+        printf "\nRuns: %d\nMin: %d ms\nMedian: %d ms\nMean: %.1f ms\nMax: %d ms\n", NR, values[1], median, sum / NR, values[NR]
+    }'
+echo "Startup traces saved to $OUT_DIR"